@@ -793,6 +793,18 @@ public interface DataDictionary{
     public void deletePartitionStatistics(long conglomerate,
                                           TransactionController tc) throws StandardException;
 
+    /**
+     * Removes the Table and Column Statistics of a single partition from SYSTABLESTATS and SYSCOLUMNSTATS.
+     *
+     * @param conglomerate
+     * @param partitionId
+     * @param tc
+     * @throws StandardException
+     */
+    public void deletePartitionStatistics(long conglomerate,
+                                          String partitionId,
+                                          TransactionController tc) throws StandardException;
+
 
     public void clearCaches();
 
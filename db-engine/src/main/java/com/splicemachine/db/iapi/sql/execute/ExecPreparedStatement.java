@@ -129,6 +129,14 @@ public interface ExecPreparedStatement
 	 */
 	boolean needsSavepoint();
 
+	/**
+	 * Must the rows of this statement's result set be returned in the order in
+	 * which they are produced? Only false when the statement does not ask for an order.
+	 *
+	 * @return true if the order of the results matters
+	 */
+	boolean requiresOrderedResults();
+
 	/**
 	 * Get a new prepared statement that is a shallow copy
 	 * of the current one.
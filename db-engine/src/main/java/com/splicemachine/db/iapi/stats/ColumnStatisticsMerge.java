@@ -39,6 +39,9 @@ public class ColumnStatisticsMerge implements Aggregator<ColumnStatisticsImpl, C
     protected com.yahoo.sketches.frequencies.ItemsSketch<DataValueDescriptor> frequenciesSketch;
     protected long nullCount = 0l;
     protected DataValueDescriptor dvd;
+    protected long sampledRows = 0l;
+    protected long estimatedRows = 0l;
+    protected boolean sampled;
 
     public ColumnStatisticsMerge() {
 
@@ -78,7 +81,10 @@ public class ColumnStatisticsMerge implements Aggregator<ColumnStatisticsImpl, C
         quantilesSketchUnion.update(columnStatistics.quantilesSketch);
         frequenciesSketch.merge(columnStatistics.frequenciesSketch);
         thetaSketchUnion.update(columnStatistics.thetaSketch);
-        nullCount =+ columnStatistics.nullCount();
+        nullCount += columnStatistics.nullCount;
+        sampledRows += columnStatistics.quantilesSketch.getN() + columnStatistics.nullCount;
+        estimatedRows += columnStatistics.totalCount();
+        sampled |= columnStatistics instanceof SampledColumnStatisticsImpl;
     }
 
     /**
@@ -92,17 +98,24 @@ public class ColumnStatisticsMerge implements Aggregator<ColumnStatisticsImpl, C
         quantilesSketchUnion.update(columnStatisticsMerge.quantilesSketchUnion.getResult());
         frequenciesSketch.merge(columnStatisticsMerge.frequenciesSketch);
         thetaSketchUnion.update(columnStatisticsMerge.thetaSketchUnion.getResult());
-        nullCount =+ columnStatisticsMerge.nullCount;
+        nullCount += columnStatisticsMerge.nullCount;
+        sampledRows += columnStatisticsMerge.sampledRows;
+        estimatedRows += columnStatisticsMerge.estimatedRows;
+        sampled |= columnStatisticsMerge.sampled;
     }
 
     /**
      *
-     * Generate the effective column statistics.
+     * Generate the effective column statistics. If any of the merged statistics were sampled, the result is
+     * scaled by the overall fraction of rows which were sampled.
      *
      * @return
      */
     @Override
     public ColumnStatisticsImpl terminate() {
+        if (sampled && sampledRows > 0 && sampledRows < estimatedRows)
+            return new SampledColumnStatisticsImpl(dvd,quantilesSketchUnion.getResult(),frequenciesSketch,thetaSketchUnion.getResult(),nullCount,
+                    ((double) sampledRows)/estimatedRows);
         return new ColumnStatisticsImpl(dvd,quantilesSketchUnion.getResult(),frequenciesSketch,thetaSketchUnion.getResult(),nullCount);
     }
 
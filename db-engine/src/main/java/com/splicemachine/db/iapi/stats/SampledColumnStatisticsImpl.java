@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.db.iapi.stats;
+
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.yahoo.sketches.theta.Sketch;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ *
+ * Column statistics which were built from a sample of the rows of a partition, rather than from every row.
+ *
+ * The sketches hold exactly what was seen in the sample; the counts and cardinality reported from them
+ * are scaled up by the fraction of the partition which was sampled.
+ *
+ */
+public class SampledColumnStatisticsImpl extends ColumnStatisticsImpl {
+    protected double sampleFraction;
+
+    public SampledColumnStatisticsImpl() {
+
+    }
+
+    /**
+     *
+     * @param sample the statistics of the sampled rows
+     * @param sampleFraction the fraction of the partition's rows which were sampled
+     */
+    public SampledColumnStatisticsImpl(ColumnStatisticsImpl sample, double sampleFraction) {
+        this(sample.dvd, sample.quantilesSketch, sample.frequenciesSketch, sample.thetaSketch, sample.nullCount, sampleFraction);
+    }
+
+    public SampledColumnStatisticsImpl(DataValueDescriptor dvd,
+                                       com.yahoo.sketches.quantiles.ItemsSketch quantilesSketch,
+                                       com.yahoo.sketches.frequencies.ItemsSketch frequenciesSketch,
+                                       Sketch thetaSketch, long nullCount,
+                                       double sampleFraction) {
+        super(dvd, quantilesSketch, frequenciesSketch, thetaSketch, nullCount);
+        assert sampleFraction > 0 && sampleFraction <= 1 : "Invalid sample fraction " + sampleFraction;
+        this.sampleFraction = sampleFraction;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeDouble(sampleFraction);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        sampleFraction = in.readDouble();
+    }
+
+    /**
+     *
+     * The fraction of the partition which was sampled.
+     *
+     * @return
+     */
+    public double getSampleFraction() {
+        return sampleFraction;
+    }
+
+    /**
+     *
+     * The number of rows which were actually sampled.
+     *
+     * @return
+     */
+    public long sampleSize() {
+        return super.totalCount();
+    }
+
+    @Override
+    public long nullCount() {
+        return scale(super.nullCount());
+    }
+
+    @Override
+    public long notNullCount() {
+        return scale(super.notNullCount());
+    }
+
+    @Override
+    public long totalCount() {
+        return nullCount() + notNullCount();
+    }
+
+    /**
+     *
+     * Estimates the number of distinct values in the partition from the number seen in the sample.
+     *
+     * @see #scaleCardinality(long, long, double)
+     * @return
+     */
+    @Override
+    public long cardinality() {
+        return scaleCardinality(super.cardinality(), super.notNullCount(), sampleFraction);
+    }
+
+    @Override
+    public long selectivity(DataValueDescriptor element) {
+        if (element == null || element.isNull())
+            return nullCount();
+        long count = frequenciesSketch.getEstimate(element);
+        if (count > 0)
+            return scale(count);
+        long cardinality = cardinality();
+        return cardinality == 0 ? 0 : notNullCount() / cardinality;
+    }
+
+    @Override
+    public long rangeSelectivity(DataValueDescriptor start, DataValueDescriptor stop, boolean includeStart, boolean includeStop) {
+        return scale(super.rangeSelectivity(start, stop, includeStart, includeStop));
+    }
+
+    @Override
+    public ItemStatistics<DataValueDescriptor> getClone() {
+        return new SampledColumnStatisticsImpl(dvd.cloneValue(false),
+                quantilesSketch,
+                frequenciesSketch,
+                thetaSketch,
+                nullCount,
+                sampleFraction);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SampledStatistics{sampleFraction=%f, nullCount=%d, frequencies=%s, quantiles=%s, theta=%s}",
+                sampleFraction,nullCount,frequenciesSketch,quantilesSketch.toString(true,false),thetaSketch.toString());
+    }
+
+    /**
+     *
+     * Estimate the number of distinct values in a population from the number of distinct values in a sample of it.
+     *
+     * Assuming that every distinct value occurs equally often, a value which occurs {@code m} times in the population
+     * appears in the sample with probability {@code 1-(1-f)^m}. The estimate is the number of distinct values {@code D}
+     * for which the expected number of distinct values seen in the sample is {@code d}, i.e. the solution of
+     * <pre>
+     *     D * (1 - (1-f)^(N/D)) = d
+     * </pre>
+     * where {@code N} is the (scaled) number of rows. This scales linearly for unique columns, and hardly at all for
+     * columns with few distinct values. Sampling in blocks clusters values which are stored together, so for columns
+     * which correlate with the row key this tends to underestimate.
+     *
+     * @param sampleDistinct the number of distinct values seen in the sample
+     * @param sampleRows the number of rows in the sample
+     * @param fraction the fraction of the population which was sampled
+     * @return the estimated number of distinct values in the population
+     */
+    public static long scaleCardinality(long sampleDistinct, long sampleRows, double fraction) {
+        if (fraction >= 1 || sampleDistinct <= 0 || sampleRows <= 0)
+            return sampleDistinct;
+        double rows = sampleRows / fraction;
+        if (sampleDistinct >= sampleRows)
+            return Math.round(rows);
+        double low = sampleDistinct;
+        double high = rows;
+        double missFactor = Math.log1p(-fraction);
+        for (int i = 0; i < 64 && high - low > 0.5d; i++) {
+            double mid = (low + high) / 2;
+            double expectedSeen = -mid * Math.expm1(missFactor * rows / mid);
+            if (expectedSeen < sampleDistinct)
+                low = mid;
+            else
+                high = mid;
+        }
+        return Math.round((low + high) / 2);
+    }
+
+    private long scale(long sampleCount) {
+        return Math.round(sampleCount / sampleFraction);
+    }
+}
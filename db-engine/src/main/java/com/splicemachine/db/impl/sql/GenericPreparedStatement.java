@@ -115,6 +115,8 @@ public class GenericPreparedStatement implements ExecPreparedStatement {
     protected UUID UUIDValue;
 
     private boolean needsSavepoint;
+    // not stored with an SPS, so the order of its results is always assumed to matter
+    private boolean requiresOrderedResults = true;
 
     private String execStmtName;
     private String execSchemaName;
@@ -1020,6 +1022,20 @@ public class GenericPreparedStatement implements ExecPreparedStatement {
         this.needsSavepoint = needsSavepoint;
     }
 
+    @Override
+    public boolean requiresOrderedResults() {
+        return requiresOrderedResults;
+    }
+
+    /**
+     * Set whether the order of this statement's results matters.
+     *
+     * @param requiresOrderedResults true if the statement asks for its results in some order
+     */
+    public void setRequiresOrderedResults(boolean requiresOrderedResults) {
+        this.requiresOrderedResults = requiresOrderedResults;
+    }
+
     /**
      * Set the stmts 'isAtomic' state.
      *
@@ -1080,6 +1096,7 @@ public class GenericPreparedStatement implements ExecPreparedStatement {
         clone.updateColumns = updateColumns;
         clone.updateMode = updateMode;
         clone.needsSavepoint = needsSavepoint;
+        clone.requiresOrderedResults = requiresOrderedResults;
     }
 
     @Override
@@ -641,6 +641,7 @@ public class GenericStatement implements Statement{
             preparedStmt.incrementVersionCounter();
             preparedStmt.setActivationClass(ac);
             preparedStmt.setNeedsSavepoint(qt.needsSavepoint());
+            preparedStmt.setRequiresOrderedResults(qt.requiresOrderedResults());
             preparedStmt.setCursorInfo((CursorInfo)cc.getCursorInfo());
             preparedStmt.setIsAtomic(qt.isAtomic());
             preparedStmt.setExecuteStatementNameAndSchema(qt.executeStatementName(), qt.executeSchemaName());
@@ -60,6 +60,7 @@ public class CursorNode extends DMLStatementNode{
     private ValueNode offset;     // <result offset clause> value
     private ValueNode fetchFirst; // <fetch first clause> value
     private boolean hasJDBClimitClause; // true if using JDBC limit/offset escape syntax
+    private boolean hasOrderBy; // orderByList is handed over to the result set during optimization
     private String statementType;
     private int updateMode;
     private boolean needTarget;
@@ -112,6 +113,7 @@ public class CursorNode extends DMLStatementNode{
         this.name=(String)name;
         this.statementType=(String)statementType;
         this.orderByList=(OrderByList)orderByList;
+        this.hasOrderBy=orderByList!=null;
         this.offset=(ValueNode)offset;
         this.fetchFirst=(ValueNode)fetchFirst;
         this.hasJDBClimitClause=(hasJDBClimitClause!=null) && (Boolean)hasJDBClimitClause;
@@ -481,6 +483,15 @@ public class CursorNode extends DMLStatementNode{
         return false;
     }
 
+    /**
+     * Only a cursor with an ORDER BY clause needs its rows in order, whether or not
+     * the optimizer had to sort them to get that order.
+     */
+    @Override
+    public boolean requiresOrderedResults(){
+        return hasOrderBy;
+    }
+
     /**
      * Get information about this cursor.  For sps,
      * this is info saved off of the original query
@@ -234,6 +234,14 @@ public class ExecSPSNode extends StatementNode
 		return ps.getCursorInfo();
 	}
 
+	/**
+	 * Whether the underlying statement's results must be returned in order.
+	 */
+	public boolean requiresOrderedResults()
+	{
+		return ps.requiresOrderedResults();
+	}
+
 	/**
 	 * Return a description of the ? parameters for the statement
 	 * represented by this query tree.  Just return the params
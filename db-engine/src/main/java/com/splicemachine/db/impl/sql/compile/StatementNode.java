@@ -96,6 +96,16 @@ public abstract class StatementNode extends QueryTreeNode{
      */
     public boolean needsSavepoint(){ return true; }
 
+    /**
+     * Returns whether the rows of this statement's result set must be returned in the
+     * order in which they are produced, because the statement asks for an order.
+     * <p/>
+     * This implementation returns true, sub-classes which know better can override it.
+     *
+     * @return boolean    Whether or not the order of this Statement's results matters
+     */
+    public boolean requiresOrderedResults(){ return true; }
+
     /**
      * Get the name of the SPS that is used to execute this statement. Only
      * relevant for an ExecSPSNode -- otherwise, returns null.
@@ -59,6 +59,8 @@ public class SpliceDefaultCompactor extends DefaultCompactor {
     private String conglomId = null;
     private String tableDisplayName = null;
     private String indexDisplayName = null;
+    private boolean collectStatistics = false;
+    private CompactionStatisticsRecorder statistics = null;
 
     private static final String TABLE_DISPLAY_NAME_ATTR = SIConstants.TABLE_DISPLAY_NAME_ATTR;
     private static final String INDEX_DISPLAY_NAME_ATTR = SIConstants.INDEX_DISPLAY_NAME_ATTR;
@@ -80,10 +82,16 @@ public class SpliceDefaultCompactor extends DefaultCompactor {
         this.smallestReadPoint = smallestReadPoint;
     }
 
+    public SpliceDefaultCompactor(final Configuration conf, final Store store, long smallestReadPoint, boolean collectStatistics) {
+        this(conf, store, smallestReadPoint);
+        this.collectStatistics = collectStatistics;
+    }
+
     @Override
     public List<Path> compact(CompactionRequest request, CompactionThroughputController throughputController) throws IOException {
+        collectStatistics = request.isAllFiles();
         if(!allowSpark || store.getRegionInfo().isSystemTable())
-            return super.compact(request, throughputController);
+            return attachStatistics(request, super.compact(request, throughputController));
         if (LOG.isTraceEnabled())
             SpliceLogUtils.trace(LOG, "compact(): request=%s", request);
 
@@ -120,7 +128,7 @@ public class SpliceDefaultCompactor extends DefaultCompactor {
             } catch (ExecutionException e) {
                 if (e.getCause() instanceof RejectedExecutionException) {
                     LOG.warn("Spark compaction execution rejected, falling back to RegionServer execution", e.getCause());
-                    return super.compact(request, throughputController);
+                    return attachStatistics(request, super.compact(request, throughputController));
                 }
                 throw Exceptions.rawIOException(e.getCause());
             } catch (TimeoutException e) {
@@ -147,6 +155,7 @@ public class SpliceDefaultCompactor extends DefaultCompactor {
 
         SpliceCompactionRequest scr = (SpliceCompactionRequest) request;
         scr.preStorefilesRename();
+        scr.setStatistics(result.getStatistics());
 
         List<Path> paths = new ArrayList<>();
         for (String spath : sPaths) {
@@ -155,13 +164,37 @@ public class SpliceDefaultCompactor extends DefaultCompactor {
         return paths;
     }
 
+    /**
+     * Complete the statistics collected by the last compaction, if any.
+     *
+     * @param paths the files written by the compaction
+     * @return the statistics, to be persisted once the files are committed to the store, or {@code null}
+     */
+    public CompactionStatistics finishStatistics(List<Path> paths) {
+        CompactionStatisticsRecorder recorder = statistics;
+        statistics = null;
+        if (recorder == null || paths == null || paths.isEmpty()) {
+            return null;
+        }
+        return recorder.finish(store.getFileSystem(), paths);
+    }
+
+    private List<Path> attachStatistics(CompactionRequest request, List<Path> paths) {
+        CompactionStatistics collected = finishStatistics(paths);
+        if (collected != null && request instanceof SpliceCompactionRequest) {
+            ((SpliceCompactionRequest) request).setStatistics(collected);
+        }
+        return paths;
+    }
+
     private SparkCompactionFunction getCompactionFunction() {
         return new SparkCompactionFunction(
             smallestReadPoint,
             store.getTableName().getNamespace(),
             store.getTableName().getQualifier(),
             store.getRegionInfo(),
-            store.getFamily().getName());
+            store.getFamily().getName(),
+            collectStatistics);
     }
 
     private String getScope(CompactionRequest request) {
@@ -411,12 +444,16 @@ public class SpliceDefaultCompactor extends DefaultCompactor {
         }
         long now = 0;
         boolean hasMore;
+        statistics = CompactionStatisticsRecorder.create(store, collectStatistics);
         int compactionKVMax = this.conf.getInt(HConstants.COMPACTION_KV_MAX, HConstants.COMPACTION_KV_MAX_DEFAULT);
         ScannerContext scannerContext =
                 ScannerContext.newBuilder().setBatchLimit(compactionKVMax).build();
 
         do {
             hasMore = scanner.next(cells, scannerContext);
+            if (statistics != null) {
+                statistics.record(cells);
+            }
             if (LOG.isDebugEnabled()) {
                 now = EnvironmentEdgeManager.currentTime();
             }
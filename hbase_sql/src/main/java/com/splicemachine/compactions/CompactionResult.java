@@ -24,6 +24,7 @@ import java.util.List;
  */
 public class CompactionResult extends AbstractOlapResult {
     private List<String> paths;
+    private CompactionStatistics statistics;
 
     public CompactionResult() {
     }
@@ -32,10 +33,22 @@ public class CompactionResult extends AbstractOlapResult {
         this.paths = paths;
     }
 
+    public CompactionResult(List<String> paths, CompactionStatistics statistics) {
+        this.paths = paths;
+        this.statistics = statistics;
+    }
+
     public List<String> getPaths() {
         return paths;
     }
 
+    /**
+     * @return the statistics collected by the compaction, or {@code null} if none were collected
+     */
+    public CompactionStatistics getStatistics() {
+        return statistics;
+    }
+
     @Override
     public boolean isSuccess(){
         return true;
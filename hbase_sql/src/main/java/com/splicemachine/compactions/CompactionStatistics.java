@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.compactions;
+
+import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.stats.PartitionStatisticsWriter;
+import com.splicemachine.utils.SpliceLogUtils;
+import org.apache.log4j.Logger;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statistics of a region collected by a major compaction, waiting for the compacted files to be
+ * committed to the store.
+ *
+ * They are handed from the compactor (which may be running in Spark) to the {@link SpliceCompactionRequest},
+ * and only written to the statistics tables once the store has committed the files they describe.
+ */
+public class CompactionStatistics implements Externalizable{
+    private static final Logger LOG=Logger.getLogger(CompactionStatistics.class);
+
+    private long conglomerateId;
+    private String partitionId;
+    private List<ExecRow> rows;
+    private long rowCount;
+    private long cellCount;
+    private long compactionTime;
+    private long collectionTime;
+
+    public CompactionStatistics(){
+    }
+
+    public CompactionStatistics(long conglomerateId,String partitionId,List<ExecRow> rows,
+                                long rowCount,long cellCount,long compactionTime,long collectionTime){
+        this.conglomerateId=conglomerateId;
+        this.partitionId=partitionId;
+        this.rows=rows;
+        this.rowCount=rowCount;
+        this.cellCount=cellCount;
+        this.compactionTime=compactionTime;
+        this.collectionTime=collectionTime;
+    }
+
+    /**
+     * Write out the statistics. Called once the compacted files have been committed to the store.
+     *
+     * Failures are logged, and never fail the compaction.
+     */
+    public void persist(){
+        long persistStart=System.nanoTime();
+        try{
+            PartitionStatisticsWriter.write(conglomerateId,Collections.singletonList(new PartitionStatisticsWriter.Update(){
+                @Override
+                public String getPartitionId(){
+                    return partitionId;
+                }
+
+                @Override
+                public List<ExecRow> statistics(PartitionStatisticsDescriptor existing){
+                    return rows;
+                }
+            }));
+        }catch(Exception e){
+            LOG.warn("Unable to store statistics collected during compaction of "+partitionId,e);
+            return;
+        }
+        if(LOG.isInfoEnabled()){
+            SpliceLogUtils.info(LOG,"Collected statistics during major compaction of %s: rows=%d, cells=%d, "+
+                            "compactionTime=%d ms, collectionTime=%d ms (%.1f%% of compaction), persistTime=%d ms",
+                    partitionId,rowCount,cellCount,
+                    TimeUnit.NANOSECONDS.toMillis(compactionTime),
+                    TimeUnit.NANOSECONDS.toMillis(collectionTime),
+                    compactionTime>0?100d*collectionTime/compactionTime:0d,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-persistStart));
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException{
+        out.writeLong(conglomerateId);
+        out.writeUTF(partitionId);
+        out.writeInt(rows.size());
+        for(ExecRow row:rows){
+            out.writeObject(row);
+        }
+        out.writeLong(rowCount);
+        out.writeLong(cellCount);
+        out.writeLong(compactionTime);
+        out.writeLong(collectionTime);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException{
+        conglomerateId=in.readLong();
+        partitionId=in.readUTF();
+        int size=in.readInt();
+        rows=new ArrayList<>(size);
+        for(int i=0;i<size;i++){
+            rows.add((ExecRow)in.readObject());
+        }
+        rowCount=in.readLong();
+        cellCount=in.readLong();
+        compactionTime=in.readLong();
+        collectionTime=in.readLong();
+    }
+}
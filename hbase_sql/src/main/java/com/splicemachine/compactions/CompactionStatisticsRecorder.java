@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.compactions;
+
+import com.splicemachine.access.HConfiguration;
+import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.constants.EnvUtils;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.stats.CollectedColumns;
+import com.splicemachine.derby.impl.stats.CompactionStatisticsCollector;
+import com.splicemachine.si.data.hbase.coprocessor.TableType;
+import com.splicemachine.si.impl.driver.SIDriver;
+import com.splicemachine.storage.DataCell;
+import com.splicemachine.storage.HCell;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.regionserver.Store;
+import org.apache.log4j.Logger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the statistics of a region from the cells written by a major compaction.
+ *
+ * Statistics are strictly a side effect: any failure to collect or store them is logged, and
+ * the compaction carries on regardless.
+ */
+@NotThreadSafe
+class CompactionStatisticsRecorder{
+    private static final Logger LOG=Logger.getLogger(CompactionStatisticsRecorder.class);
+
+    private final CompactionStatisticsCollector collector;
+    private final List<DataCell> dataCells=new ArrayList<>();
+    private final long startTime;
+    private boolean failed;
+
+    private CompactionStatisticsRecorder(CompactionStatisticsCollector collector){
+        this.collector=collector;
+        this.startTime=System.nanoTime();
+    }
+
+    /**
+     * @param store the store being compacted
+     * @param major whether the compaction is of all the files in the store
+     * @return a recorder for the compaction, or {@code null} if statistics should not be collected for it.
+     */
+    static CompactionStatisticsRecorder create(Store store,boolean major){
+        SConfiguration config=HConfiguration.getConfiguration();
+        if(!major || !config.isCollectStatisticsOnMajorCompaction()) return null;
+        if(EnvUtils.getTableType(config,store.getTableName())!=TableType.USER_TABLE) return null;
+        try{
+            long conglomerateId=Long.parseLong(store.getTableName().getQualifierAsString());
+            CollectedColumns columns=CollectedColumns.forConglomerate(conglomerateId);
+            if(columns==null) return null;
+            String partitionId=store.getRegionInfo().getRegionNameAsString();
+            return new CompactionStatisticsRecorder(new CompactionStatisticsCollector(columns,partitionId,SIDriver.driver().getTxnSupplier()));
+        }catch(Exception e){
+            LOG.warn("Unable to collect statistics during compaction of "+store.getRegionInfo().getRegionNameAsString(),e);
+            return null;
+        }
+    }
+
+    /**
+     * Record the cells written by the compaction.
+     */
+    void record(List<Cell> cells){
+        if(failed) return;
+        try{
+            for(Cell cell:cells){
+                dataCells.add(new HCell(cell));
+            }
+            collector.collect(dataCells);
+        }catch(Exception e){
+            LOG.warn("Unable to collect statistics for "+collector.getPartitionId()+", abandoning collection",e);
+            failed=true;
+        }finally{
+            dataCells.clear();
+        }
+    }
+
+    /**
+     * Complete the collection. Called once the compaction has written its files, but before they are
+     * committed to the store: the statistics are only persisted once they are, see {@link CompactionStatistics#persist()}.
+     *
+     * @param fs the file system the compaction wrote to
+     * @param paths the files written by the compaction
+     * @return the collected statistics, sized from the written files, or {@code null} if they could not be collected.
+     */
+    CompactionStatistics finish(FileSystem fs,List<Path> paths){
+        if(failed) return null;
+        try{
+            long compactionTime=System.nanoTime()-startTime;
+            long partitionSize=0l;
+            for(Path path:paths){
+                partitionSize+=fs.getFileStatus(path).getLen();
+            }
+            List<ExecRow> rows=collector.finish(partitionSize);
+            return new CompactionStatistics(collector.getConglomerateId(),collector.getPartitionId(),rows,
+                    collector.getRowCount(),collector.getCellCount(),compactionTime,collector.getCollectionTime());
+        }catch(Exception e){
+            LOG.warn("Unable to collect statistics for "+collector.getPartitionId(),e);
+            return null;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicReference;
 public class SpliceCompactionRequest extends CompactionRequest {
     private static final Logger LOG = Logger.getLogger(SpliceCompactionRequest.class);
     private AtomicReference<MemstoreAware> memstoreAware;
+    private CompactionStatistics statistics;
 
     public void preStorefilesRename() throws IOException {
         assert memstoreAware != null;
@@ -62,6 +63,25 @@ public class SpliceCompactionRequest extends CompactionRequest {
         }
     }
 
+    /**
+     * @param statistics the statistics collected by the compaction, to be persisted once its files are committed
+     */
+    public void setStatistics(CompactionStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Persist the statistics collected by the compaction, if any. Called once the compacted files
+     * have been committed to the store.
+     */
+    public void postStorefilesCommit() {
+        CompactionStatistics toPersist = statistics;
+        statistics = null;
+        if (toPersist != null) {
+            toPersist.persist();
+        }
+    }
+
     public void setMemstoreAware(AtomicReference<MemstoreAware> memstoreAware) {
         this.memstoreAware = memstoreAware;
     }
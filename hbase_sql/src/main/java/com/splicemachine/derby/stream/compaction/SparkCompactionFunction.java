@@ -42,6 +42,7 @@ import org.apache.log4j.Logger;
 
 import com.splicemachine.access.HConfiguration;
 import com.splicemachine.access.api.PartitionFactory;
+import com.splicemachine.compactions.CompactionStatistics;
 import com.splicemachine.compactions.SpliceDefaultCompactor;
 import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
 import com.splicemachine.derby.impl.SpliceSpark;
@@ -52,25 +53,28 @@ import com.splicemachine.storage.ClientPartition;
 import com.splicemachine.utils.SpliceLogUtils;
 import scala.Tuple2;
 
-public class SparkCompactionFunction extends SpliceFlatMapFunction<SpliceOperation,Iterator<Tuple2<Integer,Iterator>>,String> implements Externalizable {
+public class SparkCompactionFunction extends SpliceFlatMapFunction<SpliceOperation,Iterator<Tuple2<Integer,Iterator>>,Tuple2<String,CompactionStatistics>> implements Externalizable {
     private static final Logger LOG = Logger.getLogger(SparkCompactionFunction.class);
     private long smallestReadPoint;
     private byte[] namespace;
     private byte[] tableName;
     private byte[] storeColumn;
     private HRegionInfo hri;
+    private boolean collectStatistics;
 
     public SparkCompactionFunction() {
 
     }
 
     public SparkCompactionFunction(long smallestReadPoint, byte[] namespace,
-                                   byte[] tableName, HRegionInfo hri, byte[] storeColumn) {
+                                   byte[] tableName, HRegionInfo hri, byte[] storeColumn,
+                                   boolean collectStatistics) {
         this.smallestReadPoint = smallestReadPoint;
         this.namespace = namespace;
         this.tableName = tableName;
         this.hri = hri;
         this.storeColumn = storeColumn;
+        this.collectStatistics = collectStatistics;
     }
 
     @Override
@@ -86,6 +90,7 @@ public class SparkCompactionFunction extends SpliceFlatMapFunction<SpliceOperati
         out.write(hriBytes);
         out.writeInt(storeColumn.length);
         out.write(storeColumn);
+        out.writeBoolean(collectStatistics);
     }
 
     @Override
@@ -105,12 +110,13 @@ public class SparkCompactionFunction extends SpliceFlatMapFunction<SpliceOperati
         }
         storeColumn = new byte[in.readInt()];
         in.readFully(storeColumn);
+        collectStatistics = in.readBoolean();
         SpliceSpark.setupSpliceStaticComponents();
     }
 
     @SuppressWarnings("unchecked")
     @Override
-    public Iterator<String> call(Iterator it) throws Exception {
+    public Iterator<Tuple2<String,CompactionStatistics>> call(Iterator it) throws Exception {
 
         ArrayList<StoreFile> readersToClose = new ArrayList<StoreFile>();
         Configuration conf = HConfiguration.unwrapDelegate();
@@ -147,8 +153,10 @@ public class SparkCompactionFunction extends SpliceFlatMapFunction<SpliceOperati
             );
         }
 
-        SpliceDefaultCompactor sdc = new SpliceDefaultCompactor(conf, store, smallestReadPoint);
+        SpliceDefaultCompactor sdc = new SpliceDefaultCompactor(conf, store, smallestReadPoint, collectStatistics);
         List<Path> paths = sdc.sparkCompact(new CompactionRequest(readersToClose));
+        // the statistics travel back with the paths, and are persisted once the region server has committed the files
+        CompactionStatistics statistics = sdc.finishStatistics(paths);
 
         if (LOG.isTraceEnabled()) {
             StringBuilder sb = new StringBuilder(100);
@@ -160,7 +168,7 @@ public class SparkCompactionFunction extends SpliceFlatMapFunction<SpliceOperati
         }
         return (paths == null || paths.isEmpty()) ?
                 EmptyListIterator.INSTANCE:
-            new SingletonIterator(paths.get(0).toString());
+            new SingletonIterator(new Tuple2<>(paths.get(0).toString(), statistics));
     }
 
 }
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.EngineDriver;
+import com.splicemachine.access.HConfiguration;
+import com.splicemachine.access.api.PartitionAdmin;
+import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.access.hbase.HBaseConnectionFactory;
+import com.splicemachine.access.hbase.HBaseTableInfoFactory;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.conn.LanguageConnectionContext;
+import com.splicemachine.db.iapi.sql.dictionary.ConglomerateDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.ConstraintDescriptorList;
+import com.splicemachine.db.iapi.sql.dictionary.DataDictionary;
+import com.splicemachine.db.iapi.sql.dictionary.ReferencedKeyConstraintDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.TableDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.ddl.DDLMessage;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.impl.SpliceSpark;
+import com.splicemachine.derby.impl.sql.execute.operations.InsertOperation;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.stream.iapi.DataSet;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import com.splicemachine.derby.stream.iapi.TableWriter;
+import com.splicemachine.derby.stream.output.DataSetWriter;
+import com.splicemachine.derby.stream.output.insert.InsertTableWriterBuilder;
+import com.splicemachine.pipeline.ErrorState;
+import com.splicemachine.pipeline.Exceptions;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.protobuf.ProtoUtil;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.driver.SIDriver;
+import com.splicemachine.storage.DataCell;
+import com.splicemachine.storage.DataScan;
+import com.splicemachine.storage.DataScanner;
+import com.splicemachine.storage.Partition;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.log4j.Logger;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.function.PairFunction;
+import org.apache.spark.storage.StorageLevel;
+import scala.Tuple2;
+import scala.util.Either;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserts rows by writing them (and their index rows) directly into HFiles, which are then bulk loaded
+ * into the table and its indexes, instead of sending each row through the write pipeline.
+ *
+ * The import happens in four steps:
+ * <ol>
+ *     <li>Every row is encoded into its base table row and index rows, and the encoded rows are sampled
+ *     to estimate the size and key distribution of each conglomerate.</li>
+ *     <li>Each conglomerate is split at sampled keys, so that the new data is spread across regions of
+ *     about {@link SConfiguration#getBulkImportRegionSize()} bytes.</li>
+ *     <li>The encoded rows are partitioned by region, sorted, and written out as one HFile per region.</li>
+ *     <li>Once every HFile has been written, the HFiles are loaded into their regions.</li>
+ * </ol>
+ *
+ * Rows are written under a child transaction of the import, which is only committed once every HFile
+ * has been loaded. Should anything fail, the child transaction is rolled back, which makes any rows that
+ * were already loaded invisible. Because the write pipeline is bypassed, imported rows are not checked
+ * against rows which are already in the table, so this is only used for tables without triggers or
+ * foreign keys, and for tables with unique keys only while they are empty
+ * (see {@link #canBulkImport(OperationContext,long)}). Since no lock keeps other transactions from writing
+ * to such a table during the import, the import fails with a write-write conflict if any of them did.
+ */
+public class BulkImportDataSetWriter<K> implements DataSetWriter{
+    private static final Logger LOG=Logger.getLogger(BulkImportDataSetWriter.class);
+
+    private final JavaPairRDD<K,Either<Exception,ExecRow>> rdd;
+    private final InsertTableWriterBuilder writerBuilder;
+    private final OperationContext<? extends SpliceOperation> opContext;
+    private final String bulkImportDirectory;
+    private final long heapConglom;
+    private TxnView txn;
+
+    public BulkImportDataSetWriter(JavaPairRDD<K,Either<Exception,ExecRow>> rdd,
+                                   InsertTableWriterBuilder writerBuilder,
+                                   OperationContext<? extends SpliceOperation> opContext,
+                                   String bulkImportDirectory){
+        this.rdd=rdd;
+        this.writerBuilder=writerBuilder;
+        this.opContext=opContext;
+        this.bulkImportDirectory=bulkImportDirectory;
+        this.heapConglom=writerBuilder.getHeapConglom();
+        this.txn=writerBuilder.getTxn()!=null?writerBuilder.getTxn():opContext.getTxn();
+    }
+
+    /**
+     * Triggers and foreign key checks are run by the write pipeline, so rows which need them can't be
+     * written directly into HFiles.
+     *
+     * Nor can rows for a table with a primary key or unique index which already holds rows: duplicate keys
+     * are only detected among the imported rows, so an imported row with an existing key would silently
+     * replace the existing row, and leave that row's index entries behind. Even among the imported rows, a
+     * duplicate key is only detected once the row's other cells have been written, so it can't be dropped
+     * as a bad record; imports into such tables which accept bad records go through the write pipeline.
+     *
+     * @return true if the rows for {@code heapConglom} can be bulk imported
+     */
+    public static boolean canBulkImport(OperationContext operationContext,long heapConglom) throws StandardException{
+        InsertOperation insertOperation=(InsertOperation)operationContext.getOperation();
+        if(insertOperation!=null && insertOperation.getTriggerHandler()!=null)
+            return false;
+        DataDictionary dd=operationContext.getActivation().getLanguageConnectionContext().getDataDictionary();
+        TableDescriptor td=dd.getTableDescriptor(dd.getConglomerateDescriptor(heapConglom).getTableID());
+        ConstraintDescriptorList constraints=dd.getConstraintDescriptors(td);
+        for(int i=0;i<constraints.size();i++){
+            if(constraints.elementAt(i).getConstraintType()==DataDictionary.FOREIGNKEY_CONSTRAINT)
+                return false;
+        }
+        if(!hasUniqueKey(dd,td))
+            return true;
+        if(insertOperation!=null && operationContext.isPermissive() && !insertOperation.isAboveFailThreshold(1))
+            return false;
+        return isEmpty(heapConglom);
+    }
+
+    private static boolean hasUniqueKey(DataDictionary dd,TableDescriptor td) throws StandardException{
+        ConstraintDescriptorList constraints=dd.getConstraintDescriptors(td);
+        for(int i=0;i<constraints.size();i++){
+            int type=constraints.elementAt(i).getConstraintType();
+            if(type==DataDictionary.PRIMARYKEY_CONSTRAINT || type==DataDictionary.UNIQUE_CONSTRAINT)
+                return true;
+        }
+        for(ConglomerateDescriptor cd:td.getConglomerateDescriptorList()){
+            if(cd.isIndex() && (cd.getIndexDescriptor().isUnique() || cd.getIndexDescriptor().isUniqueWithDuplicateNulls()))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Whether the table holds no rows at all. The check ignores transactions, so a table whose rows
+     * have all been deleted (but not yet compacted away) does not count as empty.
+     */
+    private static boolean isEmpty(long conglomerate) throws StandardException{
+        DataScan scan=SIDriver.driver().baseOperationFactory().newScan().cacheRows(1).batchCells(1);
+        try(Partition table=SIDriver.driver().getTableFactory().getTable(Long.toString(conglomerate));
+            DataScanner scanner=table.openScanner(scan)){
+            return scanner.next(1).isEmpty();
+        }catch(IOException e){
+            throw Exceptions.parseException(e);
+        }
+    }
+
+    @Override
+    public DataSet<LocatedRow> write() throws StandardException{
+        LanguageConnectionContext lcc=opContext.getActivation().getLanguageConnectionContext();
+        DataDictionary dd=lcc.getDataDictionary();
+        TableDescriptor td=dd.getTableDescriptor(dd.getConglomerateDescriptor(heapConglom).getTableID());
+        Map<Long,String> conglomerateNames=new HashMap<>();
+        List<DDLMessage.TentativeIndex> indexes=getIndexes(lcc,td,conglomerateNames);
+
+        SConfiguration config=EngineDriver.driver().getConfiguration();
+        Txn child;
+        try{
+            child=SIDriver.driver().lifecycleManager().beginChildTransaction(txn,txn.getIsolationLevel(),true,getDestinationTable());
+        }catch(IOException e){
+            throw Exceptions.parseException(e);
+        }
+        writerBuilder.txn(child);
+        Path stagingDirectory=new Path(bulkImportDirectory,Long.toString(child.getTxnId()));
+        boolean success=false;
+        try{
+            JavaPairRDD<BulkImportKey,byte[]> encoded=rdd
+                    .mapPartitionsToPair(new BulkImportEncodingFunction<K>(writerBuilder,indexes))
+                    .persist(StorageLevel.MEMORY_AND_DISK_SER());
+
+            Map<Long,byte[][]> splitKeys=chooseSplitKeys(encoded,conglomerateNames.keySet(),config);
+            encoded.repartitionAndSortWithinPartitions(new BulkImportPartitioner(splitKeys))
+                    .foreachPartition(new BulkImportHFileWriter(stagingDirectory.toString(),
+                            child.getTxnId(),
+                            heapConglom,
+                            td.getName(),
+                            conglomerateNames,
+                            config.getCompressionAlgorithm(),
+                            opContext));
+            encoded.unpersist(false);
+
+            // check the bad records before loading anything, so that a failed import leaves no files behind
+            InsertOperation insertOperation=((InsertOperation)opContext.getOperation());
+            ValueRow valueRow=new ValueRow(3);
+            valueRow.setColumn(1,new SQLLongint(opContext.getRecordsWritten()));
+            valueRow.setColumn(2,new SQLLongint());
+            valueRow.setColumn(3,new SQLVarchar());
+            if(insertOperation!=null && opContext.isPermissive()) {
+                long numBadRecords = opContext.getBadRecords();
+                valueRow.setColumn(2,new SQLLongint(numBadRecords));
+                if (numBadRecords > 0) {
+                    String fileName = opContext.getBadRecordFileName();
+                    valueRow.setColumn(3,new SQLVarchar(fileName));
+                    if (insertOperation.isAboveFailThreshold(numBadRecords)) {
+                        throw ErrorState.LANG_IMPORT_TOO_MANY_BAD_RECORDS.newException(fileName);
+                    }
+                }
+            }
+
+            load(stagingDirectory,conglomerateNames.keySet());
+            if(hasUniqueKey(dd,td))
+                checkForConcurrentWrites(child);
+            child.commit();
+            success=true;
+            return new SparkDataSet<>(SpliceSpark.getContext().parallelize(Collections.singletonList(new LocatedRow(valueRow)), 1));
+        }catch(IOException e){
+            throw Exceptions.parseException(e);
+        }finally{
+            if(!success)
+                rollback(child);
+            deleteQuietly(stagingDirectory);
+        }
+    }
+
+    /*
+     * A table with unique keys is only bulk imported while it is empty, but nothing stops another transaction
+     * from writing to it between that check and the load. The write pipeline would have caught such a write
+     * as a write-write conflict; here it would silently replace the imported row with the same key (or be
+     * replaced by it), so the import fails instead. Every loaded cell carries the import's transaction id, so
+     * any cell outside that version was written by somebody else. Files written by the import are skipped by
+     * their time range, so only files written by other transactions are read.
+     *
+     * Writes which arrive after the load are checked against the loaded rows by the write pipeline as usual.
+     */
+    private void checkForConcurrentWrites(TxnView child) throws StandardException{
+        long txnId=child.getTxnId();
+        try(Partition table=SIDriver.driver().getTableFactory().getTable(Long.toString(heapConglom))){
+            checkForConcurrentWrites(table,txnId,0L,txnId);
+            checkForConcurrentWrites(table,txnId,txnId+1,Long.MAX_VALUE);
+        }catch(IOException e){
+            throw Exceptions.parseException(e);
+        }
+    }
+
+    private static void checkForConcurrentWrites(Partition table,long txnId,long lowVersion,long highVersion) throws IOException{
+        DataScan scan=SIDriver.driver().baseOperationFactory().newScan().cacheRows(1).batchCells(1);
+        scan.setTimeRange(lowVersion,highVersion);
+        try(DataScanner scanner=table.openScanner(scan)){
+            List<DataCell> cells=scanner.next(1);
+            if(!cells.isEmpty())
+                throw SIDriver.driver().getExceptionFactory().writeWriteConflict(cells.get(0).version(),txnId);
+        }
+    }
+
+    @Override
+    public void setTxn(TxnView childTxn){
+        this.txn=childTxn;
+    }
+
+    @Override
+    public TableWriter getTableWriter() throws StandardException{
+        return writerBuilder.buildTableWriter();
+    }
+
+    @Override
+    public TxnView getTxn(){
+        return txn;
+    }
+
+    @Override
+    public byte[] getDestinationTable(){
+        return Bytes.toBytes(Long.toString(heapConglom));
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * One index per physical index conglomerate. Where several index descriptors share a conglomerate,
+     * a unique one determines how the conglomerate is encoded (as in DerbyContextFactoryLoader).
+     */
+    private List<DDLMessage.TentativeIndex> getIndexes(LanguageConnectionContext lcc,
+                                                       TableDescriptor td,
+                                                       Map<Long,String> conglomerateNames) throws StandardException{
+        ReferencedKeyConstraintDescriptor primaryKey=lcc.getDataDictionary().getConstraintDescriptors(td).getPrimaryKey();
+        conglomerateNames.put(heapConglom,primaryKey!=null?primaryKey.getConstraintName():td.getName());
+
+        Map<Long,ConglomerateDescriptor> indexConglomerates=new HashMap<>();
+        for(ConglomerateDescriptor cd:td.getConglomerateDescriptorList()){
+            long conglomerate=cd.getConglomerateNumber();
+            if(!cd.isIndex() || conglomerate==heapConglom) continue;
+            ConglomerateDescriptor existing=indexConglomerates.get(conglomerate);
+            if(existing==null || (!existing.getIndexDescriptor().isUnique() && cd.getIndexDescriptor().isUnique()))
+                indexConglomerates.put(conglomerate,cd);
+        }
+        List<DDLMessage.TentativeIndex> indexes=new ArrayList<>(indexConglomerates.size());
+        for(Map.Entry<Long,ConglomerateDescriptor> index:indexConglomerates.entrySet()){
+            indexes.add(ProtoUtil.createTentativeIndex(lcc,heapConglom,index.getKey(),td,
+                    index.getValue().getIndexDescriptor().getIndexDescriptor()));
+            conglomerateNames.put(index.getKey(),index.getValue().getConglomerateName());
+        }
+        return indexes;
+    }
+
+    /*
+     * Sample the encoded rows, and split each conglomerate so that the new data will be spread across
+     * regions of about the configured size. The returned split keys also include the start key of each
+     * existing region, so that no HFile crosses a region boundary.
+     */
+    private Map<Long,byte[][]> chooseSplitKeys(JavaPairRDD<BulkImportKey,byte[]> encoded,
+                                               Iterable<Long> conglomerates,
+                                               SConfiguration config) throws IOException{
+        double fraction=config.getBulkImportSampleFraction();
+        Map<Long,List<byte[]>> sampledKeys=new HashMap<>();
+        Map<Long,Long> sampledBytes=new HashMap<>();
+        for(Long conglomerate:conglomerates){
+            sampledKeys.put(conglomerate,new ArrayList<byte[]>());
+            sampledBytes.put(conglomerate,0l);
+        }
+        for(Tuple2<BulkImportKey,Integer> sample:encoded.sample(false,fraction).mapToPair(new EncodedSize()).collect()){
+            long conglomerate=sample._1().getConglomerate();
+            sampledKeys.get(conglomerate).add(sample._1().getRowKey());
+            sampledBytes.put(conglomerate,sampledBytes.get(conglomerate)+sample._2());
+        }
+
+        Map<Long,byte[][]> splitKeys=new HashMap<>();
+        try(PartitionAdmin admin=SIDriver.driver().getTableFactory().getAdmin()){
+            for(Long conglomerate:conglomerates){
+                long estimatedBytes=(long)(sampledBytes.get(conglomerate)/fraction);
+                byte[][] splits=BulkImportPartitioner.chooseSplitKeys(sampledKeys.get(conglomerate),estimatedBytes,config.getBulkImportRegionSize());
+                String table=Long.toString(conglomerate);
+                for(byte[] split:splits){
+                    try{
+                        admin.splitTable(table,split);
+                    }catch(IOException e){
+                        //the HFiles are still partitioned on this key, they'll just be loaded into a larger region
+                        LOG.warn("Unable to split conglomerate "+table+" at "+Bytes.toHex(split),e);
+                    }
+                }
+                splitKeys.put(conglomerate,BulkImportPartitioner.merge(splits,regionStartKeys(table)));
+                if(LOG.isDebugEnabled())
+                    LOG.debug("Conglomerate "+table+": estimated "+estimatedBytes+" bytes, "+splits.length+" new splits");
+            }
+        }
+        return splitKeys;
+    }
+
+    private static byte[][] regionStartKeys(String table) throws IOException{
+        try(Partition partition=SIDriver.driver().getTableFactory().getTable(table)){
+            List<Partition> regions=partition.subPartitions(true);
+            byte[][] startKeys=new byte[regions.size()][];
+            for(int i=0;i<startKeys.length;i++){
+                startKeys[i]=regions.get(i).getStartKey();
+            }
+            return startKeys;
+        }
+    }
+
+    private static void load(Path stagingDirectory,Iterable<Long> conglomerates) throws IOException{
+        Configuration conf=HConfiguration.unwrapDelegate();
+        FileSystem fs=stagingDirectory.getFileSystem(conf);
+        Connection connection=HBaseConnectionFactory.getInstance(HConfiguration.getConfiguration()).getConnection();
+        HBaseTableInfoFactory tableInfoFactory=HBaseTableInfoFactory.getInstance(HConfiguration.getConfiguration());
+        LoadIncrementalHFiles loader;
+        try{
+            loader=new LoadIncrementalHFiles(conf);
+        }catch(Exception e){
+            throw new IOException(e);
+        }
+        for(Long conglomerate:conglomerates){
+            Path directory=new Path(stagingDirectory,Long.toString(conglomerate));
+            if(!fs.exists(directory)) continue; //no rows for this conglomerate
+            TableName tableName=tableInfoFactory.getTableInfo(Long.toString(conglomerate));
+            try(Admin admin=connection.getAdmin();
+                Table table=connection.getTable(tableName);
+                RegionLocator locator=connection.getRegionLocator(tableName)){
+                loader.doBulkLoad(directory,admin,table,locator);
+            }
+        }
+    }
+
+    private static void rollback(Txn child){
+        try{
+            child.rollback();
+        }catch(IOException e){
+            LOG.error("Unable to roll back bulk import transaction "+child.getTxnId(),e);
+        }
+    }
+
+    private static void deleteQuietly(Path directory){
+        try{
+            directory.getFileSystem(HConfiguration.unwrapDelegate()).delete(directory,true);
+        }catch(IOException e){
+            LOG.warn("Unable to remove bulk import staging directory "+directory,e);
+        }
+    }
+
+    private static class EncodedSize implements PairFunction<Tuple2<BulkImportKey,byte[]>,BulkImportKey,Integer>{
+        private static final long serialVersionUID=1l;
+
+        @Override
+        public Tuple2<BulkImportKey,Integer> call(Tuple2<BulkImportKey,byte[]> row) throws Exception{
+            return new Tuple2<>(row._1(),row._1().getRowKey().length+row._2().length);
+        }
+    }
+}
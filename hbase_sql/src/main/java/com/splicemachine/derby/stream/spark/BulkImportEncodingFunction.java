@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.ddl.DDLMessage;
+import com.splicemachine.derby.impl.sql.execute.index.IndexTransformer;
+import com.splicemachine.derby.impl.sql.execute.operations.DMLWriteOperation;
+import com.splicemachine.derby.stream.ActivationHolder;
+import com.splicemachine.derby.stream.output.insert.InsertPipelineWriter;
+import com.splicemachine.derby.stream.output.insert.InsertTableWriterBuilder;
+import com.splicemachine.derby.utils.marshall.PairEncoder;
+import com.splicemachine.kvpair.KVPair;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.util.TaskCompletionListener;
+import scala.Tuple2;
+import scala.util.Either;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Encodes the rows of a bulk import exactly as the write pipeline would: each row becomes one base table row,
+ * plus one row for each index on the table.
+ *
+ * When the import accepts bad records, a row which fails its check constraints or can't be encoded is recorded
+ * as a bad record and dropped, along with all of its index rows. Once too many bad records have been seen, the
+ * remaining rows are dropped, since the import will fail anyway.
+ */
+public class BulkImportEncodingFunction<K> implements PairFlatMapFunction<Iterator<Tuple2<K,Either<Exception,ExecRow>>>,BulkImportKey,byte[]>,Externalizable{
+    private InsertTableWriterBuilder writerBuilder;
+    private List<DDLMessage.TentativeIndex> indexes;
+
+    public BulkImportEncodingFunction(){
+    }
+
+    public BulkImportEncodingFunction(InsertTableWriterBuilder writerBuilder,List<DDLMessage.TentativeIndex> indexes){
+        this.writerBuilder=writerBuilder;
+        this.indexes=indexes;
+    }
+
+    @Override
+    public Iterator<Tuple2<BulkImportKey,byte[]>> call(final Iterator<Tuple2<K,Either<Exception,ExecRow>>> rows) throws Exception{
+        InsertPipelineWriter writer=(InsertPipelineWriter)writerBuilder.buildTableWriter();
+        final PairEncoder encoder=new PairEncoder(writer.getKeyEncoder(),writer.getRowHash(),KVPair.Type.INSERT);
+        final long heapConglom=writerBuilder.getHeapConglom();
+        final IndexTransformer[] transformers=new IndexTransformer[indexes.size()];
+        final long[] indexConglomerates=new long[indexes.size()];
+        for(int i=0;i<transformers.length;i++){
+            transformers[i]=new IndexTransformer(indexes.get(i));
+            indexConglomerates[i]=indexes.get(i).getIndex().getConglomerate();
+        }
+
+        final SparkOperationContext context=(SparkOperationContext)writer.getOperationContext();
+        final DMLWriteOperation operation=context==null?null:(DMLWriteOperation)context.getOperation();
+        final ActivationHolder activationHolder=context==null?null:context.getActivationHolder();
+        if(activationHolder!=null){
+            activationHolder.reinitialize(writer.getTxn());
+            TaskContext.get().addTaskCompletionListener(new TaskCompletionListener(){
+                @Override
+                public void onTaskCompletion(TaskContext context){
+                    activationHolder.close();
+                }
+            });
+        }
+
+        return new Iterator<Tuple2<BulkImportKey,byte[]>>(){
+            private final List<Tuple2<BulkImportKey,byte[]>> encoded=new ArrayList<>(transformers.length+1);
+            private int position;
+
+            @Override
+            public boolean hasNext(){
+                while(position>=encoded.size()){
+                    if(!rows.hasNext() || (context!=null && context.isFailed())) return false;
+                    encode(rows.next()._2());
+                }
+                return true;
+            }
+
+            @Override
+            public Tuple2<BulkImportKey,byte[]> next(){
+                if(!hasNext()) throw new NoSuchElementException();
+                return encoded.get(position++);
+            }
+
+            @Override
+            public void remove(){
+                throw new UnsupportedOperationException();
+            }
+
+            private void encode(Either<Exception,ExecRow> row){
+                encoded.clear();
+                position=0;
+                if(row.isLeft())
+                    throw new RuntimeException(row.left().get());
+                ExecRow execRow=row.right().get();
+                try{
+                    if(operation!=null)
+                        operation.evaluateGenerationClauses(execRow);
+                    KVPair pair=encoder.encode(execRow);
+                    encoded.add(new Tuple2<>(new BulkImportKey(heapConglom,pair.getRowKey()),pair.getValue()));
+                    for(int i=0;i<transformers.length;i++){
+                        KVPair indexPair=transformers[i].translate(pair);
+                        if(indexPair!=null)
+                            encoded.add(new Tuple2<>(new BulkImportKey(indexConglomerates[i],indexPair.getRowKey()),indexPair.getValue()));
+                    }
+                }catch(Exception e){
+                    if(context!=null && context.isPermissive()){
+                        // none of the row's cells are written, just as if the write pipeline had rejected it
+                        encoded.clear();
+                        context.recordBadRecord(e.getLocalizedMessage()+execRow.toString(),e);
+                        return;
+                    }
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException{
+        out.writeObject(writerBuilder);
+        out.writeInt(indexes.size());
+        for(DDLMessage.TentativeIndex index:indexes){
+            byte[] bytes=index.toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException{
+        writerBuilder=(InsertTableWriterBuilder)in.readObject();
+        int size=in.readInt();
+        indexes=new ArrayList<>(size);
+        for(int i=0;i<size;i++){
+            byte[] bytes=new byte[in.readInt()];
+            in.readFully(bytes);
+            indexes.add(DDLMessage.TentativeIndex.parseFrom(bytes));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.access.HConfiguration;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import com.splicemachine.pipeline.ErrorState;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.constants.SIConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.log4j.Logger;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.VoidFunction;
+import scala.Tuple2;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes one sorted partition of a bulk import into a single HFile.
+ *
+ * Each row becomes a single packed cell, stamped with the importing transaction, exactly as the write
+ * pipeline would have written it. The file is written under a temporary name first, and is only moved
+ * to {@code <staging directory>/<conglomerate>/<family>/} once it is complete, so that failed or
+ * speculative task attempts never leave behind a file which would later be loaded.
+ *
+ * Since every row key falls into exactly one partition, a key which appears twice in a row is a duplicate
+ * in the table or unique index being written, and fails the import. It can't be dropped as a bad record,
+ * because the other cells of the same imported row have already been written to other partitions; imports
+ * which accept bad records are therefore only bulk imported into tables without unique keys, where row keys
+ * can't collide (see {@link BulkImportDataSetWriter#canBulkImport}).
+ */
+public class BulkImportHFileWriter implements VoidFunction<Iterator<Tuple2<BulkImportKey,byte[]>>>,Externalizable{
+    private static final Logger LOG=Logger.getLogger(BulkImportHFileWriter.class);
+    static final String TEMPORARY_DIRECTORY="_temporary";
+
+    private String stagingDirectory;
+    private long txnId;
+    private long heapConglom;
+    private String tableName;
+    private Map<Long,String> conglomerateNames;
+    private String compression;
+    private OperationContext operationContext;
+
+    public BulkImportHFileWriter(){
+    }
+
+    public BulkImportHFileWriter(String stagingDirectory,
+                                 long txnId,
+                                 long heapConglom,
+                                 String tableName,
+                                 Map<Long,String> conglomerateNames,
+                                 String compression,
+                                 OperationContext operationContext){
+        this.stagingDirectory=stagingDirectory;
+        this.txnId=txnId;
+        this.heapConglom=heapConglom;
+        this.tableName=tableName;
+        this.conglomerateNames=conglomerateNames;
+        this.compression=compression;
+        this.operationContext=operationContext;
+    }
+
+    @Override
+    public void call(Iterator<Tuple2<BulkImportKey,byte[]>> rows) throws Exception{
+        if(!rows.hasNext()) return;
+
+        TaskContext task=TaskContext.get();
+        Configuration conf=HConfiguration.unwrapDelegate();
+        Path temporaryFile=new Path(new Path(stagingDirectory,TEMPORARY_DIRECTORY),task.partitionId()+"_"+task.attemptNumber());
+        FileSystem fs=temporaryFile.getFileSystem(conf);
+        HFileContext context=new HFileContextBuilder()
+                .withCompression(Compression.getCompressionAlgorithmByName(compression))
+                .build();
+        StoreFile.Writer writer=new StoreFile.WriterBuilder(conf,new CacheConfig(conf),fs)
+                .withFilePath(temporaryFile)
+                .withComparator(KeyValue.COMPARATOR)
+                .withFileContext(context)
+                .build();
+
+        long conglomerate=-1;
+        long cells=0;
+        boolean success=false;
+        try{
+            byte[] lastKey=null;
+            while(rows.hasNext()){
+                Tuple2<BulkImportKey,byte[]> row=rows.next();
+                BulkImportKey key=row._1();
+                byte[] rowKey=key.getRowKey();
+                if(lastKey==null)
+                    conglomerate=key.getConglomerate();
+                else if(Bytes.equals(lastKey,rowKey))
+                    throw ErrorState.LANG_DUPLICATE_KEY_CONSTRAINT.newException(conglomerateNames.get(conglomerate),tableName);
+                writer.append(new KeyValue(rowKey,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.PACKED_COLUMN_BYTES,txnId,row._2()));
+                if(conglomerate==heapConglom && operationContext!=null)
+                    operationContext.recordWrite();
+                lastKey=rowKey;
+                cells++;
+            }
+            writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY,Bytes.toBytes(System.currentTimeMillis()));
+            writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY,Bytes.toBytes(temporaryFile.getName()));
+            writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY,Bytes.toBytes(false));
+            writer.appendTrackedTimestampsToMetadata();
+            success=true;
+        }finally{
+            writer.close();
+            if(!success)
+                fs.delete(temporaryFile,false);
+        }
+
+        Path familyDirectory=new Path(new Path(stagingDirectory,Long.toString(conglomerate)),Bytes.toString(SIConstants.DEFAULT_FAMILY_BYTES));
+        Path file=new Path(familyDirectory,Integer.toString(task.partitionId()));
+        fs.mkdirs(familyDirectory);
+        if(!fs.rename(temporaryFile,file)){
+            //another attempt at this partition has already finished
+            fs.delete(temporaryFile,false);
+        }
+        if(LOG.isDebugEnabled())
+            LOG.debug("Wrote "+cells+" cells of conglomerate "+conglomerate+" to "+file);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException{
+        out.writeUTF(stagingDirectory);
+        out.writeLong(txnId);
+        out.writeLong(heapConglom);
+        out.writeUTF(tableName);
+        out.writeObject(new HashMap<>(conglomerateNames));
+        out.writeUTF(compression);
+        out.writeBoolean(operationContext!=null);
+        if(operationContext!=null)
+            out.writeObject(operationContext);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException{
+        stagingDirectory=in.readUTF();
+        txnId=in.readLong();
+        heapConglom=in.readLong();
+        tableName=in.readUTF();
+        conglomerateNames=(Map<Long,String>)in.readObject();
+        compression=in.readUTF();
+        if(in.readBoolean())
+            operationContext=(OperationContext)in.readObject();
+    }
+}
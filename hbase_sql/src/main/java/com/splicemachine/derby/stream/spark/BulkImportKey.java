@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.primitives.Bytes;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+/**
+ * The key of a single encoded row in a bulk import: the conglomerate the row belongs to (the table itself,
+ * or one of its indexes), and its row key. Keys sort by conglomerate, then by row key, which is the order
+ * in which they have to be written into HFiles.
+ */
+public class BulkImportKey implements Comparable<BulkImportKey>, Externalizable{
+    private long conglomerate;
+    private byte[] rowKey;
+
+    public BulkImportKey(){
+    }
+
+    public BulkImportKey(long conglomerate,byte[] rowKey){
+        this.conglomerate=conglomerate;
+        this.rowKey=rowKey;
+    }
+
+    public long getConglomerate(){
+        return conglomerate;
+    }
+
+    public byte[] getRowKey(){
+        return rowKey;
+    }
+
+    @Override
+    public int compareTo(BulkImportKey o){
+        int c=Long.compare(conglomerate,o.conglomerate);
+        if(c!=0) return c;
+        return Bytes.BASE_COMPARATOR.compare(rowKey,o.rowKey);
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(this==o) return true;
+        if(!(o instanceof BulkImportKey)) return false;
+        BulkImportKey that=(BulkImportKey)o;
+        return conglomerate==that.conglomerate && Arrays.equals(rowKey,that.rowKey);
+    }
+
+    @Override
+    public int hashCode(){
+        return 31*Long.hashCode(conglomerate)+Arrays.hashCode(rowKey);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException{
+        out.writeLong(conglomerate);
+        out.writeInt(rowKey.length);
+        out.write(rowKey);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException{
+        conglomerate=in.readLong();
+        rowKey=new byte[in.readInt()];
+        in.readFully(rowKey);
+    }
+
+    @Override
+    public String toString(){
+        return conglomerate+":"+Bytes.toHex(rowKey);
+    }
+}
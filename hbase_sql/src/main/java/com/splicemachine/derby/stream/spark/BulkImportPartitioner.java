@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.primitives.Bytes;
+import org.apache.spark.Partitioner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns each encoded row of a bulk import to the region it will be loaded into. Every region of every
+ * conglomerate being written gets a partition of its own, so that each partition can be sorted and written
+ * out as a single HFile.
+ */
+public class BulkImportPartitioner extends Partitioner{
+    private static final long serialVersionUID=1l;
+
+    private final long[] conglomerates;
+    private final int[] firstPartition;
+    private final byte[][][] splitKeys;
+    private final int numPartitions;
+
+    /**
+     * @param splitKeys the sorted split keys of each conglomerate. A conglomerate with {@code n} split keys
+     *                  is divided into {@code n+1} partitions.
+     */
+    public BulkImportPartitioner(Map<Long,byte[][]> splitKeys){
+        Map<Long,byte[][]> sorted=new TreeMap<>(splitKeys);
+        this.conglomerates=new long[sorted.size()];
+        this.firstPartition=new int[sorted.size()];
+        this.splitKeys=new byte[sorted.size()][][];
+        int i=0;
+        int partitions=0;
+        for(Map.Entry<Long,byte[][]> entry:sorted.entrySet()){
+            conglomerates[i]=entry.getKey();
+            firstPartition[i]=partitions;
+            this.splitKeys[i]=entry.getValue();
+            partitions+=entry.getValue().length+1;
+            i++;
+        }
+        this.numPartitions=partitions;
+    }
+
+    @Override
+    public int numPartitions(){
+        return numPartitions;
+    }
+
+    @Override
+    public int getPartition(Object key){
+        BulkImportKey k=(BulkImportKey)key;
+        int c=Arrays.binarySearch(conglomerates,k.getConglomerate());
+        assert c>=0:"Programmer error: no partitions for conglomerate "+k.getConglomerate();
+        byte[][] keys=splitKeys[c];
+        byte[] rowKey=k.getRowKey();
+        //find the number of split keys which are <= the row key
+        int low=0;
+        int high=keys.length;
+        while(low<high){
+            int mid=(low+high)>>>1;
+            if(Bytes.BASE_COMPARATOR.compare(keys[mid],rowKey)<=0)
+                low=mid+1;
+            else
+                high=mid;
+        }
+        return firstPartition[c]+low;
+    }
+
+    /**
+     * Choose split keys which divide sampled data into regions of roughly {@code regionSize} bytes.
+     *
+     * @param sampledKeys the row keys which were sampled. They will be sorted in place.
+     * @param estimatedBytes the estimated total size of the data, extrapolated from the sample
+     * @param regionSize the number of bytes to aim for in each region
+     * @return the sorted and distinct split keys; empty if the data fits into a single region
+     */
+    public static byte[][] chooseSplitKeys(List<byte[]> sampledKeys,long estimatedBytes,long regionSize){
+        long regions=(estimatedBytes+regionSize-1)/regionSize;
+        int numRegions=(int)Math.min(regions,sampledKeys.size());
+        if(numRegions<=1) return new byte[0][];
+
+        Collections.sort(sampledKeys,Bytes.BASE_COMPARATOR);
+        List<byte[]> splits=new ArrayList<>(numRegions-1);
+        for(int i=1;i<numRegions;i++){
+            byte[] key=sampledKeys.get((int)((long)i*sampledKeys.size()/numRegions));
+            if(splits.isEmpty() || Bytes.BASE_COMPARATOR.compare(splits.get(splits.size()-1),key)<0)
+                splits.add(key);
+        }
+        return splits.toArray(new byte[splits.size()][]);
+    }
+
+    /**
+     * Merge two sorted sets of split keys, so that rows are never partitioned across an existing region boundary.
+     * Empty keys (the start of the first region) are dropped.
+     */
+    public static byte[][] merge(byte[][] splitKeys,byte[][] regionStartKeys){
+        List<byte[]> merged=new ArrayList<>(splitKeys.length+regionStartKeys.length);
+        for(byte[] key:splitKeys){
+            if(key.length>0) merged.add(key);
+        }
+        for(byte[] key:regionStartKeys){
+            if(key!=null && key.length>0) merged.add(key);
+        }
+        Collections.sort(merged,Bytes.BASE_COMPARATOR);
+        List<byte[]> distinct=new ArrayList<>(merged.size());
+        for(byte[] key:merged){
+            if(distinct.isEmpty() || !Bytes.equals(distinct.get(distinct.size()-1),key))
+                distinct.add(key);
+        }
+        return distinct.toArray(new byte[distinct.size()][]);
+    }
+}
@@ -47,6 +47,9 @@ public class SparkInsertTableWriterBuilder<K,V> extends InsertTableWriterBuilder
     @SuppressWarnings("unchecked")
     @Override
     public DataSetWriter build() throws StandardException{
+        if(bulkImportDirectory!=null && !isUpsert && BulkImportDataSetWriter.canBulkImport(operationContext,heapConglom)){
+            return new BulkImportDataSetWriter<K>((JavaPairRDD)rdd,this,operationContext,bulkImportDirectory);
+        }
         if(operationContext.getOperation()!=null){
             operationContext.getOperation().fireBeforeStatementTriggers();
         }
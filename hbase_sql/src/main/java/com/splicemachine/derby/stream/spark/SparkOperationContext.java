@@ -56,6 +56,9 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
     public LongAccumulator rowsWritten;
     public LongAccumulator retryAttempts;
     public LongAccumulator regionTooBusyExceptions;
+    public LongAccumulator baseRowsLookedUp;
+    public LongAccumulator baseRowLookupTime;
+    public LongAccumulator rowsEliminatedByJoinKeyFilter;
 
     public LongAccumulator pipelineRowsWritten;
     public LongAccumulator thrownErrorsRows;
@@ -90,6 +93,9 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         this.rowsJoinedLeft=SpliceSpark.getContext().sc().longAccumulator(baseName+" rows joined left");
         this.rowsJoinedRight=SpliceSpark.getContext().sc().longAccumulator(baseName+" rows joined right");
         this.rowsProduced=SpliceSpark.getContext().sc().longAccumulator(baseName+" rows produced");
+        this.baseRowsLookedUp=SpliceSpark.getContext().sc().longAccumulator(baseName+" base rows looked up");
+        this.baseRowLookupTime=SpliceSpark.getContext().sc().longAccumulator(baseName+" base row lookup time (ns)");
+        this.rowsEliminatedByJoinKeyFilter=SpliceSpark.getContext().sc().longAccumulator(baseName+" rows eliminated by join key filter");
         initWritePipeline();
     }
 
@@ -104,6 +110,9 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         this.rowsJoinedLeft=SpliceSpark.getContext().sc().longAccumulator("rows joined left");
         this.rowsJoinedRight=SpliceSpark.getContext().sc().longAccumulator("rows joined right");
         this.rowsProduced=SpliceSpark.getContext().sc().longAccumulator("rows produced");
+        this.baseRowsLookedUp=SpliceSpark.getContext().sc().longAccumulator("base rows looked up");
+        this.baseRowLookupTime=SpliceSpark.getContext().sc().longAccumulator("base row lookup time (ns)");
+        this.rowsEliminatedByJoinKeyFilter=SpliceSpark.getContext().sc().longAccumulator("rows eliminated by join key filter");
         initWritePipeline();
     }
 
@@ -156,6 +165,9 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         out.writeObject(catchThrownRows);
         out.writeObject(catchRetriedRows);
         out.writeObject(pipelineRowsWritten);
+        out.writeObject(baseRowsLookedUp);
+        out.writeObject(baseRowLookupTime);
+        out.writeObject(rowsEliminatedByJoinKeyFilter);
     }
 
     @Override
@@ -192,6 +204,9 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         catchThrownRows=(LongAccumulator)in.readObject();
         catchRetriedRows=(LongAccumulator)in.readObject();
         pipelineRowsWritten=(LongAccumulator)in.readObject();
+        baseRowsLookedUp=(LongAccumulator)in.readObject();
+        baseRowLookupTime=(LongAccumulator)in.readObject();
+        rowsEliminatedByJoinKeyFilter=(LongAccumulator)in.readObject();
     }
 
     @Override
@@ -314,6 +329,17 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         regionTooBusyExceptions.add(w);
     }
 
+    @Override
+    public void recordBaseRowLookups(long rows,long nanos){
+        baseRowsLookedUp.add(rows);
+        baseRowLookupTime.add(nanos);
+    }
+
+    @Override
+    public void recordJoinKeyFilterEliminations(long rows){
+        rowsEliminatedByJoinKeyFilter.add(rows);
+    }
+
     @Override
     public void recordJoinedLeft(){
         rowsJoinedLeft.add(1l);
@@ -353,6 +379,21 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         return regionTooBusyExceptions.value();
     }
 
+    @Override
+    public long getBaseRowsLookedUp(){
+        return baseRowsLookedUp.value();
+    }
+
+    @Override
+    public long getBaseRowLookupTime(){
+        return baseRowLookupTime.value();
+    }
+
+    @Override
+    public long getRecordsEliminatedByJoinKeyFilter(){
+        return rowsEliminatedByJoinKeyFilter.value();
+    }
+
 
     @Override
     public void pushScope(String displayName){
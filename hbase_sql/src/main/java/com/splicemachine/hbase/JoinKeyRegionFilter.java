@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.hbase;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyRowFilter;
+import com.splicemachine.mrio.MRConstants;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.constants.SIConstants;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.exceptions.DeserializationException;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.filter.FilterList;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Applies the {@link JoinKeyRowFilter} which a broadcast join pushed into the scan of its outer table,
+ * while the rows are being read from the region.
+ *
+ * A row which is eliminated is replaced by a single marker cell, which the scanner counts and skips.
+ */
+public class JoinKeyRegionFilter extends FilterBase{
+    private final byte[] serializedFilter;
+    private final JoinKeyRowFilter rowFilter;
+
+    public JoinKeyRegionFilter(byte[] serializedFilter) throws IOException{
+        this.serializedFilter=serializedFilter;
+        this.rowFilter=JoinKeyRowFilter.fromBytes(serializedFilter);
+    }
+
+    /**
+     * Add the filter carried in the scan's attributes (if there is one) to the scan's own filters.
+     *
+     * Scans of the memstore alone see only part of each row, so they can't tell how many versions a row has;
+     * any filter they inherited from the scan they were copied from is removed instead.
+     */
+    public static void addToScan(Scan scan) throws IOException{
+        Filter current=scan.getFilter();
+        byte[] memstoreOnly=scan.getAttribute(MRConstants.SPLICE_SCAN_MEMSTORE_ONLY);
+        if(memstoreOnly!=null && Bytes.equals(memstoreOnly,SIConstants.TRUE_BYTES)){
+            if(current instanceof JoinKeyRegionFilter)
+                scan.setFilter(null);
+            else if(current instanceof FilterList){
+                FilterList remaining=new FilterList(((FilterList)current).getOperator());
+                for(Filter f:((FilterList)current).getFilters()){
+                    if(!(f instanceof JoinKeyRegionFilter))
+                        remaining.addFilter(f);
+                }
+                scan.setFilter(remaining.getFilters().isEmpty()?null:remaining);
+            }
+            return;
+        }
+        byte[] serialized=scan.getAttribute(JoinKeyRowFilter.SCAN_ATTRIBUTE);
+        if(serialized==null || contains(current)) return;
+        JoinKeyRegionFilter filter=new JoinKeyRegionFilter(serialized);
+        if(current==null)
+            scan.setFilter(filter);
+        else
+            scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL,current,filter));
+    }
+
+    @Override
+    public ReturnCode filterKeyValue(Cell cell){
+        return ReturnCode.INCLUDE;
+    }
+
+    @Override
+    public boolean hasFilterRow(){
+        return true;
+    }
+
+    @Override
+    public void filterRowCells(List<Cell> cells) throws IOException{
+        Cell data=null;
+        for(Cell cell:cells){
+            if(CellUtil.matchingColumn(cell,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.PACKED_COLUMN_BYTES)){
+                if(data!=null) return; //more than one version, so only the scanner can tell which one is visible
+                data=cell;
+            }
+        }
+        if(data==null || data.getValueLength()<=0) return;
+        try{
+            if(rowFilter.mightMatch(data.getValueArray(),data.getValueOffset(),data.getValueLength())) return;
+        }catch(StandardException e){
+            throw new IOException(e);
+        }
+        byte[] row=CellUtil.cloneRow(data);
+        long timestamp=data.getTimestamp();
+        cells.clear();
+        cells.add(new KeyValue(row,SIConstants.DEFAULT_FAMILY_BYTES,JoinKeyRowFilter.ELIMINATED_ROW_QUALIFIER,timestamp,SIConstants.EMPTY_BYTE_ARRAY));
+    }
+
+    @Override
+    public byte[] toByteArray() throws IOException{
+        return serializedFilter;
+    }
+
+    public static JoinKeyRegionFilter parseFrom(byte[] bytes) throws DeserializationException{
+        try{
+            return new JoinKeyRegionFilter(bytes);
+        }catch(IOException e){
+            throw new DeserializationException(e);
+        }
+    }
+
+    private static boolean contains(Filter filter){
+        if(filter instanceof JoinKeyRegionFilter) return true;
+        if(filter instanceof FilterList){
+            for(Filter f:((FilterList)filter).getFilters()){
+                if(f instanceof JoinKeyRegionFilter) return true;
+            }
+        }
+        return false;
+    }
+}
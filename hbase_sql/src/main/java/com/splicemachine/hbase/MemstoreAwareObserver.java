@@ -71,6 +71,10 @@ public class MemstoreAwareObserver extends BaseRegionObserver implements Compact
     @Override
     public void postCompact(ObserverContext<RegionCoprocessorEnvironment> e,Store store,StoreFile resultFile,CompactionRequest request) throws IOException{
         BlockingProbe.blockPostCompact();
+        if (request instanceof SpliceCompactionRequest) {
+            // the compacted file has been committed to the store, so the statistics collected from it can be stored
+            ((SpliceCompactionRequest) request).postStorefilesCommit();
+        }
     }
 
     @Override
@@ -157,6 +161,12 @@ public class MemstoreAwareObserver extends BaseRegionObserver implements Compact
         super.postClose(e, abortRequested);
     }
 
+    @Override
+    public RegionScanner preScannerOpen(ObserverContext<RegionCoprocessorEnvironment> e,Scan scan,RegionScanner s) throws IOException{
+        JoinKeyRegionFilter.addToScan(scan);
+        return super.preScannerOpen(e,scan,s);
+    }
+
     @Override
     public KeyValueScanner preStoreScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c,Store store,Scan scan,NavigableSet<byte[]> targetCols,KeyValueScanner s) throws IOException{
         if (scan.getAttribute(MRConstants.SPLICE_SCAN_MEMSTORE_ONLY) != null &&
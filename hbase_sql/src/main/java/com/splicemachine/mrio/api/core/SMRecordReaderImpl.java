@@ -26,6 +26,9 @@ import com.splicemachine.derby.impl.sql.execute.operations.scanner.TableScannerB
 import com.splicemachine.derby.impl.store.access.hbase.HBaseRowLocation;
 import com.splicemachine.derby.stream.ActivationHolder;
 import com.splicemachine.derby.stream.spark.SparkOperationContext;
+import com.splicemachine.derby.utils.stats.BlockSample;
+import com.splicemachine.hbase.BytesCopyTaskSplitter;
+import com.splicemachine.hbase.JoinKeyRegionFilter;
 import com.splicemachine.metrics.Metrics;
 import com.splicemachine.mrio.MRConstants;
 import com.splicemachine.primitives.Bytes;
@@ -65,6 +68,9 @@ public class SMRecordReaderImpl extends RecordReader<RowLocation, ExecRow> {
     private boolean statisticsRun = false;
 	private Txn localTxn;
 	private ActivationHolder activationHolder;
+	private BlockSample sample;
+	private List<byte[]> blockBoundaries;
+	private SparkOperationContext operationContext;
 
 
 	public SMRecordReaderImpl(Configuration config) {
@@ -88,7 +94,6 @@ public class SMRecordReaderImpl extends RecordReader<RowLocation, ExecRow> {
 			throw new IOException("splice scan info was not serialized to task, failing");
 		try {
 			builder = TableScannerBuilder.getTableScannerBuilderFromBase64String(tableScannerAsString);
-			SparkOperationContext operationContext = null;
 			if (operationContextAsString != null) {
 				operationContext = (SparkOperationContext) SerializationUtils.deserialize(Base64.decodeBase64(operationContextAsString));
 			}
@@ -108,6 +113,9 @@ public class SMRecordReaderImpl extends RecordReader<RowLocation, ExecRow> {
             // TODO (wjk): this seems weird (added with DB-4483)
             this.statisticsRun = AbstractSMInputFormat.oneSplitPerRegion(config);
 	    restart(scan.getStartKey());
+            if (statisticsRun && builder.getSampleFraction() < 1d)
+                startSample();
+            BlockSample.current.set(sample);
 
             if (operationContext != null) {
                 activationHolder = operationContext.getActivationHolder();
@@ -124,8 +132,13 @@ public class SMRecordReaderImpl extends RecordReader<RowLocation, ExecRow> {
 	public boolean nextKeyValue() throws IOException, InterruptedException {
 		try {
 			ExecRow nextRow = siTableScanner.next();
+            while (nextRow == null && sample != null && nextSampleBlock()) {
+                nextRow = siTableScanner.next();
+            }
             RowLocation nextLocation = siTableScanner.getCurrentRowLocation();
 			if (nextRow != null) {
+                if (sample != null)
+                    sample.recordRow();
 				currentRow = nextRow.getClone();
                 if (nextLocation!=null)
     				rowLocation = new HBaseRowLocation(nextLocation.getBytes());
@@ -174,6 +187,7 @@ public class SMRecordReaderImpl extends RecordReader<RowLocation, ExecRow> {
         if (activationHolder!=null) {
             //activationHolder.close();
         }
+        recordJoinKeyFilterEliminations();
 
         for (AutoCloseable c : closeables) {
 			if (c != null) {
@@ -213,6 +227,8 @@ public class SMRecordReaderImpl extends RecordReader<RowLocation, ExecRow> {
             // Hack added to fix statistics run... DB-4752
             if (statisticsRun)
                 driver.getPartitionInfoCache().invalidate(htable.getName());
+            //the store files are read here rather than in the region server, so the join key filter is applied here too
+            JoinKeyRegionFilter.addToScan(scan);
             Partition clientPartition = new ClientPartition(instance.getConnection(),htable.getName(),htable,clock,driver.getPartitionInfoCache());
 			SplitRegionScanner srs = new SplitRegionScanner(scan,
 					htable,
@@ -244,6 +260,50 @@ public class SMRecordReaderImpl extends RecordReader<RowLocation, ExecRow> {
 	}
 
 
+    /*
+     * Read only a sample of the blocks of the region, as divided up by the block index of its store files,
+     * rather than all of it. The blocks which are not sampled are never read.
+     */
+    private void startSample() throws IOException {
+        blockBoundaries = BytesCopyTaskSplitter.getCutPoints(hregion, scan.getStartRow(), scan.getStopRow(),
+                hregion.getRegionInfo().getEndKey());
+        sample = BlockSample.select(blockBoundaries.size() - 1, builder.getSampleFraction(),
+                Arrays.hashCode(hregion.getRegionInfo().getRegionName()));
+        if (LOG.isDebugEnabled())
+            SpliceLogUtils.debug(LOG, "Sampling %d of %d blocks of region %s", sample.sampledBlocks(), sample.numBlocks(),
+                    hregion.getRegionInfo().getRegionNameAsString());
+        nextSampleBlock();
+    }
+
+    /*
+     * Close the scanner of the current block, and open one over the next sampled block.
+     */
+    private boolean nextSampleBlock() throws IOException {
+        int block = sample.nextBlock();
+        if (block < 0)
+            return false;
+        closeables.remove(siTableScanner.getRegionScanner());
+        closeables.remove(siTableScanner);
+        recordJoinKeyFilterEliminations();
+        try {
+            siTableScanner.close(); //closes the region scanner as well
+        } catch (StandardException e) {
+            throw new IOException(e);
+        }
+        localTxn.commit();
+        scan.setStopRow(blockBoundaries.get(block + 1));
+        restart(blockBoundaries.get(block));
+        return true;
+    }
+
+    private void recordJoinKeyFilterEliminations() {
+        if (siTableScanner != null && operationContext != null) {
+            long eliminated = siTableScanner.getRowsEliminatedByJoinFilter();
+            if (eliminated > 0)
+                operationContext.recordJoinKeyFilterEliminations(eliminated);
+        }
+    }
+
     public int[] getExecRowTypeFormatIds() {
 		if (builder == null) {
 			String tableScannerAsString = config.get(MRConstants.SPLICE_SCAN_INFO);
@@ -19,6 +19,7 @@ import com.splicemachine.EngineDriver;
 import com.splicemachine.access.HConfiguration;
 import com.splicemachine.compactions.CompactionInputFormat;
 import com.splicemachine.compactions.CompactionResult;
+import com.splicemachine.compactions.CompactionStatistics;
 import com.splicemachine.concurrent.Clock;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.derby.iapi.sql.olap.OlapStatus;
@@ -35,8 +36,10 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.ui.jobs.UIData;
 import scala.Option;
+import scala.Tuple2;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -95,7 +98,7 @@ public class CompactionJob implements Callable<Void>{
         SpliceSpark.popScope();
 
         SpliceSpark.pushScope(compactionRequest.scope + ": Compact files");
-        JavaRDD<String> rdd2=rdd1.mapPartitions(new SparkFlatMapFunction<>(compactionRequest.compactionFunction));
+        JavaRDD<Tuple2<String,CompactionStatistics>> rdd2=rdd1.mapPartitions(new SparkFlatMapFunction<>(compactionRequest.compactionFunction));
         rdd2.setName(compactionRequest.jobDetails);
         SpliceSpark.popScope();
 
@@ -105,7 +108,7 @@ public class CompactionJob implements Callable<Void>{
             return null;
         }
         long startTime = clock.currentTimeMillis();
-        JavaFutureAction<List<String>> collectFuture=rdd2.collectAsync();
+        JavaFutureAction<List<Tuple2<String,CompactionStatistics>>> collectFuture=rdd2.collectAsync();
         while(!collectFuture.isDone()){
             try{
                 collectFuture.get(tickTime,TimeUnit.MILLISECONDS);
@@ -135,8 +138,15 @@ public class CompactionJob implements Callable<Void>{
             }
         }
         //the compaction completed
-        List<String> sPaths = collectFuture.get();
-        status.markCompleted(new CompactionResult(sPaths));
+        List<String> sPaths = new ArrayList<>();
+        CompactionStatistics statistics = null;
+        for (Tuple2<String,CompactionStatistics> compacted : collectFuture.get()) {
+            sPaths.add(compacted._1());
+            if (compacted._2() != null) {
+                statistics = compacted._2();
+            }
+        }
+        status.markCompleted(new CompactionResult(sPaths, statistics));
         SpliceSpark.popScope();
 
         if (LOG.isTraceEnabled())
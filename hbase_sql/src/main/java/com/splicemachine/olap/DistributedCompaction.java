@@ -17,6 +17,7 @@ package com.splicemachine.olap;
 
 import com.splicemachine.concurrent.Clock;
 import com.splicemachine.derby.iapi.sql.olap.DistributedJob;
+import com.splicemachine.derby.iapi.sql.olap.OlapJobType;
 import com.splicemachine.derby.iapi.sql.olap.OlapStatus;
 import com.splicemachine.derby.stream.compaction.SparkCompactionFunction;
 import org.apache.commons.codec.binary.Base64;
@@ -91,6 +92,11 @@ public class DistributedCompaction extends DistributedJob{
         return jobGroup;
     }
 
+    @Override
+    public OlapJobType getJobType(){
+        return OlapJobType.COMPACTION;
+    }
+
     @Override
     public int hashCode(){
         return jobGroup.hashCode();
@@ -16,6 +16,7 @@
 package com.splicemachine.olap;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.splicemachine.derby.iapi.sql.olap.OlapStatus;
 import org.apache.log4j.Logger;
 
 import java.util.Iterator;
@@ -85,6 +86,30 @@ public class MappedJobRegistry implements OlapJobRegistry{
         return tickTime;
     }
 
+    /**
+     * @return the number of registered jobs which have been submitted, but which the scheduler has not yet started
+     */
+    public int getQueuedJobCount(){
+        int queued = 0;
+        for(OlapJobStatus status:registry.values()){
+            if(status.currentState()==OlapStatus.State.SUBMITTED)
+                queued++;
+        }
+        return queued;
+    }
+
+    /**
+     * @return the longest time (in ms) that any currently queued job has been waiting to start
+     */
+    public long getMaxQueueWaitMillis(){
+        long max = 0l;
+        for(OlapJobStatus status:registry.values()){
+            if(status.currentState()==OlapStatus.State.SUBMITTED)
+                max = Math.max(max,status.getQueueWaitMillis());
+        }
+        return max;
+    }
+
     private class Cleaner implements Runnable{
         @Override
         public void run(){
@@ -97,6 +122,8 @@ public class MappedJobRegistry implements OlapJobRegistry{
                     entry.getValue().cancel();
                 }
             }
+            if(LOG.isDebugEnabled())
+                LOG.debug("Olap jobs queued="+getQueuedJobCount()+", maxQueueWaitMillis="+getMaxQueueWaitMillis());
         }
     }
 }
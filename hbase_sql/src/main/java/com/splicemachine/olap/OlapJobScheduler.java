@@ -0,0 +1,265 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.olap;
+
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.derby.iapi.sql.olap.OlapJobType;
+import org.apache.log4j.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the jobs submitted to the Olap server run.
+ *
+ * At most {@code maxRunningJobs} jobs run at once, and each {@link OlapJobType} may be limited to fewer still.
+ * Queries are not counted against {@code maxRunningJobs}: a query streams its results to the client from
+ * Spark, and holds its thread for as long as the client takes to read them, so a handful of slow cursors
+ * would otherwise hold up every other job. Spark's own scheduler bounds the work they do.
+ *
+ * Jobs which cannot start straight away wait in a queue, from which they are started in order of
+ * {@link OlapJobType#getPriority() priority}. A job's priority rises by one for every {@code agingMillis} it has
+ * spent in the queue, so that a steady stream of higher priority work cannot starve background jobs forever.
+ * Within a priority, the owner with the fewest running jobs goes next, so that one user submitting many jobs
+ * cannot hold up everybody else; each owner's own jobs start in the order they were submitted. Once
+ * {@code maxQueuedJobs} jobs are waiting, further jobs are rejected.
+ */
+@ThreadSafe
+class OlapJobScheduler{
+    private static final Logger LOG=Logger.getLogger(OlapJobScheduler.class);
+    private static final String SYSTEM_OWNER="";
+
+    private final ExecutorService executor;
+    private final int maxRunningJobs;
+    private final int maxQueuedJobs;
+    private final Map<OlapJobType,Integer> typeLimits;
+    private final long agingNanos;
+    private final Clock clock;
+
+    /*
+     * Queued jobs, by priority and then by owner. Ties between owners with the same number of running jobs
+     * go to the job which has waited longest, and then to the owner which queued a job first.
+     */
+    @GuardedBy("this") private final Map<String,ArrayDeque<QueuedJob>>[] queues;
+    @GuardedBy("this") private final Map<OlapJobType,Integer> runningByType=new EnumMap<>(OlapJobType.class);
+    @GuardedBy("this") private final Map<String,Integer> runningByOwner=new HashMap<>();
+    @GuardedBy("this") private int running;
+    @GuardedBy("this") private int runningCapped;
+    @GuardedBy("this") private int queued;
+    @GuardedBy("this") private long rejected;
+    @GuardedBy("this") private long started;
+    @GuardedBy("this") private long totalQueueNanos;
+
+    @SuppressWarnings("unchecked")
+    OlapJobScheduler(ExecutorService executor,int maxRunningJobs,int maxQueuedJobs,Map<OlapJobType,Integer> typeLimits,
+                     long agingMillis,Clock clock){
+        this.executor=executor;
+        this.maxRunningJobs=maxRunningJobs;
+        this.maxQueuedJobs=maxQueuedJobs;
+        this.typeLimits=new EnumMap<>(typeLimits);
+        this.agingNanos=Math.max(1L,TimeUnit.MILLISECONDS.toNanos(agingMillis));
+        this.clock=clock;
+        int maxPriority=0;
+        for(OlapJobType type:OlapJobType.values()){
+            maxPriority=Math.max(maxPriority,type.getPriority());
+        }
+        this.queues=new Map[maxPriority+1];
+        for(int i=0;i<queues.length;i++){
+            queues[i]=new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * Run {@code job} as soon as the limits allow.
+     *
+     * @return false if the job was rejected because the queue is full
+     */
+    synchronized boolean submit(OlapJobType type,String owner,Runnable job){
+        if(owner==null)
+            owner=SYSTEM_OWNER;
+        if(runningCapped>=maxRunningJobs && queued>=maxQueuedJobs && isCapped(type)){
+            rejected++;
+            return false;
+        }
+        Map<String,ArrayDeque<QueuedJob>> ownerQueues=queues[type.getPriority()];
+        ArrayDeque<QueuedJob> ownerQueue=ownerQueues.get(owner);
+        if(ownerQueue==null){
+            ownerQueue=new ArrayDeque<>();
+            ownerQueues.put(owner,ownerQueue);
+        }
+        ownerQueue.add(new QueuedJob(type,owner,job,clock.nanoTime()));
+        queued++;
+        dispatch();
+        if(queued>maxQueuedJobs){
+            //the job could not start, and there was no room left for it to wait
+            ownerQueue.removeLast();
+            if(ownerQueue.isEmpty())
+                ownerQueues.remove(owner);
+            queued--;
+            rejected++;
+            return false;
+        }
+        return true;
+    }
+
+    synchronized int getRunningJobs(){
+        return running;
+    }
+
+    synchronized int getRunningJobs(OlapJobType type){
+        return count(runningByType,type);
+    }
+
+    synchronized int getQueuedJobs(){
+        return queued;
+    }
+
+    synchronized long getRejectedJobs(){
+        return rejected;
+    }
+
+    /**
+     * @return the mean time which the jobs started so far have spent in the queue, in milliseconds
+     */
+    synchronized double getMeanQueueTimeMillis(){
+        return started==0?0d:((double)TimeUnit.NANOSECONDS.toMillis(totalQueueNanos))/started;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    @GuardedBy("this")
+    private void dispatch(){
+        while(queued>0){
+            QueuedJob next=nextJob();
+            if(next==null) return;
+            queued--;
+            running++;
+            if(isCapped(next.type))
+                runningCapped++;
+            started++;
+            totalQueueNanos+=clock.nanoTime()-next.queuedAt;
+            runningByType.put(next.type,count(runningByType,next.type)+1);
+            runningByOwner.put(next.owner,count(runningByOwner,next.owner)+1);
+            try{
+                executor.execute(next);
+            }catch(RuntimeException e){
+                LOG.error("Unable to start Olap job",e);
+                finished(next);
+                throw e;
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private QueuedJob nextJob(){
+        long now=clock.nanoTime();
+        Map<String,ArrayDeque<QueuedJob>> bestQueues=null;
+        ArrayDeque<QueuedJob> best=null;
+        long bestPriority=Long.MAX_VALUE;
+        int bestRunning=Integer.MAX_VALUE;
+        long bestQueuedAt=Long.MAX_VALUE;
+        for(Map<String,ArrayDeque<QueuedJob>> ownerQueues:queues){
+            for(ArrayDeque<QueuedJob> ownerQueue:ownerQueues.values()){
+                QueuedJob head=ownerQueue.peek();
+                if(!canStart(head.type)) continue;
+                long priority=Math.max(0L,head.type.getPriority()-(now-head.queuedAt)/agingNanos);
+                int ownerRunning=count(runningByOwner,head.owner);
+                if(priority<bestPriority
+                        || (priority==bestPriority && ownerRunning<bestRunning)
+                        || (priority==bestPriority && ownerRunning==bestRunning && head.queuedAt<bestQueuedAt)){
+                    bestQueues=ownerQueues;
+                    best=ownerQueue;
+                    bestPriority=priority;
+                    bestRunning=ownerRunning;
+                    bestQueuedAt=head.queuedAt;
+                }
+            }
+        }
+        if(best==null) return null;
+        QueuedJob job=best.poll();
+        if(best.isEmpty())
+            bestQueues.remove(job.owner);
+        return job;
+    }
+
+    @GuardedBy("this")
+    private boolean canStart(OlapJobType type){
+        if(isCapped(type) && runningCapped>=maxRunningJobs) return false;
+        Integer limit=typeLimits.get(type);
+        return limit==null || count(runningByType,type)<limit;
+    }
+
+    private static boolean isCapped(OlapJobType type){
+        return type!=OlapJobType.QUERY;
+    }
+
+    private synchronized void finished(QueuedJob job){
+        running--;
+        if(isCapped(job.type))
+            runningCapped--;
+        decrement(runningByType,job.type);
+        decrement(runningByOwner,job.owner);
+    }
+
+    private synchronized void completed(QueuedJob job){
+        finished(job);
+        dispatch();
+    }
+
+    private static <K> int count(Map<K,Integer> counts,K key){
+        Integer c=counts.get(key);
+        return c==null?0:c;
+    }
+
+    private static <K> void decrement(Map<K,Integer> counts,K key){
+        int c=count(counts,key)-1;
+        if(c<=0)
+            counts.remove(key);
+        else
+            counts.put(key,c);
+    }
+
+    private class QueuedJob implements Runnable{
+        private final OlapJobType type;
+        private final String owner;
+        private final Runnable job;
+        private final long queuedAt;
+
+        QueuedJob(OlapJobType type,String owner,Runnable job,long queuedAt){
+            this.type=type;
+            this.owner=owner;
+            this.job=job;
+            this.queuedAt=queuedAt;
+        }
+
+        @Override
+        public void run(){
+            try{
+                job.run();
+            }finally{
+                completed(this);
+            }
+        }
+    }
+}
@@ -39,6 +39,8 @@ public class OlapJobStatus implements OlapStatus{
 
     private volatile AtomicReference<OlapStatus.State> currentState = new AtomicReference<>(State.NOT_SUBMITTED);
     private volatile OlapResult results;
+    private volatile long submittedTime;
+    private volatile long runningTime;
 
     public OlapJobStatus(long tickTime,int numTicks){
         //TODO -sf- remove the constants
@@ -103,6 +105,7 @@ public class OlapJobStatus implements OlapStatus{
             }
             shouldContinue = !currentState.compareAndSet(currState,State.SUBMITTED);
         }while(shouldContinue);
+        submittedTime = System.currentTimeMillis();
         return true;
     }
 
@@ -137,9 +140,22 @@ public class OlapJobStatus implements OlapStatus{
             }
             shouldContinue = !currentState.compareAndSet(currState,State.RUNNING);
         }while(shouldContinue);
+        runningTime = System.currentTimeMillis();
         return true;
     }
 
+    /**
+     * @return the time (in ms) this job has spent waiting for the scheduler to start it: so far, if it is
+     * still queued, or in total, if it has started. 0 if it was never submitted.
+     */
+    public long getQueueWaitMillis(){
+        long submitted = submittedTime;
+        if(submitted<=0) return 0l;
+        long running = runningTime;
+        if(running>0) return Math.max(0l,running-submitted);
+        return currentState.get()==State.SUBMITTED? System.currentTimeMillis()-submitted : 0l;
+    }
+
     @Override
     public boolean isRunning(){
         /*
@@ -185,6 +201,7 @@ public class OlapJobStatus implements OlapStatus{
     public String toString() {
         return "OlapJobStatus{" +
                 "currentState=" + currentState +
+                ", queueWaitMillis=" + getQueueWaitMillis() +
                 ", failureDetector.phi =" + ((PhiAccrualFailureDetector)failureDetector).phi() +
                 '}';
     }
@@ -20,13 +20,16 @@ import com.splicemachine.access.api.SConfiguration;
 import com.splicemachine.olap.OlapMessage;
 import com.splicemachine.concurrent.Clock;
 import com.splicemachine.derby.iapi.sql.olap.DistributedJob;
+import com.splicemachine.derby.iapi.sql.olap.OlapJobType;
 import org.apache.log4j.Logger;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -36,7 +39,7 @@ import java.util.concurrent.ThreadFactory;
 class OlapRequestHandler extends AbstractOlapHandler{
     private static final Logger LOG =Logger.getLogger(OlapRequestHandler.class);
 
-    private final ExecutorService executionPool;
+    private final OlapJobScheduler scheduler;
     private final Clock clock;
     private final long clientCheckTimeMs;
 
@@ -45,8 +48,8 @@ class OlapRequestHandler extends AbstractOlapHandler{
                        Clock clock,
                        long clientCheckTimeMs){
         super(jobRegistry);
-        this.executionPool=configureThreadPool(config);
         this.clock=clock;
+        this.scheduler=configureScheduler(config);
         this.clientCheckTimeMs=clientCheckTimeMs;
     }
 
@@ -94,20 +97,28 @@ class OlapRequestHandler extends AbstractOlapHandler{
         }
         final Callable<Void> job=jr.toCallable(jobStatus,clock,clientCheckTimeMs);
 
-        executionPool.submit(new Callable<Void>() {
+        boolean accepted=scheduler.submit(jr.getJobType(),jr.getOwner(),new Runnable(){
             @Override
-            public Void call() throws Exception {
+            public void run(){
                 try {
-                    return job.call();
+                    job.call();
                 } catch (Throwable t) {
                     LOG.error("Uncaught exception", t);
                     if (jobStatus.isRunning()) {
                         jobStatus.markCompleted(new FailedOlapResult(t));
                     }
                 }
-                return null;
             }
         });
+        if(!accepted){
+            LOG.warn("Olap server is saturated, rejecting job "+jobRequest.getUniqueName()+
+                    " ("+scheduler.getRunningJobs()+" running, "+scheduler.getQueuedJobs()+" queued)");
+            //the job is still SUBMITTED, so completing it here reports the rejection on the client's next status check
+            jobStatus.markCompleted(new FailedOlapResult(new RejectedExecutionException(
+                    "Olap server queue is full, unable to accept job "+jobRequest.getUniqueName())));
+            writeResponse(e,jr.getUniqueName(),jobStatus);
+            return;
+        }
         if(LOG.isTraceEnabled())
             LOG.trace("Job "+ jobRequest.getUniqueName()+" successfully submitted");
         writeResponse(e,jr.getUniqueName(),jobStatus);
@@ -119,9 +130,17 @@ class OlapRequestHandler extends AbstractOlapHandler{
     /*private helper methods*/
 
 
-    private ExecutorService configureThreadPool(SConfiguration config){
+    private OlapJobScheduler configureScheduler(SConfiguration config){
         //TODO -sf- bound this by the number of possible Spark tasks which can run in YARN
         ThreadFactory tf =new ThreadFactoryBuilder().setDaemon(true).setNameFormat("olap-worker-%d").build();
-        return Executors.newCachedThreadPool(tf);
+        Map<OlapJobType,Integer> typeLimits=new EnumMap<>(OlapJobType.class);
+        typeLimits.put(OlapJobType.STATISTICS,config.getOlapServerMaxConcurrentStatistics());
+        typeLimits.put(OlapJobType.COMPACTION,config.getOlapServerMaxConcurrentCompactions());
+        return new OlapJobScheduler(Executors.newCachedThreadPool(tf),
+                config.getOlapServerThreads(),
+                config.getOlapServerMaxQueuedJobs(),
+                typeLimits,
+                config.getOlapServerJobAgingInterval(),
+                clock);
     }
 }
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.stream;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.services.io.StoredFormatIds;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.RowLocation;
+import com.splicemachine.derby.impl.SpliceSparkKryoRegistrator;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.impl.store.access.hbase.HBaseRowLocation;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.pipeline.utils.LZBlockCodec;
+import com.splicemachine.utils.kryo.KryoPool;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of result rows, laid out column by column, which is sent from a {@link ResultStreamer} to the
+ * {@link StreamListener} as a single message.
+ *
+ * Character values are encoded as plain UTF-8, and all other values with the same {@link DescriptorSerializer} which
+ * would encode them in a table. The values of each column are stored together, using whichever of three layouts is
+ * the smallest:
+ *
+ * <ul>
+ *     <li><em>plain</em>: every value in row order</li>
+ *     <li><em>run length</em>: (count,value) pairs, for columns where consecutive rows repeat a value</li>
+ *     <li><em>dictionary</em>: the distinct values, followed by an index into them for each row</li>
+ * </ul>
+ *
+ * A value is written as a varint of {@code length+1} followed by its bytes, so that a zero length marks a
+ * {@code null}. The columns are preceded by a (Kryo encoded) null row, which tells the receiving side which
+ * types to decode into, and the whole body is compressed with {@link LZBlockCodec} when that makes it
+ * noticeably smaller.
+ *
+ * On the receiving side nothing is decoded until the first row is asked for. At that point we find where each
+ * value lies in the body, and each subsequent call to {@link #get(int)} decodes just that one row.
+ */
+@NotThreadSafe
+public class ColumnarRowBatch implements Externalizable{
+    private static final long serialVersionUID=1l;
+    private static final KryoPool kp=SpliceSparkKryoRegistrator.getInstance();
+
+    private static final byte PLAIN=0;
+    private static final byte RUN_LENGTH=1;
+    private static final byte DICTIONARY=2;
+
+    private static final int COMPRESSED=1;
+    private static final int LOCATED=1<<1;
+    /*
+     * Bodies smaller than this aren't worth compressing
+     */
+    private static final int MIN_COMPRESSION_SIZE=1<<10;
+
+    private int numRows;
+    private int flags;
+    private int bodyLength;
+    private byte[] data;
+
+    /*
+     * Decoded lazily, on the receiving side
+     */
+    private transient byte[] body;
+    private transient ExecRow template;
+    private transient DescriptorSerializer[] serializers;
+    private transient int[][] offsets;
+    private transient int[][] lengths;
+
+    public ColumnarRowBatch(){
+    }
+
+    private ColumnarRowBatch(int numRows,int flags,int bodyLength,byte[] data){
+        this.numRows=numRows;
+        this.flags=flags;
+        this.bodyLength=bodyLength;
+        this.data=data;
+    }
+
+    /**
+     * @return the number of rows in the batch
+     */
+    public int size(){
+        return numRows;
+    }
+
+    /**
+     * @return the number of bytes which this batch occupies on the wire
+     */
+    public int encodedSize(){
+        return data.length;
+    }
+
+    /**
+     * Decode a row of the batch. Each call returns a new row, so rows may be kept after later rows are read.
+     *
+     * @param index the position of the row in the batch
+     * @return the row, which is a {@link LocatedRow} or an {@link ExecRow} depending on what was added
+     * to the batch.
+     */
+    public Object get(int index) throws StandardException{
+        assert index>=0 && index<numRows:"Row "+index+" is outside of a batch of "+numRows;
+        if(offsets==null)
+            open();
+        ExecRow row=template.getNewNullRow();
+        int numColumns=row.nColumns();
+        for(int c=0;c<numColumns;c++){
+            int length=lengths[c][index];
+            if(length<0) continue;
+            DataValueDescriptor dvd=row.getColumn(c+1);
+            if(isCharacter(dvd.getTypeFormatId()))
+                dvd.setValue(new String(body,offsets[c][index],length,StandardCharsets.UTF_8));
+            else
+                serializers[c].decodeDirect(dvd,body,offsets[c][index],length,false);
+        }
+        if((flags&LOCATED)==0)
+            return row;
+        int length=lengths[numColumns][index];
+        RowLocation rowLocation=null;
+        if(length>=0){
+            int offset=offsets[numColumns][index];
+            rowLocation=new HBaseRowLocation(Arrays.copyOfRange(body,offset,offset+length));
+        }
+        return new LocatedRow(rowLocation,row);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException{
+        out.writeInt(numRows);
+        out.writeByte(flags);
+        out.writeInt(bodyLength);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException{
+        numRows=in.readInt();
+        flags=in.readByte();
+        bodyLength=in.readInt();
+        data=new byte[in.readInt()];
+        in.readFully(data);
+    }
+
+    @Override
+    public String toString(){
+        return "ColumnarRowBatch{rows="+numRows+", bytes="+data.length+", compressed="+((flags&COMPRESSED)!=0)+"}";
+    }
+
+    /**
+     * Collects rows until they are {@link #build() built} into a batch. All of the rows in a batch have
+     * to be of the same shape: {@link #add(Object)} refuses a row which doesn't fit the rows before it,
+     * in which case the caller should build the batch and start a new one.
+     */
+    @NotThreadSafe
+    public static class Builder{
+        private ExecRow template;
+        private boolean located;
+        private int[] typeFormatIds;
+        private DescriptorSerializer[] serializers;
+        /*
+         * values[c][r] is the encoded value of column c in row r, or null
+         */
+        private byte[][][] values;
+        private byte[][] rowValues;
+        private int numRows;
+        private long numBytes;
+        private final boolean compress;
+
+        public Builder(){
+            this(true);
+        }
+
+        /**
+         * @param compress whether to try to compress the batches
+         */
+        public Builder(boolean compress){
+            this.compress=compress;
+        }
+
+        /**
+         * @param row the row to add, which must be an {@link ExecRow} or a {@link LocatedRow}
+         * @return true if the row was added to the batch, false if the row can't be encoded in columns or
+         * doesn't match the rows which are already in the batch.
+         */
+        public boolean add(Object row) throws StandardException{
+            ExecRow execRow;
+            RowLocation rowLocation=null;
+            boolean isLocated=row instanceof LocatedRow;
+            if(isLocated){
+                LocatedRow lr=(LocatedRow)row;
+                execRow=lr.getRow();
+                rowLocation=lr.getRowLocation();
+                if(rowLocation!=null && !(rowLocation instanceof HBaseRowLocation))
+                    return false;
+            }else if(row instanceof ExecRow){
+                execRow=(ExecRow)row;
+            }else
+                return false;
+            if(execRow==null)
+                return false;
+
+            if(numRows==0){
+                if(!start(execRow,isLocated))
+                    return false;
+            }else if(!matches(execRow,isLocated))
+                return false;
+
+            DataValueDescriptor[] dvds=execRow.getRowArray();
+            long rowBytes=0;
+            for(int c=0;c<dvds.length;c++){
+                DataValueDescriptor dvd=dvds[c];
+                byte[] value;
+                if(dvd==null || dvd.isNull())
+                    value=null;
+                else if(isCharacter(typeFormatIds[c]))
+                    value=dvd.getString().getBytes(StandardCharsets.UTF_8);
+                else
+                    value=serializers[c].encodeDirect(dvd,false);
+                rowValues[c]=value;
+                if(value!=null) rowBytes+=value.length;
+            }
+            if(located){
+                byte[] value=rowLocation==null?null:rowLocation.getBytes();
+                rowValues[dvds.length]=value;
+                if(value!=null) rowBytes+=value.length;
+            }
+            if(numRows==values[0].length){
+                for(int c=0;c<values.length;c++){
+                    values[c]=Arrays.copyOf(values[c],2*numRows);
+                }
+            }
+            for(int c=0;c<values.length;c++){
+                values[c][numRows]=rowValues[c];
+            }
+            numRows++;
+            numBytes+=rowBytes;
+            return true;
+        }
+
+        /**
+         * @return the number of rows added since the last batch was built
+         */
+        public int size(){
+            return numRows;
+        }
+
+        /**
+         * @return the number of bytes of encoded values added since the last batch was built
+         */
+        public long sizeInBytes(){
+            return numBytes;
+        }
+
+        /**
+         * Encode the rows which were added into a batch, and reset the builder so that it can
+         * collect the next batch.
+         */
+        public ColumnarRowBatch build() throws IOException{
+            assert numRows>0:"Cannot build an empty batch";
+            Output output=new Output((int)Math.min(Integer.MAX_VALUE-8,numBytes+2L*numRows*values.length+1024),-1);
+            Kryo kryo=kp.get();
+            try{
+                kryo.writeClassAndObject(output,template);
+            }finally{
+                kp.returnInstance(kryo);
+            }
+            for(byte[][] column:values){
+                writeColumn(output,column,numRows);
+            }
+            byte[] body=output.getBuffer();
+            int bodyLength=output.position();
+            int flags=located?LOCATED:0;
+            byte[] data=null;
+            if(compress && bodyLength>=MIN_COMPRESSION_SIZE){
+                byte[] compressed=new byte[LZBlockCodec.maxCompressedLength(bodyLength)];
+                int length=LZBlockCodec.compress(body,0,bodyLength,compressed,0);
+                if(length<bodyLength-(bodyLength>>>3)){
+                    data=Arrays.copyOf(compressed,length);
+                    flags|=COMPRESSED;
+                }
+            }
+            if(data==null)
+                data=Arrays.copyOf(body,bodyLength);
+            ColumnarRowBatch batch=new ColumnarRowBatch(numRows,flags,bodyLength,data);
+
+            for(byte[][] column:values){
+                Arrays.fill(column,0,numRows,null);
+            }
+            numRows=0;
+            numBytes=0;
+            return batch;
+        }
+
+        private boolean start(ExecRow row,boolean isLocated){
+            DataValueDescriptor[] dvds=row.getRowArray();
+            int[] formatIds=new int[dvds.length];
+            for(int c=0;c<dvds.length;c++){
+                if(dvds[c]==null) return false;
+                formatIds[c]=dvds[c].getTypeFormatId();
+                //user defined types are serialized by whichever class the value happens to have
+                if(formatIds[c]==StoredFormatIds.SQL_USERTYPE_ID_V3) return false;
+            }
+            if(template==null || located!=isLocated || !Arrays.equals(formatIds,typeFormatIds)){
+                this.template=row.getNewNullRow();
+                this.located=isLocated;
+                this.typeFormatIds=formatIds;
+                this.serializers=VersionedSerializers.latestVersion(false).getSerializers(formatIds);
+                int numColumns=isLocated?dvds.length+1:dvds.length;
+                this.values=new byte[numColumns][16][];
+                this.rowValues=new byte[numColumns][];
+            }
+            return true;
+        }
+
+        private boolean matches(ExecRow row,boolean isLocated){
+            if(isLocated!=located) return false;
+            DataValueDescriptor[] dvds=row.getRowArray();
+            if(dvds.length!=typeFormatIds.length) return false;
+            for(int c=0;c<dvds.length;c++){
+                if(dvds[c]==null || dvds[c].getTypeFormatId()!=typeFormatIds[c]) return false;
+            }
+            return true;
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private static void writeColumn(Output output,byte[][] column,int numRows){
+        long plainSize=0;
+        long runLengthSize=0;
+        for(int r=0;r<numRows;){
+            int run=1;
+            while(r+run<numRows && sameValue(column[r],column[r+run]))
+                run++;
+            long valueSize=valueSize(column[r]);
+            plainSize+=run*valueSize;
+            runLengthSize+=varIntSize(run)+valueSize;
+            r+=run;
+        }
+
+        /*
+         * A dictionary only pays off when values repeat a lot, so give up on it as soon as we've seen
+         * more distinct values than that
+         */
+        int maxDistinct=numRows>>>2;
+        Map<Value,Integer> dictionary=new HashMap<>();
+        List<byte[]> distinct=new ArrayList<>();
+        int[] indexes=new int[numRows]; //0 is the index of null
+        long dictionarySize=0;
+        for(int r=0;r<numRows;r++){
+            if(column[r]==null) continue;
+            if(r>0 && sameValue(column[r],column[r-1])){
+                indexes[r]=indexes[r-1];
+                continue;
+            }
+            Value value=new Value(column[r]);
+            Integer index=dictionary.get(value);
+            if(index==null){
+                if(distinct.size()>=maxDistinct){
+                    dictionarySize=Long.MAX_VALUE;
+                    break;
+                }
+                distinct.add(column[r]);
+                index=distinct.size();
+                dictionary.put(value,index);
+                dictionarySize+=valueSize(column[r]);
+            }
+            indexes[r]=index;
+        }
+        if(dictionarySize<Long.MAX_VALUE)
+            dictionarySize+=varIntSize(distinct.size())+(long)numRows*varIntSize(distinct.size());
+
+        if(dictionarySize<plainSize && dictionarySize<runLengthSize){
+            output.writeByte(DICTIONARY);
+            output.writeVarInt(distinct.size(),true);
+            for(byte[] value:distinct){
+                writeValue(output,value);
+            }
+            for(int r=0;r<numRows;r++){
+                output.writeVarInt(indexes[r],true);
+            }
+        }else if(runLengthSize<plainSize){
+            output.writeByte(RUN_LENGTH);
+            for(int r=0;r<numRows;){
+                int run=1;
+                while(r+run<numRows && sameValue(column[r],column[r+run]))
+                    run++;
+                output.writeVarInt(run,true);
+                writeValue(output,column[r]);
+                r+=run;
+            }
+        }else{
+            output.writeByte(PLAIN);
+            for(int r=0;r<numRows;r++){
+                writeValue(output,column[r]);
+            }
+        }
+    }
+
+    private static boolean isCharacter(int typeFormatId){
+        switch(typeFormatId){
+            case StoredFormatIds.SQL_CHAR_ID:
+            case StoredFormatIds.SQL_VARCHAR_ID:
+            case StoredFormatIds.SQL_LONGVARCHAR_ID:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void writeValue(Output output,byte[] value){
+        if(value==null)
+            output.writeVarInt(0,true);
+        else{
+            output.writeVarInt(value.length+1,true);
+            output.writeBytes(value);
+        }
+    }
+
+    private static boolean sameValue(byte[] a,byte[] b){
+        return a==null?b==null:b!=null && Arrays.equals(a,b);
+    }
+
+    private static long valueSize(byte[] value){
+        return value==null?1:varIntSize(value.length+1)+value.length;
+    }
+
+    private static int varIntSize(int value){
+        if((value>>>7)==0) return 1;
+        if((value>>>14)==0) return 2;
+        if((value>>>21)==0) return 3;
+        if((value>>>28)==0) return 4;
+        return 5;
+    }
+
+    /*
+     * Decompress the body and find where every value starts, without decoding any of them
+     */
+    private void open() throws StandardException{
+        try{
+            if((flags&COMPRESSED)!=0){
+                body=new byte[bodyLength];
+                LZBlockCodec.decompress(data,0,data.length,body,0,bodyLength);
+            }else
+                body=data;
+        }catch(IOException e){
+            throw StandardException.plainWrapException(e);
+        }
+        Input input=new Input(body,0,bodyLength);
+        Kryo kryo=kp.get();
+        try{
+            template=(ExecRow)kryo.readClassAndObject(input);
+        }finally{
+            kp.returnInstance(kryo);
+        }
+        serializers=VersionedSerializers.latestVersion(false).getSerializers(template);
+        int numColumns=(flags&LOCATED)!=0?template.nColumns()+1:template.nColumns();
+        offsets=new int[numColumns][numRows];
+        lengths=new int[numColumns][numRows];
+        for(int c=0;c<numColumns;c++){
+            readColumn(input,offsets[c],lengths[c]);
+        }
+    }
+
+    private void readColumn(Input input,int[] offsets,int[] lengths){
+        byte encoding=input.readByte();
+        switch(encoding){
+            case PLAIN:
+                for(int r=0;r<numRows;r++){
+                    readValue(input,offsets,lengths,r);
+                }
+                break;
+            case RUN_LENGTH:
+                for(int r=0;r<numRows;){
+                    int run=input.readVarInt(true);
+                    readValue(input,offsets,lengths,r);
+                    Arrays.fill(offsets,r+1,r+run,offsets[r]);
+                    Arrays.fill(lengths,r+1,r+run,lengths[r]);
+                    r+=run;
+                }
+                break;
+            case DICTIONARY:
+                int size=input.readVarInt(true);
+                int[] dictionaryOffsets=new int[size+1];
+                int[] dictionaryLengths=new int[size+1];
+                dictionaryLengths[0]=-1;
+                for(int i=1;i<=size;i++){
+                    readValue(input,dictionaryOffsets,dictionaryLengths,i);
+                }
+                for(int r=0;r<numRows;r++){
+                    int index=input.readVarInt(true);
+                    offsets[r]=dictionaryOffsets[index];
+                    lengths[r]=dictionaryLengths[index];
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown column encoding "+encoding);
+        }
+    }
+
+    /*
+     * An encoded value, as a dictionary key
+     */
+    private static final class Value{
+        private final byte[] bytes;
+        private final int hash;
+
+        Value(byte[] bytes){
+            this.bytes=bytes;
+            this.hash=Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof Value && hash==((Value)o).hash && Arrays.equals(bytes,((Value)o).bytes);
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+    }
+
+    private static void readValue(Input input,int[] offsets,int[] lengths,int position){
+        int length=input.readVarInt(true)-1;
+        lengths[position]=length;
+        offsets[position]=input.position();
+        if(length>0)
+            input.skip(length);
+    }
+}
@@ -53,7 +53,8 @@ public class KryoEncoder extends MessageToByteEncoder<Object> {
 
         output.flush();
         byte[] outArray = outStream.toByteArray();
-        out.writeShort(outArray.length);
+        // columnar batches can be well over 64KB, so the length takes an int
+        out.writeInt(outArray.length);
         out.writeBytes(outArray);
     }
 
@@ -74,7 +74,9 @@ public class RemoteQueryClientImpl implements RemoteQueryClient {
             updateLimitOffset();
             int streamingBatches = HConfiguration.getConfiguration().getSparkResultStreamingBatches();
             int streamingBatchSize = HConfiguration.getConfiguration().getSparkResultStreamingBatchSize();
-            streamListener = new StreamListener(limit, offset, streamingBatches, streamingBatchSize);
+            String sql = activation.getPreparedStatement().getSource();
+            boolean ordered = needsOrderedResults(activation);
+            streamListener = new StreamListener(limit, offset, streamingBatches, streamingBatchSize, ordered);
             StreamListenerServer server = getServer();
             server.register(streamListener);
             HostAndPort hostAndPort = server.getHostAndPort();
@@ -82,12 +84,11 @@ public class RemoteQueryClientImpl implements RemoteQueryClient {
             int port = hostAndPort.getPort();
             UUID uuid = streamListener.getUuid();
 
-            String sql = activation.getPreparedStatement().getSource();
             sql = sql == null ? root.toString() : sql;
             String userId = activation.getLanguageConnectionContext().getCurrentUserId(activation);
 
             RemoteQueryJob jobRequest = new RemoteQueryJob(ah, root.getResultSetNumber(), uuid, host, port, userId, sql,
-                    streamingBatches, streamingBatchSize);
+                    streamingBatches, streamingBatchSize, ordered);
             olapFuture = EngineDriver.driver().getOlapClient().submit(jobRequest);
             olapFuture.addListener(new Runnable() {
                 @Override
@@ -130,6 +131,19 @@ public class RemoteQueryClientImpl implements RemoteQueryClient {
         }
     }
 
+    /**
+     * Results can be streamed in whatever order the partitions produce them unless the query asks for an order, or
+     * skips or limits rows (the protocol counts those from the start of the ordered stream). Sorts which the optimizer
+     * satisfied from an index don't show up in the plan, so the compiled statement records whether it had an ORDER BY.
+     */
+    private boolean needsOrderedResults(Activation activation) {
+        if (!HConfiguration.getConfiguration().isSparkResultStreamingUnordered())
+            return true;
+        if (limit > 0 || offset > 0)
+            return true;
+        return activation.getPreparedStatement().requiresOrderedResults();
+    }
+
     @Override
     public Iterator<LocatedRow> getIterator() {
         return streamListener.getIterator();
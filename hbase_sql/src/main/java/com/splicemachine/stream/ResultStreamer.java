@@ -17,6 +17,7 @@ package com.splicemachine.stream;
 
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.derby.stream.ActivationHolder;
 import com.splicemachine.derby.stream.iapi.OperationContext;
 import com.splicemachine.derby.stream.spark.SparkOperationContext;
@@ -31,6 +32,7 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 import org.apache.log4j.Logger;
 import org.apache.spark.TaskContext;
 import org.apache.spark.api.java.function.Function2;
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.util.Arrays;
@@ -39,10 +41,20 @@ import java.util.UUID;
 import java.util.concurrent.*;
 
 /**
+ * Streams the rows of a partition to a {@link StreamListener}.
+ *
+ * Rows are packed into {@link ColumnarRowBatch}es, one for each batch of the flow control protocol (or sooner, if
+ * the batch grows very large), so that the client receives a handful of column-oriented messages instead of one
+ * Kryo-serialized message per row. Rows which can't be laid out in columns are still sent on their own.
+ *
  * Created by dgomezferro on 5/25/16.
  */
 public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements Function2<Integer, Iterator<T>, Iterator<String>>, Serializable {
     private static final Logger LOG = Logger.getLogger(ResultStreamer.class);
+    /*
+     * Send a batch early if its rows take more than this many bytes, to bound the size of a message
+     */
+    private static final long MAX_BATCH_BYTES = 4 * 1024 * 1024;
 
     private OperationContext<?> context;
     private UUID uuid;
@@ -87,9 +99,10 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
             private long consumed;
             private long sent;
             private int currentBatch;
+            private final ColumnarRowBatch.Builder rowBatch = new ColumnarRowBatch.Builder();
 
             @Override
-            public Long call() throws InterruptedException {
+            public Long call() throws Exception {
                 org.apache.spark.TaskContext$.MODULE$.setTaskContext(taskContext);
                 boolean prepared = false;
                 ActivationHolder ah = null;
@@ -104,7 +117,7 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
                         consumed++;
 
 
-                        ctx.write(lr, ctx.voidPromise());
+                        write(lr);
                         currentBatch++;
                         sent++;
 
@@ -117,6 +130,7 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
                         consumeOffset();
                     }
                     // Data has been written, request close
+                    writeRowBatch();
                     ctx.writeAndFlush(new StreamProtocol.RequestClose());
 
                     return consumed;
@@ -126,12 +140,37 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
                 }
             }
 
+            /**
+             * Add the row to the columnar batch we are building. If the row doesn't fit in the batch, the batch is
+             * sent and the row starts a new one, and a row which can't be laid out in columns at all is sent by itself.
+             */
+            private void write(T row) throws StandardException, IOException {
+                if (rowBatch.add(row)) {
+                    if (rowBatch.sizeInBytes() >= MAX_BATCH_BYTES)
+                        writeRowBatch();
+                    return;
+                }
+                writeRowBatch();
+                if (!rowBatch.add(row))
+                    ctx.write(row, ctx.voidPromise());
+            }
+
+            /**
+             * Send the rows collected so far, if any. This has to happen before anything else is sent, so that the
+             * client sees messages in the same order as the rows they follow.
+             */
+            private void writeRowBatch() throws IOException {
+                if (rowBatch.size() > 0)
+                    ctx.write(rowBatch.build(), ctx.voidPromise());
+            }
+
             /**
              * If the current batch exceeds the batch size, flush the connection and take a new permit, blocking if the client
              * hasn't had time yet to process previous messages
              */
-            private void flushAndGetPermit() throws InterruptedException {
+            private void flushAndGetPermit() throws InterruptedException, IOException {
                 if (currentBatch >= batchSize) {
+                    writeRowBatch();
                     ctx.flush();
                     currentBatch = 0;
                     permits.acquire();
@@ -142,8 +181,9 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
              * If the client hast told us to ignore up to 'offset' messages, consume them here. The client request can
              * arrive after we've already sent some messages.
              */
-            private void consumeOffset() {
+            private void consumeOffset() throws IOException {
                 if (consumed < offset) {
+                    writeRowBatch();
                     long count = 0;
                     while (locatedRowIterator.hasNext() && consumed < offset) {
                         locatedRowIterator.next();
@@ -158,8 +198,9 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
              * If the client told us to send no more than 'limit' messages, check it here
              * @return true if there's a limit and we reached it, false otherwise
              */
-            private boolean checkLimit() {
+            private boolean checkLimit() throws IOException {
                 if (consumed > limit) {
+                    writeRowBatch();
                     ctx.flush();
                     if (LOG.isTraceEnabled())
                         LOG.trace("Reached limit, stopping. consumed " + consumed + " sent " + sent + " limit " + limit);
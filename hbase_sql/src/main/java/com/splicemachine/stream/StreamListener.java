@@ -15,6 +15,7 @@
 
 package com.splicemachine.stream;
 
+import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.derby.iapi.sql.olap.OlapResult;
 import com.splicemachine.pipeline.Exceptions;
 import io.netty.channel.Channel;
@@ -27,12 +28,22 @@ import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 
 
 /**
  * This class handles connections from Spark tasks streaming data to the query client. One connection is created from
  * each task, it handles failures and recovery in case the task is retried.
  *
+ * By default the results are returned in partition order: every row from the first partition, then every row from the
+ * second, and so on. When the query doesn't care about the order of its results (it has no ORDER BY, LIMIT or OFFSET)
+ * the listener can be created <em>unordered</em>, in which case it returns rows from whichever partition has them, so
+ * that a slow partition doesn't hold up results which are already available from the others.
+ *
+ * Most rows arrive in {@link ColumnarRowBatch}es rather than one message per row. A batch is unpacked one row at a
+ * time as the iterator reaches it, so rows are only decoded when they are asked for, and rows which are skipped
+ * because of an offset are never decoded at all.
+ *
  * Created by dgomezferro on 5/20/16.
  */
 @ChannelHandler.Sharable
@@ -41,9 +52,12 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
     private static final Object SENTINEL = new Object();
     private static final Object FAILURE = new Object();
     private static final Object RETRY = new Object();
+    // stands in for a row of a batch which is skipped without being decoded
+    private static final Object SKIPPED_ROW = new Object();
     private final int queueSize;
     private final int batchSize;
     private final UUID uuid;
+    private final boolean ordered;
     private long limit;
     private long offset;
 
@@ -60,6 +74,14 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
     private volatile boolean canBlock = true;
     private volatile boolean stopped = false;
 
+    /*
+     * Unordered mode only: one permit for every message sitting in any of the partition queues, so the iterator can
+     * wait for data from whichever partition produces it first
+     */
+    private final Semaphore available = new Semaphore(0);
+    private final Set<Integer> finishedPartitions = new HashSet<>();
+    private PartitionState currentState;
+
     StreamListener() {
         this(-1, 0);
     }
@@ -69,23 +91,37 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
     }
 
     public StreamListener(long limit, long offset, int batches, int batchSize) {
+        this(limit, offset, batches, batchSize, true);
+    }
+
+    /**
+     * @param ordered if false, results are returned in the order in which they arrive rather than in partition order.
+     *                Unordered listeners don't support a limit or offset.
+     */
+    public StreamListener(long limit, long offset, int batches, int batchSize, boolean ordered) {
+        assert ordered || (limit <= 0 && offset <= 0) : "Limit and offset need ordered results";
         this.offset = offset;
         this.limit = limit;
         this.batchSize = batchSize;
         this.queueSize = batches*batchSize;
-        // start with this to force a channel advancement
-        PartitionState first = new PartitionState(0, 0);
-        first.messages.add(SENTINEL);
-        first.initialized = true;
-        this.partitionStateMap.put(-1, first);
+        this.ordered = ordered;
+        if (ordered) {
+            // start with this to force a channel advancement
+            PartitionState first = new PartitionState(0, 0);
+            first.messages.add(SENTINEL);
+            first.initialized = true;
+            this.partitionStateMap.put(-1, first);
+        }
         this.uuid = UUID.randomUUID();
     }
 
     public Iterator<T> getIterator() {
         // Initialize first partition
-        PartitionState ps = partitionStateMap.putIfAbsent(0, new PartitionState(1, queueSize));
+        PartitionState ps = new PartitionState(0, queueSize);
+        PartitionState old = partitionStateMap.putIfAbsent(0, ps);
+        ps = old != null ? old : ps;
         if (failure != null) {
-            ps.messages.add(FAILURE);
+            offer(ps, FAILURE);
         }
         // This will block until some data is available
         advance();
@@ -111,7 +147,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         }
         if (msg instanceof StreamProtocol.RequestClose) {
             // We can't block here, we negotiate throughput with the server to guarantee it
-            state.messages.add(SENTINEL);
+            offer(state, SENTINEL);
             // Let server know it can close the connection
             ctx.writeAndFlush(new StreamProtocol.ConfirmClose());
             ctx.close().sync();
@@ -121,7 +157,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         } else {
             // Data or StreamProtocol.Skipped
             // We can't block here, we negotiate throughput with the server to guarantee it
-            state.messages.add(msg);
+            offer(state, msg);
         }
     }
 
@@ -147,12 +183,26 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
     }
 
     private void advance() {
+        if (!ordered) {
+            advanceUnordered();
+            return;
+        }
         T next = null;
         try {
             while (next == null) {
                 PartitionState state = partitionStateMap.get(currentQueue);
-                // We take a message first to make sure we have a connection
-                Object msg = canBlock ? state.messages.take() : state.messages.remove();
+                Object msg;
+                if (state.hasBatchedRows()) {
+                    msg = nextBatchedRow(state, offset > 0);
+                } else {
+                    // We take a message first to make sure we have a connection
+                    msg = canBlock ? state.messages.take() : state.messages.remove();
+                    if (msg instanceof ColumnarRowBatch) {
+                        state.batch = (ColumnarRowBatch) msg;
+                        state.batchPosition = 0;
+                        msg = nextBatchedRow(state, offset > 0);
+                    }
+                }
                 if (!state.initialized && (offset > 0 || limit > 0)) {
                     if (LOG.isTraceEnabled())
                         LOG.trace("Sending skip " + limit + ", " + offset);
@@ -202,7 +252,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
                     // Set the partitionState so we can block on the queue in case the connection hasn't opened yet
                     PartitionState ps = partitionStateMap.putIfAbsent(currentQueue, new PartitionState(currentQueue, queueSize));
                     if (failure != null) {
-                        ps.messages.add(FAILURE);
+                        offer(ps, FAILURE);
                     }
                 } else {
                     if (msg instanceof StreamProtocol.Skipped) {
@@ -242,6 +292,143 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         }
     }
 
+    /**
+     * Unordered counterpart of {@link #advance()}: takes the next row from whichever partition has one, preferring
+     * the partition we read from last so that we drain each batch in one go.
+     */
+    private void advanceUnordered() {
+        T next = null;
+        try {
+            while (next == null) {
+                PartitionState state = currentState;
+                Object msg;
+                if (state != null && state.hasBatchedRows() && !stopped) {
+                    // the rest of a batch doesn't have a permit of its own, we took it with the batch
+                    msg = nextBatchedRow(state, false);
+                } else {
+                    if (canBlock) {
+                        available.acquire();
+                    } else if (!available.tryAcquire()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (stopped) {
+                        // stopAllStreams() queues a message so we never block here after being stopped
+                        currentResult = null;
+                        return;
+                    }
+                    state = nextAvailablePartition();
+                    if (state == null) {
+                        // the permit belonged to a message we discarded when its task was retried
+                        continue;
+                    }
+                    msg = state.messages.remove();
+                    if (msg instanceof ColumnarRowBatch) {
+                        state.batch = (ColumnarRowBatch) msg;
+                        state.batchPosition = 0;
+                        msg = nextBatchedRow(state, false);
+                    }
+                }
+                state.initialized = true;
+                if (msg == RETRY) {
+                    // There was a retried task, skip all records already read from the previous run of the task
+                    state.next.channel.writeAndFlush(new StreamProtocol.Skip(-1, state.readTotal));
+                    state.next.initialized = true;
+                    discardMessages(state);
+                    partitionStateMap.put(state.partition, state.next);
+                    currentState = state.next;
+                    if (LOG.isTraceEnabled())
+                        LOG.trace("Retried task, currentRead " + state.readTotal + " state " + state);
+                } else if (msg == FAILURE) {
+                    // The olap job failed, return
+                    currentResult = null;
+                    return;
+                } else if (msg == SENTINEL) {
+                    // This partition is finished
+                    if (partitionStateMap.remove(state.partition, state) && state.channel != null)
+                        partitionMap.remove(state.channel);
+                    currentState = null;
+                    finishedPartitions.add(state.partition);
+                    if (finishedPartitions.size() >= numPartitions) {
+                        if (LOG.isTraceEnabled())
+                            LOG.trace("End of stream");
+                        currentResult = null;
+                        close();
+                        return;
+                    }
+                } else {
+                    if (msg instanceof StreamProtocol.Skipped) {
+                        state.readTotal += ((StreamProtocol.Skipped) msg).skipped;
+                    } else {
+                        next = (T) msg;
+                        state.consumed++;
+                        state.readTotal++;
+                    }
+                    if (state.consumed > batchSize) {
+                        if (LOG.isTraceEnabled())
+                            LOG.trace("Writing CONT");
+                        state.channel.writeAndFlush(new StreamProtocol.Continue());
+                        state.consumed -= batchSize;
+                    }
+                }
+            }
+            currentResult = next;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Take the next row of the batch the partition is reading from.
+     *
+     * @param skip if true the row is going to be skipped, so there's no need to decode it
+     */
+    private Object nextBatchedRow(PartitionState state, boolean skip) {
+        ColumnarRowBatch batch = state.batch;
+        int position = state.batchPosition++;
+        if (state.batchPosition >= batch.size())
+            state.batch = null;
+        if (skip)
+            return SKIPPED_ROW;
+        try {
+            return batch.get(position);
+        } catch (StandardException e) {
+            Exceptions.throwAsRuntime(e);
+            return null; // unreachable
+        }
+    }
+
+    private PartitionState nextAvailablePartition() {
+        PartitionState state = currentState;
+        if (state != null && !state.messages.isEmpty())
+            return state;
+        for (PartitionState ps : partitionStateMap.values()) {
+            if (!ps.messages.isEmpty()) {
+                currentState = ps;
+                return ps;
+            }
+        }
+        return null;
+    }
+
+    private void discardMessages(PartitionState state) {
+        List<Object> discarded = new ArrayList<>();
+        state.messages.drainTo(discarded);
+        for (int i = 0; i < discarded.size(); i++) {
+            // if the permit hasn't been released yet we'll find an empty queue for it later, which is harmless
+            available.tryAcquire();
+        }
+    }
+
+    /**
+     * Queue a message for the iterator. This never blocks, we negotiate throughput with the server to guarantee there
+     * is room for it.
+     */
+    private void offer(PartitionState state, Object msg) {
+        state.messages.add(msg);
+        if (!ordered)
+            available.release();
+    }
+
     private void clearCurrentQueue() {
         PartitionState ps = partitionStateMap.remove(currentQueue);
         if (ps != null && ps.channel != null)
@@ -270,8 +457,8 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         // create fake queue with finish message so the next call to next() returns null
         currentQueue = (int) numPartitions + 1;
         PartitionState ps = new PartitionState(currentQueue, 0);
-        ps.messages.add(SENTINEL);
         partitionStateMap.putIfAbsent(currentQueue, ps);
+        offer(ps, SENTINEL);
         close();
     }
 
@@ -292,7 +479,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         ps = old != null ? old : ps;
 
         if (failure != null) {
-            ps.messages.add(FAILURE);
+            offer(ps, FAILURE);
         }
         Channel previousChannel = ps.channel;
         if (previousChannel != null) {
@@ -303,7 +490,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
             partitionMap.put(channel, ps.next);
             partitionMap.remove(ps.channel); // don't accept more messages from this channel
             // this is a new connection from a retried task
-            ps.messages.add(RETRY);
+            offer(ps, RETRY);
         } else {
             partitionMap.put(channel, ps);
             ps.channel = channel;
@@ -376,7 +563,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         // Unblock iterator
         for (PartitionState state : partitionStateMap.values()) {
             if (state != null) {
-                state.messages.add(FAILURE);
+                offer(state, FAILURE);
             }
         }
     }
@@ -390,12 +577,19 @@ class PartitionState {
     long readTotal;
     boolean initialized;
     volatile PartitionState next = null; // used when a task is retried after a failure
+    // the batch we are unpacking, if any, and the position of its next row
+    ColumnarRowBatch batch;
+    int batchPosition;
 
     PartitionState(int partition, int queueSize) {
         this.partition = partition;
         this.messages = new ArrayBlockingQueue<>(queueSize + 4);  // Extra to account for out of band messages
     }
 
+    boolean hasBatchedRows() {
+        return batch != null;
+    }
+
     @Override
     public String toString() {
         return "PartitionState{" +
@@ -46,6 +46,7 @@ public class StreamableRDD<T> {
     private final int clientBatches;
     private final UUID uuid;
     private final OperationContext<?> context;
+    private final boolean ordered;
 
 
     StreamableRDD(JavaRDD<T> rdd, UUID uuid, String clientHost, int clientPort) {
@@ -53,7 +54,20 @@ public class StreamableRDD<T> {
     }
 
     public StreamableRDD(JavaRDD<T> rdd, OperationContext<?> context, UUID uuid, String clientHost, int clientPort, int batches, int batchSize) {
+        this(rdd, context, uuid, clientHost, clientPort, batches, batchSize, true);
+    }
+
+    /**
+     * @param ordered whether the client reads the partitions in order. If it does, partitions are submitted in
+     *                pairs of batches, so that the next batch is ready by the time the client gets to it. If it
+     *                doesn't, each partition is submitted on its own, and a new one starts as soon as any other
+     *                finishes. Either way, at most {@link #PARALLEL_PARTITIONS} partitions stream at once, so the
+     *                rows buffered for the client don't grow with the size of the cluster.
+     */
+    public StreamableRDD(JavaRDD<T> rdd, OperationContext<?> context, UUID uuid, String clientHost, int clientPort,
+                         int batches, int batchSize, boolean ordered) {
         this.rdd = rdd;
+        this.ordered = ordered;
         this.context = context;
         this.uuid = uuid;
         this.host = clientHost;
@@ -69,7 +83,8 @@ public class StreamableRDD<T> {
         try {
             final JavaRDD<String> streamed = rdd.mapPartitionsWithIndex(new ResultStreamer(context, uuid, host, port, rdd.getNumPartitions(), clientBatches, clientBatchSize), true);
             int numPartitions = streamed.getNumPartitions();
-            int partitionsBatchSize = PARALLEL_PARTITIONS / 2;
+            int partitionsBatchSize = ordered ? PARALLEL_PARTITIONS / 2 : 1;
+            int batchesInFlight = PARALLEL_PARTITIONS / partitionsBatchSize;
             int partitionBatches = numPartitions / partitionsBatchSize;
             if (numPartitions % partitionsBatchSize > 0)
                 partitionBatches++;
@@ -79,12 +94,13 @@ public class StreamableRDD<T> {
 
             Properties properties = SpliceSpark.getContext().sc().getLocalProperties();
 
-            submitBatch(0, partitionsBatchSize, numPartitions, streamed, properties);
-            if (partitionBatches > 1)
-                submitBatch(1, partitionsBatchSize, numPartitions, streamed, properties);
+            int submitted = 0;
+            while (submitted < batchesInFlight && submitted < partitionBatches) {
+                submitBatch(submitted, partitionsBatchSize, numPartitions, streamed, properties);
+                submitted++;
+            }
 
             int received = 0;
-            int submitted = 2;
             while (received < partitionBatches && error == null) {
                 Future<Object> resultFuture = null;
                 try {
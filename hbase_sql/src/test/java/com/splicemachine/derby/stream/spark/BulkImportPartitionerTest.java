@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.primitives.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BulkImportPartitionerTest{
+
+    @Test
+    public void choosesNoSplitsForASingleRegion() throws Exception{
+        List<byte[]> sampled=keys(5,3,1);
+        Assert.assertEquals(0,BulkImportPartitioner.chooseSplitKeys(sampled,100,1000).length);
+    }
+
+    @Test
+    public void choosesSortedQuantiles() throws Exception{
+        List<byte[]> sampled=new ArrayList<>();
+        for(int i=99;i>=0;i--){
+            sampled.add(Bytes.toBytes(i));
+        }
+        byte[][] splits=BulkImportPartitioner.chooseSplitKeys(sampled,4000,1000);
+        Assert.assertEquals(3,splits.length);
+        Assert.assertArrayEquals(Bytes.toBytes(25),splits[0]);
+        Assert.assertArrayEquals(Bytes.toBytes(50),splits[1]);
+        Assert.assertArrayEquals(Bytes.toBytes(75),splits[2]);
+    }
+
+    @Test
+    public void neverChoosesMoreSplitsThanSamples() throws Exception{
+        byte[][] splits=BulkImportPartitioner.chooseSplitKeys(keys(1,2,3),1L<<40,1000);
+        Assert.assertEquals(2,splits.length);
+    }
+
+    @Test
+    public void skipsDuplicateSplits() throws Exception{
+        byte[][] splits=BulkImportPartitioner.chooseSplitKeys(keys(7,7,7,7,7,7,7,8),8000,1000);
+        Assert.assertEquals(2,splits.length);
+        Assert.assertArrayEquals(Bytes.toBytes(7),splits[0]);
+        Assert.assertArrayEquals(Bytes.toBytes(8),splits[1]);
+    }
+
+    @Test
+    public void mergeDropsEmptyAndDuplicateKeys() throws Exception{
+        byte[][] merged=BulkImportPartitioner.merge(
+                new byte[][]{Bytes.toBytes(2),Bytes.toBytes(6)},
+                new byte[][]{new byte[0],Bytes.toBytes(4),Bytes.toBytes(6)});
+        Assert.assertEquals(3,merged.length);
+        Assert.assertArrayEquals(Bytes.toBytes(2),merged[0]);
+        Assert.assertArrayEquals(Bytes.toBytes(4),merged[1]);
+        Assert.assertArrayEquals(Bytes.toBytes(6),merged[2]);
+    }
+
+    @Test
+    public void partitionsByConglomerateAndRegion() throws Exception{
+        Map<Long,byte[][]> splits=new HashMap<>();
+        splits.put(1792L,new byte[][]{Bytes.toBytes(10),Bytes.toBytes(20)});
+        splits.put(1600L,new byte[0][]);
+        BulkImportPartitioner partitioner=new BulkImportPartitioner(splits);
+        Assert.assertEquals(4,partitioner.numPartitions());
+
+        Assert.assertEquals(0,partitioner.getPartition(new BulkImportKey(1600L,Bytes.toBytes(50))));
+        Assert.assertEquals(1,partitioner.getPartition(new BulkImportKey(1792L,Bytes.toBytes(5))));
+        Assert.assertEquals("a split key starts its region",
+                2,partitioner.getPartition(new BulkImportKey(1792L,Bytes.toBytes(10))));
+        Assert.assertEquals(2,partitioner.getPartition(new BulkImportKey(1792L,Bytes.toBytes(19))));
+        Assert.assertEquals(3,partitioner.getPartition(new BulkImportKey(1792L,Bytes.toBytes(25))));
+    }
+
+    private static List<byte[]> keys(int...values){
+        List<byte[]> keys=new ArrayList<>(values.length);
+        for(int value:values){
+            keys.add(Bytes.toBytes(value));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.olap;
+
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.derby.iapi.sql.olap.OlapJobType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the ordering and admission decisions of {@link OlapJobScheduler}.
+ */
+public class OlapJobSchedulerTest{
+
+    @Test
+    public void runsJobsImmediatelyWhenIdle() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        OlapJobScheduler scheduler=scheduler(executor,2,10,noLimits());
+        List<String> ran=new ArrayList<>();
+
+        Assert.assertTrue(scheduler.submit(OlapJobType.QUERY,"alice",record(ran,"q1")));
+        Assert.assertTrue(scheduler.submit(OlapJobType.QUERY,"bob",record(ran,"q2")));
+        Assert.assertEquals(2,scheduler.getRunningJobs());
+        Assert.assertEquals(0,scheduler.getQueuedJobs());
+
+        executor.runAll();
+        Assert.assertEquals(2,ran.size());
+        Assert.assertEquals(0,scheduler.getRunningJobs());
+    }
+
+    @Test
+    public void startsHigherPriorityJobsFirst() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        OlapJobScheduler scheduler=scheduler(executor,1,10,noLimits());
+        List<String> ran=new ArrayList<>();
+
+        scheduler.submit(OlapJobType.DDL,"alice",record(ran,"first"));
+        scheduler.submit(OlapJobType.COMPACTION,null,record(ran,"compaction"));
+        scheduler.submit(OlapJobType.STATISTICS,"alice",record(ran,"stats"));
+        scheduler.submit(OlapJobType.DDL,"bob",record(ran,"ddl"));
+        scheduler.submit(OlapJobType.OTHER,"carol",record(ran,"other"));
+        Assert.assertEquals(4,scheduler.getQueuedJobs());
+
+        executor.runAll();
+        Assert.assertEquals(
+                Arrays.asList("first","ddl","other","compaction","stats"),ran);
+    }
+
+    @Test
+    public void sharesAPriorityFairlyBetweenOwners() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        OlapJobScheduler scheduler=scheduler(executor,2,10,noLimits());
+        List<String> ran=new ArrayList<>();
+
+        scheduler.submit(OlapJobType.DDL,"alice",record(ran,"a1"));
+        scheduler.submit(OlapJobType.DDL,"alice",record(ran,"a2"));
+        scheduler.submit(OlapJobType.DDL,"alice",record(ran,"a3"));
+        scheduler.submit(OlapJobType.DDL,"bob",record(ran,"b1"));
+        //a1 and a2 are running, so bob should go ahead of alice's third job
+        executor.runOne(); //a1 completes, alice still has a2 running, so b1 starts
+        Assert.assertEquals(1,scheduler.getQueuedJobs());
+        executor.runAll();
+        Assert.assertEquals(Arrays.asList("a1","a2","b1","a3"),ran);
+    }
+
+    @Test
+    public void limitsConcurrencyPerJobType() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        Map<OlapJobType,Integer> limits=noLimits();
+        limits.put(OlapJobType.STATISTICS,1);
+        OlapJobScheduler scheduler=scheduler(executor,4,10,limits);
+        List<String> ran=new ArrayList<>();
+
+        scheduler.submit(OlapJobType.STATISTICS,"alice",record(ran,"s1"));
+        scheduler.submit(OlapJobType.STATISTICS,"bob",record(ran,"s2"));
+        scheduler.submit(OlapJobType.QUERY,"carol",record(ran,"q1"));
+        Assert.assertEquals(2,scheduler.getRunningJobs());
+        Assert.assertEquals(1,scheduler.getRunningJobs(OlapJobType.STATISTICS));
+        Assert.assertEquals(1,scheduler.getQueuedJobs());
+
+        executor.runAll();
+        Assert.assertEquals(3,ran.size());
+        Assert.assertEquals(0,scheduler.getQueuedJobs());
+    }
+
+    @Test
+    public void rejectsJobsWhenTheQueueIsFull() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        OlapJobScheduler scheduler=scheduler(executor,1,1,noLimits());
+        List<String> ran=new ArrayList<>();
+
+        Assert.assertTrue(scheduler.submit(OlapJobType.DDL,"alice",record(ran,"running")));
+        Assert.assertTrue(scheduler.submit(OlapJobType.DDL,"alice",record(ran,"queued")));
+        Assert.assertFalse(scheduler.submit(OlapJobType.DDL,"bob",record(ran,"rejected")));
+        Assert.assertEquals(1,scheduler.getRejectedJobs());
+
+        executor.runAll();
+        Assert.assertEquals(Arrays.asList("running","queued"),ran);
+        Assert.assertTrue(scheduler.submit(OlapJobType.DDL,"bob",record(ran,"accepted")));
+    }
+
+    @Test
+    public void rejectsJobsWhichCannotStartWhenTheQueueIsFull() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        Map<OlapJobType,Integer> limits=noLimits();
+        limits.put(OlapJobType.COMPACTION,1);
+        OlapJobScheduler scheduler=scheduler(executor,4,1,limits);
+        List<String> ran=new ArrayList<>();
+
+        Assert.assertTrue(scheduler.submit(OlapJobType.COMPACTION,null,record(ran,"c1")));
+        Assert.assertTrue(scheduler.submit(OlapJobType.COMPACTION,null,record(ran,"c2")));
+        Assert.assertFalse(scheduler.submit(OlapJobType.COMPACTION,null,record(ran,"c3")));
+        //there are threads to spare, so a query is still admitted
+        Assert.assertTrue(scheduler.submit(OlapJobType.QUERY,"alice",record(ran,"q1")));
+
+        executor.runAll();
+        Assert.assertEquals(Arrays.asList("c1","q1","c2"),ran);
+    }
+
+    @Test
+    public void queriesDoNotWaitForOtherJobs() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        OlapJobScheduler scheduler=scheduler(executor,1,10,noLimits());
+        List<String> ran=new ArrayList<>();
+
+        scheduler.submit(OlapJobType.DDL,"alice",record(ran,"ddl1"));
+        //queries hold their thread while the client reads the results, so they don't count against the limit
+        scheduler.submit(OlapJobType.QUERY,"bob",record(ran,"q1"));
+        scheduler.submit(OlapJobType.QUERY,"bob",record(ran,"q2"));
+        Assert.assertEquals(3,scheduler.getRunningJobs());
+        Assert.assertEquals(0,scheduler.getQueuedJobs());
+
+        //and they don't hold up the jobs which do
+        scheduler.submit(OlapJobType.DDL,"alice",record(ran,"ddl2"));
+        Assert.assertEquals(1,scheduler.getQueuedJobs());
+        executor.runOne();
+        Assert.assertEquals(0,scheduler.getQueuedJobs());
+        executor.runAll();
+        Assert.assertEquals(Arrays.asList("ddl1","q1","q2","ddl2"),ran);
+    }
+
+    @Test
+    public void queuedJobsAgeIntoHigherPriorities() throws Exception{
+        ManualExecutor executor=new ManualExecutor();
+        IncrementingClock clock=new IncrementingClock();
+        OlapJobScheduler scheduler=new OlapJobScheduler(executor,1,10,noLimits(),1000L,clock);
+        List<String> ran=new ArrayList<>();
+
+        scheduler.submit(OlapJobType.DDL,"alice",record(ran,"running"));
+        scheduler.submit(OlapJobType.COMPACTION,null,record(ran,"compaction"));
+        clock.increment(TimeUnit.MILLISECONDS.toNanos(1500));
+        scheduler.submit(OlapJobType.STATISTICS,"bob",record(ran,"stats"));
+        scheduler.submit(OlapJobType.DDL,"bob",record(ran,"ddl"));
+
+        //the compaction has waited long enough to be on par with the DDL, and it was there first
+        executor.runAll();
+        Assert.assertEquals(Arrays.asList("running","compaction","ddl","stats"),ran);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static OlapJobScheduler scheduler(ManualExecutor executor,int maxRunningJobs,int maxQueuedJobs,Map<OlapJobType,Integer> limits){
+        //jobs never wait long enough to age
+        return new OlapJobScheduler(executor,maxRunningJobs,maxQueuedJobs,limits,Long.MAX_VALUE,new IncrementingClock());
+    }
+
+    private static Map<OlapJobType,Integer> noLimits(){
+        return new EnumMap<>(OlapJobType.class);
+    }
+
+    private static Runnable record(final List<String> ran,final String name){
+        return new Runnable(){
+            @Override
+            public void run(){
+                ran.add(name);
+            }
+        };
+    }
+
+    /**
+     * Holds submitted tasks until the test runs them, in the order they were started.
+     */
+    private static class ManualExecutor extends AbstractExecutorService{
+        private final List<Runnable> pending=new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command){
+            pending.add(command);
+        }
+
+        void runOne(){
+            pending.remove(0).run();
+        }
+
+        void runAll(){
+            while(!pending.isEmpty()){
+                runOne();
+            }
+        }
+
+        @Override public void shutdown(){ }
+        @Override public List<Runnable> shutdownNow(){ return Collections.emptyList(); }
+        @Override public boolean isShutdown(){ return false; }
+        @Override public boolean isTerminated(){ return false; }
+        @Override public boolean awaitTermination(long timeout,TimeUnit unit){ return true; }
+    }
+}
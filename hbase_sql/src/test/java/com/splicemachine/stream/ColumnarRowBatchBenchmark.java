@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.stream;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.SQLDecimal;
+import com.splicemachine.db.iapi.types.SQLDouble;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLTimestamp;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.SpliceSparkKryoRegistrator;
+import com.splicemachine.utils.kryo.KryoPool;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the throughput of sending result rows from a {@link ResultStreamer} to a {@link StreamListener} one
+ * Kryo-serialized row at a time (as the stream did before) against sending them in {@link ColumnarRowBatch}es.
+ * Each measurement covers encoding the rows into messages on the sending side, and decoding every row on the
+ * receiving side, for a narrow (2 column) and a wide (40 column) result set.
+ *
+ * Usage: {@code ColumnarRowBatchBenchmark [rows] [batch size] [iterations]}.
+ */
+public class ColumnarRowBatchBenchmark{
+
+    public static void main(String...args) throws Exception{
+        int numRows=args.length>0?Integer.parseInt(args[0]):500000;
+        int batchSize=args.length>1?Integer.parseInt(args[1]):512;
+        int iterations=args.length>2?Integer.parseInt(args[2]):5;
+
+        Random random=new Random(0l);
+        List<ExecRow> narrow=new ArrayList<>(numRows);
+        List<ExecRow> wide=new ArrayList<>(numRows/10);
+        for(int i=0;i<numRows;i++){
+            narrow.add(narrowRow(i,random));
+        }
+        for(int i=0;i<numRows/10;i++){
+            wide.add(wideRow(i,random));
+        }
+
+        for(int i=0;i<iterations;i++){
+            run("narrow",narrow,batchSize,i);
+            run("wide",wide,batchSize,i);
+        }
+    }
+
+    private static void run(String shape,List<ExecRow> rows,int batchSize,int iteration) throws Exception{
+        long[] bytes=new long[1];
+        long s=System.nanoTime();
+        long perRowCount=perRow(rows,bytes);
+        long perRowTime=System.nanoTime()-s;
+        long perRowBytes=bytes[0];
+
+        s=System.nanoTime();
+        long batchCount=columnar(rows,batchSize,bytes);
+        long batchTime=System.nanoTime()-s;
+        if(perRowCount!=rows.size() || batchCount!=rows.size())
+            throw new IllegalStateException("Decoded "+perRowCount+" and "+batchCount+" rows, expected "+rows.size());
+
+        System.out.printf("iteration=%d shape=%s rows=%d perRow rows/sec=%.0f bytes/row=%.1f columnar(%d) rows/sec=%.0f bytes/row=%.1f%n",
+                iteration,shape,rows.size(),
+                rows.size()/(perRowTime/1e9d),perRowBytes/(double)rows.size(),
+                batchSize,rows.size()/(batchTime/1e9d),bytes[0]/(double)rows.size());
+    }
+
+    /*
+     * What the stream used to do: one Kryo message per row
+     */
+    private static long perRow(List<ExecRow> rows,long[] bytes){
+        KryoPool kp=SpliceSparkKryoRegistrator.getInstance();
+        Output output=new Output(4096,-1);
+        long count=0;
+        bytes[0]=0;
+        for(ExecRow row:rows){
+            output.clear();
+            Kryo kryo=kp.get();
+            try{
+                kryo.writeClassAndObject(output,row);
+            }finally{
+                kp.returnInstance(kryo);
+            }
+            byte[] message=output.toBytes();
+            bytes[0]+=message.length;
+
+            kryo=kp.get();
+            try{
+                if(kryo.readClassAndObject(new Input(message))!=null)
+                    count++;
+            }finally{
+                kp.returnInstance(kryo);
+            }
+        }
+        return count;
+    }
+
+    private static long columnar(List<ExecRow> rows,int batchSize,long[] bytes) throws Exception{
+        KryoPool kp=SpliceSparkKryoRegistrator.getInstance();
+        ColumnarRowBatch.Builder builder=new ColumnarRowBatch.Builder();
+        Output output=new Output(4096,-1);
+        long count=0;
+        bytes[0]=0;
+        for(int start=0;start<rows.size();start+=batchSize){
+            int end=Math.min(rows.size(),start+batchSize);
+            for(int i=start;i<end;i++){
+                if(!builder.add(rows.get(i)))
+                    throw new IllegalStateException("Row "+i+" can't be batched");
+            }
+            output.clear();
+            Kryo kryo=kp.get();
+            try{
+                kryo.writeClassAndObject(output,builder.build());
+            }finally{
+                kp.returnInstance(kryo);
+            }
+            byte[] message=output.toBytes();
+            bytes[0]+=message.length;
+
+            ColumnarRowBatch batch;
+            kryo=kp.get();
+            try{
+                batch=(ColumnarRowBatch)kryo.readClassAndObject(new Input(message));
+            }finally{
+                kp.returnInstance(kryo);
+            }
+            for(int i=0;i<batch.size();i++){
+                if(batch.get(i)!=null)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    private static ExecRow narrowRow(int i,Random random){
+        ValueRow row=new ValueRow(2);
+        row.setColumn(1,new SQLInteger(i));
+        row.setColumn(2,new SQLVarchar("status "+random.nextInt(5)));
+        return row;
+    }
+
+    /*
+     * Forty columns, cycling through a handful of types: some unique per row, some with a few distinct values,
+     * some mostly null
+     */
+    private static ExecRow wideRow(int i,Random random) throws StandardException{
+        ValueRow row=new ValueRow(40);
+        for(int c=0;c<40;c++){
+            DataValueDescriptor dvd;
+            switch(c%8){
+                case 0: dvd=new SQLInteger(i); break;
+                case 1: dvd=new SQLLongint(random.nextLong()); break;
+                case 2: dvd=new SQLVarchar("category "+random.nextInt(10)); break;
+                case 3: dvd=new SQLVarchar("description of row "+i+" in column "+c); break;
+                case 4: dvd=new SQLDouble(random.nextDouble()); break;
+                case 5: dvd=new SQLDecimal(new BigDecimal(random.nextInt(100000)).movePointLeft(2)); break;
+                case 6: dvd=new SQLTimestamp(new Timestamp(1480000000000l+1000l*i)); break;
+                default: dvd=random.nextInt(10)==0?new SQLInteger(random.nextInt()):new SQLInteger(); break;
+            }
+            row.setColumn(c+1,dvd);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.stream;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLDecimal;
+import com.splicemachine.db.iapi.types.SQLDouble;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLTimestamp;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.SpliceSparkKryoRegistrator;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.impl.store.access.hbase.HBaseRowLocation;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.utils.kryo.KryoPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ColumnarRowBatchTest{
+
+    @Test
+    public void roundTripsRows() throws Exception{
+        List<ExecRow> rows=new ArrayList<>();
+        for(int i=0;i<1000;i++){
+            rows.add(row(i));
+        }
+        ColumnarRowBatch.Builder builder=new ColumnarRowBatch.Builder();
+        for(ExecRow row:rows){
+            Assert.assertTrue(builder.add(row));
+        }
+        ColumnarRowBatch batch=reserialize(builder.build());
+        Assert.assertEquals(0,builder.size());
+        Assert.assertEquals(rows.size(),batch.size());
+        for(int i=0;i<rows.size();i++){
+            Assert.assertEquals(rows.get(i),batch.get(i));
+        }
+        Assert.assertEquals("empty strings are not nulls","",((ExecRow)batch.get(3)).getColumn(2).getString());
+        Assert.assertTrue(((ExecRow)batch.get(7)).getColumn(2).isNull());
+    }
+
+    @Test
+    public void roundTripsWithoutCompression() throws Exception{
+        ColumnarRowBatch.Builder builder=new ColumnarRowBatch.Builder(false);
+        for(int i=0;i<100;i++){
+            Assert.assertTrue(builder.add(row(i)));
+        }
+        ColumnarRowBatch batch=reserialize(builder.build());
+        for(int i=0;i<100;i++){
+            Assert.assertEquals(row(i),batch.get(i));
+        }
+    }
+
+    @Test
+    public void repeatedValuesAreSmallerThanDistinctValues() throws Exception{
+        ColumnarRowBatch.Builder builder=new ColumnarRowBatch.Builder(false);
+        for(int i=0;i<500;i++){
+            builder.add(narrowRow(i));
+        }
+        int distinct=builder.build().encodedSize();
+        for(int i=0;i<500;i++){
+            builder.add(narrowRow(i%4)); //dictionary
+        }
+        int dictionary=builder.build().encodedSize();
+        for(int i=0;i<500;i++){
+            builder.add(narrowRow(i/100)); //runs
+        }
+        int runs=builder.build().encodedSize();
+        Assert.assertTrue("dictionary "+dictionary+" distinct "+distinct,dictionary<distinct/2);
+        Assert.assertTrue("runs "+runs+" dictionary "+dictionary,runs<dictionary);
+    }
+
+    @Test
+    public void roundTripsLocatedRows() throws Exception{
+        ColumnarRowBatch.Builder builder=new ColumnarRowBatch.Builder();
+        for(int i=0;i<10;i++){
+            HBaseRowLocation location=i==3?null:new HBaseRowLocation(Bytes.toBytes(i));
+            Assert.assertTrue(builder.add(new LocatedRow(location,narrowRow(i))));
+        }
+        ColumnarRowBatch batch=reserialize(builder.build());
+        for(int i=0;i<10;i++){
+            LocatedRow lr=(LocatedRow)batch.get(i);
+            Assert.assertEquals(narrowRow(i),lr.getRow());
+            if(i==3)
+                Assert.assertNull(lr.getRowLocation());
+            else
+                Assert.assertArrayEquals(Bytes.toBytes(i),lr.getRowLocation().getBytes());
+        }
+    }
+
+    @Test
+    public void refusesRowsOfADifferentShape() throws Exception{
+        ColumnarRowBatch.Builder builder=new ColumnarRowBatch.Builder();
+        Assert.assertTrue(builder.add(narrowRow(1)));
+        Assert.assertFalse(builder.add(row(2)));
+        Assert.assertFalse(builder.add(new LocatedRow(narrowRow(3))));
+        Assert.assertFalse(builder.add("not a row"));
+        Assert.assertEquals(1,builder.size());
+
+        ColumnarRowBatch batch=builder.build();
+        Assert.assertTrue(builder.add(row(2)));
+        Assert.assertEquals(narrowRow(1),batch.get(0));
+        Assert.assertEquals(row(2),builder.build().get(0));
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static ColumnarRowBatch reserialize(ColumnarRowBatch batch){
+        KryoPool kp=SpliceSparkKryoRegistrator.getInstance();
+        Kryo kryo=kp.get();
+        try{
+            Output output=new Output(1024,-1);
+            kryo.writeClassAndObject(output,batch);
+            return (ColumnarRowBatch)kryo.readClassAndObject(new Input(output.toBytes()));
+        }finally{
+            kp.returnInstance(kryo);
+        }
+    }
+
+    private static ExecRow narrowRow(int i){
+        ValueRow row=new ValueRow(1);
+        row.setColumn(1,new SQLInteger(i));
+        return row;
+    }
+
+    private static ExecRow row(int i) throws StandardException{
+        ValueRow row=new ValueRow(6);
+        row.setColumn(1,new SQLInteger(i));
+        row.setColumn(2,i%7==0?new SQLVarchar():new SQLVarchar(i%3==0?"":"value "+(i%10)));
+        row.setColumn(3,new SQLLongint(i/100));
+        row.setColumn(4,new SQLDouble(i*1.5d));
+        row.setColumn(5,new SQLDecimal(new BigDecimal(i).movePointLeft(2)));
+        row.setColumn(6,new SQLTimestamp(new Timestamp(1000000l*i)));
+        return row;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.stream;
+
+import com.google.common.net.HostAndPort;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.SpliceSpark;
+import com.splicemachine.derby.stream.BaseStreamTest;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function2;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compares the time to the first row and the overall throughput of streaming Spark results to the client in partition
+ * order against streaming them unordered. The first partition is made artificially slow, as a stand-in for a skewed or
+ * straggling task.
+ *
+ * Usage: {@code ResultStreamingBenchmark [rows] [partitions] [first partition delay ms] [iterations]}.
+ */
+public class ResultStreamingBenchmark{
+
+    public static void main(String...args) throws Exception{
+        int numRows=args.length>0?Integer.parseInt(args[0]):1000000;
+        int numPartitions=args.length>1?Integer.parseInt(args[1]):16;
+        final long delayMs=args.length>2?Long.parseLong(args[2]):2000l;
+        int iterations=args.length>3?Integer.parseInt(args[3]):5;
+
+        List<Tuple2<ExecRow,ExecRow>> rows=new ArrayList<>(numRows);
+        for(int i=0;i<numRows;i++){
+            ExecRow row=BaseStreamTest.getExecRow(i,1);
+            rows.add(new Tuple2<>(row,row));
+        }
+        JavaRDD<ExecRow> rdd=SpliceSpark.getContext().parallelizePairs(rows,numPartitions).values().cache();
+        rdd.count();
+        JavaRDD<ExecRow> slowFirst=rdd.mapPartitionsWithIndex(new SlowFirstPartition(delayMs),true);
+
+        StreamListenerServer server=new StreamListenerServer(0);
+        server.start();
+        for(int i=0;i<iterations;i++){
+            for(boolean ordered:new boolean[]{true,false}){
+                run(server,slowFirst,numRows,ordered,i);
+            }
+        }
+    }
+
+    private static void run(StreamListenerServer server,JavaRDD<ExecRow> rdd,int numRows,boolean ordered,int iteration) throws Exception{
+        int batches=2;
+        int batchSize=512;
+        StreamListener<ExecRow> sl=new StreamListener<>(-1,0,batches,batchSize,ordered);
+        server.register(sl);
+        HostAndPort hostAndPort=server.getHostAndPort();
+        final StreamableRDD<ExecRow> srdd=new StreamableRDD<>(rdd,null,sl.getUuid(),hostAndPort.getHostText(),
+                hostAndPort.getPort(),batches,batchSize,ordered);
+
+        long start=System.nanoTime();
+        Thread submitter=new Thread(){
+            @Override
+            public void run(){
+                try{
+                    srdd.submit();
+                }catch(Exception e){
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        submitter.start();
+        Iterator<ExecRow> it=sl.getIterator();
+        long firstRow=System.nanoTime()-start;
+        long count=0;
+        while(it.hasNext()){
+            it.next();
+            count++;
+        }
+        long total=System.nanoTime()-start;
+        submitter.join();
+        if(count!=numRows)
+            throw new IllegalStateException("Streamed "+count+" rows, expected "+numRows);
+
+        System.out.printf("iteration=%d mode=%s firstRow ms=%.1f total ms=%.1f rows/sec=%.0f%n",
+                iteration,ordered?"ordered":"unordered",firstRow/1e6d,total/1e6d,count/(total/1e9d));
+    }
+
+    private static class SlowFirstPartition implements Function2<Integer,Iterator<ExecRow>,Iterator<ExecRow>>{
+        private final long delayMs;
+
+        SlowFirstPartition(long delayMs){
+            this.delayMs=delayMs;
+        }
+
+        @Override
+        public Iterator<ExecRow> call(Integer partition,Iterator<ExecRow> rows) throws Exception{
+            if(partition==0)
+                Thread.sleep(delayMs);
+            return rows;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.apache.log4j.Logger;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.Function2;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import scala.Tuple2;
@@ -32,6 +33,7 @@ import scala.Tuple2;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -478,4 +480,162 @@ public class StreamableRDDTest extends BaseStreamTest implements Serializable {
         }
         assertEquals(100000, count);
     }
+
+    @Test
+    public void testUnorderedBlockingLarge() throws StandardException {
+        int batches = 2;
+        int batchSize = 512;
+        StreamListener<ExecRow> sl = new StreamListener<>(-1, 0, batches, batchSize, false);
+        HostAndPort hostAndPort = server.getHostAndPort();
+        server.register(sl);
+
+        List<Tuple2<ExecRow,ExecRow>> manyRows = new ArrayList<>();
+        for(int i = 0; i < 100000; ++i) {
+            manyRows.add(new Tuple2<ExecRow, ExecRow>(getExecRow(i, 1), getExecRow(i, 2)));
+        }
+
+        JavaPairRDD<ExecRow, ExecRow> rdd = SpliceSpark.getContext().parallelizePairs(manyRows, 13);
+        final StreamableRDD srdd = new StreamableRDD(rdd.values(), null, sl.getUuid(), hostAndPort.getHostText(), hostAndPort.getPort(), batches, batchSize, false);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    srdd.submit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+            }
+        }.start();
+        Iterator<ExecRow> it = sl.getIterator();
+        BitSet seen = new BitSet();
+        int count = 0;
+        while (it.hasNext()) {
+            ExecRow execRow = it.next();
+            assertNotNull(execRow);
+            int value = execRow.getColumn(1).getInt();
+            assertTrue("Duplicate row " + value, !seen.get(value));
+            seen.set(value);
+            count++;
+        }
+        assertEquals(100000, count);
+    }
+
+    @Test
+    public void testUnorderedSlowFirstPartition() throws StandardException {
+        int batches = 2;
+        int batchSize = 512;
+        StreamListener<ExecRow> sl = new StreamListener<>(-1, 0, batches, batchSize, false);
+        HostAndPort hostAndPort = server.getHostAndPort();
+        server.register(sl);
+
+        List<Tuple2<ExecRow,ExecRow>> manyRows = new ArrayList<>();
+        for(int i = 0; i < 10000; ++i) {
+            manyRows.add(new Tuple2<ExecRow, ExecRow>(getExecRow(i, 1), getExecRow(i, 2)));
+        }
+
+        JavaRDD<ExecRow> slowFirst = SpliceSpark.getContext().parallelizePairs(manyRows, 4).values().mapPartitionsWithIndex(
+                new Function2<Integer, Iterator<ExecRow>, Iterator<ExecRow>>() {
+            @Override
+            public Iterator<ExecRow> call(Integer partition, Iterator<ExecRow> rows) throws Exception {
+                if (partition == 0)
+                    Thread.sleep(2000);
+                return rows;
+            }
+        }, true);
+        final StreamableRDD srdd = new StreamableRDD(slowFirst, null, sl.getUuid(), hostAndPort.getHostText(), hostAndPort.getPort(), batches, batchSize, false);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    srdd.submit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+            }
+        }.start();
+        Iterator<ExecRow> it = sl.getIterator();
+        assertTrue(it.hasNext());
+        // the first partition holds rows [0, 2500), the others shouldn't have to wait for it
+        assertTrue("First row came from the slow partition", it.next().getColumn(1).getInt() >= 2500);
+        int count = 1;
+        while (it.hasNext()) {
+            assertNotNull(it.next());
+            count++;
+        }
+        assertEquals(10000, count);
+    }
+
+    private static final AtomicInteger streaming = new AtomicInteger();
+    private static final AtomicInteger maxStreaming = new AtomicInteger();
+
+    @Test
+    public void testUnorderedBoundsPartitionsInFlight() throws Exception {
+        int batches = 2;
+        int batchSize = 64;
+        StreamListener<ExecRow> sl = new StreamListener<>(-1, 0, batches, batchSize, false);
+        HostAndPort hostAndPort = server.getHostAndPort();
+        server.register(sl);
+
+        List<Tuple2<ExecRow,ExecRow>> manyRows = new ArrayList<>();
+        for(int i = 0; i < 10000; ++i) {
+            manyRows.add(new Tuple2<ExecRow, ExecRow>(getExecRow(i, 1), getExecRow(i, 2)));
+        }
+        streaming.set(0);
+        maxStreaming.set(0);
+        JavaRDD<ExecRow> counted = SpliceSpark.getContext().parallelizePairs(manyRows, 4 * StreamableRDD.PARALLEL_PARTITIONS).values().mapPartitionsWithIndex(
+                new Function2<Integer, Iterator<ExecRow>, Iterator<ExecRow>>() {
+            @Override
+            public Iterator<ExecRow> call(Integer partition, final Iterator<ExecRow> rows) throws Exception {
+                int now = streaming.incrementAndGet();
+                int max;
+                while ((max = maxStreaming.get()) < now && !maxStreaming.compareAndSet(max, now));
+                return new Iterator<ExecRow>() {
+                    private boolean done;
+
+                    @Override
+                    public boolean hasNext() {
+                        boolean hasNext = rows.hasNext();
+                        if (!hasNext && !done) {
+                            done = true;
+                            streaming.decrementAndGet();
+                        }
+                        return hasNext;
+                    }
+
+                    @Override
+                    public ExecRow next() {
+                        return rows.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        }, true);
+        final StreamableRDD srdd = new StreamableRDD(counted, null, sl.getUuid(), hostAndPort.getHostText(), hostAndPort.getPort(), batches, batchSize, false);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    srdd.submit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+            }
+        }.start();
+        Iterator<ExecRow> it = sl.getIterator();
+        int count = 0;
+        while (it.hasNext()) {
+            assertNotNull(it.next());
+            count++;
+        }
+        assertEquals(10000, count);
+        // partitions which haven't started don't buffer rows for the client
+        assertTrue("Too many partitions streamed at once: " + maxStreaming.get(), maxStreaming.get() <= StreamableRDD.PARALLEL_PARTITIONS);
+    }
 }
@@ -101,7 +101,8 @@ public class SIObserver extends BaseRegionObserver{
                     driver.getReadResolver(regionPartition),
                     driver.getTxnSupplier(),
                     driver.getTransactor(),
-                    driver.getOperationFactory()
+                    driver.getOperationFactory(),
+                    driver.getSharedTxnCache()
                     );
             Tracer.traceRegion(region.getTableName(),rce.getRegion());
         }
@@ -28,7 +28,7 @@ import com.splicemachine.pipeline.context.NoOpPipelineMeter;
 import com.splicemachine.pipeline.contextfactory.ContextFactoryDriver;
 import com.splicemachine.pipeline.mem.DirectBulkWriterFactory;
 import com.splicemachine.pipeline.mem.DirectPipelineExceptionFactory;
-import com.splicemachine.pipeline.traffic.AtomicSpliceWriteControl;
+import com.splicemachine.pipeline.traffic.StripedWriteControl;
 import com.splicemachine.pipeline.utils.PipelineCompressor;
 import com.splicemachine.si.api.data.ExceptionFactory;
 import com.splicemachine.si.api.data.OperationFactory;
@@ -61,7 +61,7 @@ public class MPipelineEnv  implements PipelineEnvironment{
         super();
         this.siEnv=siEnv;
         this.writerFactory = new DirectBulkWriterFactory(new MappedPipelineFactory(),
-                new AtomicSpliceWriteControl(Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE),
+                new StripedWriteControl(Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE),
                 pipelineExceptionFactory(),pipelineMeter());
         this.ctxFactoryDriver = ContextFactoryDriverService.loadDriver();
     }
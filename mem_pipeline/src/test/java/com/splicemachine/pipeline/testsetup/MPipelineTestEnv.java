@@ -41,7 +41,7 @@ import com.splicemachine.pipeline.contextfactory.WriteContextFactory;
 import com.splicemachine.pipeline.contextfactory.WriteContextFactoryManager;
 import com.splicemachine.pipeline.mem.DirectBulkWriterFactory;
 import com.splicemachine.pipeline.mem.DirectPipelineExceptionFactory;
-import com.splicemachine.pipeline.traffic.AtomicSpliceWriteControl;
+import com.splicemachine.pipeline.traffic.StripedWriteControl;
 import com.splicemachine.pipeline.writer.SynchronousBucketingWriter;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.MemSITestEnv;
@@ -71,7 +71,7 @@ public class MPipelineTestEnv extends MemSITestEnv implements PipelineTestEnv{
          trf = buildTransactionalRegionFactory();
         pipelineFactory = new MappedPipelineFactory();
         DirectBulkWriterFactory bwf = new DirectBulkWriterFactory(pipelineFactory,
-                new AtomicSpliceWriteControl(Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE),
+                new StripedWriteControl(Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE),
                 DirectPipelineExceptionFactory.INSTANCE,NoOpPipelineMeter.INSTANCE);
         Writer writer = new SynchronousBucketingWriter(bwf,DirectPipelineExceptionFactory.INSTANCE,
                 getTableFactory(),getClock());
@@ -16,11 +16,6 @@
 package com.splicemachine.storage;
 
 import com.splicemachine.access.util.ByteComparisons;
-import org.spark_project.guava.base.Predicate;
-import org.spark_project.guava.collect.BiMap;
-import org.spark_project.guava.collect.HashBiMap;
-import org.spark_project.guava.collect.Sets;
-import com.splicemachine.collections.EmptyNavigableSet;
 import com.splicemachine.kvpair.KVPair;
 import com.splicemachine.metrics.MetricFactory;
 import com.splicemachine.metrics.Metrics;
@@ -28,17 +23,13 @@ import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.constants.SIConstants;
 import com.splicemachine.storage.util.MappedDataResultScanner;
 import com.splicemachine.utils.Pair;
-import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author Scott Fines
@@ -50,8 +41,12 @@ public class MPartition implements Partition{
     private final String tableName;
     private final PartitionServer owner;
 
-    private final ConcurrentSkipListSet<DataCell> memstore=new ConcurrentSkipListSet<>();
-    private final BiMap<ByteBuffer, Lock> lockMap=HashBiMap.create();
+    /*
+     * Cells are compared on their row, family, qualifier and version only, so mapping each cell to itself lets
+     * a write replace an existing version of a cell in a single operation.
+     */
+    private final ConcurrentSkipListMap<DataCell,DataCell> memstore=new ConcurrentSkipListMap<>();
+    private final StripedRowLocks rowLocks=new StripedRowLocks();
     private AtomicLong writes=new AtomicLong(0l);
     private AtomicLong reads=new AtomicLong(0l);
     private AtomicLong sequenceGen = new AtomicLong(0l);
@@ -86,15 +81,7 @@ public class MPartition implements Partition{
 
     @Override
     public DataResult get(final DataGet get,DataResult previous) throws IOException{
-        DataCell start=new MCell(get.key(),new byte[]{},new byte[]{},get.highTimestamp(),new byte[]{},CellType.USER_DATA);
-
-        Set<DataCell> data=Sets.filter(memstore.tailSet(start,true),new Predicate<DataCell>(){
-            @Override
-            public boolean apply(DataCell dataCell){
-                byte[] key=get.key();
-                return Bytes.equals(dataCell.keyArray(),dataCell.keyOffset(),dataCell.keyLength(),key,0,key.length);
-            }
-        });
+        Collection<DataCell> data=rowCells(get.key()).values();
         long curSeq = sequenceGen.get();
         try(SetScanner ss=new SetScanner(curSeq,data.iterator(),get.lowTimestamp(),get.highTimestamp(),get.filter(),this,Metrics.noOpMetricFactory())){
             List<DataCell> toReturn=ss.next(-1);
@@ -122,8 +109,8 @@ public class MPartition implements Partition{
         DataCell start=new MCell(rowKey,family,new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
         DataCell end=new MCell(rowKey,family,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,0l,new byte[]{},CellType.USER_DATA);
 
-        Set<DataCell> data=memstore.subSet(start,true,end,true);
-        List<DataCell> toReturn=new ArrayList<>(data.size());
+        Collection<DataCell> data=memstore.subMap(start,true,end,true).values();
+        List<DataCell> toReturn=new ArrayList<>();
         DataCell last=null;
         for(DataCell d : data){
             if(last==null){
@@ -149,8 +136,8 @@ public class MPartition implements Partition{
 
     @Override
     public DataScanner openScanner(DataScan scan,MetricFactory metricFactory) throws IOException{
-        NavigableSet<DataCell> dataCells=getAscendingScanSet(scan);
-        Iterator<DataCell> iter = scan.isDescendingScan()? dataCells.descendingIterator(): dataCells.iterator();
+        NavigableMap<DataCell,DataCell> dataCells=getAscendingScanRange(scan);
+        Iterator<DataCell> iter = scan.isDescendingScan()? dataCells.descendingMap().values().iterator(): dataCells.values().iterator();
 
         long curSeq = sequenceGen.get();
         return new SetScanner(curSeq,iter,scan.lowVersion(),scan.highVersion(),scan.getFilter(),this,metricFactory);
@@ -249,8 +236,8 @@ public class MPartition implements Partition{
         DataCell s=new MCell(key,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,Long.MAX_VALUE,new byte[]{},CellType.FOREIGN_KEY_COUNTER);
         DataCell e=new MCell(key,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,0l,new byte[]{},CellType.FOREIGN_KEY_COUNTER);
 
-        NavigableSet<DataCell> dataCells=memstore.subSet(s,true,e,true);
-        List<DataCell> results=new ArrayList<>(dataCells.size());
+        Collection<DataCell> dataCells=memstore.subMap(s,true,e,true).values();
+        List<DataCell> results=new ArrayList<>();
         DataCell lastResult=null;
         for(DataCell dc : dataCells){
             if(lastResult==null){
@@ -271,8 +258,8 @@ public class MPartition implements Partition{
         DataCell s=new MCell(key,new byte[]{},new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
         DataCell e=new MCell(key,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,0l,new byte[]{},CellType.USER_DATA);
 
-        NavigableSet<DataCell> dataCells=memstore.subSet(s,true,e,true);
-        List<DataCell> results=new ArrayList<>(dataCells.size());
+        Collection<DataCell> dataCells=memstore.subMap(s,true,e,true).values();
+        List<DataCell> results=new ArrayList<>();
         DataCell lastResult=null;
         for(DataCell dc : dataCells){
             if(lastResult==null){
@@ -288,16 +275,7 @@ public class MPartition implements Partition{
 
     @Override
     public Lock getRowLock(byte[] key,int keyOff,int keyLen) throws IOException{
-        final ByteBuffer wrap=ByteBuffer.wrap(key,keyOff,keyLen);
-        Lock lock;
-        synchronized(lockMap){
-            lock=lockMap.get(wrap);
-            if(lock==null){
-                lock=new MemLock(wrap);
-                lockMap.put(wrap,lock);
-            }
-        }
-        return lock;
+        return rowLocks.get(key,keyOff,keyLen);
     }
 
     @Override
@@ -407,62 +385,6 @@ public class MPartition implements Partition{
 
     /* ****************************************************************************************************************/
     /*private helper methods*/
-    private class MemLock implements Lock{
-        private ByteBuffer key;
-        private final Lock lock;
-        private int lockCount=0;
-
-        public MemLock(ByteBuffer key){
-            this.key=key;
-            this.lock=new ReentrantLock();
-        }
-
-        @Override
-        public void lock(){
-            lock.lock();
-            lockCount++;
-        }
-
-        @Override
-        public void lockInterruptibly() throws InterruptedException{
-            lock.lockInterruptibly();
-            lockCount++;
-        }
-
-        @Override
-        public boolean tryLock(){
-            if(lock.tryLock()){
-                lockCount++;
-                return true;
-            }else return false;
-        }
-
-        @Override
-        public boolean tryLock(long time,@Nonnull TimeUnit unit) throws InterruptedException{
-            if(lock.tryLock(time,unit)){
-                lockCount++;
-                return true;
-            }else return false;
-        }
-
-        @Override
-        public void unlock(){
-            lockCount--;
-            if(lockCount==0){
-                synchronized(lockMap){
-                    lockMap.remove(key);
-                }
-            }
-            lock.unlock();
-        }
-
-        @Override
-        @Nonnull
-        public Condition newCondition(){
-            return lock.newCondition();
-        }
-    }
-
     private void put(MPut mPut) throws IOException{
         long seq = sequenceGen.incrementAndGet();
         Lock lock=getRowLock(mPut.key(),0,mPut.key().length);
@@ -470,12 +392,9 @@ public class MPartition implements Partition{
         try{
             Iterable<DataCell> cells=mPut.cells();
             for(DataCell dc : cells){
-                if(memstore.contains(dc)){
-                    memstore.remove(dc);
-                }
                 DataCell clone=dc.getClone();
                 ((MCell)clone).sequence(seq);
-                memstore.add(clone);
+                memstore.put(clone,clone);
             }
         }finally{
             lock.unlock();
@@ -496,41 +415,47 @@ public class MPartition implements Partition{
         }
     }
 
-    private NavigableSet<DataCell> getAscendingScanSet(DataScan scan){
-        NavigableSet<DataCell> dataCells;
-        if(memstore.size()<=0)
-            dataCells = EmptyNavigableSet.instance();
-        else{
-            byte[] startKey=scan.getStartKey();
-            byte[] stopKey=scan.getStopKey();
-            DataCell start;
-            DataCell stop;
-            if(startKey==null|| startKey.length==0) {
-                if(stopKey==null||stopKey.length==0){
-                    return memstore;
-                }else{
-                    start = memstore.first();
-                }
-            }else
-                start=new MCell(startKey,new byte[]{},new byte[]{},scan.highVersion(),new byte[]{},CellType.COMMIT_TIMESTAMP);
-
+    private NavigableMap<DataCell,DataCell> getAscendingScanRange(DataScan scan){
+        //isEmpty() rather than size(), which has to count every cell in a skip list
+        if(memstore.isEmpty())
+            return Collections.emptyNavigableMap();
+        byte[] startKey=scan.getStartKey();
+        byte[] stopKey=scan.getStopKey();
+        DataCell start;
+        DataCell stop;
+        if(startKey==null|| startKey.length==0) {
             if(stopKey==null||stopKey.length==0){
-                return memstore.tailSet(start,true);
-            }else
-                stop=new MCell(stopKey,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,scan.lowVersion(),new byte[]{},CellType.FOREIGN_KEY_COUNTER);
-
-            /*
-             * It is possible (particularly if the start key is null) that the stop value compares to less than
-             * the start key, and that is a reasonable situation. In that case, we know that the end results
-             * are empty, so bypass creating a new Set object in this case.
-             */
-            if(stop.compareTo(start)<0) return EmptyNavigableSet.instance();
-            dataCells=memstore.subSet(start,true,stop,false);
-        }
-        return dataCells;
+                return memstore;
+            }else{
+                start = memstore.firstKey();
+            }
+        }else
+            start=new MCell(startKey,new byte[]{},new byte[]{},scan.highVersion(),new byte[]{},CellType.COMMIT_TIMESTAMP);
+
+        if(stopKey==null||stopKey.length==0){
+            return memstore.tailMap(start,true);
+        }else
+            stop=new MCell(stopKey,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,scan.lowVersion(),new byte[]{},CellType.FOREIGN_KEY_COUNTER);
+
+        /*
+         * It is possible (particularly if the start key is null) that the stop value compares to less than
+         * the start key, and that is a reasonable situation. In that case, we know that the end results
+         * are empty, so bypass creating a new Map object in this case.
+         */
+        if(stop.compareTo(start)<0) return Collections.emptyNavigableMap();
+        return memstore.subMap(start,true,stop,false);
+    }
+
+    /**
+     * @return every cell in the row {@code key}. The range ends at the first possible cell of the row which
+     * immediately follows it, so that we never look at cells from any other row.
+     */
+    private ConcurrentNavigableMap<DataCell,DataCell> rowCells(byte[] key){
+        DataCell start=new MCell(key,new byte[]{},new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
+        DataCell nextRow=new MCell(Arrays.copyOf(key,key.length+1),new byte[]{},new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
+        return memstore.subMap(start,true,nextRow,false);
     }
 
-
     private void filterByFamilies(List<DataCell> toReturn,Map<byte[], ? extends Set<byte[]>> familyQualifierMap){
         if(familyQualifierMap==null||familyQualifierMap.size()<=0) return;
         Iterator<DataCell> dcIter = toReturn.iterator();
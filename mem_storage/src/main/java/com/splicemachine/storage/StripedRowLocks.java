@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.storage;
+
+import com.splicemachine.hash.Hash32;
+import com.splicemachine.hash.HashFunctions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Row locks for a memory partition.
+ *
+ * Rather than creating (and later removing) a lock for each row, each row key hashes to one of a fixed number of
+ * reentrant locks. Two rows which share a stripe block each other, but since the write pipeline only ever
+ * {@code tryLock()}s its rows, that just means the row is retried with the writer's next batch. In exchange,
+ * looking up the lock for a row neither allocates nor synchronizes. The locks themselves are created the first
+ * time their stripe is used, so that idle partitions stay cheap even with a generous number of stripes.
+ */
+@ThreadSafe
+class StripedRowLocks{
+    static final int DEFAULT_STRIPES=1<<12;
+
+    private final Hash32 hashFunction=HashFunctions.murmur3(0);
+    private final AtomicReferenceArray<Lock> stripes;
+    private final int mask;
+
+    StripedRowLocks(){
+        this(DEFAULT_STRIPES);
+    }
+
+    StripedRowLocks(int numStripes){
+        int s=1;
+        while(s<numStripes)
+            s<<=1;
+        this.stripes=new AtomicReferenceArray<>(s);
+        this.mask=s-1;
+    }
+
+    Lock get(byte[] key,int keyOff,int keyLen){
+        int stripe=hashFunction.hash(key,keyOff,keyLen)&mask;
+        Lock lock=stripes.get(stripe);
+        if(lock==null){
+            Lock newLock=new ReentrantLock();
+            if(stripes.compareAndSet(stripe,null,newLock))
+                lock=newLock;
+            else
+                lock=stripes.get(stripe);
+        }
+        return lock;
+    }
+}
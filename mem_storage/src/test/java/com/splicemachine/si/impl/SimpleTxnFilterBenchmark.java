@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl;
+
+import com.carrotsearch.hppc.LongObjectOpenHashMap;
+import com.splicemachine.encoding.Encoding;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.constants.SIConstants;
+import com.splicemachine.si.impl.readresolve.NoOpReadResolver;
+import com.splicemachine.si.impl.txn.InheritingTxnView;
+import com.splicemachine.storage.CellType;
+import com.splicemachine.storage.DataCell;
+import com.splicemachine.storage.DataFilter;
+import com.splicemachine.storage.MCell;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the throughput of filtering rows one cell at a time through {@link SimpleTxnFilter#filterCell(DataCell)}
+ * against filtering them a batch at a time through {@link SimpleTxnFilter#filterRows(List,int,BitSet[])}.
+ *
+ * Usage: {@code SimpleTxnFilterBenchmark [rows] [distinct transactions] [batch size] [iterations]}.
+ */
+public class SimpleTxnFilterBenchmark{
+
+    public static void main(String...args) throws Exception{
+        int numRows=args.length>0?Integer.parseInt(args[0]):1000000;
+        int numTxns=args.length>1?Integer.parseInt(args[1]):200;
+        int batchSize=args.length>2?Integer.parseInt(args[2]):64;
+        int iterations=args.length>3?Integer.parseInt(args[3]):10;
+
+        MapTxnSupplier store=new MapTxnSupplier();
+        long[] txnIds=new long[numTxns];
+        for(int i=0;i<numTxns;i++){
+            long begin=2*i+1;
+            txnIds[i]=begin;
+            if(isRolledBack(begin))
+                store.cache(new InheritingTxnView(Txn.ROOT_TRANSACTION,begin,begin,true,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.State.ROLLEDBACK));
+            else
+                store.cache(new InheritingTxnView(Txn.ROOT_TRANSACTION,begin,begin,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                        false,false,true,true,begin+1,-1l,Txn.State.COMMITTED));
+        }
+        List<List<DataCell>> rows=generateRows(numRows,txnIds,new Random(0l));
+        long readTs=2*numTxns+1;
+        TxnView myTxn=new InheritingTxnView(Txn.ROOT_TRANSACTION,readTs,readTs,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.State.ACTIVE);
+
+        for(int i=0;i<iterations;i++){
+            long s=System.nanoTime();
+            long visible=filterPerCell(rows,new SimpleTxnFilter(null,myTxn,NoOpReadResolver.INSTANCE,store));
+            long cellTime=System.nanoTime()-s;
+
+            s=System.nanoTime();
+            long batchVisible=filterBatched(rows,batchSize,new SimpleTxnFilter(null,myTxn,NoOpReadResolver.INSTANCE,store));
+            long batchTime=System.nanoTime()-s;
+            if(visible!=batchVisible)
+                throw new IllegalStateException("Batch filtering found "+batchVisible+" visible cells, expected "+visible);
+
+            System.out.printf("iteration=%d rows=%d visibleCells=%d perCell rows/sec=%.0f batch(%d) rows/sec=%.0f%n",
+                    i,numRows,visible,numRows/(cellTime/1e9d),batchSize,numRows/(batchTime/1e9d));
+        }
+    }
+
+    private static long filterPerCell(List<List<DataCell>> rows,SimpleTxnFilter filter) throws IOException{
+        long visible=0;
+        for(List<DataCell> row:rows){
+            filter.nextRow();
+            for(DataCell cell:row){
+                if(filter.filterCell(cell)==DataFilter.ReturnCode.INCLUDE)
+                    visible++;
+            }
+        }
+        return visible;
+    }
+
+    private static long filterBatched(List<List<DataCell>> rows,int batchSize,SimpleTxnFilter filter) throws IOException{
+        BitSet[] visibleCells=new BitSet[batchSize];
+        for(int i=0;i<batchSize;i++){
+            visibleCells[i]=new BitSet();
+        }
+        List<List<DataCell>> batch=new ArrayList<>(batchSize);
+        long visible=0;
+        for(int start=0;start<rows.size();start+=batchSize){
+            batch.clear();
+            batch.addAll(rows.subList(start,Math.min(rows.size(),start+batchSize)));
+            filter.filterRows(batch,batch.size(),visibleCells);
+            for(int i=0;i<batch.size();i++){
+                visible+=visibleCells[i].cardinality();
+            }
+        }
+        return visible;
+    }
+
+    /*
+     * Rows have between one and three versions of data, written by randomly chosen transactions. Roughly half
+     * of the rows have been read-resolved already, and one in twenty has been deleted.
+     */
+    private static List<List<DataCell>> generateRows(int numRows,long[] txnIds,Random random){
+        byte[] family=SIConstants.DEFAULT_FAMILY_BYTES;
+        byte[] value=Encoding.encode("hello");
+        List<List<DataCell>> rows=new ArrayList<>(numRows);
+        for(int r=0;r<numRows;r++){
+            byte[] key=Encoding.encode(r);
+            int numVersions=1+random.nextInt(3);
+            long[] versions=new long[numVersions];
+            for(int v=0;v<numVersions;v++){
+                versions[v]=txnIds[random.nextInt(txnIds.length)];
+            }
+            List<DataCell> row=new ArrayList<>(2*numVersions+1);
+            if(random.nextBoolean()){
+                for(long version:versions){
+                    if(isRolledBack(version)) continue; //rolled back writes are never resolved as committed
+                    row.add(new MCell(key,family,SIConstants.SNAPSHOT_ISOLATION_COMMIT_TIMESTAMP_COLUMN_BYTES,version,
+                            Bytes.toBytes(version+1),CellType.COMMIT_TIMESTAMP));
+                }
+            }
+            if(random.nextInt(20)==0){
+                row.add(new MCell(key,family,SIConstants.SNAPSHOT_ISOLATION_TOMBSTONE_COLUMN_BYTES,
+                        txnIds[random.nextInt(txnIds.length)],SIConstants.EMPTY_BYTE_ARRAY,CellType.TOMBSTONE));
+            }
+            for(long version:versions){
+                row.add(new MCell(key,family,SIConstants.PACKED_COLUMN_BYTES,version,value,CellType.USER_DATA));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static boolean isRolledBack(long txnId){
+        return (txnId/2)%10==9;
+    }
+
+    /**
+     * Stands in for the transaction store, with every transaction already in memory.
+     */
+    private static class MapTxnSupplier implements TxnSupplier{
+        private final LongObjectOpenHashMap<TxnView> txns=new LongObjectOpenHashMap<>();
+
+        @Override
+        public TxnView getTransaction(long txnId) throws IOException{
+            return getTransaction(txnId,false);
+        }
+
+        @Override
+        public TxnView getTransaction(long txnId,boolean getDestinationTables) throws IOException{
+            return txns.get(txnId);
+        }
+
+        @Override
+        public boolean transactionCached(long txnId){
+            return txns.containsKey(txnId);
+        }
+
+        @Override
+        public void cache(TxnView toCache){
+            txns.put(toCache.getTxnId(),toCache);
+        }
+
+        @Override
+        public TxnView getTransactionFromCache(long txnId){
+            return txns.get(txnId);
+        }
+    }
+}
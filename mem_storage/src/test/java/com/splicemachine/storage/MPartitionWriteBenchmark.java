@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.storage;
+
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.constants.SIConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Measures how {@link MPartition} holds up under concurrent batch writes, locking rows the way the SI write
+ * pipeline does (a {@code tryLock()} on each row, then a batch write of the locked rows), followed by a full
+ * range scan of the result.
+ *
+ * Usage: {@code MPartitionWriteBenchmark [threads] [rows per thread] [batch size] [iterations]}.
+ */
+public class MPartitionWriteBenchmark{
+
+    public static void main(String...args) throws Exception{
+        final int numThreads=args.length>0?Integer.parseInt(args[0]):8;
+        final int rowsPerThread=args.length>1?Integer.parseInt(args[1]):200000;
+        final int batchSize=args.length>2?Integer.parseInt(args[2]):100;
+        int iterations=args.length>3?Integer.parseInt(args[3]):5;
+
+        ExecutorService executor=Executors.newFixedThreadPool(numThreads);
+        try{
+            for(int i=0;i<iterations;i++){
+                final MPartition partition=new MPartition("benchmark","benchmark");
+                List<Future<Long>> futures=new ArrayList<>(numThreads);
+                long s=System.nanoTime();
+                for(int t=0;t<numThreads;t++){
+                    final int thread=t;
+                    futures.add(executor.submit(new Callable<Long>(){
+                        @Override
+                        public Long call() throws Exception{
+                            return writeRows(partition,thread,rowsPerThread,batchSize);
+                        }
+                    }));
+                }
+                long retries=0;
+                for(Future<Long> f:futures){
+                    retries+=f.get();
+                }
+                long writeTime=System.nanoTime()-s;
+
+                s=System.nanoTime();
+                long scanned=scanRows(partition);
+                long scanTime=System.nanoTime()-s;
+                long totalRows=(long)numThreads*rowsPerThread;
+                if(scanned!=totalRows)
+                    throw new IllegalStateException("Scanned "+scanned+" rows, expected "+totalRows);
+
+                System.out.printf("iteration=%d threads=%d write rows/sec=%.0f lockRetries=%d scan rows/sec=%.0f%n",
+                        i,numThreads,totalRows/(writeTime/1e9d),retries,totalRows/(scanTime/1e9d));
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the number of times a row had to be retried because its lock was held
+     */
+    private static long writeRows(MPartition partition,int thread,int numRows,int batchSize) throws Exception{
+        byte[] value=new byte[64];
+        long retries=0;
+        List<Lock> locks=new ArrayList<>(batchSize);
+        List<DataPut> batch=new ArrayList<>(batchSize);
+        List<byte[]> pending=new ArrayList<>(batchSize);
+        List<byte[]> notRun=new ArrayList<>(batchSize);
+        int next=0;
+        while(next<numRows || !pending.isEmpty()){
+            while(pending.size()<batchSize && next<numRows){
+                //interleave the threads' rows, so that they all write into the same key range
+                pending.add(Bytes.toBytes(next*(long)Integer.MAX_VALUE+thread));
+                next++;
+            }
+            for(byte[] key:pending){
+                Lock lock=partition.getRowLock(key,0,key.length);
+                if(!lock.tryLock()){
+                    //like the write pipeline, rows whose lock is held are not run, and are retried in the next batch
+                    notRun.add(key);
+                    continue;
+                }
+                locks.add(lock);
+                MPut put=new MPut(key);
+                put.addCell(SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.PACKED_COLUMN_BYTES,thread,value);
+                batch.add(put);
+            }
+            try{
+                partition.writeBatch(batch.toArray(new DataPut[batch.size()]));
+            }finally{
+                for(Lock lock:locks){
+                    lock.unlock();
+                }
+            }
+            retries+=notRun.size();
+            pending.clear();
+            pending.addAll(notRun);
+            notRun.clear();
+            locks.clear();
+            batch.clear();
+        }
+        return retries;
+    }
+
+    private static long scanRows(MPartition partition) throws Exception{
+        long rows=0;
+        try(DataScanner scanner=partition.openScanner(new MScan())){
+            List<DataCell> row;
+            while((row=scanner.next(-1)).size()>0){
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
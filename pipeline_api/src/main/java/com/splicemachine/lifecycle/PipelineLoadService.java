@@ -101,7 +101,9 @@ public abstract class PipelineLoadService<TableNameInfo> implements DatabaseLife
 
     @Override
     public void registerJMX(MBeanServer mbs) throws Exception{
-        if(pipelineEnv!=null)
+        if(pipelineEnv!=null){
             pipelineEnv.getPipelineDriver().registerJMX(mbs);
+            pipelineEnv.getSIDriver().registerJMX(mbs);
+        }
     }
 }
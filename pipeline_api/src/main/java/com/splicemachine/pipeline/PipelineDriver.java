@@ -23,6 +23,7 @@ import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.splicemachine.access.api.PartitionFactory;
@@ -36,8 +37,8 @@ import com.splicemachine.pipeline.api.WritePipelineFactory;
 import com.splicemachine.pipeline.client.WriteCoordinator;
 import com.splicemachine.pipeline.contextfactory.ContextFactoryDriver;
 import com.splicemachine.pipeline.contextfactory.ContextFactoryLoader;
-import com.splicemachine.pipeline.traffic.SpliceWriteControl;
-import com.splicemachine.pipeline.traffic.SynchronousWriteControl;
+import com.splicemachine.pipeline.traffic.StripedWriteControl;
+import com.splicemachine.pipeline.traffic.TableWriteQuotas;
 import com.splicemachine.pipeline.utils.PipelineCompressor;
 
 /**
@@ -48,7 +49,8 @@ public class PipelineDriver{
     private static final int ipcReserved=10;
     private static volatile PipelineDriver INSTANCE;
 
-    private final SpliceWriteControl writeControl;
+    private final StripedWriteControl writeControl;
+    private final TableWriteQuotas tableQuotas;
     private final WritePipelineFactory writePipelineFactory;
     private final PipelineMeter pipelineMeter;
     private final PipelineWriter pipelineWriter;
@@ -94,8 +96,9 @@ public class PipelineDriver{
         int maxIndependentWrites = config.getMaxIndependentWrites();
         int maxDependentWrites = config.getMaxDependentWrites();
 
-        this.writeControl= new SynchronousWriteControl(ipcThreads/2,ipcThreads/2,maxDependentWrites,maxIndependentWrites);
-        this.pipelineWriter = new PipelineWriter(pef, writePipelineFactory,writeControl,pipelineMeter);
+        this.writeControl= new StripedWriteControl(ipcThreads/2,ipcThreads/2,maxDependentWrites,maxIndependentWrites,config.getDependentWriteWeight());
+        this.tableQuotas = new TableWriteQuotas(writeControl,config.getMaxTableWriteShare());
+        this.pipelineWriter = new PipelineWriter(pef, writePipelineFactory,writeControl,tableQuotas,pipelineMeter);
         channelFactory.setWriter(pipelineWriter);
         channelFactory.setPipeline(writePipelineFactory);
         try{
@@ -166,6 +169,13 @@ public class PipelineDriver{
         double get5MThroughput();
         double get15MThroughput();
         long getTotalRejected();
+        double getDependentWriteWeight();
+        void setDependentWriteWeight(double newDependentWriteWeight);
+        double getMaxTableWriteShare();
+        void setMaxTableWriteShare(double newMaxTableWriteShare);
+        Map<String,Long> getInFlightWritesByTable();
+        Map<String,Long> getRejectedWritesByTable();
+        Map<String,Double> getWriteRejectionRateByTable();
     }
 
 
@@ -183,6 +193,21 @@ public class PipelineDriver{
         @Override public double get5MThroughput(){ return pipelineMeter.fiveMThroughput(); }
         @Override public double get15MThroughput(){ return pipelineMeter.fifteenMThroughput(); }
         @Override public long getTotalRejected(){ return pipelineMeter.rejectedCount(); }
+        @Override public double getDependentWriteWeight(){ return writeControl.getDependentWriteWeight(); }
+        @Override public double getMaxTableWriteShare(){ return tableQuotas.getMaxTableShare(); }
+        @Override public Map<String,Long> getInFlightWritesByTable(){ return tableQuotas.inFlightWrites(); }
+        @Override public Map<String,Long> getRejectedWritesByTable(){ return tableQuotas.rejectedWrites(); }
+        @Override public Map<String,Double> getWriteRejectionRateByTable(){ return tableQuotas.rejectionRates(); }
+
+        @Override
+        public void setDependentWriteWeight(double newDependentWriteWeight){
+            writeControl.setDependentWriteWeight(newDependentWriteWeight);
+        }
+
+        @Override
+        public void setMaxTableWriteShare(double newMaxTableWriteShare){
+            tableQuotas.setMaxTableShare(newMaxTableWriteShare);
+        }
 
         @Override
         public void setMaxIndependentWriteThreads(int newMaxIndependentWriteThreads){
@@ -22,6 +22,7 @@ import com.splicemachine.pipeline.api.WritePipelineFactory;
 import com.splicemachine.pipeline.client.*;
 import com.splicemachine.pipeline.exception.IndexNotSetUpException;
 import com.splicemachine.pipeline.traffic.SpliceWriteControl;
+import com.splicemachine.pipeline.traffic.TableWriteQuotas;
 import com.splicemachine.pipeline.writehandler.SharedCallBufferFactory;
 import com.splicemachine.utils.Pair;
 import org.apache.log4j.Logger;
@@ -40,6 +41,7 @@ import java.util.concurrent.atomic.AtomicLong;
 public class PipelineWriter{
     private static final Logger LOG =Logger.getLogger(PipelineWriter.class);
     private final SpliceWriteControl writeControl;
+    private final TableWriteQuotas tableQuotas;
     private final AtomicLong rejectedCount = new AtomicLong(0l);
 
     private volatile WriteCoordinator writeCoordinator;
@@ -51,7 +53,16 @@ public class PipelineWriter{
                           WritePipelineFactory writePipelineFactory,
                           SpliceWriteControl writeControl,
                           PipelineMeter pipelineMeter){
+        this(pipelineExceptionFactory,writePipelineFactory,writeControl,new TableWriteQuotas(writeControl,1d),pipelineMeter);
+    }
+
+    public PipelineWriter(PipelineExceptionFactory pipelineExceptionFactory,
+                          WritePipelineFactory writePipelineFactory,
+                          SpliceWriteControl writeControl,
+                          TableWriteQuotas tableQuotas,
+                          PipelineMeter pipelineMeter){
         this.writeControl = writeControl;
+        this.tableQuotas = tableQuotas;
         this.exceptionFactory = pipelineExceptionFactory;
         this.writePipelineFactory = writePipelineFactory;
         this.pipelineMeter = pipelineMeter;
@@ -70,6 +81,7 @@ public class PipelineWriter{
 
         // Determine whether or not this write is dependent or independent.  Dependent writes are writes to a table with indexes.
         boolean dependent;
+        String tableName;
         try {
             Iterator<BulkWrite> iterator=bws.iterator();
             PartitionWritePipeline pwp = null;
@@ -93,6 +105,7 @@ public class PipelineWriter{
                 return new BulkWritesResult(result);
             }
             dependent = pwp.isDependent(bulkWrites.getTxn());
+            tableName = pwp.getTableName();
         } catch (InterruptedException e1) {
             throw new IOException(e1);
         } catch (IndexNotSetUpException e1) {
@@ -102,12 +115,21 @@ public class PipelineWriter{
 
         SpliceWriteControl.Status status;
         int numKVPairs = bulkWrites.numEntries();  // KVPairs are just Splice mutations.  You can think of this count as rows modified (written to).
+        // Make sure the table hasn't used up its share of the permits before asking for one.
+        if (!tableQuotas.acquire(tableName,numKVPairs)) {
+            if(LOG.isTraceEnabled())
+                LOG.trace("Rejecting "+numBulkWrites+" rows in "+ bws.size()+"writes because table "+tableName+" is over its write quota");
+            rejectAll(bws,result, Code.PIPELINE_TOO_BUSY,null);
+            rejectedCount.addAndGet(numBulkWrites);
+            return new BulkWritesResult(result);
+        }
         // Get the "permit" to write.  WriteControl does not perform the writes.  It just controls whether or not the write is allowed to proceed.
 
         status = (dependent) ? writeControl.performDependentWrite(numKVPairs) : writeControl.performIndependentWrite(numKVPairs);
         if (status.equals(SpliceWriteControl.Status.REJECTED)) {
             if(LOG.isTraceEnabled())
                 LOG.trace("Rejecting "+numBulkWrites+" rows in "+ bws.size()+"writes because the pipeline is too busy");
+            tableQuotas.reject(tableName,numKVPairs);
             rejectAll(bws,result, Code.PIPELINE_TOO_BUSY,null);
             rejectedCount.addAndGet(numBulkWrites);
             return new BulkWritesResult(result);
@@ -125,6 +147,7 @@ public class PipelineWriter{
                     writeControl.finishIndependentWrite(numKVPairs);
                     break;
             }
+            tableQuotas.release(tableName,numKVPairs);
         }
     }
 
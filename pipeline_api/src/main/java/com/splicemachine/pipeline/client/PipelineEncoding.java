@@ -15,15 +15,18 @@
 
 package com.splicemachine.pipeline.client;
 
+import com.splicemachine.encoding.Encoding;
 import com.splicemachine.encoding.ExpandedDecoder;
 import com.splicemachine.encoding.ExpandingEncoder;
 import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.pipeline.utils.LZBlockCodec;
 import com.splicemachine.si.api.data.TxnOperationFactory;
 import com.splicemachine.si.api.txn.TxnView;
 import com.splicemachine.utils.ByteSlice;
 import org.spark_project.guava.collect.Iterators;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -33,10 +36,34 @@ import java.util.*;
  *         Date: 1/19/15
  */
 public class PipelineEncoding {
+    /*
+     * The first byte of every encoding since the original one. The original encoding starts with the
+     * length of the transaction, and lengths always encode with the high bit set, so this can't be
+     * mistaken for it. Going the other way, an older decoder reads this byte as a negative length and
+     * fails, rather than misreading the rest of the request.
+     */
+    private static final byte FORMAT_MARKER = 0x40;
+    private static final byte FORMAT_VERSION = 1;
+    /*
+     * Flags held in the byte following the version
+     */
+    private static final int FLAGS_OFFSET = 2;
+    private static final byte BLOCK_COMPRESSED = 0x01;
+    /*
+     * Bodies smaller than this aren't worth running through the block codec
+     */
+    private static final int MIN_BLOCK_COMPRESSION_SIZE = 256;
 
     public static byte[] encode(TxnOperationFactory operationFactory,BulkWrites bulkWrites){
+        return encode(operationFactory,bulkWrites,false);
+    }
+
+    public static byte[] encode(TxnOperationFactory operationFactory,BulkWrites bulkWrites,boolean blockCompress){
         /*
          * The encoding for a BulkWrites is as follows:
+         * format marker (1 byte)
+         * format version (1 byte)
+         * flags (1 byte)
          * Txn (1-N bytes)
          * # of BulkWrites (1-N bytes)
          * for 1...# of BulkWrites:
@@ -51,11 +78,29 @@ public class PipelineEncoding {
          * sequence of KVPairs. This means that we can decode the necessary metadata eagerly,
          * but deserialize the KVPairs on an as-needed basis.
          *
+         * The KVPairs of a single BulkWrite are encoded as
+         * # of KVPairs
+         * # of type runs
+         * for 1...# of type runs:
+         *  type (1 byte), run length
+         * # of bytes needed to rebuild prefix-coded row keys
+         * for 1...# of KVPairs:
+         *  length of the prefix shared with the previous row key, row key suffix, value
+         *
+         * Writes within a BulkWrite are nearly always of a single type and in row key order, so
+         * this takes the type information down to a couple of bytes, and removes most of the (often
+         * quite long) key prefix that sorted rows share with each other.
+         *
+         * When blockCompress is set, the body is then compressed as a whole (see LZBlockCodec),
+         * and stored as the uncompressed length followed by the compressed bytes.
          */
         byte[] txnBytes = operationFactory.encode(bulkWrites.getTxn());
 
         int heapSize = bulkWrites.getBufferHeapSize();
-        ExpandingEncoder buffer = new ExpandingEncoder(heapSize+txnBytes.length);
+        ExpandingEncoder buffer = new ExpandingEncoder(heapSize+txnBytes.length+FLAGS_OFFSET+1);
+        buffer.rawEncode(FORMAT_MARKER);
+        buffer.rawEncode(FORMAT_VERSION);
+        buffer.rawEncode((byte)0x00);
         buffer.rawEncode(txnBytes);
 
         //encode BulkWrite metadata
@@ -69,22 +114,33 @@ public class PipelineEncoding {
             buffer.encode(bw.getSkipIndexWrite());
         }
 
+        int bodyOffset = buffer.currentOffset();
         for(BulkWrite bw:bws){
-            Collection<KVPair> mutations = bw.getMutations();
-            buffer.encode(mutations.size());
-            for(KVPair kvPair:mutations){
-                //TODO -sf- use a run-length encoding for type information here?
-                buffer.rawEncode(kvPair.getType().asByte());
-                buffer.rawEncode(kvPair.rowKeySlice());
-                buffer.rawEncode(kvPair.valueSlice());
-            }
+            encodeMutations(bw.getMutations(),buffer);
         }
-        return buffer.getBuffer();
+        byte[] encoded = buffer.getBuffer();
+        if(blockCompress && encoded.length-bodyOffset>=MIN_BLOCK_COMPRESSION_SIZE)
+            return compressBody(encoded,bodyOffset);
+        return encoded;
     }
 
 
-    public static BulkWrites decode(TxnOperationFactory operationFactory,byte[] data){
+    /**
+     * Decode a BulkWrites, in either the current encoding or the original one (which has no format marker,
+     * flags, type runs or prefix-coded keys), so that requests from servers which haven't been upgraded yet
+     * can still be read.
+     */
+    public static BulkWrites decode(TxnOperationFactory operationFactory,byte[] data) throws IOException{
         ExpandedDecoder decoder = new ExpandedDecoder(data);
+        boolean original = (data[0] & 0x80)!=0;
+        byte flags = 0x00;
+        if(!original){
+            byte marker = decoder.rawByte();
+            byte version = decoder.rawByte();
+            if(marker!=FORMAT_MARKER || version>FORMAT_VERSION)
+                throw new IOException("Unable to decode BulkWrites with format marker "+marker+" and version "+version);
+            flags = decoder.rawByte();
+        }
         byte[] txnBytes = decoder.rawBytes();
         TxnView txn = operationFactory.decode(txnBytes,0,txnBytes.length);
         int bwSize = decoder.decodeInt();
@@ -97,9 +153,94 @@ public class PipelineEncoding {
             skipIndexWrites[i] = decoder.decodeByte();
         }
 
-        return new BulkWrites(new BulkWriteCol(skipIndexWrites,data,decoder.currentOffset(),stringNames),txn);
+        byte[] body = data;
+        int bodyOffset = decoder.currentOffset();
+        if((flags & BLOCK_COMPRESSED)!=0){
+            int length = decoder.decodeInt();
+            int compressedOffset = decoder.currentOffset();
+            body = new byte[length];
+            LZBlockCodec.decompress(data,compressedOffset,data.length-compressedOffset,body,0,length);
+            bodyOffset = 0;
+        }
+        return new BulkWrites(new BulkWriteCol(skipIndexWrites,body,bodyOffset,stringNames,original),txn);
+    }
+
+    /***********************************************************************************************************/
+    /*private helper methods*/
+    private static void encodeMutations(Collection<KVPair> mutations,ExpandingEncoder buffer){
+        int size = mutations.size();
+        buffer.encode(size);
+        int[] sharedPrefixes = new int[size];
+        int prefixedKeyBytes = 0;
+        int numRuns = 0;
+        KVPair.Type lastType = null;
+        ByteSlice lastKey = null;
+        int i=0;
+        for(KVPair kvPair:mutations){
+            if(kvPair.getType()!=lastType){
+                numRuns++;
+                lastType = kvPair.getType();
+            }
+            ByteSlice key = kvPair.rowKeySlice();
+            if(lastKey!=null){
+                int shared = sharedPrefixLength(lastKey,key);
+                sharedPrefixes[i] = shared;
+                if(shared>0)
+                    prefixedKeyBytes+=key.length();
+            }
+            lastKey = key;
+            i++;
+        }
+
+        buffer.encode(numRuns);
+        lastType = null;
+        int runLength = 0;
+        for(KVPair kvPair:mutations){
+            if(kvPair.getType()!=lastType){
+                if(lastType!=null)
+                    buffer.rawEncode(lastType.asByte()).encode(runLength);
+                lastType = kvPair.getType();
+                runLength = 0;
+            }
+            runLength++;
+        }
+        if(lastType!=null)
+            buffer.rawEncode(lastType.asByte()).encode(runLength);
+
+        buffer.encode(prefixedKeyBytes);
+        i=0;
+        for(KVPair kvPair:mutations){
+            ByteSlice key = kvPair.rowKeySlice();
+            int shared = sharedPrefixes[i++];
+            buffer.encode(shared);
+            buffer.rawEncode(key.array(),key.offset()+shared,key.length()-shared);
+            buffer.rawEncode(kvPair.valueSlice());
+        }
+    }
+
+    private static int sharedPrefixLength(ByteSlice previous,ByteSlice key){
+        byte[] pArray = previous.array();
+        byte[] kArray = key.array();
+        int pOffset = previous.offset();
+        int kOffset = key.offset();
+        int max = Math.min(previous.length(),key.length());
+        int shared = 0;
+        while(shared<max && pArray[pOffset+shared]==kArray[kOffset+shared])
+            shared++;
+        return shared;
     }
 
+    private static byte[] compressBody(byte[] encoded,int bodyOffset){
+        int bodyLength = encoded.length-bodyOffset;
+        byte[] compressed = new byte[bodyOffset+Encoding.encodedLength(bodyLength)+LZBlockCodec.maxCompressedLength(bodyLength)];
+        System.arraycopy(encoded,0,compressed,0,bodyOffset);
+        compressed[FLAGS_OFFSET] = BLOCK_COMPRESSED;
+        int offset = bodyOffset+Encoding.encode(bodyLength,compressed,bodyOffset);
+        int length = offset+LZBlockCodec.compress(encoded,bodyOffset,bodyLength,compressed,offset);
+        if(length>=encoded.length)
+            return encoded; //the body didn't compress, so don't make the receiver decompress it
+        return Arrays.copyOf(compressed,length);
+    }
 
     /***********************************************************************************************************/
     /*private helper classes*/
@@ -108,6 +249,7 @@ public class PipelineEncoding {
         private final List<String> encodedStringNames;
         private final byte[] skipIndexWrites;
         private final byte[] buffer;
+        private final boolean originalEncoding;
         /*
          * we keep a cache of previously created BulkWrites, so that we can have
          * deterministic iteration (i.e. returning the same objects instead of
@@ -117,8 +259,9 @@ public class PipelineEncoding {
         private transient ExpandedDecoder decoder;
         private transient int lastIndex = 0;
 
-        public BulkWriteCol(byte[] skipIndexWrites, byte[] buffer,int kvOffset, List<String> encodedStringNames) {
+        public BulkWriteCol(byte[] skipIndexWrites, byte[] buffer,int kvOffset, List<String> encodedStringNames,boolean originalEncoding) {
             this.kvOffset = kvOffset;
+            this.originalEncoding = originalEncoding;
             this.encodedStringNames = encodedStringNames;
             this.buffer = buffer;
             this.skipIndexWrites = skipIndexWrites;
@@ -165,6 +308,64 @@ public class PipelineEncoding {
                 String esN = encodedStrings.next();
                 byte skipIndexWrite = skipIndexWrites[index++];
                 int size = decoder.decodeInt();
+                Collection<KVPair> kvPairs = originalEncoding?decodeOriginal(size):decode(size);
+
+                BulkWrite bulkWrite = new BulkWrite(kvPairs, esN, skipIndexWrite);
+                cache.add(bulkWrite);
+                lastIndex=index;
+                return bulkWrite;
+            }
+
+            private Collection<KVPair> decode(int size){
+                int numRuns = decoder.decodeInt();
+                byte[] runTypes = new byte[numRuns];
+                int[] runLengths = new int[numRuns];
+                for(int i=0;i<numRuns;i++){
+                    runTypes[i] = decoder.rawByte();
+                    runLengths[i] = decoder.decodeInt();
+                }
+                /*
+                 * Row keys which share nothing with their predecessor, and all values, are sliced
+                 * directly out of the buffer. Only prefix-coded keys have to be put back together,
+                 * and they all share a single array.
+                 */
+                byte[] prefixedKeys = new byte[decoder.decodeInt()];
+                int prefixedKeyOffset = 0;
+
+                Collection<KVPair> kvPairs = new ArrayList<>(size);
+                KVPair template = new KVPair();
+                ByteSlice rowKeySlice = template.rowKeySlice();
+                ByteSlice valueSlice = template.valueSlice();
+                ByteSlice lastKey = null;
+                int run = -1;
+                int remainingInRun = 0;
+                for(int i=0;i<size;i++){
+                    while(remainingInRun==0){
+                        run++;
+                        remainingInRun = runLengths[run];
+                        template.setType(KVPair.Type.decode(runTypes[run]));
+                    }
+                    remainingInRun--;
+
+                    int shared = decoder.decodeInt();
+                    decoder.sliceNext(rowKeySlice);
+                    if(shared>0){
+                        assert lastKey!=null: "Cannot share a prefix with a missing row key!";
+                        int keyLength = shared+rowKeySlice.length();
+                        System.arraycopy(lastKey.array(),lastKey.offset(),prefixedKeys,prefixedKeyOffset,shared);
+                        System.arraycopy(rowKeySlice.array(),rowKeySlice.offset(),prefixedKeys,prefixedKeyOffset+shared,rowKeySlice.length());
+                        rowKeySlice.set(prefixedKeys,prefixedKeyOffset,keyLength);
+                        prefixedKeyOffset+=keyLength;
+                    }
+                    decoder.sliceNext(valueSlice);
+                    KVPair kvPair = template.shallowClone();
+                    lastKey = kvPair.rowKeySlice();
+                    kvPairs.add(kvPair);
+                }
+                return kvPairs;
+            }
+
+            private Collection<KVPair> decodeOriginal(int size){
                 Collection<KVPair> kvPairs = new ArrayList<>(size);
                 KVPair template = new KVPair();
                 ByteSlice rowKeySlice = template.rowKeySlice();
@@ -175,12 +376,7 @@ public class PipelineEncoding {
                     decoder.sliceNext(valueSlice);
                     kvPairs.add(template.shallowClone());
                 }
-
-
-                BulkWrite bulkWrite = new BulkWrite(kvPairs, esN, skipIndexWrite);
-                cache.add(bulkWrite);
-                lastIndex=index;
-                return bulkWrite;
+                return kvPairs;
             }
         }
     }
@@ -35,6 +35,8 @@ public interface ContextFactoryLoader extends AutoCloseable{
 
     WriteFactoryGroup getDDLFactories();
 
+    WriteFactoryGroup getStatisticsFactories();
+
     Set<ConstraintFactory> getConstraintFactories();
 
     void ddlChange(DDLMessage.DDLChange ddlChange);
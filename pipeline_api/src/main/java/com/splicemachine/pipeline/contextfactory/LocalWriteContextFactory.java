@@ -76,6 +76,9 @@ class LocalWriteContextFactory<TableInfo> implements WriteContextFactory<Transac
     /* Holds all of the WriteFactor instances related to foreign keys */
     private WriteFactoryGroup fkGroup;
 
+    /* These create WriteHandlers that feed successfully written rows into the incremental statistics for the region */
+    private volatile WriteFactoryGroup statisticsFactories;
+
     private final ReentrantLock initializationLock = new ReentrantLock();
 
     /* Latch for blocking writes during the updating of table metadata (adding constraints, indices, etc). */
@@ -225,6 +228,9 @@ class LocalWriteContextFactory<TableInfo> implements WriteContextFactory<Transac
 
             // FK - child intercept (of inserts/updates)
             fkGroup.addFactories(context,false,expectedWrites);
+
+            // statistics go last, so that they only see the writes which the rest of the pipeline allowed
+            statisticsFactories.addFactories(context,false,expectedWrites);
         }
     }
 
@@ -254,6 +260,7 @@ class LocalWriteContextFactory<TableInfo> implements WriteContextFactory<Transac
             indexFactories = factoryLoader.getIndexFactories();
             ddlFactories = factoryLoader.getDDLFactories();
             fkGroup = factoryLoader.getForeignKeyFactories();
+            statisticsFactories = factoryLoader.getStatisticsFactories();
             constraintFactories = factoryLoader.getConstraintFactories();
             state.set(State.RUNNING);
         }catch(IndexNotSetUpException inse){
@@ -66,8 +66,8 @@ public abstract class ReferenceCountingFactoryDriver implements ContextFactoryDr
            int rCount= refCount.decrementAndGet();
            if(rCount==0){
                synchronized(ReferenceCountingFactoryDriver.this){
-                   if(refCount.get()<=0)
-                       loaderMap.remove(conglomId);
+                   if(refCount.get()<=0 && loaderMap.remove(conglomId,this))
+                       delegate.close();
                }
            }
         }
@@ -94,6 +94,11 @@ public abstract class ReferenceCountingFactoryDriver implements ContextFactoryDr
             return delegate.getDDLFactories();
         }
 
+        @Override
+        public WriteFactoryGroup getStatisticsFactories(){
+            return delegate.getStatisticsFactories();
+        }
+
         @Override
         public Set<ConstraintFactory> getConstraintFactories(){
             return delegate.getConstraintFactories();
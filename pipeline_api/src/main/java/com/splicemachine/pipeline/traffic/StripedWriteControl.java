@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.traffic;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A WriteControl which keeps its thread and write counts in striped counters, rather than in a single shared
+ * word, so that admitting and finishing writes does not contend (or allocate) no matter how many handler
+ * threads are writing at once.
+ *
+ * A write takes its permit optimistically, by adding itself to the counters first and then checking the
+ * limits. If the limits were already exceeded when the write arrived, it gives the permit back and tries
+ * elsewhere. Two writers racing for the last of the capacity may therefore both be turned away, but the limits
+ * are never exceeded by more than the other controls allow.
+ *
+ * Dependent and independent writes each have their own permits, and when one kind of write has used all of its
+ * own it may borrow idle permits from the other kind. How much may be borrowed is governed by the dependent
+ * write weight: independent writes must leave {@code weight} of the dependent permits free, and dependent
+ * writes must leave {@code 1-weight} of the independent permits free, so that neither kind of write can starve
+ * the other out.
+ */
+@ThreadSafe
+public class StripedWriteControl implements SpliceWriteControl{
+    private static final Logger LOG=Logger.getLogger(StripedWriteControl.class);
+
+    private final LongAdder dependentWriteThreads=new LongAdder();
+    private final LongAdder dependentWriteCount=new LongAdder();
+    private final LongAdder independentWriteThreads=new LongAdder();
+    private final LongAdder independentWriteCount=new LongAdder();
+
+    private volatile int maxDependentWriteThreads;
+    private volatile int maxIndependentWriteThreads;
+    private volatile int maxDependentWriteCount;
+    private volatile int maxIndependentWriteCount;
+    private volatile double dependentWriteWeight;
+
+    public StripedWriteControl(int maxDependentWriteThreads,
+                               int maxIndependentWriteThreads,int maxDependentWriteCount,int maxIndependentWriteCount){
+        this(maxDependentWriteThreads,maxIndependentWriteThreads,maxDependentWriteCount,maxIndependentWriteCount,0.5d);
+    }
+
+    public StripedWriteControl(int maxDependentWriteThreads,
+                               int maxIndependentWriteThreads,
+                               int maxDependentWriteCount,
+                               int maxIndependentWriteCount,
+                               double dependentWriteWeight){
+        assert (maxDependentWriteThreads >= 0 &&
+                maxIndependentWriteThreads >= 0 &&
+                maxDependentWriteCount >= 0 &&
+                maxIndependentWriteCount >= 0);
+        this.maxDependentWriteThreads=maxDependentWriteThreads;
+        this.maxIndependentWriteThreads=maxIndependentWriteThreads;
+        this.maxDependentWriteCount=maxDependentWriteCount;
+        this.maxIndependentWriteCount=maxIndependentWriteCount;
+        setDependentWriteWeight(dependentWriteWeight);
+    }
+
+    @Override
+    public Status performDependentWrite(int writes){
+        if(acquire(dependentWriteThreads,dependentWriteCount,writes,maxDependentWriteThreads,maxDependentWriteCount))
+            return Status.DEPENDENT;
+        double lendable=dependentWriteWeight;
+        if(borrow(independentWriteThreads,independentWriteCount,writes,maxIndependentWriteThreads,maxIndependentWriteCount,lendable))
+            return Status.INDEPENDENT;
+        if(LOG.isTraceEnabled())
+            LOG.trace(String.format("Rejected dependent write: status=%s, requestedWriteCount=%d",getWriteStatus(),writes));
+        return Status.REJECTED;
+    }
+
+    @Override
+    public boolean finishDependentWrite(int writes){
+        dependentWriteThreads.decrement();
+        dependentWriteCount.add(-writes);
+        return true;
+    }
+
+    @Override
+    public Status performIndependentWrite(int writes){
+        if(acquire(independentWriteThreads,independentWriteCount,writes,maxIndependentWriteThreads,maxIndependentWriteCount))
+            return Status.INDEPENDENT;
+        double lendable=1d-dependentWriteWeight;
+        if(borrow(dependentWriteThreads,dependentWriteCount,writes,maxDependentWriteThreads,maxDependentWriteCount,lendable))
+            return Status.DEPENDENT;
+        if(LOG.isTraceEnabled())
+            LOG.trace(String.format("Rejected independent write: status=%s, requestedWriteCount=%d",getWriteStatus(),writes));
+        return Status.REJECTED;
+    }
+
+    @Override
+    public boolean finishIndependentWrite(int writes){
+        independentWriteThreads.decrement();
+        independentWriteCount.add(-writes);
+        return true;
+    }
+
+    /**
+     * The counts are summed one after another while other threads may be updating them, so this is only an
+     * approximate picture of the writes in flight.
+     */
+    @Override
+    public WriteStatus getWriteStatus(){
+        return new WriteStatus(count(dependentWriteThreads),count(dependentWriteCount),
+                count(independentWriteCount),count(independentWriteThreads));
+    }
+
+    @Override
+    public int maxDependendentWriteThreads(){
+        return maxDependentWriteThreads;
+    }
+
+    @Override
+    public int maxIndependentWriteThreads(){
+        return maxIndependentWriteThreads;
+    }
+
+    @Override
+    public int maxDependentWriteCount(){
+        return maxDependentWriteCount;
+    }
+
+    @Override
+    public int maxIndependentWriteCount(){
+        return maxIndependentWriteCount;
+    }
+
+    @Override
+    public void setMaxIndependentWriteThreads(int newMaxIndependentWriteThreads){
+        this.maxIndependentWriteThreads=newMaxIndependentWriteThreads;
+    }
+
+    @Override
+    public void setMaxDependentWriteThreads(int newMaxDependentWriteThreads){
+        this.maxDependentWriteThreads=newMaxDependentWriteThreads;
+    }
+
+    @Override
+    public void setMaxIndependentWriteCount(int newMaxIndependentWriteCount){
+        this.maxIndependentWriteCount=newMaxIndependentWriteCount;
+    }
+
+    @Override
+    public void setMaxDependentWriteCount(int newMaxDependentWriteCount){
+        this.maxDependentWriteCount=newMaxDependentWriteCount;
+    }
+
+    public double getDependentWriteWeight(){
+        return dependentWriteWeight;
+    }
+
+    public void setDependentWriteWeight(double newDependentWriteWeight){
+        assert newDependentWriteWeight>=0d && newDependentWriteWeight<=1d: "Weight must be between 0 and 1";
+        this.dependentWriteWeight=Math.max(0d,Math.min(1d,newDependentWriteWeight));
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * Take a permit from the given counters. As with the other controls, the write is admitted as long as the
+     * limits were not already exceeded when it arrived, so a single write which is larger than the limit can still
+     * proceed when nothing else is in flight.
+     */
+    private static boolean acquire(LongAdder threads,LongAdder count,int writes,long maxThreads,long maxCount){
+        threads.increment();
+        count.add(writes);
+        if(threads.sum()-1>maxThreads || count.sum()-writes>maxCount){
+            threads.decrement();
+            count.add(-writes);
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Borrow a permit from the other kind of write, which must keep (1-lendable) of its own permits free.
+     */
+    private static boolean borrow(LongAdder threads,LongAdder count,int writes,int maxThreads,int maxCount,double lendable){
+        long borrowableThreads=(long)(maxThreads*lendable);
+        long borrowableCount=(long)(maxCount*lendable);
+        if(borrowableThreads<=0 || borrowableCount<=0) return false;
+        return acquire(threads,count,writes,borrowableThreads,borrowableCount);
+    }
+
+    private static int count(LongAdder adder){
+        //the sum may be briefly negative while a finished write is being removed from another stripe
+        return (int)Math.max(0l,Math.min(Integer.MAX_VALUE,adder.sum()));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.traffic;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the writes in flight for each table on this server, and limits each table to a share of the
+ * server's write permits, so that a single hot table cannot take every permit and starve the writes to all of the
+ * other tables.
+ *
+ * The quota is taken in addition to the permit from the {@link SpliceWriteControl}, and is measured against the
+ * total number of writes which that control allows (dependent and independent together). The number of writes
+ * admitted and rejected for each table is counted whether or not a quota is being enforced.
+ */
+@ThreadSafe
+public class TableWriteQuotas{
+    private final SpliceWriteControl writeControl;
+    private final ConcurrentMap<String,TableWrites> tables=new ConcurrentHashMap<>();
+    private volatile double maxTableShare;
+
+    public TableWriteQuotas(SpliceWriteControl writeControl,double maxTableShare){
+        this.writeControl=writeControl;
+        setMaxTableShare(maxTableShare);
+    }
+
+    /**
+     * Take a share of the write permits for {@code writes} rows of the given table.
+     *
+     * @return true if the table is within its quota and the write may proceed, in which case the share must be given
+     * back with {@link #release(String,int)} (or {@link #reject(String,int)}) once the write is finished.
+     */
+    public boolean acquire(String table,int writes){
+        TableWrites tableWrites=writesFor(table);
+        tableWrites.inFlight.add(writes);
+        double share=maxTableShare;
+        if(share<1d){
+            long limit=(long)(share*((long)writeControl.maxDependentWriteCount()+writeControl.maxIndependentWriteCount()));
+            long previous=tableWrites.inFlight.sum()-writes;
+            //like the write control, a table with nothing in flight may always write
+            if(previous>0 && previous+writes>limit){
+                tableWrites.inFlight.add(-writes);
+                tableWrites.rejected.add(writes);
+                return false;
+            }
+        }
+        tableWrites.admitted.add(writes);
+        return true;
+    }
+
+    /**
+     * Give back the share taken by a successful {@link #acquire(String,int)} once the write has finished.
+     */
+    public void release(String table,int writes){
+        writesFor(table).inFlight.add(-writes);
+    }
+
+    /**
+     * Give back the share taken by a successful {@link #acquire(String,int)} when the write is then rejected
+     * for some other reason (such as the server being out of write permits altogether).
+     */
+    public void reject(String table,int writes){
+        TableWrites tableWrites=writesFor(table);
+        tableWrites.inFlight.add(-writes);
+        tableWrites.admitted.add(-writes);
+        tableWrites.rejected.add(writes);
+    }
+
+    public double getMaxTableShare(){
+        return maxTableShare;
+    }
+
+    public void setMaxTableShare(double newMaxTableShare){
+        assert newMaxTableShare>0d: "A table must be allowed some share of the write permits";
+        this.maxTableShare=Math.min(1d,newMaxTableShare);
+    }
+
+    /**
+     * @return the number of rows currently being written to each table
+     */
+    public Map<String,Long> inFlightWrites(){
+        Map<String,Long> inFlight=new HashMap<>(tables.size());
+        for(Map.Entry<String,TableWrites> entry:tables.entrySet()){
+            inFlight.put(entry.getKey(),Math.max(0l,entry.getValue().inFlight.sum()));
+        }
+        return inFlight;
+    }
+
+    /**
+     * @return the total number of rows rejected as too busy for each table
+     */
+    public Map<String,Long> rejectedWrites(){
+        Map<String,Long> rejected=new HashMap<>(tables.size());
+        for(Map.Entry<String,TableWrites> entry:tables.entrySet()){
+            rejected.put(entry.getKey(),entry.getValue().rejected.sum());
+        }
+        return rejected;
+    }
+
+    /**
+     * @return the fraction of the rows written to each table which were rejected as too busy
+     */
+    public Map<String,Double> rejectionRates(){
+        Map<String,Double> rates=new HashMap<>(tables.size());
+        for(Map.Entry<String,TableWrites> entry:tables.entrySet()){
+            long rejected=entry.getValue().rejected.sum();
+            long total=rejected+entry.getValue().admitted.sum();
+            rates.put(entry.getKey(),total<=0?0d:((double)rejected)/total);
+        }
+        return rates;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private TableWrites writesFor(String table){
+        TableWrites tableWrites=tables.get(table);
+        if(tableWrites==null){
+            tableWrites=new TableWrites();
+            TableWrites old=tables.putIfAbsent(table,tableWrites);
+            if(old!=null)
+                tableWrites=old;
+        }
+        return tableWrites;
+    }
+
+    private static class TableWrites{
+        private final LongAdder inFlight=new LongAdder();
+        private final LongAdder admitted=new LongAdder();
+        private final LongAdder rejected=new LongAdder();
+    }
+}
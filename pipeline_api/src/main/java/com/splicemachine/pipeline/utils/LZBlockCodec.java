@@ -0,0 +1,393 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.utils;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A small, fast LZ77 block codec, using the same sequence layout as the LZ4 block format.
+ *
+ * A compressed block is a series of sequences, each of which is laid out as
+ *
+ * <pre>
+ *     [token][literal length extension][literals][match offset (2 bytes, little endian)][match length extension]
+ * </pre>
+ *
+ * where the high nibble of the token holds the number of literals and the low nibble holds the match
+ * length (minus {@link #MIN_MATCH}). A nibble of 15 means that the length continues in the following
+ * bytes, each of which adds its value until a byte other than 255 is seen. The final sequence holds only
+ * literals.
+ *
+ * The compressor finds matches through a single-entry hash table keyed on the next four bytes, so it
+ * trades some compression ratio for speed; that suits the write pipeline, where we are trying to save
+ * network bytes without adding noticeable latency to each write.
+ */
+public final class LZBlockCodec{
+    static final int MIN_MATCH=4;
+    private static final int HASH_LOG=12;
+    private static final int MAX_DISTANCE=(1<<16)-1;
+    /*
+     * The final bytes of a block are always emitted as literals, which keeps the decompressor's
+     * match copies safely inside the buffer
+     */
+    private static final int LAST_LITERALS=5;
+    private static final int MF_LIMIT=12;
+    private static final int SKIP_TRIGGER=6;
+    private static final int RUN_MASK=15;
+
+    /*
+     * The block size used by the streams. Each block is compressed independently.
+     */
+    static final int STREAM_BLOCK_SIZE=1<<16;
+
+    private LZBlockCodec(){}
+
+    /**
+     * @param length the number of bytes to compress
+     * @return the largest number of bytes that {@link #compress(byte[],int,int,byte[],int)}
+     * can produce for {@code length} bytes of input.
+     */
+    public static int maxCompressedLength(int length){
+        return length+length/255+16;
+    }
+
+    /**
+     * Compress {@code src[srcOffset,srcOffset+length)} into {@code dest}, which must have at least
+     * {@link #maxCompressedLength(int)} bytes available after {@code destOffset}.
+     *
+     * @return the number of bytes written to {@code dest}
+     */
+    public static int compress(byte[] src,int srcOffset,int length,byte[] dest,int destOffset){
+        int srcEnd=srcOffset+length;
+        int anchor=srcOffset;
+        int op=destOffset;
+        if(length>=MF_LIMIT){
+            int[] table=new int[1<<HASH_LOG];
+            Arrays.fill(table,-1);
+            int matchLimit=srcEnd-LAST_LITERALS;
+            int mfLimit=srcEnd-MF_LIMIT;
+            int ip=srcOffset;
+            int searches=1<<SKIP_TRIGGER;
+            while(ip<mfLimit){
+                int sequence=readInt(src,ip);
+                int h=hash(sequence);
+                int ref=table[h];
+                table[h]=ip;
+                if(ref<0 || ip-ref>MAX_DISTANCE || readInt(src,ref)!=sequence){
+                    //the longer we go without a match, the faster we skip through the input
+                    ip+=searches++>>>SKIP_TRIGGER;
+                    continue;
+                }
+                searches=1<<SKIP_TRIGGER;
+                while(ip>anchor && ref>srcOffset && src[ip-1]==src[ref-1]){
+                    ip--;
+                    ref--;
+                }
+                int matchLength=MIN_MATCH;
+                while(ip+matchLength<matchLimit && src[ip+matchLength]==src[ref+matchLength])
+                    matchLength++;
+
+                op=writeSequence(src,anchor,ip-anchor,ip-ref,matchLength,dest,op);
+                ip+=matchLength;
+                anchor=ip;
+            }
+        }
+        return writeLastLiterals(src,anchor,srcEnd-anchor,dest,op)-destOffset;
+    }
+
+    /**
+     * Decompress the block held in {@code src[srcOffset,srcOffset+length)} into {@code dest}.
+     *
+     * @param destLength the number of bytes that the block decompresses to
+     * @return the number of bytes written to {@code dest}
+     * @throws IOException if the block is corrupt, or does not decompress to {@code destLength} bytes
+     */
+    public static int decompress(byte[] src,int srcOffset,int length,byte[] dest,int destOffset,int destLength) throws IOException{
+        int ip=srcOffset;
+        int srcEnd=srcOffset+length;
+        int op=destOffset;
+        int destEnd=destOffset+destLength;
+        while(ip<srcEnd){
+            int token=src[ip++]&0xFF;
+            int literalLength=token>>>4;
+            if(literalLength==RUN_MASK){
+                int b;
+                do{
+                    if(ip>=srcEnd) throw corrupt();
+                    b=src[ip++]&0xFF;
+                    literalLength+=b;
+                }while(b==255);
+            }
+            if(literalLength>srcEnd-ip || literalLength>destEnd-op) throw corrupt();
+            System.arraycopy(src,ip,dest,op,literalLength);
+            ip+=literalLength;
+            op+=literalLength;
+            if(ip==srcEnd) break; //the last sequence has no match
+
+            if(srcEnd-ip<2) throw corrupt();
+            int offset=(src[ip]&0xFF)|((src[ip+1]&0xFF)<<8);
+            ip+=2;
+            int matchLength=token&RUN_MASK;
+            if(matchLength==RUN_MASK){
+                int b;
+                do{
+                    if(ip>=srcEnd) throw corrupt();
+                    b=src[ip++]&0xFF;
+                    matchLength+=b;
+                }while(b==255);
+            }
+            matchLength+=MIN_MATCH;
+            int ref=op-offset;
+            if(offset==0 || ref<destOffset || matchLength>destEnd-op) throw corrupt();
+            if(offset>=matchLength)
+                System.arraycopy(dest,ref,dest,op,matchLength);
+            else{
+                //overlapping copy, which repeats the last offset bytes
+                for(int i=0;i<matchLength;i++){
+                    dest[op+i]=dest[ref+i];
+                }
+            }
+            op+=matchLength;
+        }
+        if(op!=destEnd) throw corrupt();
+        return destLength;
+    }
+
+    /**
+     * @return a stream which compresses everything written to it in independent blocks, and writes
+     * them to {@code out}.
+     */
+    public static OutputStream compressingStream(OutputStream out){
+        return new BlockOutputStream(out);
+    }
+
+    /**
+     * @return a stream which reads blocks written by {@link #compressingStream(OutputStream)} from
+     * {@code in}, and returns the decompressed bytes.
+     */
+    public static InputStream decompressingStream(InputStream in){
+        return new BlockInputStream(in);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static int hash(int sequence){
+        return (sequence*-1640531535)>>>(32-HASH_LOG);
+    }
+
+    private static int readInt(byte[] buf,int pos){
+        return (buf[pos]&0xFF)|((buf[pos+1]&0xFF)<<8)|((buf[pos+2]&0xFF)<<16)|((buf[pos+3]&0xFF)<<24);
+    }
+
+    private static int writeSequence(byte[] src,int literalStart,int literalLength,int offset,int matchLength,byte[] dest,int op){
+        int tokenPos=op++;
+        int token;
+        if(literalLength>=RUN_MASK){
+            token=RUN_MASK<<4;
+            op=writeLength(literalLength-RUN_MASK,dest,op);
+        }else
+            token=literalLength<<4;
+        System.arraycopy(src,literalStart,dest,op,literalLength);
+        op+=literalLength;
+
+        dest[op++]=(byte)offset;
+        dest[op++]=(byte)(offset>>>8);
+
+        int ml=matchLength-MIN_MATCH;
+        if(ml>=RUN_MASK){
+            token|=RUN_MASK;
+            op=writeLength(ml-RUN_MASK,dest,op);
+        }else
+            token|=ml;
+        dest[tokenPos]=(byte)token;
+        return op;
+    }
+
+    private static int writeLastLiterals(byte[] src,int literalStart,int literalLength,byte[] dest,int op){
+        if(literalLength>=RUN_MASK){
+            dest[op++]=(byte)(RUN_MASK<<4);
+            op=writeLength(literalLength-RUN_MASK,dest,op);
+        }else
+            dest[op++]=(byte)(literalLength<<4);
+        System.arraycopy(src,literalStart,dest,op,literalLength);
+        return op+literalLength;
+    }
+
+    private static int writeLength(int length,byte[] dest,int op){
+        while(length>=255){
+            dest[op++]=(byte)255;
+            length-=255;
+        }
+        dest[op++]=(byte)length;
+        return op;
+    }
+
+    private static IOException corrupt(){
+        return new IOException("Corrupt compressed block");
+    }
+
+    /*
+     * Each block in a stream is written as [raw length (4 bytes)][stored length (4 bytes)][stored bytes],
+     * where the block is stored uncompressed whenever compressing it would not save anything.
+     */
+    private static class BlockOutputStream extends FilterOutputStream{
+        private final byte[] block=new byte[STREAM_BLOCK_SIZE];
+        private final byte[] compressed=new byte[maxCompressedLength(STREAM_BLOCK_SIZE)];
+        private int position;
+        private boolean closed;
+
+        BlockOutputStream(OutputStream out){
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException{
+            if(position==block.length)
+                writeBlock();
+            block[position++]=(byte)b;
+        }
+
+        @Override
+        public void write(byte[] b,int off,int len) throws IOException{
+            while(len>0){
+                if(position==block.length)
+                    writeBlock();
+                int toCopy=Math.min(len,block.length-position);
+                System.arraycopy(b,off,block,position,toCopy);
+                position+=toCopy;
+                off+=toCopy;
+                len-=toCopy;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException{
+            writeBlock();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException{
+            if(closed) return;
+            closed=true;
+            super.close();
+        }
+
+        private void writeBlock() throws IOException{
+            if(position==0) return;
+            int compressedLength=compress(block,0,position,compressed,0);
+            writeInt(position);
+            if(compressedLength<position){
+                writeInt(compressedLength);
+                out.write(compressed,0,compressedLength);
+            }else{
+                writeInt(position);
+                out.write(block,0,position);
+            }
+            position=0;
+        }
+
+        private void writeInt(int v) throws IOException{
+            out.write(v>>>24);
+            out.write(v>>>16);
+            out.write(v>>>8);
+            out.write(v);
+        }
+    }
+
+    private static class BlockInputStream extends InputStream{
+        private final InputStream in;
+        private byte[] block=new byte[0];
+        private byte[] stored=new byte[0];
+        private int position;
+        private int limit;
+
+        BlockInputStream(InputStream in){
+            this.in=in;
+        }
+
+        @Override
+        public int read() throws IOException{
+            if(position==limit && !nextBlock()) return -1;
+            return block[position++]&0xFF;
+        }
+
+        @Override
+        public int read(byte[] b,int off,int len) throws IOException{
+            if(len==0) return 0;
+            if(position==limit && !nextBlock()) return -1;
+            int toCopy=Math.min(len,limit-position);
+            System.arraycopy(block,position,b,off,toCopy);
+            position+=toCopy;
+            return toCopy;
+        }
+
+        @Override
+        public int available() throws IOException{
+            return limit-position;
+        }
+
+        @Override
+        public void close() throws IOException{
+            in.close();
+        }
+
+        private boolean nextBlock() throws IOException{
+            int first=in.read();
+            if(first<0) return false;
+            int rawLength=(first<<24)|readInt(3);
+            int storedLength=readInt(4);
+            if(rawLength<0 || storedLength<0 || storedLength>maxCompressedLength(rawLength)) throw corrupt();
+            if(block.length<rawLength)
+                block=new byte[rawLength];
+            if(storedLength==rawLength)
+                readFully(block,rawLength);
+            else{
+                if(stored.length<storedLength)
+                    stored=new byte[storedLength];
+                readFully(stored,storedLength);
+                decompress(stored,0,storedLength,block,0,rawLength);
+            }
+            position=0;
+            limit=rawLength;
+            return true;
+        }
+
+        private int readInt(int numBytes) throws IOException{
+            int v=0;
+            for(int i=0;i<numBytes;i++){
+                int b=in.read();
+                if(b<0) throw new EOFException();
+                v=(v<<8)|b;
+            }
+            return v;
+        }
+
+        private void readFully(byte[] dest,int length) throws IOException{
+            int read=0;
+            while(read<length){
+                int n=in.read(dest,read,length-read);
+                if(n<0) throw new EOFException();
+                read+=n;
+            }
+        }
+    }
+}
@@ -35,19 +35,33 @@ import java.io.OutputStream;
 public class SimplePipelineCompressor implements PipelineCompressor{
     private final TxnOperationFactory txnOperationFactory;
     private final KryoPool kp;
+    private final boolean blockCompression;
 
     public SimplePipelineCompressor(KryoPool kp,TxnOperationFactory txnOperationFactory){
+        this(kp,txnOperationFactory,false);
+    }
+
+    /**
+     * @param blockCompression if true, BulkWrites bodies and streams are additionally compressed
+     *                         with {@link LZBlockCodec}.
+     */
+    public SimplePipelineCompressor(KryoPool kp,TxnOperationFactory txnOperationFactory,boolean blockCompression){
         this.txnOperationFactory = txnOperationFactory;
         this.kp = kp;
+        this.blockCompression = blockCompression;
     }
 
     @Override
     public InputStream compressedInput(InputStream input) throws IOException{
+        if(blockCompression)
+            return LZBlockCodec.decompressingStream(input);
         return input;
     }
 
     @Override
     public OutputStream compress(OutputStream output) throws IOException{
+        if(blockCompression)
+            return LZBlockCodec.compressingStream(output);
         return output;
     }
 
@@ -55,7 +69,7 @@ public class SimplePipelineCompressor implements PipelineCompressor{
     public byte[] compress(Object o) throws IOException{
         if(o instanceof BulkWrites){
             BulkWrites bw = (BulkWrites)o;
-            return PipelineEncoding.encode(txnOperationFactory,bw);
+            return PipelineEncoding.encode(txnOperationFactory,bw,blockCompression);
         }else {
             Output out = new Output(128,-1);
             Kryo kryo = kp.get();
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.client;
+
+import com.splicemachine.encoding.Encoding;
+import com.splicemachine.encoding.MultiFieldEncoder;
+import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.data.TxnOperationFactory;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.SimpleTxnOperationFactory;
+import com.splicemachine.si.impl.txn.ActiveWriteTxn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the wire size and encode/decode cost of {@link PipelineEncoding} on batches that look like the
+ * writes an index maintains: row keys made of a couple of index columns followed by the base row key,
+ * sorted, with a small value pointing back at the base row.
+ *
+ * Wire sizes are reported against the size of the raw KVPairs and against the previous encoding, which
+ * wrote a type byte, the full row key and the value for every row.
+ *
+ * Usage: {@code PipelineEncodingBenchmark [rows per BulkWrite] [BulkWrites per request] [iterations]}.
+ */
+public class PipelineEncodingBenchmark{
+
+    public static void main(String...args) throws Exception{
+        int rowsPerWrite=args.length>0?Integer.parseInt(args[0]):1000;
+        int writesPerRequest=args.length>1?Integer.parseInt(args[1]):4;
+        int iterations=args.length>2?Integer.parseInt(args[2]):2000;
+
+        TxnOperationFactory operationFactory=new SimpleTxnOperationFactory(null,null);
+        TxnView txn=new ActiveWriteTxn(1l,1l,Txn.ROOT_TRANSACTION,false,Txn.IsolationLevel.SNAPSHOT_ISOLATION);
+        BulkWrites bulkWrites=new BulkWrites(generateIndexWrites(rowsPerWrite,writesPerRequest,new Random(0l)),txn);
+        long rows=(long)rowsPerWrite*writesPerRequest;
+
+        long rawBytes=0;
+        long legacyBytes=0;
+        for(BulkWrite bw:bulkWrites.getBulkWrites()){
+            for(KVPair kvPair:bw.getMutations()){
+                int keyLength=kvPair.rowKeySlice().length();
+                int valueLength=kvPair.valueSlice().length();
+                rawBytes+=keyLength+valueLength;
+                legacyBytes+=1+Encoding.encodedLength(keyLength)+keyLength+Encoding.encodedLength(valueLength)+valueLength;
+            }
+        }
+        System.out.printf("rows=%d rawKVBytes=%d legacyEncodingBytes~%d%n",rows,rawBytes,legacyBytes);
+
+        for(boolean blockCompress:new boolean[]{false,true}){
+            byte[] encoded=PipelineEncoding.encode(operationFactory,bulkWrites,blockCompress);
+            //warm up
+            for(int i=0;i<iterations/10;i++){
+                consume(PipelineEncoding.decode(operationFactory,PipelineEncoding.encode(operationFactory,bulkWrites,blockCompress)));
+            }
+
+            long s=System.nanoTime();
+            for(int i=0;i<iterations;i++){
+                encoded=PipelineEncoding.encode(operationFactory,bulkWrites,blockCompress);
+            }
+            long encodeTime=System.nanoTime()-s;
+
+            long checksum=0;
+            s=System.nanoTime();
+            for(int i=0;i<iterations;i++){
+                checksum+=consume(PipelineEncoding.decode(operationFactory,encoded));
+            }
+            long decodeTime=System.nanoTime()-s;
+
+            System.out.printf("blockCompress=%b wireBytes=%d (%.1f%% of raw, %.1f%% of legacy) encode ns/row=%.1f decode ns/row=%.1f checksum=%d%n",
+                    blockCompress,encoded.length,100d*encoded.length/rawBytes,100d*encoded.length/legacyBytes,
+                    encodeTime/(double)(rows*iterations),decodeTime/(double)(rows*iterations),checksum);
+        }
+    }
+
+    /*
+     * Touches every row, so that the lazily decoded rows are actually decoded
+     */
+    private static long consume(BulkWrites bulkWrites){
+        long sum=0;
+        for(BulkWrite bw:bulkWrites.getBulkWrites()){
+            for(KVPair kvPair:bw.getMutations()){
+                sum+=kvPair.rowKeySlice().length()+kvPair.valueSlice().length()+kvPair.getType().asByte();
+            }
+        }
+        return sum;
+    }
+
+    /*
+     * Index rows on (customer id, status) over a base table keyed by an 8-byte row key. Each
+     * BulkWrite goes to a separate region of the index, and holds its rows in sorted order.
+     */
+    private static Collection<BulkWrite> generateIndexWrites(int rowsPerWrite,int numWrites,Random random){
+        String[] statuses={"CANCELLED","DELIVERED","OPEN","PENDING","SHIPPED"};
+        MultiFieldEncoder keyEncoder=MultiFieldEncoder.create(3);
+        List<BulkWrite> bws=new ArrayList<>(numWrites);
+        for(int w=0;w<numWrites;w++){
+            byte[][] keys=new byte[rowsPerWrite][];
+            int customerBase=w*1000000;
+            for(int i=0;i<rowsPerWrite;i++){
+                byte[] baseRowKey=new byte[8];
+                random.nextBytes(baseRowKey);
+                keyEncoder.reset();
+                keys[i]=keyEncoder.encodeNext(customerBase+random.nextInt(rowsPerWrite/4+1))
+                        .encodeNext(statuses[random.nextInt(statuses.length)])
+                        .encodeNextUnsorted(baseRowKey)
+                        .build();
+            }
+            Arrays.sort(keys,Bytes.BASE_COMPARATOR);
+            List<KVPair> kvPairs=new ArrayList<>(rowsPerWrite);
+            for(byte[] key:keys){
+                //the index value points back to the base row, which is the tail of the index key
+                byte[] value=new byte[11];
+                value[0]=(byte)0x80; //a single-column bit index
+                System.arraycopy(key,key.length-8,value,3,8);
+                kvPairs.add(new KVPair(key,value,KVPair.Type.INSERT));
+            }
+            bws.add(new BulkWrite(kvPairs,"index-region-"+w));
+        }
+        return bws;
+    }
+}
@@ -1,83 +1,198 @@
-//package com.splicemachine.pipeline.client;
-//
-//import com.splicemachine.kvpair.KVPair;
-//import com.splicemachine.primitives.Bytes;
-//import com.splicemachine.si.api.txn.TxnView;
-//import com.splicemachine.si.impl.txn.ActiveWriteTxn;
-//import org.junit.Assert;
-//import org.junit.Test;
-//
-//import java.util.ArrayList;
-//import java.util.Arrays;
-//import java.util.Collection;
-//import java.util.Iterator;
-//
-//TODO -sf- move this to hbase_pipeline
-//public class PipelineEncodingTest {
-//
-//    @Test
-//    public void testCanEncodeAndDecodeASingleBulkWrite() throws Exception {
-//        TxnView txnView = new ActiveWriteTxn(1l,1l);
-//
-//        Collection<BulkWrite> bws = generateBulkWrites(1);
-//        BulkWrites toEncode = new BulkWrites(bws,txnView);
-//
-//        byte[] bytes = PipelineEncoding.encode(toEncode);
-//        BulkWrites decoded = PipelineEncoding.decode(bytes);
-//        assertMatches("Incorrect BulkWrites",toEncode,decoded);
-//    }
-//
-//    @Test
-//    public void testCanEncodeAndDecodeMultipleBulkWrites() throws Exception {
-//        TxnView txnView = new ActiveWriteTxn(1l,1l);
-//
-//        Collection<BulkWrite> bws = generateBulkWrites(10);
-//        BulkWrites toEncode = new BulkWrites(bws,txnView);
-//
-//        byte[] bytes = PipelineEncoding.encode(toEncode);
-//        BulkWrites decoded = PipelineEncoding.decode(bytes);
-//        assertMatches("Incorrect BulkWrites",toEncode,decoded);
-//    }
-//
-//    private void assertMatches(String errorMsgPrefix, BulkWrites correct, BulkWrites actual) {
-//        Assert.assertEquals(errorMsgPrefix+": transaction ids don't match!",correct.getTxn().getTxnId(),actual.getTxn().getTxnId());
-//        Assert.assertEquals(errorMsgPrefix+": transaction write permission doesn't match!",correct.getTxn().allowsWrites(),actual.getTxn().allowsWrites());
-//        Collection<BulkWrite> correctBws = correct.getBulkWrites();
-//        Collection<BulkWrite> actualBws = actual.getBulkWrites();
-//        Assert.assertEquals(errorMsgPrefix+": bulk write size does not match!",correctBws.size(),actualBws.size());
-//        Iterator<BulkWrite> correctIter = correctBws.iterator();
-//        Iterator<BulkWrite> actualIter = actualBws.iterator();
-//        int pos =0;
-//        while(correctIter.hasNext()){
-//            BulkWrite cbw = correctIter.next();
-//            BulkWrite abw = actualIter.next();
-//            Assert.assertEquals(errorMsgPrefix+": Incorrect encodedStringName at pos "+ pos,cbw.getEncodedStringName(),abw.getEncodedStringName());
-//
-//            Collection<KVPair> cKvs = cbw.getMutations();
-//            Collection<KVPair> aKvs = abw.getMutations();
-//            Assert.assertEquals(errorMsgPrefix+": Incorrect kvPair size at pos "+ pos,cKvs.size(),aKvs.size());
-//            Iterator<KVPair> cKvIter = cKvs.iterator();
-//            Iterator<KVPair> aKvIter = aKvs.iterator();
-//            while(cKvIter.hasNext()){
-//                KVPair cKv = cKvIter.next();
-//                KVPair aKv = aKvIter.next();
-//                Assert.assertEquals(errorMsgPrefix+": KVPair row not correct",cKv.rowKeySlice(),aKv.rowKeySlice());
-//                Assert.assertEquals(errorMsgPrefix+": KVPair value not correct",cKv.valueSlice(),aKv.valueSlice());
-//                Assert.assertEquals(errorMsgPrefix+": KVPair type not correct",cKv.getType(),aKv.getType());
-//            }
-//        }
-//    }
-//
-//    private Collection<BulkWrite> generateBulkWrites(int size) {
-//        Collection<BulkWrite> bws = new ArrayList<>(size);
-//        for(int i=0;i<size;i++){
-//            Collection<KVPair> kvPairs = new ArrayList<>(Arrays.asList(
-//                new KVPair(Bytes.toBytes(i), Bytes.toBytes(i + 2),KVPair.Type.INSERT),
-//                new KVPair(Bytes.toBytes(i+1), Bytes.toBytes(Integer.toString(2*i)),KVPair.Type.DELETE),
-//                    new KVPair(Bytes.toBytes(i+2), Bytes.toBytes(i/.2f),KVPair.Type.UPDATE)
-//            ));
-//            bws.add(new BulkWrite(kvPairs,Integer.toString(i)));
-//        }
-//        return bws;
-//    }
-//}
\ No newline at end of file
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.client;
+
+import com.splicemachine.encoding.ExpandedDecoder;
+import com.splicemachine.encoding.ExpandingEncoder;
+import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.data.TxnOperationFactory;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.SimpleTxnOperationFactory;
+import com.splicemachine.si.impl.txn.ActiveWriteTxn;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+
+@Category(ArchitectureIndependent.class)
+public class PipelineEncodingTest {
+    private static final TxnOperationFactory operationFactory = new SimpleTxnOperationFactory(null,null);
+    private static final TxnView txn = new ActiveWriteTxn(1l,1l,Txn.ROOT_TRANSACTION,false,Txn.IsolationLevel.SNAPSHOT_ISOLATION);
+
+    @Test
+    public void testCanEncodeAndDecodeASingleBulkWrite() throws Exception {
+        BulkWrites toEncode = new BulkWrites(generateBulkWrites(1),txn);
+
+        assertMatches("Incorrect BulkWrites",toEncode,roundTrip(toEncode,false));
+        assertMatches("Incorrect compressed BulkWrites",toEncode,roundTrip(toEncode,true));
+    }
+
+    @Test
+    public void testCanEncodeAndDecodeMultipleBulkWrites() throws Exception {
+        BulkWrites toEncode = new BulkWrites(generateBulkWrites(10),txn);
+
+        assertMatches("Incorrect BulkWrites",toEncode,roundTrip(toEncode,false));
+        assertMatches("Incorrect compressed BulkWrites",toEncode,roundTrip(toEncode,true));
+    }
+
+    @Test
+    public void testCanEncodeAndDecodeEmptyBulkWrite() throws Exception {
+        Collection<BulkWrite> bws = Collections.singletonList(new BulkWrite(new ArrayList<KVPair>(),"empty"));
+        BulkWrites toEncode = new BulkWrites(bws,txn);
+
+        assertMatches("Incorrect BulkWrites",toEncode,roundTrip(toEncode,true));
+    }
+
+    @Test
+    public void testSortedIndexWritesAreSmallerThanTheirData() throws Exception {
+        Collection<KVPair> kvPairs = new ArrayList<>();
+        int dataSize = 0;
+        for(int i=0;i<1000;i++){
+            byte[] rowKey = Bytes.toBytes("index-value-"+(i/10)+"-base-row-"+String.format("%08d",i));
+            byte[] value = new byte[]{0x00,0x00,0x00,0x01,0x02};
+            kvPairs.add(new KVPair(rowKey,value,KVPair.Type.INSERT));
+            dataSize+=rowKey.length+value.length;
+        }
+        BulkWrites toEncode = new BulkWrites(Collections.singletonList(new BulkWrite(kvPairs,"index")),txn);
+
+        byte[] plain = PipelineEncoding.encode(operationFactory,toEncode,false);
+        byte[] compressed = PipelineEncoding.encode(operationFactory,toEncode,true);
+        Assert.assertTrue("Prefix coding did not shrink the row keys!",plain.length<dataSize/2);
+        Assert.assertTrue("Block compression did not shrink the body!",compressed.length<plain.length);
+        assertMatches("Incorrect BulkWrites",toEncode,PipelineEncoding.decode(operationFactory,plain));
+        assertMatches("Incorrect compressed BulkWrites",toEncode,PipelineEncoding.decode(operationFactory,compressed));
+    }
+
+    @Test
+    public void testUnsortedMixedTypeWritesRoundTrip() throws Exception {
+        Random random = new Random(0l);
+        KVPair.Type[] types = KVPair.Type.values();
+        Collection<KVPair> kvPairs = new ArrayList<>();
+        for(int i=0;i<500;i++){
+            byte[] rowKey = new byte[random.nextInt(20)];
+            random.nextBytes(rowKey);
+            byte[] value = new byte[random.nextInt(40)];
+            random.nextBytes(value);
+            //keep some runs of the same type, but break them up regularly
+            kvPairs.add(new KVPair(rowKey,value,types[(i/(1+random.nextInt(5)))%types.length]));
+        }
+        BulkWrites toEncode = new BulkWrites(Collections.singletonList(new BulkWrite(kvPairs,"unsorted")),txn);
+
+        assertMatches("Incorrect BulkWrites",toEncode,roundTrip(toEncode,false));
+        assertMatches("Incorrect compressed BulkWrites",toEncode,roundTrip(toEncode,true));
+    }
+
+    @Test
+    public void testCanDecodeTheOriginalEncoding() throws Exception {
+        BulkWrites toEncode = new BulkWrites(generateBulkWrites(10),txn);
+
+        assertMatches("Incorrect BulkWrites",toEncode,PipelineEncoding.decode(operationFactory,encodeOriginal(toEncode)));
+    }
+
+    @Test
+    public void testOriginalDecoderCannotMisreadTheCurrentEncoding() throws Exception {
+        BulkWrites toEncode = new BulkWrites(generateBulkWrites(1),txn);
+        byte[] bytes = PipelineEncoding.encode(operationFactory,toEncode,false);
+
+        //the original decoder started by reading the length of the transaction
+        int txnLength = new ExpandedDecoder(bytes).decodeInt();
+        Assert.assertTrue("Format marker decodes as a valid transaction length: "+txnLength,txnLength<0);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static byte[] encodeOriginal(BulkWrites bulkWrites){
+        byte[] txnBytes = operationFactory.encode(bulkWrites.getTxn());
+        ExpandingEncoder buffer = new ExpandingEncoder(bulkWrites.getBufferHeapSize()+txnBytes.length);
+        buffer.rawEncode(txnBytes);
+        Collection<BulkWrite> bws = bulkWrites.getBulkWrites();
+        buffer.encode(bws.size());
+        for(BulkWrite bw:bws){
+            buffer.encode(bw.getEncodedStringName());
+        }
+        for(BulkWrite bw:bws){
+            buffer.encode(bw.getSkipIndexWrite());
+        }
+        for(BulkWrite bw:bws){
+            Collection<KVPair> mutations = bw.getMutations();
+            buffer.encode(mutations.size());
+            for(KVPair kvPair:mutations){
+                buffer.rawEncode(kvPair.getType().asByte());
+                buffer.rawEncode(kvPair.rowKeySlice());
+                buffer.rawEncode(kvPair.valueSlice());
+            }
+        }
+        return buffer.getBuffer();
+    }
+
+    private BulkWrites roundTrip(BulkWrites toEncode,boolean blockCompress) throws Exception{
+        byte[] bytes = PipelineEncoding.encode(operationFactory,toEncode,blockCompress);
+        return PipelineEncoding.decode(operationFactory,bytes);
+    }
+
+    private void assertMatches(String errorMsgPrefix, BulkWrites correct, BulkWrites actual) {
+        Assert.assertEquals(errorMsgPrefix+": transaction ids don't match!",correct.getTxn().getTxnId(),actual.getTxn().getTxnId());
+        Assert.assertEquals(errorMsgPrefix+": transaction write permission doesn't match!",correct.getTxn().allowsWrites(),actual.getTxn().allowsWrites());
+        Collection<BulkWrite> correctBws = correct.getBulkWrites();
+        Collection<BulkWrite> actualBws = actual.getBulkWrites();
+        Assert.assertEquals(errorMsgPrefix+": bulk write size does not match!",correctBws.size(),actualBws.size());
+        Iterator<BulkWrite> correctIter = correctBws.iterator();
+        Iterator<BulkWrite> actualIter = actualBws.iterator();
+        int pos =0;
+        while(correctIter.hasNext()){
+            BulkWrite cbw = correctIter.next();
+            BulkWrite abw = actualIter.next();
+            Assert.assertEquals(errorMsgPrefix+": Incorrect encodedStringName at pos "+ pos,cbw.getEncodedStringName(),abw.getEncodedStringName());
+            Assert.assertEquals(errorMsgPrefix+": Incorrect skipIndexWrite at pos "+ pos,cbw.getSkipIndexWrite(),abw.getSkipIndexWrite());
+
+            Collection<KVPair> cKvs = cbw.getMutations();
+            Collection<KVPair> aKvs = abw.getMutations();
+            Assert.assertEquals(errorMsgPrefix+": Incorrect kvPair size at pos "+ pos,cKvs.size(),aKvs.size());
+            Iterator<KVPair> cKvIter = cKvs.iterator();
+            Iterator<KVPair> aKvIter = aKvs.iterator();
+            while(cKvIter.hasNext()){
+                KVPair cKv = cKvIter.next();
+                KVPair aKv = aKvIter.next();
+                Assert.assertArrayEquals(errorMsgPrefix+": KVPair row not correct",cKv.rowKeySlice().getByteCopy(),aKv.rowKeySlice().getByteCopy());
+                Assert.assertArrayEquals(errorMsgPrefix+": KVPair value not correct",cKv.valueSlice().getByteCopy(),aKv.valueSlice().getByteCopy());
+                Assert.assertEquals(errorMsgPrefix+": KVPair type not correct",cKv.getType(),aKv.getType());
+            }
+            pos++;
+        }
+    }
+
+    private Collection<BulkWrite> generateBulkWrites(int size) {
+        Collection<BulkWrite> bws = new ArrayList<>(size);
+        for(int i=0;i<size;i++){
+            Collection<KVPair> kvPairs = new ArrayList<>(Arrays.asList(
+                    new KVPair(Bytes.toBytes(i), Bytes.toBytes(i + 2),KVPair.Type.INSERT),
+                    new KVPair(Bytes.toBytes(i+1), Bytes.toBytes(Integer.toString(2*i)),KVPair.Type.DELETE),
+                    new KVPair(Bytes.toBytes(i+2), Bytes.toBytes(i/.2f),KVPair.Type.UPDATE)
+            ));
+            bws.add(new BulkWrite(kvPairs,Integer.toString(i),(byte)(i%2)));
+        }
+        return bws;
+    }
+}
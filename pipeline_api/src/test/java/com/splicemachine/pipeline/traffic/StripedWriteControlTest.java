@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.traffic;
+
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(ArchitectureIndependent.class)
+public class StripedWriteControlTest{
+
+    @Test
+    public void performAndFinishWrites(){
+        SpliceWriteControl writeControl=new StripedWriteControl(3,3,200,200);
+
+        assertEquals(SpliceWriteControl.Status.INDEPENDENT,writeControl.performIndependentWrite(25));
+        assertEquals(SpliceWriteControl.Status.DEPENDENT,writeControl.performDependentWrite(10));
+        assertEquals("{ dependentWriteThreads=1, independentWriteThreads=1, dependentWriteCount=10, independentWriteCount=25 }",writeControl.getWriteStatus().toString());
+
+        writeControl.finishIndependentWrite(25);
+        writeControl.finishDependentWrite(10);
+        assertEquals(new WriteStatus(0,0,0,0),writeControl.getWriteStatus());
+    }
+
+    @Test
+    public void largeWriteAdmittedWhenIdle(){
+        SpliceWriteControl writeControl=new StripedWriteControl(3,3,100,100,1d);
+        assertEquals(SpliceWriteControl.Status.INDEPENDENT,writeControl.performIndependentWrite(500));
+        assertEquals(SpliceWriteControl.Status.REJECTED,writeControl.performIndependentWrite(1));
+    }
+
+    @Test
+    public void independentWritesBorrowUpToWeightedShare(){
+        //independent writes must leave 3/4 of the dependent permits free
+        SpliceWriteControl writeControl=new StripedWriteControl(100,100,400,100,0.75d);
+        assertEquals(SpliceWriteControl.Status.INDEPENDENT,writeControl.performIndependentWrite(101));
+        assertEquals(SpliceWriteControl.Status.DEPENDENT,writeControl.performIndependentWrite(101));
+        assertEquals(SpliceWriteControl.Status.REJECTED,writeControl.performIndependentWrite(10));
+
+        //but dependent writes can still use the rest of their own
+        assertEquals(SpliceWriteControl.Status.DEPENDENT,writeControl.performDependentWrite(200));
+    }
+
+    @Test
+    public void dependentWritesBorrowUpToWeightedShare(){
+        SpliceWriteControl writeControl=new StripedWriteControl(100,100,100,400,0.5d);
+        assertEquals(SpliceWriteControl.Status.DEPENDENT,writeControl.performDependentWrite(101));
+        assertEquals(SpliceWriteControl.Status.INDEPENDENT,writeControl.performDependentWrite(201));
+        assertEquals(SpliceWriteControl.Status.REJECTED,writeControl.performDependentWrite(1));
+        writeControl.finishIndependentWrite(201);
+        assertEquals(SpliceWriteControl.Status.INDEPENDENT,writeControl.performDependentWrite(1));
+    }
+
+    @Test
+    public void fullWeightNeverLendsDependentPermits(){
+        SpliceWriteControl writeControl=new StripedWriteControl(100,100,100,100,1d);
+        assertEquals(SpliceWriteControl.Status.INDEPENDENT,writeControl.performIndependentWrite(101));
+        assertEquals(SpliceWriteControl.Status.REJECTED,writeControl.performIndependentWrite(1));
+        assertEquals(0,writeControl.getWriteStatus().getDependentWriteCount());
+    }
+
+    @Test
+    public void countsBalanceUnderConcurrentWrites() throws Exception{
+        final SpliceWriteControl writeControl=new StripedWriteControl(8,8,1000,1000);
+        ExecutorService executor=Executors.newFixedThreadPool(8);
+        try{
+            List<Future<Integer>> futures=new ArrayList<>();
+            for(int t=0;t<8;t++){
+                final boolean dependent=t%2==0;
+                futures.add(executor.submit(new Callable<Integer>(){
+                    @Override
+                    public Integer call() throws Exception{
+                        int admitted=0;
+                        for(int i=0;i<10000;i++){
+                            SpliceWriteControl.Status status=dependent?writeControl.performDependentWrite(10):writeControl.performIndependentWrite(10);
+                            switch(status){
+                                case DEPENDENT:
+                                    admitted++;
+                                    writeControl.finishDependentWrite(10);
+                                    break;
+                                case INDEPENDENT:
+                                    admitted++;
+                                    writeControl.finishIndependentWrite(10);
+                                    break;
+                            }
+                        }
+                        return admitted;
+                    }
+                }));
+            }
+            for(Future<Integer> future:futures){
+                assertTrue(future.get()>0);
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+        assertEquals(new WriteStatus(0,0,0,0),writeControl.getWriteStatus());
+    }
+}
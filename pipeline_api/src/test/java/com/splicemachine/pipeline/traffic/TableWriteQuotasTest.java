@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.traffic;
+
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Category(ArchitectureIndependent.class)
+public class TableWriteQuotasTest{
+
+    @Test
+    public void noQuotaAdmitsEverything(){
+        TableWriteQuotas quotas=new TableWriteQuotas(new StripedWriteControl(10,10,100,100),1d);
+        for(int i=0;i<10;i++){
+            assertTrue(quotas.acquire("hot",1000));
+        }
+        assertEquals(10000l,(long)quotas.inFlightWrites().get("hot"));
+        assertEquals(0d,quotas.rejectionRates().get("hot"),0d);
+    }
+
+    @Test
+    public void hotTableCannotStarveOthers(){
+        //each table may hold a quarter of the 200 permits
+        TableWriteQuotas quotas=new TableWriteQuotas(new StripedWriteControl(10,10,100,100),0.25d);
+        assertTrue(quotas.acquire("hot",30));
+        assertTrue(quotas.acquire("hot",20));
+        assertFalse(quotas.acquire("hot",1));
+        assertTrue(quotas.acquire("cold",50));
+
+        assertEquals(1l,(long)quotas.rejectedWrites().get("hot"));
+        assertEquals(0l,(long)quotas.rejectedWrites().get("cold"));
+        assertEquals(1d/51,quotas.rejectionRates().get("hot"),1e-9);
+
+        quotas.release("hot",30);
+        assertTrue(quotas.acquire("hot",30));
+    }
+
+    @Test
+    public void idleTableMayAlwaysWrite(){
+        TableWriteQuotas quotas=new TableWriteQuotas(new StripedWriteControl(10,10,100,100),0.1d);
+        assertTrue(quotas.acquire("t",500));
+        assertFalse(quotas.acquire("t",1));
+        quotas.release("t",500);
+        assertTrue(quotas.acquire("t",1));
+    }
+
+    @Test
+    public void rejectionByControlIsCounted(){
+        TableWriteQuotas quotas=new TableWriteQuotas(new StripedWriteControl(10,10,100,100),1d);
+        assertTrue(quotas.acquire("t",10));
+        quotas.reject("t",10);
+        assertTrue(quotas.acquire("t",10));
+        quotas.release("t",10);
+
+        assertEquals(0l,(long)quotas.inFlightWrites().get("t"));
+        assertEquals(10l,(long)quotas.rejectedWrites().get("t"));
+        assertEquals(0.5d,quotas.rejectionRates().get("t"),0d);
+    }
+}
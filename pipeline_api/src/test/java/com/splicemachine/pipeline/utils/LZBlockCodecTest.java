@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.utils;
+
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+@Category(ArchitectureIndependent.class)
+public class LZBlockCodecTest{
+
+    @Test
+    public void testRoundTripsSmallInputs() throws Exception{
+        Random random=new Random(0l);
+        for(int length=0;length<40;length++){
+            byte[] data=new byte[length];
+            random.nextBytes(data);
+            assertRoundTrips(data);
+        }
+    }
+
+    @Test
+    public void testRoundTripsRandomData() throws Exception{
+        byte[] data=new byte[100000];
+        new Random(1l).nextBytes(data);
+        assertRoundTrips(data);
+    }
+
+    @Test
+    public void testCompressesRepetitiveData() throws Exception{
+        byte[] data=new byte[100000];
+        byte[] pattern="splice-machine-row-".getBytes();
+        for(int i=0;i<data.length;i++){
+            data[i]=pattern[i%pattern.length];
+        }
+        int compressedLength=assertRoundTrips(data);
+        Assert.assertTrue("Did not compress repetitive data: "+compressedLength,compressedLength<data.length/20);
+    }
+
+    @Test
+    public void testCompressesLongRunsOfASingleByte() throws Exception{
+        byte[] data=new byte[70000];
+        data[0]=1;
+        int compressedLength=assertRoundTrips(data);
+        Assert.assertTrue("Did not compress a run of zeros: "+compressedLength,compressedLength<1000);
+    }
+
+    @Test
+    public void testRoundTripsAtAnOffset() throws Exception{
+        byte[] data=new byte[1000];
+        for(int i=0;i<data.length;i++){
+            data[i]=(byte)(i%7);
+        }
+        byte[] compressed=new byte[10+LZBlockCodec.maxCompressedLength(900)];
+        int length=LZBlockCodec.compress(data,50,900,compressed,10);
+        byte[] decompressed=new byte[920];
+        LZBlockCodec.decompress(compressed,10,length,decompressed,20,900);
+        Assert.assertArrayEquals(Arrays.copyOfRange(data,50,950),Arrays.copyOfRange(decompressed,20,920));
+    }
+
+    @Test(expected=IOException.class)
+    public void testDetectsTruncatedBlock() throws Exception{
+        byte[] data=new byte[1000];
+        for(int i=0;i<data.length;i++){
+            data[i]=(byte)(i%13);
+        }
+        byte[] compressed=new byte[LZBlockCodec.maxCompressedLength(data.length)];
+        int length=LZBlockCodec.compress(data,0,data.length,compressed,0);
+        LZBlockCodec.decompress(compressed,0,length-1,new byte[data.length],0,data.length);
+    }
+
+    @Test
+    public void testStreamsRoundTripAcrossBlocks() throws Exception{
+        Random random=new Random(2l);
+        byte[] data=new byte[3*LZBlockCodec.STREAM_BLOCK_SIZE+123];
+        for(int i=0;i<data.length;i++){
+            data[i]=(byte)(random.nextInt(4));
+        }
+        ByteArrayOutputStream baos=new ByteArrayOutputStream();
+        try(OutputStream out=LZBlockCodec.compressingStream(baos)){
+            out.write(data,0,1000);
+            out.write(data[1000]);
+            out.write(data,1001,data.length-1001);
+        }
+        Assert.assertTrue("Stream was not compressed!",baos.size()<data.length);
+
+        byte[] read=new byte[data.length];
+        try(InputStream in=LZBlockCodec.decompressingStream(new ByteArrayInputStream(baos.toByteArray()))){
+            int pos=0;
+            int n;
+            while((n=in.read(read,pos,read.length-pos))>0){
+                pos+=n;
+            }
+            Assert.assertEquals("Incorrect number of bytes read",data.length,pos);
+            Assert.assertEquals("Stream not exhausted",-1,in.read());
+        }
+        Assert.assertArrayEquals(data,read);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private int assertRoundTrips(byte[] data) throws IOException{
+        byte[] compressed=new byte[LZBlockCodec.maxCompressedLength(data.length)];
+        int length=LZBlockCodec.compress(data,0,data.length,compressed,0);
+        Assert.assertTrue("Compressed data exceeds the maximum length",length<=compressed.length);
+        byte[] decompressed=new byte[data.length];
+        LZBlockCodec.decompress(compressed,0,length,decompressed,0,data.length);
+        Assert.assertArrayEquals("Incorrect round trip of "+data.length+" bytes",data,decompressed);
+        return length;
+    }
+}
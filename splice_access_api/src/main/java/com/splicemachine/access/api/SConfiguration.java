@@ -259,4 +259,64 @@ public interface SConfiguration {
     int getReservedSlotsTimeout();
 
     int getOlapServerTickLimit();
+
+    boolean isBroadcastJoinOffHeap();
+
+    long getBroadcastJoinCacheMemory();
+
+    String getBroadcastJoinSpillDirectory();
+
+    int getBroadcastJoinBloomFilterMaxKeys();
+
+    int getTimestampClientMaxBatchSize();
+
+    int getTimestampClientMaxInFlightRequests();
+
+    long getSharedTxnCacheMemory();
+
+    long getSharedTxnCacheActiveExpiration();
+
+    long getControlHashMemory();
+
+    String getControlSpillDirectory();
+
+    long getControlSortMemory();
+
+    long getIndexLookupTargetLatency();
+
+    boolean isPipelineBlockCompression();
+
+    boolean isIncrementalStatisticsEnabled();
+
+    long getIncrementalStatisticsPersistInterval();
+
+    double getStalenessThreshold();
+
+    boolean isCollectStatisticsOnMajorCompaction();
+
+    double getStatisticsSampleFraction();
+
+    double getMaxTableWriteShare();
+
+    double getDependentWriteWeight();
+
+    int getForeignKeyParentCacheSize();
+
+    int getOlapServerMaxQueuedJobs();
+
+    int getOlapServerMaxConcurrentStatistics();
+
+    int getOlapServerMaxConcurrentCompactions();
+
+    long getOlapServerJobAgingInterval();
+
+    boolean isSparkResultStreamingUnordered();
+
+    int getImportControlParallelism();
+
+    long getImportControlSplitSize();
+
+    double getBulkImportSampleFraction();
+
+    long getBulkImportRegionSize();
 }
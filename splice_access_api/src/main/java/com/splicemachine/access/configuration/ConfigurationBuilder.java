@@ -27,12 +27,16 @@ import com.splicemachine.access.api.SConfiguration;
 public class ConfigurationBuilder {
     // SIConfigurations
     public int activeTransactionCacheSize;
+    public long sharedTxnCacheMemory;
+    public long sharedTxnCacheActiveExpiration;
     public int completedTxnCacheSize;
     public int completedTxnConcurrency;
     public int readResolverQueueSize;
     public int readResolverThreads;
     public int timestampClientWaitTime;
     public int timestampServerBindPort;
+    public int timestampClientMaxBatchSize;
+    public int timestampClientMaxInFlight;
     public int transactionKeepAliveThreads;
     public int transactionLockStripes;
     public long transactionKeepAliveInterval;
@@ -63,6 +67,11 @@ public class ConfigurationBuilder {
     public double optimizerExtraQualifierMultiplier;
     public int cardinalityPrecision;
     public int fallbackRowWidth;
+    public boolean incrementalStatisticsEnabled;
+    public long incrementalStatisticsPersistInterval;
+    public double stalenessThreshold;
+    public boolean collectStatisticsOnMajorCompaction;
+    public double statisticsSampleFraction;
     public int indexFetchSampleSize;
     public int topkSize;
     public long fallbackLocalLatency;
@@ -98,8 +107,13 @@ public class ConfigurationBuilder {
     public boolean upgradeForced;
     public int batchOnceBatchSize;
     public int importMaxQuotedColumnLines;
+    public int importControlParallelism;
+    public long importControlSplitSize;
+    public double bulkImportSampleFraction;
+    public long bulkImportRegionSize;
     public int indexBatchSize;
     public int indexLookupBlocks;
+    public long indexLookupTargetLatency;
     public int kryoPoolSize;
     public int networkBindPort;
     public int olapClientWaitTime;
@@ -107,6 +121,10 @@ public class ConfigurationBuilder {
     public int olapServerBindPort;
     public int olapServerThreads;
     public int olapServerTickLimit;
+    public int olapServerMaxConcurrentCompactions;
+    public int olapServerMaxConcurrentStatistics;
+    public int olapServerMaxQueuedJobs;
+    public long olapServerJobAgingInterval;
     public int partitionserverJmxPort;
     public int partitionserverPort;
     public long broadcastRegionMbThreshold;
@@ -117,16 +135,27 @@ public class ConfigurationBuilder {
     public String upgradeForcedFrom;
     public String storageFactoryHome;
     public int nestedLoopJoinBatchSize;
+    public boolean broadcastJoinOffHeap;
+    public long broadcastJoinCacheMemory;
+    public String broadcastJoinSpillDirectory;
+    public int broadcastJoinBloomFilterMaxKeys;
+    public long controlHashMemory;
+    public String controlSpillDirectory;
+    public long controlSortMemory;
 
     // PipelineConfiguration
     public int coreWriterThreads;
     public int ipcThreads;
     public int maxBufferEntries;
     public int maxDependentWrites;
+    public double maxTableWriteShare;
+    public double dependentWriteWeight;
+    public int foreignKeyParentCacheSize;
     public int maxIndependentWrites;
     public int maxRetries;
     public int maxWriterThreads;
     public int pipelineKryoPoolSize;
+    public boolean pipelineBlockCompression;
     public int writeMaxFlushesPerRegion;
     public long clientPause;
     public long maxBufferHeapSize;
@@ -135,6 +164,7 @@ public class ConfigurationBuilder {
     public String sparkIoCompressionCodec;
     public int sparkResultStreamingBatchSize;
     public int sparkResultStreamingBatches;
+    public boolean sparkResultStreamingUnordered;
     public int compactionReservedSlots;
     public int reservedSlotsTimeout;
     public int olapCompactionMaximumWait;
@@ -157,6 +157,60 @@ public class PipelineConfiguration implements ConfigurationDefault {
     public static final String PIPELINE_KRYO_POOL_SIZE= "splice.writer.kryoPoolSize";
     private static final int DEFAULT_PIPELINE_KRYO_POOL_SIZE=1024;
 
+    /**
+     * Whether the body of a BulkWrites request should additionally be compressed with a fast LZ-style
+     * block codec before it is sent over the wire. Row keys are always prefix-coded and mutation types
+     * run-length encoded; this adds a general purpose pass over the whole body, which pays off for
+     * index writes and other batches with repetitive values.
+     *
+     * Defaults to true
+     */
+    public static final String PIPELINE_BLOCK_COMPRESSION = "splice.client.write.blockCompression";
+    private static final boolean DEFAULT_PIPELINE_BLOCK_COMPRESSION = true;
+
+    /**
+     * The largest fraction of a region server's write permits (the sum of the dependent and
+     * independent write counts) which the writes of a single table may hold at once. Writes to a table
+     * which is over its share are rejected as too busy, so that one hot table cannot starve writes to
+     * every other table on the server. Setting this to 1 disables the per-table quota.
+     *
+     * Defaults to 1
+     */
+    public static final String MAX_TABLE_WRITE_SHARE = "splice.client.write.maxTableShare";
+    private static final double DEFAULT_MAX_TABLE_WRITE_SHARE = 1.0d;
+
+    /**
+     * How write permits are shared between dependent (index maintaining) and independent writes, as the
+     * weight of dependent writes between 0 and 1. When one kind of write has used all of its own permits, it
+     * may borrow idle permits from the other kind, but only while the other kind keeps its weighted share of
+     * its own permits free: independent writes leave (weight) of the dependent permits alone, and dependent
+     * writes leave (1-weight) of the independent permits alone. A weight of 1 reserves every dependent permit
+     * for dependent writes; a weight of 0 does the same for independent writes.
+     *
+     * Defaults to 0.5
+     */
+    public static final String DEPENDENT_WRITE_WEIGHT = "splice.client.write.dependentWeight";
+    private static final double DEFAULT_DEPENDENT_WRITE_WEIGHT = 0.5d;
+
+    /**
+     * The number of parent keys per parent table which each server remembers as having passed a recent
+     * foreign key check. A child row whose transaction has already confirmed its parent key does not need
+     * to read the parent row again. Setting this to 0 disables the cache.
+     *
+     * Defaults to 100000
+     */
+    public static final String FOREIGN_KEY_PARENT_CACHE_SIZE = "splice.fk.parentKeyCacheSize";
+    private static final int DEFAULT_FOREIGN_KEY_PARENT_CACHE_SIZE = 100000;
+
+    /**
+     * Whether the results of a Spark query which has no ORDER BY, LIMIT or OFFSET are streamed to the client
+     * in whichever order its partitions produce them, rather than one partition after another.
+     *
+     * Defaults to true
+     */
+    public static final String SPARK_RESULT_STREAMING_UNORDERED = "spark.result.streaming.unordered";
+    private static final boolean DEFAULT_SPARK_RESULT_STREAMING_UNORDERED = true;
+
     @Override
     public void setDefaults(ConfigurationBuilder builder, ConfigurationSource configurationSource) {
         builder.ipcThreads = configurationSource.getInt(IPC_THREADS, DEFAULT_IPC_THREADS);
@@ -177,8 +231,13 @@ public class PipelineConfiguration implements ConfigurationDefault {
         builder.sparkIoCompressionCodec = configurationSource.getString(SPARK_IO_COMPRESSION_CODEC, DEFAULT_SPARK_IO_COMPRESSION_CODEC);
         builder.sparkResultStreamingBatches = configurationSource.getInt(SPARK_RESULT_STREAMING_BATCHES, DEFAULT_SPARK_RESULT_STREAMING_BATCHES);
         builder.sparkResultStreamingBatchSize = configurationSource.getInt(SPARK_RESULT_STREAMING_BATCH_SIZE, DEFAULT_SPARK_RESULT_STREAMING_BATCH_SIZE);
+        builder.sparkResultStreamingUnordered = configurationSource.getBoolean(SPARK_RESULT_STREAMING_UNORDERED, DEFAULT_SPARK_RESULT_STREAMING_UNORDERED);
         builder.compactionReservedSlots = configurationSource.getInt(SPARK_COMPACTION_RESERVED_SLOTS, DEFAULT_SPARK_COMPACTION_RESERVED_SLOTS);
         builder.olapCompactionMaximumWait = configurationSource.getInt(SPARK_COMPACTION_MAXIMUM_WAIT, DEFAULT_SPARK_COMPACTION_MAXIMUM_WAIT);
         builder.reservedSlotsTimeout = configurationSource.getInt(SPARK_RESERVED_SLOTS_TIMEOUT, DEFAULT_SPARK_RESERVED_SLOTS_TIMEOUT);
+        builder.pipelineBlockCompression = configurationSource.getBoolean(PIPELINE_BLOCK_COMPRESSION, DEFAULT_PIPELINE_BLOCK_COMPRESSION);
+        builder.maxTableWriteShare = configurationSource.getDouble(MAX_TABLE_WRITE_SHARE, DEFAULT_MAX_TABLE_WRITE_SHARE);
+        builder.dependentWriteWeight = configurationSource.getDouble(DEPENDENT_WRITE_WEIGHT, DEFAULT_DEPENDENT_WRITE_WEIGHT);
+        builder.foreignKeyParentCacheSize = configurationSource.getInt(FOREIGN_KEY_PARENT_CACHE_SIZE, DEFAULT_FOREIGN_KEY_PARENT_CACHE_SIZE);
     }
 }
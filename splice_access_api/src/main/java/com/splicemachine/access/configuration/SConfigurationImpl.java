@@ -84,10 +84,14 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  int ipcThreads;
     private final  int maxBufferEntries;
     private final  int maxDependentWrites;
+    private final double maxTableWriteShare;
+    private final double dependentWriteWeight;
+    private final int foreignKeyParentCacheSize;
     private final  int maxIndependentWrites;
     private final  int maxRetries;
     private final  int maxWriterThreads;
     private final  int pipelineKryoPoolSize;
+    private final boolean pipelineBlockCompression;
     private final  int writeMaxFlushesPerRegion;
     private final  long clientPause;
     private final  long maxBufferHeapSize;
@@ -95,6 +99,7 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  long threadKeepaliveTime;
     private final  String sparkIoCompressionCodec;
     private final int sparkResultStreamingBatches;
+    private final boolean sparkResultStreamingUnordered;
     private final int sparkResultStreamingBatchSize;
     private final int compactionReservedSlots;
     private final int olapCompactionMaximumWait;
@@ -102,6 +107,8 @@ public final class SConfigurationImpl implements SConfiguration {
 
     // SIConfigurations
     private final  int activeTransactionCacheSize;
+    private final long sharedTxnCacheMemory;
+    private final long sharedTxnCacheActiveExpiration;
     private final  int completedTxnCacheSize;
     private final  int completedTxnConcurrency;
     private final int olapClientWaitTime;
@@ -109,10 +116,16 @@ public final class SConfigurationImpl implements SConfiguration {
     private final int olapServerBindPort;
     private final int olapServerThreads;
     private final int olapServerTickLimit;
+    private final int olapServerMaxConcurrentCompactions;
+    private final int olapServerMaxConcurrentStatistics;
+    private final int olapServerMaxQueuedJobs;
+    private final long olapServerJobAgingInterval;
     private final  int readResolverQueueSize;
     private final  int readResolverThreads;
     private final  int timestampClientWaitTime;
     private final  int timestampServerBindPort;
+    private final int timestampClientMaxBatchSize;
+    private final int timestampClientMaxInFlight;
     private final  int transactionKeepAliveThreads;
     private final  int transactionLockStripes;
     private final  long transactionKeepAliveInterval;
@@ -127,8 +140,13 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  boolean upgradeForced;
     private final  int batchOnceBatchSize;
     private final  int importMaxQuotedColumnLines;
+    private final int importControlParallelism;
+    private final long importControlSplitSize;
+    private final double bulkImportSampleFraction;
+    private final long bulkImportRegionSize;
     private final  int indexBatchSize;
     private final  int indexLookupBlocks;
+    private final long indexLookupTargetLatency;
     private final  int kryoPoolSize;
     private final  int networkBindPort;
     private final  int partitionserverJmxPort;
@@ -141,12 +159,24 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  String upgradeForcedFrom;
     private final String storageFactoryHome;
     private final int nestedLoopJoinBatchSize;
+    private final boolean broadcastJoinOffHeap;
+    private final long broadcastJoinCacheMemory;
+    private final String broadcastJoinSpillDirectory;
+    private final int broadcastJoinBloomFilterMaxKeys;
+    private final long controlHashMemory;
+    private final String controlSpillDirectory;
+    private final long controlSortMemory;
 
     // StatsConfiguration
     private final  double fallbackNullFraction;
     private final  double optimizerExtraQualifierMultiplier;
     private final  int cardinalityPrecision;
     private final  int fallbackRowWidth;
+    private final boolean incrementalStatisticsEnabled;
+    private final long incrementalStatisticsPersistInterval;
+    private final double stalenessThreshold;
+    private final boolean collectStatisticsOnMajorCompaction;
+    private final double statisticsSampleFraction;
     private final  int indexFetchSampleSize;
     private final  int topkSize;
     private final  long fallbackLocalLatency;
@@ -583,12 +613,16 @@ public final class SConfigurationImpl implements SConfiguration {
     SConfigurationImpl(ConfigurationBuilder builder, ConfigurationSource configurationSource) {
         configSource = configurationSource;
         activeTransactionCacheSize = builder.activeTransactionCacheSize;
+        sharedTxnCacheMemory = builder.sharedTxnCacheMemory;
+        sharedTxnCacheActiveExpiration = builder.sharedTxnCacheActiveExpiration;
         completedTxnCacheSize = builder.completedTxnCacheSize;
         completedTxnConcurrency = builder.completedTxnConcurrency;
         readResolverQueueSize = builder.readResolverQueueSize;
         readResolverThreads = builder.readResolverThreads;
         timestampClientWaitTime = builder.timestampClientWaitTime;
         timestampServerBindPort = builder.timestampServerBindPort;
+        timestampClientMaxBatchSize = builder.timestampClientMaxBatchSize;
+        timestampClientMaxInFlight = builder.timestampClientMaxInFlight;
         transactionKeepAliveThreads = builder.transactionKeepAliveThreads;
         transactionLockStripes = builder.transactionLockStripes;
         transactionKeepAliveInterval = builder.transactionKeepAliveInterval;
@@ -611,6 +645,11 @@ public final class SConfigurationImpl implements SConfiguration {
         optimizerExtraQualifierMultiplier = builder.optimizerExtraQualifierMultiplier;
         cardinalityPrecision = builder.cardinalityPrecision;
         fallbackRowWidth = builder.fallbackRowWidth;
+        incrementalStatisticsEnabled = builder.incrementalStatisticsEnabled;
+        incrementalStatisticsPersistInterval = builder.incrementalStatisticsPersistInterval;
+        stalenessThreshold = builder.stalenessThreshold;
+        collectStatisticsOnMajorCompaction = builder.collectStatisticsOnMajorCompaction;
+        statisticsSampleFraction = builder.statisticsSampleFraction;
         topkSize = builder.topkSize;
         fallbackLocalLatency = builder.fallbackLocalLatency;
         fallbackMinimumRowCount = builder.fallbackMinimumRowCount;
@@ -638,8 +677,13 @@ public final class SConfigurationImpl implements SConfiguration {
         ignoreSavePoints = builder.ignoreSavePoints;
         upgradeForced = builder.upgradeForced;
         importMaxQuotedColumnLines = builder.importMaxQuotedColumnLines;
+        importControlParallelism = builder.importControlParallelism;
+        importControlSplitSize = builder.importControlSplitSize;
+        bulkImportSampleFraction = builder.bulkImportSampleFraction;
+        bulkImportRegionSize = builder.bulkImportRegionSize;
         indexBatchSize = builder.indexBatchSize;
         indexLookupBlocks = builder.indexLookupBlocks;
+        indexLookupTargetLatency = builder.indexLookupTargetLatency;
         kryoPoolSize = builder.kryoPoolSize;
         networkBindPort = builder.networkBindPort;
         partitionserverJmxPort = builder.partitionserverJmxPort;
@@ -654,10 +698,14 @@ public final class SConfigurationImpl implements SConfiguration {
         ipcThreads = builder.ipcThreads;
         maxBufferEntries = builder.maxBufferEntries;
         maxDependentWrites = builder.maxDependentWrites;
+        maxTableWriteShare = builder.maxTableWriteShare;
+        dependentWriteWeight = builder.dependentWriteWeight;
+        foreignKeyParentCacheSize = builder.foreignKeyParentCacheSize;
         maxIndependentWrites = builder.maxIndependentWrites;
         maxRetries = builder.maxRetries;
         maxWriterThreads = builder.maxWriterThreads;
         pipelineKryoPoolSize = builder.pipelineKryoPoolSize;
+        pipelineBlockCompression = builder.pipelineBlockCompression;
         writeMaxFlushesPerRegion = builder.writeMaxFlushesPerRegion;
         clientPause = builder.clientPause;
         maxBufferHeapSize = builder.maxBufferHeapSize;
@@ -671,13 +719,25 @@ public final class SConfigurationImpl implements SConfiguration {
         olapServerBindPort = builder.olapServerBindPort;
         olapServerThreads = builder.olapServerThreads;
         olapServerTickLimit = builder.olapServerTickLimit;
+        olapServerMaxConcurrentCompactions = builder.olapServerMaxConcurrentCompactions;
+        olapServerMaxConcurrentStatistics = builder.olapServerMaxConcurrentStatistics;
+        olapServerMaxQueuedJobs = builder.olapServerMaxQueuedJobs;
+        olapServerJobAgingInterval = builder.olapServerJobAgingInterval;
         sparkResultStreamingBatches = builder.sparkResultStreamingBatches;
+        sparkResultStreamingUnordered = builder.sparkResultStreamingUnordered;
         sparkResultStreamingBatchSize = builder.sparkResultStreamingBatchSize;
         compactionReservedSlots = builder.compactionReservedSlots;
         olapCompactionMaximumWait = builder.olapCompactionMaximumWait;
         reservedSlotsTimeout = builder.reservedSlotsTimeout;
         storageFactoryHome = builder.storageFactoryHome;
         nestedLoopJoinBatchSize = builder.nestedLoopJoinBatchSize;
+        broadcastJoinOffHeap = builder.broadcastJoinOffHeap;
+        broadcastJoinCacheMemory = builder.broadcastJoinCacheMemory;
+        broadcastJoinSpillDirectory = builder.broadcastJoinSpillDirectory;
+        broadcastJoinBloomFilterMaxKeys = builder.broadcastJoinBloomFilterMaxKeys;
+        controlHashMemory = builder.controlHashMemory;
+        controlSpillDirectory = builder.controlSpillDirectory;
+        controlSortMemory = builder.controlSortMemory;
 
     }
 
@@ -729,4 +789,153 @@ public final class SConfigurationImpl implements SConfiguration {
         return olapServerTickLimit;
     }
 
+    @Override
+    public boolean isBroadcastJoinOffHeap(){
+        return broadcastJoinOffHeap;
+    }
+
+    @Override
+    public long getBroadcastJoinCacheMemory(){
+        return broadcastJoinCacheMemory;
+    }
+
+    @Override
+    public String getBroadcastJoinSpillDirectory(){
+        return broadcastJoinSpillDirectory;
+    }
+
+    @Override
+    public int getBroadcastJoinBloomFilterMaxKeys(){
+        return broadcastJoinBloomFilterMaxKeys;
+    }
+
+    @Override
+    public int getTimestampClientMaxBatchSize(){
+        return timestampClientMaxBatchSize;
+    }
+
+    @Override
+    public int getTimestampClientMaxInFlightRequests(){
+        return timestampClientMaxInFlight;
+    }
+
+    @Override
+    public long getSharedTxnCacheMemory(){
+        return sharedTxnCacheMemory;
+    }
+
+    @Override
+    public long getSharedTxnCacheActiveExpiration(){
+        return sharedTxnCacheActiveExpiration;
+    }
+
+    @Override
+    public long getControlHashMemory(){
+        return controlHashMemory;
+    }
+
+    @Override
+    public String getControlSpillDirectory(){
+        return controlSpillDirectory;
+    }
+
+    @Override
+    public long getControlSortMemory(){
+        return controlSortMemory;
+    }
+
+    @Override
+    public long getIndexLookupTargetLatency(){
+        return indexLookupTargetLatency;
+    }
+
+    @Override
+    public boolean isPipelineBlockCompression(){
+        return pipelineBlockCompression;
+    }
+
+    @Override
+    public boolean isIncrementalStatisticsEnabled(){
+        return incrementalStatisticsEnabled;
+    }
+
+    @Override
+    public long getIncrementalStatisticsPersistInterval(){
+        return incrementalStatisticsPersistInterval;
+    }
+
+    @Override
+    public double getStalenessThreshold(){
+        return stalenessThreshold;
+    }
+
+    @Override
+    public boolean isCollectStatisticsOnMajorCompaction(){
+        return collectStatisticsOnMajorCompaction;
+    }
+
+    @Override
+    public double getStatisticsSampleFraction(){
+        return statisticsSampleFraction;
+    }
+
+    @Override
+    public double getMaxTableWriteShare(){
+        return maxTableWriteShare;
+    }
+
+    @Override
+    public double getDependentWriteWeight(){
+        return dependentWriteWeight;
+    }
+
+    @Override
+    public int getForeignKeyParentCacheSize(){
+        return foreignKeyParentCacheSize;
+    }
+
+    @Override
+    public int getOlapServerMaxQueuedJobs(){
+        return olapServerMaxQueuedJobs;
+    }
+
+    @Override
+    public int getOlapServerMaxConcurrentStatistics(){
+        return olapServerMaxConcurrentStatistics;
+    }
+
+    @Override
+    public int getOlapServerMaxConcurrentCompactions(){
+        return olapServerMaxConcurrentCompactions;
+    }
+
+    @Override
+    public long getOlapServerJobAgingInterval(){
+        return olapServerJobAgingInterval;
+    }
+
+    @Override
+    public boolean isSparkResultStreamingUnordered(){
+        return sparkResultStreamingUnordered;
+    }
+
+    @Override
+    public int getImportControlParallelism(){
+        return importControlParallelism;
+    }
+
+    @Override
+    public long getImportControlSplitSize(){
+        return importControlSplitSize;
+    }
+
+    @Override
+    public double getBulkImportSampleFraction(){
+        return bulkImportSampleFraction;
+    }
+
+    @Override
+    public long getBulkImportRegionSize(){
+        return bulkImportRegionSize;
+    }
 }
@@ -136,7 +136,7 @@ public class SIConfigurations implements ConfigurationDefault {
 
     /**
      * Number of threads used by the Olap server, determines the maximum number of concurrent
-     * Olap jobs
+     * Olap jobs other than queries (which stream their results from Spark, and are not limited)
      *
      * Defaults to 16
      */
@@ -149,6 +149,75 @@ public class SIConfigurations implements ConfigurationDefault {
     public static final String ACTIVE_TRANSACTION_CACHE_SIZE="splice.txn.activeCacheSize";
     private static final int DEFAULT_ACTIVE_TRANSACTION_CACHE_SIZE = 1<<12;
 
+    /**
+     * The maximum number of concurrent callers which the timestamp client will coalesce into a
+     * single request to the timestamp server. Set to 1 to request one timestamp at a time.
+     * Defaults to 1024
+     */
+    public static final String TIMESTAMP_CLIENT_MAX_BATCH_SIZE = "splice.timestamp_server.clientMaxBatchSize";
+    private static final int DEFAULT_TIMESTAMP_CLIENT_MAX_BATCH_SIZE = 1024;
+
+    /**
+     * The number of requests the timestamp client may have outstanding before new callers
+     * start waiting to share the next request.
+     * Defaults to 4
+     */
+    public static final String TIMESTAMP_CLIENT_MAX_IN_FLIGHT = "splice.timestamp_server.clientMaxInFlightRequests";
+    private static final int DEFAULT_TIMESTAMP_CLIENT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * The approximate number of bytes of heap each server may use to cache transactions which
+     * are shared between scans. Completed transactions get the bulk of this memory.
+     * Defaults to 64 MB
+     */
+    public static final String SHARED_TRANSACTION_CACHE_MEMORY = "splice.txn.sharedCacheMemory";
+    private static final long DEFAULT_SHARED_TRANSACTION_CACHE_MEMORY = 64*1024*1024L;
+
+    /**
+     * The number of milliseconds an active transaction may be held in the shared transaction
+     * cache before it must be fetched again. Completed transactions do not expire.
+     * Defaults to 1000 (1 second)
+     */
+    public static final String SHARED_TRANSACTION_CACHE_ACTIVE_EXPIRATION = "splice.txn.sharedCacheActiveExpiration";
+    private static final long DEFAULT_SHARED_TRANSACTION_CACHE_ACTIVE_EXPIRATION = 1000L;
+
+    /**
+     * The number of jobs which may wait in the Olap server's queue once all of its threads are busy.
+     * Jobs submitted to a full queue are rejected.
+     *
+     * Defaults to 1000
+     */
+    public static final String OLAP_SERVER_MAX_QUEUED_JOBS = "splice.olap_server.maxQueuedJobs";
+    private static final int DEFAULT_OLAP_SERVER_MAX_QUEUED_JOBS = 1000;
+
+    /**
+     * The number of statistics collections which the Olap server runs at once. Further collections wait
+     * in the queue, so that a bulk collection cannot take every Olap thread from queries.
+     *
+     * Defaults to 4
+     */
+    public static final String OLAP_SERVER_MAX_CONCURRENT_STATISTICS = "splice.olap_server.maxConcurrentStatisticsJobs";
+    private static final int DEFAULT_OLAP_SERVER_MAX_CONCURRENT_STATISTICS = 4;
+
+    /**
+     * The number of compactions which the Olap server runs at once. Further compactions wait in the
+     * queue, so that a burst of compactions cannot take every Olap thread from queries.
+     *
+     * Defaults to 4
+     */
+    public static final String OLAP_SERVER_MAX_CONCURRENT_COMPACTIONS = "splice.olap_server.maxConcurrentCompactions";
+    private static final int DEFAULT_OLAP_SERVER_MAX_CONCURRENT_COMPACTIONS = 4;
+
+    /**
+     * The number of milliseconds a job waits in the Olap server's queue before its priority is raised
+     * by one, so that background jobs such as compactions are not starved by a steady stream of
+     * higher priority work.
+     *
+     * Defaults to 60000 (1 minute)
+     */
+    public static final String OLAP_SERVER_JOB_AGING_INTERVAL = "splice.olap_server.jobAgingInterval";
+    private static final long DEFAULT_OLAP_SERVER_JOB_AGING_INTERVAL = 60000L;
+
     @Override
     public void setDefaults(ConfigurationBuilder builder, ConfigurationSource configurationSource) {
         builder.completedTxnConcurrency  = configurationSource.getInt(completedTxnConcurrency, DEFAULT_COMPLETED_TRANSACTION_CONCURRENCY);
@@ -159,12 +228,20 @@ public class SIConfigurations implements ConfigurationDefault {
 //        builder.readResolverQueueSize  = configurationSource.getInt(READ_RESOLVER_QUEUE_SIZE, DEFAULT_READ_RESOLVER_QUEUE_SIZE);
         builder.timestampClientWaitTime  = configurationSource.getInt(TIMESTAMP_CLIENT_WAIT_TIME, DEFAULT_TIMESTAMP_CLIENT_WAIT_TIME);
         builder.timestampServerBindPort  = configurationSource.getInt(TIMESTAMP_SERVER_BIND_PORT, DEFAULT_TIMESTAMP_SERVER_BIND_PORT);
+        builder.timestampClientMaxBatchSize  = configurationSource.getInt(TIMESTAMP_CLIENT_MAX_BATCH_SIZE, DEFAULT_TIMESTAMP_CLIENT_MAX_BATCH_SIZE);
+        builder.timestampClientMaxInFlight  = configurationSource.getInt(TIMESTAMP_CLIENT_MAX_IN_FLIGHT, DEFAULT_TIMESTAMP_CLIENT_MAX_IN_FLIGHT);
         builder.activeTransactionCacheSize  = configurationSource.getInt(ACTIVE_TRANSACTION_CACHE_SIZE, DEFAULT_ACTIVE_TRANSACTION_CACHE_SIZE);
+        builder.sharedTxnCacheMemory  = configurationSource.getLong(SHARED_TRANSACTION_CACHE_MEMORY, DEFAULT_SHARED_TRANSACTION_CACHE_MEMORY);
+        builder.sharedTxnCacheActiveExpiration  = configurationSource.getLong(SHARED_TRANSACTION_CACHE_ACTIVE_EXPIRATION, DEFAULT_SHARED_TRANSACTION_CACHE_ACTIVE_EXPIRATION);
         builder.olapServerBindPort  = configurationSource.getInt(OLAP_SERVER_BIND_PORT, DEFAULT_OLAP_SERVER_BIND_PORT);
         builder.olapClientWaitTime  = configurationSource.getInt(OLAP_CLIENT_WAIT_TIME, DEFAULT_OLAP_CLIENT_WAIT_TIME);
         builder.olapClientTickTime  = configurationSource.getInt(OLAP_CLIENT_TICK_TIME, DEFAULT_OLAP_CLIENT_TICK_TIME);
         builder.olapServerThreads = configurationSource.getInt(OLAP_SERVER_THREADS, DEFAULT_OLAP_SERVER_THREADS);
         builder.olapServerTickLimit = configurationSource.getInt(OLAP_SERVER_TICK_LIMIT,DEFAULT_OLAP_SERVER_TICK_LIMIT);
+        builder.olapServerMaxQueuedJobs = configurationSource.getInt(OLAP_SERVER_MAX_QUEUED_JOBS, DEFAULT_OLAP_SERVER_MAX_QUEUED_JOBS);
+        builder.olapServerMaxConcurrentStatistics = configurationSource.getInt(OLAP_SERVER_MAX_CONCURRENT_STATISTICS, DEFAULT_OLAP_SERVER_MAX_CONCURRENT_STATISTICS);
+        builder.olapServerMaxConcurrentCompactions = configurationSource.getInt(OLAP_SERVER_MAX_CONCURRENT_COMPACTIONS, DEFAULT_OLAP_SERVER_MAX_CONCURRENT_COMPACTIONS);
+        builder.olapServerJobAgingInterval = configurationSource.getLong(OLAP_SERVER_JOB_AGING_INTERVAL, DEFAULT_OLAP_SERVER_JOB_AGING_INTERVAL);
 
         builder.transactionTimeout = configurationSource.getLong(TRANSACTION_TIMEOUT, DEFAULT_TRANSACTION_TIMEOUT);
         builder.transactionKeepAliveInterval = configurationSource.getLong(TRANSACTION_KEEP_ALIVE_INTERVAL, DEFAULT_TRANSACTION_KEEP_ALIVE_INTERVAL);
@@ -203,6 +203,122 @@ public class SQLConfiguration implements ConfigurationDefault {
     public static final String NESTEDLOOPJOIN_BATCH_SIZE = "splice.nestedLoopJoin.batchSize";
     private static final int DEFAULT_NESTEDLOOPJOIN_BATCH_SIZE = 10;
 
+    /**
+     * If true, the inner (build) side of a broadcast join is held in off-heap memory in its encoded form,
+     * rather than as a java HashMap of ExecRows. This greatly reduces the heap usage (and garbage
+     * collection pressure) of broadcast joins against large dimension tables, at the cost of decoding
+     * each matched inner row when it is fetched.
+     *
+     * Defaults to false
+     */
+    public static final String BROADCAST_JOIN_OFF_HEAP = "splice.execution.broadcastJoin.offHeap";
+    private static final boolean DEFAULT_BROADCAST_JOIN_OFF_HEAP = false;
+
+    /**
+     * The maximum number of bytes of memory which broadcast join tables may hold on a single server.
+     * Broadcast join inner sides which would not fit in this limit are spilled to local disk,
+     * and cached tables are evicted (least recently used first) to stay within it.
+     *
+     * Defaults to 10% of the maximum heap size
+     */
+    public static final String BROADCAST_JOIN_CACHE_MEMORY = "splice.execution.broadcastJoin.cacheMemory";
+    private static final long DEFAULT_BROADCAST_JOIN_CACHE_MEMORY = Runtime.getRuntime().maxMemory() / 10;
+
+    /**
+     * The local directory in which to place broadcast join tables which are too large to hold in memory.
+     *
+     * Defaults to java.io.tmpdir
+     */
+    public static final String BROADCAST_JOIN_SPILL_DIRECTORY = "splice.execution.broadcastJoin.spillDirectory";
+    private static final String DEFAULT_BROADCAST_JOIN_SPILL_DIRECTORY = System.getProperty("java.io.tmpdir");
+
+    /**
+     * The largest number of inner join keys for which a broadcast join will build a Bloom filter to push
+     * down into the scan of its outer table. Inner tables with more keys than this are joined without
+     * a filter. Set to 0 to disable the filter entirely.
+     *
+     * Defaults to 1000000
+     */
+    public static final String BROADCAST_JOIN_BLOOM_FILTER_MAX_KEYS = "splice.execution.broadcastJoin.bloomFilterMaxKeys";
+    private static final int DEFAULT_BROADCAST_JOIN_BLOOM_FILTER_MAX_KEYS = 1000000;
+
+    /**
+     * The maximum number of bytes of memory which a single hash aggregation or hash join on the control
+     * (non-Spark) execution path may hold. Inputs which grow past this are hash partitioned to local disk
+     * and processed one partition at a time.
+     *
+     * Defaults to 5% of the maximum heap size
+     */
+    public static final String CONTROL_HASH_MEMORY = "splice.execution.control.hashMemory";
+    private static final long DEFAULT_CONTROL_HASH_MEMORY = Runtime.getRuntime().maxMemory() / 20;
+
+    /**
+     * The local directory in which control-side hash aggregations, hash joins and sorts place the data
+     * they spill to disk.
+     *
+     * Defaults to java.io.tmpdir
+     */
+    public static final String CONTROL_SPILL_DIRECTORY = "splice.execution.control.spillDirectory";
+    private static final String DEFAULT_CONTROL_SPILL_DIRECTORY = System.getProperty("java.io.tmpdir");
+
+    /**
+     * The maximum number of bytes of memory which a single sort on the control (non-Spark) execution
+     * path may hold. Larger inputs are written to local disk as sorted runs, which are then merged.
+     *
+     * Defaults to 5% of the maximum heap size
+     */
+    public static final String CONTROL_SORT_MEMORY = "splice.execution.control.sortMemory";
+    private static final long DEFAULT_CONTROL_SORT_MEMORY = Runtime.getRuntime().maxMemory() / 20;
+
+    /**
+     * The latency (in milliseconds) which a single bulk fetch of base rows for an index lookup should aim for.
+     * The number of rows in each bulk fetch starts at splice.index.batchSize, and is then shrunk when
+     * fetches take longer than this, or grown while they complete comfortably within it. A value of zero or
+     * less turns this off, so that every bulk fetch holds splice.index.batchSize rows.
+     *
+     * Defaults to 100
+     */
+    public static final String INDEX_LOOKUP_TARGET_LATENCY = "splice.index.lookupTargetLatency";
+    private static final long DEFAULT_INDEX_LOOKUP_TARGET_LATENCY = 100L;
+
+    /**
+     * The number of threads which parse a single large file when it is imported without Spark. The file
+     * is split into byte ranges which begin and end on record boundaries, and each range is parsed
+     * by its own thread. Set to 1 to parse every file on a single thread.
+     * <p>
+     * Defaults to the number of available processors
+     */
+    public static final String IMPORT_CONTROL_PARALLELISM = "splice.import.control.parallelism";
+    private static final int DEFAULT_IMPORT_CONTROL_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The approximate size (in bytes) of each range a file is split into when it is imported without
+     * Spark. Files smaller than two ranges are parsed on a single thread.
+     * <p>
+     * Defaults to 64 MB
+     */
+    public static final String IMPORT_CONTROL_SPLIT_SIZE = "splice.import.control.splitSize";
+    private static final long DEFAULT_IMPORT_CONTROL_SPLIT_SIZE = 64L*1024*1024;
+
+    /**
+     * The fraction of rows which are sampled to choose region split points when a file is imported directly
+     * into HFiles.
+     * <p>
+     * Defaults to 0.001
+     */
+    public static final String BULK_IMPORT_SAMPLE_FRACTION = "splice.bulkImport.sampleFraction";
+    private static final double DEFAULT_BULK_IMPORT_SAMPLE_FRACTION = 0.001d;
+
+    /**
+     * The approximate number of bytes of encoded data in each region, when a file is imported directly into
+     * HFiles. Tables (and their indexes) are split ahead of time so that the imported data is spread
+     * across regions of about this size.
+     * <p>
+     * Defaults to 1 GB
+     */
+    public static final String BULK_IMPORT_REGION_SIZE = "splice.bulkImport.regionSize";
+    private static final long DEFAULT_BULK_IMPORT_REGION_SIZE = 1024L*1024*1024;
+
     @Override
     public void setDefaults(ConfigurationBuilder builder, ConfigurationSource configurationSource) {
         // FIXME: JC - some of these are not referenced anywhere outside. Do we need them?
@@ -212,6 +328,8 @@ public class SQLConfiguration implements ConfigurationDefault {
         builder.indexBatchSize = configurationSource.getInt(INDEX_BATCH_SIZE, DEFAULT_INDEX_BATCH_SIZE);
         builder.indexLookupBlocks = configurationSource.getInt(INDEX_LOOKUP_BLOCKS, DEFAULT_INDEX_LOOKUP_BLOCKS);
         builder.importMaxQuotedColumnLines = configurationSource.getInt(IMPORT_MAX_QUOTED_COLUMN_LINES, DEFAULT_IMPORT_MAX_QUOTED_COLUMN_LINES);
+        builder.importControlParallelism = configurationSource.getInt(IMPORT_CONTROL_PARALLELISM, DEFAULT_IMPORT_CONTROL_PARALLELISM);
+        builder.importControlSplitSize = configurationSource.getLong(IMPORT_CONTROL_SPLIT_SIZE, DEFAULT_IMPORT_CONTROL_SPLIT_SIZE);
         builder.batchOnceBatchSize = configurationSource.getInt(BATCH_ONCE_BATCH_SIZE, DEFAULT_BATCH_ONCE_BATCH_SIZE);
         builder.partitionserverJmxPort = configurationSource.getInt(PARTITIONSERVER_JMX_PORT, DEFAULT_PARTITIONSERVER_JMX_PORT);
         builder.partitionserverPort = configurationSource.getInt(PARTITIONSERVER_PORT, DEFAULT_PARTITIONSERVER_PORT);
@@ -241,5 +359,15 @@ public class SQLConfiguration implements ConfigurationDefault {
 //        builder.controlSideRowcountThreshold = configurationSource.getDouble(CONTROL_SIDE_ROWCOUNT_THRESHOLD, DEFAULT_CONTROL_SIDE_ROWCOUNT_THRESHOLD);
 
         builder.networkBindAddress = configurationSource.getString(NETWORK_BIND_ADDRESS, DEFAULT_NETWORK_BIND_ADDRESS);
+        builder.broadcastJoinOffHeap = configurationSource.getBoolean(BROADCAST_JOIN_OFF_HEAP, DEFAULT_BROADCAST_JOIN_OFF_HEAP);
+        builder.broadcastJoinCacheMemory = configurationSource.getLong(BROADCAST_JOIN_CACHE_MEMORY, DEFAULT_BROADCAST_JOIN_CACHE_MEMORY);
+        builder.broadcastJoinSpillDirectory = configurationSource.getString(BROADCAST_JOIN_SPILL_DIRECTORY, DEFAULT_BROADCAST_JOIN_SPILL_DIRECTORY);
+        builder.broadcastJoinBloomFilterMaxKeys = configurationSource.getInt(BROADCAST_JOIN_BLOOM_FILTER_MAX_KEYS, DEFAULT_BROADCAST_JOIN_BLOOM_FILTER_MAX_KEYS);
+        builder.controlHashMemory = configurationSource.getLong(CONTROL_HASH_MEMORY, DEFAULT_CONTROL_HASH_MEMORY);
+        builder.controlSpillDirectory = configurationSource.getString(CONTROL_SPILL_DIRECTORY, DEFAULT_CONTROL_SPILL_DIRECTORY);
+        builder.controlSortMemory = configurationSource.getLong(CONTROL_SORT_MEMORY, DEFAULT_CONTROL_SORT_MEMORY);
+        builder.indexLookupTargetLatency = configurationSource.getLong(INDEX_LOOKUP_TARGET_LATENCY, DEFAULT_INDEX_LOOKUP_TARGET_LATENCY);
+        builder.bulkImportSampleFraction = configurationSource.getDouble(BULK_IMPORT_SAMPLE_FRACTION, DEFAULT_BULK_IMPORT_SAMPLE_FRACTION);
+        builder.bulkImportRegionSize = configurationSource.getLong(BULK_IMPORT_REGION_SIZE, DEFAULT_BULK_IMPORT_REGION_SIZE);
     }
 }
@@ -125,6 +125,45 @@ public class StatsConfiguration implements ConfigurationDefault {
     public static final String FALLBACK_ROW_WIDTH="splice.statistics.fallbackMinimumRowWidth";
     public static final int DEFAULT_FALLBACK_ROW_WIDTH=170;
 
+    /**
+     * When enabled, each region feeds the rows written to it into column statistics sketches, which are
+     * periodically merged into the statistics already collected for that region. This keeps statistics fresh
+     * between explicit collections, and tracks how much of each region has changed since it was last collected.
+     */
+    public static final String INCREMENTAL_STATISTICS_ENABLED = "splice.statistics.incremental.enabled";
+    private static final boolean DEFAULT_INCREMENTAL_STATISTICS_ENABLED = true;
+
+    /**
+     * The interval (in milliseconds) between merges of incrementally maintained statistics into the
+     * statistics tables. Every merge notifies the cluster that statistics have changed, so setting this too
+     * low will cause excessive plan recompilation.
+     */
+    public static final String INCREMENTAL_STATISTICS_PERSIST_INTERVAL = "splice.statistics.incremental.persistInterval";
+    private static final long DEFAULT_INCREMENTAL_STATISTICS_PERSIST_INTERVAL = 5*60*1000;
+
+    /**
+     * The fraction of a region's rows which may be updated or deleted before its statistics are marked
+     * stale. Stale regions are recollected by COLLECT_SCHEMA_STATISTICS and COLLECT_TABLE_STATISTICS when
+     * staleOnly is true.
+     */
+    public static final String STALENESS_THRESHOLD = "splice.statistics.staleness.threshold";
+    private static final double DEFAULT_STALENESS_THRESHOLD = 0.1d;
+
+    /**
+     * If true, the statistics of a region are collected as part of each major compaction of the region,
+     * rather than requiring a separate scan. Off by default, as it adds to the cost of every major compaction.
+     */
+    public static final String COLLECT_STATISTICS_ON_MAJOR_COMPACTION = "splice.statistics.majorCompaction.enabled";
+    private static final boolean DEFAULT_COLLECT_STATISTICS_ON_MAJOR_COMPACTION = false;
+
+    /**
+     * The fraction of each region which is read when collecting statistics. Regions are sampled in
+     * blocks, so the data which is skipped is never read, and row counts and cardinalities are scaled up
+     * from the sample. The default of 1.0 reads every row.
+     */
+    public static final String STATISTICS_SAMPLE_FRACTION = "splice.statistics.sampleFraction";
+    private static final double DEFAULT_STATISTICS_SAMPLE_FRACTION = 1.0d;
+
     @Override
     public void setDefaults(ConfigurationBuilder builder, ConfigurationSource configurationSource) {
         // FIXME: JC - some of these are not referenced anywhere outside. Do we need them?
@@ -147,5 +186,10 @@ public class StatsConfiguration implements ConfigurationDefault {
 //        builder.fallbackCardinalityFraction = configurationSource.getDouble(FALLBACK_CARDINALITY_FRACTION, DEFAULT_FALLBACK_CARDINALITY_FRACTION);
 //        builder.fallbackIndexSelectivityFraction = configurationSource.getDouble(FALLBACK_INDEX_SELECTIVITY_FRACTION, DEFAULT_FALLBACK_INDEX_SELECTIVITY_FRACTION);
         builder.optimizerExtraQualifierMultiplier = configurationSource.getDouble(OPTIMIZER_EXTRA_QUALIFIER_MULTIPLIER, DEFAULT_OPTIMIZER_EXTRA_QUALIFIER_MULTIPLIER);
+        builder.incrementalStatisticsEnabled = configurationSource.getBoolean(INCREMENTAL_STATISTICS_ENABLED, DEFAULT_INCREMENTAL_STATISTICS_ENABLED);
+        builder.incrementalStatisticsPersistInterval = configurationSource.getLong(INCREMENTAL_STATISTICS_PERSIST_INTERVAL, DEFAULT_INCREMENTAL_STATISTICS_PERSIST_INTERVAL);
+        builder.stalenessThreshold = configurationSource.getDouble(STALENESS_THRESHOLD, DEFAULT_STALENESS_THRESHOLD);
+        builder.collectStatisticsOnMajorCompaction = configurationSource.getBoolean(COLLECT_STATISTICS_ON_MAJOR_COMPACTION, DEFAULT_COLLECT_STATISTICS_ON_MAJOR_COMPACTION);
+        builder.statisticsSampleFraction = configurationSource.getDouble(STATISTICS_SAMPLE_FRACTION, DEFAULT_STATISTICS_SAMPLE_FRACTION);
     }
 }
@@ -101,6 +101,10 @@ public class ExpandingEncoder {
         return rawEncode(byteSlice.array(),byteSlice.offset(),byteSlice.length());
     }
 
+    public int currentOffset(){
+        return currentOffset;
+    }
+
     @SuppressFBWarnings(value = "EI_EXPOSE_REP",justification = "Intentional")
     public byte[] getBuffer(){
         if(currentOffset<buffer.length){
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.storage;
+
+import com.splicemachine.encoding.Encoding;
+import com.splicemachine.primitives.Bytes;
+
+import java.util.Arrays;
+
+/**
+ * A comparison between a single field of a row and a constant, which is evaluated directly against the
+ * encoded bytes of the field, without decoding it.
+ *
+ * This is only correct when the field and the constant are encoded the same way, and that encoding is both
+ * order-preserving and has exactly one representation for each value, so it is restricted to scalar fields
+ * (which use the same variable-length encoding whatever their declared width).
+ *
+ * Predicates only ever reject rows which are certain to fail the comparison. A null (or missing) field, or a
+ * field which is not scalar-typed, is never rejected, but left for the full row evaluation to decide on.
+ */
+public class EncodedPredicate{
+
+    public enum Comparison{
+        EQUALS,
+        NOT_EQUALS,
+        LESS_THAN,
+        LESS_OR_EQUAL,
+        GREATER_THAN,
+        GREATER_OR_EQUAL;
+
+        boolean accept(int compare){
+            switch(this){
+                case EQUALS: return compare==0;
+                case NOT_EQUALS: return compare!=0;
+                case LESS_THAN: return compare<0;
+                case LESS_OR_EQUAL: return compare<=0;
+                case GREATER_THAN: return compare>0;
+                default: return compare>=0;
+            }
+        }
+    }
+
+    private final int position;
+    private final Comparison comparison;
+    private final byte[] value;
+
+    private EncodedPredicate(int position,Comparison comparison,byte[] value){
+        this.position=position;
+        this.comparison=comparison;
+        this.value=value;
+    }
+
+    /**
+     * @param position the position of the field in the row
+     * @param comparison how the field is compared to {@code value}, with the field on the left
+     * @param value the value to compare the field against
+     * @return a predicate comparing a scalar field to {@code value}
+     */
+    public static EncodedPredicate scalar(int position,Comparison comparison,long value){
+        return new EncodedPredicate(position,comparison,Encoding.encode(value));
+    }
+
+    public int getPosition(){
+        return position;
+    }
+
+    public Comparison getComparison(){
+        return comparison;
+    }
+
+    /**
+     * @param index the index of the row which {@code data} was taken from
+     * @return true if the field in {@code data[offset:offset+length]} might satisfy this predicate, false if it
+     * certainly does not.
+     */
+    public boolean matches(Indexed index,byte[] data,int offset,int length){
+        if(length<=0 || !index.isScalarType(position)) return true;
+        return comparison.accept(Bytes.BASE_COMPARATOR.compare(data,offset,length,value,0,value.length));
+    }
+
+    int encodedLength(){
+        return 9+value.length;
+    }
+
+    /*
+     * Format is: 4-byte position, 1-byte comparison, 4-byte value length, value bytes
+     */
+    int encode(byte[] buffer,int offset){
+        Bytes.toBytes(position,buffer,offset);
+        buffer[offset+4]=(byte)comparison.ordinal();
+        Bytes.toBytes(value.length,buffer,offset+5);
+        System.arraycopy(value,0,buffer,offset+9,value.length);
+        return encodedLength();
+    }
+
+    static EncodedPredicate decode(byte[] data,int offset){
+        int position=Bytes.toInt(data,offset);
+        Comparison comparison=Comparison.values()[data[offset+4]];
+        int length=Bytes.toInt(data,offset+5);
+        return new EncodedPredicate(position,comparison,Arrays.copyOfRange(data,offset+9,offset+9+length));
+    }
+
+    @Override
+    public String toString(){
+        return "EncodedPredicate{position="+position+", comparison="+comparison+"}";
+    }
+}
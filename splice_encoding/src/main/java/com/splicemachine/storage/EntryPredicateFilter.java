@@ -19,6 +19,7 @@ import com.splicemachine.encoding.MultiFieldDecoder;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.utils.Pair;
 import java.io.IOException;
+import java.util.Arrays;
 import com.carrotsearch.hppc.BitSet;
 import org.spark_project.guava.base.Supplier;
 
@@ -28,8 +29,11 @@ import org.spark_project.guava.base.Supplier;
  */
 public class EntryPredicateFilter {
     public static final EntryPredicateFilter EMPTY_PREDICATE = new EntryPredicateFilter(new BitSet());
+    private static final EncodedPredicate[] NO_PREDICATES = new EncodedPredicate[0];
     private BitSet fieldsToReturn;
     private boolean returnIndex;
+    private EncodedPredicate[] predicates;
+    private FieldLocations locations;
     public static EntryPredicateFilter emptyPredicate(){ return EMPTY_PREDICATE; }
 
     public EntryPredicateFilter(BitSet fieldsToReturn){
@@ -37,18 +41,43 @@ public class EntryPredicateFilter {
     }
 
     public EntryPredicateFilter(BitSet fieldsToReturn, boolean returnIndex){
+        this(fieldsToReturn,returnIndex,NO_PREDICATES);
+    }
+
+    /**
+     * @param predicates comparisons which are evaluated against the encoded fields of each row, so that rows
+     *                   which fail them can be rejected before any of their fields are accumulated.
+     */
+    public EntryPredicateFilter(BitSet fieldsToReturn, boolean returnIndex, EncodedPredicate[] predicates){
         this.fieldsToReturn = fieldsToReturn;
         this.returnIndex=returnIndex;
+        this.predicates = predicates;
+    }
+
+    /**
+     * @return a filter which returns the same fields as this one, but does not evaluate any predicates. Predicate
+     * positions refer to the fields of the row's value, so this is what should be used against anything else
+     * (such as the row key).
+     */
+    public EntryPredicateFilter withoutPredicates(){
+        if(predicates.length==0) return this;
+        return new EntryPredicateFilter(fieldsToReturn,returnIndex);
+    }
+
+    public EncodedPredicate[] getPredicates(){
+        return predicates;
     }
 
 		public boolean match(Indexed index,
 												 Supplier<MultiFieldDecoder> decoderProvider,
 												 EntryAccumulator accumulator) throws IOException{
+				if(predicates.length>0)
+						return matchPredicates(index,decoderProvider,accumulator);
 				BitSet remainingFields = accumulator.getRemainingFields();
 
 				MultiFieldDecoder decoder = decoderProvider.get();
 				for(int encodedPos =index.nextSetBit(0);
-						remainingFields.cardinality()>0 && encodedPos>=0&&encodedPos<=remainingFields.length();
+						!remainingFields.isEmpty() && encodedPos>=0&&encodedPos<=remainingFields.length();
 						encodedPos=index.nextSetBit(encodedPos + 1)){
 						if(!remainingFields.get(encodedPos)){
 								skipField(decoder,encodedPos,index);
@@ -89,6 +118,63 @@ public class EntryPredicateFilter {
 		}
 
 
+    /*
+     * Walk the fields of the row once, noting where each of the fields that we are interested in starts and ends
+     * (and skipping everything else, including any fields after the last one we need). The predicates are
+     * then evaluated against the encoded fields, and only if they all pass are the fields accumulated--so
+     * a row which is filtered out never has any of its fields decoded.
+     *
+     * A predicate is only evaluated when this row supplies the field's current value, that is when the
+     * field is still outstanding in the accumulator. Otherwise the value came from a newer version of the
+     * row, and has already been checked.
+     */
+    private boolean matchPredicates(Indexed index,
+                                    Supplier<MultiFieldDecoder> decoderProvider,
+                                    EntryAccumulator accumulator) throws IOException{
+        BitSet remainingFields = accumulator.getRemainingFields();
+        if(remainingFields.isEmpty()) return true;
+        if(locations==null)
+            locations = new FieldLocations();
+        locations.clear();
+
+        MultiFieldDecoder decoder = decoderProvider.get();
+        byte[] array = decoder.array();
+        int lastField = (int)remainingFields.length()-1;
+        boolean exhausted = false;
+        for(int encodedPos=index.nextSetBit(0);encodedPos>=0 && encodedPos<=lastField;encodedPos=index.nextSetBit(encodedPos+1)){
+            int offset = decoder.offset();
+            if(offset>array.length){
+                //see the comment in match()
+                exhausted = true;
+                break;
+            }
+            skipField(decoder,encodedPos,index);
+            if(!remainingFields.get(encodedPos)) continue;
+
+            int limit = decoder.offset()-1-offset;
+            if(limit<=0){
+                limit=0;
+            }else if(offset+limit>array.length){
+                limit = array.length-offset;
+            }
+            locations.add(encodedPos,offset,limit);
+        }
+
+        for(EncodedPredicate predicate:predicates){
+            int located = Arrays.binarySearch(locations.positions,0,locations.size,predicate.getPosition());
+            if(located<0) continue;
+            if(!predicate.matches(index,array,locations.offsets[located],locations.lengths[located]))
+                return false;
+        }
+
+        for(int i=0;i<locations.size;i++){
+            accumulate(index,locations.positions[i],accumulator,array,locations.offsets[i],locations.lengths[i]);
+        }
+        if(exhausted && (fieldsToReturn==null||fieldsToReturn.isEmpty()))
+            accumulator.complete();
+        return true;
+    }
+
 		public boolean match(EntryDecoder entry,EntryAccumulator accumulator) throws IOException {
 				return match(entry.getCurrentIndex(),entry, accumulator);
     }
@@ -107,18 +193,34 @@ public class EntryPredicateFilter {
 
     public byte[] toBytes() {
         //if we dont have any distinguishing information, just send over an empty byte array
-        if(fieldsToReturn.length()==0 && !returnIndex)
+        if(fieldsToReturn.length()==0 && !returnIndex && predicates.length==0)
             return new byte[]{};
 
         /*
          * Format is as follows:
          * BitSet bytes
          * 1-byte returnIndex
+         * (optionally) 4-byte predicate count, followed by each predicate
          */
         byte[] bitSetBytes = Bytes.toByteArray(fieldsToReturn);
-        byte[] finalData = new byte[bitSetBytes.length+1];
+        int size = bitSetBytes.length+1;
+        if(predicates.length>0){
+            size+=4;
+            for(EncodedPredicate predicate:predicates){
+                size+=predicate.encodedLength();
+            }
+        }
+        byte[] finalData = new byte[size];
         System.arraycopy(bitSetBytes,0,finalData,0,bitSetBytes.length);
         finalData[bitSetBytes.length] = returnIndex? (byte)0x01: 0x00;
+        if(predicates.length>0){
+            int offset = bitSetBytes.length+1;
+            Bytes.toBytes(predicates.length,finalData,offset);
+            offset+=4;
+            for(EncodedPredicate predicate:predicates){
+                offset+=predicate.encode(finalData,offset);
+            }
+        }
         return finalData;
     }
 
@@ -126,8 +228,19 @@ public class EntryPredicateFilter {
         if(data==null||data.length==0) return EMPTY_PREDICATE;
 
         Pair<BitSet,Integer> fieldsToReturn = Bytes.fromByteArray(data, 0);
-        boolean returnIndex = data[fieldsToReturn.getSecond()] > 0;
-        return new EntryPredicateFilter(fieldsToReturn.getFirst(),returnIndex);
+        int offset = fieldsToReturn.getSecond();
+        boolean returnIndex = data[offset] > 0;
+        offset++;
+        if(offset>=data.length)
+            return new EntryPredicateFilter(fieldsToReturn.getFirst(),returnIndex);
+
+        EncodedPredicate[] predicates = new EncodedPredicate[Bytes.toInt(data,offset)];
+        offset+=4;
+        for(int i=0;i<predicates.length;i++){
+            predicates[i] = EncodedPredicate.decode(data,offset);
+            offset+=predicates[i].encodedLength();
+        }
+        return new EntryPredicateFilter(fieldsToReturn.getFirst(),returnIndex,predicates);
     }
 
     private void skipField(MultiFieldDecoder decoder, int position, Indexed index) {
@@ -155,4 +268,30 @@ public class EntryPredicateFilter {
     public boolean indexReturned() {
         return returnIndex;
     }
+
+    /*
+     * Where each of the interesting fields of the current row can be found, in position order.
+     */
+    private static class FieldLocations{
+        private int[] positions = new int[16];
+        private int[] offsets = new int[16];
+        private int[] lengths = new int[16];
+        private int size;
+
+        void clear(){
+            size = 0;
+        }
+
+        void add(int position,int offset,int length){
+            if(size==positions.length){
+                positions = Arrays.copyOf(positions,2*size);
+                offsets = Arrays.copyOf(offsets,2*size);
+                lengths = Arrays.copyOf(lengths,2*size);
+            }
+            positions[size] = position;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+    }
 }
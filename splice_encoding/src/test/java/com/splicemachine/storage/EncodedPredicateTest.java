@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.storage;
+
+import com.carrotsearch.hppc.BitSet;
+import com.splicemachine.encoding.Encoding;
+import com.splicemachine.storage.index.BitIndex;
+import com.splicemachine.storage.index.BitIndexing;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class EncodedPredicateTest{
+    private static final long[] INTERESTING_VALUES=new long[]{
+            Long.MIN_VALUE,Integer.MIN_VALUE-1l,Integer.MIN_VALUE,Short.MIN_VALUE,Byte.MIN_VALUE,-1l,0l,1l,
+            Byte.MAX_VALUE,Short.MAX_VALUE,Integer.MAX_VALUE,Integer.MAX_VALUE+1l,Long.MAX_VALUE
+    };
+
+    @Test
+    public void comparisonsMatchDecodedComparisons() throws Exception{
+        BitIndex index=scalarIndex();
+        Random random=new Random(0l);
+        for(int i=0;i<10000;i++){
+            long field=pick(random);
+            long constant=random.nextInt(4)==0?field:pick(random);
+            byte[] encoded=Encoding.encode(field);
+            for(EncodedPredicate.Comparison comparison:EncodedPredicate.Comparison.values()){
+                EncodedPredicate predicate=EncodedPredicate.scalar(0,comparison,constant);
+                Assert.assertEquals("Incorrect result for "+field+" "+comparison+" "+constant,
+                        expected(comparison,Long.compare(field,constant)),
+                        predicate.matches(index,encoded,0,encoded.length));
+            }
+        }
+    }
+
+    @Test
+    public void nullFieldsAreNeverRejected() throws Exception{
+        EncodedPredicate predicate=EncodedPredicate.scalar(0,EncodedPredicate.Comparison.EQUALS,12l);
+        Assert.assertTrue(predicate.matches(scalarIndex(),new byte[]{},0,0));
+    }
+
+    @Test
+    public void untypedFieldsAreNeverRejected() throws Exception{
+        BitSet fields=new BitSet();
+        fields.set(0);
+        BitIndex index=BitIndexing.getBestIndex(fields,new BitSet(),new BitSet(),new BitSet());
+        byte[] encoded=Encoding.encode(13l);
+        EncodedPredicate predicate=EncodedPredicate.scalar(0,EncodedPredicate.Comparison.EQUALS,12l);
+        Assert.assertTrue(predicate.matches(index,encoded,0,encoded.length));
+    }
+
+    private static BitIndex scalarIndex(){
+        BitSet fields=new BitSet();
+        fields.set(0);
+        return BitIndexing.getBestIndex(fields,(BitSet)fields.clone(),new BitSet(),new BitSet());
+    }
+
+    private static long pick(Random random){
+        switch(random.nextInt(3)){
+            case 0: return INTERESTING_VALUES[random.nextInt(INTERESTING_VALUES.length)];
+            case 1: return random.nextInt(1000)-500;
+            default: return random.nextLong();
+        }
+    }
+
+    private static boolean expected(EncodedPredicate.Comparison comparison,int compare){
+        switch(comparison){
+            case EQUALS: return compare==0;
+            case NOT_EQUALS: return compare!=0;
+            case LESS_THAN: return compare<0;
+            case LESS_OR_EQUAL: return compare<=0;
+            case GREATER_THAN: return compare>0;
+            default: return compare>=0;
+        }
+    }
+}
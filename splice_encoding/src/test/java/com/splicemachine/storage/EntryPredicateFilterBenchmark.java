@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.storage;
+
+import com.carrotsearch.hppc.BitSet;
+import com.splicemachine.encoding.MultiFieldDecoder;
+import com.splicemachine.encoding.MultiFieldEncoder;
+import com.splicemachine.storage.index.BitIndex;
+import com.splicemachine.storage.index.BitIndexing;
+import com.splicemachine.utils.kryo.KryoPool;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares three ways of reading two integer columns out of wide rows, while keeping only
+ * the rows whose second column is below a threshold (which roughly 10% of rows are):
+ *
+ * <ol>
+ *     <li>decoding every field of the row, then filtering</li>
+ *     <li>projecting the two columns through an {@link EntryPredicateFilter}, then filtering the decoded values</li>
+ *     <li>projecting the two columns with the comparison pushed into the filter as an {@link EncodedPredicate}</li>
+ * </ol>
+ *
+ * Usage: {@code EntryPredicateFilterBenchmark [rows] [iterations]}. Each iteration is run over rows of 10, 100 and 500 columns.
+ */
+public class EntryPredicateFilterBenchmark{
+    private static final int[] COLUMN_COUNTS=new int[]{10,100,500};
+    private static final long THRESHOLD=100;
+
+    public static void main(String...args) throws Exception{
+        int numRows=args.length>0?Integer.parseInt(args[0]):100000;
+        int iterations=args.length>1?Integer.parseInt(args[1]):10;
+
+        KryoPool kryoPool=new KryoPool(10);
+        for(int numCols:COLUMN_COUNTS){
+            byte[][] rows=generateRows(kryoPool,numRows,numCols,new Random(0l));
+            int filterColumn=numCols/2;
+            BitSet projection=new BitSet(numCols);
+            projection.set(0);
+            projection.set(filterColumn);
+            EntryPredicateFilter projecting=new EntryPredicateFilter(projection,false);
+            EntryPredicateFilter pushed=new EntryPredicateFilter(projection,false,new EncodedPredicate[]{
+                    EncodedPredicate.scalar(filterColumn,EncodedPredicate.Comparison.LESS_THAN,THRESHOLD)
+            });
+
+            for(int i=0;i<iterations;i++){
+                long s=System.nanoTime();
+                long expected=decodeAll(rows,numCols,filterColumn);
+                long decodeTime=System.nanoTime()-s;
+
+                s=System.nanoTime();
+                long projected=filter(rows,projecting);
+                long projectTime=System.nanoTime()-s;
+
+                s=System.nanoTime();
+                long pushedDown=filter(rows,pushed);
+                long pushedTime=System.nanoTime()-s;
+                if(projected!=expected || pushedDown!=expected)
+                    throw new IllegalStateException("Expected a checksum of "+expected+", but projection found "+projected+" and pushdown found "+pushedDown);
+
+                System.out.printf("iteration=%d columns=%d rows=%d decodeAll rows/sec=%.0f projected rows/sec=%.0f pushedDown rows/sec=%.0f%n",
+                        i,numCols,numRows,numRows/(decodeTime/1e9d),numRows/(projectTime/1e9d),numRows/(pushedTime/1e9d));
+            }
+        }
+    }
+
+    private static long decodeAll(byte[][] rows,int numCols,int filterColumn) throws IOException{
+        EntryDecoder decoder=new EntryDecoder();
+        long[] values=new long[numCols];
+        long checksum=0;
+        for(byte[] row:rows){
+            decoder.set(row);
+            MultiFieldDecoder fieldDecoder=decoder.getEntryDecoder();
+            for(int i=0;i<numCols;i++){
+                values[i]=fieldDecoder.decodeNextLong();
+            }
+            if(values[filterColumn]<THRESHOLD)
+                checksum+=values[0];
+        }
+        return checksum;
+    }
+
+    private static long filter(byte[][] rows,EntryPredicateFilter predicateFilter) throws IOException{
+        EntryDecoder decoder=new EntryDecoder();
+        EntryAccumulator accumulator=predicateFilter.newAccumulator();
+        long checksum=0;
+        for(byte[] row:rows){
+            accumulator.reset();
+            decoder.set(row);
+            if(!predicateFilter.match(decoder,accumulator)) continue;
+            MultiFieldDecoder fieldDecoder=MultiFieldDecoder.wrap(accumulator.finish());
+            long first=fieldDecoder.decodeNextLong();
+            if(fieldDecoder.decodeNextLong()<THRESHOLD)
+                checksum+=first;
+        }
+        return checksum;
+    }
+
+    private static byte[][] generateRows(KryoPool kryoPool,int numRows,int numCols,Random random) throws IOException{
+        BitSet fields=new BitSet(numCols);
+        fields.set(0,numCols);
+        BitIndex index=BitIndexing.getBestIndex(fields,(BitSet)fields.clone(),new BitSet(),new BitSet());
+        EntryEncoder encoder=EntryEncoder.create(kryoPool,index);
+        byte[][] rows=new byte[numRows][];
+        for(int r=0;r<numRows;r++){
+            encoder.reset(index);
+            MultiFieldEncoder fieldEncoder=encoder.getEntryEncoder();
+            for(int c=0;c<numCols;c++){
+                fieldEncoder.encodeNext((long)random.nextInt(1000));
+            }
+            rows[r]=encoder.encode();
+        }
+        return rows;
+    }
+}
@@ -140,4 +140,105 @@ public class EntryPredicateFilterTest {
         Assert.assertEquals("Incorrect string returned!",testType1,decodedField);
         Assert.assertTrue("more than one field available in field decoder!",fieldDecoder.nextIsNull());
     }
+
+    @Test
+    public void testEncodedPredicateRejectsRowBeforeAccumulating() throws Exception {
+        BitSet fieldsToReturn = new BitSet(3);
+        fieldsToReturn.set(0);
+        fieldsToReturn.set(2);
+        EntryPredicateFilter predicateFilter = new EntryPredicateFilter(fieldsToReturn,true,new EncodedPredicate[]{
+                EncodedPredicate.scalar(2,EncodedPredicate.Comparison.GREATER_THAN,10l)
+        });
+
+        EntryAccumulator accumulator = predicateFilter.newAccumulator();
+        Assert.assertFalse("matched a row which fails the predicate!",predicateFilter.match(decoder(scalarRow(1,"one",5)),accumulator));
+        Assert.assertFalse("accumulated fields of a rejected row!",accumulator.hasField(0));
+
+        accumulator.reset();
+        Assert.assertTrue("did not match!",predicateFilter.match(decoder(scalarRow(2,"two",11)),accumulator));
+        byte[] retBytes = accumulator.finish();
+        int i;
+        //noinspection StatementWithEmptyBody
+        for(i=0;i<retBytes.length&&retBytes[i]!=0x00;i++);
+        BitIndex returnedIndex = BitIndexing.wrap(retBytes,0,i);
+        Assert.assertTrue("Index returned incorrectly!",returnedIndex.isSet(0));
+        Assert.assertFalse("Index has too many fields!",returnedIndex.isSet(1));
+        Assert.assertTrue("Index returned incorrectly!",returnedIndex.isSet(2));
+
+        MultiFieldDecoder fieldDecoder = MultiFieldDecoder.wrap(retBytes, i + 1, retBytes.length - (i + 1));
+        Assert.assertEquals(2l,fieldDecoder.decodeNextLong());
+        Assert.assertEquals(11l,fieldDecoder.decodeNextLong());
+    }
+
+    @Test
+    public void testEncodedPredicateIgnoresFieldsFromOlderVersions() throws Exception {
+        BitSet fieldsToReturn = new BitSet(3);
+        fieldsToReturn.set(0);
+        fieldsToReturn.set(2);
+        EntryPredicateFilter predicateFilter = new EntryPredicateFilter(fieldsToReturn,true,new EncodedPredicate[]{
+                EncodedPredicate.scalar(2,EncodedPredicate.Comparison.EQUALS,7l)
+        });
+        EntryAccumulator accumulator = predicateFilter.newAccumulator();
+        //the newest version of the row has the matching value
+        Assert.assertTrue(predicateFilter.match(decoder(scalarRow(1,"one",7)),accumulator));
+        //so the older value of the same field no longer matters
+        Assert.assertTrue(predicateFilter.match(decoder(scalarRow(1,"one",8)),accumulator));
+    }
+
+    @Test
+    public void testEncodedPredicateIgnoresMissingFields() throws Exception {
+        BitSet fieldsToReturn = new BitSet(3);
+        fieldsToReturn.set(0);
+        fieldsToReturn.set(2);
+        EntryPredicateFilter predicateFilter = new EntryPredicateFilter(fieldsToReturn,true,new EncodedPredicate[]{
+                EncodedPredicate.scalar(2,EncodedPredicate.Comparison.EQUALS,7l)
+        });
+
+        BitSet setCols = new BitSet(1);
+        setCols.set(0);
+        BitIndex index = BitIndexing.getBestIndex(setCols,(BitSet)setCols.clone(),new BitSet(),new BitSet());
+        EntryEncoder encoder = EntryEncoder.create(defaultPool,index);
+        encoder.getEntryEncoder().encodeNext(1l);
+
+        EntryAccumulator accumulator = predicateFilter.newAccumulator();
+        Assert.assertTrue(predicateFilter.match(decoder(encoder.encode()),accumulator));
+        Assert.assertTrue(accumulator.hasField(0));
+    }
+
+    @Test
+    public void testEncodedPredicatesSurviveSerialization() throws Exception {
+        BitSet fieldsToReturn = new BitSet(3);
+        fieldsToReturn.set(2);
+        EntryPredicateFilter predicateFilter = new EntryPredicateFilter(fieldsToReturn,true,new EncodedPredicate[]{
+                EncodedPredicate.scalar(2,EncodedPredicate.Comparison.LESS_OR_EQUAL,-300l),
+                EncodedPredicate.scalar(0,EncodedPredicate.Comparison.NOT_EQUALS,Long.MAX_VALUE)
+        });
+        EntryPredicateFilter copy = EntryPredicateFilter.fromBytes(predicateFilter.toBytes());
+        Assert.assertTrue(copy.indexReturned());
+        Assert.assertEquals(2,copy.getPredicates().length);
+        Assert.assertEquals(2,copy.getPredicates()[0].getPosition());
+        Assert.assertEquals(EncodedPredicate.Comparison.LESS_OR_EQUAL,copy.getPredicates()[0].getComparison());
+        Assert.assertEquals(EncodedPredicate.Comparison.NOT_EQUALS,copy.getPredicates()[1].getComparison());
+
+        Assert.assertEquals(0,EntryPredicateFilter.fromBytes(new EntryPredicateFilter(fieldsToReturn,false).toBytes()).getPredicates().length);
+        Assert.assertEquals(0,copy.withoutPredicates().getPredicates().length);
+    }
+
+    private static byte[] scalarRow(long first,String second,long third) throws Exception {
+        BitSet setCols = new BitSet(3);
+        setCols.set(0,3);
+        BitSet scalarFields = new BitSet(3);
+        scalarFields.set(0);
+        scalarFields.set(2);
+        BitIndex index = BitIndexing.getBestIndex(setCols,scalarFields,new BitSet(),new BitSet());
+        EntryEncoder encoder = EntryEncoder.create(defaultPool,index);
+        encoder.getEntryEncoder().encodeNext(first).encodeNext(second).encodeNext(third);
+        return encoder.encode();
+    }
+
+    private static EntryDecoder decoder(byte[] data){
+        EntryDecoder decoder = new EntryDecoder();
+        decoder.set(data);
+        return decoder;
+    }
 }
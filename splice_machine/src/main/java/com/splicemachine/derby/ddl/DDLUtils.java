@@ -49,6 +49,7 @@ import com.splicemachine.derby.impl.store.access.SpliceTransactionManager;
 import com.splicemachine.derby.jdbc.SpliceTransactionResourceImpl;
 import com.splicemachine.pipeline.ErrorState;
 import com.splicemachine.pipeline.Exceptions;
+import com.splicemachine.pipeline.foreignkey.ForeignKeyParentKeyCache;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.protobuf.ProtoUtil;
 import com.splicemachine.si.api.txn.Txn;
@@ -344,6 +345,10 @@ public class DDLUtils {
                 if(td==null) // Table Descriptor transaction never committed
                     return;
                 dm.invalidateFor(td,DependencyManager.DROP_TABLE,transactionResource.getLcc());
+                // the table's primary key and unique indexes can no longer be referenced by foreign keys
+                for(ConglomerateDescriptor cd:td.getConglomerateDescriptors()){
+                    ForeignKeyParentKeyCache.evict(cd.getConglomerateNumber());
+                }
             }finally{
                if(prepared)
                    transactionResource.close();
@@ -42,6 +42,22 @@ public abstract class DistributedJob implements Serializable{
 
     public abstract String getName();
 
+    /**
+     * @return the kind of work this job does, which decides how soon the OLAP server runs it, and how many jobs
+     * like it may run at once
+     */
+    public OlapJobType getJobType() {
+        return OlapJobType.OTHER;
+    }
+
+    /**
+     * @return the user or connection on whose behalf this job runs, or {@code null} if it runs on behalf of the
+     * system. When jobs have to queue, the OLAP server shares its capacity fairly between owners.
+     */
+    public String getOwner() {
+        return null;
+    }
+
     public final String getUniqueName() {
         return getName() + "-" + uuid.toString();
     }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.iapi.sql.olap;
+
+/**
+ * The kinds of work which the OLAP server runs. When the server is busy, queued jobs
+ * are started in order of their priority, highest (0) first.
+ */
+public enum OlapJobType{
+    /** Queries, whose users are waiting on the results */
+    QUERY(0),
+    /** Index creation and table transformations on behalf of a DDL statement */
+    DDL(1),
+    OTHER(1),
+    /** Statistics collections, which are often run in bulk by administrators */
+    STATISTICS(2),
+    /** Background compactions, which no user is directly waiting on */
+    COMPACTION(2);
+
+    private final int priority;
+
+    OlapJobType(int priority){
+        this.priority=priority;
+    }
+
+    public int getPriority(){
+        return priority;
+    }
+}
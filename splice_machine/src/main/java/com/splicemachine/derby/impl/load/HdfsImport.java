@@ -77,7 +77,13 @@ import javax.annotation.Nullable;
  * needs to update Secondary indices, validate constraints, and so on and so forth which
  * are not executed when bulk-loading HFiles.
  * <p/>
- * <p>Thus, we must parallelize insertions as much as possible, while still maintaining
+ * <p>{@link #BULK_IMPORT_HFILE SYSCS_UTIL.BULK_IMPORT_HFILE} is the exception: it encodes the index rows itself,
+ * and writes the table and its indexes straight into HFiles, which are then loaded into their regions. It is
+ * meant for loading large amounts of data into tables without triggers or foreign keys, and it only checks
+ * key uniqueness amongst the imported rows, not against rows which are already in the table. Tables with a
+ * primary key or unique index therefore only take this path while they are empty.
+ * <p/>
+ * <p>Otherwise, we must parallelize insertions as much as possible, while still maintaining
  * as much data locality as possible. However, it is not an inherent given that any
  * block location has a corresponding region, nor is it given that any given RegionServer
  * has blocks contained on it. To make matters worse, when a RegionServer <em>does</em>
@@ -194,6 +200,7 @@ public class HdfsImport {
                  charset,
                  true,
                  false,
+                 null,
                  results);
     }
 
@@ -274,6 +281,73 @@ public class HdfsImport {
                  charset,
                  false,
                  false,
+                 null,
+                 results);
+    }
+
+    /**
+     * The SYSCS_UTIL.BULK_IMPORT_HFILE system procedure imports data to a subset of columns in a table by writing
+     * HFiles directly, rather than by sending every row through the write pipeline.
+     * <p/>
+     * The syntax and usage of this procedure is identical to the syntax and usage of the
+     * {@link #IMPORT_DATA, SYSCS_UTIL.IMPORT_DATA} system procedure, with the addition of a directory in which
+     * the HFiles are staged. The input is sampled to choose split points for the table and each of its indexes,
+     * then the rows and their index rows are sorted by region and written into HFiles, which are loaded into
+     * their regions once every file has been written. The imported rows become visible when the import commits.
+     * <p/>
+     * Bad records are handled as in {@code IMPORT_DATA}: rows which fail a check constraint or can't be encoded
+     * are written to the bad record file, and none of their index rows are written. Duplicate keys among the
+     * imported rows are only found once the rows have been written into HFiles, so they can't be skipped.
+     * <p/>
+     * Tables with triggers or foreign keys, tables with a primary key or unique index which already hold
+     * rows, and tables with a primary key or unique index whose import allows bad records, are imported
+     * through the write pipeline as usual. A table with a primary key or unique index is not locked while it is
+     * bulk imported, so if another transaction writes to it before the import commits, the import fails with
+     * a write-write conflict.
+     *
+     * @param bulkImportDirectory The directory in which HFiles are staged before they are loaded. It must exist
+     *                            and be writable.
+     * @see #IMPORT_DATA
+     */
+    public static void BULK_IMPORT_HFILE(String schemaName,
+                                         String tableName,
+                                         String insertColumnList,
+                                         String fileName,
+                                         String columnDelimiter,
+                                         String characterDelimiter,
+                                         String timestampFormat,
+                                         String dateFormat,
+                                         String timeFormat,
+                                         long badRecordsAllowed,
+                                         String badRecordDirectory,
+                                         String oneLineRecords,
+                                         String charset,
+                                         String bulkImportDirectory,
+                                         ResultSet[] results
+    ) throws SQLException {
+        if (bulkImportDirectory == null)
+            throw PublicAPI.wrapStandardException(ErrorState.DATA_FILE_NOT_FOUND.newException(bulkImportDirectory));
+        try {
+            ImportUtils.validateWritable(bulkImportDirectory, true);
+        } catch (StandardException se) {
+            throw PublicAPI.wrapStandardException(se);
+        }
+        doImport(schemaName,
+                 tableName,
+                 insertColumnList,
+                 fileName,
+                 columnDelimiter,
+                 characterDelimiter,
+                 timestampFormat,
+                 dateFormat,
+                 timeFormat,
+                 badRecordsAllowed,
+                 badRecordDirectory,
+                 oneLineRecords,
+                 charset,
+                 false,
+                 false,
+                 bulkImportDirectory,
                  results);
     }
 
@@ -293,6 +367,7 @@ public class HdfsImport {
                                  String charset,
                                  boolean isUpsert,
                                  boolean isCheckScan,
+                                 String bulkImportDirectory,
                                  ResultSet[] results) throws SQLException {
         if (LOG.isTraceEnabled())
             SpliceLogUtils.trace(LOG, "doImport {schemaName=%s, tableName=%s, insertColumnList=%s, fileName=%s, " +
@@ -381,7 +456,8 @@ public class HdfsImport {
             ColumnInfo columnInfo = new ColumnInfo(conn, schemaName, tableName, insertColumnList);
             String insertSql = "INSERT INTO " + entityName + "(" + columnInfo.getInsertColumnNames() + ") " +
                 "--splice-properties insertMode=" + (isUpsert ? "UPSERT" : "INSERT") + ", statusDirectory=" +
-                badRecordDirectory + ", badRecordsAllowed=" + badRecordsAllowed + "\n" +
+                badRecordDirectory + ", badRecordsAllowed=" + badRecordsAllowed +
+                (bulkImportDirectory == null ? "" : ", bulkImportDirectory=" + bulkImportDirectory) + "\n" +
                 " SELECT "+
                     generateColumnList(((EmbedConnection)conn).getLanguageConnection(),schemaName,tableName,insertColumnList) +
                     " from " +
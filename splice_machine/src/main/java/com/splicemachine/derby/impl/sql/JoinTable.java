@@ -17,9 +17,11 @@ package com.splicemachine.derby.impl.sql;
 
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * @author Scott Fines
@@ -27,12 +29,49 @@ import java.util.Iterator;
  */
 public interface JoinTable extends AutoCloseable{
 
-    interface Factory{
+    interface Factory extends AutoCloseable{
         JoinTable newTable();
+
+        /**
+         * @return an estimate of the number of bytes of memory held by this factory's table
+         */
+        long estimatedSize();
+
+        /**
+         * @param outerKeyColumns the positions of the join keys in the outer rows which will be checked
+         *                        against the filter
+         * @param maxKeys the largest number of distinct keys which are worth building a filter for
+         * @param falsePositiveRate the desired probability that a missing key is reported as present
+         * @return a Bloom filter over the join keys held in this table, or {@code null} if the table holds
+         * more than {@code maxKeys} distinct keys, or can't list its keys without reading them back from disk
+         */
+        JoinKeyFilter joinKeyFilter(int[] outerKeyColumns,int maxKeys,double falsePositiveRate);
+
+        /**
+         * Release any resources (such as spill files) which are held by the factory. Tables
+         * may not be created after the factory has been closed.
+         */
+        @Override
+        void close();
     }
 
     Iterator<ExecRow> fetchInner(ExecRow outer) throws IOException, StandardException;
 
+    /**
+     * @return the number of outer rows which should be passed to {@link #prefetch(List)} at a time, or 0
+     * if this table is just as cheap to probe one outer row at a time.
+     */
+    int prefetchSize();
+
+    /**
+     * Look up the inner rows of several outer rows together. Each outer row must still be passed to
+     * {@link #fetchInner(ExecRow)}, which then returns the rows found here rather than probing again.
+     * Rows prefetched by an earlier call which have not been fetched yet are discarded.
+     *
+     * @param outerRows the outer rows which are about to be fetched, in the order they will be fetched
+     */
+    void prefetch(List<ExecRow> outerRows) throws IOException, StandardException;
+
     @Override
     void close();
 }
@@ -19,6 +19,7 @@ import com.splicemachine.concurrent.Clock;
 import com.splicemachine.db.iapi.services.io.ArrayUtil;
 import com.splicemachine.ddl.DDLMessage;
 import com.splicemachine.derby.iapi.sql.olap.DistributedJob;
+import com.splicemachine.derby.iapi.sql.olap.OlapJobType;
 import com.splicemachine.derby.iapi.sql.olap.OlapStatus;
 import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
 import com.splicemachine.derby.stream.iapi.ScanSetBuilder;
@@ -64,6 +65,16 @@ public class DistributedPopulateIndexJob extends DistributedJob implements Exter
         return null;
     }
 
+    @Override
+    public OlapJobType getJobType() {
+        return OlapJobType.DDL;
+    }
+
+    @Override
+    public String getOwner() {
+        return jobGroup;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeObject(scanSetBuilder);
@@ -15,49 +15,114 @@
 
 package com.splicemachine.derby.impl.sql.execute.operations;
 
+import com.splicemachine.access.api.SConfiguration;
 import org.spark_project.guava.cache.Cache;
 import org.spark_project.guava.cache.CacheBuilder;
+import org.spark_project.guava.cache.RemovalListener;
+import org.spark_project.guava.cache.RemovalNotification;
+import org.spark_project.guava.cache.Weigher;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
+import com.splicemachine.hbase.jmx.JMXUtils;
 import com.splicemachine.pipeline.Exceptions;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.stream.Stream;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a Cache of records for use in a Broadcast Join.
  *
+ * The cache is bounded by the estimated memory held by its tables, rather than by the number of
+ * tables: tables are weighed by their estimated size, and evicted least-recently-used first once the
+ * memory budget is exceeded. A table which is evicted while it is still in use is released only when
+ * its last user closes it. Each table may use at most a fixed share of the budget, so that one large
+ * table can't push every other table out of the cache; an inner side which would not fit into its share
+ * is spilled to disk by the loader (see {@link SpilledJoinTable}), rather than being held in memory.
+ *
  * @author Scott Fines
  *         Date: 10/27/15
  */
-public class BroadcastJoinCache{
+public class BroadcastJoinCache implements BroadcastJoinCacheStatistics{
+    /*
+     * Weights are measured in KB, since the cache only allows int weights
+     */
+    private static final long WEIGHT_UNIT=1024L;
+    /*
+     * The number of tables which may use their full share of the budget at the same time
+     */
+    static final int TABLE_SHARES=4;
+
     private final Cache<Long,ReferenceCountingFactory> cache;
     private final JoinTableLoader tableLoader;
+    private final long memoryBudget;
+    private final long tableMemoryLimit;
+    private final File spillDirectory;
+
+    private final AtomicLong evictions = new AtomicLong(0L);
+    private final AtomicLong spills = new AtomicLong(0L);
+    private final AtomicLong residentBytes = new AtomicLong(0L);
 
     interface JoinTableLoader{
+        /**
+         * @param memoryLimit the number of bytes of memory the table may use. Tables which would exceed
+         *                    this are spilled to disk.
+         * @param spillDirectory the directory to place spilled tables in
+         */
         JoinTable.Factory load(Callable<Stream<ExecRow>> streamLoader,
                                int[] innerHashKeys,
                                int[] outerHashKeys,
-                               ExecRow outerTemplateRow) throws ExecutionException;
+                               ExecRow outerTemplateRow,
+                               long memoryLimit,
+                               File spillDirectory) throws ExecutionException;
     }
 
-    public BroadcastJoinCache(){
-       this(ByteBufferMapTableLoader.INSTANCE);
+    public BroadcastJoinCache(SConfiguration config){
+        this(config.isBroadcastJoinOffHeap()?OffHeapTableLoader.INSTANCE:ByteBufferMapTableLoader.INSTANCE,
+                config.getBroadcastJoinCacheMemory(),
+                new File(config.getBroadcastJoinSpillDirectory()));
     }
 
-    public BroadcastJoinCache(JoinTableLoader tableLoader){
+    public BroadcastJoinCache(JoinTableLoader tableLoader,long memoryBudget,File spillDirectory){
         this.tableLoader = tableLoader;
+        this.memoryBudget = memoryBudget;
+        this.tableMemoryLimit = Math.max(1L,memoryBudget/TABLE_SHARES);
+        this.spillDirectory = spillDirectory;
         this.cache =CacheBuilder.newBuilder()
-                .maximumSize(1000)
+                .maximumWeight(Math.max(1L,memoryBudget/WEIGHT_UNIT))
+                .weigher(new Weigher<Long, ReferenceCountingFactory>(){
+                    @Override
+                    public int weigh(Long key,ReferenceCountingFactory value){
+                        return value.weight;
+                    }
+                })
+                .removalListener(new RemovalListener<Long, ReferenceCountingFactory>(){
+                    @Override
+                    public void onRemoval(RemovalNotification<Long, ReferenceCountingFactory> notification){
+                        if(notification.wasEvicted())
+                            evictions.incrementAndGet();
+                        ReferenceCountingFactory factory=notification.getValue();
+                        if(factory!=null)
+                            factory.markRemoved();
+                    }
+                })
                 .expireAfterAccess(2,TimeUnit.SECONDS)
-                .softValues()
+                .recordStats()
                 .build();
     }
 
@@ -68,9 +133,16 @@ public class BroadcastJoinCache{
                          ExecRow leftTemplateRow) throws IOException, StandardException{
         try{
             Loader callable=new Loader(operationId,tableLoader,rightHashKeys,leftHashKeys,leftTemplateRow,loader);
-            ReferenceCountingFactory joinTable=cache.get(operationId,callable);
-            joinTable.refCount.incrementAndGet();
-            return joinTable;
+            while(true){
+                ReferenceCountingFactory joinTable=cache.get(operationId,callable);
+                /*
+                 * A table we loaded ourselves already holds our reference, even if it was evicted
+                 * straight away. Otherwise, if the table was removed and released between the lookup and now
+                 * then it can't be used any longer, and looking it up again will load a fresh copy.
+                 */
+                if(joinTable==callable.loaded || joinTable.acquire())
+                    return joinTable;
+            }
         }catch(ExecutionException e){
             Throwable c = e.getCause();
             if(c instanceof StandardException)
@@ -81,6 +153,21 @@ public class BroadcastJoinCache{
         }
     }
 
+    public void registerJMX(MBeanServer mbs) throws MalformedObjectNameException, NotCompliantMBeanException, MBeanRegistrationException{
+        try{
+            mbs.registerMBean(this,new ObjectName(JMXUtils.BROADCAST_JOIN_CACHE));
+        }catch(InstanceAlreadyExistsException ignored){
+            //another cache has already been registered in this JVM
+        }
+    }
+
+    @Override public long getHitCount(){ return cache.stats().hitCount(); }
+    @Override public long getMissCount(){ return cache.stats().missCount(); }
+    @Override public long getEvictionCount(){ return evictions.get(); }
+    @Override public long getSpillCount(){ return spills.get(); }
+    @Override public long getResidentBytes(){ return residentBytes.get(); }
+    @Override public long getMemoryBudget(){ return memoryBudget; }
+
     private class Loader implements Callable<ReferenceCountingFactory>{
         private final JoinTableLoader loader;
         private final int[] innerHashKeys;
@@ -89,6 +176,7 @@ public class BroadcastJoinCache{
         private final Callable<Stream<ExecRow>> streamLoader;
 
         private final Long operationId;
+        private ReferenceCountingFactory loaded;
 
         public Loader(Long operationId,
                       JoinTableLoader loader,
@@ -106,8 +194,11 @@ public class BroadcastJoinCache{
 
         @Override
         public ReferenceCountingFactory call() throws Exception{
-            JoinTable.Factory load=loader.load(streamLoader,innerHashKeys,outerHashKeys,outerTemplateRow);
-            return new ReferenceCountingFactory(load,operationId);
+            JoinTable.Factory load=loader.load(streamLoader,innerHashKeys,outerHashKeys,outerTemplateRow,tableMemoryLimit,spillDirectory);
+            if(load instanceof SpilledJoinTable.Factory)
+                spills.incrementAndGet();
+            loaded=new ReferenceCountingFactory(load,operationId);
+            return loaded;
         }
     }
 
@@ -126,21 +217,42 @@ public class BroadcastJoinCache{
             return delegate.fetchInner(outer);
         }
 
+        @Override
+        public int prefetchSize(){
+            return delegate.prefetchSize();
+        }
+
+        @Override
+        public void prefetch(List<ExecRow> outerRows) throws IOException, StandardException{
+            delegate.prefetch(outerRows);
+        }
+
         @Override
         public void close(){
-            refFactory.markClosed();
             delegate.close();
+            refFactory.markClosed();
         }
     }
 
     private class ReferenceCountingFactory implements JoinTable.Factory{
         private final JoinTable.Factory delegate;
         private final Long id;
-        private AtomicInteger refCount = new AtomicInteger(0);
+        private final long size;
+        private final int weight;
+        /*
+         * The following are guarded by this factory's monitor. The reference count starts out
+         * holding the reference of the caller which loaded the table.
+         */
+        private int refCount = 1;
+        private boolean removed = false;
+        private boolean released = false;
 
         public ReferenceCountingFactory(JoinTable.Factory delegate,Long id){
             this.delegate=delegate;
             this.id=id;
+            this.size=delegate.estimatedSize();
+            this.weight=(int)Math.min(Integer.MAX_VALUE,size/WEIGHT_UNIT+1);
+            residentBytes.addAndGet(size);
         }
 
         @Override
@@ -148,10 +260,52 @@ public class BroadcastJoinCache{
             return new ReferenceCountedJoinTable(delegate.newTable(),this);
         }
 
+        @Override
+        public long estimatedSize(){
+            return size;
+        }
+
+        @Override
+        public JoinKeyFilter joinKeyFilter(int[] outerKeyColumns,int maxKeys,double falsePositiveRate){
+            return delegate.joinKeyFilter(outerKeyColumns,maxKeys,falsePositiveRate);
+        }
+
+        @Override
+        public void close(){
+            markClosed();
+        }
+
+        synchronized boolean acquire(){
+            if(released) return false;
+            refCount++;
+            return true;
+        }
+
         public void markClosed(){
-            int refC=refCount.decrementAndGet();
-            if(refC<=0)
+            boolean invalidate;
+            synchronized(this){
+                refCount--;
+                invalidate = refCount<=0;
+            }
+            if(invalidate)
                 cache.invalidate(id);
+            releaseIfUnused();
+        }
+
+        void markRemoved(){
+            synchronized(this){
+                removed=true;
+            }
+            releaseIfUnused();
+        }
+
+        private void releaseIfUnused(){
+            synchronized(this){
+                if(released || !removed || refCount>0) return;
+                released=true;
+            }
+            residentBytes.addAndGet(-size);
+            delegate.close();
         }
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import javax.management.MXBean;
+
+/**
+ * Exposes the state of the broadcast join table cache via JMX.
+ */
+@MXBean
+public interface BroadcastJoinCacheStatistics{
+
+    /**
+     * @return the number of lookups which found an already loaded table
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups which had to load the table
+     */
+    long getMissCount();
+
+    /**
+     * @return the number of tables which were removed to keep the cache within its memory budget
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the number of inner tables which were too large for memory, and were spilled to disk
+     */
+    long getSpillCount();
+
+    /**
+     * @return the estimated number of bytes held by the tables currently in the cache
+     */
+    long getResidentBytes();
+
+    /**
+     * @return the maximum number of bytes which the cache may hold
+     */
+    long getMemoryBudget();
+}
@@ -15,8 +15,13 @@
 
 package com.splicemachine.derby.impl.sql.execute.operations;
 
+import com.splicemachine.EngineDriver;
 import com.splicemachine.derby.iapi.sql.execute.*;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyRowFilter;
 import com.splicemachine.derby.stream.function.*;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.stream.function.broadcast.AbstractBroadcastJoinFlatMapFunction;
 import com.splicemachine.derby.stream.function.broadcast.BroadcastJoinFlatMapFunction;
 import com.splicemachine.derby.stream.function.broadcast.CogroupBroadcastJoinFunction;
 import com.splicemachine.derby.stream.function.broadcast.SubtractByKeyBroadcastJoinFunction;
@@ -27,6 +32,7 @@ import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.services.loader.GeneratedMethod;
 import com.splicemachine.db.iapi.sql.Activation;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.pipeline.Exceptions;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.utils.SpliceLogUtils;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -107,6 +113,7 @@ public class BroadcastJoinOperation extends JoinOperation{
     protected List<ExecRow> rights;
     protected long sequenceId;
     protected static final String NAME = BroadcastJoinOperation.class.getSimpleName().replaceAll("Operation","");
+    private static final double JOIN_KEY_FILTER_FALSE_POSITIVE_RATE = 0.01d;
 
 	@Override
 	public String getName() {
@@ -177,8 +184,9 @@ public class BroadcastJoinOperation extends JoinOperation{
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public DataSet<LocatedRow> getDataSet(DataSetProcessor dsp) throws StandardException {
         OperationContext operationContext = dsp.createOperationContext(this);
-        DataSet<LocatedRow> leftDataSet = leftResultSet.getDataSet(dsp);
         DataSet<LocatedRow> rightDataSet = rightResultSet.getDataSet(dsp);
+        pushJoinKeyFilter(dsp,operationContext);
+        DataSet<LocatedRow> leftDataSet = leftResultSet.getDataSet(dsp);
 
 //        operationContext.pushScope();
         leftDataSet = leftDataSet.map(new CountJoinedLeftFunction(operationContext));
@@ -234,6 +242,57 @@ public class BroadcastJoinOperation extends JoinOperation{
         return result;
     }
 
+    /**
+     * For inner joins over a table scan, build a Bloom filter over the inner join keys and push it into the
+     * outer scan, so that outer rows which cannot possibly match are discarded as soon as they are read,
+     * instead of being materialized only for the join to throw them away.
+     *
+     * The filter is built from the keys of the join table itself, which is loaded here into the broadcast
+     * join cache. When the join runs in this JVM, the table is kept cached and picked up from there by the
+     * join, so the inner side is only read once. Spark joins load their tables on the executors, so the table
+     * is released again as soon as the filter has been built. The filter travels with the outer scan, and is
+     * checked where the outer rows are read (see {@link JoinKeyRowFilter}). The filter is only worth building
+     * when the outer side is larger than the inner side, and when the inner side is small enough to keep the
+     * filter compact.
+     */
+    private void pushJoinKeyFilter(DataSetProcessor dsp,OperationContext operationContext) throws StandardException{
+        if(!(leftResultSet instanceof TableScanOperation))
+            return;
+        TableScanOperation outerScan=(TableScanOperation)leftResultSet;
+        outerScan.setJoinKeyFilter(null); //clear anything left over from a previous execution
+        if(isOuterJoin || notExistsRightSide)
+            return; //outer rows without a match are still returned
+        int maxKeys=EngineDriver.driver().getConfiguration().getBroadcastJoinBloomFilterMaxKeys();
+        double innerRows=rightResultSet.getEstimatedRowCount();
+        if(maxKeys<=0 || innerRows>maxKeys || leftResultSet.getEstimatedRowCount()<=innerRows)
+            return;
+
+        JoinTable.Factory joinTable;
+        try{
+            joinTable=AbstractBroadcastJoinFlatMapFunction.joinTableFactory(this,operationContext);
+        }catch(IOException e){
+            throw Exceptions.parseException(e);
+        }
+        JoinKeyFilter filter;
+        if(dsp.getType()==DataSetProcessor.Type.LOCAL){
+            //keep the table cached until this operation is closed, so the join doesn't have to load it again
+            registerCloseable(joinTable);
+            filter=joinTable.joinKeyFilter(leftHashKeys,maxKeys,JOIN_KEY_FILTER_FALSE_POSITIVE_RATE);
+        }else{
+            //the join itself loads the table on the executors, so there's no point in holding on to it here
+            try{
+                filter=joinTable.joinKeyFilter(leftHashKeys,maxKeys,JOIN_KEY_FILTER_FALSE_POSITIVE_RATE);
+            }finally{
+                joinTable.close();
+            }
+        }
+        if(filter==null)
+            return; //the estimate was wrong, and the filter would be too large to be worthwhile
+        if (LOG.isDebugEnabled())
+            SpliceLogUtils.debug(LOG, "pushing join key filter (%d bytes) into outer scan",filter.sizeInBytes());
+        outerScan.setJoinKeyFilter(filter);
+    }
+
     public String getPrettyExplainPlan() {
         StringBuffer sb = new StringBuffer();
         sb.append(super.getPrettyExplainPlan());
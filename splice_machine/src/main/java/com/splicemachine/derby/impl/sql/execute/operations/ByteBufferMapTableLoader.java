@@ -16,8 +16,10 @@
 package com.splicemachine.derby.impl.sql.execute.operations;
 
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
 import com.splicemachine.derby.impl.sql.JoinTable;
 import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.EntryDataHash;
 import com.splicemachine.derby.utils.marshall.KeyEncoder;
 import com.splicemachine.derby.utils.marshall.NoOpPostfix;
 import com.splicemachine.derby.utils.marshall.NoOpPrefix;
@@ -25,7 +27,9 @@ import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
 import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
 import com.splicemachine.stream.Stream;
 import com.splicemachine.stream.StreamException;
+import com.splicemachine.utils.IntArrays;
 import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -42,14 +46,28 @@ import java.util.concurrent.ExecutionException;
 class ByteBufferMapTableLoader implements BroadcastJoinCache.JoinTableLoader{
     public static BroadcastJoinCache.JoinTableLoader INSTANCE = new ByteBufferMapTableLoader();
 
+    /*
+     * A rough allowance for the HashMap entry, ByteBuffer and List that hold each distinct key
+     */
+    private static final int ENTRY_OVERHEAD=128;
+
     private ByteBufferMapTableLoader(){} //singleton class
 
     @Override
-    public JoinTable.Factory load(Callable<Stream<ExecRow>> streamLoader,int[] innerHashKeys,int[] outerHashKeys, ExecRow outerTemplateRow) throws ExecutionException{
+    public JoinTable.Factory load(Callable<Stream<ExecRow>> streamLoader,
+                                  int[] innerHashKeys,
+                                  int[] outerHashKeys,
+                                  ExecRow outerTemplateRow,
+                                  long memoryLimit,
+                                  File spillDirectory) throws ExecutionException{
         Map<ByteBuffer, List<ExecRow>> table=new HashMap<>();
+        long estimatedSize=0L;
 
         DescriptorSerializer[] innerSerializers=null;
         KeyEncoder innerKeyEncoder=null;
+        ExecRow innerTemplateRow=null;
+        EntryDataHash innerRowEncoder=null;
+        SpilledJoinTable.Builder spill=null;
 
         try(Stream<ExecRow> innerRows=streamLoader.call()){
             ExecRow right;
@@ -58,23 +76,73 @@ class ByteBufferMapTableLoader implements BroadcastJoinCache.JoinTableLoader{
                     innerSerializers=VersionedSerializers.latestVersion(false).getSerializers(right);
                     innerKeyEncoder=new KeyEncoder(NoOpPrefix.INSTANCE,
                             BareKeyHash.encoder(innerHashKeys,null,innerSerializers),NoOpPostfix.INSTANCE);
+                    innerTemplateRow=right.getNewNullRow();
+                }
+
+                byte[] keyBytes=innerKeyEncoder.getKey(right);
+                if(spill!=null){
+                    innerRowEncoder.setRow(right);
+                    spill.add(keyBytes,innerRowEncoder.encode());
+                    continue;
                 }
 
-                ByteBuffer key=ByteBuffer.wrap(innerKeyEncoder.getKey(right));
+                ByteBuffer key=ByteBuffer.wrap(keyBytes);
                 List<ExecRow> rows=table.get(key);
                 if(rows==null){
                     rows=new ArrayList<>(1);
                     table.put(key,rows);
+                    estimatedSize+=keyBytes.length+ENTRY_OVERHEAD;
                 }
                 rows.add(right.getClone());
+                estimatedSize+=estimateSize(right);
+
+                if(estimatedSize>memoryLimit){
+                    /*
+                     * The inner side is too large to hold in memory, so move what we have so far out to
+                     * disk, and send everything else straight there.
+                     */
+                    DescriptorSerializer[] rowSerializers=VersionedSerializers.latestVersion(true).getSerializers(right);
+                    innerRowEncoder=new EntryDataHash(IntArrays.count(right.nColumns()),null,rowSerializers);
+                    spill=new SpilledJoinTable.Builder(spillDirectory);
+                    for(Map.Entry<ByteBuffer,List<ExecRow>> entry:table.entrySet()){
+                        byte[] spilledKey=entry.getKey().array();
+                        for(ExecRow row:entry.getValue()){
+                            innerRowEncoder.setRow(row);
+                            spill.add(spilledKey,innerRowEncoder.encode());
+                        }
+                    }
+                    table=null;
+                }
+            }
+            if(spill!=null){
+                JoinTable.Factory factory=spill.build(innerTemplateRow,outerHashKeys,outerTemplateRow,memoryLimit);
+                spill=null;
+                return factory;
             }
         }catch(StreamException e){
            throw new ExecutionException(e.getCause());
         }catch(Exception e){
             if(e instanceof ExecutionException) throw (ExecutionException)e;
             else throw new ExecutionException(e);
+        }finally{
+            if(spill!=null)
+                spill.abort();
+            if(innerRowEncoder!=null){
+                try{
+                    innerRowEncoder.close();
+                }catch(Exception ignored){ }
+            }
         }
 
-        return new ByteBufferMappedJoinTable.Factory(table,outerHashKeys,outerTemplateRow);
+        return new ByteBufferMappedJoinTable.Factory(table,estimatedSize,outerHashKeys,outerTemplateRow);
+    }
+
+    static long estimateSize(ExecRow row){
+        long size=ENTRY_OVERHEAD;
+        for(DataValueDescriptor dvd:row.getRowArray()){
+            if(dvd!=null)
+                size+=dvd.estimateMemoryUsage();
+        }
+        return size;
     }
 }
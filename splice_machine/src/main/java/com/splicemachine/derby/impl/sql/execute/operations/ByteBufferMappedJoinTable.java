@@ -18,6 +18,7 @@ package com.splicemachine.derby.impl.sql.execute.operations;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
 import com.splicemachine.derby.utils.marshall.BareKeyHash;
 import com.splicemachine.derby.utils.marshall.KeyEncoder;
 import com.splicemachine.derby.utils.marshall.NoOpPostfix;
@@ -61,13 +62,19 @@ class ByteBufferMappedJoinTable implements JoinTable{
     //nothing to close
     @Override public void close(){}
 
+    //probing this table is cheap, so there is nothing to gain by prefetching
+    @Override public int prefetchSize(){ return 0; }
+    @Override public void prefetch(List<ExecRow> outerRows){ }
+
     static class Factory implements JoinTable.Factory{
         private final Map<ByteBuffer,List<ExecRow>> table;
+        private final long estimatedSize;
         private final int[] outerHashKeys;
         private final ExecRow outerTemplateRow;
 
-        public Factory(Map<ByteBuffer, List<ExecRow>> table,int[] outerHashKeys,ExecRow outerTemplateRow){
+        public Factory(Map<ByteBuffer, List<ExecRow>> table,long estimatedSize,int[] outerHashKeys,ExecRow outerTemplateRow){
             this.table=table;
+            this.estimatedSize=estimatedSize;
             this.outerHashKeys=outerHashKeys;
             this.outerTemplateRow=outerTemplateRow;
         }
@@ -76,5 +83,26 @@ class ByteBufferMappedJoinTable implements JoinTable{
         public JoinTable newTable(){
             return new ByteBufferMappedJoinTable(table,outerHashKeys,outerTemplateRow);
         }
+
+        @Override
+        public long estimatedSize(){
+            return estimatedSize;
+        }
+
+        @Override
+        public JoinKeyFilter joinKeyFilter(int[] outerKeyColumns,int maxKeys,double falsePositiveRate){
+            if(table.size()>maxKeys)
+                return null;
+            JoinKeyFilter filter=new JoinKeyFilter(outerKeyColumns,table.size(),falsePositiveRate);
+            for(ByteBuffer key:table.keySet()){
+                byte[] bytes=new byte[key.remaining()];
+                key.duplicate().get(bytes);
+                filter.add(bytes);
+            }
+            return filter;
+        }
+
+        //nothing to close
+        @Override public void close(){}
     }
 }
@@ -19,11 +19,12 @@ import org.spark_project.guava.collect.Lists;
 import com.splicemachine.access.api.PartitionFactory;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
-import com.splicemachine.db.iapi.types.RowLocation;
 import com.splicemachine.derby.impl.store.access.hbase.HBaseRowLocation;
+import com.splicemachine.derby.stream.iapi.OperationContext;
 import com.splicemachine.derby.utils.marshall.KeyDecoder;
 import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
 import com.splicemachine.pipeline.Exceptions;
+import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.api.data.TxnOperationFactory;
 import com.splicemachine.si.api.txn.TxnView;
 import com.splicemachine.si.constants.SIConstants;
@@ -35,10 +36,14 @@ import org.apache.log4j.Logger;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -46,14 +51,25 @@ import java.util.concurrent.Future;
  * Utility for executing "look-ahead" index lookups, where the index lookup is backgrounded,
  * while other processes occur on the caller thread.
  *
+ * Index rows are read from the source in batches. The base rows for each batch are grouped by the region
+ * of the base table that holds them, and each group is fetched by a separate bulk get, so that a batch
+ * which touches many regions is fetched region by region, in parallel. The size of each batch adapts to
+ * how long recent lookups have taken (see {@link LookupBatchSizer}).
+ *
+ * When the reader is <em>ordered</em>, rows are returned in the order of the index. Otherwise, the rows
+ * of each group are returned as soon as that group has been fetched, so that a single slow region does not
+ * hold up the rows of every other region.
+ *
  * @author Scott Fines
  *         Created on: 9/4/13
  */
 public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow>{
     protected static Logger LOG=Logger.getLogger(IndexRowReader.class);
     private final ExecutorService lookupService;
-    private final int batchSize;
+    private final CompletionService<LookupResult> completionService;
+    private final LookupBatchSizer batchSizer;
     private final int numBlocks;
+    private final boolean ordered;
     private final ExecRow outputTemplate;
     private final long mainTableConglomId;
     private final byte[] predicateFilterBytes;
@@ -63,10 +79,20 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
     private final TxnView txn;
     private final TxnOperationFactory operationFactory;
     private final PartitionFactory tableFactory;
+    private final OperationContext operationContext;
 
     private List<Pair<LocatedRow, DataResult>> currentResults;
-    private List<Future<List<Pair<LocatedRow, DataResult>>>> resultFutures;
-    private boolean populated=false;
+    private int currentPosition;
+    /*
+     * Batches which have been submitted, in index order. Only used when ordered
+     */
+    private final LinkedList<LookupBatch> pendingBatches=new LinkedList<>();
+    /*
+     * The number of batches which have not yet been completely returned. Only used when not ordered
+     */
+    private int outstandingBatches;
+    private boolean sourceExhausted;
+    private byte[][] regionStartKeys;
     private EntryDecoder entryDecoder;
     protected Iterator<LocatedRow> sourceIterator;
 
@@ -79,27 +105,32 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
                    TxnView txn,
                    int lookupBatchSize,
                    int numConcurrentLookups,
+                   long lookupTargetLatencyNanos,
+                   boolean ordered,
                    long mainTableConglomId,
                    byte[] predicateFilterBytes,
                    KeyHashDecoder keyDecoder,
                    KeyHashDecoder rowDecoder,
                    int[] indexCols,
                    TxnOperationFactory operationFactory,
-                   PartitionFactory tableFactory){
+                   PartitionFactory tableFactory,
+                   OperationContext operationContext){
         this.lookupService=lookupService;
+        this.completionService=ordered?null:new ExecutorCompletionService<LookupResult>(lookupService);
         this.sourceIterator=sourceIterator;
         this.outputTemplate=outputTemplate;
         this.txn=txn;
-        batchSize=lookupBatchSize;
-        this.numBlocks=numConcurrentLookups;
+        this.batchSizer=new LookupBatchSizer(lookupBatchSize,lookupTargetLatencyNanos);
+        this.numBlocks=Math.max(numConcurrentLookups,1);
+        this.ordered=ordered;
         this.mainTableConglomId=mainTableConglomId;
         this.predicateFilterBytes=predicateFilterBytes;
         this.tableFactory=tableFactory;
         this.keyDecoder=new KeyDecoder(keyDecoder,0);
         this.rowDecoder=rowDecoder;
         this.indexCols=indexCols;
-        this.resultFutures=Lists.newArrayListWithCapacity(numConcurrentLookups);
         this.operationFactory = operationFactory;
+        this.operationContext=operationContext;
     }
 
     public void close() throws IOException{
@@ -127,14 +158,15 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
     @Override
     public boolean hasNext(){
         try{
-            if(currentResults==null || currentResults.size()<=0)
+            if(currentResults==null || currentPosition>=currentResults.size())
                 getMoreData();
 
-            if(currentResults==null || currentResults.size()<=0){
+            if(currentResults==null || currentPosition>=currentResults.size()){
                 return false; // No More Data
             }
 
-            Pair<LocatedRow, DataResult> next=currentResults.remove(0);
+            Pair<LocatedRow, DataResult> next=currentResults.get(currentPosition);
+            currentResults.set(currentPosition++,null); //let the row go once it has been returned
             //merge the results
             LocatedRow nextScannedRow=next.getFirst();
             DataResult nextFetchedData=next.getSecond();
@@ -153,15 +185,43 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
         }
     }
 
+    /**
+     * @return the number of rows which will be read from the source for the next batch of lookups
+     */
+    int currentBatchSize(){
+        return batchSizer.batchSize();
+    }
+
 
     /**********************************************************************************************************************************/
         /*private helper methods*/
     private void getMoreData() throws StandardException, IOException{
-        //read up to batchSize rows from the source, then submit them to the background thread for processing
+        currentResults=null;
+        currentPosition=0;
+        while(currentResults==null || currentResults.isEmpty()){
+            //keep up to numBlocks batches in flight, so that lookups proceed while the caller is busy with earlier rows
+            while(!sourceExhausted && batchesInFlight()<numBlocks){
+                submitBatch();
+            }
+            if(batchesInFlight()<=0)
+                return; // No More Data
+            waitForLookupCompletion();
+        }
+    }
+
+    private int batchesInFlight(){
+        return ordered?pendingBatches.size():outstandingBatches;
+    }
+
+    private void submitBatch() throws StandardException, IOException{
+        //read a batch of rows from the source, then submit them to the background threads for processing
+        int batchSize=batchSizer.batchSize();
         List<LocatedRow> sourceRows=Lists.newArrayListWithCapacity(batchSize);
         for(int i=0;i<batchSize;i++){
-            if(!sourceIterator.hasNext())
+            if(!sourceIterator.hasNext()){
+                sourceExhausted=true;
                 break;
+            }
             LocatedRow next=sourceIterator.next();
             for(int index=0;index<indexCols.length;index++){
                 if(indexCols[index]!=-1){
@@ -171,25 +231,121 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
             HBaseRowLocation rl=(HBaseRowLocation)next.getRow().getColumn(next.getRow().nColumns());
             sourceRows.add(new LocatedRow(HBaseRowLocation.deepClone(rl), outputTemplate.getClone()));
         }
-        if(sourceRows.size()>0){
-            //submit to the background thread
-            Lookup task=new Lookup(sourceRows);
-            resultFutures.add(lookupService.submit(task));
+        if(sourceRows.isEmpty())
+            return;
+
+        LookupBatch batch=new LookupBatch(sourceRows.size());
+        for(Lookup lookup : groupByRegion(batch,sourceRows)){
+            if(ordered)
+                batch.lookups.add(lookupService.submit(lookup));
+            else
+                completionService.submit(lookup);
+            batch.remaining++;
+        }
+        if(ordered)
+            pendingBatches.addLast(batch);
+        else
+            outstandingBatches++;
+    }
+
+    /*
+     * Split the rows of a batch into one lookup for each region of the base table which the rows live in.
+     */
+    private List<Lookup> groupByRegion(LookupBatch batch,List<LocatedRow> sourceRows) throws StandardException{
+        byte[][] startKeys=regionStartKeys();
+        int numRows=sourceRows.size();
+        if(startKeys.length<=1){
+            int[] positions=new int[numRows];
+            for(int i=0;i<numRows;i++){
+                positions[i]=i;
+            }
+            return Lists.newArrayList(new Lookup(batch,sourceRows,positions));
         }
 
-        //if there is only one submitted future, call this again to set off an additional background process
-        if(resultFutures.size()<numBlocks && sourceRows.size()==batchSize)
-            getMoreData();
-        else if(resultFutures.size()>0){
-            waitForBlockCompletion();
+        int[] regions=new int[numRows];
+        int[] regionCounts=new int[startKeys.length];
+        for(int i=0;i<numRows;i++){
+            regions[i]=regionFor(startKeys,sourceRows.get(i).getRowLocation().getBytes());
+            regionCounts[regions[i]]++;
+        }
+        List<Lookup> lookups=new ArrayList<>();
+        int[][] positions=new int[startKeys.length][];
+        List<List<LocatedRow>> rows=new ArrayList<>(startKeys.length);
+        for(int r=0;r<startKeys.length;r++){
+            positions[r]=new int[regionCounts[r]];
+            rows.add(regionCounts[r]>0?new ArrayList<LocatedRow>(regionCounts[r]):null);
+        }
+        for(int i=0;i<numRows;i++){
+            List<LocatedRow> regionRows=rows.get(regions[i]);
+            positions[regions[i]][regionRows.size()]=i;
+            regionRows.add(sourceRows.get(i));
         }
+        for(int r=0;r<startKeys.length;r++){
+            if(regionCounts[r]>0)
+                lookups.add(new Lookup(batch,rows.get(r),positions[r]));
+        }
+        return lookups;
     }
 
-    private void waitForBlockCompletion() throws StandardException, IOException{
-        //wait for the first future to return correctly or error-out
+    /*
+     * The start keys of the base table's regions, sorted. The region boundaries are only used to group the
+     * rows of each lookup, so it doesn't matter if they go out of date; the bulk get still finds every row.
+     */
+    private byte[][] regionStartKeys(){
+        if(regionStartKeys!=null) return regionStartKeys;
+        try(Partition table=tableFactory.getTable(Long.toString(mainTableConglomId))){
+            List<Partition> regions=table.subPartitions();
+            byte[][] startKeys=new byte[regions.size()][];
+            for(int i=0;i<startKeys.length;i++){
+                startKeys[i]=regions.get(i).getStartKey();
+            }
+            Arrays.sort(startKeys,Bytes.startComparator);
+            regionStartKeys=startKeys;
+        }catch(Exception e){
+            LOG.warn("Unable to determine the regions of conglomerate "+mainTableConglomId+", base rows will not be grouped by region",e);
+            regionStartKeys=new byte[0][];
+        }
+        return regionStartKeys;
+    }
+
+    private static int regionFor(byte[][] startKeys,byte[] rowKey){
+        //find the last region which starts at or before rowKey
+        int low=0;
+        int high=startKeys.length-1;
+        while(low<high){
+            int mid=(low+high+1)>>>1;
+            byte[] start=startKeys[mid];
+            if(start==null || start.length==0 || Bytes.BASE_COMPARATOR.compare(start,rowKey)<=0)
+                low=mid;
+            else
+                high=mid-1;
+        }
+        return low;
+    }
+
+    private void waitForLookupCompletion() throws StandardException, IOException{
         try{
-            Future<List<Pair<LocatedRow, DataResult>>> future=resultFutures.remove(0);
-            currentResults=future.get();
+            if(ordered){
+                //wait for every lookup of the oldest batch, and put its rows back into index order
+                LookupBatch batch=pendingBatches.removeFirst();
+                @SuppressWarnings("unchecked") Pair<LocatedRow, DataResult>[] results=new Pair[batch.size];
+                for(Future<LookupResult> future : batch.lookups){
+                    LookupResult result=future.get();
+                    recordLookup(result);
+                    int[] positions=result.lookup.positions;
+                    for(int i=0;i<positions.length;i++){
+                        results[positions[i]]=result.rows.get(i);
+                    }
+                }
+                currentResults=Arrays.asList(results);
+            }else{
+                //take whichever lookup finishes first
+                LookupResult result=completionService.take().get();
+                recordLookup(result);
+                if(--result.lookup.batch.remaining==0)
+                    outstandingBatches--;
+                currentResults=result.rows;
+            }
         }catch(InterruptedException e){
             throw new InterruptedIOException(e.getMessage());
         }catch(ExecutionException e){
@@ -199,15 +355,51 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
         }
     }
 
-    public class Lookup implements Callable<List<Pair<LocatedRow, DataResult>>>{
+    private void recordLookup(LookupResult result){
+        batchSizer.record(result.latencyNanos);
+        if(operationContext!=null)
+            operationContext.recordBaseRowLookups(result.rows.size(),result.latencyNanos);
+    }
+
+    private static class LookupBatch{
+        private final int size;
+        private final List<Future<LookupResult>> lookups=new ArrayList<>();
+        private int remaining;
+
+        LookupBatch(int size){
+            this.size=size;
+        }
+    }
+
+    private static class LookupResult{
+        private final Lookup lookup;
+        private final List<Pair<LocatedRow, DataResult>> rows;
+        private final long latencyNanos;
+
+        LookupResult(Lookup lookup,List<Pair<LocatedRow, DataResult>> rows,long latencyNanos){
+            this.lookup=lookup;
+            this.rows=rows;
+            this.latencyNanos=latencyNanos;
+        }
+    }
+
+    public class Lookup implements Callable<LookupResult>{
+        private final LookupBatch batch;
         private final List<LocatedRow> sourceRows;
+        /*
+         * The position of each row within its batch
+         */
+        private final int[] positions;
 
-        public Lookup(List<LocatedRow> sourceRows){
+        Lookup(LookupBatch batch,List<LocatedRow> sourceRows,int[] positions){
+            this.batch=batch;
             this.sourceRows=sourceRows;
+            this.positions=positions;
         }
 
         @Override
-        public List<Pair<LocatedRow, DataResult>> call() throws Exception{
+        public LookupResult call() throws Exception{
+            long start=System.nanoTime();
             List<byte[]> rowKeys = new ArrayList<>(sourceRows.size());
             for(LocatedRow sourceRow : sourceRows){
                 byte[] row=sourceRow.getRowLocation().getBytes();
@@ -225,7 +417,7 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
                         throw new IllegalStateException("Programmer error: incompatible iterator sizes!");
                     locations.add(Pair.newPair(sourceRow,results.next().getClone()));
                 }
-                return locations;
+                return new LookupResult(this,locations,System.nanoTime()-start);
             }
         }
     }
@@ -23,6 +23,7 @@ import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.services.io.ArrayUtil;
 import com.splicemachine.db.iapi.services.io.FormatableBitSet;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.stream.iapi.OperationContext;
 import com.splicemachine.derby.stream.output.WriteReadUtils;
 import com.splicemachine.derby.utils.marshall.EntryDataDecoder;
 import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
@@ -50,6 +51,8 @@ public class IndexRowReaderBuilder implements Externalizable{
     private Iterator<LocatedRow> source;
     private int lookupBatchSize;
     private int numConcurrentLookups=-1;
+    private long lookupTargetLatency=-1L;
+    private boolean ordered=true;
     private ExecRow outputTemplate;
     private long mainTableConglomId=-1;
     private int[] mainTableRowDecodingMap;
@@ -67,6 +70,7 @@ public class IndexRowReaderBuilder implements Externalizable{
     private String tableVersion;
     private int[] mainTableKeyColumnTypes;
     private TxnView txn;
+    private OperationContext operationContext;
 
     @SuppressFBWarnings(value = "EI_EXPOSE_REP2",justification = "Intentional")
     public IndexRowReaderBuilder indexColumns(int[] indexCols){
@@ -101,6 +105,28 @@ public class IndexRowReaderBuilder implements Externalizable{
         return this;
     }
 
+    /**
+     * @param lookupTargetLatency the latency (in milliseconds) which each bulk fetch of base rows should aim for,
+     *                            or zero or less to always fetch {@link #lookupBatchSize(int)} rows at a time
+     */
+    public IndexRowReaderBuilder lookupTargetLatency(long lookupTargetLatency){
+        this.lookupTargetLatency=lookupTargetLatency;
+        return this;
+    }
+
+    /**
+     * @param ordered whether base rows must be returned in the same order as the index rows they were looked up for
+     */
+    public IndexRowReaderBuilder ordered(boolean ordered){
+        this.ordered=ordered;
+        return this;
+    }
+
+    public IndexRowReaderBuilder operationContext(OperationContext operationContext){
+        this.operationContext=operationContext;
+        return this;
+    }
+
     public IndexRowReaderBuilder outputTemplate(ExecRow outputTemplate){
         this.outputTemplate=outputTemplate;
         return this;
@@ -216,13 +242,16 @@ public class IndexRowReaderBuilder implements Externalizable{
                 txn,
                 lookupBatchSize,
                 Math.max(numConcurrentLookups,0),
+                TimeUnit.MILLISECONDS.toNanos(lookupTargetLatency),
+                ordered,
                 mainTableConglomId,
                 epfBytes,
                 keyDecoder,
                 rowDecoder,
                 indexCols,
                 txnOperationFactory,
-                tableFactory);
+                tableFactory,
+                operationContext);
     }
 
     @Override
@@ -249,6 +278,8 @@ public class IndexRowReaderBuilder implements Externalizable{
             ArrayUtil.writeIntArray(out,indexCols);
             out.writeUTF(tableVersion);
             ArrayUtil.writeIntArray(out,mainTableKeyColumnTypes);
+            out.writeLong(lookupTargetLatency);
+            out.writeBoolean(ordered);
         }catch(StandardException se){
             throw new IOException(se);
         }
@@ -273,5 +304,7 @@ public class IndexRowReaderBuilder implements Externalizable{
         indexCols=ArrayUtil.readIntArray(in);
         tableVersion=in.readUTF();
         mainTableKeyColumnTypes=ArrayUtil.readIntArray(in);
+        lookupTargetLatency=in.readLong();
+        ordered=in.readBoolean();
     }
 }
@@ -18,6 +18,7 @@ package com.splicemachine.derby.impl.sql.execute.operations;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -284,7 +285,9 @@ public class IndexRowToBaseRowOperation extends SpliceBaseOperation{
                     .mainTableRowDecodingMap(operationInformation.getBaseColumnMap())
                     .mainTableAccessedRowColumns(getMainTableRowColumns())
                     .numConcurrentLookups((getEstimatedRowCount()>2*indexBatchSize?lookupBlocks:-1))
-                    .lookupBatchSize(indexBatchSize);
+                    .lookupBatchSize(indexBatchSize)
+                    .lookupTargetLatency(configuration.getIndexLookupTargetLatency())
+                    .ordered(isLookupOrderRequired());
         }
         OperationContext context = dsp.createOperationContext(this);
         readerBuilder.transaction(context.getTxn());
@@ -293,6 +296,51 @@ public class IndexRowToBaseRowOperation extends SpliceBaseOperation{
             .filter(new IndexToBaseRowFilterPredicateFunction(context), true, true, "Apply Filter");
     }
 
+    /*
+     * Base rows only need to come back in index order if something above us depends on that order. We look
+     * at each operation between us and the top of the tree: one which sorts or hashes its input (as every
+     * side of a merge sort join, and the right side of a broadcast join, do) makes the order irrelevant, while
+     * a merge join depends on it. Anything else passes our order through, and once we reach the top, we
+     * must assume the order matters, since the optimizer may have eliminated a sort because of it.
+     */
+    private boolean isLookupOrderRequired(){
+        SpliceOperation root=(SpliceOperation)activation.getResultSet();
+        List<SpliceOperation> path=new ArrayList<>();
+        if(root==null || !findPath(root,path))
+            return true;
+        for(int i=path.size()-2;i>=0;i--){
+            SpliceOperation ancestor=path.get(i);
+            SpliceOperation child=path.get(i+1);
+            if(ancestor instanceof MergeJoinOperation)
+                return true;
+            if(ancestor instanceof SortOperation
+                    || ancestor instanceof GroupedAggregateOperation
+                    || ancestor instanceof DMLWriteOperation
+                    || ancestor instanceof MergeSortJoinOperation
+                    || (ancestor instanceof BroadcastJoinOperation && ((JoinOperation)ancestor).getRightOperation()==child))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Fill path with the operations from op down to this one
+     */
+    private boolean findPath(SpliceOperation op,List<SpliceOperation> path){
+        path.add(op);
+        if(op==this)
+            return true;
+        List<SpliceOperation> subOperations=op.getSubOperations();
+        if(subOperations!=null){
+            for(SpliceOperation subOperation : subOperations){
+                if(subOperation!=null && findPath(subOperation,path))
+                    return true;
+            }
+        }
+        path.remove(path.size()-1);
+        return false;
+    }
+
     private FormatableBitSet getMainTableAccessedKeyColumns() throws StandardException {
         int[] keyColumnEncodingOrder = getColumnOrdering();
         FormatableBitSet accessedKeys = new FormatableBitSet(keyColumnEncodingOrder.length);
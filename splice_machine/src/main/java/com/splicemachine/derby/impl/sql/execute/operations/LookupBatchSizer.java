@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Chooses how many base rows an {@link IndexRowReader} should fetch in each bulk lookup, based on how
+ * long recent lookups have taken.
+ *
+ * The batch size is halved whenever a lookup takes longer than the target latency, and grown by a quarter
+ * of the configured size whenever a lookup completes in less than half of it, so that it backs off
+ * quickly from slow or overloaded regions and recovers gradually once they speed up again. It stays
+ * between 1/16th and 4 times the configured batch size.
+ *
+ * A target latency of zero or less disables this, and the configured batch size is always used.
+ */
+@ThreadSafe
+class LookupBatchSizer{
+    private static final int MIN_BATCH_SIZE=16;
+
+    private final int minSize;
+    private final int maxSize;
+    private final int increment;
+    private final long targetLatencyNanos;
+    private volatile int batchSize;
+
+    LookupBatchSizer(int configuredBatchSize,long targetLatencyNanos){
+        this.batchSize=Math.max(1,configuredBatchSize);
+        this.minSize=Math.min(batchSize,Math.max(MIN_BATCH_SIZE,batchSize/16));
+        this.maxSize=Math.max(batchSize,batchSize*4);
+        this.increment=Math.max(1,batchSize/4);
+        this.targetLatencyNanos=targetLatencyNanos;
+    }
+
+    /**
+     * @return the number of rows to put into the next lookup
+     */
+    int batchSize(){
+        return batchSize;
+    }
+
+    /**
+     * Record a completed lookup.
+     *
+     * @param latencyNanos how long the fetch took
+     */
+    synchronized void record(long latencyNanos){
+        if(targetLatencyNanos<=0) return; //adaptive sizing is disabled
+        int current=batchSize;
+        if(latencyNanos>targetLatencyNanos)
+            batchSize=Math.max(minSize,current/2);
+        else if(latencyNanos<targetLatencyNanos/2)
+            batchSize=Math.min(maxSize,current+increment);
+    }
+}
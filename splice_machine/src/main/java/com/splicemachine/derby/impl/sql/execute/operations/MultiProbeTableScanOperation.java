@@ -230,7 +230,7 @@ public class MultiProbeTableScanOperation extends TableScanOperation  {
                     .tableDisplayName(tableDisplayName)
                     .activation(activation)
                     .transaction(txn)
-                    .scan(scan)
+                    .scan(withJoinKeyFilter(scan))
                     .template(currentTemplate)
                     .tableVersion(tableVersion)
                     .indexName(indexName)
@@ -244,6 +244,7 @@ public class MultiProbeTableScanOperation extends TableScanOperation  {
                     .rowDecodingMap(getRowDecodingMap())
                     .baseColumnMap(baseColumnMap)
                     .optionalProbeValue(probeValues[i])
+                    .joinKeyFilter(joinKeyFilter)
                     .buildDataSet(this);
             dataSet = dataSet.union(ds);
             i++;
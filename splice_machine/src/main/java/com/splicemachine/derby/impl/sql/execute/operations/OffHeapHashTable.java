@@ -0,0 +1,357 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.hash.Hash32;
+import com.splicemachine.hash.HashFunctions;
+import com.splicemachine.utils.UnsafeUtil;
+import sun.misc.Unsafe;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A multi-valued hash table from encoded keys to encoded values, whose contents
+ * live entirely in off-heap memory.
+ *
+ * Entries are appended to fixed-size slabs of native memory. Each entry is laid out as
+ *
+ * <pre>
+ *     [hash (4 bytes)][keyLength (4 bytes)][valueLength (4 bytes)][next (8 bytes)][key][value]
+ * </pre>
+ *
+ * and is addressed by a packed long of (slab index,offset). The probe table is itself a block
+ * of native memory holding entry addresses, using linear probing on the hash of the key. Only the first entry
+ * for a given key is held in the probe table (and only that entry stores the key bytes); any
+ * further entries with the same key are chained from it through the {@code next} pointer.
+ *
+ * The result is that the java heap holds only a handful of longs no matter
+ * how many entries are present, which keeps large build sides out of the garbage collector's way.
+ * The memory is allocated and freed through {@link UnsafeUtil}, so it is never reclaimed by the garbage
+ * collector: every table must be given back with {@link #release()}.
+ *
+ * Writing is not thread safe. Once the table has been built, any number of threads
+ * may read from it concurrently, as long as each uses its own {@link Reader}.
+ */
+@NotThreadSafe
+class OffHeapHashTable{
+    static final int DEFAULT_SLAB_SIZE=1<<20; //1 MB
+    private static final int DEFAULT_INITIAL_SLOTS=1<<10;
+    private static final float LOAD_FACTOR=0.75f;
+
+    private static final int HASH_OFFSET=0;
+    private static final int KEY_LENGTH_OFFSET=4;
+    private static final int VALUE_LENGTH_OFFSET=8;
+    private static final int NEXT_OFFSET=12;
+    private static final int HEADER_SIZE=20;
+
+    private static final long NO_ENTRY=-1L;
+
+    private static final Unsafe UNSAFE=UnsafeUtil.unsafe();
+    private static final long BYTE_ARRAY_OFFSET=UnsafeUtil.byteArrayOffset();
+
+    private final Hash32 hashFunction=HashFunctions.murmur3(0);
+    private final int slabSize;
+    private long[] slabs=new long[16];
+    private int numSlabs;
+    private int currentPosition;
+    private int currentCapacity;
+
+    /*
+     * The probe table. Each slot holds (entry address + 1), so that an all-zero slot is empty
+     */
+    private long slots;
+    private int numSlots;
+    private int slotMask;
+    private int resizeThreshold;
+
+    private int numKeys;
+    private long numEntries;
+    private long slabBytes;
+
+    OffHeapHashTable(){
+        this(DEFAULT_SLAB_SIZE,DEFAULT_INITIAL_SLOTS);
+    }
+
+    OffHeapHashTable(int slabSize,int initialSlots){
+        this.slabSize=slabSize;
+        int s=1;
+        while(s<initialSlots)
+            s<<=1;
+        allocateSlots(s);
+    }
+
+    /**
+     * Add an entry to the table. Entries with a key which is already present are
+     * chained to the existing key, and will be returned along with it.
+     *
+     * @param key the encoded key
+     * @param value the encoded value
+     */
+    void put(byte[] key,byte[] value){
+        if(numKeys>=resizeThreshold)
+            resize();
+
+        int hash=hashFunction.hash(key,0,key.length);
+        int pos=hash&slotMask;
+        while(true){
+            long slot=UNSAFE.getLong(slots+((long)pos<<3));
+            if(slot==0){
+                long address=append(hash,key,value);
+                UNSAFE.putLong(slots+((long)pos<<3),address+1);
+                numKeys++;
+                break;
+            }
+            long head=slot-1;
+            if(keyMatches(pointer(head),hash,key)){
+                /*
+                 * Duplicate key, so link the new entry in directly behind the head. The head
+                 * keeps the key bytes, so the chained entry doesn't need its own copy.
+                 */
+                long address=append(hash,null,value);
+                long headNext=pointer(head)+NEXT_OFFSET;
+                UNSAFE.putLong(pointer(address)+NEXT_OFFSET,UNSAFE.getLong(headNext));
+                UNSAFE.putLong(headNext,address);
+                break;
+            }
+            pos=(pos+1)&slotMask;
+        }
+        numEntries++;
+    }
+
+    /**
+     * @return the number of distinct keys in the table
+     */
+    int size(){
+        return numKeys;
+    }
+
+    /**
+     * @return the total number of entries (including entries with duplicate keys) in the table
+     */
+    long numEntries(){
+        return numEntries;
+    }
+
+    /**
+     * @return the number of bytes of off-heap memory allocated by this table
+     */
+    long memoryUsage(){
+        return ((long)numSlots<<3)+slabBytes;
+    }
+
+    /**
+     * Free the off-heap memory held by this table. Neither the table nor any of its readers may be used
+     * once it has been released. Releasing a table more than once is harmless.
+     */
+    void release(){
+        for(int i=0;i<numSlabs;i++){
+            UNSAFE.freeMemory(slabs[i]);
+        }
+        Arrays.fill(slabs,0,numSlabs,0l);
+        numSlabs=0;
+        currentPosition=0;
+        currentCapacity=0;
+        slabBytes=0;
+        if(slots!=0)
+            UNSAFE.freeMemory(slots);
+        slots=0;
+        numSlots=0;
+        slotMask=0;
+        resizeThreshold=0;
+        numKeys=0;
+        numEntries=0;
+    }
+
+    /**
+     * Visit every entry in the table. Entries which share a key are visited with the same key array.
+     *
+     * @param visitor the visitor to call for each entry
+     * @throws IOException if the visitor throws an error
+     */
+    void forEach(EntryVisitor visitor) throws IOException{
+        Reader reader=reader();
+        for(int i=0;i<numSlots;i++){
+            long slot=UNSAFE.getLong(slots+((long)i<<3));
+            if(slot==0) continue;
+            long head=slot-1;
+            byte[] key=readKey(head);
+            for(long entry=head;entry>=0;entry=reader.next(entry)){
+                byte[] value=new byte[reader.valueLength(entry)];
+                reader.readValue(entry,value);
+                visitor.visit(key,value);
+            }
+        }
+    }
+
+    interface EntryVisitor{
+        void visit(byte[] key,byte[] value) throws IOException;
+    }
+
+    /**
+     * Visit each distinct key in the table once, without reading any of the values.
+     *
+     * @param visitor the visitor to call for each key
+     */
+    void forEachKey(KeyVisitor visitor){
+        for(int i=0;i<numSlots;i++){
+            long slot=UNSAFE.getLong(slots+((long)i<<3));
+            if(slot==0) continue;
+            visitor.visit(readKey(slot-1));
+        }
+    }
+
+    interface KeyVisitor{
+        void visit(byte[] key);
+    }
+
+    /**
+     * @return a new reader over this table. Readers are cheap to create, but are
+     * not thread safe themselves.
+     */
+    Reader reader(){
+        return new Reader();
+    }
+
+    /**
+     * Read-only view of the table. Readers only read the table's memory, so separate readers
+     * can safely be used from different threads once the table has been built.
+     */
+    @NotThreadSafe
+    class Reader{
+
+        /**
+         * @param key the key to find
+         * @return the address of the first entry for {@code key}, or a negative number
+         * if the key is not present in the table.
+         */
+        long find(byte[] key){
+            int hash=hashFunction.hash(key,0,key.length);
+            int pos=hash&slotMask;
+            while(true){
+                long slot=UNSAFE.getLong(slots+((long)pos<<3));
+                if(slot==0) return NO_ENTRY;
+                long head=slot-1;
+                if(keyMatches(pointer(head),hash,key))
+                    return head;
+                pos=(pos+1)&slotMask;
+            }
+        }
+
+        /**
+         * @param entry the address of an entry
+         * @return the address of the next entry with the same key, or a negative number
+         * if there are no more entries.
+         */
+        long next(long entry){
+            return UNSAFE.getLong(pointer(entry)+NEXT_OFFSET);
+        }
+
+        int valueLength(long entry){
+            return UNSAFE.getInt(pointer(entry)+VALUE_LENGTH_OFFSET);
+        }
+
+        /**
+         * Copy the value of the entry into {@code destination}, which must be at least
+         * {@link #valueLength(long)} bytes long.
+         */
+        void readValue(long entry,byte[] destination){
+            long pointer=pointer(entry);
+            int keyLength=UNSAFE.getInt(pointer+KEY_LENGTH_OFFSET);
+            int valueLength=UNSAFE.getInt(pointer+VALUE_LENGTH_OFFSET);
+            if(valueLength>destination.length)
+                throw new IndexOutOfBoundsException("Value of "+valueLength+" bytes does not fit in "+destination.length);
+            UNSAFE.copyMemory(null,pointer+HEADER_SIZE+keyLength,destination,BYTE_ARRAY_OFFSET,valueLength);
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private long append(int hash,byte[] key,byte[] value){
+        int keyLength=key==null?0:key.length;
+        int entrySize=HEADER_SIZE+keyLength+value.length;
+        if(numSlabs==0 || currentCapacity-currentPosition<entrySize){
+            //oversized entries get a slab of their very own
+            int capacity=Math.max(slabSize,entrySize);
+            if(numSlabs==slabs.length)
+                slabs=Arrays.copyOf(slabs,numSlabs<<1);
+            slabs[numSlabs++]=UNSAFE.allocateMemory(capacity);
+            currentPosition=0;
+            currentCapacity=capacity;
+            slabBytes+=capacity;
+        }
+        long address=(((long)(numSlabs-1))<<32)|currentPosition;
+        long pointer=slabs[numSlabs-1]+currentPosition;
+        UNSAFE.putInt(pointer+HASH_OFFSET,hash);
+        UNSAFE.putInt(pointer+KEY_LENGTH_OFFSET,keyLength);
+        UNSAFE.putInt(pointer+VALUE_LENGTH_OFFSET,value.length);
+        UNSAFE.putLong(pointer+NEXT_OFFSET,NO_ENTRY);
+        if(key!=null)
+            UNSAFE.copyMemory(key,BYTE_ARRAY_OFFSET,null,pointer+HEADER_SIZE,keyLength);
+        UNSAFE.copyMemory(value,BYTE_ARRAY_OFFSET,null,pointer+HEADER_SIZE+keyLength,value.length);
+        currentPosition+=entrySize;
+        return address;
+    }
+
+    private boolean keyMatches(long pointer,int hash,byte[] key){
+        if(UNSAFE.getInt(pointer+HASH_OFFSET)!=hash) return false;
+        if(UNSAFE.getInt(pointer+KEY_LENGTH_OFFSET)!=key.length) return false;
+        long keyStart=pointer+HEADER_SIZE;
+        for(int i=0;i<key.length;i++){
+            if(UNSAFE.getByte(keyStart+i)!=key[i]) return false;
+        }
+        return true;
+    }
+
+    private byte[] readKey(long entry){
+        long pointer=pointer(entry);
+        byte[] key=new byte[UNSAFE.getInt(pointer+KEY_LENGTH_OFFSET)];
+        UNSAFE.copyMemory(null,pointer+HEADER_SIZE,key,BYTE_ARRAY_OFFSET,key.length);
+        return key;
+    }
+
+    private void resize(){
+        long oldSlots=slots;
+        int oldCapacity=numSlots;
+        allocateSlots(oldCapacity<<1);
+        for(int i=0;i<oldCapacity;i++){
+            long slot=UNSAFE.getLong(oldSlots+((long)i<<3));
+            if(slot==0) continue;
+            long head=slot-1;
+            int pos=UNSAFE.getInt(pointer(head)+HASH_OFFSET)&slotMask;
+            while(UNSAFE.getLong(slots+((long)pos<<3))!=0){
+                pos=(pos+1)&slotMask;
+            }
+            UNSAFE.putLong(slots+((long)pos<<3),slot);
+        }
+        UNSAFE.freeMemory(oldSlots);
+    }
+
+    private void allocateSlots(int numSlots){
+        long bytes=((long)numSlots)<<3;
+        this.slots=UNSAFE.allocateMemory(bytes);
+        //allocateMemory leaves the memory uninitialized, and every slot must start empty
+        UNSAFE.setMemory(slots,bytes,(byte)0);
+        this.numSlots=numSlots;
+        this.slotMask=numSlots-1;
+        this.resizeThreshold=(int)(numSlots*LOAD_FACTOR);
+    }
+
+    private long pointer(long address){
+        return slabs[(int)(address>>>32)]+(int)address;
+    }
+}
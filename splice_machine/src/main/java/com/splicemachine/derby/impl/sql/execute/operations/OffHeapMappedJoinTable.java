@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.KeyEncoder;
+import com.splicemachine.derby.utils.marshall.NoOpPostfix;
+import com.splicemachine.derby.utils.marshall.NoOpPrefix;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A JoinTable whose inner rows are held in encoded form in an {@link OffHeapHashTable},
+ * and which are only decoded into ExecRows when they are fetched by an outer row.
+ */
+class OffHeapMappedJoinTable implements JoinTable{
+    private final OffHeapHashTable.Reader reader;
+    private final KeyEncoder outerKeyEncoder;
+    private final OffHeapRowDecoder innerRowDecoder;
+    private boolean closed;
+
+    public OffHeapMappedJoinTable(OffHeapHashTable table,
+                                  ExecRow innerTemplateRow,
+                                  int[] outerHashKeys,
+                                  ExecRow outerTemplateRow){
+        this.reader=table.reader();
+        DescriptorSerializer[] serializers = VersionedSerializers.latestVersion(false).getSerializers(outerTemplateRow);
+        this.outerKeyEncoder = new KeyEncoder(NoOpPrefix.INSTANCE,
+                BareKeyHash.encoder(outerHashKeys,null,serializers),NoOpPostfix.INSTANCE);
+        //a null template means the table is empty, so we will never need to decode anything
+        this.innerRowDecoder=innerTemplateRow==null?null:new OffHeapRowDecoder(innerTemplateRow);
+    }
+
+    @Override
+    public Iterator<ExecRow> fetchInner(ExecRow outer) throws IOException, StandardException{
+        //once closed, the table's memory may be released at any time
+        if(closed)
+            throw new IOException("Programmer error: attempted to read from a closed broadcast join table");
+        if(innerRowDecoder==null)
+            return Collections.emptyIterator();
+        byte[] outerKey=outerKeyEncoder.getKey(outer);
+        assert outerKey!=null: "Programmer error: outer row does not have row key";
+        return innerRowDecoder.fetch(reader,outerKey);
+    }
+
+    @Override
+    public int prefetchSize(){
+        return 0; //every probe is against memory anyway
+    }
+
+    @Override
+    public void prefetch(List<ExecRow> outerRows){
+    }
+
+    @Override
+    public void close(){
+        closed=true;
+        if(innerRowDecoder!=null)
+            innerRowDecoder.close();
+    }
+
+    static class Factory implements JoinTable.Factory{
+        private final OffHeapHashTable table;
+        private final ExecRow innerTemplateRow;
+        private final int[] outerHashKeys;
+        private final ExecRow outerTemplateRow;
+
+        public Factory(OffHeapHashTable table,ExecRow innerTemplateRow,int[] outerHashKeys,ExecRow outerTemplateRow){
+            this.table=table;
+            this.innerTemplateRow=innerTemplateRow;
+            this.outerHashKeys=outerHashKeys;
+            this.outerTemplateRow=outerTemplateRow;
+        }
+
+        @Override
+        public JoinTable newTable(){
+            return new OffHeapMappedJoinTable(table,innerTemplateRow,outerHashKeys,outerTemplateRow);
+        }
+
+        @Override
+        public long estimatedSize(){
+            return table.memoryUsage();
+        }
+
+        @Override
+        public JoinKeyFilter joinKeyFilter(int[] outerKeyColumns,int maxKeys,double falsePositiveRate){
+            if(table.size()>maxKeys)
+                return null;
+            final JoinKeyFilter filter=new JoinKeyFilter(outerKeyColumns,table.size(),falsePositiveRate);
+            table.forEachKey(new OffHeapHashTable.KeyVisitor(){
+                @Override
+                public void visit(byte[] key){
+                    filter.add(key);
+                }
+            });
+            return filter;
+        }
+
+        @Override
+        public void close(){
+            //the cache only closes a factory once every table made from it has been closed
+            table.release();
+        }
+    }
+}
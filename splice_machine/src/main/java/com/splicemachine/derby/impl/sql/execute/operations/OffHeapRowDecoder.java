@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.utils.marshall.EntryDataDecoder;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.utils.IntArrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Decodes the encoded inner rows held by an {@link OffHeapHashTable} back into ExecRows.
+ */
+@NotThreadSafe
+class OffHeapRowDecoder implements AutoCloseable{
+    private final EntryDataDecoder rowDecoder;
+    private final ExecRow templateRow;
+
+    OffHeapRowDecoder(ExecRow templateRow){
+        this.templateRow=templateRow;
+        DescriptorSerializer[] serializers=VersionedSerializers.latestVersion(true).getSerializers(templateRow);
+        this.rowDecoder=new EntryDataDecoder(IntArrays.count(templateRow.nColumns()),null,serializers);
+    }
+
+    /**
+     * @param reader the reader to fetch from
+     * @param key the encoded key to look up
+     * @return every row stored under {@code key}, or an empty iterator if there are none
+     */
+    Iterator<ExecRow> fetch(OffHeapHashTable.Reader reader,byte[] key) throws StandardException{
+        long entry=reader.find(key);
+        if(entry<0)
+            return Collections.emptyIterator();
+
+        long next=reader.next(entry);
+        if(next<0){
+            //the common case of a unique inner key, so avoid the list
+            return Collections.singletonList(decode(reader,entry)).iterator();
+        }
+        List<ExecRow> rows=new ArrayList<>(2);
+        rows.add(decode(reader,entry));
+        do{
+            rows.add(decode(reader,next));
+            next=reader.next(next);
+        }while(next>=0);
+        return rows.iterator();
+    }
+
+    @Override
+    public void close(){
+        try{
+            rowDecoder.close();
+        }catch(IOException ignored){
+            //the serializers do not perform any I/O, so this can't happen
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private ExecRow decode(OffHeapHashTable.Reader reader,long entry) throws StandardException{
+        /*
+         * We copy into a fresh array each time, rather than re-using a buffer, because the
+         * EntryDecoder caches its BitIndex based on the contents of the last array it was given,
+         * and would not notice that a re-used buffer had been overwritten.
+         */
+        byte[] value=new byte[reader.valueLength(entry)];
+        reader.readValue(entry,value);
+
+        ExecRow row=templateRow.getNewNullRow();
+        rowDecoder.set(value,0,value.length);
+        rowDecoder.decode(row);
+        return row;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.EntryDataHash;
+import com.splicemachine.derby.utils.marshall.KeyEncoder;
+import com.splicemachine.derby.utils.marshall.NoOpPostfix;
+import com.splicemachine.derby.utils.marshall.NoOpPrefix;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.stream.Stream;
+import com.splicemachine.stream.StreamException;
+import com.splicemachine.utils.IntArrays;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads the inner side of a broadcast join into an {@link OffHeapHashTable}. Unlike
+ * {@link ByteBufferMapTableLoader}, no ExecRow is retained per inner row; the rows
+ * are kept in their encoded form outside of the java heap, and decoded on demand.
+ *
+ * If the table grows beyond the memory limit, it is moved out to disk and a {@link SpilledJoinTable}
+ * is used instead.
+ */
+@ThreadSafe
+class OffHeapTableLoader implements BroadcastJoinCache.JoinTableLoader{
+    public static BroadcastJoinCache.JoinTableLoader INSTANCE = new OffHeapTableLoader();
+
+    private OffHeapTableLoader(){} //singleton class
+
+    @Override
+    public JoinTable.Factory load(Callable<Stream<ExecRow>> streamLoader,
+                                  int[] innerHashKeys,
+                                  int[] outerHashKeys,
+                                  ExecRow outerTemplateRow,
+                                  long memoryLimit,
+                                  File spillDirectory) throws ExecutionException{
+        OffHeapHashTable table=new OffHeapHashTable();
+        SpilledJoinTable.Builder spill=null;
+        boolean loaded=false;
+
+        ExecRow innerTemplateRow=null;
+        KeyEncoder innerKeyEncoder=null;
+        EntryDataHash innerRowEncoder=null;
+
+        try(Stream<ExecRow> innerRows=streamLoader.call()){
+            ExecRow right;
+            while((right=innerRows.next())!=null){
+                if(innerTemplateRow==null){
+                    innerTemplateRow=right.getNewNullRow();
+                    DescriptorSerializer[] keySerializers=VersionedSerializers.latestVersion(false).getSerializers(right);
+                    innerKeyEncoder=new KeyEncoder(NoOpPrefix.INSTANCE,
+                            BareKeyHash.encoder(innerHashKeys,null,keySerializers),NoOpPostfix.INSTANCE);
+                    DescriptorSerializer[] rowSerializers=VersionedSerializers.latestVersion(true).getSerializers(right);
+                    innerRowEncoder=new EntryDataHash(IntArrays.count(right.nColumns()),null,rowSerializers);
+                }
+
+                byte[] key=innerKeyEncoder.getKey(right);
+                innerRowEncoder.setRow(right);
+                if(spill!=null){
+                    spill.add(key,innerRowEncoder.encode());
+                    continue;
+                }
+                table.put(key,innerRowEncoder.encode());
+                if(table.memoryUsage()>memoryLimit){
+                    //too large to hold in memory, so move it out to disk
+                    final SpilledJoinTable.Builder builder=spill=new SpilledJoinTable.Builder(spillDirectory);
+                    table.forEach(new OffHeapHashTable.EntryVisitor(){
+                        @Override
+                        public void visit(byte[] key,byte[] value) throws IOException{
+                            builder.add(key,value);
+                        }
+                    });
+                    table.release();
+                    table=null;
+                }
+            }
+            if(spill!=null){
+                JoinTable.Factory factory=spill.build(innerTemplateRow,outerHashKeys,outerTemplateRow,memoryLimit);
+                spill=null;
+                return factory;
+            }
+            loaded=true;
+        }catch(StreamException e){
+            throw new ExecutionException(e.getCause());
+        }catch(Exception e){
+            if(e instanceof ExecutionException) throw (ExecutionException)e;
+            else throw new ExecutionException(e);
+        }finally{
+            if(spill!=null)
+                spill.abort();
+            //the table's memory is never reclaimed by the garbage collector, so it must not outlive a failed load
+            if(!loaded && table!=null)
+                table.release();
+            if(innerRowEncoder!=null){
+                try{
+                    innerRowEncoder.close();
+                }catch(Exception ignored){ }
+            }
+        }
+
+        return new OffHeapMappedJoinTable.Factory(table,innerTemplateRow,outerHashKeys,outerTemplateRow);
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.KeyEncoder;
+import com.splicemachine.derby.utils.marshall.NoOpPostfix;
+import com.splicemachine.derby.utils.marshall.NoOpPrefix;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.hash.Hash32;
+import com.splicemachine.hash.HashFunctions;
+import org.apache.log4j.Logger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JoinTable for inner sides which are too large to be held in memory all at once.
+ *
+ * The encoded inner rows are hash-partitioned on their join key into a fixed number of files
+ * on local disk. Outer rows are looked up in batches (see {@link #prefetch(List)}): the rows of a batch
+ * are grouped by the partition holding their key, and each partition the batch needs is loaded into an
+ * {@link OffHeapHashTable} (unless it is already resident) and probed for all of its rows before moving
+ * on to the next, so a batch loads each partition at most once, however its keys are distributed.
+ * Resident partitions are discarded in least-recently-used order to keep the memory held by the
+ * table within its share of the broadcast join cache, and their memory is freed as soon as no table
+ * is reading from them.
+ *
+ * The results of a batch are handed back in the order of the outer rows, so the order of the outer
+ * side is preserved. This matters, because the optimizer treats a broadcast join as preserving the
+ * ordering of its outer table; switching to a shuffled join at execution time would break that.
+ */
+class SpilledJoinTable implements JoinTable{
+    private static final Logger LOG=Logger.getLogger(SpilledJoinTable.class);
+    static final int NUM_PARTITIONS=32;
+    static final int PREFETCH_SIZE=4096;
+    private static final int BUFFER_SIZE=1<<15;
+    /*
+     * Deliberately seeded differently from the OffHeapHashTable, so that all the keys in a partition
+     * don't also land in the same part of that table's probe sequence.
+     */
+    private static final Hash32 PARTITION_HASH=HashFunctions.murmur3(0x5f3759df);
+
+    private final Factory factory;
+    private final KeyEncoder outerKeyEncoder;
+    private final OffHeapRowDecoder innerRowDecoder;
+
+    private Partition currentPartition;
+    private OffHeapHashTable.Reader currentReader;
+    /*
+     * The inner rows found by the last prefetch, keyed by the identity of their outer row
+     */
+    private final Map<ExecRow,Iterator<ExecRow>> prefetched=new IdentityHashMap<>();
+    private boolean closed;
+
+    SpilledJoinTable(Factory factory,ExecRow innerTemplateRow,int[] outerHashKeys,ExecRow outerTemplateRow){
+        this.factory=factory;
+        DescriptorSerializer[] serializers=VersionedSerializers.latestVersion(false).getSerializers(outerTemplateRow);
+        this.outerKeyEncoder=new KeyEncoder(NoOpPrefix.INSTANCE,
+                BareKeyHash.encoder(outerHashKeys,null,serializers),NoOpPostfix.INSTANCE);
+        this.innerRowDecoder=new OffHeapRowDecoder(innerTemplateRow);
+    }
+
+    @Override
+    public Iterator<ExecRow> fetchInner(ExecRow outer) throws IOException, StandardException{
+        Iterator<ExecRow> rows=prefetched.remove(outer);
+        if(rows!=null)
+            return rows;
+        byte[] outerKey=outerKeyEncoder.getKey(outer);
+        assert outerKey!=null: "Programmer error: outer row does not have row key";
+        return fetch(outerKey,partitionFor(outerKey));
+    }
+
+    @Override
+    public int prefetchSize(){
+        return PREFETCH_SIZE;
+    }
+
+    @Override
+    public void prefetch(List<ExecRow> outerRows) throws IOException, StandardException{
+        prefetched.clear();
+        int numRows=outerRows.size();
+        byte[][] keys=new byte[numRows][];
+        int[] partitions=new int[numRows];
+        int[] partitionStarts=new int[NUM_PARTITIONS+1];
+        for(int i=0;i<numRows;i++){
+            keys[i]=outerKeyEncoder.getKey(outerRows.get(i));
+            assert keys[i]!=null: "Programmer error: outer row does not have row key";
+            partitions[i]=partitionFor(keys[i]);
+            partitionStarts[partitions[i]+1]++;
+        }
+        //counting sort the rows by partition, so that each partition is visited once
+        for(int p=0;p<NUM_PARTITIONS;p++){
+            partitionStarts[p+1]+=partitionStarts[p];
+        }
+        int[] byPartition=new int[numRows];
+        int[] next=Arrays.copyOf(partitionStarts,NUM_PARTITIONS);
+        for(int i=0;i<numRows;i++){
+            byPartition[next[partitions[i]]++]=i;
+        }
+        for(int i:byPartition){
+            prefetched.put(outerRows.get(i),fetch(keys[i],partitions[i]));
+        }
+    }
+
+    @Override
+    public void close(){
+        closed=true;
+        prefetched.clear();
+        releaseCurrentPartition();
+        innerRowDecoder.close();
+    }
+
+    static int partitionFor(byte[] key){
+        return PARTITION_HASH.hash(key,0,key.length)&(NUM_PARTITIONS-1);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private Iterator<ExecRow> fetch(byte[] key,int partition) throws IOException, StandardException{
+        if(closed)
+            throw new IOException("Programmer error: attempted to read from a closed broadcast join table");
+        if(currentPartition==null || currentPartition.index!=partition){
+            releaseCurrentPartition();
+            currentPartition=factory.acquire(partition);
+            if(currentPartition==null)
+                return Collections.emptyIterator();
+            currentReader=currentPartition.table.reader();
+        }
+        return innerRowDecoder.fetch(currentReader,key);
+    }
+
+    private void releaseCurrentPartition(){
+        if(currentPartition!=null){
+            factory.release(currentPartition);
+            currentPartition=null;
+            currentReader=null;
+        }
+    }
+
+    /**
+     * A partition which has been loaded into memory. The table is released once the partition has been
+     * evicted and no table is reading from it any longer.
+     */
+    private static class Partition{
+        private final int index;
+        private final OffHeapHashTable table;
+        private final long size;
+        /*
+         * Guarded by the monitor of the owning factory
+         */
+        private int readers;
+        private boolean evicted;
+
+        Partition(int index,OffHeapHashTable table){
+            this.index=index;
+            this.table=table;
+            this.size=table.memoryUsage();
+        }
+    }
+
+    /**
+     * Writes encoded inner rows out to the partition files.
+     */
+    @NotThreadSafe
+    static class Builder{
+        private final File[] files=new File[NUM_PARTITIONS];
+        private final DataOutputStream[] outputs=new DataOutputStream[NUM_PARTITIONS];
+        private final int[] counts=new int[NUM_PARTITIONS];
+        private final File spillDirectory;
+
+        Builder(File spillDirectory){
+            this.spillDirectory=spillDirectory;
+        }
+
+        void add(byte[] key,byte[] row) throws IOException{
+            int partition=partitionFor(key);
+            DataOutputStream output=outputs[partition];
+            if(output==null){
+                File file=File.createTempFile("broadcast-join-",".spill",spillDirectory);
+                file.deleteOnExit();
+                files[partition]=file;
+                output=outputs[partition]=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),BUFFER_SIZE));
+            }
+            output.writeInt(key.length);
+            output.write(key);
+            output.writeInt(row.length);
+            output.write(row);
+            counts[partition]++;
+        }
+
+        /**
+         * @param residentLimit the maximum number of bytes of loaded partitions to hold in memory at one time.
+         * @return a factory for tables over the spilled partitions. Ownership of the files passes to
+         * the factory, and they are removed when it is closed.
+         */
+        Factory build(ExecRow innerTemplateRow,int[] outerHashKeys,ExecRow outerTemplateRow,long residentLimit) throws IOException{
+            for(DataOutputStream output:outputs){
+                if(output!=null) output.close();
+            }
+            return new Factory(files,counts,residentLimit,innerTemplateRow,outerHashKeys,outerTemplateRow);
+        }
+
+        /**
+         * Discard everything written so far.
+         */
+        void abort(){
+            for(int i=0;i<NUM_PARTITIONS;i++){
+                if(outputs[i]!=null){
+                    try{
+                        outputs[i].close();
+                    }catch(IOException ignored){ }
+                }
+                delete(files[i]);
+            }
+        }
+    }
+
+    @ThreadSafe
+    static class Factory implements JoinTable.Factory{
+        private final File[] files;
+        private final int[] counts;
+        private final long residentLimit;
+        private final ExecRow innerTemplateRow;
+        private final int[] outerHashKeys;
+        private final ExecRow outerTemplateRow;
+
+        /*
+         * The partitions currently held in memory, in access order. All guarded by this factory's monitor
+         */
+        private final Map<Integer,Partition> resident=new LinkedHashMap<>(NUM_PARTITIONS,0.75f,true);
+        private long residentSize;
+        private long partitionLoads;
+        private boolean closed;
+
+        private Factory(File[] files,
+                        int[] counts,
+                        long residentLimit,
+                        ExecRow innerTemplateRow,
+                        int[] outerHashKeys,
+                        ExecRow outerTemplateRow){
+            this.files=files;
+            this.counts=counts;
+            this.residentLimit=residentLimit;
+            this.innerTemplateRow=innerTemplateRow;
+            this.outerHashKeys=outerHashKeys;
+            this.outerTemplateRow=outerTemplateRow;
+        }
+
+        @Override
+        public JoinTable newTable(){
+            return new SpilledJoinTable(this,innerTemplateRow,outerHashKeys,outerTemplateRow);
+        }
+
+        /**
+         * @return the most memory this factory will hold at any one time. Partitions which are being
+         * read are never discarded, so a single partition larger than the limit may exceed it.
+         */
+        @Override
+        public long estimatedSize(){
+            return residentLimit;
+        }
+
+        /**
+         * @return {@code null}, since the keys are only held on disk, and a table which was too large to
+         * hold in memory is too large for a compact filter anyway
+         */
+        @Override
+        public JoinKeyFilter joinKeyFilter(int[] outerKeyColumns,int maxKeys,double falsePositiveRate){
+            return null;
+        }
+
+        @Override
+        public synchronized void close(){
+            if(closed) return;
+            closed=true;
+            for(Partition partition:resident.values()){
+                evict(partition);
+            }
+            resident.clear();
+            residentSize=0;
+            for(File file:files){
+                delete(file);
+            }
+        }
+
+        synchronized long partitionLoads(){
+            return partitionLoads;
+        }
+
+        synchronized long residentSize(){
+            return residentSize;
+        }
+
+        /**
+         * @return the given partition, which must be passed to {@link #release(Partition)} once the caller
+         * is finished reading from it, or {@code null} if the partition is empty
+         */
+        synchronized Partition acquire(int index) throws IOException{
+            if(closed)
+                throw new IOException("Programmer error: attempted to read from a closed broadcast join table");
+            if(files[index]==null)
+                return null;
+            Partition partition=resident.get(index);
+            if(partition==null){
+                partition=new Partition(index,load(files[index],counts[index]));
+                partitionLoads++;
+                residentSize+=partition.size;
+                resident.put(index,partition);
+            }
+            partition.readers++;
+            evictUnused();
+            return partition;
+        }
+
+        synchronized void release(Partition partition){
+            partition.readers--;
+            if(partition.evicted && partition.readers==0)
+                partition.table.release();
+            else
+                evictUnused();
+        }
+
+        private void evictUnused(){
+            Iterator<Partition> eldest=resident.values().iterator();
+            while(residentSize>residentLimit && eldest.hasNext()){
+                Partition partition=eldest.next();
+                if(partition.readers>0) continue;
+                eldest.remove();
+                evict(partition);
+            }
+        }
+
+        private void evict(Partition partition){
+            residentSize-=partition.size;
+            partition.evicted=true;
+            if(partition.readers==0)
+                partition.table.release();
+        }
+
+        private OffHeapHashTable load(File file,int count) throws IOException{
+            OffHeapHashTable table=new OffHeapHashTable(OffHeapHashTable.DEFAULT_SLAB_SIZE,(int)(count/0.75f)+1);
+            try(DataInputStream input=new DataInputStream(new BufferedInputStream(new FileInputStream(file),BUFFER_SIZE))){
+                for(int i=0;i<count;i++){
+                    byte[] key=new byte[input.readInt()];
+                    input.readFully(key);
+                    byte[] row=new byte[input.readInt()];
+                    input.readFully(row);
+                    table.put(key,row);
+                }
+            }catch(EOFException e){
+                table.release();
+                throw new IOException("Broadcast join spill file "+file+" is truncated",e);
+            }catch(IOException|RuntimeException e){
+                table.release();
+                throw e;
+            }
+            return table;
+        }
+    }
+
+    private static void delete(File file){
+        if(file!=null && !file.delete() && file.exists())
+            LOG.warn("Unable to delete broadcast join spill file "+file);
+    }
+}
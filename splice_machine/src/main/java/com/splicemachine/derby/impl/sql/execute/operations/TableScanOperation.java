@@ -25,11 +25,15 @@ import com.splicemachine.db.iapi.store.access.StaticCompiledOpenConglomInfo;
 import com.splicemachine.db.impl.sql.compile.ActivationClassBuilder;
 import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
 import com.splicemachine.derby.iapi.sql.execute.SpliceOperationContext;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyRowFilter;
 import com.splicemachine.derby.stream.iapi.DataSet;
 import com.splicemachine.derby.stream.iapi.DataSetProcessor;
 import com.splicemachine.derby.stream.output.WriteReadUtils;
+import com.splicemachine.pipeline.Exceptions;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.storage.DataScan;
 import com.splicemachine.utils.ByteSlice;
 import com.splicemachine.utils.SpliceLogUtils;
 import org.apache.log4j.Logger;
@@ -55,6 +59,10 @@ public class TableScanOperation extends ScanOperation{
     protected int[] baseColumnMap;
     protected static final String NAME=TableScanOperation.class.getSimpleName().replaceAll("Operation","");
     protected byte[] tableNameBytes;
+    /*
+     * Set on the driver by a broadcast join above us; it is carried to the scanners by the scan builder
+     */
+    protected transient JoinKeyFilter joinKeyFilter;
 
     /**
      *
@@ -307,6 +315,35 @@ public class TableScanOperation extends ScanOperation{
         }
     }
 
+    /**
+     *
+     * Push a filter over the join keys of a broadcast join's inner table into this scan, so that rows
+     * which cannot join are discarded as soon as they are read.
+     *
+     * @param joinKeyFilter the filter, or {@code null} to remove it
+     */
+    public void setJoinKeyFilter(JoinKeyFilter joinKeyFilter){
+        this.joinKeyFilter=joinKeyFilter;
+    }
+
+    /**
+     * Carry the join key filter (if there is one) in the scan itself, so that it is checked where the rows
+     * are read, before they are resolved transactionally and decoded.
+     *
+     * @param scan the scan to attach the filter to
+     * @return the same scan
+     */
+    protected DataScan withJoinKeyFilter(DataScan scan) throws StandardException{
+        if(joinKeyFilter!=null){
+            try{
+                JoinKeyRowFilter.addToScan(scan,joinKeyFilter,currentTemplate,getRowDecodingMap(),tableVersion);
+            }catch(IOException e){
+                throw Exceptions.parseException(e);
+            }
+        }
+        return scan;
+    }
+
     /**
      *
      * Retrieve the Table Scan Builder for creating the actual data set from a scan.
@@ -321,7 +358,7 @@ public class TableScanOperation extends ScanOperation{
                 .tableDisplayName(tableDisplayName)
                 .activation(activation)
                 .transaction(txn)
-                .scan(getNonSIScan())
+                .scan(withJoinKeyFilter(getNonSIScan()))
                 .template(currentTemplate)
                 .tableVersion(tableVersion)
                 .indexName(indexName)
@@ -334,6 +371,7 @@ public class TableScanOperation extends ScanOperation{
                 .keyDecodingMap(getKeyDecodingMap())
                 .rowDecodingMap(getRowDecodingMap())
                 .baseColumnMap(baseColumnMap)
+                .joinKeyFilter(joinKeyFilter)
                 .buildDataSet(this);
     }
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.derby.impl.sql.execute.operations.scanner;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.services.io.ArrayUtil;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.KeyEncoder;
+import com.splicemachine.derby.utils.marshall.NoOpPostfix;
+import com.splicemachine.derby.utils.marshall.NoOpPrefix;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.hash.Hash64;
+import com.splicemachine.hash.HashFunctions;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A Bloom filter over the join keys of the inner side of a broadcast join, which is
+ * pushed down into the scan of the outer table.
+ *
+ * Outer rows are checked against the filter as soon as they have been read, and any row whose join key is
+ * definitely not present in the inner table is discarded right there, rather than being materialized,
+ * passed up through the operation tree and then thrown away by the join itself. False positives are
+ * harmless, since the join still performs the real lookup.
+ *
+ * Keys are encoded the same way the broadcast join tables encode them, so that a key which would
+ * match in the join table also matches in the filter.
+ */
+public class JoinKeyFilter implements Externalizable{
+    private static final long serialVersionUID=1l;
+    private static final Hash64 HASH=HashFunctions.murmur2_64(0x2a5d3f17);
+
+    private long[] bits;
+    private int numBits;
+    private int numHashes;
+    private int[] keyColumns;
+
+    private transient KeyEncoder keyEncoder;
+
+    public JoinKeyFilter(){ } //for serialization
+
+    /**
+     * @param keyColumns the (0-based) positions of the join keys in the rows which will be checked
+     * @param expectedKeys the number of keys which will be added to the filter
+     * @param falsePositiveRate the desired probability that a missing key will be reported as present
+     */
+    public JoinKeyFilter(int[] keyColumns,int expectedKeys,double falsePositiveRate){
+        this.keyColumns=keyColumns;
+        int n=Math.max(expectedKeys,1);
+        long m=(long)Math.ceil(-n*Math.log(falsePositiveRate)/(Math.log(2)*Math.log(2)));
+        this.numBits=(int)Math.min(Math.max(m,64),Integer.MAX_VALUE-63);
+        this.numHashes=Math.max(1,(int)Math.round((double)numBits/n*Math.log(2)));
+        this.bits=new long[(numBits+63)>>>6];
+    }
+
+    public void add(byte[] key){
+        long hash=HASH.hash(key,0,key.length);
+        int h1=(int)hash;
+        int h2=(int)(hash>>>32);
+        for(int i=1;i<=numHashes;i++){
+            int combined=h1+i*h2;
+            int bit=(combined&Integer.MAX_VALUE)%numBits;
+            bits[bit>>>6]|=(1L<<bit);
+        }
+    }
+
+    public boolean mightContain(byte[] key){
+        long hash=HASH.hash(key,0,key.length);
+        int h1=(int)hash;
+        int h2=(int)(hash>>>32);
+        for(int i=1;i<=numHashes;i++){
+            int combined=h1+i*h2;
+            int bit=(combined&Integer.MAX_VALUE)%numBits;
+            if((bits[bit>>>6]&(1L<<bit))==0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param row a row read from the outer table
+     * @return false if the row's join key is definitely not present in the inner table
+     */
+    public boolean mightMatch(ExecRow row) throws StandardException, IOException{
+        if(keyEncoder==null){
+            DescriptorSerializer[] serializers=VersionedSerializers.latestVersion(false).getSerializers(row);
+            keyEncoder=new KeyEncoder(NoOpPrefix.INSTANCE,BareKeyHash.encoder(keyColumns,null,serializers),NoOpPostfix.INSTANCE);
+        }
+        return mightContain(keyEncoder.getKey(row));
+    }
+
+    /**
+     * @return the positions of the join keys in the rows which are checked
+     */
+    public int[] getKeyColumns(){
+        return keyColumns;
+    }
+
+    /**
+     * @return the size of the filter, in bytes
+     */
+    public int sizeInBytes(){
+        return bits.length*8;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException{
+        ArrayUtil.writeIntArray(out,keyColumns);
+        out.writeInt(numBits);
+        out.writeInt(numHashes);
+        out.writeInt(bits.length);
+        for(long word:bits){
+            out.writeLong(word);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException{
+        keyColumns=ArrayUtil.readIntArray(in);
+        numBits=in.readInt();
+        numHashes=in.readInt();
+        bits=new long[in.readInt()];
+        for(int i=0;i<bits.length;i++){
+            bits[i]=in.readLong();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations.scanner;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.services.io.ArrayUtil;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.sql.execute.LazyDataValueFactory;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.encoding.MultiFieldDecoder;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.storage.DataScan;
+import com.splicemachine.storage.EntryDecoder;
+import com.splicemachine.storage.index.BitIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Checks the packed user data of a stored row against a {@link JoinKeyFilter}, so that the filter
+ * can be applied where the row is read (in the region server, or against the store files directly when
+ * reading from Spark), before the row is shipped to the scanner, resolved transactionally and decoded.
+ *
+ * Transactional visibility is only resolved later, by the {@link SITableScanner}, so a row can only be
+ * eliminated here when its one and only version of user data contains every join key column. Any row which
+ * doesn't qualify (multiple versions, a key column which is missing or part of the primary key) is passed
+ * on unchanged, and is checked by the scanner once it has been decoded.
+ *
+ * Rows which are eliminated are not dropped outright. They are replaced by a single cell with the
+ * {@link #ELIMINATED_ROW_QUALIFIER}, so that the scanner can count them.
+ */
+public class JoinKeyRowFilter{
+    /**
+     * The scan attribute under which a serialized filter is carried to the region.
+     */
+    public static final String SCAN_ATTRIBUTE="jkf";
+
+    /**
+     * The qualifier of the cell which stands in for a row eliminated by the filter.
+     */
+    public static final byte[] ELIMINATED_ROW_QUALIFIER=Bytes.toBytes("jk");
+
+    private final JoinKeyFilter filter;
+    private final int[] keyStoragePositions;
+    private final int[] keyFormatIds;
+    private final int rowSize;
+    private final String tableVersion;
+
+    private ExecRow keyRow;
+    private DescriptorSerializer[] serializers;
+    private EntryDecoder entryDecoder;
+
+    private JoinKeyRowFilter(JoinKeyFilter filter,int[] keyStoragePositions,int[] keyFormatIds,int rowSize,String tableVersion){
+        this.filter=filter;
+        this.keyStoragePositions=keyStoragePositions;
+        this.keyFormatIds=keyFormatIds;
+        this.rowSize=rowSize;
+        this.tableVersion=tableVersion;
+    }
+
+    /**
+     * Attach the filter to a scan, so that it is applied where the rows are read.
+     *
+     * Nothing is attached if one of the join keys is not stored in the row's packed data (i.e. it's a
+     * primary key column); the scanner still applies the filter to such rows once they have been decoded.
+     *
+     * @param scan the scan of the outer table
+     * @param filter the join key filter
+     * @param template the rows returned by the scan
+     * @param rowDecodingMap the map from the stored column position to the position in {@code template}
+     * @param tableVersion the version of the table's row encoding
+     */
+    public static void addToScan(DataScan scan,JoinKeyFilter filter,ExecRow template,int[] rowDecodingMap,String tableVersion) throws StandardException, IOException{
+        int[] keyColumns=filter.getKeyColumns();
+        int[] storagePositions=new int[keyColumns.length];
+        int[] formatIds=new int[keyColumns.length];
+        for(int i=0;i<keyColumns.length;i++){
+            storagePositions[i]=-1;
+            for(int pos=0;rowDecodingMap!=null && pos<rowDecodingMap.length;pos++){
+                if(rowDecodingMap[pos]==keyColumns[i]){
+                    storagePositions[i]=pos;
+                    break;
+                }
+            }
+            if(storagePositions[i]<0) return;
+            formatIds[i]=template.getColumn(keyColumns[i]+1).getTypeFormatId();
+        }
+        JoinKeyRowFilter rowFilter=new JoinKeyRowFilter(filter,storagePositions,formatIds,template.nColumns(),tableVersion);
+        scan.addAttribute(SCAN_ATTRIBUTE,rowFilter.toBytes());
+    }
+
+    public byte[] toBytes() throws IOException{
+        ByteArrayOutputStream baos=new ByteArrayOutputStream();
+        try(ObjectOutputStream out=new ObjectOutputStream(baos)){
+            filter.writeExternal(out);
+            ArrayUtil.writeIntArray(out,keyStoragePositions);
+            ArrayUtil.writeIntArray(out,keyFormatIds);
+            out.writeInt(rowSize);
+            out.writeBoolean(tableVersion!=null);
+            if(tableVersion!=null)
+                out.writeUTF(tableVersion);
+        }
+        return baos.toByteArray();
+    }
+
+    public static JoinKeyRowFilter fromBytes(byte[] bytes) throws IOException{
+        try(ObjectInputStream in=new ObjectInputStream(new ByteArrayInputStream(bytes))){
+            JoinKeyFilter filter=new JoinKeyFilter();
+            filter.readExternal(in);
+            int[] storagePositions=ArrayUtil.readIntArray(in);
+            int[] formatIds=ArrayUtil.readIntArray(in);
+            int rowSize=in.readInt();
+            String tableVersion=in.readBoolean()?in.readUTF():null;
+            return new JoinKeyRowFilter(filter,storagePositions,formatIds,rowSize,tableVersion);
+        }catch(ClassNotFoundException e){
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @param data the packed user data of a row, which must be the row's only version of user data
+     * @return false if the row's join key is definitely not present in the inner table, true if it
+     * might be, or if the row doesn't contain all of the join key columns
+     */
+    public boolean mightMatch(byte[] data,int offset,int length) throws StandardException, IOException{
+        if(keyRow==null)
+            init();
+        entryDecoder.set(data,offset,length);
+        BitIndex index=entryDecoder.getCurrentIndex();
+        int lastKey=-1;
+        for(int pos:keyStoragePositions){
+            if(!index.isSet(pos)) return true;
+            lastKey=Math.max(lastKey,pos);
+        }
+        MultiFieldDecoder decoder=entryDecoder.getEntryDecoder();
+        int[] keyColumns=filter.getKeyColumns();
+        for(int i=index.nextSetBit(0);i>=0 && i<=lastKey;i=index.nextSetBit(i+1)){
+            int key=keyPosition(i);
+            if(key<0){
+                entryDecoder.seekForward(decoder,i);
+                continue;
+            }
+            int rowPos=keyColumns[key];
+            serializers[rowPos].decode(decoder,keyRow.getColumn(rowPos+1),false);
+        }
+        return filter.mightMatch(keyRow);
+    }
+
+    private int keyPosition(int storagePosition){
+        for(int i=0;i<keyStoragePositions.length;i++){
+            if(keyStoragePositions[i]==storagePosition) return i;
+        }
+        return -1;
+    }
+
+    private void init() throws StandardException{
+        int[] keyColumns=filter.getKeyColumns();
+        keyRow=new ValueRow(rowSize);
+        for(int i=0;i<keyColumns.length;i++){
+            keyRow.setColumn(keyColumns[i]+1,LazyDataValueFactory.getLazyNull(keyFormatIds[i]));
+        }
+        serializers=VersionedSerializers.forVersion(tableVersion,false).getSerializers(keyRow);
+        entryDecoder=new EntryDecoder();
+    }
+}
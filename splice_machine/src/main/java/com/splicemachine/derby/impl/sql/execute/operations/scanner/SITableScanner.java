@@ -31,6 +31,7 @@ import com.splicemachine.derby.utils.marshall.dvd.TypeProvider;
 import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
 import com.splicemachine.encoding.MultiFieldDecoder;
 import com.splicemachine.metrics.*;
+import com.splicemachine.si.api.filter.BatchTxnFilter;
 import com.splicemachine.si.api.filter.SIFilter;
 import com.splicemachine.si.api.server.TransactionalRegion;
 import com.splicemachine.si.api.txn.TxnView;
@@ -45,7 +46,10 @@ import com.splicemachine.utils.ByteSlice;
 import com.splicemachine.utils.SpliceLogUtils;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.log4j.Logger;
+import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -62,6 +66,11 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         }
     };
     private static Logger LOG = Logger.getLogger(SITableScanner.class);
+    /*
+     * The number of rows which are read from the underlying scanner and filtered transactionally
+     * at once, when the transactional filter supports batch filtering.
+     */
+    private static final int ROW_BATCH_SIZE = 64;
     private final Counter filterCounter;
     private DataScanner regionScanner;
     private final TransactionalRegion region;
@@ -89,6 +98,10 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
     private final Counter outputBytesCounter;
     private long demarcationPoint;
     private DataValueDescriptor optionalProbeValue;
+    private JoinKeyFilter joinKeyFilter;
+    private long rowsEliminatedByJoinFilter;
+    private BatchTxnFilter batchFilter;
+    private RowBatch rowBatch;
 
     protected SITableScanner(DataScanner scanner,
                              final TransactionalRegion region,
@@ -177,6 +190,32 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         this.optionalProbeValue = optionalProbeValue;
     }
 
+    protected SITableScanner(DataScanner scanner,
+                             final TransactionalRegion region,
+                             final ExecRow template,
+                             DataScan scan,
+                             final int[] rowDecodingMap,
+                             final TxnView txn,
+                             int[] keyColumnEncodingOrder,
+                             boolean[] keyColumnSortOrder,
+                             int[] keyColumnTypes,
+                             int[] keyDecodingMap,
+                             FormatableBitSet accessedPks,
+                             boolean reuseRowLocation,
+                             String indexName,
+                             final String tableVersion,
+                             SIFilterFactory filterFactory,
+                             final long demarcationPoint,
+                             DataValueDescriptor optionalProbeValue,
+                             JoinKeyFilter joinKeyFilter) {
+        this(scanner, region, template, scan, rowDecodingMap, txn, keyColumnEncodingOrder,
+                keyColumnSortOrder, keyColumnTypes, keyDecodingMap, accessedPks, reuseRowLocation, indexName,
+                tableVersion, filterFactory,demarcationPoint,optionalProbeValue);
+        this.joinKeyFilter = joinKeyFilter;
+        if(joinKeyFilter!=null)
+            this.regionScanner = new EliminatedRowSkipper(scanner);
+    }
+
     @Override
     public void open() throws StandardException, IOException {
 
@@ -185,6 +224,8 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
     @Override
     public ExecRow next() throws StandardException, IOException {
         SIFilter filter = getSIFilter();
+        if(batchFilter!=null && filter instanceof PackedTxnFilter)
+            return nextFromBatch((PackedTxnFilter)filter);
         do{
             template.resetRowArray(); //necessary to deal with null entries--maybe make the underlying call faster?
             List<DataCell> keyValues=regionScanner.next(-1);
@@ -208,6 +249,11 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
                     if (LOG.isTraceEnabled())
                         SpliceLogUtils.trace(LOG,"miss columns=%d",template.nColumns());
                 }
+                if(joinKeyFilter!=null && !joinKeyFilter.mightMatch(template)){
+                    //the row can't join with anything, so don't bother returning it
+                    rowsEliminatedByJoinFilter++;
+                    continue;
+                }
                 measureOutputSize(keyValues);
                 currentKeyValue = keyValues.get(0);
                 setRowLocation(currentKeyValue);
@@ -216,6 +262,43 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         }while(true); //TODO -sf- this doesn't seem quite right
     }
 
+    /*
+     * Read rows from the region scanner a batch at a time, so that the transactional visibility
+     * of the entire batch can be determined at once, and then accumulate each row using only the
+     * cells which are known to be visible.
+     */
+    private ExecRow nextFromBatch(PackedTxnFilter filter) throws StandardException, IOException {
+        if(rowBatch==null)
+            rowBatch = new RowBatch(ROW_BATCH_SIZE);
+        do{
+            if(!rowBatch.hasNext() && !rowBatch.fill(regionScanner,batchFilter)){
+                currentRowLocation = null;
+                return null;
+            }
+            template.resetRowArray();
+            List<DataCell> keyValues = rowBatch.row();
+            BitSet visibleCells = rowBatch.visibleCells();
+            rowBatch.advance();
+            DataCell currentKeyValue = keyValues.get(0);
+            if(template.nColumns()>0){
+                if(!filterRowKey(currentKeyValue)||!accumulateVisible(filter,keyValues,visibleCells)){
+                    filterCounter.increment();
+                    continue;
+                }
+            }else if(!accumulateVisible(filter,keyValues,visibleCells)){
+                filterCounter.increment();
+                continue;
+            }
+            if(joinKeyFilter!=null && !joinKeyFilter.mightMatch(template)){
+                rowsEliminatedByJoinFilter++;
+                continue;
+            }
+            measureOutputSize(keyValues);
+            setRowLocation(currentKeyValue);
+            return template;
+        }while(true);
+    }
+
     public long getBytesOutput(){
         return outputBytesCounter.getTotal();
     }
@@ -269,12 +352,22 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         return filterCounter.getTotal();
     }
 
+    /**
+     * @return the number of rows which were discarded because their join key was not present in
+     * the pushed down {@link JoinKeyFilter}
+     */
+    public long getRowsEliminatedByJoinFilter(){
+        return rowsEliminatedByJoinFilter;
+    }
+
     public long getRowsVisited() {
         return regionScanner.getRowsVisited();
     }
 
     public void setRegionScanner(DataScanner scanner){
-        this.regionScanner = scanner;
+        this.regionScanner = joinKeyFilter!=null?new EliminatedRowSkipper(scanner):scanner;
+        if(rowBatch!=null)
+            rowBatch.clear();
     }
 
     public long getBytesVisited() {
@@ -285,6 +378,38 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         return regionScanner;
     }
 
+    /*
+     * Skips, and counts, the rows which the JoinKeyRowFilter already eliminated where they were read. This sits
+     * underneath both the row-at-a-time and the batched read paths, so those rows are never resolved transactionally.
+     */
+    private class EliminatedRowSkipper implements DataScanner{
+        private final DataScanner delegate;
+
+        EliminatedRowSkipper(DataScanner delegate){
+            this.delegate=delegate;
+        }
+
+        @Override
+        @Nonnull
+        public List<DataCell> next(int limit) throws IOException{
+            List<DataCell> cells;
+            do{
+                cells=delegate.next(limit);
+                if(cells.size()==1 && cells.get(0).matchesQualifier(SIConstants.DEFAULT_FAMILY_BYTES,JoinKeyRowFilter.ELIMINATED_ROW_QUALIFIER))
+                    rowsEliminatedByJoinFilter++;
+                else
+                    return cells;
+            }while(true);
+        }
+
+        @Override public TimeView getReadTime(){ return delegate.getReadTime(); }
+        @Override public long getBytesOutput(){ return delegate.getBytesOutput(); }
+        @Override public long getRowsFiltered(){ return delegate.getRowsFiltered(); }
+        @Override public long getRowsVisited(){ return delegate.getRowsVisited(); }
+        @Override public void close() throws IOException{ delegate.close(); }
+        @Override public Partition getPartition(){ return delegate.getPartition(); }
+    }
+
     /*********************************************************************************************************************/
 		/*Private helper methods*/
     private SIFilterFactory createFilterFactory(TxnView txn, long demarcationPoint) {
@@ -296,6 +421,7 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         SIFilterFactory siFilterFactory;
         try {
             final TxnFilter txnFilter = region.unpackedFilter(txnView);
+            batchFilter = txnFilter instanceof BatchTxnFilter? (BatchTxnFilter)txnFilter : null;
 
             siFilterFactory = new SIFilterFactory<Data>() {
                 @Override
@@ -431,15 +557,85 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         return numCells > 0 && filter.getAccumulator().result() != null;
     }
 
+    private boolean accumulateVisible(PackedTxnFilter filter,List<DataCell> keyValues,BitSet visibleCells) throws IOException {
+        filter.nextRow();
+        if(visibleCells.isEmpty()) return false; //nothing in this row is visible to us
+        for(int i=visibleCells.nextSetBit(0);i>=0;i=visibleCells.nextSetBit(i+1)){
+            if(filter.accumulate(keyValues.get(i))==DataFilter.ReturnCode.NEXT_ROW)
+                return false; //failed the predicate
+        }
+        return filter.getAccumulator().result() != null;
+    }
+
     private boolean filterRowKey(DataCell data) throws IOException {
         if(!isKeyed) return true;
         keyDecoder.set(data.keyArray(), data.keyOffset(), data.keyLength());
+        //the predicates refer to the positions of the row's value, not of its key
+        EntryPredicateFilter keyFilter = predicateFilter.withoutPredicates();
         if(keyAccumulator==null)
-            keyAccumulator = ExecRowAccumulator.newAccumulator(predicateFilter,false,template,
+            keyAccumulator = ExecRowAccumulator.newAccumulator(keyFilter,false,template,
                     keyDecodingMap, keyColumnSortOrder, accessedKeys, tableVersion);
         keyAccumulator.reset();
         primaryKeyIndex.reset();
-        return predicateFilter.match(primaryKeyIndex, keyDecoderProvider, keyAccumulator);
+        return keyFilter.match(primaryKeyIndex, keyDecoderProvider, keyAccumulator);
+    }
+
+    /**
+     * A batch of rows read from the region scanner, along with the transactional visibility
+     * of each of their cells.
+     */
+    private static class RowBatch{
+        private final List<List<DataCell>> rows;
+        private final BitSet[] visibleCells;
+        private int size;
+        private int position;
+        private boolean exhausted;
+
+        RowBatch(int maxRows){
+            this.rows = new ArrayList<>(maxRows);
+            this.visibleCells = new BitSet[maxRows];
+            for(int i=0;i<maxRows;i++){
+                rows.add(new ArrayList<DataCell>());
+                visibleCells[i] = new BitSet();
+            }
+        }
+
+        boolean fill(DataScanner scanner,BatchTxnFilter filter) throws IOException{
+            size = 0;
+            position = 0;
+            while(!exhausted && size<visibleCells.length){
+                List<DataCell> next = scanner.next(-1);
+                if(next.size()<=0){
+                    exhausted = true;
+                    break;
+                }
+                /*
+                 * Scanners are free to re-use the list they return between calls,
+                 * so we need our own copy of the row
+                 */
+                List<DataCell> row = rows.get(size);
+                row.clear();
+                row.addAll(next);
+                size++;
+            }
+            if(size<=0) return false;
+            filter.filterRows(rows,size,visibleCells);
+            return true;
+        }
+
+        boolean hasNext(){ return position<size; }
+
+        List<DataCell> row(){ return rows.get(position); }
+
+        BitSet visibleCells(){ return visibleCells[position]; }
+
+        void advance(){ position++; }
+
+        void clear(){
+            size = 0;
+            position = 0;
+            exhausted = false;
+        }
     }
 
     private class KeyIndex implements Indexed{
@@ -75,9 +75,11 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
     protected long baseTableConglomId=-1l;
     protected long demarcationPoint=-1;
     protected boolean oneSplitPerRegion=false;
+    protected double sampleFraction=1d;
     protected Activation activation;
     protected MetricFactory metricFactory =Metrics.noOpMetricFactory();
     protected DataValueDescriptor optionalProbeValue;
+    protected JoinKeyFilter joinKeyFilter;
 
     @Override
     public ScanSetBuilder<V> metricFactory(MetricFactory metricFactory){
@@ -104,6 +106,12 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
         return this;
     }
 
+    @Override
+    public ScanSetBuilder<V> joinKeyFilter(JoinKeyFilter joinKeyFilter){
+        this.joinKeyFilter=joinKeyFilter;
+        return this;
+    }
+
     @Override
     public ScanSetBuilder<V> template(ExecRow template){
         assert template!=null:"Null template rows are not allowed!";
@@ -336,6 +344,12 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
         return this;
     }
 
+    @Override
+    public ScanSetBuilder<V> sampleFraction(double sampleFraction){
+        this.sampleFraction=sampleFraction;
+        return this;
+    }
+
     public SITableScanner build(){
             return new SITableScanner(
                     scanner,
@@ -354,7 +368,8 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
                     tableVersion,
                     filterFactory,
                     demarcationPoint,
-                    optionalProbeValue);
+                    optionalProbeValue,
+                    joinKeyFilter);
     }
 
     @Override
@@ -409,6 +424,7 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
             out.writeObject(accessedKeys);
             out.writeBoolean(reuseRowLocation);
             out.writeBoolean(oneSplitPerRegion);
+            out.writeDouble(sampleFraction);
             out.writeBoolean(indexName!=null);
             if(indexName!=null)
                 out.writeUTF(indexName);
@@ -434,6 +450,9 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
             out.writeBoolean(optionalProbeValue !=null);
             if (optionalProbeValue!=null)
                 out.writeObject(optionalProbeValue);
+            out.writeBoolean(joinKeyFilter!=null);
+            if(joinKeyFilter!=null)
+                out.writeObject(joinKeyFilter);
         }catch(StandardException e){
             throw new IOException(e.getCause());
         }
@@ -490,6 +509,7 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
             accessedKeys=(FormatableBitSet)in.readObject();
             reuseRowLocation = in.readBoolean();
             oneSplitPerRegion = in.readBoolean();
+            sampleFraction = in.readDouble();
             if(in.readBoolean())
                 indexName=in.readUTF();
             if(in.readBoolean())
@@ -511,6 +531,8 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
             demarcationPoint=in.readLong();
             if (in.readBoolean())
                 optionalProbeValue = (DataValueDescriptor) in.readObject();
+            if(in.readBoolean())
+                joinKeyFilter=(JoinKeyFilter)in.readObject();
         }catch(StandardException e){
             throw new IOException(e.getCause());
         }
@@ -601,4 +623,9 @@ public abstract class TableScannerBuilder<V> implements Externalizable, ScanSetB
     public ExecRow getTemplate() {
         return template;
     }
+
+    @Override
+    public double getSampleFraction() {
+        return sampleFraction;
+    }
 }
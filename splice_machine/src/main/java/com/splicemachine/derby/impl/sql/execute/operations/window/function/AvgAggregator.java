@@ -24,10 +24,14 @@ import com.splicemachine.db.iapi.types.DataValueDescriptor;
 import com.splicemachine.db.iapi.types.NumberDataValue;
 
 /**
+ * Like {@link SumAggregator}, keeps a running sum (and count) of the frame which is updated as
+ * rows enter and leave it, so that each result costs a single division.
  *
  * Created by jyuan on 7/31/14.
  */
 public class AvgAggregator extends SpliceGenericWindowFunction {
+    private NumberDataValue sum;
+    private long nonNullCount;
 
     @Override
     public WindowFunction setup( ClassFactory cf, String aggregateName, DataTypeDescriptor returnType,
@@ -41,45 +45,49 @@ public class AvgAggregator extends SpliceGenericWindowFunction {
         this.add(valueDescriptors);
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        sum = null;
+        nonNullCount = 0;
+    }
+
     @Override
     protected void calculateOnAdd(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException{
-        DataValueDescriptor result = chunk.getResult();
-        if (result == null || result.isNull()) {
-            chunk.setResult(dvds[0].cloneValue(false));
-        } else {
-            NumberDataValue input = (NumberDataValue)dvds[0];
-            if (input != null && ! input.isNull()) {
-                NumberDataValue nv = (NumberDataValue) result.cloneValue(false);
-                nv.plus(input, nv, nv);
-                chunk.setResult(nv);
+        NumberDataValue input = (NumberDataValue)dvds[0];
+        if (sum == null) {
+            sum = (NumberDataValue) input.cloneValue(false);
+            if (!input.isNull()) {
+                nonNullCount++;
+            }
+        } else if (!input.isNull()) {
+            if (nonNullCount == 0) {
+                sum.setValue(input);
+            } else {
+                sum.plus(sum, input, sum);
             }
+            nonNullCount++;
         }
     }
 
     @Override
     protected void calculateOnRemove(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException {
-        DataValueDescriptor result = chunk.getResult();
         NumberDataValue input = (NumberDataValue)dvds[0];
         if (input != null && ! input.isNull()) {
-            NumberDataValue nv = (NumberDataValue) result.cloneValue(false);
-            nv.minus(nv, input, nv);
-            chunk.setResult(nv);
+            if (--nonNullCount == 0) {
+                sum.setToNull();
+            } else {
+                sum.minus(sum, input, sum);
+            }
         }
     }
 
     public DataValueDescriptor getResult() throws StandardException {
-        // Iterate through each chunk, compute the max/min of each chunk
-        WindowChunk first = chunks.get(0);
-        long count = first.last - first.first;
-        NumberDataValue result = (NumberDataValue)first.getResult().cloneValue(false);
-        long r = result.getLong();
-        for (int i = 1; i < chunks.size(); ++i) {
-            WindowChunk chunk = chunks.get(i);
-            NumberDataValue dvd = (NumberDataValue)chunk.getResult();
-            r += dvd.getLong();
-            count += chunk.last - chunk.first;
+        if (sum == null || nonNullCount == 0) {
+            return sum;
         }
-        result.setValue((r*1.0)/count);
+        NumberDataValue result = (NumberDataValue)sum.cloneValue(false);
+        result.setValue(sum.getDouble()/nonNullCount);
         return result;
     }
 
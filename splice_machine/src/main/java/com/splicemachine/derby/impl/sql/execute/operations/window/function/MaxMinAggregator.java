@@ -18,6 +18,7 @@ package com.splicemachine.derby.impl.sql.execute.operations.window.function;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayDeque;
 
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.services.io.FormatableHashtable;
@@ -27,11 +28,22 @@ import com.splicemachine.db.iapi.types.DataTypeDescriptor;
 import com.splicemachine.db.iapi.types.DataValueDescriptor;
 
 /**
+ * MAX and MIN are not invertible, so the frame is tracked with a monotonic deque: it holds, in arrival
+ * order, only those values which could still become the result as older values leave the frame (for MAX,
+ * each value is smaller than every value ahead of it). The result is always at the head of the deque, and
+ * each value is added to and removed from the deque at most once, so a row costs amortized constant time
+ * no matter how large the frame is.
+ *
+ * Null values are ignored.
  *
  * Created by jyuan on 7/22/14.
  */
 public class MaxMinAggregator extends SpliceGenericWindowFunction {
     private boolean isMax;
+    private ArrayDeque<Candidate> candidates;
+    // sequence numbers of the next value to enter and to leave the frame
+    private long added;
+    private long removed;
 
     @Override
     public WindowFunction setup( ClassFactory cf, String aggregateName, DataTypeDescriptor returnType,
@@ -46,65 +58,55 @@ public class MaxMinAggregator extends SpliceGenericWindowFunction {
         this.add(valueDescriptors);
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        candidates = new ArrayDeque<>();
+        added = removed = 0;
+    }
+
     @Override
     protected void calculateOnAdd(WindowChunk chunk, DataValueDescriptor[] dvd) throws StandardException{
-        DataValueDescriptor result = chunk.getResult();
-        if (result == null || result.isNull()) {
-            chunk.setResult(dvd[0]);
-        }
-        else if(isMax && dvd[0].compare(result) > 0) {
-            chunk.setResult(dvd[0]);
+        long sequence = added++;
+        DataValueDescriptor value = dvd[0];
+        if (value == null || value.isNull()) {
+            return;
         }
-        else if (!isMax && dvd[0].compare(result) < 0) {
-            chunk.setResult(dvd[0]);
+        // anything which is no better than the new value can never be the result again
+        while (!candidates.isEmpty() && !isBetter(candidates.peekLast().value, value)) {
+            candidates.pollLast();
         }
+        candidates.addLast(new Candidate(sequence, value));
     }
 
     @Override
     protected void calculateOnRemove(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException {
-        DataValueDescriptor result = chunk.getResult();
-        if (dvds[0].compare(result) == 0) {
-            recalculate(chunk);
+        long sequence = removed++;
+        if (!candidates.isEmpty() && candidates.peekFirst().sequence == sequence) {
+            candidates.pollFirst();
         }
     }
 
-    private void recalculate(WindowChunk chunk) throws StandardException{
-        DataValueDescriptor result = chunk.get(chunk.first)[0];
-
-        for (int i = chunk.first+1; i < chunk.last; ++i) {
-            DataValueDescriptor dvd = chunk.get(i)[0];
-            if (isMax) {
-                if (dvd.compare(result) > 0) {
-                    result = dvd;
-                }
-            }
-            else {
-                if (dvd.compare(result) < 0) {
-                    result = dvd;
-                }
-            }
-        }
-        chunk.setResult(result);
+    private boolean isBetter(DataValueDescriptor left, DataValueDescriptor right) throws StandardException {
+        int c = left.compare(right);
+        return isMax ? c > 0 : c < 0;
     }
 
     public DataValueDescriptor getResult() throws StandardException {
-        // Iterate through each chunk, compute the max/min of each chunk
-        WindowChunk first = chunks.get(0);
-        DataValueDescriptor result = first.getResult();
-        for (int i = 1; i < chunks.size(); ++i) {
-            DataValueDescriptor dvd = chunks.get(i).getResult();
-            if (isMax) {
-                if (dvd.compare(result) > 0) {
-                    result = dvd;
-                }
-            }
-            else {
-                if (dvd.compare(result) < 0) {
-                    result = dvd;
-                }
-            }
+        if (candidates.isEmpty()) {
+            return resultType == null ? null : resultType.getNewNull();
+        }
+        return candidates.peekFirst().value;
+    }
+
+    private static class Candidate {
+        final long sequence;
+        final DataValueDescriptor value;
+
+        Candidate(long sequence, DataValueDescriptor value) {
+            this.sequence = sequence;
+            this.value = value;
         }
-        return result;
     }
 
     @Override
@@ -78,17 +78,15 @@ public abstract class SpliceGenericWindowFunction implements WindowFunction {
     public DataValueDescriptor[] remove() throws StandardException{
 
         DataValueDescriptor[] dvd = first.remove();
+        calculateOnRemove(first, dvd);
         if (first.consumed()) {
             chunks.remove(first);
             if (chunks.size() == 0) {
                 first = last = null;
-                return null;
+                return dvd;
             }
             first = chunks.get(0);
         }
-        else {
-            calculateOnRemove(first, dvd);
-        }
         return dvd;
     }
 
@@ -249,4 +247,14 @@ public abstract class SpliceGenericWindowFunction implements WindowFunction {
         // override/implement if function needs the entire frame
         return null;
     }
+
+    /**
+     * @return true if this function can only produce its results once every row of the partition
+     * has been seen (i.e. it implements {@link #finishFrame()}). Frame buffers hold back the rows
+     * of a partition until the end of the partition for such functions, and otherwise return each
+     * row as soon as its own frame is complete.
+     */
+    public boolean requiresEntirePartition() {
+        return false;
+    }
 }
@@ -24,10 +24,15 @@ import com.splicemachine.db.iapi.types.DataValueDescriptor;
 import com.splicemachine.db.iapi.types.NumberDataValue;
 
 /**
+ * SUM is invertible, so rather than summing every chunk of the frame for each row, a running sum is
+ * kept which rows are added to as they enter the frame and subtracted from as they leave it.
  *
  * Created by jyuan on 7/31/14.
  */
 public class SumAggregator extends SpliceGenericWindowFunction {
+    private NumberDataValue sum;
+    // the number of non-null values in the frame; the sum of an empty (or all null) frame is null
+    private long nonNullCount;
 
     @Override
     public WindowFunction setup( ClassFactory cf, String aggregateName, DataTypeDescriptor returnType,
@@ -41,42 +46,46 @@ public class SumAggregator extends SpliceGenericWindowFunction {
         this.add(valueDescriptors);
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        sum = null;
+        nonNullCount = 0;
+    }
+
     @Override
     protected void calculateOnAdd(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException{
-        DataValueDescriptor result = chunk.getResult();
-        if (result == null || result.isNull()) {
-            chunk.setResult(dvds[0].cloneValue(false));
-        } else {
-            NumberDataValue input = (NumberDataValue)dvds[0];
-            if (input != null && ! input.isNull()) {
-                NumberDataValue nv = (NumberDataValue) result.cloneValue(false);
-                nv.plus(input, nv, nv);
-                chunk.setResult(nv);
+        NumberDataValue input = (NumberDataValue)dvds[0];
+        if (sum == null) {
+            sum = (NumberDataValue) input.cloneValue(false);
+            if (!input.isNull()) {
+                nonNullCount++;
             }
+        } else if (!input.isNull()) {
+            if (nonNullCount == 0) {
+                sum.setValue(input);
+            } else {
+                sum.plus(sum, input, sum);
+            }
+            nonNullCount++;
         }
     }
 
     @Override
     protected void calculateOnRemove(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException {
-        DataValueDescriptor result = chunk.getResult();
         NumberDataValue input = (NumberDataValue)dvds[0];
         if (input != null && ! input.isNull()) {
-            NumberDataValue nv = (NumberDataValue) result.cloneValue(false);
-            nv.minus(nv, input, nv);
-            chunk.setResult(nv);
+            if (--nonNullCount == 0) {
+                sum.setToNull();
+            } else {
+                sum.minus(sum, input, sum);
+            }
         }
     }
 
     @Override
     public DataValueDescriptor getResult() throws StandardException {
-        // Iterate through each chunk, compute the max/min of each chunk
-        WindowChunk first = chunks.get(0);
-        NumberDataValue result = (NumberDataValue)first.getResult();
-        for (int i = 1; i < chunks.size(); ++i) {
-            NumberDataValue dvd = (NumberDataValue)chunks.get(i).getResult();
-            result.plus(result, dvd, result);
-        }
-        return result;
+        return sum;
     }
 
     @Override
@@ -17,23 +17,51 @@ package com.splicemachine.derby.impl.sql.execute.sequence;
 
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.pipeline.Exceptions;
+import org.apache.log4j.Logger;
+import org.spark_project.guava.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Hands out sequence values from blocks which are reserved against the stored sequence value.
+ *
+ * Values are taken from the current block without locking. Once three quarters of a block has been
+ * handed out, the next block is reserved in the background, so that callers only wait for a round trip to
+ * the sequence row when values are consumed faster than that round trip can complete.
+ *
+ * The size of a block adapts to the rate at which values are consumed. A block which would be used up in less
+ * than a second is followed by one twice the size (up to {@link #MAX_GROWTH} times the configured block size),
+ * and a block which would last more than ten seconds is followed by one half the size (but never smaller
+ * than the configured block size).
+ */
 public abstract class AbstractSequence implements Sequence, Externalizable{
-    protected final AtomicLong remaining=new AtomicLong(0l);
-    protected final AtomicLong currPosition=new AtomicLong(0l);
+    private static final Logger LOG=Logger.getLogger(AbstractSequence.class);
+    static final long MAX_GROWTH=64;
+    private static final long FAST_BLOCK_NANOS=TimeUnit.SECONDS.toNanos(1);
+    private static final long SLOW_BLOCK_NANOS=TimeUnit.SECONDS.toNanos(10);
+    private static final ExecutorService PREFETCHER=Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("SequencePrefetcher-%d").setDaemon(true).build());
+
     protected long blockAllocationSize;
     protected long incrementSteps;
     protected final Lock updateLock=new ReentrantLock();
     protected long startingValue;
 
+    private volatile Block current=Block.EXHAUSTED;
+    private final AtomicBoolean prefetching=new AtomicBoolean(false);
+    //guarded by updateLock
+    private Block prefetched;
+
     public AbstractSequence(){
 
     }
@@ -47,15 +75,26 @@ public abstract class AbstractSequence implements Sequence, Externalizable{
     }
 
     public long getNext() throws StandardException{
-        if(remaining.getAndDecrement()<=0)
-            allocateBlock(false);
-        return currPosition.getAndAdd(incrementSteps);
+        while(true){
+            Block block=current;
+            long index=block.taken.getAndIncrement();
+            if(index<block.count){
+                if(index==block.prefetchIndex)
+                    prefetch();
+                return block.start+index*incrementSteps;
+            }
+            nextBlock(block);
+        }
     }
 
     public long peekAtCurrentValue() throws StandardException {
-        if(remaining.get()<= 0)
-            allocateBlock(true);
-        return currPosition.get();
+        while(true){
+            Block block=current;
+            long index=block.taken.get();
+            if(index<block.count)
+                return block.start+index*incrementSteps;
+            nextBlock(block);
+        }
     }
 
     protected abstract long getCurrentValue() throws IOException;
@@ -64,27 +103,107 @@ public abstract class AbstractSequence implements Sequence, Externalizable{
 
     public abstract void close() throws IOException;
 
-    private void allocateBlock(boolean peek) throws StandardException{
-        boolean success=false;
-        while(!success){
-            updateLock.lock();
-            try{
-                if(remaining.getAndDecrement()>0)
-                    return;
-                currPosition.set(getCurrentValue());
-                success=atomicIncrement(currPosition.get()+(incrementSteps>blockAllocationSize?incrementSteps:blockAllocationSize));
-                if(success){
-                    long v = blockAllocationSize/incrementSteps;
-                    remaining.set(peek?v:v-1);
+    /**
+     * @return the number of values in the block currently being handed out
+     */
+    long currentBlockSize(){
+        return current.count;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private void nextBlock(Block exhausted) throws StandardException{
+        updateLock.lock();
+        try{
+            if(current!=exhausted)
+                return; //another thread has already moved on to the next block
+            Block next=prefetched;
+            prefetched=null;
+            if(next==null){
+                SequenceMetrics.INSTANCE.stalled();
+                next=allocateBlock(exhausted);
+            }
+            next.activate();
+            current=next;
+        }catch(IOException e){
+            throw Exceptions.parseException(e);
+        }finally{
+            updateLock.unlock();
+        }
+    }
+
+    private void prefetch(){
+        if(!prefetching.compareAndSet(false,true))
+            return;
+        final Block block=current;
+        PREFETCHER.execute(new Runnable(){
+            @Override
+            public void run(){
+                updateLock.lock();
+                try{
+                    if(prefetched==null && current==block){
+                        prefetched=allocateBlock(block);
+                        SequenceMetrics.INSTANCE.prefetched();
+                    }
+                }catch(Exception e){
+                    //the block will be allocated when it's needed instead
+                    LOG.warn("Unable to prefetch the next sequence block",e);
+                }finally{
+                    updateLock.unlock();
+                    prefetching.set(false);
                 }
-            }catch(IOException e){
-                throw Exceptions.parseException(e);
-            }finally{
-                updateLock.unlock();
+            }
+        });
+    }
+
+    private Block allocateBlock(Block previous) throws IOException{
+        long count=nextBlockSize(previous);
+        long start=System.nanoTime();
+        while(true){
+            long value=getCurrentValue();
+            if(atomicIncrement(value+count*incrementSteps)){
+                SequenceMetrics.INSTANCE.allocated(System.nanoTime()-start);
+                return new Block(value,count);
             }
         }
     }
 
+    private long nextBlockSize(Block previous){
+        long minSize=Math.max(1l,blockAllocationSize/Math.abs(incrementSteps));
+        if(previous==Block.EXHAUSTED)
+            return minSize;
+        long used=Math.min(previous.taken.get(),previous.count);
+        long elapsed=System.nanoTime()-previous.activated;
+        if(used<=0)
+            return Math.max(minSize,previous.count>>1);
+        //how long the previous block would last, at the rate it has been used so far
+        double lifetime=((double)elapsed)*previous.count/used;
+        if(lifetime<FAST_BLOCK_NANOS)
+            return Math.min(minSize*MAX_GROWTH,previous.count<<1);
+        else if(lifetime>SLOW_BLOCK_NANOS)
+            return Math.max(minSize,previous.count>>1);
+        return previous.count;
+    }
+
+    private static class Block{
+        private static final Block EXHAUSTED=new Block(0l,0l);
+
+        private final long start;
+        private final long count;
+        private final long prefetchIndex;
+        private final AtomicLong taken=new AtomicLong(0l);
+        private volatile long activated;
+
+        Block(long start,long count){
+            this.start=start;
+            this.count=count;
+            this.prefetchIndex=count-Math.max(1l,count>>2);
+        }
+
+        void activate(){
+            activated=System.nanoTime();
+        }
+    }
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException{
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.sequence;
+
+import com.splicemachine.hbase.jmx.JMXUtils;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the block allocations of every sequence in this JVM.
+ */
+public class SequenceMetrics implements SequenceStatistics{
+    public static final SequenceMetrics INSTANCE=new SequenceMetrics();
+
+    private final LongAdder blocksAllocated=new LongAdder();
+    private final LongAdder blocksPrefetched=new LongAdder();
+    private final LongAdder allocationStalls=new LongAdder();
+    private final LongAdder allocationNanos=new LongAdder();
+
+    private SequenceMetrics(){ }
+
+    public void registerJMX(MBeanServer mbs) throws MalformedObjectNameException, NotCompliantMBeanException, MBeanRegistrationException{
+        try{
+            mbs.registerMBean(this,new ObjectName(JMXUtils.SEQUENCE_STATISTICS));
+        }catch(InstanceAlreadyExistsException ignored){
+            //a master and a region server sharing this JVM (e.g. for testing) will both try to register
+        }
+    }
+
+    void allocated(long nanos){
+        blocksAllocated.increment();
+        allocationNanos.add(nanos);
+    }
+
+    void prefetched(){
+        blocksPrefetched.increment();
+    }
+
+    void stalled(){
+        allocationStalls.increment();
+    }
+
+    @Override public long getBlocksAllocated(){ return blocksAllocated.sum(); }
+    @Override public long getBlocksPrefetched(){ return blocksPrefetched.sum(); }
+    @Override public long getAllocationStalls(){ return allocationStalls.sum(); }
+    @Override public long getTotalAllocationTimeMicros(){ return TimeUnit.NANOSECONDS.toMicros(allocationNanos.sum()); }
+
+    @Override
+    public double getMeanAllocationTimeMicros(){
+        long blocks=blocksAllocated.sum();
+        return blocks==0?0d:((double)getTotalAllocationTimeMicros())/blocks;
+    }
+}
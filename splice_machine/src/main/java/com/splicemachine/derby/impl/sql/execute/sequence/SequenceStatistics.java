@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.sequence;
+
+import javax.management.MXBean;
+
+/**
+ * Exposes the block allocation behavior of the sequences and identity columns on this server via JMX.
+ */
+@MXBean
+public interface SequenceStatistics{
+
+    /**
+     * @return the number of blocks which have been reserved against the stored sequence values
+     */
+    long getBlocksAllocated();
+
+    /**
+     * @return the number of blocks which were reserved in the background, before the previous block ran out
+     */
+    long getBlocksPrefetched();
+
+    /**
+     * @return the number of times a block ran out before the next block was ready, so that callers
+     * had to wait for it to be reserved
+     */
+    long getAllocationStalls();
+
+    /**
+     * @return the total time spent reserving blocks, in microseconds
+     */
+    long getTotalAllocationTimeMicros();
+
+    /**
+     * @return the mean time taken to reserve a block, in microseconds
+     */
+    double getMeanAllocationTimeMicros();
+}
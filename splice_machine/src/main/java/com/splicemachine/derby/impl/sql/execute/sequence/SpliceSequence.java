@@ -32,6 +32,11 @@ public class SpliceSequence extends AbstractSequence{
     static final byte[] autoIncrementValueQualifier=Encoding.encode(7);
     private PartitionFactory partitionFactory;
     private TxnOperationFactory opFactory;
+    /*
+     * The stored value as of the last read, which the next increment must still find in place. It is null
+     * if the sequence row doesn't have a value yet
+     */
+    private byte[] lastReadValue;
 
     public SpliceSequence(){
         super();
@@ -57,10 +62,14 @@ public class SpliceSequence extends AbstractSequence{
             currValue.returnAllVersions();
             currValue.setTimeRange(0l,Long.MAX_VALUE);
             DataResult result=sysColumnTable.get(currValue,null);
-            if(result==null || result.size()<=0)
+            if(result==null || result.size()<=0){
+                lastReadValue=null;
                 return startingValue;
+            }
             DataCell dataCell=result.latestCell(SIConstants.DEFAULT_FAMILY_BYTES,autoIncrementValueQualifier);
-            return Encoding.decodeLong(dataCell.valueArray(),dataCell.valueOffset(),false);
+            long value=Encoding.decodeLong(dataCell.valueArray(),dataCell.valueOffset(),false);
+            lastReadValue=Encoding.encode(value);
+            return value;
         }
     }
 
@@ -71,7 +80,7 @@ public class SpliceSequence extends AbstractSequence{
             put.addCell(SIConstants.DEFAULT_FAMILY_BYTES,autoIncrementValueQualifier,Encoding.encode(next));
             return sysColumnTable.checkAndPut(sysColumnsRow,
                     SIConstants.DEFAULT_FAMILY_BYTES,
-                    autoIncrementValueQualifier,currPosition.get()==startingValue?null:Encoding.encode(currPosition.get()),put);
+                    autoIncrementValueQualifier,lastReadValue,put);
         }
     }
 
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.services.context.ContextManager;
+import com.splicemachine.db.iapi.services.context.ContextService;
+import com.splicemachine.db.iapi.sql.conn.LanguageConnectionContext;
+import com.splicemachine.db.iapi.sql.dictionary.*;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.store.access.SpliceTransactionManager;
+import com.splicemachine.derby.jdbc.SpliceTransactionResourceImpl;
+import com.splicemachine.derby.impl.store.access.base.SpliceConglomerate;
+import com.splicemachine.derby.utils.StatisticsAdmin;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.EntryDataDecoder;
+import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.impl.driver.SIDriver;
+
+import java.util.List;
+
+/**
+ * The columns of a base table which statistics are collected for, along with what is needed
+ * to decode them from the stored rows of the table.
+ *
+ * Instances are immutable, and may be shared between threads; the decoders which they create may not.
+ */
+public class CollectedColumns{
+    private final long conglomerateId;
+    private final String tableVersion;
+    private final int[] columnIds;
+    private final int[] storagePositions;
+    private final DataValueDescriptor[] templates;
+    private final int[] keyColumns;
+    private final boolean[] keySortOrder;
+    private final int[] formatIds;
+
+    CollectedColumns(long conglomerateId,
+                     String tableVersion,
+                     int[] columnIds,
+                     int[] storagePositions,
+                     DataValueDescriptor[] templates,
+                     int[] keyColumns,
+                     boolean[] keySortOrder,
+                     int[] formatIds){
+        this.conglomerateId=conglomerateId;
+        this.tableVersion=tableVersion;
+        this.columnIds=columnIds;
+        this.storagePositions=storagePositions;
+        this.templates=templates;
+        this.keyColumns=keyColumns;
+        this.keySortOrder=keySortOrder;
+        this.formatIds=formatIds;
+    }
+
+    /**
+     * @return the collected columns of the base conglomerate of {@code td}, or {@code null} if no statistics are
+     * collected for the table.
+     */
+    public static CollectedColumns forTable(TableDescriptor td,LanguageConnectionContext lcc) throws StandardException{
+        List<ColumnDescriptor> collected=StatisticsAdmin.getCollectedColumns(td);
+        if(collected.isEmpty()) return null;
+
+        long conglomerateId=td.getHeapConglomerateId();
+        SpliceConglomerate conglomerate=(SpliceConglomerate)((SpliceTransactionManager)lcc.getTransactionExecute())
+                .findConglomerate(conglomerateId);
+        int[] keyColumns=conglomerate.getColumnOrdering();
+        if(keyColumns!=null && keyColumns.length==0)
+            keyColumns=null;
+
+        /*
+         * Templates are indexed by storage position. We need templates for every collected column, and for
+         * all of the primary key columns (whether collected or not), since the key is decoded as a whole.
+         */
+        DataValueDescriptor[] templates=new DataValueDescriptor[conglomerate.getFormat_ids().length];
+        int[] columnIds=new int[collected.size()];
+        int[] storagePositions=new int[collected.size()];
+        for(int i=0;i<columnIds.length;i++){
+            ColumnDescriptor cd=collected.get(i);
+            columnIds[i]=cd.getPosition();
+            storagePositions[i]=cd.getStoragePosition()-1;
+            templates[storagePositions[i]]=cd.getType().getNull();
+        }
+        if(keyColumns!=null){
+            ColumnDescriptorList columns=td.getColumnDescriptorList();
+            for(int keyColumn:keyColumns){
+                if(templates[keyColumn]!=null) continue;
+                for(ColumnDescriptor cd:columns){
+                    if(cd.getStoragePosition()-1==keyColumn){
+                        templates[keyColumn]=cd.getType().getNull();
+                        break;
+                    }
+                }
+            }
+        }
+        return new CollectedColumns(conglomerateId,td.getVersion(),columnIds,storagePositions,templates,
+                keyColumns,conglomerate.getAscDescInfo(),conglomerate.getFormat_ids());
+    }
+
+    /**
+     * Look up the collected columns of a conglomerate, in a (read-only) transaction of its own.
+     *
+     * @return the collected columns, or {@code null} if the conglomerate is not the base conglomerate of a
+     * user table, or no statistics are collected for it.
+     */
+    public static CollectedColumns forConglomerate(long conglomerateId) throws Exception{
+        Txn txn=SIDriver.driver().lifecycleManager().beginTransaction();
+        ContextManager currentCm=ContextService.getFactory().getCurrentContextManager();
+        SpliceTransactionResourceImpl transactionResource=new SpliceTransactionResourceImpl();
+        boolean prepared=false;
+        try{
+            prepared=transactionResource.marshallTransaction(txn);
+            LanguageConnectionContext lcc=transactionResource.getLcc();
+            DataDictionary dd=lcc.getDataDictionary();
+            ConglomerateDescriptor cd=dd.getConglomerateDescriptor(conglomerateId);
+            if(cd==null || cd.isIndex()) return null;
+            TableDescriptor td=dd.getTableDescriptor(cd.getTableID());
+            if(td==null || td.getSchemaDescriptor().getSchemaName().equals("SYS")) return null;
+            return forTable(td,lcc);
+        }finally{
+            txn.commit();
+            if(prepared)
+                transactionResource.close();
+            if(currentCm!=null)
+                ContextService.getFactory().setCurrentContextManager(currentCm);
+        }
+    }
+
+    public long getConglomerateId(){
+        return conglomerateId;
+    }
+
+    /**
+     * @return the (1-based) column positions of the collected columns
+     */
+    public int[] getColumnIds(){
+        return columnIds;
+    }
+
+    /**
+     * @return templates for the collected columns, in the same order as {@link #getColumnIds()}
+     */
+    public DataValueDescriptor[] getColumnTemplates(){
+        DataValueDescriptor[] columnTemplates=new DataValueDescriptor[storagePositions.length];
+        for(int i=0;i<storagePositions.length;i++){
+            columnTemplates[i]=templates[storagePositions[i]];
+        }
+        return columnTemplates;
+    }
+
+    /**
+     * @return a decoder for the row key, or {@code null} if the table has no primary key (and thus no
+     * columns are stored in the row key).
+     */
+    public KeyHashDecoder newKeyDecoder(){
+        if(keyColumns==null) return null;
+        DescriptorSerializer[] denseSerializers=VersionedSerializers.forVersion(tableVersion,false).getSerializers(formatIds);
+        return BareKeyHash.decoder(keyColumns,keySortOrder,denseSerializers);
+    }
+
+    /**
+     * @return a decoder for the (packed) row value
+     */
+    public EntryDataDecoder newRowDecoder(){
+        DescriptorSerializer[] serializers=VersionedSerializers.forVersion(tableVersion,true).getSerializers(formatIds);
+        return new EntryDataDecoder(null,null,serializers);
+    }
+
+    /**
+     * @return a new row to decode into, with fresh values for each decoded column and {@code null}
+     * for every column which is not needed (and which decoders will therefore skip).
+     */
+    public ExecRow newRow() throws StandardException{
+        DataValueDescriptor[] fields=new DataValueDescriptor[templates.length];
+        for(int i=0;i<templates.length;i++){
+            if(templates[i]!=null)
+                fields[i]=templates[i].getNewNull();
+        }
+        ExecRow row=new ValueRow(fields.length);
+        row.setRowArray(fields);
+        return row;
+    }
+
+    /**
+     * @return the values of the collected columns of {@code row}, in the same order as {@link #getColumnIds()}
+     */
+    public DataValueDescriptor[] collectedValues(ExecRow row){
+        DataValueDescriptor[] fields=row.getRowArray();
+        DataValueDescriptor[] values=new DataValueDescriptor[storagePositions.length];
+        for(int i=0;i<storagePositions.length;i++){
+            values[i]=fields[storagePositions[i]];
+        }
+        return values;
+    }
+
+    /**
+     * @return the position in a decoded row of each collected column, in the same order as {@link #getColumnIds()}
+     */
+    int[] getStoragePositions(){
+        return storagePositions;
+    }
+}
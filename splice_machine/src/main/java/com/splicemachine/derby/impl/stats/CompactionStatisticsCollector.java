@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.carrotsearch.hppc.LongOpenHashSet;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.stats.ColumnStatisticsImpl;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.utils.StatisticsAdmin;
+import com.splicemachine.derby.utils.marshall.EntryDataDecoder;
+import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.storage.DataCell;
+import com.splicemachine.storage.index.BitIndex;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Collects the statistics of a partition from the cells which a major compaction writes out.
+ *
+ * A major compaction reads every cell of the partition anyway, so the statistics of the partition can be
+ * computed as a side effect, rather than with a separate scan. For each row, only the data which is visible
+ * to a new transaction is counted: versions written by transactions which have not committed are ignored,
+ * as are rows whose latest committed change is a delete. Updates only write the columns which changed, so the
+ * visible row is assembled from the newest version of each column.
+ *
+ * The cells of a single row may be spread across several calls to {@link #collect(List)}, but rows must be
+ * given in order, as a compaction does.
+ */
+@NotThreadSafe
+public class CompactionStatisticsCollector{
+    private final CollectedColumns columns;
+    private final String partitionId;
+    private final TxnSupplier txnSupplier;
+    private final KeyHashDecoder keyDecoder;
+    private final EntryDataDecoder rowDecoder;
+    private final int[] storagePositions;
+    private final ColumnStatisticsImpl[] columnStatistics;
+
+    private final List<DataCell> rowCells=new ArrayList<>();
+    private final LongOpenHashSet committedVersions=new LongOpenHashSet();
+    private final BitSet filledColumns=new BitSet();
+
+    private long rowCount;
+    private long rowWidth;
+    private long cellCount;
+    private long collectionTime;
+
+    public CompactionStatisticsCollector(CollectedColumns columns,String partitionId,TxnSupplier txnSupplier) throws StandardException{
+        this.columns=columns;
+        this.partitionId=partitionId;
+        this.txnSupplier=txnSupplier;
+        this.keyDecoder=columns.newKeyDecoder();
+        this.rowDecoder=columns.newRowDecoder();
+        this.storagePositions=columns.getStoragePositions();
+        DataValueDescriptor[] templates=columns.getColumnTemplates();
+        this.columnStatistics=new ColumnStatisticsImpl[templates.length];
+        for(int i=0;i<templates.length;i++){
+            columnStatistics[i]=new ColumnStatisticsImpl(templates[i]);
+        }
+    }
+
+    /**
+     * Collect the next cells written by the compaction.
+     *
+     * @param cells the cells, in the order they are written. The cells are retained until the row they
+     *              belong to is complete, so they must not be reused by the caller.
+     */
+    public void collect(List<DataCell> cells) throws IOException{
+        long start=System.nanoTime();
+        try{
+            for(DataCell cell:cells){
+                if(!rowCells.isEmpty() && !sameRow(rowCells.get(0),cell))
+                    finishRow();
+                rowCells.add(cell);
+            }
+            cellCount+=cells.size();
+        }catch(StandardException se){
+            throw new IOException(se);
+        }finally{
+            collectionTime+=System.nanoTime()-start;
+        }
+    }
+
+    /**
+     * Complete the collection.
+     *
+     * @param partitionSize the size, in bytes, of the file written by the compaction
+     * @return the statistics rows of the partition, in the format of {@link StatisticsAdmin#generateRowFromStats}
+     */
+    public List<ExecRow> finish(long partitionSize) throws IOException{
+        long start=System.nanoTime();
+        try{
+            if(!rowCells.isEmpty())
+                finishRow();
+            List<ExecRow> rows=new ArrayList<>(columnStatistics.length+1);
+            int[] columnIds=columns.getColumnIds();
+            for(int i=0;i<columnStatistics.length;i++){
+                rows.add(StatisticsAdmin.generateRowFromStats(columns.getConglomerateId(),partitionId,columnIds[i],columnStatistics[i]));
+            }
+            int meanRowWidth=rowCount>0?(int)(rowWidth/rowCount):0;
+            rows.add(StatisticsAdmin.generateRowFromStats(columns.getConglomerateId(),partitionId,rowCount,partitionSize,meanRowWidth));
+            return rows;
+        }catch(StandardException se){
+            throw new IOException(se);
+        }finally{
+            collectionTime+=System.nanoTime()-start;
+            if(keyDecoder!=null)
+                keyDecoder.close();
+            rowDecoder.close();
+        }
+    }
+
+    public String getPartitionId(){
+        return partitionId;
+    }
+
+    public long getConglomerateId(){
+        return columns.getConglomerateId();
+    }
+
+    /**
+     * @return the number of visible rows which were collected
+     */
+    public long getRowCount(){
+        return rowCount;
+    }
+
+    /**
+     * @return the number of cells which were examined
+     */
+    public long getCellCount(){
+        return cellCount;
+    }
+
+    /**
+     * @return the time (in nanoseconds) spent collecting statistics
+     */
+    public long getCollectionTime(){
+        return collectionTime;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private void finishRow() throws StandardException, IOException{
+        try{
+            /*
+             * The cells of a row are sorted by column and then by version, newest first. Commit timestamps
+             * sort first, so we know which versions are committed by the time we reach the tombstones and data.
+             */
+            committedVersions.clear();
+            filledColumns.clear();
+            long deletedAt=-1l;
+            ExecRow row=null;
+            for(DataCell cell:rowCells){
+                switch(cell.dataType()){
+                    case COMMIT_TIMESTAMP:
+                        committedVersions.add(cell.version());
+                        break;
+                    case TOMBSTONE:
+                        if(cell.version()>deletedAt && isCommitted(cell.version()))
+                            deletedAt=cell.version();
+                        break;
+                    case USER_DATA:
+                        if(cell.version()<=deletedAt || !isCommitted(cell.version()))
+                            break;
+                        if(row==null)
+                            row=newRow(cell);
+                        merge(cell,row);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if(row==null) return; //deleted, or never committed
+
+            DataValueDescriptor[] values=columns.collectedValues(row);
+            for(int i=0;i<values.length;i++){
+                columnStatistics[i].update(values[i]);
+            }
+            ValueRow collected=new ValueRow(values.length);
+            collected.setRowArray(values);
+            rowWidth+=collected.getRowSize();
+            rowCount++;
+        }finally{
+            rowCells.clear();
+        }
+    }
+
+    private ExecRow newRow(DataCell cell) throws StandardException{
+        ExecRow row=columns.newRow();
+        if(keyDecoder!=null){
+            keyDecoder.set(cell.keyArray(),cell.keyOffset(),cell.keyLength());
+            keyDecoder.decode(row);
+        }
+        return row;
+    }
+
+    /*
+     * Fill in the collected columns which are present in this version, but which were not present
+     * in any newer version.
+     */
+    private void merge(DataCell cell,ExecRow row) throws StandardException{
+        rowDecoder.set(cell.valueArray(),cell.valueOffset(),cell.valueLength());
+        BitIndex index=rowDecoder.getFieldDecoder().getCurrentIndex();
+        ExecRow version=columns.newRow();
+        rowDecoder.decode(version);
+        DataValueDescriptor[] fields=row.getRowArray();
+        DataValueDescriptor[] versionFields=version.getRowArray();
+        for(int pos:storagePositions){
+            if(index.isSet(pos) && !filledColumns.get(pos)){
+                fields[pos]=versionFields[pos];
+                filledColumns.set(pos);
+            }
+        }
+    }
+
+    private boolean isCommitted(long version) throws IOException{
+        if(committedVersions.contains(version)) return true;
+        if(txnSupplier==null) return false;
+        TxnView txn=txnSupplier.getTransaction(version);
+        if(txn!=null && txn.getEffectiveState()==Txn.State.COMMITTED){
+            committedVersions.add(version);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean sameRow(DataCell first,DataCell cell){
+        return Bytes.equals(first.keyArray(),first.keyOffset(),first.keyLength(),
+                cell.keyArray(),cell.keyOffset(),cell.keyLength());
+    }
+}
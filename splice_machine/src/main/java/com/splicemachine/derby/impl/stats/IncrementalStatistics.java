@@ -0,0 +1,246 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.dictionary.ColumnStatisticsDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.stats.ColumnStatisticsImpl;
+import com.splicemachine.db.iapi.stats.ColumnStatisticsMerge;
+import com.splicemachine.db.iapi.stats.ItemStatistics;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.derby.utils.StatisticsAdmin;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The statistics of a single partition, as accumulated from the rows written to it.
+ *
+ * The rows which are inserted into the partition are fed into the same theta, quantiles and frequent items
+ * sketches that a full collection builds, so that they can be merged directly into the statistics
+ * which were collected for the partition. Updates and deletes cannot be removed from a sketch, so they
+ * are only counted; once enough of the partition has been modified since it was last collected, the
+ * merged statistics are marked stale.
+ *
+ * Changes are accumulated in a <em>window</em>, which is drained each time the statistics are merged into
+ * the statistics tables. If the partition was re-collected after the window was opened, then the
+ * collection may have already seen some of the rows in the window, so the window is discarded rather than
+ * merged.
+ *
+ * Note that only writes which succeeded in the partition are recorded here, but writes which are later rolled
+ * back are not removed, so the merged statistics are (like all statistics) an approximation.
+ */
+@ThreadSafe
+public class IncrementalStatistics{
+    private final long conglomerateId;
+    private final String partitionId;
+    private final int[] columnIds;
+    private final DataValueDescriptor[] templates;
+    private final Clock clock;
+
+    private ColumnStatisticsImpl[] columnStatistics;
+    private long insertedRows;
+    private long insertedBytes;
+    private long updatedRows;
+    private long deletedRows;
+    private long windowStart=-1l;
+
+    private long modificationsSinceCollection;
+    private long lastCollectionTimestamp=-1l;
+    private volatile long lastActivity;
+
+    /**
+     * @param conglomerateId the conglomerate which the partition belongs to
+     * @param partitionId the name of the partition
+     * @param columnIds the (1-based) column positions of the columns which statistics are kept for
+     * @param templates the column templates, in the same order as {@code columnIds}
+     * @param clock the clock to time changes with
+     */
+    public IncrementalStatistics(long conglomerateId,
+                                 String partitionId,
+                                 int[] columnIds,
+                                 DataValueDescriptor[] templates,
+                                 Clock clock) throws StandardException{
+        assert columnIds.length==templates.length: "Column ids and templates do not match";
+        this.conglomerateId=conglomerateId;
+        this.partitionId=partitionId;
+        this.columnIds=columnIds;
+        this.templates=templates;
+        this.clock=clock;
+        this.columnStatistics=newColumnStatistics();
+        this.lastActivity=clock.currentTimeMillis();
+    }
+
+    public long getConglomerateId(){
+        return conglomerateId;
+    }
+
+    public String getPartitionId(){
+        return partitionId;
+    }
+
+    /**
+     * @return the time (in milliseconds) of the last write which was recorded
+     */
+    public long getLastActivity(){
+        return lastActivity;
+    }
+
+    /**
+     * @return {@code true} if this collects statistics for exactly the columns in {@code columnIds}
+     */
+    public boolean collectsColumns(int[] columnIds){
+        return Arrays.equals(this.columnIds,columnIds);
+    }
+
+    /**
+     * @return {@code true} if there are changes which have not been merged yet.
+     */
+    public synchronized boolean hasChanges(){
+        return windowStart>=0;
+    }
+
+    /**
+     * Record a batch of writes to the partition.
+     *
+     * @param rows the values of each inserted row, in the same order as the {@code columnIds} passed
+     *             to the constructor. The values are retained by the sketches, so they must not be reused.
+     * @param rowBytes the total size of the inserted rows
+     * @param updates the number of rows which were updated
+     * @param deletes the number of rows which were deleted
+     */
+    public synchronized void record(List<DataValueDescriptor[]> rows,long rowBytes,long updates,long deletes){
+        if(rows.isEmpty() && updates==0 && deletes==0) return;
+        long now=clock.currentTimeMillis();
+        if(windowStart<0)
+            windowStart=now;
+        lastActivity=now;
+        for(DataValueDescriptor[] row:rows){
+            for(int i=0;i<columnStatistics.length;i++){
+                columnStatistics[i].update(row[i]);
+            }
+        }
+        insertedRows+=rows.size();
+        insertedBytes+=rowBytes;
+        updatedRows+=updates;
+        deletedRows+=deletes;
+    }
+
+    /**
+     * Merge the changes in the current window into the persisted statistics of the partition, and open a
+     * new window.
+     *
+     * @param existing the persisted statistics for this partition, or {@code null} if there are none
+     * @param stalenessThreshold the fraction of the partition's rows which may be modified before the
+     *                           statistics are considered stale
+     * @return the rows (in the format of {@link StatisticsAdmin#generateRowFromStats}) to replace the
+     * persisted statistics with, or {@code null} if the persisted statistics should be left alone.
+     */
+    public synchronized List<ExecRow> mergeInto(PartitionStatisticsDescriptor existing,
+                                                double stalenessThreshold) throws StandardException{
+        if(windowStart<0) return null;
+        try{
+            if(existing==null){
+                /*
+                 * There is nothing to merge into, so the partition must be collected first. It will
+                 * be picked up by a collection of stale statistics for that reason alone.
+                 */
+                modificationsSinceCollection=0l;
+                lastCollectionTimestamp=-1l;
+                return null;
+            }
+            long collected=existing.getTimestamp();
+            if(collected!=lastCollectionTimestamp){
+                //the partition has been collected since we last merged, so start counting again
+                modificationsSinceCollection=0l;
+                lastCollectionTimestamp=collected;
+            }
+            if(collected>=windowStart){
+                //the collection may have seen some of this window already
+                modificationsSinceCollection=0l;
+                return null;
+            }
+            modificationsSinceCollection+=updatedRows+deletedRows;
+
+            long rowCount=Math.max(0l,existing.getRowCount()+insertedRows-deletedRows);
+            long partitionSize=Math.max(0l,existing.getPartitionSize()+insertedBytes-deletedRows*existing.getMeanRowWidth());
+            int meanRowWidth=rowCount>0?(int)(partitionSize/rowCount):existing.getMeanRowWidth();
+            boolean stale=existing.isStale() || isStale(modificationsSinceCollection,existing.getRowCount(),stalenessThreshold);
+
+            List<ColumnStatisticsDescriptor> columnStats=existing.getColumnStatsDescriptors();
+            List<ExecRow> rows=new ArrayList<>(columnStats==null?1:columnStats.size()+1);
+            if(columnStats!=null){
+                for(ColumnStatisticsDescriptor csd:columnStats){
+                    rows.add(StatisticsAdmin.generateRowFromStats(conglomerateId,partitionId,csd.getColumnId(),merge(csd)));
+                }
+            }
+            /*
+             * We keep the timestamp of the last collection, rather than the time of the merge, so that we can
+             * tell the difference between a merge and a re-collection the next time around.
+             */
+            rows.add(StatisticsAdmin.generateRowFromStats(conglomerateId,partitionId,collected,stale,rowCount,partitionSize,meanRowWidth));
+            return rows;
+        }finally{
+            resetWindow();
+        }
+    }
+
+    static boolean isStale(long modifications,long rowCount,double stalenessThreshold){
+        return modifications>stalenessThreshold*Math.max(rowCount,1l);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private ItemStatistics merge(ColumnStatisticsDescriptor csd) throws StandardException{
+        ItemStatistics persisted=csd.getStats();
+        int pos=indexOf(csd.getColumnId());
+        if(pos<0 || insertedRows==0 ||!(persisted instanceof ColumnStatisticsImpl)) return persisted;
+
+        ColumnStatisticsMerge merge=ColumnStatisticsMerge.instance();
+        merge.accumulate((ColumnStatisticsImpl)persisted);
+        merge.accumulate(columnStatistics[pos]);
+        return merge.terminate();
+    }
+
+    private int indexOf(int columnId){
+        for(int i=0;i<columnIds.length;i++){
+            if(columnIds[i]==columnId) return i;
+        }
+        return -1;
+    }
+
+    private void resetWindow() throws StandardException{
+        columnStatistics=newColumnStatistics();
+        insertedRows=0l;
+        insertedBytes=0l;
+        updatedRows=0l;
+        deletedRows=0l;
+        windowStart=-1l;
+    }
+
+    private ColumnStatisticsImpl[] newColumnStatistics() throws StandardException{
+        ColumnStatisticsImpl[] stats=new ColumnStatisticsImpl[templates.length];
+        for(int i=0;i<templates.length;i++){
+            stats[i]=new ColumnStatisticsImpl(templates[i]);
+        }
+        return stats;
+    }
+}
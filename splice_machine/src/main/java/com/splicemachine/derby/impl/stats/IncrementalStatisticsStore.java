@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.concurrent.MoreExecutors;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.utils.SpliceLogUtils;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link IncrementalStatistics} of every partition which is written to on this server, and
+ * periodically merges them into the statistics tables.
+ *
+ * Partitions which have not been written to for a while (e.g. because they have been closed or moved
+ * to a different server) are forgotten.
+ */
+public class IncrementalStatisticsStore{
+    private static final Logger LOG=Logger.getLogger(IncrementalStatisticsStore.class);
+
+    private final ConcurrentMap<String,IncrementalStatistics> partitionStatistics=new ConcurrentHashMap<>();
+    private final long persistInterval;
+    private final double stalenessThreshold;
+    private final Clock clock;
+    private ScheduledExecutorService persister;
+
+    /**
+     * @param persistInterval how often (in milliseconds) the statistics are merged into the statistics tables
+     * @param stalenessThreshold the fraction of a partition which may be modified before its statistics are stale
+     * @param clock the clock to use
+     */
+    public IncrementalStatisticsStore(long persistInterval,double stalenessThreshold,Clock clock){
+        this.persistInterval=persistInterval;
+        this.stalenessThreshold=stalenessThreshold;
+        this.clock=clock;
+    }
+
+    /**
+     * Get the statistics of a partition, creating them if necessary.
+     *
+     * @param conglomerateId the conglomerate which the partition belongs to
+     * @param partitionId the name of the partition
+     * @param columnIds the (1-based) positions of the columns to keep statistics for
+     * @param templates the templates for each column in {@code columnIds}
+     * @return the statistics of the partition
+     */
+    public IncrementalStatistics statisticsFor(long conglomerateId,
+                                               String partitionId,
+                                               int[] columnIds,
+                                               DataValueDescriptor[] templates) throws StandardException{
+        IncrementalStatistics stats=partitionStatistics.get(partitionId);
+        if(stats!=null && stats.collectsColumns(columnIds)) return stats;
+
+        //either we've not seen the partition before, or the collected columns were altered
+        IncrementalStatistics newStats=new IncrementalStatistics(conglomerateId,partitionId,columnIds,templates,clock);
+        if(stats==null){
+            stats=partitionStatistics.putIfAbsent(partitionId,newStats);
+            if(stats==null) return newStats;
+            if(stats.collectsColumns(columnIds)) return stats;
+        }
+        partitionStatistics.put(partitionId,newStats);
+        return newStats;
+    }
+
+    public synchronized void start(){
+        if(persister!=null) return;
+        persister=MoreExecutors.namedSingleThreadScheduledExecutor("incremental-statistics-%d");
+        persister.scheduleWithFixedDelay(new Runnable(){
+            @Override
+            public void run(){
+                persist();
+            }
+        },persistInterval,persistInterval,TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown(){
+        if(persister==null) return;
+        persister.shutdownNow();
+        persister=null;
+    }
+
+    /**
+     * Merge the statistics of every partition with changes into the statistics tables.
+     */
+    public void persist(){
+        Map<Long,List<IncrementalStatistics>> changedConglomerates=new HashMap<>();
+        long evictBefore=clock.currentTimeMillis()-2*persistInterval;
+        for(IncrementalStatistics stats:partitionStatistics.values()){
+            if(stats.hasChanges()){
+                List<IncrementalStatistics> partitions=changedConglomerates.get(stats.getConglomerateId());
+                if(partitions==null){
+                    partitions=new ArrayList<>();
+                    changedConglomerates.put(stats.getConglomerateId(),partitions);
+                }
+                partitions.add(stats);
+            }else if(stats.getLastActivity()<evictBefore){
+                partitionStatistics.remove(stats.getPartitionId(),stats);
+            }
+        }
+        for(Map.Entry<Long,List<IncrementalStatistics>> conglomerate:changedConglomerates.entrySet()){
+            try{
+                persist(conglomerate.getKey(),conglomerate.getValue());
+            }catch(Exception e){
+                LOG.warn("Unable to persist incremental statistics for conglomerate "+conglomerate.getKey(),e);
+            }
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private void persist(long conglomerateId,List<IncrementalStatistics> partitions) throws Exception{
+        if(LOG.isDebugEnabled())
+            SpliceLogUtils.debug(LOG,"Persisting incremental statistics for conglomerate %d",conglomerateId);
+        List<PartitionStatisticsWriter.Update> updates=new ArrayList<>(partitions.size());
+        for(final IncrementalStatistics stats:partitions){
+            updates.add(new PartitionStatisticsWriter.Update(){
+                @Override
+                public String getPartitionId(){
+                    return stats.getPartitionId();
+                }
+
+                @Override
+                public List<ExecRow> statistics(PartitionStatisticsDescriptor existing) throws StandardException{
+                    return stats.mergeInto(existing,stalenessThreshold);
+                }
+            });
+        }
+        if(!PartitionStatisticsWriter.write(conglomerateId,updates)){
+            //the table has been dropped
+            for(IncrementalStatistics stats:partitions){
+                partitionStatistics.remove(stats.getPartitionId(),stats);
+            }
+        }
+    }
+}
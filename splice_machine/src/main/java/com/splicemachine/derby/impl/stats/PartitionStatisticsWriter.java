@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.services.context.ContextManager;
+import com.splicemachine.db.iapi.services.context.ContextService;
+import com.splicemachine.db.iapi.sql.conn.LanguageConnectionContext;
+import com.splicemachine.db.iapi.sql.dictionary.ConglomerateDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.DataDictionary;
+import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.TableDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.store.access.TransactionController;
+import com.splicemachine.db.impl.sql.catalog.SYSCOLUMNSTATISTICSRowFactory;
+import com.splicemachine.derby.ddl.DDLUtils;
+import com.splicemachine.derby.jdbc.SpliceTransactionResourceImpl;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.protobuf.ProtoUtil;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.impl.driver.SIDriver;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the statistics of individual partitions of a conglomerate from outside of a user transaction (e.g.
+ * from a background thread, or from a compaction), and notifies all servers that the statistics have changed.
+ */
+public class PartitionStatisticsWriter{
+
+    /**
+     * The new statistics of a single partition.
+     */
+    public interface Update{
+        String getPartitionId();
+
+        /**
+         * @param existing the statistics which are currently stored for the partition, or {@code null}
+         *                 if there are none.
+         * @return the rows (in the format of {@link com.splicemachine.derby.utils.StatisticsAdmin#generateRowFromStats})
+         * to replace the stored statistics with, or {@code null} to leave them as they are.
+         */
+        List<ExecRow> statistics(@Nullable PartitionStatisticsDescriptor existing) throws StandardException;
+    }
+
+    private PartitionStatisticsWriter(){}
+
+    /**
+     * Replace the statistics of partitions of a conglomerate, in a transaction of its own.
+     *
+     * @param conglomerateId the conglomerate the partitions belong to
+     * @param updates the new statistics of each partition
+     * @return {@code false} if the conglomerate no longer exists, {@code true} otherwise.
+     */
+    public static boolean write(long conglomerateId,Collection<? extends Update> updates) throws Exception{
+        Txn txn=SIDriver.driver().lifecycleManager().beginTransaction(Bytes.toBytes("statistics"));
+        ContextManager currentCm=ContextService.getFactory().getCurrentContextManager();
+        SpliceTransactionResourceImpl transactionResource=new SpliceTransactionResourceImpl();
+        boolean prepared=false;
+        String changeId=null;
+        try{
+            prepared=transactionResource.marshallTransaction(txn);
+            LanguageConnectionContext lcc=transactionResource.getLcc();
+            DataDictionary dd=lcc.getDataDictionary();
+            TransactionController tc=lcc.getTransactionExecute();
+
+            ConglomerateDescriptor cd=dd.getConglomerateDescriptor(conglomerateId);
+            if(cd==null){
+                //the table has been dropped
+                txn.rollback();
+                return false;
+            }
+            //always work from what is really in the table, not what we happen to have cached
+            dd.getDataDictionaryCache().partitionStatisticsCacheRemove(conglomerateId);
+            Map<String,PartitionStatisticsDescriptor> existing=new HashMap<>();
+            for(PartitionStatisticsDescriptor psd:dd.getPartitionStatistics(conglomerateId,tc)){
+                existing.put(psd.getPartitionId(),psd);
+            }
+
+            boolean changed=false;
+            for(Update update:updates){
+                List<ExecRow> rows=update.statistics(existing.get(update.getPartitionId()));
+                if(rows==null) continue;
+                dd.deletePartitionStatistics(conglomerateId,update.getPartitionId(),tc);
+                for(ExecRow row:rows){
+                    if(row.nColumns()==SYSCOLUMNSTATISTICSRowFactory.SYSCOLUMNSTATISTICS_COLUMN_COUNT)
+                        dd.addColumnStatistics(row,tc);
+                    else
+                        dd.addTableStatistics(row,tc);
+                }
+                changed=true;
+            }
+            if(!changed){
+                txn.rollback();
+                return true;
+            }
+            TableDescriptor td=dd.getTableDescriptor(cd.getTableID());
+            changeId=DDLUtils.notifyMetadataChange(ProtoUtil.alterStats(txn.getTxnId(),Collections.singletonList(td)));
+            txn.commit();
+            return true;
+        }catch(Exception e){
+            txn.rollback();
+            throw e;
+        }finally{
+            if(changeId!=null)
+                DDLUtils.finishMetadataChange(changeId);
+            if(prepared)
+                transactionResource.close();
+            if(currentCm!=null)
+                ContextService.getFactory().setCurrentContextManager(currentCm);
+        }
+    }
+}
@@ -28,11 +28,14 @@ import com.splicemachine.EngineDriver;
 import com.splicemachine.SqlEnvironment;
 import com.splicemachine.access.api.DatabaseVersion;
 import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.concurrent.SystemClock;
 import com.splicemachine.db.iapi.reference.Property;
 import com.splicemachine.db.impl.jdbc.EmbedConnection;
 import com.splicemachine.derby.ddl.DDLDriver;
 import com.splicemachine.derby.ddl.DDLEnvironmentLoader;
 import com.splicemachine.derby.impl.db.SpliceDatabase;
+import com.splicemachine.derby.impl.sql.execute.sequence.SequenceMetrics;
+import com.splicemachine.derby.impl.stats.IncrementalStatisticsStore;
 import com.splicemachine.derby.impl.store.access.SpliceAccessManager;
 import com.splicemachine.lifecycle.DatabaseLifecycleService;
 import com.splicemachine.pipeline.ContextFactoryDriverService;
@@ -66,6 +69,7 @@ public class EngineLifecycleService implements DatabaseLifecycleService{
     private DatabaseVersion spliceVersion;
     private ManifestReader manifestReader;
     private Logging logging;
+    private IncrementalStatisticsStore statisticsStore;
 
     public EngineLifecycleService(DistributedDerbyStartup startup,SConfiguration configuration){
         this.startup=startup;
@@ -101,13 +105,18 @@ public class EngineLifecycleService implements DatabaseLifecycleService{
         startup.markBootFinished();
         isCreate.remove();
 
+        if(configuration.isIncrementalStatisticsEnabled()){
+            statisticsStore=new IncrementalStatisticsStore(configuration.getIncrementalStatisticsPersistInterval(),
+                    configuration.getStalenessThreshold(),SystemClock.INSTANCE);
+        }
+        final IncrementalStatisticsStore stats=statisticsStore;
         ContextFactoryDriver cfDriver = new ReferenceCountingFactoryDriver(){
             @Override
             protected ContextFactoryLoader newDelegate(long conglomerateId){
                 SIDriver siDriver=SIDriver.driver();
                 return new DerbyContextFactoryLoader(conglomerateId,siDriver.getOperationStatusLib(),
                         PipelineDriver.driver().exceptionFactory(),siDriver.readController(),
-                        siDriver.getOperationFactory());
+                        siDriver.getOperationFactory(),stats);
             }
         };
         ContextFactoryDriverService.setDriver(cfDriver); //set the Context service for the pipeline
@@ -120,12 +129,15 @@ public class EngineLifecycleService implements DatabaseLifecycleService{
         DDLDriver.loadDriver(DDLEnvironmentLoader.loadEnvironment(configuration,EngineDriver.driver().getExceptionFactory()));
         SpliceDatabase db = (SpliceDatabase)((EmbedConnection)internalConnection).getLanguageConnection().getDatabase();
         db.registerDDL();
+        if(statisticsStore!=null)
+            statisticsStore.start(); //persisting statistics needs the DDL driver, so start after it's up
         logging = new LogManager();
     }
 
     @Override
     public void registerJMX(MBeanServer mbs) throws Exception{
         manifestReader.registerJMX(mbs);
+        SequenceMetrics.INSTANCE.registerJMX(mbs);
 
         try{
             ObjectName on=new ObjectName("com.splicemachine.utils.logging:type=LogManager");
@@ -142,6 +154,8 @@ public class EngineLifecycleService implements DatabaseLifecycleService{
 
     @Override
     public void shutdown() throws Exception{
+        if(statisticsStore!=null)
+            statisticsStore.shutdown();
         try{
             if(internalConnection!=null)
                 internalConnection.close();
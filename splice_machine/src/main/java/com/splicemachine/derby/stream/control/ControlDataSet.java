@@ -32,6 +32,7 @@ import com.splicemachine.derby.stream.iapi.PairDataSet;
 import com.splicemachine.derby.stream.output.ExportDataSetWriterBuilder;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.impl.driver.SIDriver;
+import com.splicemachine.utils.IntArrays;
 import org.spark_project.guava.io.Closeables;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import scala.Tuple2;
@@ -109,7 +110,7 @@ public class ControlDataSet<V> implements DataSet<V> {
                     throw new RuntimeException(e);
                 }
             }
-        }));
+        }),function.operationContext);
     }
 
     @Override
@@ -144,7 +145,7 @@ public class ControlDataSet<V> implements DataSet<V> {
 
     @Override
     public <Op extends SpliceOperation, K> PairDataSet<K, V> keyBy(final SpliceFunction<Op, V, K> function) {
-        return new ControlPairDataSet<>(entryToTuple(Multimaps.index(iterator,function).entries()));
+        return new ControlPairDataSet<>(entryToTuple(Multimaps.index(iterator,function).entries()),function.operationContext);
     }
 
     @Override
@@ -360,7 +361,11 @@ public class ControlDataSet<V> implements DataSet<V> {
 
     /**
      * Window Function. Take a WindowContext that define the partition, the order, and the frame boundary.
-     * Currently only run on top of Spark.
+     *
+     * Rather than grouping the rows of each partition together and then sorting each group in memory,
+     * the rows are sorted once by the window's key columns (partition columns first), so that each partition
+     * is a contiguous run of the sorted output. The sort spills to disk when it has to, and the window
+     * functions are evaluated one partition after another as the sorted rows stream past.
      * @param windowContext
      * @param pushScope
      * @param scopeDetail
@@ -370,17 +375,19 @@ public class ControlDataSet<V> implements DataSet<V> {
     public DataSet<V> windows(WindowContext windowContext, OperationContext operationContext, boolean pushScope, String scopeDetail) {
 
         operationContext.pushScopeForOp(OperationContext.Scope.SORT_KEYER);
-        KeyerFunction f = new KeyerFunction(operationContext, windowContext.getPartitionColumns());
+        KeyerFunction f = new KeyerFunction(operationContext, windowContext.getKeyColumns());
         PairDataSet pair = keyBy(f);
         operationContext.popScope();
 
-        operationContext.pushScopeForOp(OperationContext.Scope.GROUP_AGGREGATE_KEYER);
-        pair = pair.groupByKey("Group Values For Each Key");
+        operationContext.pushScopeForOp(OperationContext.Scope.SORT);
+        // the keys hold just the key columns, in order
+        int[] keyPositions = IntArrays.count(windowContext.getKeyColumns().length);
+        DataSet sorted = pair.sortByKey(new ColumnComparator(keyPositions, windowContext.getKeyOrders(), true)).values();
         operationContext.popScope();
 
         operationContext.pushScopeForOp(OperationContext.Scope.EXECUTE);
         try {
-            return pair.flatmap(new MergeWindowFunction(operationContext, windowContext.getWindowFunctions()), true);
+            return sorted.mapPartitions(new MergeSortedWindowFunction(operationContext), true);
         } finally {
             operationContext.popScope();
         }
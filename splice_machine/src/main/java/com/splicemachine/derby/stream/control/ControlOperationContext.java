@@ -46,6 +46,9 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
         long rowsWritten;
         long rowsRetried;
         long tooBusy;
+        long baseRowsLookedUp;
+        long baseRowLookupTime;
+        long rowsEliminatedByJoinKeyFilter;
         long rowsJoinedLeft;
         long rowsJoinedRight;
         long rowsProduced;
@@ -59,7 +62,7 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
         private int failBadRecordCount = -1;
         private boolean permissive;
         private BadRecordsRecorder badRecordsRecorder;
-        private boolean failed;
+        private volatile boolean failed;
         private int numberBadRecords = 0;
 
     public ControlOperationContext() {
@@ -139,8 +142,12 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
     }
 
 
+    /*
+     * Reads and bad records may be recorded from several threads at once when a large file is parsed
+     * in parallel by a ParallelFileReader
+     */
     @Override
-    public void recordRead() {
+    public synchronized void recordRead() {
         rowsRead++;
     }
 
@@ -150,7 +157,7 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
     }
 
     @Override
-    public void recordRead(long w) {
+    public synchronized void recordRead(long w) {
         rowsRead+=w;
     }
 
@@ -230,6 +237,17 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
 
     }
 
+    @Override
+    public void recordBaseRowLookups(long rows, long nanos) {
+        baseRowsLookedUp+=rows;
+        baseRowLookupTime+=nanos;
+    }
+
+    @Override
+    public void recordJoinKeyFilterEliminations(long rows) {
+        rowsEliminatedByJoinKeyFilter+=rows;
+    }
+
     @Override
     public void recordJoinedLeft() {
         rowsJoinedLeft++;
@@ -270,6 +288,21 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
         return tooBusy;
     }
 
+    @Override
+    public long getBaseRowsLookedUp() {
+        return baseRowsLookedUp;
+    }
+
+    @Override
+    public long getBaseRowLookupTime() {
+        return baseRowLookupTime;
+    }
+
+    @Override
+    public long getRecordsEliminatedByJoinKeyFilter() {
+        return rowsEliminatedByJoinKeyFilter;
+    }
+
     @Override
     public void pushScope(String displayName) {
         // no op
@@ -301,7 +334,7 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
     }
 
     @Override
-    public void recordBadRecord(String badRecord, Exception e) {
+    public synchronized void recordBadRecord(String badRecord, Exception e) {
         if (! failed) {
             String errorState = "";
             if (e != null) {
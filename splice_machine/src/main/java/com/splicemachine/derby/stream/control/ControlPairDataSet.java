@@ -43,11 +43,9 @@ import org.spark_project.guava.base.Predicate;
 import org.spark_project.guava.collect.*;
 import scala.Tuple2;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Stream;
-import static com.splicemachine.derby.stream.control.ControlUtils.entryToTuple;
-import static com.splicemachine.derby.stream.control.ControlUtils.multimapFromIterator;
-import static org.spark_project.guava.collect.Maps.*;
 
 /**
  *
@@ -59,8 +57,26 @@ import static org.spark_project.guava.collect.Maps.*;
  */
 public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
     public Iterator<Tuple2<K,V>> source;
+    private final SpillSettings spillSettings;
+    /*the context of the operation which owns this data set, and so any data it spills; may be null*/
+    private final OperationContext<?> operationContext;
+
     public ControlPairDataSet(Iterator<Tuple2<K,V>> source) {
+        this(source,(OperationContext<?>)null);
+    }
+
+    public ControlPairDataSet(Iterator<Tuple2<K,V>> source, OperationContext<?> operationContext) {
+        this(source,SpillSettings.fromConfiguration(),operationContext);
+    }
+
+    ControlPairDataSet(Iterator<Tuple2<K,V>> source, SpillSettings spillSettings) {
+        this(source,spillSettings,null);
+    }
+
+    ControlPairDataSet(Iterator<Tuple2<K,V>> source, SpillSettings spillSettings, OperationContext<?> operationContext) {
         this.source = source;
+        this.spillSettings = spillSettings;
+        this.operationContext = operationContext;
     }
 
 
@@ -100,22 +116,12 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
 
     @Override
     public <Op extends SpliceOperation> PairDataSet<K, V> reduceByKey(final SpliceFunction2<Op,V, V, V> function2) {
-        Multimap<K,V> newMap = multimapFromIterator(source);
-        return new ControlPairDataSet<>(entryToTuple(Multimaps.<K,V>forMap(transformValues(newMap.asMap(),
-                new Function<Collection<V>, V>() {
-            @Override
-            public V apply(@Nullable Collection<V> vs) {
-                try {
-                    V returnValue = null;
-                    for (V v : vs) {
-                        returnValue = function2.call(returnValue, v);
-                    }
-                    return returnValue;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        })).entries()));
+        try {
+            OperationContext<?> context = function2.operationContext!=null?function2.operationContext:operationContext;
+            return new ControlPairDataSet<>(GraceHashOperations.reduce(source,function2,spillSettings,context,0),spillSettings,context);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -130,18 +136,12 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
 
     @Override
     public PairDataSet<K, V> sortByKey(final Comparator<K> comparator) {
-        /*
-         * -sf- this is done a bit goofily, so that we can support multiple versions of guava.
-         *
-         * This is essentially copying out FluentIterable.from(source).toSortedList(comparator) logic
-         * directly into the method, so that we can support the same code line from 12.0.1 on.
-         */
-        return new ControlPairDataSet<>(Ordering.from(new Comparator<Tuple2<K, V>>() {
-            @Override
-            public int compare(Tuple2<K, V> o1, Tuple2<K, V> o2) {
-                return comparator.compare(o1._1(), o2._1());
-            }
-        }).immutableSortedCopy(() -> source).iterator());
+        // Sorts in memory, unless the input is too large, in which case sorted runs are merged from disk
+        try {
+            return new ControlPairDataSet<>(new ExternalSorter<K, V>(spillSettings, comparator).sort(source), spillSettings, operationContext);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -158,15 +158,11 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
 
     @Override
     public PairDataSet<K, Iterable<V>> groupByKey() {
-        Multimap<K,V> newMap = multimapFromIterator(source);
-        return new ControlPairDataSet<>(FluentIterable.from(newMap.asMap().entrySet()).transform(new Function<Map.Entry<K, Collection<V>>, Tuple2<K, Iterable<V>>>() {
-            @Nullable
-            @Override
-            public Tuple2<K, Iterable<V>> apply(@Nullable Map.Entry<K, Collection<V>> e) {
-                assert e!=null: "E cannot be null";
-                return new Tuple2<K, Iterable<V>>(e.getKey(), e.getValue());
-            }
-        }).iterator());
+        try {
+            return new ControlPairDataSet<>(GraceHashOperations.group(source,spillSettings,operationContext,0),spillSettings,operationContext);
+        } catch (IOException | StandardException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -176,69 +172,80 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
 
     @Override
     public <W> PairDataSet< K, Tuple2<V, Optional<W>>> hashLeftOuterJoin(final PairDataSet< K, W> rightDataSet) {
-        // Materializes the right side
-        final Multimap<K,W> rightSide = multimapFromIterator(((ControlPairDataSet) rightDataSet).source);
-        return new ControlPairDataSet(Iterators.concat(Iterators.transform(source,new Function<Tuple2<K, V>, Iterable<Tuple2<K, Tuple2<V, Optional<W>>>>>() {
-            @Nullable
+        // Materializes the right side, spilling it to disk if it is too large
+        return join(source,((ControlPairDataSet<K,W>) rightDataSet).source,new GraceHashOperations.Prober<K,V,W,Tuple2<K,Tuple2<V,Optional<W>>>>() {
             @Override
-            public Iterable<Tuple2<K, Tuple2<V, Optional<W>>>> apply(@Nullable Tuple2<K, V> t) {
-                assert t!=null: "T cannot be null";
-                List<Tuple2<K,Tuple2<V,Optional<W>>>> result = new ArrayList<>();
-                K key = t._1();
-                V value = t._2();
-                if (rightSide.containsKey(key)) {
-                    for (W rightValue : rightSide.get(key)) {
-                        result.add(new Tuple2<>(key,new Tuple2<>(value,Optional.of(rightValue))));
+            public Iterator<Tuple2<K, Tuple2<V, Optional<W>>>> probe(final Multimap<K, W> rightSide, Iterator<Tuple2<K, V>> probeSide) {
+                return Iterators.concat(Iterators.transform(probeSide,new Function<Tuple2<K, V>, Iterator<Tuple2<K, Tuple2<V, Optional<W>>>>>() {
+                    @Nullable
+                    @Override
+                    public Iterator<Tuple2<K, Tuple2<V, Optional<W>>>> apply(@Nullable Tuple2<K, V> t) {
+                        assert t!=null: "T cannot be null";
+                        List<Tuple2<K,Tuple2<V,Optional<W>>>> result = new ArrayList<>();
+                        K key = t._1();
+                        V value = t._2();
+                        if (rightSide.containsKey(key)) {
+                            for (W rightValue : rightSide.get(key)) {
+                                result.add(new Tuple2<>(key,new Tuple2<>(value,Optional.of(rightValue))));
+                            }
+                        } else
+                            result.add(new Tuple2<>(key,new Tuple2<>(value,Optional.<W>empty())));
+                        return result.iterator();
                     }
-                } else
-                    result.add(new Tuple2<>(key,new Tuple2<>(value,Optional.<W>empty())));
-                return result;
+                }));
             }
-        })));
-
+        });
     }
 
     @Override
     public <W> PairDataSet< K, Tuple2<Optional<V>, W>> hashRightOuterJoin(PairDataSet< K, W> rightDataSet) {
-        // Materializes the left side
-        final Multimap<K, V> leftSide = multimapFromIterator(source);
-        return new ControlPairDataSet(Iterators.transform( ( (ControlPairDataSet<K,W>) rightDataSet).source, new Function<Tuple2<K, W>, Iterator<Tuple2<K, Tuple2<Optional<V>, W>>>>() {
-            @Nullable
+        // Materializes the left side, spilling it to disk if it is too large
+        return join(((ControlPairDataSet<K,W>) rightDataSet).source,source,new GraceHashOperations.Prober<K,W,V,Tuple2<K,Tuple2<Optional<V>,W>>>() {
             @Override
-            public Iterator<Tuple2<K, Tuple2<Optional<V>, W>>> apply(@Nullable Tuple2<K, W> t) {
-                assert t!=null: "t cannot be null!";
-                List<Tuple2<K,Tuple2<Optional<V>,W>>> result = new ArrayList<>();
-                K key = t._1();
-                W value = t._2();
-                if (leftSide.containsKey(key)) {
-                    for (V leftValue: leftSide.get(key)) {
-                        result.add(new Tuple2<>(key,new Tuple2<>(Optional.of(leftValue),value)));
+            public Iterator<Tuple2<K, Tuple2<Optional<V>, W>>> probe(final Multimap<K, V> leftSide, Iterator<Tuple2<K, W>> probeSide) {
+                return Iterators.concat(Iterators.transform(probeSide, new Function<Tuple2<K, W>, Iterator<Tuple2<K, Tuple2<Optional<V>, W>>>>() {
+                    @Nullable
+                    @Override
+                    public Iterator<Tuple2<K, Tuple2<Optional<V>, W>>> apply(@Nullable Tuple2<K, W> t) {
+                        assert t!=null: "t cannot be null!";
+                        List<Tuple2<K,Tuple2<Optional<V>,W>>> result = new ArrayList<>();
+                        K key = t._1();
+                        W value = t._2();
+                        if (leftSide.containsKey(key)) {
+                            for (V leftValue: leftSide.get(key)) {
+                                result.add(new Tuple2<>(key,new Tuple2<>(Optional.of(leftValue),value)));
+                            }
+                        } else
+                            result.add(new Tuple2<>(key,new Tuple2<>(Optional.<V>absent(),value)));
+                        return result.iterator();
                     }
-                } else
-                    result.add(new Tuple2<>(key,new Tuple2<>(Optional.<V>absent(),value)));
-                return result.iterator();
+                }));
             }
-        }));
+        });
     }
 
     @Override
     public <W> PairDataSet< K, Tuple2<V, W>> hashJoin(PairDataSet< K, W> rightDataSet) {
-        // Materializes the right side
-        final Multimap<K,W> rightSide = multimapFromIterator(((ControlPairDataSet<K,W>) rightDataSet).source);
-        return new ControlPairDataSet(Iterators.concat(Iterators.transform(source,new Function<Tuple2<K, V>, Iterator<Tuple2<K, Tuple2<V, W>>>>() {
-            @Nullable
+        // Materializes the right side, spilling it to disk if it is too large
+        return join(source,((ControlPairDataSet<K,W>) rightDataSet).source,new GraceHashOperations.Prober<K,V,W,Tuple2<K,Tuple2<V,W>>>() {
             @Override
-            public Iterator<Tuple2<K, Tuple2<V, W>>> apply(@Nullable Tuple2<K, V> t) {
-                assert t!=null: "Tuple cannot be null";
-                List<Tuple2<K,Tuple2<V,W>>> result = new ArrayList<>();
-                K key = t._1();
-                V value = t._2();
-                for (W rightValue : rightSide.get(key)) {
-                    result.add(new Tuple2<>(key,new Tuple2<>(value,rightValue)));
-                }
-                return result.iterator();
+            public Iterator<Tuple2<K, Tuple2<V, W>>> probe(final Multimap<K, W> rightSide, Iterator<Tuple2<K, V>> probeSide) {
+                return Iterators.concat(Iterators.transform(probeSide,new Function<Tuple2<K, V>, Iterator<Tuple2<K, Tuple2<V, W>>>>() {
+                    @Nullable
+                    @Override
+                    public Iterator<Tuple2<K, Tuple2<V, W>>> apply(@Nullable Tuple2<K, V> t) {
+                        assert t!=null: "Tuple cannot be null";
+                        List<Tuple2<K,Tuple2<V,W>>> result = new ArrayList<>();
+                        K key = t._1();
+                        V value = t._2();
+                        for (W rightValue : rightSide.get(key)) {
+                            result.add(new Tuple2<>(key,new Tuple2<>(value,rightValue)));
+                        }
+                        return result.iterator();
+                    }
+                }));
             }
-        })));
+        });
     }
 
     @Override
@@ -249,15 +256,19 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
     
     @Override
     public <W> PairDataSet< K, V> subtractByKey(PairDataSet< K, W> rightDataSet) {
-        // Materializes the right side
-        final Multimap<K,W> rightSide = multimapFromIterator(((ControlPairDataSet<K,W>) rightDataSet).source);
-        return new ControlPairDataSet<>(Iterators.filter(source, new Predicate<Tuple2<K, V>>() {
+        // Materializes the right side, spilling it to disk if it is too large
+        return join(source,((ControlPairDataSet<K,W>) rightDataSet).source,new GraceHashOperations.Prober<K,V,W,Tuple2<K,V>>() {
             @Override
-            public boolean apply(@Nullable Tuple2<K, V> t) {
-                assert t!=null: "T cannot be null";
-                return rightSide.get(t._1()).isEmpty();
+            public Iterator<Tuple2<K, V>> probe(final Multimap<K, W> rightSide, Iterator<Tuple2<K, V>> probeSide) {
+                return Iterators.filter(probeSide, new Predicate<Tuple2<K, V>>() {
+                    @Override
+                    public boolean apply(@Nullable Tuple2<K, V> t) {
+                        assert t!=null: "T cannot be null";
+                        return rightSide.get(t._1()).isEmpty();
+                    }
+                });
             }
-        }));
+        });
     }
 
     @Override
@@ -311,16 +322,11 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
     
     @Override
     public <W> PairDataSet<K, Tuple2<Iterable<V>, Iterable<W>>> cogroup(PairDataSet<K, W> rightDataSet) {
-        Multimap<K, V> left = multimapFromIterator(source);
-        Multimap<K, W> right = multimapFromIterator( ((ControlPairDataSet<K, W>) rightDataSet).source);
-
-        List<Tuple2<K, Tuple2<Iterable<V>, Iterable<W>>>> result = new ArrayList<>();
-        for (K key: Sets.union(left.keySet(),right.keySet())){
-            Collection<V> vs=left.get(key);
-            Collection<W> ws=right.get(key);
-            result.add(new Tuple2<>(key,new Tuple2<Iterable<V>, Iterable<W>>(vs,ws)));
+        try {
+            return new ControlPairDataSet<>(GraceHashOperations.cogroup(source,((ControlPairDataSet<K, W>) rightDataSet).source,spillSettings,operationContext,0),spillSettings,operationContext);
+        } catch (IOException | StandardException e) {
+            throw new RuntimeException(e);
         }
-        return new ControlPairDataSet<>(result.iterator());
     }
 
     @Override
@@ -403,4 +409,16 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
         };
     }
 
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private <P,B,R> PairDataSet<K,R> join(Iterator<Tuple2<K,P>> probeSide,
+                                          Iterator<Tuple2<K,B>> buildSide,
+                                          GraceHashOperations.Prober<K,P,B,Tuple2<K,R>> prober) {
+        try {
+            return new ControlPairDataSet<>(GraceHashOperations.join(probeSide,buildSide,prober,spillSettings,operationContext,0),spillSettings,operationContext);
+        } catch (IOException | StandardException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
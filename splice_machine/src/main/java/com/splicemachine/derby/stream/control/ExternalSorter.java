@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import org.apache.log4j.Logger;
+import org.spark_project.guava.collect.AbstractIterator;
+import scala.Tuple2;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Sorts the key-value pairs of a {@link ControlPairDataSet} by key, within a bounded amount of memory.
+ *
+ * Pairs are collected in memory until they outgrow {@link SpillSettings#sortMemoryLimit()}, at which point
+ * they are sorted and written to local disk as a sorted run. Once the input is exhausted, the runs are
+ * merged back together with a {@link LoserTree}; if there are more than {@link SpillSettings#MERGE_FANIN} of
+ * them, they are first merged into longer runs, so that only a bounded number of files are ever open at once.
+ *
+ * Inputs which fit in memory are sorted in memory, as they always have been. The sort is stable.
+ */
+@NotThreadSafe
+class ExternalSorter<K,V> implements AutoCloseable{
+    private static final Logger LOG=Logger.getLogger(ExternalSorter.class);
+    private static final int BUFFER_SIZE=1<<15;
+
+    private final SpillSettings settings;
+    private final Comparator<Tuple2<K,V>> comparator;
+    private final LinkedList<Run> runs=new LinkedList<>();
+    private SpillCodec<K> keyCodec;
+    private SpillCodec<V> valueCodec;
+    private int runsWritten;
+
+    ExternalSorter(SpillSettings settings,final Comparator<? super K> keyComparator){
+        this.settings=settings;
+        this.comparator=new Comparator<Tuple2<K,V>>(){
+            @Override
+            public int compare(Tuple2<K,V> o1,Tuple2<K,V> o2){
+                return keyComparator.compare(o1._1(),o2._1());
+            }
+        };
+    }
+
+    /**
+     * Sort {@code source}. The returned iterator reads the sorted runs lazily, and removes them from disk
+     * once it has been exhausted (or when this sorter is closed).
+     */
+    Iterator<Tuple2<K,V>> sort(Iterator<Tuple2<K,V>> source) throws IOException{
+        List<Tuple2<K,V>> buffer=new ArrayList<>();
+        long estimatedSize=0L;
+        boolean sampled=false;
+        boolean canSpill=false;
+        try{
+            while(source.hasNext()){
+                Tuple2<K,V> t=source.next();
+                if(!sampled){
+                    keyCodec=SpillCodec.forSample(t._1());
+                    valueCodec=SpillCodec.forSample(t._2());
+                    canSpill=keyCodec!=null && valueCodec!=null;
+                    sampled=true;
+                }
+                buffer.add(t);
+                if(canSpill){
+                    estimatedSize+=keyCodec.estimateSize(t._1())+valueCodec.estimateSize(t._2());
+                    if(estimatedSize>settings.sortMemoryLimit()){
+                        Collections.sort(buffer,comparator);
+                        runs.add(writeRun(buffer.iterator()));
+                        buffer=new ArrayList<>();
+                        estimatedSize=0L;
+                    }
+                }
+            }
+            Collections.sort(buffer,comparator);
+            if(runs.isEmpty())
+                return buffer.iterator();
+
+            /*
+             * Merge down to a single pass. The oldest runs are merged first, and the merged run takes their
+             * place at the front of the list, so that the sort remains stable (the loser tree breaks ties
+             * by the position of the run).
+             */
+            while(runs.size()>SpillSettings.MERGE_FANIN){
+                List<Run> toMerge=new ArrayList<>(runs.subList(0,SpillSettings.MERGE_FANIN));
+                runs.addFirst(writeRun(merge(toMerge,Collections.<Tuple2<K,V>>emptyIterator())));
+            }
+        }catch(IOException|RuntimeException e){
+            close();
+            throw e;
+        }
+        return merge(new ArrayList<>(runs),buffer.iterator());
+    }
+
+    /**
+     * @return the number of sorted runs written to disk, including those written while merging
+     */
+    int runsWritten(){
+        return runsWritten;
+    }
+
+    /**
+     * Remove any sorted runs which have not yet been read completely.
+     */
+    @Override
+    public void close(){
+        for(Run run:runs){
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * Merge the given runs, followed by the pairs (already sorted) that are still held in memory
+     */
+    private Iterator<Tuple2<K,V>> merge(List<Run> toMerge,Iterator<Tuple2<K,V>> inMemory) throws IOException{
+        List<Iterator<Tuple2<K,V>>> sources=new ArrayList<>(toMerge.size()+1);
+        for(Run run:toMerge){
+            sources.add(run.read());
+        }
+        sources.add(inMemory);
+        return new LoserTree<>(sources,comparator);
+    }
+
+    private Run writeRun(Iterator<Tuple2<K,V>> sorted) throws IOException{
+        File file=File.createTempFile("control-sort-",".run",settings.spillDirectory());
+        file.deleteOnExit();
+        Run run=new Run(file);
+        try(DataOutputStream output=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),BUFFER_SIZE))){
+            while(sorted.hasNext()){
+                Tuple2<K,V> t=sorted.next();
+                keyCodec.encode(t._1(),output);
+                valueCodec.encode(t._2(),output);
+                run.count++;
+            }
+        }catch(IOException|RuntimeException e){
+            run.delete();
+            throw e;
+        }
+        runsWritten++;
+        return run;
+    }
+
+    private class Run{
+        private final File file;
+        private long count;
+        private DataInputStream input;
+
+        Run(File file){
+            this.file=file;
+        }
+
+        Iterator<Tuple2<K,V>> read() throws IOException{
+            input=new DataInputStream(new BufferedInputStream(new FileInputStream(file),BUFFER_SIZE));
+            return new AbstractIterator<Tuple2<K,V>>(){
+                private long read=0;
+
+                @Override
+                protected Tuple2<K,V> computeNext(){
+                    try{
+                        if(read>=count){
+                            runs.remove(Run.this);
+                            delete();
+                            return endOfData();
+                        }
+                        read++;
+                        K key=keyCodec.decode(input);
+                        V value=valueCodec.decode(input);
+                        return new Tuple2<>(key,value);
+                    }catch(IOException e){
+                        runs.remove(Run.this);
+                        delete();
+                        throw new RuntimeException("Unable to read sorted run "+file,e);
+                    }
+                }
+            };
+        }
+
+        void delete(){
+            if(input!=null){
+                try{
+                    input.close();
+                }catch(IOException ignored){ }
+                input=null;
+            }
+            if(!file.delete() && file.exists())
+                LOG.warn("Unable to delete control-side sort run "+file);
+        }
+    }
+}
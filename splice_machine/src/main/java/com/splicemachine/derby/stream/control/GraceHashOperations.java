@@ -0,0 +1,326 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.stream.function.SpliceFunction2;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import org.spark_project.guava.base.Function;
+import org.spark_project.guava.collect.AbstractIterator;
+import org.spark_project.guava.collect.ArrayListMultimap;
+import org.spark_project.guava.collect.Iterators;
+import org.spark_project.guava.collect.Multimap;
+import org.spark_project.guava.collect.Sets;
+import scala.Tuple2;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-bounded implementations of the hash based operations of {@link ControlPairDataSet}.
+ *
+ * Each operation first tries to hold its (build side) input in memory, exactly as it always has. If
+ * the input grows past {@link SpillSettings#memoryLimit(int)}, it is instead hash partitioned to local disk
+ * (along with the probe side, for joins), and each partition is then processed in turn, in the manner of
+ * a grace hash join. A partition which is itself still too large is partitioned again, up to
+ * {@link SpillSettings#MAX_DEPTH} times.
+ *
+ * Spilling does not preserve the order of the probe side. Spilled data is registered with the operation which
+ * owns the output (if there is one), so that it is removed when that operation is closed even if the output
+ * is never fully consumed.
+ */
+final class GraceHashOperations{
+
+    private GraceHashOperations(){} //utility class
+
+    /**
+     * Joins the probe side of a hash join against a build side which is held in memory.
+     */
+    interface Prober<K,V,W,R>{
+        Iterator<R> probe(Multimap<K,W> buildSide,Iterator<Tuple2<K,V>> probeSide);
+    }
+
+    static <K,V,W,R> Iterator<R> join(Iterator<Tuple2<K,V>> probeSide,
+                                      Iterator<Tuple2<K,W>> buildSide,
+                                      Prober<K,V,W,R> prober,
+                                      SpillSettings settings,
+                                      OperationContext<?> context,
+                                      int level) throws IOException, StandardException{
+        final SpillableMultimap<K,W> build=SpillableMultimap.build(buildSide,settings,level);
+        if(!build.isSpilled())
+            return prober.probe(build.inMemory(),probeSide);
+
+        final SpillableMultimap<K,V> probe=partition(probeSide,settings,level);
+        if(!probe.isSpilled()){
+            //the probe side cannot be written out, so all we can do is bring the build side back into memory
+            return prober.probe(readAll(build.partitions()),tuples(probe.inMemory()));
+        }
+        return concat(new PartitionProcessor<R>(){
+            @Override
+            Iterator<R> process(int partition) throws Exception{
+                return join(probe.partitions().read(partition),build.partitions().read(partition),prober,settings,context,level+1);
+            }
+        },context,build,probe);
+    }
+
+    static <K,V> Iterator<Tuple2<K,V>> reduce(Iterator<Tuple2<K,V>> source,
+                                              SpliceFunction2<?,V,V,V> function,
+                                              SpillSettings settings,
+                                              OperationContext<?> context,
+                                              int level) throws Exception{
+        /*
+         * Values are combined as they arrive, so only one (partially reduced) value is held for each key.
+         * Once spilled, both the partial values and the remaining raw values are written out, and
+         * combined again partition by partition.
+         */
+        Map<K,V> reduced=new HashMap<>();
+        long estimatedSize=0L;
+        SpillCodec<K> keyCodec=null;
+        SpillCodec<V> valueCodec=null;
+        boolean sampled=false;
+        SpillPartitions<K,V> partitions=null;
+        try{
+            while(source.hasNext()){
+                Tuple2<K,V> t=source.next();
+                if(partitions!=null){
+                    partitions.add(t._1(),t._2());
+                    continue;
+                }
+                if(!sampled){
+                    keyCodec=SpillCodec.forSample(t._1());
+                    valueCodec=SpillCodec.forSample(t._2());
+                    sampled=true;
+                }
+                V current=reduced.get(t._1());
+                V next=function.call(current,t._2());
+                reduced.put(t._1(),next);
+                if(current==null && keyCodec!=null && valueCodec!=null){
+                    estimatedSize+=keyCodec.estimateSize(t._1())+valueCodec.estimateSize(next);
+                    if(estimatedSize>settings.memoryLimit(level)){
+                        partitions=new SpillPartitions<>(settings,level,keyCodec,valueCodec);
+                        for(Map.Entry<K,V> entry:reduced.entrySet()){
+                            partitions.add(entry.getKey(),entry.getValue());
+                        }
+                        reduced=null;
+                    }
+                }
+            }
+            if(partitions==null)
+                return tuples(reduced);
+            partitions.finishWriting();
+        }catch(Exception e){
+            if(partitions!=null)
+                partitions.close();
+            throw e;
+        }
+
+        final SpillPartitions<K,V> spilled=partitions;
+        return concat(new PartitionProcessor<Tuple2<K,V>>(){
+            @Override
+            Iterator<Tuple2<K,V>> process(int partition) throws Exception{
+                return reduce(spilled.read(partition),function,settings,context,level+1);
+            }
+        },context,spilled);
+    }
+
+    static <K,V> Iterator<Tuple2<K,Iterable<V>>> group(Iterator<Tuple2<K,V>> source,
+                                                       final SpillSettings settings,
+                                                       final OperationContext<?> context,
+                                                       final int level) throws IOException, StandardException{
+        final SpillableMultimap<K,V> map=SpillableMultimap.build(source,settings,level);
+        if(!map.isSpilled()){
+            return Iterators.transform(map.inMemory().asMap().entrySet().iterator(),new Function<Map.Entry<K,Collection<V>>,Tuple2<K,Iterable<V>>>(){
+                @Nullable
+                @Override
+                public Tuple2<K,Iterable<V>> apply(@Nullable Map.Entry<K,Collection<V>> e){
+                    assert e!=null: "Entry cannot be null";
+                    return new Tuple2<K,Iterable<V>>(e.getKey(),e.getValue());
+                }
+            });
+        }
+        return concat(new PartitionProcessor<Tuple2<K,Iterable<V>>>(){
+            @Override
+            Iterator<Tuple2<K,Iterable<V>>> process(int partition) throws Exception{
+                return group(map.partitions().read(partition),settings,context,level+1);
+            }
+        },context,map.partitions());
+    }
+
+    static <K,V,W> Iterator<Tuple2<K,Tuple2<Iterable<V>,Iterable<W>>>> cogroup(Iterator<Tuple2<K,V>> leftSide,
+                                                                               Iterator<Tuple2<K,W>> rightSide,
+                                                                               final SpillSettings settings,
+                                                                               final OperationContext<?> context,
+                                                                               final int level) throws IOException, StandardException{
+        final SpillableMultimap<K,V> left=SpillableMultimap.build(leftSide,settings,level);
+        final SpillableMultimap<K,W> right;
+        try{
+            right=SpillableMultimap.build(rightSide,settings,level);
+        }catch(IOException|RuntimeException e){
+            left.close();
+            throw e;
+        }
+        if(!left.isSpilled() && !right.isSpilled())
+            return cogroupInMemory(left.inMemory(),right.inMemory());
+        if(!left.canSpill() || !right.canSpill()){
+            //one side cannot be written out, so bring everything back into memory
+            Multimap<K,V> l=left.isSpilled()?readAll(left.partitions()):left.inMemory();
+            Multimap<K,W> r=right.isSpilled()?readAll(right.partitions()):right.inMemory();
+            return cogroupInMemory(l,r);
+        }
+
+        //both sides must be partitioned the same way for their partitions to line up
+        try{
+            left.spill();
+            left.finish();
+            right.spill();
+            right.finish();
+        }catch(IOException|RuntimeException e){
+            left.close();
+            right.close();
+            throw e;
+        }
+        return concat(new PartitionProcessor<Tuple2<K,Tuple2<Iterable<V>,Iterable<W>>>>(){
+            @Override
+            Iterator<Tuple2<K,Tuple2<Iterable<V>,Iterable<W>>>> process(int partition) throws Exception{
+                return cogroup(left.partitions().read(partition),right.partitions().read(partition),settings,context,level+1);
+            }
+        },context,left,right);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private static <K,V,W> Iterator<Tuple2<K,Tuple2<Iterable<V>,Iterable<W>>>> cogroupInMemory(Multimap<K,V> left,Multimap<K,W> right){
+        List<Tuple2<K,Tuple2<Iterable<V>,Iterable<W>>>> result=new ArrayList<>();
+        for(K key:Sets.union(left.keySet(),right.keySet())){
+            Collection<V> vs=left.get(key);
+            Collection<W> ws=right.get(key);
+            result.add(new Tuple2<>(key,new Tuple2<Iterable<V>,Iterable<W>>(vs,ws)));
+        }
+        return result.iterator();
+    }
+
+    /*
+     * Write out the probe side of a join whose build side has been spilled
+     */
+    private static <K,V> SpillableMultimap<K,V> partition(Iterator<Tuple2<K,V>> source,SpillSettings settings,int level) throws IOException{
+        SpillableMultimap<K,V> map=new SpillableMultimap<>(settings,level);
+        try{
+            while(source.hasNext()){
+                Tuple2<K,V> t=source.next();
+                map.put(t._1(),t._2());
+                if(!map.isSpilled() && map.canSpill())
+                    map.spill();
+            }
+            map.finish();
+        }catch(IOException|RuntimeException e){
+            map.close();
+            throw e;
+        }
+        return map;
+    }
+
+    private static <K,V> Multimap<K,V> readAll(SpillPartitions<K,V> partitions) throws IOException{
+        Multimap<K,V> map=ArrayListMultimap.create();
+        for(int i=0;i<SpillSettings.FANOUT;i++){
+            Iterator<Tuple2<K,V>> partition=partitions.read(i);
+            while(partition.hasNext()){
+                Tuple2<K,V> t=partition.next();
+                map.put(t._1(),t._2());
+            }
+        }
+        return map;
+    }
+
+    private static <K,V> Iterator<Tuple2<K,V>> tuples(Multimap<K,V> map){
+        return tuples(map.entries().iterator());
+    }
+
+    private static <K,V> Iterator<Tuple2<K,V>> tuples(Map<K,V> map){
+        return tuples(map.entrySet().iterator());
+    }
+
+    private static <K,V> Iterator<Tuple2<K,V>> tuples(Iterator<Map.Entry<K,V>> entries){
+        return Iterators.transform(entries,new Function<Map.Entry<K,V>,Tuple2<K,V>>(){
+            @Nullable
+            @Override
+            public Tuple2<K,V> apply(@Nullable Map.Entry<K,V> e){
+                assert e!=null: "Entry cannot be null";
+                return new Tuple2<>(e.getKey(),e.getValue());
+            }
+        });
+    }
+
+    private static abstract class PartitionProcessor<R>{
+        abstract Iterator<R> process(int partition) throws Exception;
+    }
+
+    /*
+     * Process each partition in turn, as the output is consumed. Once every partition has been processed,
+     * whatever remains of the spilled data is removed; if the output is abandoned before then, it is removed
+     * when the owning operation is closed.
+     */
+    private static <R> Iterator<R> concat(final PartitionProcessor<R> processor,
+                                          OperationContext<?> context,
+                                          final AutoCloseable... spilled) throws StandardException{
+        register(context,spilled);
+        return Iterators.concat(new AbstractIterator<Iterator<R>>(){
+            private int partition=0;
+
+            @Override
+            protected Iterator<R> computeNext(){
+                if(partition>=SpillSettings.FANOUT){
+                    closeAll(spilled);
+                    return endOfData();
+                }
+                try{
+                    return processor.process(partition++);
+                }catch(Exception e){
+                    closeAll(spilled);
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    private static void register(OperationContext<?> context,AutoCloseable... spilled) throws StandardException{
+        SpliceOperation operation=context==null?null:context.getOperation();
+        if(operation==null) return; //nothing owns the output, so only consuming it will remove the spilled data
+        try{
+            for(AutoCloseable closeable:spilled){
+                operation.registerCloseable(closeable);
+            }
+        }catch(StandardException|RuntimeException e){
+            closeAll(spilled);
+            throw e;
+        }
+    }
+
+    private static void closeAll(AutoCloseable... closeables){
+        for(AutoCloseable closeable:closeables){
+            try{
+                closeable.close();
+            }catch(Exception ignored){ }
+        }
+    }
+}
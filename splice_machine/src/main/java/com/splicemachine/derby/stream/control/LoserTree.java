@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges several sorted iterators into a single sorted iterator, using a tournament tree of losers.
+ *
+ * Each internal node of the tree remembers the loser of the match played there, and the overall
+ * winner is kept at the root. Replacing the winner with the next element of its source only requires
+ * replaying the matches on the path from that source's leaf to the root, so each element costs
+ * {@code log2(k)} comparisons, rather than the {@code 2*log2(k)} of a binary heap.
+ *
+ * Elements which compare equal are returned in the order of their sources, so merging runs that were
+ * produced by a stable sort, in order, is itself stable.
+ */
+@NotThreadSafe
+class LoserTree<T> implements Iterator<T>{
+    private final Comparator<? super T> comparator;
+    private final Iterator<? extends T>[] sources;
+    private final Object[] heads;
+    private final boolean[] exhausted;
+    /*
+     * tree[0] holds the index of the overall winner, and tree[1..k-1] the loser at each internal node.
+     * Leaf i sits (implicitly) at position k+i.
+     */
+    private final int[] tree;
+
+    @SuppressWarnings("unchecked")
+    LoserTree(List<? extends Iterator<? extends T>> sources,Comparator<? super T> comparator){
+        this.comparator=comparator;
+        int k=sources.size();
+        this.sources=sources.toArray(new Iterator[k]);
+        this.heads=new Object[k];
+        this.exhausted=new boolean[Math.max(k,1)];
+        this.tree=new int[Math.max(k,1)];
+        if(k==0){
+            exhausted[0]=true;
+            return;
+        }
+        for(int i=0;i<k;i++){
+            advance(i);
+        }
+        tree[0]=build(1);
+    }
+
+    @Override
+    public boolean hasNext(){
+        return !exhausted[tree[0]];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next(){
+        if(!hasNext()) throw new NoSuchElementException();
+        int winner=tree[0];
+        T next=(T)heads[winner];
+        advance(winner);
+        for(int node=(winner+sources.length)>>1;node>0;node>>=1){
+            if(beats(tree[node],winner)){
+                int t=tree[node];
+                tree[node]=winner;
+                winner=t;
+            }
+        }
+        tree[0]=winner;
+        return next;
+    }
+
+    @Override
+    public void remove(){
+        throw new UnsupportedOperationException();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * Play the matches below node, recording the losers, and return the winner
+     */
+    private int build(int node){
+        int k=sources.length;
+        if(node>=k) return node-k;
+        int left=build(node<<1);
+        int right=build((node<<1)+1);
+        if(beats(left,right)){
+            tree[node]=right;
+            return left;
+        }else{
+            tree[node]=left;
+            return right;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean beats(int a,int b){
+        if(exhausted[a]) return false;
+        if(exhausted[b]) return true;
+        int c=comparator.compare((T)heads[a],(T)heads[b]);
+        return c<0 || (c==0 && a<b);
+    }
+
+    private void advance(int source){
+        if(sources[source].hasNext())
+            heads[source]=sources[source].next();
+        else{
+            heads[source]=null;
+            exhausted[source]=true;
+        }
+    }
+}
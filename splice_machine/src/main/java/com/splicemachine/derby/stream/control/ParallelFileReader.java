@@ -0,0 +1,348 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.EngineDriver;
+import com.splicemachine.access.api.DistributedFileSystem;
+import com.splicemachine.access.api.FileInfo;
+import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.si.impl.driver.SIDriver;
+import org.apache.log4j.Logger;
+import org.spark_project.guava.collect.AbstractIterator;
+import org.spark_project.guava.io.ByteStreams;
+import org.spark_project.guava.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parses a single large file on the control side with several threads at once.
+ *
+ * The file is split into byte ranges of roughly {@link SConfiguration#getImportControlSplitSize()} bytes,
+ * each of which begins and ends on a record boundary. When every record is a single line, a boundary is
+ * simply the start of the first line after the split point. When quoted columns may span lines, the file
+ * is first scanned once for quote characters (a single pass over the raw bytes, without tokenizing), and a
+ * boundary is placed at the first line break after the split point which is not inside quotes.
+ *
+ * Each range is then parsed by its own {@link RangeParser}, on a pool of {@link SConfiguration#getImportControlParallelism()}
+ * threads, and the parsed rows are handed back to the reading thread in batches. Rows are not returned in
+ * file order.
+ *
+ * Ranges are split on bytes, so only files in a charset in which line breaks and quote characters
+ * are always single (ASCII) bytes can be read this way.
+ */
+public class ParallelFileReader implements AutoCloseable{
+    private static final Logger LOG=Logger.getLogger(ParallelFileReader.class);
+    private static final int BUFFER_SIZE=1<<16;
+    private static final int BATCH_SIZE=1024;
+    /*
+     * Placed on the queue by each parsing thread once it has nothing more to parse
+     */
+    private static final List<LocatedRow> FINISHED=Collections.emptyList();
+
+    /**
+     * Parses the records of a single range of the file.
+     */
+    public interface RangeParser{
+        /**
+         * @param range the bytes of the range, which start at the beginning of a record and end at the end of one
+         * @return the rows parsed from the range
+         */
+        Iterator<LocatedRow> parse(InputStream range) throws Exception;
+    }
+
+    public interface RangeParserFactory{
+        /**
+         * @return a new parser. Each parsing thread has its own parser, so parsers need not be thread safe.
+         */
+        RangeParser newParser();
+    }
+
+    private final FileSystemProvider fileSystem;
+    private final Path path;
+    private final long fileSize;
+    private final int parallelism;
+    private final long splitSize;
+    private final boolean oneLineRecords;
+    private final byte quote;
+
+    private volatile boolean closed;
+    private ExecutorService executor;
+
+    ParallelFileReader(FileSystemProvider fileSystem,Path path,long fileSize,int parallelism,long splitSize,
+                       boolean oneLineRecords,byte quote){
+        this.fileSystem=fileSystem;
+        this.path=path;
+        this.fileSize=fileSize;
+        this.parallelism=parallelism;
+        this.splitSize=splitSize;
+        this.oneLineRecords=oneLineRecords;
+        this.quote=quote;
+    }
+
+    /**
+     * @param fileName the file to read
+     * @param charset the charset of the file
+     * @param oneLineRecords whether every record is a single line
+     * @param characterDelimiter the quote character, or {@code null} for the default
+     * @return a reader for {@code fileName}, or {@code null} if the file should be read on a single thread
+     * (because it is small, compressed, a directory, or in a charset which cannot be split on bytes).
+     * @throws IOException if the file cannot be inspected
+     */
+    public static ParallelFileReader forFile(String fileName,String charset,boolean oneLineRecords,String characterDelimiter) throws IOException{
+        SConfiguration config=EngineDriver.driver().getConfiguration();
+        int parallelism=config.getImportControlParallelism();
+        long splitSize=config.getImportControlSplitSize();
+        if(parallelism<=1 || fileName.endsWith("gz") || !isSplittable(charset))
+            return null;
+        String quoteCharacter=characterDelimiter==null?"\"":characterDelimiter;
+        if(quoteCharacter.length()!=1 || quoteCharacter.charAt(0)>=0x80)
+            return null;
+
+        DistributedFileSystem dfs=SIDriver.driver().fileSystem();
+        FileInfo info=dfs.getInfo(fileName);
+        if(info.isDirectory() || info.size()<2*splitSize)
+            return null;
+        return new ParallelFileReader(dfs,dfs.getPath(fileName),info.size(),parallelism,splitSize,
+                oneLineRecords,(byte)quoteCharacter.charAt(0));
+    }
+
+    /**
+     * Split the file and begin parsing it.
+     *
+     * @param parserFactory creates the parser for each thread
+     * @return the parsed rows, in no particular order. Once the iterator is exhausted, the number of rows
+     * parsed and the rate at which they were parsed are logged.
+     * @throws IOException if the file cannot be split
+     */
+    public Iterator<LocatedRow> read(RangeParserFactory parserFactory) throws IOException{
+        final List<long[]> ranges=split();
+        final int threads=Math.min(parallelism,ranges.size());
+        final BlockingQueue<List<LocatedRow>> queue=new ArrayBlockingQueue<>(4*threads);
+        final AtomicInteger nextRange=new AtomicInteger();
+        final AtomicReference<Throwable> error=new AtomicReference<>();
+        final long start=System.nanoTime();
+
+        executor=Executors.newFixedThreadPool(threads,new ThreadFactoryBuilder()
+                .setNameFormat("import-reader-%d").setDaemon(true).build());
+        for(int i=0;i<threads;i++){
+            final RangeParser parser=parserFactory.newParser();
+            executor.execute(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        int r;
+                        while(!closed && error.get()==null && (r=nextRange.getAndIncrement())<ranges.size()){
+                            parseRange(parser,ranges.get(r),queue);
+                        }
+                    }catch(Throwable t){
+                        error.compareAndSet(null,t);
+                    }finally{
+                        offer(queue,FINISHED);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        return new AbstractIterator<LocatedRow>(){
+            private Iterator<LocatedRow> batch=Collections.emptyIterator();
+            private int finishedThreads;
+            private long rows;
+
+            @Override
+            protected LocatedRow computeNext(){
+                while(!batch.hasNext()){
+                    if(finishedThreads==threads){
+                        if(LOG.isInfoEnabled()){
+                            double seconds=(System.nanoTime()-start)/1e9d;
+                            LOG.info(String.format("Parsed %d rows from %s in %d ranges on %d threads in %.1f seconds (%.0f rows/sec)",
+                                    rows,path,ranges.size(),threads,seconds,rows/seconds));
+                        }
+                        return endOfData();
+                    }
+                    List<LocatedRow> next;
+                    try{
+                        next=queue.take();
+                    }catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                        close();
+                        throw new RuntimeException(e);
+                    }
+                    if(next==FINISHED){
+                        finishedThreads++;
+                        Throwable t=error.get();
+                        if(t!=null){
+                            close();
+                            if(t instanceof RuntimeException) throw (RuntimeException)t;
+                            throw new RuntimeException(t);
+                        }
+                    }else{
+                        rows+=next.size();
+                        batch=next.iterator();
+                    }
+                }
+                return batch.next();
+            }
+        };
+    }
+
+    /**
+     * Stop parsing. Any rows which have been parsed but not yet read are discarded.
+     */
+    @Override
+    public void close(){
+        closed=true;
+        if(executor!=null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * @return the ranges of the file, as {@code [start,end)} pairs of byte offsets
+     */
+    List<long[]> split() throws IOException{
+        List<long[]> ranges=new ArrayList<>((int)(fileSize/splitSize)+1);
+        long start=0;
+        if(oneLineRecords){
+            while(start<fileSize){
+                long end=nextLineStart(start+splitSize);
+                ranges.add(new long[]{start,end});
+                start=end;
+            }
+        }else{
+            try(InputStream in=new BufferedInputStream(fileSystem.newInputStream(path,StandardOpenOption.READ),BUFFER_SIZE)){
+                boolean quoted=false;
+                long position=0;
+                int b;
+                while((b=in.read())>=0){
+                    position++;
+                    if(b==quote)
+                        quoted=!quoted; //an escaped quote is just two quotes in a row, so it toggles twice
+                    else if(b=='\n' && !quoted && position-start>=splitSize){
+                        ranges.add(new long[]{start,position});
+                        start=position;
+                    }
+                }
+            }
+            if(start<fileSize)
+                ranges.add(new long[]{start,fileSize});
+        }
+        return ranges;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * The offset of the first line which starts at or after splitPoint, or the end of the file if there is none
+     */
+    private long nextLineStart(long splitPoint) throws IOException{
+        if(splitPoint>=fileSize)
+            return fileSize;
+        try(InputStream in=openAt(splitPoint-1)){
+            long position=splitPoint-1;
+            int b;
+            while((b=in.read())>=0){
+                position++;
+                if(b=='\n')
+                    return position;
+            }
+        }
+        return fileSize;
+    }
+
+    private InputStream openAt(long offset) throws IOException{
+        InputStream in=fileSystem.newInputStream(path,StandardOpenOption.READ);
+        try{
+            long remaining=offset;
+            while(remaining>0){
+                long skipped=in.skip(remaining);
+                if(skipped<=0){
+                    if(in.read()<0)
+                        throw new EOFException("Unable to seek to offset "+offset+" of "+path);
+                    skipped=1;
+                }
+                remaining-=skipped;
+            }
+        }catch(IOException|RuntimeException e){
+            in.close();
+            throw e;
+        }
+        return new BufferedInputStream(in,BUFFER_SIZE);
+    }
+
+    private void parseRange(RangeParser parser,long[] range,BlockingQueue<List<LocatedRow>> queue) throws Exception{
+        try(InputStream in=ByteStreams.limit(openAt(range[0]),range[1]-range[0])){
+            Iterator<LocatedRow> rows=parser.parse(in);
+            List<LocatedRow> batch=new ArrayList<>(BATCH_SIZE);
+            while(!closed && rows.hasNext()){
+                batch.add(rows.next());
+                if(batch.size()==BATCH_SIZE){
+                    if(!offer(queue,batch))
+                        return;
+                    batch=new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if(!batch.isEmpty())
+                offer(queue,batch);
+        }
+    }
+
+    /*
+     * Wait for room on the queue, unless the reader is closed in the meantime
+     */
+    private boolean offer(BlockingQueue<List<LocatedRow>> queue,List<LocatedRow> batch){
+        try{
+            while(!closed){
+                if(queue.offer(batch,100,TimeUnit.MILLISECONDS))
+                    return true;
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static boolean isSplittable(String charset){
+        if(charset==null)
+            return true;
+        String name;
+        try{
+            name=Charset.forName(charset).name();
+        }catch(IllegalArgumentException e){
+            return false; //let the single threaded reader report it
+        }
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.equals("ISO-8859-1");
+    }
+}
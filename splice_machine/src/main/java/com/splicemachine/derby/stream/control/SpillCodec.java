@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.RowLocation;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.impl.store.access.hbase.HBaseRowLocation;
+import com.splicemachine.derby.utils.marshall.EntryDataDecoder;
+import com.splicemachine.derby.utils.marshall.EntryDataHash;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.utils.IntArrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes values of a {@link ControlPairDataSet} to (and reads them back from) a spill file, using
+ * the same compact encoding that rows are stored with, rather than java serialization.
+ */
+@NotThreadSafe
+abstract class SpillCodec<T>{
+    /*
+     * A rough allowance for the object headers, references and collection entry held for each value in memory
+     */
+    static final int ENTRY_OVERHEAD=64;
+
+    abstract void encode(T value,DataOutput output) throws IOException;
+
+    abstract T decode(DataInput input) throws IOException;
+
+    /**
+     * @return an estimate of the number of bytes of heap held by {@code value}
+     */
+    abstract long estimateSize(T value);
+
+    /**
+     * @param sample a value of the type to be spilled
+     * @return a codec for values which look like {@code sample}, or {@code null} if values of that type
+     * cannot be spilled.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> SpillCodec<T> forSample(T sample){
+        if(sample instanceof ExecRow)
+            return (SpillCodec<T>)new ExecRowCodec((ExecRow)sample);
+        else if(sample instanceof LocatedRow && ((LocatedRow)sample).getRow()!=null)
+            return (SpillCodec<T>)new LocatedRowCodec((LocatedRow)sample);
+        return null;
+    }
+
+    private static class ExecRowCodec extends SpillCodec<ExecRow>{
+        private final ExecRow template;
+        private final EntryDataHash encoder;
+        private final EntryDataDecoder decoder;
+
+        ExecRowCodec(ExecRow sample){
+            this.template=sample.getNewNullRow();
+            DescriptorSerializer[] serializers=VersionedSerializers.latestVersion(true).getSerializers(template);
+            int[] columns=IntArrays.count(template.nColumns());
+            this.encoder=new EntryDataHash(columns,null,serializers);
+            this.decoder=new EntryDataDecoder(columns,null,serializers);
+        }
+
+        @Override
+        void encode(ExecRow value,DataOutput output) throws IOException{
+            try{
+                encoder.setRow(value);
+                byte[] bytes=encoder.encode();
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }catch(StandardException e){
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        ExecRow decode(DataInput input) throws IOException{
+            //always a fresh array, since the decoder caches state based on the array it was last given
+            byte[] bytes=new byte[input.readInt()];
+            input.readFully(bytes);
+            ExecRow row=template.getNewNullRow();
+            try{
+                decoder.set(bytes,0,bytes.length);
+                decoder.decode(row);
+            }catch(StandardException e){
+                throw new IOException(e);
+            }
+            return row;
+        }
+
+        @Override
+        long estimateSize(ExecRow value){
+            long size=ENTRY_OVERHEAD;
+            for(DataValueDescriptor dvd:value.getRowArray()){
+                if(dvd!=null)
+                    size+=dvd.estimateMemoryUsage();
+            }
+            return size;
+        }
+    }
+
+    private static class LocatedRowCodec extends SpillCodec<LocatedRow>{
+        private final ExecRowCodec rowCodec;
+
+        LocatedRowCodec(LocatedRow sample){
+            this.rowCodec=new ExecRowCodec(sample.getRow());
+        }
+
+        @Override
+        void encode(LocatedRow value,DataOutput output) throws IOException{
+            RowLocation location=value.getRowLocation();
+            try{
+                byte[] locationBytes=location==null?null:location.getBytes();
+                if(locationBytes==null)
+                    output.writeInt(-1);
+                else{
+                    output.writeInt(locationBytes.length);
+                    output.write(locationBytes);
+                }
+            }catch(StandardException e){
+                throw new IOException(e);
+            }
+            rowCodec.encode(value.getRow(),output);
+        }
+
+        @Override
+        LocatedRow decode(DataInput input) throws IOException{
+            int locationLength=input.readInt();
+            RowLocation location=null;
+            if(locationLength>=0){
+                byte[] locationBytes=new byte[locationLength];
+                input.readFully(locationBytes);
+                location=new HBaseRowLocation(locationBytes);
+            }
+            return new LocatedRow(location,rowCodec.decode(input));
+        }
+
+        @Override
+        long estimateSize(LocatedRow value){
+            long size=rowCodec.estimateSize(value.getRow());
+            RowLocation location=value.getRowLocation();
+            if(location!=null)
+                size+=location.estimateMemoryUsage();
+            return size;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.hash.Hash32;
+import com.splicemachine.hash.HashFunctions;
+import org.apache.log4j.Logger;
+import org.spark_project.guava.collect.AbstractIterator;
+import scala.Tuple2;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Key-value pairs hash partitioned on their key into files on local disk.
+ *
+ * Keys are assigned to partitions by their {@code hashCode()}, so that keys which are equal (and would
+ * therefore be grouped or joined together in memory) always land in the same partition. The hash
+ * is re-mixed with a different seed at each level, so that re-partitioning the contents of one partition
+ * actually splits it up.
+ */
+@NotThreadSafe
+class SpillPartitions<K,V> implements AutoCloseable{
+    private static final Logger LOG=Logger.getLogger(SpillPartitions.class);
+    private static final int BUFFER_SIZE=1<<15;
+
+    private final SpillSettings settings;
+    private final int level;
+    private final Hash32 hash;
+    private final SpillCodec<K> keyCodec;
+    private final SpillCodec<V> valueCodec;
+    private final File[] files=new File[SpillSettings.FANOUT];
+    private final DataOutputStream[] outputs=new DataOutputStream[SpillSettings.FANOUT];
+    private final DataInputStream[] inputs=new DataInputStream[SpillSettings.FANOUT];
+    private final long[] counts=new long[SpillSettings.FANOUT];
+
+    /**
+     * @param level the number of times the data being partitioned has already been partitioned
+     */
+    SpillPartitions(SpillSettings settings,int level,SpillCodec<K> keyCodec,SpillCodec<V> valueCodec){
+        this.settings=settings;
+        this.level=level;
+        this.hash=HashFunctions.murmur3(0x5f3759df+level);
+        this.keyCodec=keyCodec;
+        this.valueCodec=valueCodec;
+    }
+
+    int level(){
+        return level;
+    }
+
+    void add(K key,V value) throws IOException{
+        int partition=partitionFor(key);
+        DataOutputStream output=outputs[partition];
+        if(output==null){
+            File file=File.createTempFile("control-hash-",".spill",settings.spillDirectory());
+            file.deleteOnExit();
+            files[partition]=file;
+            output=outputs[partition]=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),BUFFER_SIZE));
+        }
+        keyCodec.encode(key,output);
+        valueCodec.encode(value,output);
+        counts[partition]++;
+    }
+
+    /**
+     * Finish writing, so that the partitions may be read. Nothing may be added afterwards.
+     */
+    void finishWriting() throws IOException{
+        for(int i=0;i<outputs.length;i++){
+            if(outputs[i]!=null){
+                outputs[i].close();
+                outputs[i]=null;
+            }
+        }
+    }
+
+    long size(int partition){
+        return counts[partition];
+    }
+
+    /**
+     * Read back the contents of a partition. The partition's file is removed once it has been
+     * read completely, so each partition may only be read once.
+     */
+    Iterator<Tuple2<K,V>> read(final int partition) throws IOException{
+        final File file=files[partition];
+        if(file==null)
+            return Collections.emptyIterator();
+        assert inputs[partition]==null: "Programmer error: partition "+partition+" is already being read";
+        final DataInputStream input=new DataInputStream(new BufferedInputStream(new FileInputStream(file),BUFFER_SIZE));
+        inputs[partition]=input;
+        final long count=counts[partition];
+        return new AbstractIterator<Tuple2<K,V>>(){
+            private long read=0;
+
+            @Override
+            protected Tuple2<K,V> computeNext(){
+                try{
+                    if(read>=count){
+                        discard(partition);
+                        return endOfData();
+                    }
+                    read++;
+                    K key=keyCodec.decode(input);
+                    V value=valueCodec.decode(input);
+                    return new Tuple2<>(key,value);
+                }catch(IOException e){
+                    discard(partition);
+                    throw new RuntimeException("Unable to read spilled partition "+file,e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Discard every partition which has not yet been read completely.
+     */
+    @Override
+    public void close(){
+        for(int i=0;i<files.length;i++){
+            closeQuietly(outputs[i]);
+            outputs[i]=null;
+            discard(i);
+        }
+    }
+
+    private void discard(int partition){
+        closeQuietly(inputs[partition]);
+        inputs[partition]=null;
+        delete(files[partition]);
+        files[partition]=null;
+    }
+
+    private int partitionFor(K key){
+        return hash.hash(key.hashCode())&(SpillSettings.FANOUT-1);
+    }
+
+    private static void closeQuietly(AutoCloseable closeable){
+        if(closeable==null) return;
+        try{
+            closeable.close();
+        }catch(Exception ignored){ }
+    }
+
+    private static void delete(File file){
+        if(file!=null && !file.delete() && file.exists())
+            LOG.warn("Unable to delete control-side spill file "+file);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.EngineDriver;
+import com.splicemachine.access.api.SConfiguration;
+
+import java.io.File;
+
+/**
+ * Limits on the memory held by the hash based operations and sorts of a {@link ControlPairDataSet}, and
+ * where they should place anything which does not fit.
+ */
+final class SpillSettings{
+    /**
+     * The number of partitions an input is split into each time it is spilled
+     */
+    static final int FANOUT=16;
+    /**
+     * The number of times a single input may be re-partitioned. A partition which is still too large
+     * after this many passes (e.g. because it holds a single, very popular key) is processed in memory.
+     */
+    static final int MAX_DEPTH=3;
+    /**
+     * The maximum number of sorted runs which are merged together in a single pass
+     */
+    static final int MERGE_FANIN=64;
+
+    private final long memoryLimit;
+    private final long sortMemoryLimit;
+    private final File spillDirectory;
+
+    SpillSettings(long memoryLimit,File spillDirectory){
+        this(memoryLimit,memoryLimit,spillDirectory);
+    }
+
+    SpillSettings(long memoryLimit,long sortMemoryLimit,File spillDirectory){
+        this.memoryLimit=memoryLimit;
+        this.sortMemoryLimit=sortMemoryLimit;
+        this.spillDirectory=spillDirectory;
+    }
+
+    static SpillSettings fromConfiguration(){
+        EngineDriver driver=EngineDriver.driver();
+        if(driver==null){
+            //no engine is running (e.g. in unit tests), so fall back to the configured defaults
+            long defaultLimit=Runtime.getRuntime().maxMemory()/20;
+            return new SpillSettings(defaultLimit,defaultLimit,new File(System.getProperty("java.io.tmpdir")));
+        }
+        SConfiguration config=driver.getConfiguration();
+        return new SpillSettings(config.getControlHashMemory(),config.getControlSortMemory(),new File(config.getControlSpillDirectory()));
+    }
+
+    /**
+     * @param level the number of times the input has already been partitioned
+     * @return the number of bytes an operation at {@code level} may hold before it must spill
+     */
+    long memoryLimit(int level){
+        return level<MAX_DEPTH?memoryLimit:Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the number of bytes a sort may hold before it must write out a sorted run
+     */
+    long sortMemoryLimit(){
+        return sortMemoryLimit;
+    }
+
+    File spillDirectory(){
+        return spillDirectory;
+    }
+}
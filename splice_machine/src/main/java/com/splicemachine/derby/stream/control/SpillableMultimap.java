@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import org.spark_project.guava.collect.ArrayListMultimap;
+import org.spark_project.guava.collect.Multimap;
+import scala.Tuple2;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A multimap which holds its contents in memory until their estimated size exceeds the
+ * configured limit, and then moves them (and everything added afterwards) out to
+ * {@link SpillPartitions} on local disk.
+ *
+ * Values whose types have no {@link SpillCodec} are always held in memory.
+ */
+@NotThreadSafe
+class SpillableMultimap<K,V> implements AutoCloseable{
+    private final SpillSettings settings;
+    private final int level;
+
+    private Multimap<K,V> map=ArrayListMultimap.create();
+    private long estimatedSize;
+    private boolean sampled;
+    private SpillCodec<K> keyCodec;
+    private SpillCodec<V> valueCodec;
+    private SpillPartitions<K,V> partitions;
+
+    /**
+     * @param level the number of times the input has already been partitioned
+     */
+    SpillableMultimap(SpillSettings settings,int level){
+        this.settings=settings;
+        this.level=level;
+    }
+
+    static <K,V> SpillableMultimap<K,V> build(Iterator<Tuple2<K,V>> source,SpillSettings settings,int level) throws IOException{
+        SpillableMultimap<K,V> map=new SpillableMultimap<>(settings,level);
+        try{
+            while(source.hasNext()){
+                Tuple2<K,V> t=source.next();
+                map.put(t._1(),t._2());
+            }
+            map.finish();
+        }catch(IOException|RuntimeException e){
+            map.close();
+            throw e;
+        }
+        return map;
+    }
+
+    void put(K key,V value) throws IOException{
+        if(partitions!=null){
+            partitions.add(key,value);
+            return;
+        }
+        if(!sampled){
+            keyCodec=SpillCodec.forSample(key);
+            valueCodec=SpillCodec.forSample(value);
+            sampled=true;
+        }
+        Collection<V> values=map.get(key);
+        if(canSpill()){
+            if(values.isEmpty())
+                estimatedSize+=keyCodec.estimateSize(key);
+            estimatedSize+=valueCodec.estimateSize(value);
+        }
+        values.add(value);
+        if(canSpill() && estimatedSize>settings.memoryLimit(level))
+            spill();
+    }
+
+    /**
+     * Called once everything has been added.
+     */
+    void finish() throws IOException{
+        if(partitions!=null)
+            partitions.finishWriting();
+    }
+
+    boolean isSpilled(){
+        return partitions!=null;
+    }
+
+    /**
+     * @return true if this map is able to move its contents to disk
+     */
+    boolean canSpill(){
+        return !sampled || (keyCodec!=null && valueCodec!=null);
+    }
+
+    /**
+     * @return the contents, when they are held in memory
+     */
+    Multimap<K,V> inMemory(){
+        assert partitions==null: "Programmer error: map has been spilled";
+        return map;
+    }
+
+    /**
+     * @return the contents, when they have been spilled
+     */
+    SpillPartitions<K,V> partitions(){
+        assert partitions!=null: "Programmer error: map has not been spilled";
+        return partitions;
+    }
+
+    /**
+     * Move the contents out to disk, whether or not they have outgrown memory. Only valid
+     * when {@link #canSpill()}, and before {@link #finish()} (or be followed by it).
+     */
+    void spill() throws IOException{
+        if(partitions!=null) return;
+        assert canSpill(): "Programmer error: cannot spill values of this type";
+        partitions=new SpillPartitions<>(settings,level,keyCodec,valueCodec);
+        for(Map.Entry<K,V> entry:map.entries()){
+            partitions.add(entry.getKey(),entry.getValue());
+        }
+        map=null;
+        estimatedSize=0L;
+    }
+
+    @Override
+    public void close(){
+        if(partitions!=null)
+            partitions.close();
+    }
+}
@@ -64,7 +64,7 @@ public class IndexToBaseRowFlatMapFunction<Op extends SpliceOperation> extends S
     public Iterator<LocatedRow> call(Iterator<LocatedRow> locatedRows) throws Exception {
         if (!initialized) {
             indexRowToBaseRowOperation = (IndexRowToBaseRowOperation) getOperation();
-            reader = indexRowReaderBuilder.source(locatedRows).build();
+            reader = indexRowReaderBuilder.source(locatedRows).operationContext(operationContext).build();
             initialized = true;
         }
         indexRowToBaseRowOperation.registerCloseable(new AutoCloseable() {
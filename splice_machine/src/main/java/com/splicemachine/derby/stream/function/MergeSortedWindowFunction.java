@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.function;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.impl.sql.execute.operations.WindowOperation;
+import com.splicemachine.derby.impl.sql.execute.operations.window.WindowContext;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import com.splicemachine.derby.stream.window.BaseFrameBuffer;
+import com.splicemachine.derby.stream.window.WindowFrameBuffer;
+import org.spark_project.guava.collect.AbstractIterator;
+import org.spark_project.guava.collect.Iterators;
+import org.spark_project.guava.collect.PeekingIterator;
+
+import java.util.Iterator;
+
+/**
+ * Evaluates window functions over rows which are already sorted by the window's key columns (the
+ * partition columns, followed by the order by columns).
+ *
+ * Unlike {@link MergeWindowFunction}, which is handed each partition as a whole, this splits the sorted
+ * stream into partitions as it goes, and hands each partition to its frame buffer lazily. Combined with the
+ * spilling sort on the control side, a partition never has to fit in memory, unless one of its window
+ * functions needs to see the whole partition before it can produce results.
+ */
+public class MergeSortedWindowFunction<Op extends WindowOperation> extends SpliceFlatMapFunction<Op, Iterator<LocatedRow>, LocatedRow> {
+    private static final long serialVersionUID = 2347110982316590842L;
+
+    public MergeSortedWindowFunction() {
+    }
+
+    public MergeSortedWindowFunction(OperationContext<Op> operationContext) {
+        super(operationContext);
+    }
+
+    @Override
+    public Iterator<LocatedRow> call(Iterator<LocatedRow> sortedRows) throws Exception {
+        final WindowContext windowContext = operationContext.getOperation().getWindowContext();
+        final PeekingIterator<LocatedRow> rows = Iterators.peekingIterator(sortedRows);
+        final ColumnComparator partitionComparator = new ColumnComparator(windowContext.getPartitionColumns(), null, true);
+
+        return Iterators.concat(new AbstractIterator<Iterator<LocatedRow>>() {
+            private PartitionIterator partition;
+
+            @Override
+            protected Iterator<LocatedRow> computeNext() {
+                if (partition != null) {
+                    // skip anything the previous frame buffer did not need to read
+                    while (partition.hasNext()) {
+                        partition.next();
+                    }
+                }
+                if (!rows.hasNext()) {
+                    return endOfData();
+                }
+                partition = new PartitionIterator(rows, rows.peek().getRow().getClone(), partitionComparator);
+                try {
+                    final WindowFrameBuffer frameBuffer = BaseFrameBuffer.createFrameBuffer(
+                            windowContext.getWindowFunctions(),
+                            partition,
+                            windowContext.getFrameDefinition(),
+                            windowContext.getSortColumns(),
+                            operationContext.getOperation().getExecRowDefinition().getClone());
+                    return new MergeWindowFunction.ExecRowToLocatedRowIterable(new Iterable<ExecRow>() {
+                        @Override public Iterator<ExecRow> iterator() { return frameBuffer; }
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The rows at the head of the sorted stream which belong to the same partition as {@code partitionKey}.
+     */
+    private static class PartitionIterator implements Iterator<ExecRow> {
+        private final PeekingIterator<LocatedRow> rows;
+        private final ExecRow partitionKey;
+        private final ColumnComparator partitionComparator;
+
+        PartitionIterator(PeekingIterator<LocatedRow> rows, ExecRow partitionKey, ColumnComparator partitionComparator) {
+            this.rows = rows;
+            this.partitionKey = partitionKey;
+            this.partitionComparator = partitionComparator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext() && partitionComparator.compare(rows.peek().getRow(), partitionKey) == 0;
+        }
+
+        @Override
+        public ExecRow next() {
+            return rows.next().getRow();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
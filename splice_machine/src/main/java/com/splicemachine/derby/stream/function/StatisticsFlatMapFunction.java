@@ -15,15 +15,18 @@
 
 package com.splicemachine.derby.stream.function;
 
+import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.services.io.ArrayUtil;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.db.iapi.stats.ColumnStatisticsImpl;
 import com.splicemachine.db.iapi.stats.ItemStatistics;
+import com.splicemachine.db.iapi.stats.SampledColumnStatisticsImpl;
 import com.splicemachine.db.impl.sql.execute.StatisticsRow;
 import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
 import com.splicemachine.derby.impl.sql.execute.operations.ScalarAggregateOperation;
 import com.splicemachine.derby.impl.sql.execute.operations.scanner.SITableScanner;
 import com.splicemachine.derby.utils.StatisticsAdmin;
+import com.splicemachine.derby.utils.stats.BlockSample;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -69,6 +72,8 @@ public class StatisticsFlatMapFunction
     @Override
     public Iterator<LocatedRow> call(Iterator<LocatedRow> locatedRows) throws Exception {
         List<LocatedRow> rows;
+        BlockSample sample = BlockSample.current.get();
+        double sampleFraction = sample==null?1d:sample.getSampleFraction();
         long rowCount = 0l;
         long rowWidth = 0l;
         while (locatedRows.hasNext()) {
@@ -84,13 +89,19 @@ public class StatisticsFlatMapFunction
         if (statisticsRow!=null) {
             int meanRowWidth = (int) ( ((double) rowWidth)/ ((double) rowCount));
             ItemStatistics[] itemStatistics = statisticsRow.getItemStatistics();
-            rows = new ArrayList<>(itemStatistics.length+1);
+            rows = new ArrayList<>(itemStatistics.length+2);
             for(int i=0;i<itemStatistics.length;i++){
                 if(itemStatistics[i]==null)
                     continue;
-                rows.add(new LocatedRow(StatisticsAdmin.generateRowFromStats(conglomId,SITableScanner.regionId.get(),columnPositionMap[i],itemStatistics[i])));
+                ItemStatistics columnStatistics = itemStatistics[i];
+                if (sampleFraction<1d)
+                    columnStatistics = new SampledColumnStatisticsImpl((ColumnStatisticsImpl)columnStatistics,sampleFraction);
+                rows.add(new LocatedRow(StatisticsAdmin.generateRowFromStats(conglomId,SITableScanner.regionId.get(),columnPositionMap[i],columnStatistics)));
             }
-            rows.add(new LocatedRow(StatisticsAdmin.generateRowFromStats(conglomId,SITableScanner.regionId.get(),rowCount,rowCount*((long)meanRowWidth),meanRowWidth)));
+            if (sample!=null)
+                rows.add(new LocatedRow(sampleRow(sample,rowCount)));
+            long estimatedRowCount = Math.round(rowCount/sampleFraction);
+            rows.add(new LocatedRow(StatisticsAdmin.generateRowFromStats(conglomId,SITableScanner.regionId.get(),estimatedRowCount,estimatedRowCount*((long)meanRowWidth),meanRowWidth)));
             return rows.iterator();
         } else {
             rows = new ArrayList<>(columnPositionMap.length);
@@ -98,9 +109,18 @@ public class StatisticsFlatMapFunction
                 if (columnPositionMap[i] != -1 && template.getColumn(columnPositionMap[i]) !=null)
                 rows.add(new LocatedRow(StatisticsAdmin.generateRowFromStats(conglomId, SITableScanner.regionId.get(), columnPositionMap[i], new ColumnStatisticsImpl(template.getColumn(columnPositionMap[i])) )));
             }
+            if (sample!=null)
+                rows.add(new LocatedRow(sampleRow(sample,0l)));
             rows.add(new LocatedRow(
                     StatisticsAdmin.generateRowFromStats(conglomId,SITableScanner.regionId.get(),0,0,0)));
             return rows.iterator();
         }
     }
+
+    private ExecRow sampleRow(BlockSample sample,long sampleSize) throws StandardException {
+        //the sample belongs to this partition alone, so don't let it leak into the next one read by this thread
+        BlockSample.current.remove();
+        return StatisticsAdmin.generateSampleRow(conglomId,SITableScanner.regionId.get(),sampleSize,
+                sample.getSampleFraction(),sample.relativeStandardError());
+    }
 }
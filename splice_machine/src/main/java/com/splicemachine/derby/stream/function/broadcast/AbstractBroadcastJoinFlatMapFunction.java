@@ -31,15 +31,25 @@ import com.splicemachine.derby.stream.iapi.DataSetProcessor;
 import com.splicemachine.derby.stream.iapi.OperationContext;
 import com.splicemachine.stream.Stream;
 import com.splicemachine.stream.Streams;
+import org.apache.log4j.Logger;
+import org.apache.spark.TaskContext;
+import org.apache.spark.util.TaskCompletionListener;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by dgomezferro on 11/4/15.
  */
 public abstract class AbstractBroadcastJoinFlatMapFunction<In, Out> extends SpliceFlatMapFunction<JoinOperation, Iterator<In>, Out> {
-    private static final BroadcastJoinCache broadcastJoinCache = new BroadcastJoinCache();
+    private static final Logger LOG = Logger.getLogger(AbstractBroadcastJoinFlatMapFunction.class);
+    private static volatile BroadcastJoinCache broadcastJoinCache;
     private JoinOperation operation;
 
     public AbstractBroadcastJoinFlatMapFunction() {
@@ -51,13 +61,39 @@ public abstract class AbstractBroadcastJoinFlatMapFunction<In, Out> extends Spli
 
     @Override
     public final Iterator<Out> call(Iterator<In> locatedRows) throws Exception {
-        JoinTable joinTable ;
         operation = getOperation();
+        JoinTable joinTable = joinTableFactory(operation, operationContext).newTable();
+        final TableRelease release = new TableRelease(joinTable);
+        TaskContext task = TaskContext.get();
+        if (task != null) {
+            task.addTaskCompletionListener(new TaskCompletionListener() {
+                @Override
+                public void onTaskCompletion(TaskContext context) {
+                    release.close();
+                }
+            });
+        } else {
+            operation.registerCloseable(release);
+        }
+        if(joinTable.prefetchSize()>0)
+            locatedRows = new PrefetchingIterator<>(locatedRows, joinTable);
+        return new ClosingIterator<>(call(locatedRows, joinTable).iterator(), release);
+    }
+
+    /**
+     * Get the join table over the inner side of {@code operation} from the broadcast join cache,
+     * loading it if there is no copy cached already.
+     *
+     * @return a factory which holds one reference to the cached table. The reference is released
+     * either by closing the factory, or by closing one table made from it.
+     */
+    public static JoinTable.Factory joinTableFactory(final JoinOperation operation,
+                                                     final OperationContext operationContext) throws IOException, StandardException {
         Callable<Stream<ExecRow>> rhsLoader = new Callable<Stream<ExecRow>>() {
             @Override
             public Stream<ExecRow> call() throws Exception {
                 DataSetProcessorFactory dataSetProcessorFactory=EngineDriver.driver().processorFactory();
-                final DataSetProcessor dsp =dataSetProcessorFactory.bulkProcessor(getActivation(),operation.getRightOperation());
+                final DataSetProcessor dsp =dataSetProcessorFactory.bulkProcessor(operationContext.getActivation(),operation.getRightOperation());
                 return Streams.wrap(FluentIterable.from(new Iterable<LocatedRow>(){
                     @Override
                     public Iterator<LocatedRow> iterator(){
@@ -79,10 +115,139 @@ public abstract class AbstractBroadcastJoinFlatMapFunction<In, Out> extends Spli
             }
         };
         ExecRow leftTemplate = operation.getLeftOperation().getExecRowDefinition();
-        joinTable = broadcastJoinCache.get(operation.getSequenceId(), rhsLoader, operation.getRightHashKeys(), operation.getLeftHashKeys(), leftTemplate).newTable();
-
-        return call(locatedRows, joinTable).iterator();
+        return joinCache().get(operation.getSequenceId(), rhsLoader, operation.getRightHashKeys(), operation.getLeftHashKeys(), leftTemplate);
     }
 
     protected abstract Iterable<Out> call(Iterator<In> locatedRows, JoinTable joinTable);
+
+    /**
+     * Releases this task's reference to the join table exactly once, whichever comes first of
+     * the joined rows running out and the task (or, on the control side, the operation) ending.
+     * Tasks which stop early, fail or are cancelled never exhaust their rows, so without the
+     * second path they would keep the cached table, and its memory and spill files, alive.
+     */
+    static class TableRelease implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private final JoinTable joinTable;
+
+        TableRelease(JoinTable joinTable) {
+            this.joinTable = joinTable;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true))
+                joinTable.close();
+        }
+    }
+
+    /**
+     * Releases the join table as soon as the last joined row has been returned, so that the
+     * cache can release its memory and spill files once every user of the table is done with it.
+     */
+    private static class ClosingIterator<Out> implements Iterator<Out> {
+        private final Iterator<Out> delegate;
+        private final TableRelease release;
+
+        ClosingIterator(Iterator<Out> delegate, TableRelease release) {
+            this.delegate = delegate;
+            this.release = release;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (delegate.hasNext())
+                return true;
+            release.close();
+            return false;
+        }
+
+        @Override
+        public Out next() {
+            return delegate.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Reads the outer rows ahead in batches, and hands each batch to the join table before
+     * returning any of its rows, for join tables which are cheaper to probe a batch at a time.
+     */
+    private static class PrefetchingIterator<In> implements Iterator<In> {
+        private final Iterator<In> delegate;
+        private final JoinTable joinTable;
+        private final List<In> batch;
+        private final List<ExecRow> outerRows;
+        private int position;
+
+        PrefetchingIterator(Iterator<In> delegate, JoinTable joinTable) {
+            this.delegate = delegate;
+            this.joinTable = joinTable;
+            this.batch = new ArrayList<>(joinTable.prefetchSize());
+            this.outerRows = new ArrayList<>(joinTable.prefetchSize());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < batch.size())
+                return true;
+            batch.clear();
+            outerRows.clear();
+            position = 0;
+            int prefetchSize = joinTable.prefetchSize();
+            while (batch.size() < prefetchSize && delegate.hasNext()) {
+                In next = delegate.next();
+                batch.add(next);
+                if (next instanceof LocatedRow)
+                    outerRows.add(((LocatedRow) next).getRow());
+            }
+            if (batch.isEmpty())
+                return false;
+            try {
+                joinTable.prefetch(outerRows);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public In next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return batch.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * The cache is created lazily, because the choice of table implementation depends on
+     * the engine configuration, which is not available when this class is loaded.
+     */
+    private static BroadcastJoinCache joinCache(){
+        BroadcastJoinCache cache = broadcastJoinCache;
+        if(cache==null){
+            synchronized(AbstractBroadcastJoinFlatMapFunction.class){
+                cache = broadcastJoinCache;
+                if(cache==null){
+                    cache = new BroadcastJoinCache(EngineDriver.driver().getConfiguration());
+                    try{
+                        cache.registerJMX(ManagementFactory.getPlatformMBeanServer());
+                    }catch(Exception e){
+                        LOG.warn("Unable to register broadcast join cache statistics with JMX",e);
+                    }
+                    broadcastJoinCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
 }
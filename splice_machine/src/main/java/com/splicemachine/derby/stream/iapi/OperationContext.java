@@ -36,11 +36,39 @@ public interface OperationContext<Op extends SpliceOperation> extends Externaliz
     void recordJoinedLeft();
     void recordJoinedRight();
 
+    /**
+     * Record a bulk fetch of base table rows for an index lookup.
+     *
+     * @param rows the number of base rows fetched
+     * @param nanos how long the fetch took
+     */
+    void recordBaseRowLookups(long rows, long nanos);
+
+    /**
+     * Record outer rows which were discarded by a broadcast join's join key filter.
+     *
+     * @param rows the number of rows eliminated
+     */
+    void recordJoinKeyFilterEliminations(long rows);
+
     long getRecordsRead();
     long getRecordsFiltered();
     long getRecordsWritten();
     long getRetryAttempts();
     long getRegionTooBusyExceptions();
+    long getBaseRowsLookedUp();
+
+    /**
+     * @return the total time (in nanoseconds) spent fetching base rows for index lookups. Together with
+     * {@link #getBaseRowsLookedUp()}, this gives the index-to-base-row lookup throughput.
+     */
+    long getBaseRowLookupTime();
+
+    /**
+     * @return the number of outer rows which were discarded by a broadcast join's join key filter before
+     * they reached the join. These are not included in {@link #getRecordsFiltered()}.
+     */
+    long getRecordsEliminatedByJoinKeyFilter();
 
     BadRecordsRecorder getBadRecordsRecorder();
 
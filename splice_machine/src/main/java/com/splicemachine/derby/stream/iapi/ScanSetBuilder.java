@@ -20,6 +20,7 @@ import com.splicemachine.db.iapi.services.io.FormatableBitSet;
 import com.splicemachine.db.iapi.sql.Activation;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
 import com.splicemachine.metrics.MetricFactory;
 import com.splicemachine.si.api.server.TransactionalRegion;
 import com.splicemachine.si.api.txn.TxnView;
@@ -82,6 +83,15 @@ public interface ScanSetBuilder<V>{
 
     ScanSetBuilder<V> oneSplitPerRegion(boolean oneSplitPerRegion);
 
+    /**
+     * Read only a sample of each region, rather than all of it. Only applies when scanning one split per region.
+     *
+     * @param sampleFraction the fraction of each region to read
+     */
+    ScanSetBuilder<V> sampleFraction(double sampleFraction);
+
+    ScanSetBuilder<V> joinKeyFilter(JoinKeyFilter joinKeyFilter);
+
     DataSet<V> buildDataSet() throws StandardException;
 
     DataSet<V> buildDataSet(Object caller) throws StandardException;
@@ -103,4 +113,6 @@ public interface ScanSetBuilder<V>{
     long getBaseTableConglomId();
 
     ExecRow getTemplate();
+
+    double getSampleFraction();
 }
@@ -89,6 +89,7 @@ public class TableScannerIterator implements Iterable<LocatedRow>, Iterator<Loca
             while (true) {
                 execRow = tableScanner.next();
                 if (execRow == null) {
+                    recordJoinFilterEliminations();
                     tableScanner.close();
                     initialized = false;
                     hasNext = false;
@@ -117,6 +118,12 @@ public class TableScannerIterator implements Iterable<LocatedRow>, Iterator<Loca
         return locatedRow;
     }
 
+    private void recordJoinFilterEliminations(){
+        long eliminated=tableScanner.getRowsEliminatedByJoinFilter();
+        if(eliminated>0 && operation!=null && operation.getOperationContext()!=null)
+            operation.getOperationContext().recordJoinKeyFilterEliminations(eliminated);
+    }
+
     @Override
     public void remove() {
         throw new RuntimeException("Not Implemented");
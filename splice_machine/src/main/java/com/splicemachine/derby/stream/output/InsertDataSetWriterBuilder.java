@@ -38,4 +38,13 @@ public interface InsertDataSetWriterBuilder extends DataSetWriterBuilder{
     InsertDataSetWriterBuilder pkCols(int[] keyCols);
 
     InsertDataSetWriterBuilder tableVersion(String tableVersion);
+
+    /**
+     * Write the rows (and their index rows) directly into HFiles staged in {@code bulkImportDirectory},
+     * instead of through the write pipeline. Implementations which can't produce HFiles write through
+     * the pipeline as usual.
+     *
+     * @param bulkImportDirectory the staging directory, or {@code null} to write through the pipeline
+     */
+    InsertDataSetWriterBuilder bulkImportDirectory(String bulkImportDirectory);
 }
@@ -64,6 +64,7 @@ public class StreamUtils {
             .put("MergeInnerJoinFlatMapFunctionFunction", "Create Flat Map for Merge Inner Join")
             .put("MergeNonDistinctAggregatesFunction", "Merge Non Distinct Aggregates")
             .put("MergeOuterJoinFlatMapFunction", "Create Flat Map for Merge Outer Join")
+            .put("MergeSortedWindowFunction", "Execute Window Function Logic")
             .put("MergeWindowFunction", "Execute Window Function Logic")
             .put("NLJAntiJoinFunction", "Execute Nested Loop Anti Join")
             .put("NLJInnerJoinFunction", "Execute Nested Loop Inner Join")
@@ -48,6 +48,13 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
     protected byte[] partition;
     protected int[] sortColumns;
     private boolean initialized;
+    /*
+     * When no function needs to see the whole partition before producing its results, each row is
+     * returned as soon as its frame is complete, rather than after the entire partition has been read
+     */
+    private final boolean streaming;
+    private ExecRow nextRow;
+    private boolean exhausted;
 
     @SuppressFBWarnings(value="EI_EXPOSE_REP2", justification="Intentional")
     public static WindowFrameBuffer createFrameBuffer(
@@ -80,9 +87,14 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
         this.sortColumns = sortColumns;
         this.templateRow = templateRow;
 
+        boolean needsPartition = false;
         for (WindowAggregator aggregator: this.aggregators) {
             aggregator.initialize(this.templateRow);
+            SpliceGenericWindowFunction function =
+                    (SpliceGenericWindowFunction) templateRow.getColumn(aggregator.getFunctionColumnId()).getObject();
+            needsPartition |= function.requiresEntirePartition();
         }
+        this.streaming = !needsPartition;
         // All aggregators in this frame buffer share the same over() clause
         // so should all have the same frame definition.
         // The frame definition will not change over the life of this frame buffer
@@ -93,6 +105,14 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
     }
 
     public ExecRow next() {
+        if (streaming) {
+            if (!hasNext()) {
+                return null;
+            }
+            ExecRow row = nextRow;
+            nextRow = null;
+            return row;
+        }
         return resultBuffer.next();
     }
 
@@ -107,9 +127,17 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
             int aggregatorColumnId = aggregator.getFunctionColumnId();
             int resultColumnId = aggregator.getResultColumnId();
             SpliceGenericWindowFunction function = (SpliceGenericWindowFunction) templateRow.getColumn(aggregatorColumnId).getObject();
-            row.setColumn(resultColumnId, function.getResult().cloneValue(false));
+            DataValueDescriptor result = function.getResult();
+            if (result == null) {
+                // the frame is empty
+                row.getColumn(resultColumnId).setToNull();
+            } else {
+                row.setColumn(resultColumnId, result.cloneValue(false));
+            }
+        }
+        if (!streaming) {
+            this.resultBuffer.bufferResult(row);
         }
-        this.resultBuffer.bufferResult(row);
         return row;
     }
 
@@ -129,6 +157,9 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
 
 
     public boolean hasNext() {
+        if (streaming) {
+            return hasNextStreaming();
+        }
         if (!initialized) {
             initialized = true;
             try {
@@ -144,6 +175,28 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
         return resultBuffer.hasNext();
     }
 
+    private boolean hasNextStreaming() {
+        if (nextRow != null) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        try {
+            if (!initialized) {
+                initialized = true;
+                reset();
+            } else {
+                move();
+            }
+            nextRow = nextInternal();
+        } catch (Exception se) {
+            throw new RuntimeException(se);
+        }
+        exhausted = nextRow == null;
+        return !exhausted;
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException();
@@ -29,8 +29,12 @@ import com.splicemachine.db.iapi.services.io.FormatableBitSet;
 import com.splicemachine.db.iapi.store.access.Qualifier;
 import com.splicemachine.db.iapi.types.DataValueDescriptor;
 import com.splicemachine.db.iapi.types.DataValueFactory;
+import com.splicemachine.db.iapi.types.Orderable;
+import com.splicemachine.db.iapi.services.io.StoredFormatIds;
 import org.apache.log4j.Logger;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import com.carrotsearch.hppc.BitSet;
 
 /**
@@ -184,7 +188,70 @@ public class Scans extends SpliceUtils {
                     colsToReturn.clear(col);
             }
         }
-        return new EntryPredicateFilter(colsToReturn, true);
+        return new EntryPredicateFilter(colsToReturn, true, getEncodedPredicates(qualifiers, keyColumnEncodingOrder));
+    }
+
+    /**
+     * Find the qualifiers which can be checked against the encoded row, before any of its columns are decoded.
+     *
+     * Only the AND-ed qualifiers which compare a non-key column to an integer constant qualify, since integer
+     * columns of every width share a single order-preserving encoding. Rows which pass these predicates are still
+     * qualified in full once they have been decoded, so this only ever saves work.
+     */
+    public static EncodedPredicate[] getEncodedPredicates(Qualifier[][] qualifiers,
+                                                          int[] keyColumnEncodingOrder) throws StandardException {
+        if (qualifiers == null || qualifiers.length == 0)
+            return new EncodedPredicate[0];
+        List<EncodedPredicate> predicates = new ArrayList<>(qualifiers[0].length);
+        for (Qualifier qualifier : qualifiers[0]) {
+            int position = qualifier.getStoragePosition();
+            if (isKeyColumn(position, keyColumnEncodingOrder))
+                continue;
+            DataValueDescriptor orderable = qualifier.getOrderable();
+            if (orderable == null || orderable.isNull() || !isIntegral(orderable.getTypeFormatId()))
+                continue;
+            EncodedPredicate.Comparison comparison = toComparison(qualifier.getOperator(), qualifier.negateCompareResult());
+            if (comparison != null)
+                predicates.add(EncodedPredicate.scalar(position, comparison, orderable.getLong()));
+        }
+        return predicates.toArray(new EncodedPredicate[predicates.size()]);
+    }
+
+    private static boolean isKeyColumn(int position, int[] keyColumnEncodingOrder) {
+        if (keyColumnEncodingOrder == null) return false;
+        for (int col : keyColumnEncodingOrder) {
+            if (col == position) return true;
+        }
+        return false;
+    }
+
+    private static boolean isIntegral(int typeFormatId) {
+        switch (typeFormatId) {
+            case StoredFormatIds.SQL_TINYINT_ID:
+            case StoredFormatIds.SQL_SMALLINT_ID:
+            case StoredFormatIds.SQL_INTEGER_ID:
+            case StoredFormatIds.SQL_LONGINT_ID:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static EncodedPredicate.Comparison toComparison(int operator, boolean negate) {
+        switch (operator) {
+            case Orderable.ORDER_OP_EQUALS:
+                return negate ? EncodedPredicate.Comparison.NOT_EQUALS : EncodedPredicate.Comparison.EQUALS;
+            case Orderable.ORDER_OP_LESSTHAN:
+                return negate ? EncodedPredicate.Comparison.GREATER_OR_EQUAL : EncodedPredicate.Comparison.LESS_THAN;
+            case Orderable.ORDER_OP_LESSOREQUALS:
+                return negate ? EncodedPredicate.Comparison.GREATER_THAN : EncodedPredicate.Comparison.LESS_OR_EQUAL;
+            case Orderable.ORDER_OP_GREATERTHAN:
+                return negate ? EncodedPredicate.Comparison.LESS_OR_EQUAL : EncodedPredicate.Comparison.GREATER_THAN;
+            case Orderable.ORDER_OP_GREATEROREQUALS:
+                return negate ? EncodedPredicate.Comparison.LESS_THAN : EncodedPredicate.Comparison.GREATER_OR_EQUAL;
+            default:
+                return null;
+        }
     }
 
     private static void attachScanKeys(DataScan scan,
@@ -45,6 +45,7 @@ import com.splicemachine.db.shared.common.reference.SQLState;
 import com.splicemachine.ddl.DDLMessage.DDLChange;
 import com.splicemachine.derby.ddl.DDLUtils;
 import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.impl.stats.StoreCostControllerImpl;
 import com.splicemachine.derby.impl.store.access.SpliceTransactionManager;
 import com.splicemachine.derby.impl.store.access.base.SpliceConglomerate;
 import com.splicemachine.derby.stream.iapi.DataSet;
@@ -58,6 +59,7 @@ import com.splicemachine.protobuf.ProtoUtil;
 import com.splicemachine.si.api.txn.TxnView;
 import com.splicemachine.si.impl.driver.SIDriver;
 import com.splicemachine.storage.DataScan;
+import com.splicemachine.storage.Partition;
 import com.splicemachine.utils.Pair;
 import com.splicemachine.utils.SpliceLogUtils;
 import org.apache.log4j.Logger;
@@ -144,9 +146,20 @@ public class StatisticsAdmin extends BaseAdminProcedures {
         new GenericColumnDescriptor("tableName", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.VARCHAR)),
         new GenericColumnDescriptor("partition", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.VARCHAR)),
         new GenericColumnDescriptor("rowsCollected", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.INTEGER)),
-        new GenericColumnDescriptor("partitionSize", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.BIGINT))
+        new GenericColumnDescriptor("partitionSize", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.BIGINT)),
+        new GenericColumnDescriptor("sampleSize", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.BIGINT)),
+        new GenericColumnDescriptor("sampleFraction", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.DOUBLE)),
+        new GenericColumnDescriptor("estimatedError", DataTypeDescriptor.getBuiltInDataTypeDescriptor(Types.DOUBLE))
     };
 
+    /*
+     * Rows which describe how a partition was sampled. These are only reported, never stored.
+     */
+    private static final int SAMPLE_COLUMN_COUNT = 5;
+    private static final int SAMPLE_SIZE = 3;
+    private static final int SAMPLE_FRACTION = 4;
+    private static final int SAMPLE_ERROR = 5;
+
     @SuppressWarnings("unused")
     public static void COLLECT_SCHEMA_STATISTICS(String schema, boolean staleOnly, ResultSet[] outputResults) throws
         SQLException {
@@ -176,8 +189,12 @@ public class StatisticsAdmin extends BaseAdminProcedures {
             authorize(tds);
             TransactionController transactionExecute = lcc.getTransactionExecute();
             transactionExecute.elevate("statistics");
-            dropTableStatistics(tds,dd,tc);
-            ddlNotification(tc,tds);
+            Map<TableDescriptor,List<Partition>> partialCollections = staleOnly?
+                    dropStaleStatistics(tds,dd,tc):Collections.<TableDescriptor,List<Partition>>emptyMap();
+            if (!staleOnly)
+                dropTableStatistics(tds,dd,tc);
+            if (!tds.isEmpty())
+                ddlNotification(tc,tds);
 //            ExecRow templateOutputRow = buildOutputTemplateRow();
             TxnView txn = ((SpliceTransactionManager) transactionExecute).getRawTransaction().getActiveStateTxn();
 
@@ -188,7 +205,7 @@ public class StatisticsAdmin extends BaseAdminProcedures {
             List<Future<StatsResult>> futures = new ArrayList(tds.size());
             for (TableDescriptor td : tds) {
                 display.put(td.getHeapConglomerateId(),Pair.newPair(schema,td.getName()));
-                futures.add(collectTableStatistics(td, txn, conn));
+                futures.addAll(collectTableStatistics(td, partialCollections.get(td), txn, conn));
             }
             IteratorNoPutResultSet resultsToWrap = wrapResults(conn,
             displayTableStatistics(futures,dd,transactionExecute,display));
@@ -256,17 +273,23 @@ public class StatisticsAdmin extends BaseAdminProcedures {
             DataDictionary dd = conn.getLanguageConnection().getDataDictionary();
             dd.startWriting(conn.getLanguageConnection());
             TransactionController tc = conn.getLanguageConnection().getTransactionExecute();
-            dropTableStatistics(tds,dd,tc);
-            ddlNotification(tc, tds);
+            List<Partition> stalePartitions = null;
+            if (staleOnly) {
+                tds = new ArrayList<>(tds);
+                stalePartitions = dropStaleStatistics(tds,dd,tc).get(tableDesc);
+            } else
+                dropTableStatistics(tds,dd,tc);
+            if (!tds.isEmpty())
+                ddlNotification(tc, tds);
             TxnView txn = ((SpliceTransactionManager) tc).getRawTransaction().getActiveStateTxn();
             HashMap<Long,Pair<String,String>> display = new HashMap<>();
             display.put(tableDesc.getHeapConglomerateId(),Pair.newPair(schema,table));
+            List<Future<StatsResult>> futures = tds.isEmpty()?
+                    Collections.<Future<StatsResult>>emptyList():
+                    collectTableStatistics(tableDesc, stalePartitions, txn, conn);
             IteratorNoPutResultSet resultsToWrap = wrapResults(
                 conn,
-                displayTableStatistics(Lists.newArrayList(
-                    collectTableStatistics(tableDesc, txn, conn)
-                ),
-                dd, tc, display));
+                displayTableStatistics(futures, dd, tc, display));
             outputResults[0] = new EmbedResultSet40(conn, resultsToWrap, false, null, true);
         } catch (StandardException se) {
             throw PublicAPI.wrapStandardException(se);
@@ -325,14 +348,26 @@ public class StatisticsAdmin extends BaseAdminProcedures {
 
     /* ****************************************************************************************************************/
     /*private helper methods*/
-    private static Future<StatsResult> collectTableStatistics(TableDescriptor table,
-                                                             TxnView txn,
-                                                             EmbedConnection conn) throws StandardException, ExecutionException {
-
-       return collectBaseTableStatistics(table, txn, conn);
+    /**
+     * @param partitions the partitions to collect, or {@code null} to collect the entire table
+     */
+    private static List<Future<StatsResult>> collectTableStatistics(TableDescriptor table,
+                                                                    @Nullable List<Partition> partitions,
+                                                                    TxnView txn,
+                                                                    EmbedConnection conn) throws StandardException, ExecutionException {
+        if (partitions == null)
+            return Collections.singletonList(collectBaseTableStatistics(table, createScan(txn), txn, conn));
+
+        List<Future<StatsResult>> futures = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions) {
+            DataScan scan = createScan(txn).startKey(partition.getStartKey()).stopKey(partition.getEndKey());
+            futures.add(collectBaseTableStatistics(table, scan, txn, conn));
+        }
+        return futures;
     }
 
     private static Future<StatsResult> collectBaseTableStatistics(TableDescriptor table,
+                                                                 DataScan scan,
                                                                  TxnView txn,
                                                                  EmbedConnection conn) throws StandardException, ExecutionException {
         long heapConglomerateId = table.getHeapConglomerateId();
@@ -340,7 +375,10 @@ public class StatisticsAdmin extends BaseAdminProcedures {
         DistributedDataSetProcessor dsp = EngineDriver.driver().processorFactory().distributedProcessor();
 
         ScanSetBuilder ssb = dsp.newScanSet(null,Long.toString(heapConglomerateId));
-        ScanSetBuilder scanSetBuilder = createTableScanner(ssb,conn,table,txn);
+        ScanSetBuilder scanSetBuilder = createTableScanner(ssb,conn,table,scan,txn);
+        double sampleFraction = EngineDriver.driver().getConfiguration().getStatisticsSampleFraction();
+        if (sampleFraction > 0 && sampleFraction < 1)
+            scanSetBuilder.sampleFraction(sampleFraction);
         String scope = getScopeName(table);
 
         String userId = activation.getLanguageConnectionContext().getCurrentUserId(activation);
@@ -373,6 +411,7 @@ public class StatisticsAdmin extends BaseAdminProcedures {
     private static ScanSetBuilder createTableScanner(ScanSetBuilder builder,
                                                      EmbedConnection conn,
                                                      TableDescriptor table,
+                                                     DataScan scan,
                                                      TxnView txn) throws StandardException{
 
         List<ColumnDescriptor> colsToCollect = getCollectedColumns(table);
@@ -425,7 +464,6 @@ public class StatisticsAdmin extends BaseAdminProcedures {
                 }
             }
         }
-        DataScan scan = createScan(txn);
         ExecRow rowTemplate = new ValueRow(execRowFormatIds.length);
         DataValueDescriptor[] dvds = rowTemplate.getRowArray();
         DataValueFactory dataValueFactory=conn.getLanguageConnection().getDataValueFactory();
@@ -525,7 +563,7 @@ public class StatisticsAdmin extends BaseAdminProcedures {
         }
     };
 
-    private static List<ColumnDescriptor> getCollectedColumns(TableDescriptor td) throws StandardException {
+    public static List<ColumnDescriptor> getCollectedColumns(TableDescriptor td) throws StandardException {
         ColumnDescriptorList columnDescriptorList = td.getColumnDescriptorList();
         List<ColumnDescriptor> toCollect = new ArrayList<>(columnDescriptorList.size());
         /*
@@ -587,11 +625,15 @@ public class StatisticsAdmin extends BaseAdminProcedures {
     }
 
     public static ExecRow generateRowFromStats(long conglomId, String partitionId, long rowCount, long partitionSize, int meanRowWidth) throws StandardException {
+        return generateRowFromStats(conglomId,partitionId,System.currentTimeMillis(),false,rowCount,partitionSize,meanRowWidth);
+    }
+
+    public static ExecRow generateRowFromStats(long conglomId, String partitionId, long timestamp, boolean stale, long rowCount, long partitionSize, int meanRowWidth) throws StandardException {
         ExecRow row = new ValueRow(SYSTABLESTATISTICSRowFactory.SYSTABLESTATISTICS_COLUMN_COUNT);
         row.setColumn(SYSTABLESTATISTICSRowFactory.CONGLOMID,new SQLLongint(conglomId));
         row.setColumn(SYSTABLESTATISTICSRowFactory.PARTITIONID,new SQLVarchar(partitionId));
-        row.setColumn(SYSTABLESTATISTICSRowFactory.TIMESTAMP,new SQLTimestamp(new Timestamp(System.currentTimeMillis())));
-        row.setColumn(SYSTABLESTATISTICSRowFactory.STALENESS,new SQLBoolean(false));
+        row.setColumn(SYSTABLESTATISTICSRowFactory.TIMESTAMP,new SQLTimestamp(new Timestamp(timestamp)));
+        row.setColumn(SYSTABLESTATISTICSRowFactory.STALENESS,new SQLBoolean(stale));
         row.setColumn(SYSTABLESTATISTICSRowFactory.INPROGRESS,new SQLBoolean(false));
         row.setColumn(SYSTABLESTATISTICSRowFactory.ROWCOUNT,new SQLLongint(rowCount));
         row.setColumn(SYSTABLESTATISTICSRowFactory.PARTITION_SIZE,new SQLLongint(partitionSize));
@@ -608,13 +650,45 @@ public class StatisticsAdmin extends BaseAdminProcedures {
         return row;
     }
 
+    /**
+     * @param sampleSize the number of rows which were read from the partition
+     * @param sampleFraction the fraction of the partition which was read
+     * @param relativeError the standard error of the partition's estimated row count, relative to the estimate
+     * @return a row describing how a partition was sampled
+     */
+    public static ExecRow generateSampleRow(long conglomId, String partitionId, long sampleSize, double sampleFraction, double relativeError) throws StandardException {
+        ExecRow row = new ValueRow(SAMPLE_COLUMN_COUNT);
+        row.setColumn(SYSTABLESTATISTICSRowFactory.CONGLOMID,new SQLLongint(conglomId));
+        row.setColumn(SYSTABLESTATISTICSRowFactory.PARTITIONID,new SQLVarchar(partitionId));
+        row.setColumn(SAMPLE_SIZE,new SQLLongint(sampleSize));
+        row.setColumn(SAMPLE_FRACTION,new SQLDouble(sampleFraction));
+        row.setColumn(SAMPLE_ERROR,Double.isNaN(relativeError)?new SQLDouble():new SQLDouble(relativeError));
+        return row;
+    }
+
     public static ExecRow generateOutputRow(String schemaName, String tableName, ExecRow partitionRow) throws StandardException {
-        ExecRow row = new ValueRow(5);
+        return generateOutputRow(schemaName,tableName,partitionRow,null);
+    }
+
+    /**
+     * @param sampleRow how the partition was sampled, or {@code null} if every row of the partition was read
+     */
+    public static ExecRow generateOutputRow(String schemaName, String tableName, ExecRow partitionRow, @Nullable ExecRow sampleRow) throws StandardException {
+        ExecRow row = new ValueRow(COLLECTED_STATS_OUTPUT_COLUMNS.length);
         row.setColumn(1,new SQLVarchar(schemaName));
         row.setColumn(2,new SQLVarchar(tableName));
         row.setColumn(3,partitionRow.getColumn(SYSTABLESTATISTICSRowFactory.PARTITIONID));
         row.setColumn(4,partitionRow.getColumn(SYSTABLESTATISTICSRowFactory.ROWCOUNT));
         row.setColumn(5,partitionRow.getColumn(SYSTABLESTATISTICSRowFactory.PARTITION_SIZE));
+        if (sampleRow == null) {
+            row.setColumn(6,partitionRow.getColumn(SYSTABLESTATISTICSRowFactory.ROWCOUNT));
+            row.setColumn(7,new SQLDouble(1d));
+            row.setColumn(8,new SQLDouble(0d));
+        } else {
+            row.setColumn(6,sampleRow.getColumn(SAMPLE_SIZE));
+            row.setColumn(7,sampleRow.getColumn(SAMPLE_FRACTION));
+            row.setColumn(8,sampleRow.getColumn(SAMPLE_ERROR));
+        }
         return row;
     }
 
@@ -627,14 +701,19 @@ public class StatisticsAdmin extends BaseAdminProcedures {
                 try {
                     List<LocatedRow> rows = input.get().getRowList();
                     List<ExecRow> outputList = new ArrayList();
+                    ExecRow sampleRow = null;
                     for (LocatedRow locatedRow: rows) {
                         ExecRow row = locatedRow.getRow();
                         if (row.nColumns() == SYSCOLUMNSTATISTICSRowFactory.SYSCOLUMNSTATISTICS_COLUMN_COUNT) {
                             dataDictionary.addColumnStatistics(row,tc);
+                        } else if (row.nColumns() == SAMPLE_COLUMN_COUNT) {
+                            //precedes the table statistics of the same partition
+                            sampleRow = row;
                         } else {
                             dataDictionary.addTableStatistics(row, tc);
                             Pair<String,String> pair = displayPair.get(row.getColumn(SYSTABLESTATISTICSRowFactory.CONGLOMID).getLong());
-                            outputList.add(generateOutputRow(pair.getFirst(),pair.getSecond(),row));
+                            outputList.add(generateOutputRow(pair.getFirst(),pair.getSecond(),row,sampleRow));
+                            sampleRow = null;
                         }
                     }
                     return outputList;
@@ -653,6 +732,55 @@ public class StatisticsAdmin extends BaseAdminProcedures {
         }
     }
 
+    /**
+     * Drop the statistics of only those partitions which need to be collected again, because they have
+     * no statistics, or their statistics have been marked stale.
+     *
+     * Tables which have nothing to collect are removed from {@code tds}. Tables which must be collected in their
+     * entirety have all of their statistics dropped, and have no entry in the returned map.
+     *
+     * @return the partitions to collect for each table which only needs to be partially collected.
+     */
+    private static Map<TableDescriptor,List<Partition>> dropStaleStatistics(List<TableDescriptor> tds, DataDictionary dd, TransactionController tc) throws StandardException {
+        Map<TableDescriptor,List<Partition>> partialCollections = new HashMap<>();
+        Iterator<TableDescriptor> tables = tds.iterator();
+        while (tables.hasNext()) {
+            TableDescriptor td = tables.next();
+            long conglomId = td.getHeapConglomerateId();
+            Map<String,PartitionStatisticsDescriptor> collected = new HashMap<>();
+            for (PartitionStatisticsDescriptor psd : dd.getPartitionStatistics(conglomId,tc)) {
+                collected.put(psd.getPartitionId(),psd);
+            }
+            List<Partition> partitions = new ArrayList<>();
+            StoreCostControllerImpl.getPartitions(Long.toString(conglomId),partitions,true);
+            List<Partition> stale = new ArrayList<>(partitions.size());
+            for (Partition partition : partitions) {
+                PartitionStatisticsDescriptor psd = collected.remove(partition.getName());
+                if (psd == null || psd.isStale())
+                    stale.add(partition);
+            }
+            if (stale.isEmpty() && collected.isEmpty()) {
+                if (LOG.isDebugEnabled())
+                    SpliceLogUtils.debug(LOG,"Statistics of table [%s] are current, skipping",td.getName());
+                tables.remove();
+            } else if (stale.size() == partitions.size()) {
+                dropTableStatistics(td,dd,tc);
+            } else {
+                if (LOG.isDebugEnabled())
+                    SpliceLogUtils.debug(LOG,"Collecting %d of %d partitions of table [%s]",stale.size(),partitions.size(),td.getName());
+                for (Partition partition : stale) {
+                    dd.deletePartitionStatistics(conglomId,partition.getName(),tc);
+                }
+                //whatever is left over belongs to partitions which no longer exist (e.g. they were split)
+                for (String partitionId : collected.keySet()) {
+                    dd.deletePartitionStatistics(conglomId,partitionId,tc);
+                }
+                partialCollections.put(td,stale);
+            }
+        }
+        return partialCollections;
+    }
+
     private static void dropTableStatistics(List<TableDescriptor> tds, DataDictionary dd, TransactionController tc) throws StandardException {
 
         for (TableDescriptor td: tds) {
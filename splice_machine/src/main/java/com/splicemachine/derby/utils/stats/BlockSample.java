@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.utils.stats;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Random;
+
+/**
+ * A sample of the blocks of a single partition, read when collecting statistics from only part of it.
+ *
+ * The partition is divided into blocks of roughly equal size, and a systematic sample of those blocks (every
+ * {@code n/k}-th block, starting from a random offset) is read in its entirety, so that the blocks in between are
+ * never read at all. Rows are counted per block as they are read, which gives an estimate of the number of rows
+ * in the whole partition, along with the standard error of that estimate.
+ *
+ * The reader of the partition publishes its sample through {@link #current}, from which the statistics of the
+ * partition are scaled as they are generated.
+ */
+@NotThreadSafe
+public class BlockSample{
+    public static final ThreadLocal<BlockSample> current=new ThreadLocal<>();
+
+    private final int numBlocks;
+    private final int[] blocks;
+    private final long[] rowsPerBlock;
+    private int position=-1;
+
+    BlockSample(int numBlocks,int[] blocks){
+        this.numBlocks=numBlocks;
+        this.blocks=blocks;
+        this.rowsPerBlock=new long[blocks.length];
+    }
+
+    /**
+     * @param numBlocks the number of blocks in the partition
+     * @param fraction the fraction of the blocks to sample
+     * @param seed the seed used to choose which blocks are sampled. The same seed always chooses the same blocks.
+     * @return a sample of at least one of the blocks
+     */
+    public static BlockSample select(int numBlocks,double fraction,long seed){
+        assert numBlocks>0: "Cannot sample an empty partition";
+        int sampled=(int)Math.min(numBlocks,Math.max(1,Math.ceil(numBlocks*fraction)));
+        int[] blocks=new int[sampled];
+        double step=((double)numBlocks)/sampled;
+        double offset=new Random(seed).nextDouble()*step;
+        for(int i=0;i<sampled;i++){
+            blocks[i]=Math.min(numBlocks-1,(int)(offset+i*step));
+        }
+        return new BlockSample(numBlocks,blocks);
+    }
+
+    /**
+     * Move on to the next sampled block.
+     *
+     * @return the index of the next block to read, or -1 if every sampled block has been read
+     */
+    public int nextBlock(){
+        if(position+1>=blocks.length) return -1;
+        return blocks[++position];
+    }
+
+    /**
+     * Count a row of the block currently being read.
+     */
+    public void recordRow(){
+        rowsPerBlock[position]++;
+    }
+
+    public int numBlocks(){
+        return numBlocks;
+    }
+
+    public int sampledBlocks(){
+        return blocks.length;
+    }
+
+    /**
+     * @return the fraction of the partition's blocks which are sampled
+     */
+    public double getSampleFraction(){
+        return ((double)blocks.length)/numBlocks;
+    }
+
+    /**
+     * @return the number of rows which were read
+     */
+    public long getSampleSize(){
+        long size=0l;
+        for(long rows:rowsPerBlock){
+            size+=rows;
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated number of rows in the partition
+     */
+    public long estimatedRowCount(){
+        return Math.round(getSampleSize()/getSampleFraction());
+    }
+
+    /**
+     * The relative standard error of {@link #estimatedRowCount()}, from the variation in the number of rows
+     * between the sampled blocks. Systematic sampling is treated as a simple random sample of blocks, which is
+     * conservative when neighbouring blocks are alike.
+     *
+     * @return the standard error of the row count estimate, as a fraction of the estimate. This is 0 when
+     * every block was read, and {@link Double#NaN} when fewer than two blocks were sampled from a larger partition.
+     */
+    public double relativeStandardError(){
+        int k=blocks.length;
+        if(k==numBlocks) return 0d;
+        if(k<2) return Double.NaN;
+        long total=getSampleSize();
+        if(total==0) return 0d;
+        double mean=((double)total)/k;
+        double sumSquares=0d;
+        for(long rows:rowsPerBlock){
+            double diff=rows-mean;
+            sumSquares+=diff*diff;
+        }
+        double variance=sumSquares/(k-1);
+        double standardError=numBlocks*Math.sqrt((1-getSampleFraction())*variance/k);
+        return standardError/(numBlocks*mean);
+    }
+}
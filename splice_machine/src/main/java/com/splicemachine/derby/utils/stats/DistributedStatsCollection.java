@@ -17,6 +17,7 @@ package com.splicemachine.derby.utils.stats;
 
 import com.splicemachine.concurrent.Clock;
 import com.splicemachine.derby.iapi.sql.olap.DistributedJob;
+import com.splicemachine.derby.iapi.sql.olap.OlapJobType;
 import com.splicemachine.derby.iapi.sql.olap.OlapStatus;
 import com.splicemachine.derby.stream.iapi.ScanSetBuilder;
 
@@ -47,4 +48,14 @@ public class DistributedStatsCollection extends DistributedJob {
     public String getName() {
         return null;
     }
+
+    @Override
+    public OlapJobType getJobType() {
+        return OlapJobType.STATISTICS;
+    }
+
+    @Override
+    public String getOwner() {
+        return jobGroup;
+    }
 }
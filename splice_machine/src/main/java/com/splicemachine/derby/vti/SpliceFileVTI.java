@@ -23,6 +23,7 @@ import com.splicemachine.db.vti.VTIEnvironment;
 import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
 import com.splicemachine.derby.impl.load.ImportUtils;
 import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.stream.control.ParallelFileReader;
 import com.splicemachine.derby.stream.function.FileFunction;
 import com.splicemachine.derby.stream.function.StreamFileFunction;
 import com.splicemachine.derby.stream.iapi.DataSet;
@@ -31,12 +32,17 @@ import com.splicemachine.derby.stream.iapi.OperationContext;
 import com.splicemachine.derby.stream.iapi.PairDataSet;
 import com.splicemachine.derby.vti.iapi.DatasetProvider;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.spark_project.guava.collect.AbstractIterator;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
 
 /**
  * Created by jleach on 10/7/15.
@@ -115,6 +121,32 @@ public class SpliceFileVTI implements DatasetProvider, VTICosting {
         operationContext = dsp.createOperationContext(op);
         try {
             ImportUtils.validateReadable(fileName, false);
+            if (dsp.getType() == DataSetProcessor.Type.LOCAL) {
+                // large files are split up and parsed by several threads when we aren't running on Spark
+                final ParallelFileReader parallelReader;
+                try {
+                    parallelReader = ParallelFileReader.forFile(fileName, charset, oneLineRecords, characterDelimiter);
+                } catch (IOException e) {
+                    throw StandardException.plainWrapException(e);
+                }
+                if (parallelReader != null) {
+                    operationContext.pushScopeForOp("Parse File");
+                    if (op != null)
+                        op.registerCloseable(parallelReader);
+                    final ExecRow template = execRow;
+                    try {
+                        return dsp.createDataSet(parallelReader.read(new ParallelFileReader.RangeParserFactory() {
+                            @Override
+                            public ParallelFileReader.RangeParser newParser() {
+                                return newRangeParser(template.getClone());
+                            }
+                        }));
+                    } catch (IOException e) {
+                        parallelReader.close();
+                        throw StandardException.plainWrapException(e);
+                    }
+                }
+            }
             if (oneLineRecords && (charset==null || charset.toLowerCase().equals("utf-8"))) {
                 DataSet<String> textSet = dsp.readTextFile(fileName, op);
                 operationContext.pushScopeForOp("Parse File");
@@ -129,6 +161,50 @@ public class SpliceFileVTI implements DatasetProvider, VTICosting {
         }
     }
 
+    /*
+     * Each parsing thread gets its own function (and so its own tokenizer and template row), but they all
+     * share the operation context, so that reads and bad records are counted just as they are on a single thread
+     */
+    private ParallelFileReader.RangeParser newRangeParser(ExecRow template) {
+        if (oneLineRecords) {
+            final FileFunction function = new FileFunction(characterDelimiter, columnDelimiter, template, columnIndex,
+                    timeFormat, dateTimeFormat, timestampFormat, operationContext);
+            return new ParallelFileReader.RangeParser() {
+                @Override
+                public Iterator<LocatedRow> parse(InputStream range) throws Exception {
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(range, charset == null ? StandardCharsets.UTF_8.name() : charset));
+                    return new AbstractIterator<LocatedRow>() {
+                        private Iterator<LocatedRow> parsed = Collections.emptyIterator();
+
+                        @Override
+                        protected LocatedRow computeNext() {
+                            try {
+                                while (!parsed.hasNext()) {
+                                    String line = reader.readLine();
+                                    if (line == null)
+                                        return endOfData();
+                                    parsed = function.call(line);
+                                }
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                            return parsed.next();
+                        }
+                    };
+                }
+            };
+        } else {
+            final StreamFileFunction function = new StreamFileFunction(characterDelimiter, columnDelimiter, template, columnIndex,
+                    timeFormat, dateTimeFormat, timestampFormat, charset == null ? StandardCharsets.UTF_8.name() : charset, operationContext);
+            return new ParallelFileReader.RangeParser() {
+                @Override
+                public Iterator<LocatedRow> parse(InputStream range) throws Exception {
+                    return function.call(range);
+                }
+            };
+        }
+    }
+
     private static final int defaultBytesPerRow = 100;
     protected int getBytesPerRow() {
         // Imprecise assumption of a fixed number of bytes per row,
@@ -49,6 +49,9 @@ public class JMXUtils {
     public static final String SPLICEMACHINE_VERSION = "com.splicemachine.version:type=DatabaseVersion";
     public static final String TIMESTAMP_MASTER_MANAGEMENT = "com.splicemachine.si.client.timestamp.generator:type=TimestampMasterManagement";
     public static final String TIMESTAMP_REGION_MANAGEMENT = "com.splicemachine.si.client.timestamp.request:type=TimestampRegionManagement";
+    public static final String TRANSACTION_CACHE_MANAGEMENT = "com.splicemachine.si.impl.store:type=TransactionCacheManagement";
+    public static final String BROADCAST_JOIN_CACHE = "com.splicemachine.derby.impl.sql.execute.operations:type=BroadcastJoinCacheStatistics";
+    public static final String SEQUENCE_STATISTICS = "com.splicemachine.derby.impl.sql.execute.sequence:type=SequenceStatistics";
 	public static final String DATABASE_PROPERTY_MANAGEMENT = "com.splicemachine.derby.utils:type=DatabasePropertyManagement";
 
     public static List<Pair<String,JMXConnector>> getMBeanServerConnections(Collection<Pair<String,String>> serverConnections) throws IOException {
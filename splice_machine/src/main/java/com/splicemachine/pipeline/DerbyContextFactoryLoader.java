@@ -30,6 +30,8 @@ import com.splicemachine.ddl.DDLMessage;
 import com.splicemachine.derby.ddl.DDLDriver;
 import com.splicemachine.derby.ddl.DDLUtils;
 import com.splicemachine.derby.ddl.DDLWatcher;
+import com.splicemachine.derby.impl.stats.CollectedColumns;
+import com.splicemachine.derby.impl.stats.IncrementalStatisticsStore;
 import com.splicemachine.derby.jdbc.SpliceTransactionResourceImpl;
 import com.splicemachine.pipeline.api.PipelineExceptionFactory;
 import com.splicemachine.pipeline.constraint.ConstraintContext;
@@ -71,17 +73,25 @@ public class DerbyContextFactoryLoader implements ContextFactoryLoader{
     private final FKWriteFactoryHolder fkGroup;
     private final ListWriteFactoryGroup indexFactories=new ListWriteFactoryGroup();
     private final WriteFactoryGroup ddlFactories=new SetWriteFactoryGroup();
+    private final ListWriteFactoryGroup statisticsFactories=new ListWriteFactoryGroup();
+    private final IncrementalStatisticsStore statisticsStore;
     private final DDLWatcher.DDLListener ddlListener;
 
+    /**
+     * @param statisticsStore where to keep the statistics of written rows, or {@code null} if
+     *                        statistics are not kept incrementally
+     */
     public DerbyContextFactoryLoader(long conglomId,
                                      OperationStatusFactory osf,
                                      PipelineExceptionFactory pef,
                                      TransactionReadController trc,
-                                     TxnOperationFactory txnOperationFactory){
+                                     TxnOperationFactory txnOperationFactory,
+                                     IncrementalStatisticsStore statisticsStore){
         this.conglomId=conglomId;
         this.osf=osf;
         this.pef=pef;
         this.trc=trc;
+        this.statisticsStore=statisticsStore;
         this.fkGroup=new FKWriteFactoryHolder(pef,txnOperationFactory);
         //TODO -sf- memory leak
         this.ddlListener=new DDLWatcher.DDLListener(){
@@ -153,6 +163,7 @@ public class DerbyContextFactoryLoader implements ContextFactoryLoader{
 
     @Override
     public void close(){
+        fkGroup.close();
         DDLDriver.driver().ddlWatcher().unregisterDDLListener(ddlListener);
     }
 
@@ -171,6 +182,11 @@ public class DerbyContextFactoryLoader implements ContextFactoryLoader{
         return ddlFactories;
     }
 
+    @Override
+    public WriteFactoryGroup getStatisticsFactories(){
+        return statisticsFactories;
+    }
+
     @Override
     public Set<ConstraintFactory> getConstraintFactories(){
         return constraintFactories;
@@ -325,6 +341,13 @@ public class DerbyContextFactoryLoader implements ContextFactoryLoader{
                     indexFactories.replace(indexFactory);
                 }
             }
+            if(statisticsStore!=null){
+                CollectedColumns collectedColumns=CollectedColumns.forTable(td,lcc);
+                if(collectedColumns!=null){
+                    statisticsFactories.clear();
+                    statisticsFactories.addFactory(new StatisticsWriteFactory(statisticsStore,collectedColumns));
+                }
+            }
         }
 
         // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
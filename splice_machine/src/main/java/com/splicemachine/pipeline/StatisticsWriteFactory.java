@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.derby.impl.stats.CollectedColumns;
+import com.splicemachine.derby.impl.stats.IncrementalStatistics;
+import com.splicemachine.derby.impl.stats.IncrementalStatisticsStore;
+import com.splicemachine.pipeline.context.PipelineWriteContext;
+import com.splicemachine.pipeline.contextfactory.LocalWriteFactory;
+
+import java.io.IOException;
+
+/**
+ * Creates WriteHandlers which feed the rows written to a base table into the {@link IncrementalStatistics}
+ * of the partition being written to.
+ */
+class StatisticsWriteFactory implements LocalWriteFactory{
+    private final IncrementalStatisticsStore store;
+    private final CollectedColumns columns;
+
+    StatisticsWriteFactory(IncrementalStatisticsStore store,CollectedColumns columns){
+        this.store=store;
+        this.columns=columns;
+    }
+
+    @Override
+    public void addTo(PipelineWriteContext ctx,boolean keepState,int expectedWrites) throws IOException{
+        IncrementalStatistics statistics;
+        try{
+            statistics=store.statisticsFor(columns.getConglomerateId(),ctx.txnRegion().getRegionName(),
+                    columns.getColumnIds(),columns.getColumnTemplates());
+        }catch(StandardException e){
+            throw Exceptions.getIOException(e);
+        }
+        ctx.addLast(new StatisticsWriteHandler(statistics,columns,expectedWrites));
+    }
+
+    @Override
+    public long getConglomerateId(){
+        return columns.getConglomerateId();
+    }
+
+    @Override
+    public boolean canReplace(LocalWriteFactory newContext){
+        return false;
+    }
+
+    @Override
+    public void replace(LocalWriteFactory newFactory){
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.derby.impl.stats.CollectedColumns;
+import com.splicemachine.derby.impl.stats.IncrementalStatistics;
+import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
+import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.pipeline.api.Code;
+import com.splicemachine.pipeline.client.WriteResult;
+import com.splicemachine.pipeline.context.WriteContext;
+import com.splicemachine.pipeline.writehandler.WriteHandler;
+import org.apache.log4j.Logger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the mutations to a base table in the {@link IncrementalStatistics} of the partition.
+ *
+ * Mutations are passed straight through, and are only recorded when the pipeline is flushed, by which
+ * point the partition has reported whether or not each mutation was written. Only mutations which were
+ * successfully written are recorded.
+ *
+ * Failures to record statistics are logged, and never fail the write.
+ */
+@NotThreadSafe
+class StatisticsWriteHandler implements WriteHandler{
+    private static final Logger LOG=Logger.getLogger(StatisticsWriteHandler.class);
+
+    private final IncrementalStatistics statistics;
+    private final CollectedColumns columns;
+    private final KeyHashDecoder keyDecoder;
+    private final KeyHashDecoder rowDecoder;
+    private final List<KVPair> mutations;
+
+    StatisticsWriteHandler(IncrementalStatistics statistics,CollectedColumns columns,int expectedWrites){
+        this.statistics=statistics;
+        this.columns=columns;
+        this.keyDecoder=columns.newKeyDecoder();
+        this.rowDecoder=columns.newRowDecoder();
+        this.mutations=new ArrayList<>(expectedWrites);
+    }
+
+    @Override
+    public void next(KVPair mutation,WriteContext ctx){
+        mutations.add(mutation);
+        ctx.sendUpstream(mutation);
+    }
+
+    @Override
+    public void flush(WriteContext ctx) throws IOException{
+        if(mutations.isEmpty()) return;
+        try{
+            Map<KVPair,WriteResult> results=ctx.currentResults();
+            List<DataValueDescriptor[]> inserted=new ArrayList<>(mutations.size());
+            long insertedBytes=0l;
+            long updates=0l;
+            long deletes=0l;
+            for(KVPair mutation:mutations){
+                WriteResult result=results.get(mutation);
+                if(result==null || result.getCode()!=Code.SUCCESS) continue;
+                switch(mutation.getType()){
+                    case INSERT:
+                    case UPSERT:
+                        inserted.add(decode(mutation));
+                        insertedBytes+=mutation.getSize();
+                        break;
+                    case UPDATE:
+                        updates++;
+                        break;
+                    case DELETE:
+                    case CANCEL:
+                        deletes++;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            statistics.record(inserted,insertedBytes,updates,deletes);
+        }catch(Exception e){
+            LOG.warn("Unable to record statistics for partition "+statistics.getPartitionId(),e);
+        }finally{
+            mutations.clear();
+        }
+    }
+
+    @Override
+    public void close(WriteContext ctx) throws IOException{
+        flush(ctx);
+        if(keyDecoder!=null)
+            keyDecoder.close();
+        rowDecoder.close();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private DataValueDescriptor[] decode(KVPair mutation) throws StandardException{
+        //the sketches hang on to the values they are given, so every row needs its own
+        ExecRow row=columns.newRow();
+        if(keyDecoder!=null){
+            byte[] key=mutation.getRowKey();
+            keyDecoder.set(key,0,key.length);
+            keyDecoder.decode(row);
+        }
+        byte[] value=mutation.getValue();
+        rowDecoder.set(value,0,value.length);
+        rowDecoder.decode(row);
+        return columns.collectedValues(row);
+    }
+}
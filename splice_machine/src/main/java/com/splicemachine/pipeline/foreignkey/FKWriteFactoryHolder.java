@@ -105,7 +105,10 @@ public class FKWriteFactoryHolder implements WriteFactoryGroup{
     }
 
     public void addChildIntercept(long referencedConglomerateNumber, FKConstraintInfo fkConstraintInfo) {
-        childInterceptWriteFactories.put(referencedConglomerateNumber, new ForeignKeyChildInterceptWriteFactory(referencedConglomerateNumber, fkConstraintInfo,exceptionFactory));
+        ForeignKeyChildInterceptWriteFactory replaced = childInterceptWriteFactories.put(referencedConglomerateNumber, new ForeignKeyChildInterceptWriteFactory(referencedConglomerateNumber, fkConstraintInfo,exceptionFactory));
+        if (replaced != null) {
+            replaced.close();
+        }
     }
 
     /**
@@ -134,7 +137,20 @@ public class FKWriteFactoryHolder implements WriteFactoryGroup{
         }
         // We are configuring a write context on the CHILD fk backing index.
         if (onConglomerateNumber == tentativeFKAdd.getReferencingConglomerateNumber()) {
-            childInterceptWriteFactories.remove(tentativeFKAdd.getReferencedConglomerateNumber());
+            ForeignKeyChildInterceptWriteFactory removed = childInterceptWriteFactories.remove(tentativeFKAdd.getReferencedConglomerateNumber());
+            if (removed != null) {
+                removed.close();
+            }
+        }
+    }
+
+    /**
+     * Release the resources held by the foreign key factories, because the conglomerate's regions have all closed
+     * on this server.
+     */
+    public void close() {
+        for (ForeignKeyChildInterceptWriteFactory childFactory : childInterceptWriteFactories.values()) {
+            childFactory.close();
         }
     }
 
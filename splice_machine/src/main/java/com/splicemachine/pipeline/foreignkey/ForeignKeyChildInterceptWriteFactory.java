@@ -20,6 +20,7 @@ import com.splicemachine.ddl.DDLMessage.*;
 import com.splicemachine.pipeline.api.PipelineExceptionFactory;
 import com.splicemachine.pipeline.context.PipelineWriteContext;
 import com.splicemachine.pipeline.contextfactory.LocalWriteFactory;
+import com.splicemachine.si.impl.driver.SIDriver;
 import java.io.IOException;
 
 /**
@@ -31,6 +32,9 @@ class ForeignKeyChildInterceptWriteFactory implements LocalWriteFactory{
     private final long referencedConglomerateNumber;
     private final FKConstraintInfo fkConstraintInfo;
     private final PipelineExceptionFactory exceptionFactory;
+    private ForeignKeyParentKeyCache parentKeyCache;
+    private boolean cacheAcquired;
+    private boolean closed;
 
     ForeignKeyChildInterceptWriteFactory(long referencedConglomerateNumber, FKConstraintInfo fkConstraintInfo,
                                          PipelineExceptionFactory exceptionFactory) {
@@ -41,7 +45,27 @@ class ForeignKeyChildInterceptWriteFactory implements LocalWriteFactory{
 
     @Override
     public void addTo(PipelineWriteContext ctx, boolean keepState, int expectedWrites) throws IOException {
-        ctx.addLast(new ForeignKeyChildInterceptWriteHandler(referencedConglomerateNumber, fkConstraintInfo,exceptionFactory));
+        ctx.addLast(new ForeignKeyChildInterceptWriteHandler(referencedConglomerateNumber, fkConstraintInfo,exceptionFactory,getParentKeyCache()));
+    }
+
+    /**
+     * Give back the parent key cache, because the region is closing or the foreign key has been dropped.
+     */
+    synchronized void close() {
+        closed = true;
+        if (parentKeyCache != null)
+            ForeignKeyParentKeyCache.release(Long.toString(referencedConglomerateNumber), parentKeyCache);
+        parentKeyCache = null;
+    }
+
+    /* The cache is acquired once for the life of the factory, and released when the factory is closed */
+    private synchronized ForeignKeyParentKeyCache getParentKeyCache() {
+        if (!cacheAcquired && !closed) {
+            parentKeyCache = ForeignKeyParentKeyCache.forParent(Long.toString(referencedConglomerateNumber),
+                    SIDriver.driver().getConfiguration().getForeignKeyParentCacheSize());
+            cacheAcquired = true;
+        }
+        return parentKeyCache;
     }
 
     @Override
@@ -40,12 +40,14 @@ import com.splicemachine.storage.DataFilter;
 import com.splicemachine.storage.DataResult;
 import com.splicemachine.storage.Partition;
 import com.splicemachine.storage.util.MapAttributes;
+import com.splicemachine.utils.ByteSlice;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Intercepts insert/updates to a FK constraint backing index and sends the rowKey over to the referenced primary-key or
@@ -61,10 +63,17 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
     private final MultiFieldDecoder multiFieldDecoder;
     private final TypeProvider typeProvider;
     private FKConstraintInfo fkConstraintInfo;
+    private final ForeignKeyParentKeyCache parentKeyCache;
+    private SimpleTxnFilter readCommittedFilter;
+    private SimpleTxnFilter readUncommittedFilter;
+    /* parent keys found by the checks, to confirm once the batch has been applied */
+    private final List<byte[]> pendingKeys = new ArrayList<>();
+    private long pendingInvalidationMarker;
 
     public ForeignKeyChildInterceptWriteHandler(long referencedConglomerateNumber,
                                                 FKConstraintInfo fkConstraintInfo,
-                                                PipelineExceptionFactory exceptionFactory) {
+                                                PipelineExceptionFactory exceptionFactory,
+                                                ForeignKeyParentKeyCache parentKeyCache) {
         this.referencedConglomerateNumber = referencedConglomerateNumber;
         this.violationProcessor = new ForeignKeyViolationProcessor(
                 new ForeignKeyViolationProcessor.ChildFkConstraintContextProvider(fkConstraintInfo),
@@ -75,6 +84,7 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
         this.multiFieldDecoder = MultiFieldDecoder.create();
         this.typeProvider = VersionedSerializers.typesForVersion(fkConstraintInfo.getParentTableVersion());
         this.fkConstraintInfo = fkConstraintInfo;
+        this.parentKeyCache = parentKeyCache;
     }
 
     @Override
@@ -95,35 +105,34 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
     public void flush(WriteContext ctx) throws IOException {
         try {
             initTable();
-            HashSet<byte[]> culledLookups = new HashSet(mutations.size());
+            long txnId = ctx.getTxn().getTxnId();
+            /*
+             * Children in the same batch frequently share a parent, so we only look up each distinct parent
+             * key once. Keys which this transaction has already confirmed aren't looked up at all.
+             */
+            Map<ByteSlice,Integer> culledLookups = new HashMap<>(mutations.size());
+            List<byte[]> rowKeysToFetch = new ArrayList<>(mutations.size());
             int[] locations = new int[mutations.size()];
-            int counter = 0;
             for (int i =0; i<mutations.size();i++) {
                 byte[] checkRowKey = getCheckRowKey(mutations.get(i).getRowKey());
-                if (culledLookups.contains(checkRowKey)) {
-                    locations[i] = counter-1;
-                } else {
-                    culledLookups.add(checkRowKey);
-                    locations[i] = counter;
-                    counter++;
+                if (checkRowKey == null || (parentKeyCache != null && parentKeyCache.isConfirmed(txnId, checkRowKey))) {
+                    locations[i] = -1;
+                    continue;
                 }
+                ByteSlice key = ByteSlice.wrap(checkRowKey);
+                Integer location = culledLookups.get(key);
+                if (location == null) {
+                    location = rowKeysToFetch.size();
+                    culledLookups.put(key, location);
+                    rowKeysToFetch.add(checkRowKey);
+                }
+                locations[i] = location;
             }
+            if (rowKeysToFetch.isEmpty())
+                return;
 
-            List<byte[]> rowKeysToFetch = new ArrayList<>(culledLookups.size());
-            for (byte[] item: culledLookups) {
-                rowKeysToFetch.add(item);
-            }
-            SimpleTxnFilter readUncommittedFilter;
-            SimpleTxnFilter readCommittedFilter;
-            if (ctx.getTxn() instanceof ActiveWriteTxn) {
-                readUncommittedFilter = new SimpleTxnFilter(Long.toString(referencedConglomerateNumber), ((ActiveWriteTxn) ctx.getTxn()).getReadUncommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
-                readCommittedFilter = new SimpleTxnFilter(Long.toString(referencedConglomerateNumber), ((ActiveWriteTxn) ctx.getTxn()).getReadCommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
-            }else if (ctx.getTxn() instanceof WritableTxn) {
-                readUncommittedFilter = new SimpleTxnFilter(Long.toString(referencedConglomerateNumber), ((WritableTxn) ctx.getTxn()).getReadUncommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
-                readCommittedFilter = new SimpleTxnFilter(Long.toString(referencedConglomerateNumber), ((WritableTxn) ctx.getTxn()).getReadCommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
-            }else
-                throw new IOException("invalidTxn");
-
+            initFilters(ctx);
+            long invalidationMarker = parentKeyCache == null ? 0l : parentKeyCache.invalidationMarker();
             Iterator<DataResult> iterator = table.batchGet(new MapAttributes(),rowKeysToFetch);
             BitSet misses = new BitSet(rowKeysToFetch.size());
 
@@ -137,17 +146,28 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
                 i++;
             }
 
+            if (parentKeyCache != null) {
+                if (pendingKeys.isEmpty())
+                    pendingInvalidationMarker = invalidationMarker;
+                for (int k = 0; k < rowKeysToFetch.size(); k++) {
+                    if (!misses.get(k))
+                        pendingKeys.add(rowKeysToFetch.get(k));
+                }
+            }
             // No Misses...
             if (misses.isEmpty())
                 return;
+            // the statement is going to fail, and its rows to be rolled back, so nothing can be confirmed
+            discardPendingKeys();
             // Assemble failures for the write pipeline with error codes.
             i=0;
             for (int location: locations) {
-                if (misses.get(location))
+                if (location >= 0 && misses.get(location))
                     failWrite(mutations.get(i),ctx);
                 i++;
             }
         } catch (Exception e) {
+            discardPendingKeys();
             violationProcessor.failWrite(e, ctx);
         }finally{
             if(table!=null)
@@ -161,6 +181,30 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
     public void close(WriteContext ctx) throws IOException {
         if (mutations.size() > 0)
             flush(ctx);
+        confirmParentKeys(ctx);
+    }
+
+    /*
+     * The pipeline closes its handlers only once every handler has been flushed, so by now the batch has been
+     * applied. The keys are only confirmed if every row of the batch was written: a failed row fails the
+     * statement, and rolls back the child rows which were written alongside it.
+     */
+    private void confirmParentKeys(WriteContext ctx) {
+        if (pendingKeys.isEmpty())
+            return;
+        try {
+            for (WriteResult result : ctx.currentResults().values()) {
+                if (result.getCode() != Code.SUCCESS)
+                    return;
+            }
+            parentKeyCache.confirm(ctx.getTxn().getTxnId(), pendingKeys, pendingInvalidationMarker);
+        } finally {
+            discardPendingKeys();
+        }
+    }
+
+    private void discardPendingKeys() {
+        pendingKeys.clear();
     }
 
     private boolean hasData(DataResult result,SimpleTxnFilter filter) throws IOException {
@@ -187,6 +231,21 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
         return false; // No data returned, fail
     }
 
+    /* The filters only depend on the transaction, so they are created once and reset for each parent row */
+    private void initFilters(WriteContext ctx) throws IOException{
+        if (readCommittedFilter != null)
+            return;
+        String parentTable = Long.toString(referencedConglomerateNumber);
+        if (ctx.getTxn() instanceof ActiveWriteTxn) {
+            readUncommittedFilter = new SimpleTxnFilter(parentTable, ((ActiveWriteTxn) ctx.getTxn()).getReadUncommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
+            readCommittedFilter = new SimpleTxnFilter(parentTable, ((ActiveWriteTxn) ctx.getTxn()).getReadCommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
+        }else if (ctx.getTxn() instanceof WritableTxn) {
+            readUncommittedFilter = new SimpleTxnFilter(parentTable, ((WritableTxn) ctx.getTxn()).getReadUncommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
+            readCommittedFilter = new SimpleTxnFilter(parentTable, ((WritableTxn) ctx.getTxn()).getReadCommittedActiveTxn(), NoOpReadResolver.INSTANCE, SIDriver.driver().getTxnStore());
+        }else
+            throw new IOException("invalidTxn");
+    }
+
     /* Only need to create the CallBuffer once, but not until we have a WriteContext */
     private void initTable() throws IOException{
             if (table==null)
@@ -71,6 +71,10 @@ public class ForeignKeyParentInterceptWriteHandler implements WriteHandler{
         if (isForeignKeyInterceptNecessary(mutation.getType())) {
             mutations.add(mutation);
         }
+        if (mutation.getType() == KVPair.Type.DELETE || mutation.getType() == KVPair.Type.UPDATE) {
+            // children must not keep trusting an earlier check of a parent row which is going away
+            ForeignKeyParentKeyCache.invalidate(ctx.getRegion().getTableName(), mutation.getRowKey());
+        }
         ctx.sendUpstream(mutation);
     }
     /** We exist to prevent updates/deletes of rows from the parent table which are referenced by a child.
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.foreignkey;
+
+import com.splicemachine.utils.ByteSlice;
+import org.spark_project.guava.cache.Cache;
+import org.spark_project.guava.cache.CacheBuilder;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the parent keys which recently passed a foreign key check, so that child rows which reference
+ * the same parent key in later batches don't have to read the parent row again.
+ *
+ * A confirmation is only ever reused by the transaction which made it. Once that transaction has written
+ * a child row, the parent intercept refuses to delete the parent row it references, so the confirmation holds
+ * for the rest of the transaction. Keys are only confirmed once the batch which checked them has been applied,
+ * so that a confirmation always stands for a child row which was actually written. Other transactions re-check the parent for themselves, since the parent row
+ * may have been deleted on another server without this one hearing about it. Deletes and updates of a parent
+ * row which pass through this server invalidate its key for every transaction.
+ *
+ * There is one cache per parent conglomerate on each server, shared by all the regions of the child
+ * tables which reference it. The cache is dropped once the last of those regions closes, or when the
+ * parent table is dropped.
+ */
+@ThreadSafe
+public class ForeignKeyParentKeyCache{
+    private static final ConcurrentMap<String,ForeignKeyParentKeyCache> PARENT_CACHES=new ConcurrentHashMap<>();
+
+    private final Cache<ByteSlice,Long> confirmedKeys;
+    private final AtomicLong invalidations=new AtomicLong(0l);
+    private int references; //guarded by PARENT_CACHES
+
+    ForeignKeyParentKeyCache(int maxSize){
+        this.confirmedKeys=CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Every cache returned must be given back with {@link #release(String,ForeignKeyParentKeyCache)}.
+     *
+     * @param parentConglomerate the conglomerate of the referenced primary key or unique index
+     * @param maxSize the maximum number of keys to hold, if the cache has to be created
+     * @return the cache for the parent conglomerate, or {@code null} if caching is disabled
+     */
+    static ForeignKeyParentKeyCache forParent(String parentConglomerate,int maxSize){
+        if(maxSize<=0) return null;
+        synchronized(PARENT_CACHES){
+            ForeignKeyParentKeyCache cache=PARENT_CACHES.get(parentConglomerate);
+            if(cache==null){
+                cache=new ForeignKeyParentKeyCache(maxSize);
+                PARENT_CACHES.put(parentConglomerate,cache);
+            }
+            cache.references++;
+            return cache;
+        }
+    }
+
+    /**
+     * Give back a cache obtained from {@link #forParent(String,int)}, because the region which used it is closing,
+     * or no longer references the parent. The cache is dropped once nothing references it.
+     */
+    static void release(String parentConglomerate,ForeignKeyParentKeyCache cache){
+        synchronized(PARENT_CACHES){
+            cache.references--;
+            if(cache.references<=0 && PARENT_CACHES.get(parentConglomerate)==cache)
+                PARENT_CACHES.remove(parentConglomerate);
+        }
+    }
+
+    /**
+     * Drop the cache of a parent conglomerate, because its table is being dropped.
+     */
+    public static void evict(long parentConglomerate){
+        ForeignKeyParentKeyCache cache;
+        synchronized(PARENT_CACHES){
+            cache=PARENT_CACHES.remove(Long.toString(parentConglomerate));
+        }
+        if(cache!=null)
+            cache.invalidateAll();
+    }
+
+    /**
+     * Forget that {@code parentKey} was ever confirmed, because the parent row is being deleted or updated.
+     */
+    static void invalidate(String parentConglomerate,byte[] parentKey){
+        ForeignKeyParentKeyCache cache=PARENT_CACHES.get(parentConglomerate);
+        if(cache!=null)
+            cache.invalidate(parentKey);
+    }
+
+    /**
+     * @return a marker to pass to {@link #confirm(long,List,long)}. Take it before reading the parent rows, so
+     * that keys which were invalidated while the read was in flight are not cached.
+     */
+    long invalidationMarker(){
+        return invalidations.get();
+    }
+
+    boolean isConfirmed(long txnId,byte[] parentKey){
+        Long confirmingTxn=confirmedKeys.getIfPresent(ByteSlice.wrap(parentKey));
+        return confirmingTxn!=null && confirmingTxn==txnId;
+    }
+
+    void confirm(long txnId,List<byte[]> parentKeys,long invalidationMarker){
+        if(invalidations.get()!=invalidationMarker) return;
+        for(byte[] parentKey:parentKeys){
+            confirmedKeys.put(ByteSlice.wrap(parentKey),txnId);
+        }
+        /*
+         * An invalidation may have slipped in between our check and our writes. Invalidations are counted
+         * before the key is removed, so either we see the count change here, or the removal follows our write.
+         */
+        if(invalidations.get()!=invalidationMarker){
+            for(byte[] parentKey:parentKeys){
+                confirmedKeys.invalidate(ByteSlice.wrap(parentKey));
+            }
+        }
+    }
+
+    void invalidate(byte[] parentKey){
+        invalidations.incrementAndGet();
+        confirmedKeys.invalidate(ByteSlice.wrap(parentKey));
+    }
+
+    void invalidateAll(){
+        invalidations.incrementAndGet();
+        confirmedKeys.invalidateAll();
+    }
+
+    long size(){
+        return confirmedKeys.size();
+    }
+}
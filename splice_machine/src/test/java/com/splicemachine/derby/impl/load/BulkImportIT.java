@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.load;
+
+import com.splicemachine.derby.test.framework.SpliceIndexWatcher;
+import com.splicemachine.derby.test.framework.SpliceSchemaWatcher;
+import com.splicemachine.derby.test.framework.SpliceTableWatcher;
+import com.splicemachine.derby.test.framework.SpliceUnitTest;
+import com.splicemachine.derby.test.framework.SpliceWatcher;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Tests for SYSCS_UTIL.BULK_IMPORT_HFILE, which writes the imported rows and their index rows into HFiles
+ * instead of sending them through the write pipeline.
+ */
+public class BulkImportIT extends SpliceUnitTest{
+    protected static SpliceWatcher spliceClassWatcher=new SpliceWatcher();
+    public static final String CLASS_NAME=BulkImportIT.class.getSimpleName().toUpperCase();
+
+    protected static SpliceSchemaWatcher spliceSchemaWatcher=new SpliceSchemaWatcher(CLASS_NAME);
+    protected static SpliceTableWatcher keyedTable=new SpliceTableWatcher("KEYED",spliceSchemaWatcher.schemaName,
+            "(a int primary key, b varchar(10))");
+    protected static SpliceIndexWatcher keyedIndex=new SpliceIndexWatcher("KEYED",spliceSchemaWatcher.schemaName,
+            "KEYED_B",spliceSchemaWatcher.schemaName,"(b)");
+    protected static SpliceTableWatcher checkedTable=new SpliceTableWatcher("CHECKED",spliceSchemaWatcher.schemaName,
+            "(a int, b int check (b>0))");
+    protected static SpliceTableWatcher duplicateTable=new SpliceTableWatcher("DUPLICATE",spliceSchemaWatcher.schemaName,
+            "(a int primary key, b int)");
+    protected static SpliceTableWatcher permissiveDuplicateTable=new SpliceTableWatcher("PERMISSIVE_DUPLICATE",spliceSchemaWatcher.schemaName,
+            "(a int primary key, b int)");
+    protected static SpliceTableWatcher nonEmptyTable=new SpliceTableWatcher("NON_EMPTY",spliceSchemaWatcher.schemaName,
+            "(a int primary key, b int)");
+
+    @ClassRule
+    public static TestRule chain=RuleChain.outerRule(spliceClassWatcher)
+            .around(spliceSchemaWatcher)
+            .around(keyedTable)
+            .around(keyedIndex)
+            .around(checkedTable)
+            .around(duplicateTable)
+            .around(permissiveDuplicateTable)
+            .around(nonEmptyTable);
+
+    @Rule
+    public SpliceWatcher methodWatcher=new SpliceWatcher();
+
+    private static File BADDIR;
+    private static File IMPORTDIR;
+    private static File STAGINGDIR;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception{
+        BADDIR=SpliceUnitTest.createBadLogDirectory(spliceSchemaWatcher.schemaName);
+        IMPORTDIR=SpliceUnitTest.createImportFileDirectory(spliceSchemaWatcher.schemaName);
+        STAGINGDIR=new File(SpliceUnitTest.getBaseDirectory()+"/target/bulk_import/"+spliceSchemaWatcher.schemaName);
+        if(STAGINGDIR.exists())
+            SpliceUnitTest.recursiveDelete(STAGINGDIR);
+        Assert.assertTrue("Couldn't create "+STAGINGDIR,STAGINGDIR.mkdirs());
+    }
+
+    @Test
+    public void importsRowsAndIndexRows() throws Exception{
+        File file=writeFile("keyed.csv",100,0);
+        long[] result=bulkImport(keyedTable.tableName,file,0);
+        Assert.assertEquals("Incorrect number of rows imported!",100,result[0]);
+        Assert.assertEquals("Incorrect number of bad records!",0,result[1]);
+
+        Assert.assertEquals("Incorrect row count!",100,queryLong("select count(*) from "+keyedTable));
+        Assert.assertEquals("Incorrect row count through the index!",100,
+                queryLong("select count(b) from "+keyedTable+" --splice-properties index=KEYED_B\n"));
+        Assert.assertEquals("Index row not found!",1,
+                queryLong("select count(*) from "+keyedTable+" --splice-properties index=KEYED_B\n where b='42'"));
+    }
+
+    @Test
+    public void badRecordsAreSkipped() throws Exception{
+        File file=writeFile("checked.csv",10,2);
+        long[] result=bulkImport(checkedTable.tableName,file,5);
+        Assert.assertEquals("Incorrect number of rows imported!",8,result[0]);
+        Assert.assertEquals("Incorrect number of bad records!",2,result[1]);
+        Assert.assertEquals("Incorrect row count!",8,queryLong("select count(*) from "+checkedTable));
+    }
+
+    @Test
+    public void duplicateKeyFailsImportWithoutBadRecords() throws Exception{
+        File file=writeFile("duplicate.csv",10,0,"5,5");
+        try{
+            bulkImport(duplicateTable.tableName,file,0);
+            Assert.fail("Expected a duplicate key error");
+        }catch(SQLException se){
+            Assert.assertEquals("Incorrect sql state!","23505",se.getSQLState());
+        }
+        Assert.assertEquals("Rows of a failed import are visible!",0,queryLong("select count(*) from "+duplicateTable));
+    }
+
+    @Test
+    public void duplicateKeyIsABadRecordWhenBadRecordsAreAllowed() throws Exception{
+        File file=writeFile("permissive_duplicate.csv",10,0,"5,5");
+        long[] result=bulkImport(permissiveDuplicateTable.tableName,file,5);
+        Assert.assertEquals("Incorrect number of rows imported!",10,result[0]);
+        Assert.assertEquals("Incorrect number of bad records!",1,result[1]);
+        Assert.assertEquals("Incorrect row count!",10,queryLong("select count(*) from "+permissiveDuplicateTable));
+    }
+
+    @Test
+    public void existingKeyIsNotReplaced() throws Exception{
+        methodWatcher.executeUpdate("insert into "+nonEmptyTable+" values (5,-5)");
+        File file=writeFile("non_empty.csv",10,0);
+        try{
+            bulkImport(nonEmptyTable.tableName,file,0);
+            Assert.fail("Expected a duplicate key error");
+        }catch(SQLException se){
+            Assert.assertEquals("Incorrect sql state!","23505",se.getSQLState());
+        }
+        Assert.assertEquals("Existing row was replaced!",-5,queryLong("select b from "+nonEmptyTable+" where a=5"));
+    }
+
+    /*
+     * Writes rows (i,i) for i in 1..rows, with the first badRows rows given a negative second column,
+     * followed by any extra lines.
+     */
+    private static File writeFile(String name,int rows,int badRows,String... extraLines) throws Exception{
+        File file=new File(IMPORTDIR,name);
+        try(PrintWriter writer=new PrintWriter(file,"UTF-8")){
+            for(int i=1;i<=rows;i++)
+                writer.println(i+","+(i<=badRows?-i:i));
+            for(String line:extraLines)
+                writer.println(line);
+        }
+        return file;
+    }
+
+    /*
+     * @return the number of rows imported, and the number of bad records
+     */
+    private long[] bulkImport(String tableName,File file,long badRecordsAllowed) throws Exception{
+        try(PreparedStatement ps=methodWatcher.prepareStatement(format("call SYSCS_UTIL.BULK_IMPORT_HFILE(" +
+                        "'%s'," +  // schema name
+                        "'%s'," +  // table name
+                        "null," +  // insert column list
+                        "'%s'," +  // file path
+                        "','," +   // column delimiter
+                        "null," +  // character delimiter
+                        "null," +  // timestamp format
+                        "null," +  // date format
+                        "null," +  // time format
+                        "%d," +    // max bad records
+                        "'%s'," +  // bad record dir
+                        "null," +  // has one line records
+                        "null," +  // char set
+                        "'%s')",   // bulk import directory
+                spliceSchemaWatcher.schemaName,tableName,file.getCanonicalPath(),badRecordsAllowed,
+                BADDIR.getCanonicalPath(),STAGINGDIR.getCanonicalPath()));
+            ResultSet rs=ps.executeQuery()){
+            Assert.assertTrue("Import returned no results!",rs.next());
+            return new long[]{rs.getLong(1),rs.getLong(2)};
+        }
+    }
+
+    private long queryLong(String query) throws Exception{
+        try(ResultSet rs=methodWatcher.executeQuery(query)){
+            Assert.assertTrue("Did not return a row!",rs.next());
+            return rs.getLong(1);
+        }
+    }
+}
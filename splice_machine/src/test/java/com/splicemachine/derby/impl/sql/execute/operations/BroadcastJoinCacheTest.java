@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import com.splicemachine.stream.Stream;
+import com.splicemachine.stream.Streams;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@Category(ArchitectureIndependent.class)
+public class BroadcastJoinCacheTest{
+    @Rule
+    public TemporaryFolder temporaryFolder=new TemporaryFolder();
+
+    private static final int[] HASH_KEYS=new int[]{0};
+
+    @Test
+    public void evictsTablesToStayWithinTheBudget() throws Exception{
+        BroadcastJoinCache cache=new BroadcastJoinCache(OffHeapTableLoader.INSTANCE,8L<<20,temporaryFolder.newFolder());
+        //each table holds at least a 1MB slab, so the budget can't hold all of them at once
+        List<JoinTable> tables=new ArrayList<>();
+        for(long id=0;id<20;id++){
+            tables.add(cache.get(id,loader(100),HASH_KEYS,HASH_KEYS,row(0)).newTable());
+        }
+        Assert.assertEquals("Incorrect miss count",20,cache.getMissCount());
+        Assert.assertTrue("No tables were evicted",cache.getEvictionCount()>0);
+        //evicted tables must remain usable until they are closed
+        for(JoinTable table:tables){
+            Assert.assertTrue("Missing inner row",table.fetchInner(row(5)).hasNext());
+            table.close();
+        }
+        Assert.assertEquals("Closed tables were not released",0,cache.getResidentBytes());
+    }
+
+    @Test
+    public void reusesLoadedTables() throws Exception{
+        BroadcastJoinCache cache=new BroadcastJoinCache(ByteBufferMapTableLoader.INSTANCE,8L<<20,temporaryFolder.newFolder());
+        JoinTable first=cache.get(1L,loader(100),HASH_KEYS,HASH_KEYS,row(0)).newTable();
+        JoinTable second=cache.get(1L,loader(100),HASH_KEYS,HASH_KEYS,row(0)).newTable();
+        Assert.assertEquals("Incorrect miss count",1,cache.getMissCount());
+        Assert.assertEquals("Incorrect hit count",1,cache.getHitCount());
+        Assert.assertTrue("Missing inner row",second.fetchInner(row(5)).hasNext());
+        first.close();
+        second.close();
+        Assert.assertEquals("Closed table was not released",0,cache.getResidentBytes());
+    }
+
+    @Test
+    public void spilledTableIsRemovedWhenReleased() throws Exception{
+        File spillDirectory=temporaryFolder.newFolder();
+        BroadcastJoinCache cache=new BroadcastJoinCache(ByteBufferMapTableLoader.INSTANCE,4*1024,spillDirectory);
+        JoinTable table=cache.get(1L,loader(1000),HASH_KEYS,HASH_KEYS,row(0)).newTable();
+        Assert.assertEquals("Incorrect spill count",1,cache.getSpillCount());
+        Assert.assertTrue("Spilled table took more than its share of the budget",
+                cache.getResidentBytes()<=4*1024/BroadcastJoinCache.TABLE_SHARES);
+        Assert.assertTrue("Missing inner row",table.fetchInner(row(999)).hasNext());
+        Assert.assertTrue("No spill files were written",spillDirectory.list().length>0);
+        table.close();
+        Assert.assertEquals("Spill files were not removed",0,spillDirectory.list().length);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static Callable<Stream<ExecRow>> loader(int numRows){
+        final List<ExecRow> rows=new ArrayList<>(numRows);
+        for(int i=0;i<numRows;i++){
+            rows.add(row(i));
+        }
+        return new Callable<Stream<ExecRow>>(){
+            @Override
+            public Stream<ExecRow> call() throws Exception{
+                return Streams.wrap(rows);
+            }
+        };
+    }
+
+    private static ExecRow row(int value){
+        ExecRow row=new ValueRow(1);
+        row.setColumn(1,new SQLInteger(value));
+        return row;
+    }
+}
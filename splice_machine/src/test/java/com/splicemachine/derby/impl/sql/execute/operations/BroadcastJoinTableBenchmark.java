@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.stream.Stream;
+import com.splicemachine.stream.Streams;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the memory usage and probe throughput of the on-heap and off-heap
+ * broadcast join tables.
+ *
+ * Usage: BroadcastJoinTableBenchmark [numInnerRows] [numProbes]
+ */
+public class BroadcastJoinTableBenchmark{
+
+    public static void main(String...args) throws Exception{
+        int numRows=args.length>0?Integer.parseInt(args[0]):1000000;
+        int numProbes=args.length>1?Integer.parseInt(args[1]):5000000;
+
+        //warm up both implementations before measuring anything
+        benchmark("warmup",ByteBufferMapTableLoader.INSTANCE,numRows/10,numProbes/10,false);
+        benchmark("warmup",OffHeapTableLoader.INSTANCE,numRows/10,numProbes/10,false);
+
+        benchmark("ByteBufferMappedJoinTable",ByteBufferMapTableLoader.INSTANCE,numRows,numProbes,true);
+        benchmark("OffHeapMappedJoinTable",OffHeapTableLoader.INSTANCE,numRows,numProbes,true);
+    }
+
+    private static void benchmark(String name,
+                                  BroadcastJoinCache.JoinTableLoader loader,
+                                  final int numRows,
+                                  int numProbes,
+                                  boolean print) throws Exception{
+        long heapBefore=usedHeap();
+        long start=System.nanoTime();
+        JoinTable.Factory factory=loader.load(new Callable<Stream<ExecRow>>(){
+            @Override
+            public Stream<ExecRow> call() throws Exception{
+                return Streams.wrap(new RowGenerator(numRows));
+            }
+        },new int[]{0},new int[]{0},newRow(),Long.MAX_VALUE,null);
+        long loadTime=System.nanoTime()-start;
+        long heapUsed=usedHeap()-heapBefore;
+        long directUsed=factory instanceof OffHeapMappedJoinTable.Factory?factory.estimatedSize():0L;
+
+        Random random=new Random(0L);
+        ExecRow outer=newRow();
+        long matched=0L;
+        try(JoinTable table=factory.newTable()){
+            start=System.nanoTime();
+            for(int i=0;i<numProbes;i++){
+                //probe with a 50% hit rate
+                outer.getColumn(1).setValue(random.nextInt(2*numRows));
+                Iterator<ExecRow> inner=table.fetchInner(outer);
+                while(inner.hasNext()){
+                    inner.next();
+                    matched++;
+                }
+            }
+        }
+        long probeTime=System.nanoTime()-start;
+
+        if(print){
+            System.out.printf("%s%n",name);
+            System.out.printf("  rows=%d, probes=%d, matched=%d%n",numRows,numProbes,matched);
+            System.out.printf("  load time: %.2f ms%n",loadTime/1000000d);
+            System.out.printf("  heap used: %.2f MB%n",heapUsed/(1024d*1024d));
+            System.out.printf("  direct memory used: %.2f MB%n",directUsed/(1024d*1024d));
+            System.out.printf("  probe throughput: %.0f probes/s%n",numProbes/(probeTime/1000000000d));
+        }
+    }
+
+    private static long usedHeap(){
+        Runtime runtime=Runtime.getRuntime();
+        for(int i=0;i<3;i++){
+            System.gc();
+        }
+        return runtime.totalMemory()-runtime.freeMemory();
+    }
+
+    private static ExecRow newRow(){
+        ExecRow row=new ValueRow(3);
+        row.setColumn(1,new SQLInteger());
+        row.setColumn(2,new SQLVarchar());
+        row.setColumn(3,new SQLLongint());
+        return row;
+    }
+
+    private static class RowGenerator implements Iterator<ExecRow>{
+        private final int numRows;
+        private int position=0;
+
+        RowGenerator(int numRows){
+            this.numRows=numRows;
+        }
+
+        @Override public boolean hasNext(){ return position<numRows; }
+
+        @Override
+        public ExecRow next(){
+            ExecRow row=new ValueRow(3);
+            row.setColumn(1,new SQLInteger(position));
+            row.setColumn(2,new SQLVarchar("dimension value "+position));
+            row.setColumn(3,new SQLLongint(position*31L));
+            position++;
+            return row;
+        }
+
+        @Override public void remove(){ throw new UnsupportedOperationException(); }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.TimeUnit;
+
+@Category(ArchitectureIndependent.class)
+public class LookupBatchSizerTest{
+    private static final long TARGET=TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void testShrinksWhenLookupsAreSlow() throws Exception{
+        LookupBatchSizer sizer=new LookupBatchSizer(4000,TARGET);
+        sizer.record(2*TARGET);
+        Assert.assertEquals(2000,sizer.batchSize());
+        for(int i=0;i<20;i++){
+            sizer.record(2*TARGET);
+        }
+        Assert.assertEquals("Should not shrink below 1/16th of the configured size",250,sizer.batchSize());
+    }
+
+    @Test
+    public void testGrowsWhenLookupsAreFast() throws Exception{
+        LookupBatchSizer sizer=new LookupBatchSizer(4000,TARGET);
+        sizer.record(TARGET/10);
+        Assert.assertEquals(5000,sizer.batchSize());
+        for(int i=0;i<20;i++){
+            sizer.record(TARGET/10);
+        }
+        Assert.assertEquals("Should not grow beyond 4 times the configured size",16000,sizer.batchSize());
+    }
+
+    @Test
+    public void testHoldsSteadyNearTarget() throws Exception{
+        LookupBatchSizer sizer=new LookupBatchSizer(4000,TARGET);
+        sizer.record(3*TARGET/4);
+        Assert.assertEquals(4000,sizer.batchSize());
+    }
+
+    @Test
+    public void testDisabledWithoutTarget() throws Exception{
+        LookupBatchSizer sizer=new LookupBatchSizer(4000,-1L);
+        sizer.record(10*TARGET);
+        sizer.record(0L);
+        Assert.assertEquals(4000,sizer.batchSize());
+    }
+
+    @Test
+    public void testDisabledWithZeroTarget() throws Exception{
+        LookupBatchSizer sizer=new LookupBatchSizer(4000,0L);
+        sizer.record(10*TARGET);
+        sizer.record(0L);
+        Assert.assertEquals(4000,sizer.batchSize());
+    }
+
+    @Test
+    public void testSmallBatchSizesNeverReachZero() throws Exception{
+        LookupBatchSizer sizer=new LookupBatchSizer(1,TARGET);
+        sizer.record(2*TARGET);
+        Assert.assertEquals(1,sizer.batchSize());
+        sizer.record(0L);
+        Assert.assertTrue(sizer.batchSize()>=1);
+    }
+}
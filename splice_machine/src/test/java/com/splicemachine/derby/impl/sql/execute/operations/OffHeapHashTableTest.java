@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@Category(ArchitectureIndependent.class)
+public class OffHeapHashTableTest{
+
+    @Test
+    public void findsEveryKeyAcrossResizesAndSlabs() throws Exception{
+        //tiny slabs and slot table, to force many slabs and many resizes
+        OffHeapHashTable table=new OffHeapHashTable(128,2);
+        int numKeys=10000;
+        for(int i=0;i<numKeys;i++){
+            table.put(Bytes.toBytes(i),Bytes.toBytes("value"+i));
+        }
+        Assert.assertEquals("Incorrect key count",numKeys,table.size());
+        Assert.assertEquals("Incorrect entry count",numKeys,table.numEntries());
+
+        OffHeapHashTable.Reader reader=table.reader();
+        for(int i=0;i<numKeys;i++){
+            long entry=reader.find(Bytes.toBytes(i));
+            Assert.assertTrue("Missing key "+i,entry>=0);
+            Assert.assertEquals("Incorrect value for key "+i,"value"+i,readValue(reader,entry));
+            Assert.assertTrue("Unexpected duplicate for key "+i,reader.next(entry)<0);
+        }
+        Assert.assertTrue("Found a key which was never added",reader.find(Bytes.toBytes(numKeys))<0);
+    }
+
+    @Test
+    public void chainsDuplicateKeys() throws Exception{
+        OffHeapHashTable table=new OffHeapHashTable();
+        byte[] key=Bytes.toBytes("dup");
+        for(int i=0;i<5;i++){
+            table.put(key,Bytes.toBytes(i));
+        }
+        table.put(Bytes.toBytes("other"),Bytes.toBytes(100));
+        Assert.assertEquals("Incorrect key count",2,table.size());
+        Assert.assertEquals("Incorrect entry count",6,table.numEntries());
+
+        OffHeapHashTable.Reader reader=table.reader();
+        Set<Integer> seen=new HashSet<>();
+        for(long entry=reader.find(key);entry>=0;entry=reader.next(entry)){
+            byte[] value=new byte[reader.valueLength(entry)];
+            reader.readValue(entry,value);
+            Assert.assertTrue("Returned the same entry twice",seen.add(Bytes.toInt(value)));
+        }
+        Assert.assertEquals("Did not return all duplicates",5,seen.size());
+    }
+
+    @Test
+    public void oversizedEntriesGetTheirOwnSlab() throws Exception{
+        OffHeapHashTable table=new OffHeapHashTable(64,16);
+        byte[] bigValue=new byte[1000];
+        bigValue[999]=7;
+        table.put(Bytes.toBytes(1),bigValue);
+        table.put(Bytes.toBytes(2),Bytes.toBytes(2));
+
+        OffHeapHashTable.Reader reader=table.reader();
+        long entry=reader.find(Bytes.toBytes(1));
+        byte[] value=new byte[reader.valueLength(entry)];
+        reader.readValue(entry,value);
+        Assert.assertArrayEquals("Incorrect oversized value",bigValue,value);
+        Assert.assertTrue("Memory usage does not account for the oversized entry",table.memoryUsage()>bigValue.length);
+    }
+
+    @Test
+    public void releaseFreesTheOffHeapMemory() throws Exception{
+        OffHeapHashTable table=new OffHeapHashTable(1024,16);
+        for(int i=0;i<1000;i++){
+            table.put(Bytes.toBytes(i),Bytes.toBytes("value"+i));
+        }
+        Assert.assertTrue("Table holds no memory",table.memoryUsage()>0);
+        table.release();
+        Assert.assertEquals("Released table still holds memory",0,table.memoryUsage());
+        Assert.assertEquals("Released table still has keys",0,table.size());
+        table.release(); //releasing twice must not free the memory twice
+    }
+
+    @Test
+    public void forEachVisitsEveryEntry() throws Exception{
+        OffHeapHashTable table=new OffHeapHashTable(128,2);
+        try{
+            for(int i=0;i<100;i++){
+                table.put(Bytes.toBytes(i%10),Bytes.toBytes(i));
+            }
+            final Set<Integer> seen=new HashSet<>();
+            table.forEach(new OffHeapHashTable.EntryVisitor(){
+                @Override
+                public void visit(byte[] key,byte[] value){
+                    Assert.assertEquals("Entry visited with the wrong key",Bytes.toInt(value)%10,Bytes.toInt(key));
+                    seen.add(Bytes.toInt(value));
+                }
+            });
+            Assert.assertEquals("Not every entry was visited",100,seen.size());
+        }finally{
+            table.release();
+        }
+    }
+
+    private static String readValue(OffHeapHashTable.Reader reader,long entry){
+        byte[] value=new byte[reader.valueLength(entry)];
+        reader.readValue(entry,value);
+        return Bytes.toString(value);
+    }
+}
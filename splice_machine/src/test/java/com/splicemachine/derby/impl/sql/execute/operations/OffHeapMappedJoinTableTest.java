@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.impl.sql.execute.operations.scanner.JoinKeyFilter;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import com.splicemachine.stream.Stream;
+import com.splicemachine.stream.Streams;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@Category(ArchitectureIndependent.class)
+public class OffHeapMappedJoinTableTest{
+
+    @Test
+    public void returnsTheSameRowsAsTheOnHeapTable() throws Exception{
+        final List<ExecRow> innerRows=new ArrayList<>();
+        for(int i=0;i<1000;i++){
+            ExecRow row=new ValueRow(3);
+            row.setColumn(1,new SQLInteger(i%100));
+            //mix in some nulls, so that rows have differing sets of populated fields
+            row.setColumn(2,i%3==0?new SQLVarchar():new SQLVarchar("value"+i));
+            row.setColumn(3,new SQLLongint(i));
+            innerRows.add(row);
+        }
+        Callable<Stream<ExecRow>> loader=new Callable<Stream<ExecRow>>(){
+            @Override
+            public Stream<ExecRow> call() throws Exception{
+                return Streams.wrap(innerRows);
+            }
+        };
+        ExecRow outer=innerRows.get(0).getNewNullRow();
+        int[] hashKeys=new int[]{0};
+
+        JoinTable.Factory onHeap=ByteBufferMapTableLoader.INSTANCE.load(loader,hashKeys,hashKeys,outer,Long.MAX_VALUE,null);
+        JoinTable.Factory offHeap=OffHeapTableLoader.INSTANCE.load(loader,hashKeys,hashKeys,outer,Long.MAX_VALUE,null);
+        try(JoinTable expectedTable=onHeap.newTable();JoinTable actualTable=offHeap.newTable()){
+            for(int i=0;i<110;i++){
+                outer.getColumn(1).setValue(i);
+                List<String> expected=toStrings(expectedTable.fetchInner(outer));
+                List<String> actual=toStrings(actualTable.fetchInner(outer));
+                Assert.assertEquals("Incorrect inner rows for key "+i,expected,actual);
+            }
+        }
+    }
+
+    @Test
+    public void emptyInnerTableMatchesNothing() throws Exception{
+        ExecRow outer=new ValueRow(1);
+        outer.setColumn(1,new SQLInteger(1));
+        JoinTable.Factory factory=OffHeapTableLoader.INSTANCE.load(new Callable<Stream<ExecRow>>(){
+            @Override
+            public Stream<ExecRow> call() throws Exception{
+                return Streams.empty();
+            }
+        },new int[]{0},new int[]{0},outer,Long.MAX_VALUE,null);
+        try(JoinTable table=factory.newTable()){
+            Assert.assertFalse("Empty table returned a row",table.fetchInner(outer).hasNext());
+        }
+    }
+
+    @Test
+    public void joinKeyFilterHoldsEveryInnerKey() throws Exception{
+        final List<ExecRow> innerRows=new ArrayList<>();
+        for(int i=0;i<1000;i++){
+            ExecRow row=new ValueRow(2);
+            row.setColumn(1,new SQLInteger(i%100));
+            row.setColumn(2,new SQLLongint(i));
+            innerRows.add(row);
+        }
+        Callable<Stream<ExecRow>> loader=new Callable<Stream<ExecRow>>(){
+            @Override
+            public Stream<ExecRow> call() throws Exception{
+                return Streams.wrap(innerRows);
+            }
+        };
+        //the outer rows hold their join key in a different column from the inner rows
+        ExecRow outer=new ValueRow(2);
+        outer.setColumn(1,new SQLLongint());
+        outer.setColumn(2,new SQLInteger());
+        int[] innerKeys=new int[]{0};
+        int[] outerKeys=new int[]{1};
+
+        for(BroadcastJoinCache.JoinTableLoader tableLoader:new BroadcastJoinCache.JoinTableLoader[]{ByteBufferMapTableLoader.INSTANCE,OffHeapTableLoader.INSTANCE}){
+            JoinTable.Factory factory=tableLoader.load(loader,innerKeys,outerKeys,outer,Long.MAX_VALUE,null);
+            Assert.assertNull("Built a filter over more keys than allowed",factory.joinKeyFilter(outerKeys,99,0.01d));
+            JoinKeyFilter filter=factory.joinKeyFilter(outerKeys,100,0.01d);
+            Assert.assertNotNull("No filter was built",filter);
+            int falsePositives=0;
+            for(int i=0;i<10000;i++){
+                outer.getColumn(2).setValue(i);
+                if(i<100)
+                    Assert.assertTrue("Filter is missing key "+i,filter.mightMatch(outer));
+                else if(filter.mightMatch(outer))
+                    falsePositives++;
+            }
+            Assert.assertTrue("Too many false positives: "+falsePositives,falsePositives<500);
+            factory.close();
+        }
+    }
+
+    private static List<String> toStrings(Iterator<ExecRow> rows){
+        List<String> strings=new ArrayList<>();
+        while(rows.hasNext()){
+            strings.add(rows.next().toString());
+        }
+        //order within a key is not guaranteed by either implementation
+        Collections.sort(strings);
+        return strings;
+    }
+}
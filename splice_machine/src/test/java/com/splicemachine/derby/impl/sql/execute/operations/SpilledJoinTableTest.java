@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import com.splicemachine.stream.Stream;
+import com.splicemachine.stream.Streams;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+@Category(ArchitectureIndependent.class)
+public class SpilledJoinTableTest{
+    @Rule
+    public TemporaryFolder temporaryFolder=new TemporaryFolder();
+
+    private static final int[] HASH_KEYS=new int[]{0};
+
+    @Test
+    public void onHeapTableSpillsWhenOverTheLimit() throws Exception{
+        assertSpillMatchesInMemory(ByteBufferMapTableLoader.INSTANCE);
+    }
+
+    @Test
+    public void offHeapTableSpillsWhenOverTheLimit() throws Exception{
+        assertSpillMatchesInMemory(OffHeapTableLoader.INSTANCE);
+    }
+
+    @Test
+    public void tableUnderTheLimitIsNotSpilled() throws Exception{
+        File spillDirectory=temporaryFolder.newFolder();
+        JoinTable.Factory factory=OffHeapTableLoader.INSTANCE.load(loader(innerRows(100)),HASH_KEYS,HASH_KEYS,outerRow(),1L<<30,spillDirectory);
+        Assert.assertTrue("Table should have been held in memory",factory instanceof OffHeapMappedJoinTable.Factory);
+        Assert.assertEquals("Files were spilled",0,spillDirectory.list().length);
+    }
+
+    @Test
+    public void partitionsAreReloadedWhenTheResidentLimitIsExceeded() throws Exception{
+        File spillDirectory=temporaryFolder.newFolder();
+        SpilledJoinTable.Factory factory=(SpilledJoinTable.Factory)OffHeapTableLoader.INSTANCE.load(loader(innerRows(2000)),
+                HASH_KEYS,HASH_KEYS,outerRow(),1L,spillDirectory);
+        ExecRow outer=outerRow();
+        try(JoinTable table=factory.newTable()){
+            //two passes over every key, while only a single partition may be held at once
+            for(int pass=0;pass<2;pass++){
+                for(int i=0;i<200;i++){
+                    outer.getColumn(1).setValue(i);
+                    Assert.assertEquals("Incorrect number of rows for key "+i,10,toStrings(table.fetchInner(outer)).size());
+                }
+            }
+        }
+        Assert.assertTrue("Partitions were not evicted",factory.partitionLoads()>SpilledJoinTable.NUM_PARTITIONS);
+    }
+
+    @Test
+    public void prefetchLoadsEachPartitionOnce() throws Exception{
+        File spillDirectory=temporaryFolder.newFolder();
+        SpilledJoinTable.Factory factory=(SpilledJoinTable.Factory)OffHeapTableLoader.INSTANCE.load(loader(innerRows(2000)),
+                HASH_KEYS,HASH_KEYS,outerRow(),1L,spillDirectory);
+        List<ExecRow> outerRows=new ArrayList<>();
+        for(int i=0;i<200;i++){
+            ExecRow outer=outerRow();
+            outer.getColumn(1).setValue(i);
+            outerRows.add(outer);
+        }
+        Collections.shuffle(outerRows,new Random(0L));
+        try(JoinTable table=factory.newTable()){
+            table.prefetch(outerRows);
+            long loads=factory.partitionLoads();
+            Assert.assertTrue("Partitions were loaded more than once",loads<=SpilledJoinTable.NUM_PARTITIONS);
+            for(ExecRow outer:outerRows){
+                List<String> inner=toStrings(table.fetchInner(outer));
+                Assert.assertEquals("Incorrect number of rows for "+outer,10,inner.size());
+                for(String row:inner){
+                    Assert.assertTrue("Incorrect row "+row+" for "+outer,row.startsWith("{ "+outer.getColumn(1).getInt()+","));
+                }
+            }
+            Assert.assertEquals("Fetching prefetched rows loaded partitions",loads,factory.partitionLoads());
+        }
+        Assert.assertEquals("Partitions were not released",0,factory.residentSize());
+        factory.close();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private void assertSpillMatchesInMemory(BroadcastJoinCache.JoinTableLoader tableLoader) throws Exception{
+        File spillDirectory=temporaryFolder.newFolder();
+        Callable<Stream<ExecRow>> loader=loader(innerRows(5000));
+
+        JoinTable.Factory inMemory=tableLoader.load(loader,HASH_KEYS,HASH_KEYS,outerRow(),Long.MAX_VALUE,spillDirectory);
+        JoinTable.Factory spilled=tableLoader.load(loader,HASH_KEYS,HASH_KEYS,outerRow(),16*1024,spillDirectory);
+        Assert.assertTrue("Table was not spilled",spilled instanceof SpilledJoinTable.Factory);
+        Assert.assertTrue("No spill files were written",spillDirectory.list().length>0);
+
+        ExecRow outer=outerRow();
+        try(JoinTable expectedTable=inMemory.newTable();JoinTable actualTable=spilled.newTable()){
+            for(int i=0;i<550;i++){
+                outer.getColumn(1).setValue(i);
+                List<String> expected=toStrings(expectedTable.fetchInner(outer));
+                List<String> actual=toStrings(actualTable.fetchInner(outer));
+                Assert.assertEquals("Incorrect inner rows for key "+i,expected,actual);
+            }
+        }
+        spilled.close();
+        Assert.assertEquals("Spill files were not removed",0,spillDirectory.list().length);
+    }
+
+    private static List<ExecRow> innerRows(int numRows){
+        List<ExecRow> rows=new ArrayList<>(numRows);
+        for(int i=0;i<numRows;i++){
+            ExecRow row=new ValueRow(3);
+            row.setColumn(1,new SQLInteger(i%(numRows/10)));
+            row.setColumn(2,i%7==0?new SQLVarchar():new SQLVarchar("value"+i));
+            row.setColumn(3,new SQLLongint(i));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static Callable<Stream<ExecRow>> loader(final List<ExecRow> rows){
+        return new Callable<Stream<ExecRow>>(){
+            @Override
+            public Stream<ExecRow> call() throws Exception{
+                return Streams.wrap(rows);
+            }
+        };
+    }
+
+    private static ExecRow outerRow(){
+        ExecRow row=new ValueRow(3);
+        row.setColumn(1,new SQLInteger());
+        row.setColumn(2,new SQLVarchar());
+        row.setColumn(3,new SQLLongint());
+        return row;
+    }
+
+    private static List<String> toStrings(Iterator<ExecRow> rows){
+        List<String> strings=new ArrayList<>();
+        while(rows.hasNext()){
+            strings.add(rows.next().toString());
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.derby.impl.sql.execute.operations.scanner;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.KeyEncoder;
+import com.splicemachine.derby.utils.marshall.NoOpPostfix;
+import com.splicemachine.derby.utils.marshall.NoOpPrefix;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(ArchitectureIndependent.class)
+public class JoinKeyFilterTest{
+
+    @Test
+    public void containsEveryKeyThatWasAdded() throws Exception{
+        JoinKeyFilter filter=new JoinKeyFilter(new int[]{0},10000,0.01d);
+        for(int i=0;i<10000;i++){
+            filter.add(Bytes.toBytes(i));
+        }
+        for(int i=0;i<10000;i++){
+            Assert.assertTrue("False negative for key "+i,filter.mightContain(Bytes.toBytes(i)));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateIsNearTheTarget() throws Exception{
+        JoinKeyFilter filter=new JoinKeyFilter(new int[]{0},10000,0.01d);
+        for(int i=0;i<10000;i++){
+            filter.add(Bytes.toBytes(i));
+        }
+        int falsePositives=0;
+        for(int i=10000;i<110000;i++){
+            if(filter.mightContain(Bytes.toBytes(i)))
+                falsePositives++;
+        }
+        Assert.assertTrue("Too many false positives: "+falsePositives,falsePositives<3000);
+    }
+
+    @Test
+    public void matchesOuterRowsByTheirJoinColumns() throws Exception{
+        //the inner key is in column 1 of the inner row, but column 0 of the outer row
+        ExecRow inner=new ValueRow(2);
+        inner.setColumn(1,new SQLVarchar("ignored"));
+        inner.setColumn(2,new SQLInteger());
+        KeyEncoder innerKeyEncoder=new KeyEncoder(NoOpPrefix.INSTANCE,
+                BareKeyHash.encoder(new int[]{1},null,VersionedSerializers.latestVersion(false).getSerializers(inner)),
+                NoOpPostfix.INSTANCE);
+
+        JoinKeyFilter filter=new JoinKeyFilter(new int[]{0},100,0.01d);
+        for(int i=0;i<100;i+=2){
+            inner.getColumn(2).setValue(i);
+            filter.add(innerKeyEncoder.getKey(inner));
+        }
+
+        //round trip the filter, as it would be when it is shipped out to the scanners
+        JoinKeyFilter shipped=SerializationUtils.clone(filter);
+
+        ExecRow outer=new ValueRow(2);
+        outer.setColumn(1,new SQLInteger());
+        outer.setColumn(2,new SQLVarchar("outer"));
+        for(int i=0;i<100;i+=2){
+            outer.getColumn(1).setValue(i);
+            Assert.assertTrue("Outer row with key "+i+" was eliminated",shipped.mightMatch(outer));
+        }
+        int matched=0;
+        for(int i=1;i<100;i+=2){
+            outer.getColumn(1).setValue(i);
+            if(shipped.mightMatch(outer))
+                matched++;
+        }
+        Assert.assertTrue("Too many non-matching outer rows passed the filter: "+matched,matched<10);
+    }
+}
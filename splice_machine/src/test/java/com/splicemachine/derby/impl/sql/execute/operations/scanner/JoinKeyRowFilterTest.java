@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations.scanner;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.EntryDataHash;
+import com.splicemachine.derby.utils.marshall.KeyEncoder;
+import com.splicemachine.derby.utils.marshall.NoOpPostfix;
+import com.splicemachine.derby.utils.marshall.NoOpPrefix;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import com.splicemachine.storage.DataScan;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+@Category(ArchitectureIndependent.class)
+public class JoinKeyRowFilterTest{
+    private static final String TABLE_VERSION="2.0";
+
+    /*
+     * The stored rows are (name varchar, ignored bigint, key int), and the scan returns (name, key),
+     * so the join key is column 1 of the scanned rows, but column 2 of the stored rows.
+     */
+    private static final int[] ROW_DECODING_MAP=new int[]{0,-1,1};
+
+    @Test
+    public void eliminatesStoredRowsWhoseKeyIsNotInTheInnerTable() throws Exception{
+        JoinKeyRowFilter rowFilter=attach(evenKeyFilter(),ROW_DECODING_MAP);
+
+        for(int i=0;i<100;i+=2){
+            byte[] data=storedRow("row"+i,i);
+            Assert.assertTrue("Stored row with key "+i+" was eliminated",rowFilter.mightMatch(data,0,data.length));
+        }
+        int matched=0;
+        for(int i=1;i<100;i+=2){
+            byte[] data=storedRow("row"+i,i);
+            if(rowFilter.mightMatch(data,0,data.length))
+                matched++;
+        }
+        Assert.assertTrue("Too many non-matching stored rows passed the filter: "+matched,matched<10);
+    }
+
+    @Test
+    public void keepsStoredRowsWithoutTheKey() throws Exception{
+        JoinKeyRowFilter rowFilter=attach(evenKeyFilter(),ROW_DECODING_MAP);
+
+        //e.g. a partial update, which the scanner has to merge with the row's other versions
+        byte[] data=storedRow("no key",null);
+        Assert.assertTrue("A row without its join key was eliminated",rowFilter.mightMatch(data,0,data.length));
+    }
+
+    @Test
+    public void isNotAttachedWhenAKeyIsNotInThePackedData() throws Exception{
+        DataScan scan=Mockito.mock(DataScan.class);
+        //the key column is part of the primary key, so isn't in the decoding map at all
+        JoinKeyRowFilter.addToScan(scan,evenKeyFilter(),scannedRow(),new int[]{0},TABLE_VERSION);
+        Mockito.verify(scan,Mockito.never()).addAttribute(Matchers.anyString(),Matchers.any(byte[].class));
+    }
+
+    private static JoinKeyRowFilter attach(JoinKeyFilter filter,int[] rowDecodingMap) throws Exception{
+        DataScan scan=Mockito.mock(DataScan.class);
+        JoinKeyRowFilter.addToScan(scan,filter,scannedRow(),rowDecodingMap,TABLE_VERSION);
+        ArgumentCaptor<byte[]> attribute=ArgumentCaptor.forClass(byte[].class);
+        Mockito.verify(scan).addAttribute(Matchers.eq(JoinKeyRowFilter.SCAN_ATTRIBUTE),attribute.capture());
+        //round trip the filter, as it would be when it is read by the region
+        return JoinKeyRowFilter.fromBytes(attribute.getValue());
+    }
+
+    private static JoinKeyFilter evenKeyFilter() throws Exception{
+        ExecRow inner=new ValueRow(1);
+        inner.setColumn(1,new SQLInteger());
+        KeyEncoder innerKeyEncoder=new KeyEncoder(NoOpPrefix.INSTANCE,
+                BareKeyHash.encoder(new int[]{0},null,VersionedSerializers.latestVersion(false).getSerializers(inner)),
+                NoOpPostfix.INSTANCE);
+        JoinKeyFilter filter=new JoinKeyFilter(new int[]{1},100,0.01d);
+        for(int i=0;i<100;i+=2){
+            inner.getColumn(1).setValue(i);
+            filter.add(innerKeyEncoder.getKey(inner));
+        }
+        return filter;
+    }
+
+    private static ExecRow scannedRow(){
+        ExecRow row=new ValueRow(2);
+        row.setColumn(1,new SQLVarchar());
+        row.setColumn(2,new SQLInteger());
+        return row;
+    }
+
+    private static byte[] storedRow(String name,Integer key) throws Exception{
+        ExecRow row=new ValueRow(3);
+        row.setColumn(1,new SQLVarchar(name));
+        row.setColumn(2,new SQLLongint(42L));
+        row.setColumn(3,key==null?new SQLInteger():new SQLInteger(key));
+        EntryDataHash hash=new EntryDataHash(null,null,VersionedSerializers.forVersion(TABLE_VERSION,true).getSerializers(row));
+        hash.setRow(row);
+        return hash.encode();
+    }
+}
@@ -16,6 +16,15 @@
 package com.splicemachine.derby.impl.sql.execute.sequence;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.splicemachine.si.testenv.ArchitectureIndependent;
 import org.junit.Assert;
@@ -60,8 +69,69 @@ public class AbstractSequenceTest {
 		}
 	}
 	
+	@Test
+	public void multiThreadedValuesAreUnique() throws Exception {
+		final Sequence sequence = new SpliceTestSequence(10,3,7);
+		final int numThreads = 8;
+		final int valuesPerThread = 20000;
+		final Set<Long> values = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try{
+			List<Future<Void>> futures = new ArrayList<>(numThreads);
+			for (int t = 0; t < numThreads; t++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int i = 0; i < valuesPerThread; i++) {
+							long next = sequence.getNext();
+							Assert.assertEquals("Value "+next+" is not in the sequence",0,(next-7)%3);
+							Assert.assertTrue("Value "+next+" was handed out twice",values.add(next));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures)
+				future.get();
+		}finally{
+			executor.shutdownNow();
+		}
+		Assert.assertEquals(numThreads*valuesPerThread,values.size());
+	}
+
+	@Test
+	public void descendingSequence() throws Exception {
+		Sequence sequence = new SpliceTestSequence(10,-2,100);
+		for (long i = 0; i< 1000; i++) {
+			Assert.assertEquals(100-2*i,sequence.getNext());
+		}
+	}
+
+	@Test
+	public void blocksGrowWhenConsumedQuickly() throws Exception {
+		SpliceTestSequence sequence = new SpliceTestSequence(10,1,0);
+		int numValues = 100000;
+		for (long i = 0; i< numValues; i++) {
+			Assert.assertEquals(i,sequence.getNext());
+		}
+		Assert.assertTrue("Block did not grow: "+sequence.currentBlockSize(),sequence.currentBlockSize()>10);
+		Assert.assertTrue("Block grew too large: "+sequence.currentBlockSize(),
+				sequence.currentBlockSize()<=10*AbstractSequence.MAX_GROWTH);
+		Assert.assertTrue("Too many blocks were allocated: "+sequence.allocations,sequence.allocations<numValues/100);
+	}
+
+	@Test
+	public void peekDoesNotConsumeValues() throws Exception {
+		Sequence sequence = new SpliceTestSequence(5,1,0);
+		Assert.assertEquals(0,sequence.peekAtCurrentValue());
+		Assert.assertEquals(0,sequence.getNext());
+		Assert.assertEquals(1,sequence.peekAtCurrentValue());
+		Assert.assertEquals(1,sequence.getNext());
+	}
+
 	private class SpliceTestSequence extends AbstractSequence {
-		long currentValue = -1;
+		volatile long currentValue = -1;
+		volatile int allocations;
 		SpliceTestSequence(long blockAllocationSize, long incrementSteps, long startingValue) {
 			super(blockAllocationSize,incrementSteps,startingValue);
 		}
@@ -76,6 +146,7 @@ public class AbstractSequenceTest {
 			@Override
 			protected boolean atomicIncrement(long nextValue) throws IOException {
 				currentValue = nextValue;
+				allocations++;
 				return true;
 			}
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.stats.ColumnStatisticsImpl;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.impl.sql.catalog.SYSCOLUMNSTATISTICSRowFactory;
+import com.splicemachine.db.impl.sql.catalog.SYSTABLESTATISTICSRowFactory;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.utils.marshall.EntryDataHash;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.encoding.Encoding;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import com.splicemachine.storage.CellType;
+import com.splicemachine.storage.DataCell;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Category(ArchitectureIndependent.class)
+public class CompactionStatisticsCollectorTest{
+    private static final String VERSION="2.0";
+
+    private CollectedColumns columns;
+    private TxnSupplier txnSupplier;
+    private EntryDataHash encoder;
+
+    @Before
+    public void setUp() throws Exception{
+        int formatId=new SQLInteger().getTypeFormatId();
+        columns=new CollectedColumns(1184l,VERSION,new int[]{1,2},new int[]{0,1},
+                new DataValueDescriptor[]{new SQLInteger(),new SQLInteger()},null,null,new int[]{formatId,formatId});
+        txnSupplier=mock(TxnSupplier.class);
+        encoder=new EntryDataHash(null,null,VersionedSerializers.forVersion(VERSION,true).getSerializers(new int[]{formatId,formatId}));
+    }
+
+    @Test
+    public void onlyCommittedRowsAreCounted() throws Exception{
+        committed(5l);
+        CompactionStatisticsCollector collector=new CompactionStatisticsCollector(columns,"region1",txnSupplier);
+        collector.collect(Arrays.asList(
+                commitTimestamp(1,1l),data(1,1l,1,10)));
+        collector.collect(Arrays.asList(data(2,3l,2,20)));         //still active
+        collector.collect(Arrays.asList(data(3,5l,3,30)));         //committed, but not yet resolved
+        List<ExecRow> rows=collector.finish(4096l);
+
+        Assert.assertEquals("Incorrect row count",2l,collector.getRowCount());
+        Assert.assertEquals("Incorrect cell count",4l,collector.getCellCount());
+        Assert.assertEquals("Incorrect number of statistics rows",3,rows.size());
+        Assert.assertEquals("Incorrect row count in table statistics",2l,
+                rows.get(2).getColumn(SYSTABLESTATISTICSRowFactory.ROWCOUNT).getLong());
+        Assert.assertEquals("Partition size should be the size of the written file",4096l,
+                rows.get(2).getColumn(SYSTABLESTATISTICSRowFactory.PARTITION_SIZE).getLong());
+        ColumnStatisticsImpl first=columnStatistics(rows,0);
+        Assert.assertEquals("Incorrect not null count",2l,first.notNullCount());
+        Assert.assertEquals("Incorrect min value",1,first.minValue().getInt());
+        Assert.assertEquals("Incorrect max value",3,first.maxValue().getInt());
+    }
+
+    @Test
+    public void deletedRowsAreSkipped() throws Exception{
+        CompactionStatisticsCollector collector=new CompactionStatisticsCollector(columns,"region1",txnSupplier);
+        collector.collect(Arrays.asList(
+                commitTimestamp(1,3l),commitTimestamp(1,1l),tombstone(1,3l),data(1,1l,1,10),
+                commitTimestamp(2,9l),commitTimestamp(2,7l),commitTimestamp(2,1l),tombstone(2,7l),
+                data(2,9l,4,40),data(2,1l,2,20)));
+        List<ExecRow> rows=collector.finish(4096l);
+
+        Assert.assertEquals("Incorrect row count",1l,collector.getRowCount());
+        ColumnStatisticsImpl first=columnStatistics(rows,0);
+        Assert.assertEquals("Re-inserted row should use the new value",4,first.maxValue().getInt());
+        Assert.assertEquals("Re-inserted row should use the new value",4,first.minValue().getInt());
+    }
+
+    @Test
+    public void updatesAreMergedAcrossVersions() throws Exception{
+        CompactionStatisticsCollector collector=new CompactionStatisticsCollector(columns,"region1",txnSupplier);
+        //the row is split across batches, as it may be by the compaction
+        collector.collect(Arrays.asList(commitTimestamp(1,5l),commitTimestamp(1,1l)));
+        collector.collect(Arrays.asList(data(1,5l,null,50),data(1,1l,1,10)));
+        List<ExecRow> rows=collector.finish(4096l);
+
+        Assert.assertEquals("Incorrect row count",1l,collector.getRowCount());
+        ColumnStatisticsImpl first=columnStatistics(rows,0);
+        Assert.assertEquals("Unchanged column should come from the insert",1l,first.notNullCount());
+        Assert.assertEquals("Unchanged column should come from the insert",1,first.maxValue().getInt());
+        ColumnStatisticsImpl second=columnStatistics(rows,1);
+        Assert.assertEquals("Updated column should come from the update",50,second.maxValue().getInt());
+        Assert.assertEquals("Updated column should come from the update",50,second.minValue().getInt());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private void committed(long txnId) throws IOException{
+        TxnView txn=mock(TxnView.class);
+        when(txn.getEffectiveState()).thenReturn(Txn.State.COMMITTED);
+        when(txnSupplier.getTransaction(txnId)).thenReturn(txn);
+    }
+
+    private static ColumnStatisticsImpl columnStatistics(List<ExecRow> rows,int position) throws StandardException{
+        return (ColumnStatisticsImpl)rows.get(position).getColumn(SYSCOLUMNSTATISTICSRowFactory.DATA).getObject();
+    }
+
+    private DataCell data(int key,long version,Integer first,Integer second) throws Exception{
+        ExecRow row=new ValueRow(2);
+        row.setRowArray(new DataValueDescriptor[]{
+                first==null?new SQLInteger():new SQLInteger(first),
+                second==null?new SQLInteger():new SQLInteger(second)});
+        encoder.setRow(row);
+        return cell(key,version,encoder.encode(),CellType.USER_DATA);
+    }
+
+    private static DataCell commitTimestamp(int key,long version){
+        return cell(key,version,new byte[0],CellType.COMMIT_TIMESTAMP);
+    }
+
+    private static DataCell tombstone(int key,long version){
+        return cell(key,version,new byte[0],CellType.TOMBSTONE);
+    }
+
+    private static DataCell cell(int key,long version,byte[] value,CellType type){
+        byte[] rowKey=Encoding.encode(key);
+        DataCell cell=mock(DataCell.class);
+        when(cell.keyArray()).thenReturn(rowKey);
+        when(cell.keyOffset()).thenReturn(0);
+        when(cell.keyLength()).thenReturn(rowKey.length);
+        when(cell.valueArray()).thenReturn(value);
+        when(cell.valueOffset()).thenReturn(0);
+        when(cell.valueLength()).thenReturn(value.length);
+        when(cell.version()).thenReturn(version);
+        when(cell.dataType()).thenReturn(type);
+        return cell;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.dictionary.ColumnStatisticsDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.stats.ColumnStatisticsImpl;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.impl.sql.catalog.SYSCOLUMNSTATISTICSRowFactory;
+import com.splicemachine.db.impl.sql.catalog.SYSTABLESTATISTICSRowFactory;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Category(ArchitectureIndependent.class)
+public class IncrementalStatisticsTest{
+    private static final long CONGLOMERATE=1184l;
+    private static final String PARTITION="region1";
+
+    private IncrementingClock clock;
+    private IncrementalStatistics statistics;
+
+    @Before
+    public void setUp() throws Exception{
+        clock=new IncrementingClock();
+        clock.increment(TimeUnit.SECONDS.toNanos(10));
+        statistics=new IncrementalStatistics(CONGLOMERATE,PARTITION,new int[]{1},new DataValueDescriptor[]{new SQLInteger()},clock);
+    }
+
+    @Test
+    public void insertsAreMergedIntoCollectedStatistics() throws Exception{
+        PartitionStatisticsDescriptor collected=collected(1000l,false,100,0);
+        clock.increment(TimeUnit.SECONDS.toNanos(1));
+        statistics.record(rows(100,150),500l,0l,0l);
+        Assert.assertTrue("Should have changes",statistics.hasChanges());
+
+        List<ExecRow> merged=statistics.mergeInto(collected,0.1d);
+        Assert.assertNotNull("Should have merged",merged);
+        Assert.assertEquals("Incorrect number of rows",2,merged.size());
+
+        ColumnStatisticsImpl columnStats=(ColumnStatisticsImpl)merged.get(0).getColumn(SYSCOLUMNSTATISTICSRowFactory.DATA).getObject();
+        Assert.assertEquals("Incorrect row count in column",150l,columnStats.notNullCount());
+        Assert.assertEquals("Incorrect max value",149,columnStats.maxValue().getInt());
+
+        ExecRow table=merged.get(1);
+        Assert.assertEquals("Incorrect row count",150l,table.getColumn(SYSTABLESTATISTICSRowFactory.ROWCOUNT).getLong());
+        Assert.assertEquals("Incorrect partition size",1500l,table.getColumn(SYSTABLESTATISTICSRowFactory.PARTITION_SIZE).getLong());
+        Assert.assertEquals("Incorrect mean row width",10,table.getColumn(SYSTABLESTATISTICSRowFactory.MEANROWWIDTH).getInt());
+        Assert.assertEquals("Collection time should be kept",1000l,
+                table.getColumn(SYSTABLESTATISTICSRowFactory.TIMESTAMP).getTimestamp(null).getTime());
+        Assert.assertFalse("Should not be stale",table.getColumn(SYSTABLESTATISTICSRowFactory.STALENESS).getBoolean());
+        Assert.assertFalse("Window should have been drained",statistics.hasChanges());
+    }
+
+    @Test
+    public void modificationsMarkStatisticsStale() throws Exception{
+        PartitionStatisticsDescriptor collected=collected(1000l,false,100,0);
+        statistics.record(Collections.<DataValueDescriptor[]>emptyList(),0l,5l,0l);
+        ExecRow table=tableRow(statistics.mergeInto(collected,0.1d));
+        Assert.assertFalse("Should not be stale yet",table.getColumn(SYSTABLESTATISTICSRowFactory.STALENESS).getBoolean());
+
+        //the persisted statistics still carry the original collection time, so modifications accumulate
+        statistics.record(Collections.<DataValueDescriptor[]>emptyList(),0l,0l,6l);
+        table=tableRow(statistics.mergeInto(collected,0.1d));
+        Assert.assertTrue("Should be stale",table.getColumn(SYSTABLESTATISTICSRowFactory.STALENESS).getBoolean());
+        Assert.assertEquals("Incorrect row count",94l,table.getColumn(SYSTABLESTATISTICSRowFactory.ROWCOUNT).getLong());
+    }
+
+    @Test
+    public void recollectionResetsModifications() throws Exception{
+        statistics.record(Collections.<DataValueDescriptor[]>emptyList(),0l,8l,0l);
+        statistics.mergeInto(collected(1000l,false,100,0),0.1d);
+
+        clock.increment(TimeUnit.SECONDS.toNanos(10));
+        statistics.record(Collections.<DataValueDescriptor[]>emptyList(),0l,8l,0l);
+        ExecRow table=tableRow(statistics.mergeInto(collected(15000l,false,100,0),0.1d));
+        Assert.assertFalse("Modifications from before the collection should not count",
+                table.getColumn(SYSTABLESTATISTICSRowFactory.STALENESS).getBoolean());
+    }
+
+    @Test
+    public void collectionDuringWindowDiscardsWindow() throws Exception{
+        statistics.record(rows(0,10),100l,0l,0l);
+        Assert.assertNull("Should not merge rows the collection may have seen",
+                statistics.mergeInto(collected(clock.currentTimeMillis()+1,false,100,0),0.1d));
+        Assert.assertFalse("Window should have been discarded",statistics.hasChanges());
+    }
+
+    @Test
+    public void nothingToMergeWithoutCollectedStatistics() throws Exception{
+        statistics.record(rows(0,10),100l,0l,0l);
+        Assert.assertNull("Should not merge without collected statistics",statistics.mergeInto(null,0.1d));
+        Assert.assertFalse("Window should have been discarded",statistics.hasChanges());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static PartitionStatisticsDescriptor collected(long timestamp,boolean stale,int rowCount,int startValue) throws StandardException{
+        ColumnStatisticsImpl columnStats=new ColumnStatisticsImpl(new SQLInteger());
+        for(int i=startValue;i<startValue+rowCount;i++){
+            columnStats.update(new SQLInteger(i));
+        }
+        PartitionStatisticsDescriptor psd=new PartitionStatisticsDescriptor(CONGLOMERATE,PARTITION,timestamp,stale,false,
+                rowCount,rowCount*10l,10);
+        psd.setColumnStatsDescriptors(Collections.singletonList(new ColumnStatisticsDescriptor(CONGLOMERATE,PARTITION,1,columnStats)));
+        return psd;
+    }
+
+    private static List<DataValueDescriptor[]> rows(int start,int stop){
+        List<DataValueDescriptor[]> rows=new ArrayList<>(stop-start);
+        for(int i=start;i<stop;i++){
+            rows.add(new DataValueDescriptor[]{new SQLInteger(i)});
+        }
+        return rows;
+    }
+
+    private static ExecRow tableRow(List<ExecRow> merged){
+        Assert.assertNotNull("Should have merged",merged);
+        return merged.get(merged.size()-1);
+    }
+}
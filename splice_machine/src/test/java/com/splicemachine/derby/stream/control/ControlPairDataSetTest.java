@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.stream.AbstractPairDataSetTest;
+import com.splicemachine.derby.stream.iapi.PairDataSet;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.util.Iterator;
+
+@Category(ArchitectureIndependent.class)
+public class ControlPairDataSetTest extends AbstractPairDataSetTest{
+
+
+    protected SpillSettings getSpillSettings(){
+        return new SpillSettings(Long.MAX_VALUE,new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    @Override
+    protected PairDataSet<ExecRow, ExecRow> getTenRows(){
+        return new ControlPairDataSet<>(tenRows.iterator(),getSpillSettings());
+    }
+
+    @Override
+    protected PairDataSet<ExecRow, ExecRow> getEvenRows(){
+        return new ControlPairDataSet<>(evenRows.iterator(),getSpillSettings());
+    }
+
+    /*
+     * Control side data sets can only be read once, so the following tests
+     * replace the ones which read the same data set more than once.
+     */
+
+    @Test
+    @Override
+    public void testMap() throws StandardException{
+        Iterator<Integer> it=getTenRows().map(new MapKeyFunction()).toLocalIterator();
+        int i=0;
+        while(it.hasNext()){
+            Assert.assertTrue("wrong value",it.next()<3);
+            i++;
+        }
+        Assert.assertEquals("MissingRecords",10,i);
+    }
+
+    @Test
+    @Override
+    public void testReduceByKey() throws StandardException{
+        Iterator<ExecRow> it=getTenRows().reduceByKey(new ReduceByKeyFunction()).values().toLocalIterator();
+        int total=0;
+        int items=0;
+        while(it.hasNext()){
+            items++;
+            total+=it.next().getColumn(1).getInt();
+        }
+        Assert.assertEquals("not 2 keys",2,items);
+        Assert.assertEquals("sum not 45",45,total);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.services.cache.ClassSize;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.stream.BaseStreamTest;
+import com.splicemachine.derby.stream.function.RowComparator;
+import org.spark_project.guava.collect.AbstractIterator;
+import org.spark_project.guava.collect.Ordering;
+import scala.Tuple2;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Compares the throughput and peak heap usage of sorting a control-side pair data set entirely
+ * in memory (as {@code ControlPairDataSet.sortByKey} used to) against the {@link ExternalSorter}.
+ *
+ * Rows are generated as they are read, so that the input itself takes up no heap. Peak heap is measured
+ * as the peak occupancy of the tenured generation, which is where anything a sort holds on to ends up; short
+ * lived garbage in the young generation is not counted.
+ *
+ * Usage: {@code ExternalSortBenchmark [rows] [sort memory in MB] [iterations]}.
+ */
+public class ExternalSortBenchmark{
+
+    public static void main(String...args) throws Exception{
+        int numRows=args.length>0?Integer.parseInt(args[0]):1000000;
+        long sortMemory=(args.length>1?Long.parseLong(args[1]):16L)<<20;
+        int iterations=args.length>2?Integer.parseInt(args[2]):3;
+        ClassSize.setDummyCatalog();
+
+        File spillDirectory=Files.createTempDirectory("sort-benchmark").toFile();
+        final RowComparator rowComparator=new RowComparator();
+        Comparator<Tuple2<ExecRow,ExecRow>> comparator=new Comparator<Tuple2<ExecRow,ExecRow>>(){
+            @Override
+            public int compare(Tuple2<ExecRow,ExecRow> o1,Tuple2<ExecRow,ExecRow> o2){
+                return rowComparator.compare(o1._1(),o2._1());
+            }
+        };
+        try{
+            for(int i=0;i<iterations;i++){
+                resetPeakHeap();
+                long s=System.nanoTime();
+                long checksum=consume(Ordering.from(comparator).immutableSortedCopy(() -> rows(numRows)).iterator());
+                long inMemoryTime=System.nanoTime()-s;
+                long inMemoryPeak=peakHeap();
+
+                resetPeakHeap();
+                s=System.nanoTime();
+                ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(new SpillSettings(sortMemory,sortMemory,spillDirectory),rowComparator);
+                long externalChecksum=consume(sorter.sort(rows(numRows)));
+                long externalTime=System.nanoTime()-s;
+                long externalPeak=peakHeap();
+                if(checksum!=externalChecksum)
+                    throw new IllegalStateException("External sort produced a different result");
+
+                System.out.printf("iteration=%d rows=%d inMemory rows/sec=%.0f peakHeapMB=%d | external(%dMB, %d runs) rows/sec=%.0f peakHeapMB=%d%n",
+                        i,numRows,numRows/(inMemoryTime/1e9d),inMemoryPeak>>20,
+                        sortMemory>>20,sorter.runsWritten(),numRows/(externalTime/1e9d),externalPeak>>20);
+            }
+        }finally{
+            File[] leftovers=spillDirectory.listFiles();
+            if(leftovers!=null){
+                for(File f:leftovers){
+                    //noinspection ResultOfMethodCallIgnored
+                    f.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            spillDirectory.delete();
+        }
+    }
+
+    /*
+     * Reads the sorted output, checking the order as it goes, and returns an order-sensitive checksum
+     */
+    private static long consume(Iterator<Tuple2<ExecRow,ExecRow>> sorted) throws Exception{
+        long checksum=0L;
+        int last=Integer.MIN_VALUE;
+        while(sorted.hasNext()){
+            int key=sorted.next()._1().getColumn(1).getInt();
+            if(key<last)
+                throw new IllegalStateException("Output is not sorted");
+            last=key;
+            checksum=31*checksum+key;
+        }
+        return checksum;
+    }
+
+    private static Iterator<Tuple2<ExecRow,ExecRow>> rows(final int numRows){
+        final Random random=new Random(0L);
+        return new AbstractIterator<Tuple2<ExecRow,ExecRow>>(){
+            private int generated=0;
+
+            @Override
+            protected Tuple2<ExecRow,ExecRow> computeNext(){
+                if(generated++>=numRows)
+                    return endOfData();
+                int key=random.nextInt();
+                return new Tuple2<>(BaseStreamTest.getExecRow(key,1),BaseStreamTest.getExecRow(key,10));
+            }
+        };
+    }
+
+    private static void resetPeakHeap(){
+        System.gc();
+        for(MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans()){
+            if(isTenured(pool))
+                pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeap(){
+        long peak=0L;
+        for(MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans()){
+            if(isTenured(pool))
+                peak+=pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static boolean isTenured(MemoryPoolMXBean pool){
+        String name=pool.getName();
+        return pool.getType()==MemoryType.HEAP && (name.contains("Old Gen") || name.contains("Tenured"));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.stream.BaseStreamTest;
+import com.splicemachine.derby.stream.function.RowComparator;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import scala.Tuple2;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+@Category(ArchitectureIndependent.class)
+public class ExternalSorterTest extends BaseStreamTest{
+    private File spillDirectory;
+
+    @Before
+    public void setUp() throws Exception{
+        spillDirectory=Files.createTempDirectory("sort-test").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        File[] leftovers=spillDirectory.listFiles();
+        Assert.assertNotNull(leftovers);
+        Assert.assertEquals("Sorted runs were not cleaned up",0,leftovers.length);
+        Assert.assertTrue(spillDirectory.delete());
+    }
+
+    @Test
+    public void testSortsInMemoryWithinLimit() throws Exception{
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(new SpillSettings(Long.MAX_VALUE,spillDirectory),new RowComparator());
+        assertSorted(sorter.sort(randomRows(1000).iterator()),1000);
+        Assert.assertEquals("Should not have written any runs",0,sorter.runsWritten());
+    }
+
+    @Test
+    public void testSortsWithRunsOnDisk() throws Exception{
+        //roughly 100 rows to a run
+        SpillSettings settings=new SpillSettings(Long.MAX_VALUE,100*rowSize(),spillDirectory);
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(settings,new RowComparator());
+        assertSorted(sorter.sort(randomRows(2000).iterator()),2000);
+        Assert.assertTrue("Should have written runs",sorter.runsWritten()>1);
+    }
+
+    @Test
+    public void testSortsWithMultipleMergePasses() throws Exception{
+        //a run per row, which is more than can be merged in a single pass
+        int numRows=3*SpillSettings.MERGE_FANIN;
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(new SpillSettings(1L,spillDirectory),new RowComparator());
+        assertSorted(sorter.sort(randomRows(numRows).iterator()),numRows);
+        Assert.assertTrue("Should have merged runs into longer runs",sorter.runsWritten()>numRows);
+    }
+
+    @Test
+    public void testSortIsStable() throws Exception{
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(new SpillSettings(1L,50*rowSize(),spillDirectory),new RowComparator());
+        assertStable(sorter,500);
+    }
+
+    @Test
+    public void testSortIsStableAcrossMergePasses() throws Exception{
+        //a run per row, so that some (but not all) of the runs have to be merged into a longer run first
+        int numRows=SpillSettings.MERGE_FANIN+SpillSettings.MERGE_FANIN/2;
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(new SpillSettings(1L,spillDirectory),new RowComparator());
+        assertStable(sorter,numRows);
+        Assert.assertTrue("Should have merged runs into longer runs",sorter.runsWritten()>numRows);
+    }
+
+    @Test
+    public void testCloseRemovesRuns() throws Exception{
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(new SpillSettings(1L,spillDirectory),new RowComparator());
+        sorter.sort(randomRows(3*SpillSettings.MERGE_FANIN).iterator());
+        sorter.close();
+    }
+
+    private static long rowSize() throws StandardException{
+        return 2*(SpillCodec.ENTRY_OVERHEAD+getExecRow(0,1).getColumn(1).estimateMemoryUsage());
+    }
+
+    private static void assertStable(ExternalSorter<ExecRow,ExecRow> sorter,int numRows) throws Exception{
+        List<Tuple2<ExecRow,ExecRow>> rows=new ArrayList<>();
+        for(int i=0;i<numRows;i++){
+            rows.add(new Tuple2<>(getExecRow(i%7,1),getExecRow(i,1)));
+        }
+        Iterator<Tuple2<ExecRow,ExecRow>> sorted=sorter.sort(rows.iterator());
+        int lastKey=-1;
+        int lastValue=-1;
+        int count=0;
+        while(sorted.hasNext()){
+            Tuple2<ExecRow,ExecRow> t=sorted.next();
+            int key=t._1().getColumn(1).getInt();
+            int value=t._2().getColumn(1).getInt();
+            if(key==lastKey)
+                Assert.assertTrue("Equal keys were reordered",value>lastValue);
+            else
+                Assert.assertTrue("Keys out of order",key>lastKey);
+            lastKey=key;
+            lastValue=value;
+            count++;
+        }
+        Assert.assertEquals("Incorrect number of rows",numRows,count);
+    }
+
+    private static List<Tuple2<ExecRow,ExecRow>> randomRows(int numRows){
+        Random random=new Random(numRows);
+        List<Tuple2<ExecRow,ExecRow>> rows=new ArrayList<>(numRows);
+        for(int i=0;i<numRows;i++){
+            int key=random.nextInt(numRows/2);
+            rows.add(new Tuple2<>(getExecRow(key,1),getExecRow(key,3)));
+        }
+        return rows;
+    }
+
+    private static void assertSorted(Iterator<Tuple2<ExecRow,ExecRow>> sorted,int expectedRows) throws Exception{
+        int count=0;
+        int last=Integer.MIN_VALUE;
+        while(sorted.hasNext()){
+            Tuple2<ExecRow,ExecRow> t=sorted.next();
+            int key=t._1().getColumn(1).getInt();
+            Assert.assertTrue("Rows out of order",key>=last);
+            Assert.assertEquals("Key and value were separated",key,t._2().getColumn(3).getInt());
+            last=key;
+            count++;
+        }
+        Assert.assertEquals("Incorrect number of rows",expectedRows,count);
+    }
+}
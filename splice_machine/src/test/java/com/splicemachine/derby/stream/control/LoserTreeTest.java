@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+@Category(ArchitectureIndependent.class)
+public class LoserTreeTest{
+
+    @Test
+    public void testMergesNoSources() throws Exception{
+        LoserTree<Integer> tree=new LoserTree<>(Collections.<Iterator<Integer>>emptyList(),Comparator.<Integer>naturalOrder());
+        Assert.assertFalse(tree.hasNext());
+    }
+
+    @Test
+    public void testMergesRandomSources() throws Exception{
+        Random random=new Random(0L);
+        for(int k=1;k<=20;k++){
+            List<Iterator<Integer>> sources=new ArrayList<>();
+            List<Integer> expected=new ArrayList<>();
+            for(int i=0;i<k;i++){
+                List<Integer> run=new ArrayList<>();
+                int size=random.nextInt(50); //some sources are empty
+                for(int j=0;j<size;j++){
+                    run.add(random.nextInt(100));
+                }
+                Collections.sort(run);
+                expected.addAll(run);
+                sources.add(run.iterator());
+            }
+            Collections.sort(expected);
+            List<Integer> actual=new ArrayList<>();
+            LoserTree<Integer> tree=new LoserTree<>(sources,Comparator.<Integer>naturalOrder());
+            while(tree.hasNext()){
+                actual.add(tree.next());
+            }
+            Assert.assertEquals("Incorrect merge of "+k+" sources",expected,actual);
+        }
+    }
+
+    @Test
+    public void testEqualElementsAreReturnedInSourceOrder() throws Exception{
+        List<Iterator<int[]>> sources=Arrays.asList(
+                Arrays.asList(new int[]{1,0},new int[]{2,0}).iterator(),
+                Arrays.asList(new int[]{1,1},new int[]{2,1}).iterator(),
+                Arrays.asList(new int[]{0,2},new int[]{1,2}).iterator());
+        LoserTree<int[]> tree=new LoserTree<>(sources,new Comparator<int[]>(){
+            @Override
+            public int compare(int[] o1,int[] o2){
+                return Integer.compare(o1[0],o2[0]);
+            }
+        });
+        int[][] expected={{0,2},{1,0},{1,1},{1,2},{2,0},{2,1}};
+        for(int[] e:expected){
+            Assert.assertTrue(tree.hasNext());
+            Assert.assertArrayEquals(e,tree.next());
+        }
+        Assert.assertFalse(tree.hasNext());
+    }
+}
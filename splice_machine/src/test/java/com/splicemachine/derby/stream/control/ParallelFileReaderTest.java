@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.load.SpliceCsvReader;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+@Category(ArchitectureIndependent.class)
+public class ParallelFileReaderTest{
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception{
+        file=Files.createTempFile("parallel-import",".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testSplitsSingleLineRecordsOnLineBreaks() throws Exception{
+        byte[] data=writeRecords(5000,false);
+        ParallelFileReader reader=reader(data.length,4,1000,true);
+        List<long[]> ranges=reader.split();
+        Assert.assertTrue("Should have split the file",ranges.size()>1);
+        assertCovers(ranges,data.length);
+        for(long[] range:ranges){
+            if(range[0]>0)
+                Assert.assertEquals("Range does not start at a line",'\n',data[(int)range[0]-1]);
+        }
+    }
+
+    @Test
+    public void testDoesNotSplitInsideQuotedColumns() throws Exception{
+        byte[] data=writeRecords(5000,true);
+        ParallelFileReader reader=reader(data.length,4,1000,false);
+        List<long[]> ranges=reader.split();
+        Assert.assertTrue("Should have split the file",ranges.size()>1);
+        assertCovers(ranges,data.length);
+        for(long[] range:ranges){
+            if(range[0]==0) continue;
+            Assert.assertEquals("Range does not start at a line",'\n',data[(int)range[0]-1]);
+            int quotes=0;
+            for(int i=0;i<range[0];i++){
+                if(data[i]=='"') quotes++;
+            }
+            Assert.assertEquals("Range starts inside a quoted column",0,quotes%2);
+        }
+    }
+
+    @Test
+    public void testReadsEveryRecordOnce() throws Exception{
+        byte[] data=writeRecords(20000,true);
+        ParallelFileReader reader=reader(data.length,4,4096,false);
+        Iterator<LocatedRow> rows=reader.read(new ParallelFileReader.RangeParserFactory(){
+            @Override
+            public ParallelFileReader.RangeParser newParser(){
+                return new CsvRangeParser();
+            }
+        });
+        BitSet seen=new BitSet();
+        int count=0;
+        while(rows.hasNext()){
+            int record=rows.next().getRow().getColumn(1).getInt();
+            Assert.assertFalse("Record "+record+" was returned twice",seen.get(record));
+            seen.set(record);
+            count++;
+        }
+        Assert.assertEquals(20000,count);
+        Assert.assertEquals(20000,seen.cardinality());
+    }
+
+    @Test
+    public void testParseErrorsAreThrownToTheReader() throws Exception{
+        byte[] data=writeRecords(20000,false);
+        ParallelFileReader reader=reader(data.length,4,4096,true);
+        Iterator<LocatedRow> rows=reader.read(new ParallelFileReader.RangeParserFactory(){
+            @Override
+            public ParallelFileReader.RangeParser newParser(){
+                return new ParallelFileReader.RangeParser(){
+                    @Override
+                    public Iterator<LocatedRow> parse(InputStream range) throws Exception{
+                        throw new IllegalStateException("bad range");
+                    }
+                };
+            }
+        });
+        try{
+            while(rows.hasNext()){
+                rows.next();
+            }
+            Assert.fail("Expected the parse error to be thrown");
+        }catch(IllegalStateException expected){
+            Assert.assertEquals("bad range",expected.getMessage());
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private ParallelFileReader reader(long size,int parallelism,long splitSize,boolean oneLineRecords){
+        return new ParallelFileReader(FileSystems.getDefault().provider(),file,size,parallelism,splitSize,oneLineRecords,(byte)'"');
+    }
+
+    private static void assertCovers(List<long[]> ranges,long size){
+        long expectedStart=0;
+        for(long[] range:ranges){
+            Assert.assertEquals("Ranges are not contiguous",expectedStart,range[0]);
+            Assert.assertTrue("Empty range",range[1]>range[0]);
+            expectedStart=range[1];
+        }
+        Assert.assertEquals("Ranges do not cover the file",size,expectedStart);
+    }
+
+    /*
+     * Records are "<record number>,<text>". With multiLine, some of the text columns are quoted,
+     * and contain line breaks and escaped quotes.
+     */
+    private byte[] writeRecords(int count,boolean multiLine) throws Exception{
+        Random random=new Random(count);
+        StringBuilder sb=new StringBuilder();
+        for(int i=0;i<count;i++){
+            sb.append(i).append(',');
+            if(multiLine && random.nextInt(4)==0)
+                sb.append("\"line one\nline \"\"two\"\"\r\nline three\"");
+            else
+                sb.append("text ").append(random.nextInt());
+            sb.append('\n');
+        }
+        byte[] data=sb.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(file,data);
+        return data;
+    }
+
+    private static class CsvRangeParser implements ParallelFileReader.RangeParser{
+        @Override
+        public Iterator<LocatedRow> parse(InputStream range) throws Exception{
+            SpliceCsvReader reader=new SpliceCsvReader(new BufferedReader(new InputStreamReader(range,StandardCharsets.UTF_8)),
+                    CsvPreference.STANDARD_PREFERENCE);
+            List<LocatedRow> rows=new ArrayList<>();
+            while(reader.hasNext()){
+                List<String> columns=reader.next();
+                Assert.assertEquals("Record was split: "+columns,2,columns.size());
+                ExecRow row=new ValueRow(1);
+                row.setColumn(1,new SQLInteger(Integer.parseInt(columns.get(0))));
+                rows.add(new LocatedRow(row));
+            }
+            return rows.iterator();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import scala.Tuple2;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the pair data set tests with a memory budget so small that every hash operation
+ * has to spill its input to disk.
+ */
+@Category(ArchitectureIndependent.class)
+public class SpillingControlPairDataSetTest extends ControlPairDataSetTest{
+    private File spillDirectory;
+    private SpillSettings settings;
+
+    @Before
+    public void setUp() throws Exception{
+        spillDirectory=Files.createTempDirectory("spill-test").toFile();
+        settings=new SpillSettings(1L,spillDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        File[] leftovers=spillDirectory.listFiles();
+        Assert.assertNotNull(leftovers);
+        Assert.assertEquals("Spill files were not cleaned up",0,leftovers.length);
+        Assert.assertTrue(spillDirectory.delete());
+    }
+
+    @Override
+    protected SpillSettings getSpillSettings(){
+        return settings;
+    }
+
+    @Test
+    public void testReduceByKeyManyKeys() throws StandardException{
+        List<Tuple2<ExecRow,ExecRow>> rows=new ArrayList<>();
+        for(int i=0;i<1000;i++){
+            rows.add(new Tuple2<>(getExecRow(i%100,1),getExecRow(i,2)));
+        }
+        Iterator<Tuple2<ExecRow,ExecRow>> it=((ControlPairDataSet<ExecRow,ExecRow>)new ControlPairDataSet<>(rows.iterator(),settings)
+                .reduceByKey(new ReduceByKeyFunction())).source;
+        Map<Integer,Integer> sums=new HashMap<>();
+        while(it.hasNext()){
+            Tuple2<ExecRow,ExecRow> t=it.next();
+            Assert.assertNull("Key was reduced more than once",
+                    sums.put(t._1().getColumn(1).getInt(),t._2().getColumn(1).getInt()));
+        }
+        Assert.assertEquals("Incorrect number of keys",100,sums.size());
+        for(Map.Entry<Integer,Integer> sum:sums.entrySet()){
+            int key=sum.getKey();
+            //the values for each key are key, key+100, ..., key+900
+            Assert.assertEquals("Incorrect sum for key "+key,10*key+4500,sum.getValue().intValue());
+        }
+    }
+
+    @Test
+    public void testHashJoinManyKeys() throws StandardException{
+        List<Tuple2<ExecRow,ExecRow>> left=new ArrayList<>();
+        List<Tuple2<ExecRow,ExecRow>> right=new ArrayList<>();
+        for(int i=0;i<500;i++){
+            left.add(new Tuple2<>(getExecRow(i,1),getExecRow(i,2)));
+            if(i%3==0){
+                right.add(new Tuple2<>(getExecRow(i,1),getExecRow(i,3)));
+                right.add(new Tuple2<>(getExecRow(i,1),getExecRow(i,3)));
+            }
+        }
+        Iterator<Tuple2<ExecRow,ExecRow>> it=new ControlPairDataSet<>(left.iterator(),settings)
+                .hashJoin(new ControlPairDataSet<>(right.iterator(),settings)).values().toLocalIterator();
+        int count=0;
+        while(it.hasNext()){
+            Tuple2<ExecRow,ExecRow> t=it.next();
+            Assert.assertEquals("Joined rows do not match",t._1().getColumn(1).getInt(),t._2().getColumn(1).getInt());
+            Assert.assertEquals("Joined the wrong key",0,t._1().getColumn(1).getInt()%3);
+            count++;
+        }
+        Assert.assertEquals("Incorrect number of rows",2*167,count);
+    }
+
+    @Test
+    public void testAbandonedJoinIsRemovedWhenOperationCloses() throws Exception{
+        SpliceOperation operation=Mockito.mock(SpliceOperation.class);
+        OperationContext context=Mockito.mock(OperationContext.class);
+        Mockito.when(context.getOperation()).thenReturn(operation);
+
+        List<Tuple2<ExecRow,ExecRow>> left=new ArrayList<>();
+        List<Tuple2<ExecRow,ExecRow>> right=new ArrayList<>();
+        for(int i=0;i<100;i++){
+            left.add(new Tuple2<>(getExecRow(i,1),getExecRow(i,2)));
+            right.add(new Tuple2<>(getExecRow(i,1),getExecRow(i,3)));
+        }
+        Iterator<Tuple2<ExecRow,ExecRow>> it=new ControlPairDataSet<>(left.iterator(),settings,context)
+                .hashJoin(new ControlPairDataSet<>(right.iterator(),settings)).values().toLocalIterator();
+        Assert.assertTrue("Join produced no rows",it.hasNext());
+        it.next();
+        Assert.assertNotEquals("Join did not spill",0,spillDirectory.list().length);
+
+        //the output is never consumed further, so closing the operation has to remove the spilled data
+        ArgumentCaptor<AutoCloseable> registered=ArgumentCaptor.forClass(AutoCloseable.class);
+        Mockito.verify(operation,Mockito.atLeastOnce()).registerCloseable(registered.capture());
+        for(AutoCloseable closeable:registered.getAllValues()){
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.function.broadcast;
+
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@Category(ArchitectureIndependent.class)
+public class AbstractBroadcastJoinFlatMapFunctionTest{
+
+    @Test
+    public void tableIsReleasedOnlyOnce() throws Exception{
+        JoinTable table=mock(JoinTable.class);
+        AbstractBroadcastJoinFlatMapFunction.TableRelease release=new AbstractBroadcastJoinFlatMapFunction.TableRelease(table);
+        release.close();
+        release.close();
+        verify(table,times(1)).close();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.window;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.sql.execute.WindowFunction;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.UserType;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.sql.execute.operations.window.FrameDefinition;
+import com.splicemachine.derby.impl.sql.execute.operations.window.WindowAggregator;
+import com.splicemachine.derby.impl.sql.execute.operations.window.WindowAggregatorImpl;
+import com.splicemachine.derby.impl.sql.execute.operations.window.function.CountAggregator;
+import com.splicemachine.derby.impl.sql.execute.operations.window.function.MaxMinAggregator;
+import com.splicemachine.derby.impl.sql.execute.operations.window.function.SumAggregator;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link BaseFrameBuffer}, comparing the results of sliding window frames against
+ * the same aggregates computed from scratch for every row.
+ */
+@Category(ArchitectureIndependent.class)
+public class FrameBufferTest {
+    private static final int ROWS = 0;
+    private static final int UNBOUNDED_PRECEDING = 0;
+    private static final int PRECEDING = 1;
+    private static final int CURRENT_ROW = 2;
+    private static final int FOLLOWING = 3;
+
+    // columns: 1 = input value, 2 = result, 3 = window function
+    private static final int[] INPUT_COLUMNS = {1};
+    private static final int RESULT_COLUMN = 2;
+    private static final int FUNCTION_COLUMN = 3;
+
+    @Test
+    public void slidingSumMatchesRecomputedSum() throws Exception {
+        List<Integer> values = randomValues(1000, new Random(0L));
+        List<DataValueDescriptor> results = evaluate(new SumAggregator(), new SQLInteger(), values, 2, 1);
+        for (int i = 0; i < values.size(); i++) {
+            Integer expected = null;
+            for (int j = Math.max(0, i - 2); j <= Math.min(values.size() - 1, i + 1); j++) {
+                Integer v = values.get(j);
+                if (v != null)
+                    expected = expected == null ? v : expected + v;
+            }
+            assertResult(i, expected, results.get(i));
+        }
+    }
+
+    @Test
+    public void slidingMaxMatchesRecomputedMax() throws Exception {
+        checkMaxMin(true);
+    }
+
+    @Test
+    public void slidingMinMatchesRecomputedMin() throws Exception {
+        checkMaxMin(false);
+    }
+
+    @Test
+    public void runningCountCountsEveryRow() throws Exception {
+        List<Integer> values = randomValues(300, new Random(1L));
+        FrameDefinition frame = new FrameDefinition(ROWS, UNBOUNDED_PRECEDING, 0, CURRENT_ROW, 0);
+        List<DataValueDescriptor> results = evaluate(new CountAggregator(), new SQLLongint(), values, frame);
+        for (int i = 0; i < values.size(); i++) {
+            Assert.assertEquals("Incorrect count for row " + i, i + 1, results.get(i).getLong());
+        }
+    }
+
+    @Test
+    public void rowsAreReturnedBeforeThePartitionIsRead() throws Exception {
+        List<Integer> values = randomValues(100, new Random(2L));
+        CountingIterator source = new CountingIterator(rows(values, new SQLInteger()));
+        FrameDefinition frame = new FrameDefinition(ROWS, PRECEDING, 1, FOLLOWING, 1);
+        WindowFrameBuffer frameBuffer = frameBuffer(new SumAggregator(), new SQLInteger(), source, frame);
+
+        Assert.assertTrue(frameBuffer.hasNext());
+        frameBuffer.next();
+        Assert.assertEquals("The first row should only need the row following it", 2, source.read);
+        frameBuffer.next();
+        Assert.assertEquals(3, source.read);
+
+        int returned = 2;
+        while (frameBuffer.hasNext()) {
+            frameBuffer.next();
+            returned++;
+        }
+        Assert.assertEquals(values.size(), returned);
+        Assert.assertEquals(values.size(), source.read);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private void checkMaxMin(boolean isMax) throws Exception {
+        List<Integer> values = randomValues(1000, new Random(isMax ? 3L : 4L));
+        MaxMinAggregator function = new MaxMinAggregator();
+        function.setup(null, isMax ? "MAX" : "MIN", null, null);
+        List<DataValueDescriptor> results = evaluate(function, new SQLInteger(), values, 5, 2);
+        for (int i = 0; i < values.size(); i++) {
+            Integer expected = null;
+            for (int j = Math.max(0, i - 5); j <= Math.min(values.size() - 1, i + 2); j++) {
+                Integer v = values.get(j);
+                if (v != null && (expected == null || (isMax ? v > expected : v < expected)))
+                    expected = v;
+            }
+            assertResult(i, expected, results.get(i));
+        }
+    }
+
+    private static void assertResult(int row, Integer expected, DataValueDescriptor actual) throws Exception {
+        if (expected == null)
+            Assert.assertTrue("Expected null for row " + row + ", got " + actual, actual.isNull());
+        else
+            Assert.assertEquals("Incorrect result for row " + row, expected.intValue(), actual.getInt());
+    }
+
+    private static List<Integer> randomValues(int count, Random random) {
+        List<Integer> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(random.nextInt(10) == 0 ? null : random.nextInt(1000) - 500);
+        }
+        return values;
+    }
+
+    private static List<ExecRow> rows(List<Integer> values, DataValueDescriptor resultType) throws Exception {
+        List<ExecRow> rows = new ArrayList<>(values.size());
+        for (Integer value : values) {
+            ExecRow row = new ValueRow(3);
+            row.setColumn(1, value == null ? new SQLInteger() : new SQLInteger(value));
+            row.setColumn(RESULT_COLUMN, resultType.getNewNull());
+            row.setColumn(FUNCTION_COLUMN, new UserType());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<DataValueDescriptor> evaluate(WindowFunction function, DataValueDescriptor resultType,
+                                                      List<Integer> values, int preceding, int following) throws Exception {
+        FrameDefinition frame = new FrameDefinition(ROWS, PRECEDING, preceding, FOLLOWING, following);
+        return evaluate(function, resultType, values, frame);
+    }
+
+    private static List<DataValueDescriptor> evaluate(WindowFunction function, DataValueDescriptor resultType,
+                                                      List<Integer> values, FrameDefinition frame) throws Exception {
+        WindowFrameBuffer frameBuffer = frameBuffer(function, resultType, rows(values, resultType).iterator(), frame);
+        List<DataValueDescriptor> results = new ArrayList<>(values.size());
+        while (frameBuffer.hasNext()) {
+            results.add(frameBuffer.next().getColumn(RESULT_COLUMN));
+        }
+        Assert.assertEquals("Incorrect number of rows returned", values.size(), results.size());
+        return results;
+    }
+
+    private static WindowFrameBuffer frameBuffer(WindowFunction function, DataValueDescriptor resultType,
+                                                 Iterator<ExecRow> source, FrameDefinition frame) throws Exception {
+        WindowAggregator aggregator = new WindowAggregatorImpl(function, FUNCTION_COLUMN, INPUT_COLUMNS, RESULT_COLUMN, frame);
+        ExecRow template = new ValueRow(3);
+        template.setColumn(1, new SQLInteger());
+        template.setColumn(RESULT_COLUMN, resultType.getNewNull());
+        template.setColumn(FUNCTION_COLUMN, new UserType());
+        return BaseFrameBuffer.createFrameBuffer(new WindowAggregator[]{aggregator}, source, frame, new int[]{0}, template);
+    }
+
+    private static class CountingIterator implements Iterator<ExecRow> {
+        private final Iterator<ExecRow> delegate;
+        private int read;
+
+        CountingIterator(List<ExecRow> rows) {
+            this.delegate = rows.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public ExecRow next() {
+            read++;
+            return delegate.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
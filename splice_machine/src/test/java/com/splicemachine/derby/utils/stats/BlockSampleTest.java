@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.utils.stats;
+
+import com.splicemachine.db.iapi.stats.SampledColumnStatisticsImpl;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(ArchitectureIndependent.class)
+public class BlockSampleTest{
+
+    @Test
+    public void selectsSpreadOfBlocks() throws Exception{
+        BlockSample sample=BlockSample.select(100,0.1d,12l);
+        Assert.assertEquals(10,sample.sampledBlocks());
+        Assert.assertEquals(0.1d,sample.getSampleFraction(),1e-9);
+        int last=-1;
+        int block;
+        int count=0;
+        while((block=sample.nextBlock())>=0){
+            Assert.assertTrue("Blocks out of order",block>last);
+            Assert.assertTrue("Block out of range",block<100);
+            //one block from each interval of 10
+            Assert.assertEquals(count,block/10);
+            last=block;
+            count++;
+        }
+        Assert.assertEquals(10,count);
+    }
+
+    @Test
+    public void selectionIsDeterministic() throws Exception{
+        Assert.assertArrayEquals(blocks(BlockSample.select(57,0.2d,99l)),blocks(BlockSample.select(57,0.2d,99l)));
+    }
+
+    @Test
+    public void alwaysSamplesAtLeastOneBlock() throws Exception{
+        BlockSample sample=BlockSample.select(3,0.01d,1l);
+        Assert.assertEquals(1,sample.sampledBlocks());
+        Assert.assertTrue(Double.isNaN(sample.relativeStandardError()));
+    }
+
+    @Test
+    public void fullSampleHasNoError() throws Exception{
+        BlockSample sample=BlockSample.select(4,1d,1l);
+        fill(sample,10,20,30,40);
+        Assert.assertEquals(100l,sample.estimatedRowCount());
+        Assert.assertEquals(0d,sample.relativeStandardError(),0d);
+    }
+
+    @Test
+    public void estimatesRowCountFromSample() throws Exception{
+        BlockSample sample=BlockSample.select(40,0.1d,7l);
+        fill(sample,100,100,100,100);
+        Assert.assertEquals(400l,sample.getSampleSize());
+        Assert.assertEquals(4000l,sample.estimatedRowCount());
+        Assert.assertEquals(0d,sample.relativeStandardError(),0d);
+
+        sample=BlockSample.select(40,0.1d,7l);
+        fill(sample,50,150,50,150);
+        Assert.assertEquals(4000l,sample.estimatedRowCount());
+        double error=sample.relativeStandardError();
+        Assert.assertTrue("Expected a positive error, but was "+error,error>0d && error<1d);
+    }
+
+    @Test
+    public void uniqueColumnCardinalityScalesLinearly() throws Exception{
+        long estimate=SampledColumnStatisticsImpl.scaleCardinality(1000l,1000l,0.1d);
+        Assert.assertEquals(10000d,estimate,100d);
+    }
+
+    @Test
+    public void lowCardinalityColumnDoesNotScale() throws Exception{
+        long estimate=SampledColumnStatisticsImpl.scaleCardinality(10l,1000l,0.1d);
+        Assert.assertEquals(10l,estimate);
+    }
+
+    private static void fill(BlockSample sample,int...rowsPerBlock){
+        for(int rows:rowsPerBlock){
+            Assert.assertTrue(sample.nextBlock()>=0);
+            for(int i=0;i<rows;i++){
+                sample.recordRow();
+            }
+        }
+        Assert.assertEquals(-1,sample.nextBlock());
+    }
+
+    private static int[] blocks(BlockSample sample){
+        int[] blocks=new int[sample.sampledBlocks()];
+        for(int i=0;i<blocks.length;i++){
+            blocks[i]=sample.nextBlock();
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.foreignkeys;
+
+import com.splicemachine.derby.test.framework.SpliceNetConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Measures the cost of foreign key checks on bulk inserts, by loading the same rows into a child table which
+ * references a small parent table and into an otherwise identical table without the foreign key.
+ *
+ * Requires a running server (see {@link SpliceNetConnection}). The tables are created in the FK_BENCHMARK schema,
+ * which is dropped when the benchmark finishes.
+ *
+ * Usage: {@code ForeignKeyInsertBenchmark [child rows] [parent rows] [iterations]}.
+ */
+public class ForeignKeyInsertBenchmark{
+    private static final String SCHEMA="FK_BENCHMARK";
+
+    public static void main(String...args) throws Exception{
+        int numChildRows=args.length>0?Integer.parseInt(args[0]):1000000;
+        int numParentRows=args.length>1?Integer.parseInt(args[1]):100;
+        int iterations=args.length>2?Integer.parseInt(args[2]):5;
+
+        try(Connection conn=SpliceNetConnection.getConnection()){
+            try(Statement s=conn.createStatement()){
+                dropSchema(s);
+                s.execute("create schema "+SCHEMA);
+                s.execute("create table "+SCHEMA+".parent(id int primary key, name varchar(20))");
+                s.execute("create table "+SCHEMA+".staging(id int, parent_id int)");
+                s.execute("create table "+SCHEMA+".child(id int, parent_id int references "+SCHEMA+".parent(id))");
+                s.execute("create table "+SCHEMA+".child_no_fk(id int, parent_id int)");
+            }
+            load(conn,numParentRows,numChildRows);
+
+            for(int i=0;i<iterations;i++){
+                long noFkTime=timeInsert(conn,"child_no_fk");
+                long fkTime=timeInsert(conn,"child");
+                System.out.printf("iteration=%d childRows=%d parentRows=%d noForeignKey rows/sec=%.0f foreignKey rows/sec=%.0f overhead=%.1f%%%n",
+                        i,numChildRows,numParentRows,numChildRows/(noFkTime/1e9d),numChildRows/(fkTime/1e9d),
+                        100d*(fkTime-noFkTime)/noFkTime);
+            }
+
+            try(Statement s=conn.createStatement()){
+                dropSchema(s);
+            }
+        }
+    }
+
+    private static void load(Connection conn,int numParentRows,int numChildRows) throws SQLException{
+        try(PreparedStatement ps=conn.prepareStatement("insert into "+SCHEMA+".parent values (?,?)")){
+            for(int i=0;i<numParentRows;i++){
+                ps.setInt(1,i);
+                ps.setString(2,"parent"+i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        Random random=new Random(0l);
+        try(PreparedStatement ps=conn.prepareStatement("insert into "+SCHEMA+".staging values (?,?)")){
+            for(int i=0;i<numChildRows;i++){
+                ps.setInt(1,i);
+                ps.setInt(2,random.nextInt(numParentRows));
+                ps.addBatch();
+                if(i%10000==9999)
+                    ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static long timeInsert(Connection conn,String table) throws SQLException{
+        try(Statement s=conn.createStatement()){
+            s.execute("delete from "+SCHEMA+"."+table);
+            long start=System.nanoTime();
+            s.executeUpdate("insert into "+SCHEMA+"."+table+" select * from "+SCHEMA+".staging");
+            return System.nanoTime()-start;
+        }
+    }
+
+    private static void dropSchema(Statement s){
+        for(String table:new String[]{"child","child_no_fk","staging","parent"}){
+            try{
+                s.execute("drop table "+SCHEMA+"."+table);
+            }catch(SQLException ignored){
+                //the table doesn't exist yet
+            }
+        }
+        try{
+            s.execute("drop schema "+SCHEMA+" restrict");
+        }catch(SQLException ignored){
+            //the schema doesn't exist yet
+        }
+    }
+}
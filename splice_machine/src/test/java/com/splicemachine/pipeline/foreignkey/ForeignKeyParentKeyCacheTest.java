@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.foreignkey;
+
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@Category(ArchitectureIndependent.class)
+public class ForeignKeyParentKeyCacheTest{
+
+    @Test
+    public void confirmationsAreComparedByContent() throws Exception{
+        ForeignKeyParentKeyCache cache=new ForeignKeyParentKeyCache(10);
+        cache.confirm(1l,Collections.singletonList(Bytes.toBytes("parent")),cache.invalidationMarker());
+        Assert.assertTrue(cache.isConfirmed(1l,Bytes.toBytes("parent")));
+        Assert.assertFalse(cache.isConfirmed(1l,Bytes.toBytes("other")));
+    }
+
+    @Test
+    public void confirmationsAreNotSharedBetweenTransactions() throws Exception{
+        ForeignKeyParentKeyCache cache=new ForeignKeyParentKeyCache(10);
+        cache.confirm(1l,Collections.singletonList(Bytes.toBytes("parent")),cache.invalidationMarker());
+        Assert.assertFalse(cache.isConfirmed(2l,Bytes.toBytes("parent")));
+    }
+
+    @Test
+    public void invalidationRemovesConfirmation() throws Exception{
+        ForeignKeyParentKeyCache cache=new ForeignKeyParentKeyCache(10);
+        cache.confirm(1l,Arrays.asList(Bytes.toBytes("parent"),Bytes.toBytes("other")),cache.invalidationMarker());
+        cache.invalidate(Bytes.toBytes("parent"));
+        Assert.assertFalse(cache.isConfirmed(1l,Bytes.toBytes("parent")));
+        Assert.assertTrue(cache.isConfirmed(1l,Bytes.toBytes("other")));
+    }
+
+    @Test
+    public void invalidationDuringLookupPreventsConfirmation() throws Exception{
+        ForeignKeyParentKeyCache cache=new ForeignKeyParentKeyCache(10);
+        long marker=cache.invalidationMarker();
+        //the parent is deleted while the child is still reading it
+        cache.invalidate(Bytes.toBytes("parent"));
+        cache.confirm(1l,Collections.singletonList(Bytes.toBytes("parent")),marker);
+        Assert.assertFalse(cache.isConfirmed(1l,Bytes.toBytes("parent")));
+    }
+
+    @Test
+    public void cachesAreSharedPerParentConglomerate() throws Exception{
+        ForeignKeyParentKeyCache cache=ForeignKeyParentKeyCache.forParent("cachesAreSharedPerParent",10);
+        Assert.assertSame(cache,ForeignKeyParentKeyCache.forParent("cachesAreSharedPerParent",10));
+        Assert.assertNotSame(cache,ForeignKeyParentKeyCache.forParent("someOtherParent",10));
+        Assert.assertNull(ForeignKeyParentKeyCache.forParent("disabledParent",0));
+
+        cache.confirm(1l,Collections.singletonList(Bytes.toBytes("parent")),cache.invalidationMarker());
+        ForeignKeyParentKeyCache.invalidate("cachesAreSharedPerParent",Bytes.toBytes("parent"));
+        Assert.assertFalse(cache.isConfirmed(1l,Bytes.toBytes("parent")));
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception{
+        ForeignKeyParentKeyCache cache=new ForeignKeyParentKeyCache(10);
+        for(int i=0;i<100;i++){
+            cache.confirm(1l,Collections.singletonList(Bytes.toBytes(i)),cache.invalidationMarker());
+        }
+        Assert.assertTrue("Cache grew past its bound: "+cache.size(),cache.size()<=10);
+    }
+
+    @Test
+    public void cacheIsDroppedOnceNothingReferencesIt() throws Exception{
+        ForeignKeyParentKeyCache cache=ForeignKeyParentKeyCache.forParent("releasedParent",10);
+        Assert.assertSame(cache,ForeignKeyParentKeyCache.forParent("releasedParent",10));
+        ForeignKeyParentKeyCache.release("releasedParent",cache);
+        Assert.assertSame("Cache dropped while still referenced",cache,ForeignKeyParentKeyCache.forParent("releasedParent",10));
+
+        ForeignKeyParentKeyCache.release("releasedParent",cache);
+        ForeignKeyParentKeyCache.release("releasedParent",cache);
+        Assert.assertNotSame("Cache not dropped",cache,ForeignKeyParentKeyCache.forParent("releasedParent",10));
+    }
+
+    @Test
+    public void droppingTheParentTableEvictsItsCache() throws Exception{
+        ForeignKeyParentKeyCache cache=ForeignKeyParentKeyCache.forParent("1184",10);
+        cache.confirm(1l,Collections.singletonList(Bytes.toBytes("parent")),cache.invalidationMarker());
+        ForeignKeyParentKeyCache.evict(1184l);
+        Assert.assertFalse(cache.isConfirmed(1l,Bytes.toBytes("parent")));
+        Assert.assertNotSame(cache,ForeignKeyParentKeyCache.forParent("1184",10));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.splicemachine.si.api.filter;
+
+import com.splicemachine.storage.DataCell;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A transactional filter which is able to determine visibility for an entire batch of rows
+ * at once, rather than one cell at a time.
+ *
+ * Filtering a batch allows an implementation to look up each distinct transaction referenced
+ * by the batch exactly once, no matter how many cells were written by it.
+ */
+public interface BatchTxnFilter{
+
+    /**
+     * Determine which user data cells in a batch of rows are visible.
+     *
+     * On return, bit {@code i} of {@code visibleCells[r]} is set if and only if the {@code i}th cell of
+     * row {@code r} is a user data cell which is visible to the reading transaction (i.e. one which the
+     * per-cell {@link TxnFilter#filterCell(DataCell)} would have included). All other cells (commit timestamps,
+     * tombstones, and invisible data) are left unset.
+     *
+     * Read resolution is performed exactly as if each cell had been filtered individually.
+     *
+     * @param rows the rows to filter, each row being all the cells for a single row key, in scan order.
+     * @param numRows the number of entries in {@code rows} to filter
+     * @param visibleCells the destination for the visibility bitmaps, one for each row. Must hold at
+     *                     least {@code numRows} entries.
+     * @throws IOException if transaction information cannot be obtained
+     */
+    void filterRows(List<List<DataCell>> rows,int numRows,BitSet[] visibleCells) throws IOException;
+}
@@ -16,9 +16,10 @@
 package com.splicemachine.si.api.txn;
 
 import javax.management.MXBean;
+import java.util.Map;
 
 /**
- * JMX Hook for monitoring the behavior of the Completed Transaction Cache.
+ * JMX Hook for monitoring the behavior of the shared Transaction Cache.
  *
  * @author Scott Fines
  * Date: 7/1/14
@@ -26,4 +27,34 @@ import javax.management.MXBean;
 @MXBean
 public interface TransactionCacheManagement {
 
+    /**
+     * @return the number of transaction lookups which were answered from the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of transaction lookups which had to go to the transaction store
+     */
+    long getMissCount();
+
+    /**
+     * @return the fraction of all lookups which were answered from the cache
+     */
+    double getHitRate();
+
+    /**
+     * @return the fraction of lookups which were answered from the cache, for each table
+     * which has been read through the cache
+     */
+    Map<String,Double> getTableHitRates();
+
+    /**
+     * @return the number of transactions which were pushed out of the cache to make room for others
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the maximum number of transactions the cache can hold
+     */
+    long getCapacity();
 }
@@ -16,13 +16,16 @@
 package com.splicemachine.si.impl;
 
 import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongByteOpenHashMap;
 import com.carrotsearch.hppc.LongOpenHashSet;
+import com.splicemachine.si.api.filter.BatchTxnFilter;
 import com.splicemachine.si.api.filter.RowAccumulator;
 import com.splicemachine.si.api.filter.TxnFilter;
 import com.splicemachine.si.api.readresolve.ReadResolver;
 import com.splicemachine.si.api.txn.TxnSupplier;
 import com.splicemachine.si.api.txn.TxnView;
 import com.splicemachine.si.impl.store.ActiveTxnCacheSupplier;
+import com.splicemachine.si.impl.store.SharedTxnCache;
 import com.splicemachine.si.impl.txn.CommittedTxn;
 import com.splicemachine.storage.CellType;
 import com.splicemachine.storage.DataCell;
@@ -30,6 +33,8 @@ import com.splicemachine.storage.DataFilter;
 import com.splicemachine.utils.ByteSlice;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Transaction filter which performs basic transactional filtering (i.e. row visibility, tombstones,
@@ -38,7 +43,18 @@ import java.io.IOException;
  * @author Scott Fines
  *         Date: 6/23/14
  */
-public class SimpleTxnFilter implements TxnFilter{
+public class SimpleTxnFilter implements TxnFilter, BatchTxnFilter{
+    /*
+     * Flags for the per-transaction state held in batchTxnStates
+     */
+    private static final byte VISIBLE=0x01;
+    private static final byte FINAL=0x02;
+    /*
+     * The maximum number of final transactions whose state we remember between batches.
+     * Once exceeded, the remembered states are dropped and rebuilt from the transaction store.
+     */
+    private static final int MAX_REMEMBERED_STATES=4096;
+
     private final TxnSupplier transactionStore;
     private final TxnView myTxn;
     private final ReadResolver readResolver;
@@ -48,6 +64,9 @@ public class SimpleTxnFilter implements TxnFilter{
     private final LongArrayList antiTombstonedTxnRows=new LongArrayList(1);
     private final ByteSlice rowKey=new ByteSlice();
     private final String tableName;
+    //per batch fields
+    private final LongByteOpenHashMap batchTxnStates=new LongByteOpenHashMap();
+    private final LongArrayList unresolvedTxnIds=new LongArrayList();
 
     /*
      * The most common case for databases is insert-only--that is, that there
@@ -61,13 +80,28 @@ public class SimpleTxnFilter implements TxnFilter{
      */
     private TxnView currentTxn;
 
-    @SuppressWarnings("unchecked")
     public SimpleTxnFilter(String tableName,
                            TxnView myTxn,
                            ReadResolver readResolver,
                            TxnSupplier baseSupplier){
+        this(tableName,myTxn,readResolver,baseSupplier,null);
+    }
+
+    /**
+     * @param txnCache the server's shared transaction cache, or {@code null} to cache transactions
+     *                 privately for this filter only.
+     */
+    @SuppressWarnings("unchecked")
+    public SimpleTxnFilter(String tableName,
+                           TxnView myTxn,
+                           ReadResolver readResolver,
+                           TxnSupplier baseSupplier,
+                           SharedTxnCache txnCache){
         assert readResolver!=null;
-        this.transactionStore = new ActiveTxnCacheSupplier(baseSupplier,1024); //TODO -sf- configure
+        if(txnCache!=null)
+            this.transactionStore = txnCache.supplier(tableName,myTxn,baseSupplier);
+        else
+            this.transactionStore = new ActiveTxnCacheSupplier(baseSupplier,1024);
         this.tableName=tableName;
         this.myTxn=myTxn;
         this.readResolver=readResolver;
@@ -111,6 +145,60 @@ public class SimpleTxnFilter implements TxnFilter{
         }
     }
 
+    @Override
+    public void filterRows(List<List<DataCell>> rows,int numRows,BitSet[] visibleCells) throws IOException{
+        /*
+         * First, cache any commit timestamps present in the batch, and collect the distinct set of
+         * transactions which wrote the remaining cells. Then look up each of those transactions
+         * once, so that the per-row pass below is just a map lookup per cell.
+         */
+        try{
+            collectBatchTransactions(rows,numRows);
+            resolveBatchTransactions();
+
+            for(int r=0;r<numRows;r++){
+                nextRow();
+                List<DataCell> row=rows.get(r);
+                BitSet visible=visibleCells[r];
+                visible.clear();
+                int size=row.size();
+                for(int i=0;i<size;i++){
+                    DataCell cell=row.get(i);
+                    CellType type=cell.dataType();
+                    if(type==CellType.COMMIT_TIMESTAMP){
+                        visitedTxnIds.add(cell.version());
+                        continue;
+                    }
+                    if(type==CellType.FOREIGN_KEY_COUNTER) continue;
+
+                    long ts=cell.version();
+                    byte state=batchTxnStates.get(ts);
+                    if(visitedTxnIds.add(ts) && (state&FINAL)!=0)
+                        doResolve(cell,ts);
+                    switch(type){
+                        case TOMBSTONE:
+                            if((state&VISIBLE)!=0 && !antiTombstonedTxnRows.contains(ts))
+                                tombstonedTxnRows.add(ts);
+                            break;
+                        case ANTI_TOMBSTONE:
+                            if((state&VISIBLE)!=0 && !tombstonedTxnRows.contains(ts))
+                                antiTombstonedTxnRows.add(ts);
+                            break;
+                        case USER_DATA:
+                            if((state&VISIBLE)!=0 && !isCoveredByTombstone(ts))
+                                visible.set(i);
+                            break;
+                        default:
+                            throw new AssertionError("Unexpected Data type: "+type);
+                    }
+                }
+            }
+            nextRow();
+        }finally{
+            forgetActiveTransactions();
+        }
+    }
+
     @Override
     public DataCell produceAccumulatedResult(){
         return null;
@@ -246,9 +334,84 @@ public class SimpleTxnFilter implements TxnFilter{
         }
     }
 
+    private void collectBatchTransactions(List<List<DataCell>> rows,int numRows) throws IOException{
+        if(batchTxnStates.size()>MAX_REMEMBERED_STATES)
+            batchTxnStates.clear();
+        unresolvedTxnIds.clear();
+        for(int r=0;r<numRows;r++){
+            List<DataCell> row=rows.get(r);
+            int size=row.size();
+            for(int i=0;i<size;i++){
+                DataCell cell=row.get(i);
+                CellType type=cell.dataType();
+                if(type==CellType.FOREIGN_KEY_COUNTER) continue;
+                long ts=cell.version();
+                if(type==CellType.COMMIT_TIMESTAMP){
+                    //no need to cache a transaction whose final state we already know
+                    if(!batchTxnStates.containsKey(ts))
+                        cacheCommitTimestamp(cell);
+                }else{
+                    if(!batchTxnStates.containsKey(ts)){
+                        batchTxnStates.put(ts,(byte)0);
+                        unresolvedTxnIds.add(ts);
+                    }
+                }
+            }
+        }
+    }
+
+    private void resolveBatchTransactions() throws IOException{
+        long[] txnIds=unresolvedTxnIds.buffer;
+        int size=unresolvedTxnIds.size();
+        for(int i=0;i<size;i++){
+            long txnId=txnIds[i];
+            TxnView t=fetchTransaction(txnId);
+            assert t!=null:"Could not find a transaction for id "+txnId;
+            byte state=0;
+            if(myTxn.canSee(t))
+                state|=VISIBLE;
+            if(t.getEffectiveState().isFinal())
+                state|=FINAL;
+            batchTxnStates.put(txnId,state);
+        }
+    }
+
+    private void forgetActiveTransactions(){
+        /*
+         * A transaction which is still active may change state before the next batch,
+         * so we only remember the states of final transactions between batches.
+         */
+        long[] txnIds=unresolvedTxnIds.buffer;
+        int size=unresolvedTxnIds.size();
+        for(int i=0;i<size;i++){
+            if((batchTxnStates.get(txnIds[i])&FINAL)==0)
+                batchTxnStates.remove(txnIds[i]);
+        }
+        unresolvedTxnIds.clear();
+    }
+
+    private boolean isCoveredByTombstone(long timestamp){
+        //only visible tombstones and anti-tombstones are ever added to the row caches
+        long[] tombstones=tombstonedTxnRows.buffer;
+        int tombstoneSize=tombstonedTxnRows.size();
+        for(int i=0;i<tombstoneSize;i++){
+            if(timestamp<=tombstones[i]) return true;
+        }
+        long[] antiTombstones=antiTombstonedTxnRows.buffer;
+        int antiTombstoneSize=antiTombstonedTxnRows.size();
+        for(int i=0;i<antiTombstoneSize;i++){
+            if(timestamp<antiTombstones[i]) return true;
+        }
+        return false;
+    }
+
     private void ensureTransactionIsCached(DataCell data) throws IOException{
+        visitedTxnIds.add(data.version());
+        cacheCommitTimestamp(data);
+    }
+
+    private void cacheCommitTimestamp(DataCell data) throws IOException{
         long txnId=data.version();//this.dataStore.getOpFactory().getTimestamp(data);
-        visitedTxnIds.add(txnId);
         if(!transactionStore.transactionCached(txnId)){
 			/*
 			 * We do not have a cache entry for this transaction, so we want
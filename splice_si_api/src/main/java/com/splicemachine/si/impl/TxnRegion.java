@@ -27,6 +27,7 @@ import com.splicemachine.si.api.txn.TxnSupplier;
 import com.splicemachine.si.api.txn.TxnView;
 import com.splicemachine.si.impl.filter.HRowAccumulator;
 import com.splicemachine.si.impl.filter.PackedTxnFilter;
+import com.splicemachine.si.impl.store.SharedTxnCache;
 import com.splicemachine.storage.*;
 import com.splicemachine.utils.ByteSlice;
 import org.spark_project.guava.collect.Iterators;
@@ -46,6 +47,7 @@ public class TxnRegion<InternalScanner> implements TransactionalRegion<InternalS
     private final TxnSupplier txnSupplier;
     private final Transactor transactor;
     private final TxnOperationFactory opFactory;
+    private final SharedTxnCache txnCache;
     private Partition region;
     private String tableName;
 
@@ -55,12 +57,22 @@ public class TxnRegion<InternalScanner> implements TransactionalRegion<InternalS
                      ReadResolver readResolver,
                      TxnSupplier txnSupplier,
                      Transactor transactor,TxnOperationFactory opFactory){
+        this(region,rollForward,readResolver,txnSupplier,transactor,opFactory,null);
+    }
+
+    public TxnRegion(Partition region,
+                     RollForward rollForward,
+                     ReadResolver readResolver,
+                     TxnSupplier txnSupplier,
+                     Transactor transactor,TxnOperationFactory opFactory,
+                     SharedTxnCache txnCache){
         this.region=region;
         this.rollForward=rollForward;
         this.readResolver=readResolver;
         this.txnSupplier=txnSupplier;
         this.transactor=transactor;
         this.opFactory=opFactory;
+        this.txnCache=txnCache;
         if(region!=null){
             this.tableName=region.getTableName();
         }
@@ -68,7 +80,7 @@ public class TxnRegion<InternalScanner> implements TransactionalRegion<InternalS
 
     @Override
     public TxnFilter unpackedFilter(TxnView txn) throws IOException{
-        return new SimpleTxnFilter(tableName,txn,readResolver,txnSupplier);
+        return new SimpleTxnFilter(tableName,txn,readResolver,txnSupplier,txnCache);
     }
 
     @Override
@@ -36,6 +36,7 @@ import com.splicemachine.si.api.txn.TxnStore;
 import com.splicemachine.si.api.txn.TxnSupplier;
 import com.splicemachine.si.impl.ClientTxnLifecycleManager;
 import com.splicemachine.si.impl.TxnRegion;
+import com.splicemachine.si.impl.store.SharedTxnCache;
 import com.splicemachine.si.impl.readresolve.NoOpReadResolver;
 import com.splicemachine.si.impl.rollforward.NoopRollForward;
 import com.splicemachine.si.impl.rollforward.RollForwardStatus;
@@ -48,6 +49,14 @@ import com.splicemachine.timestamp.api.TimestampSource;
 import com.splicemachine.utils.GreenLight;
 import org.apache.log4j.Logger;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class SIDriver {
     private static final Logger LOG = Logger.getLogger("splice.uncaught");
 
@@ -89,6 +98,8 @@ public class SIDriver {
     private final OperationFactory baseOpFactory;
     private final PartitionInfoCache partitionInfoCache;
     private final SnowflakeFactory snowflakeFactory;
+    private final SharedTxnCache txnCache;
+    private final AtomicBoolean jmxRegistered = new AtomicBoolean(false);
 
     public SIDriver(SIEnvironment env){
         this.tableFactory = env.tableFactory();
@@ -116,7 +127,11 @@ public class SIDriver {
         clientTxnLifecycleManager.setTxnStore(this.txnStore);
         clientTxnLifecycleManager.setKeepAliveScheduler(env.keepAliveScheduler());
         this.lifecycleManager =clientTxnLifecycleManager;
-        readController = new SITransactionReadController(txnSupplier);
+        this.txnCache = new SharedTxnCache(config.getSharedTxnCacheMemory(),
+                config.getCompletedTxnConcurrency(),
+                config.getSharedTxnCacheActiveExpiration(),
+                this.clock);
+        readController = new SITransactionReadController(txnSupplier,txnCache);
         readResolver = initializedReadResolver(config,env.keyedReadResolver());
         this.fileSystem = env.fileSystem();
         this.baseOpFactory = env.baseOperationFactory();
@@ -154,6 +169,20 @@ public class SIDriver {
         return txnSupplier;
     }
 
+    /**
+     * @return the transaction cache shared by all transactional reads on this server
+     */
+    public SharedTxnCache getSharedTxnCache(){
+        return txnCache;
+    }
+
+    public void registerJMX(MBeanServer mbs) throws MalformedObjectNameException, NotCompliantMBeanException, InstanceAlreadyExistsException, MBeanRegistrationException{
+        if(jmxRegistered.compareAndSet(false,true)){
+            ObjectName cacheName=new ObjectName("com.splicemachine.si.impl.store:type=TransactionCacheManagement");
+            mbs.registerMBean(txnCache,cacheName);
+        }
+    }
+
     public OperationStatusFactory getOperationStatusLib() {
         return operationStatusFactory;
     }
@@ -197,7 +226,8 @@ public class SIDriver {
                     getReadResolver(basePartition),
                     getTxnSupplier(),
                     getTransactor(),
-                    getOperationFactory());
+                    getOperationFactory(),
+                    txnCache);
         }else{
             return new TxnRegion(basePartition,
                     NoopRollForward.INSTANCE,
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.store;
+
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TransactionCacheManagement;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.api.txn.TxnView;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A transaction status cache which is shared by every transactional scan on a server.
+ * <p>
+ * Transactions are held in two separate tables, each keyed directly on the (primitive) transaction id:
+ * <ul>
+ *     <li>Completed (committed or rolled back) transactions can never change again, so they stay in the
+ *     cache until they are pushed out by memory pressure.</li>
+ *     <li>Active transactions are only kept for a short time (and get a much smaller share of memory),
+ *     since they will eventually complete. Moreover, an active transaction can only be handed to readers
+ *     which could not see it even if it had since committed. When a reader with begin timestamp {@code B}
+ *     sees a transaction as active, that transaction's commit timestamp (if it ever gets one) must be
+ *     larger than {@code B}, so the active view is correct for every snapshot reader which began at or
+ *     before {@code B}. Readers which use other isolation levels never share active transactions.
+ *     <p>
+ *     That argument only holds for readers outside of the transaction's own family: a parent sees the
+ *     writes of its committed children with READ_COMMITTED semantics, and a child committed under an active
+ *     parent is still active in effect. So an active transaction is never handed to a reader which shares a
+ *     top-level ancestor with it.</li>
+ * </ul>
+ * Each table is split into lock stripes of 4-way set-associative buckets, with CLOCK replacement within
+ * each bucket. Reads are optimistic, and only take the stripe lock if they race with a write.
+ * <p>
+ * The cache is accessed through per-scan suppliers (see {@link #supplier(String,TxnView,TxnSupplier)}),
+ * which also attribute hits and misses to the table being scanned.
+ * <p>
+ * This class is thread-safe.
+ */
+public class SharedTxnCache implements TransactionCacheManagement{
+    /*
+     * A rough figure for the heap cost of a single entry: the transaction view itself, plus
+     * the key and bookkeeping arrays.
+     */
+    static final int ESTIMATED_ENTRY_SIZE=128;
+    private static final int WAYS=4;
+    private static final String UNKNOWN_TABLE="unknown";
+    private static final long NO_FAMILY=0L; //completed transactions can be given to any reader
+
+    private final Table completed;
+    private final Table active;
+    private final long activeExpirationMillis;
+    private final Clock clock;
+
+    private final ConcurrentMap<String,TableCounters> tableCounters=new ConcurrentHashMap<>();
+    private final LongAdder evictions=new LongAdder();
+
+    /**
+     * @param maxMemory the (approximate) maximum number of bytes to hold in the cache
+     * @param concurrencyLevel the number of lock stripes to use (rounded up to a power of 2)
+     * @param activeExpirationMillis the maximum time to hold an active transaction in the cache
+     * @param clock the clock to use for expiring active transactions
+     */
+    public SharedTxnCache(long maxMemory,int concurrencyLevel,long activeExpirationMillis,Clock clock){
+        long maxEntries=Math.max(2*WAYS,maxMemory/ESTIMATED_ENTRY_SIZE);
+        int stripes=1;
+        while(stripes<concurrencyLevel)
+            stripes<<=1;
+        //active transactions are transient, so they get only a small share of the memory
+        long activeEntries=Math.max(WAYS,maxEntries/8);
+        this.completed=new Table(maxEntries-activeEntries,stripes);
+        this.active=new Table(activeEntries,stripes);
+        this.activeExpirationMillis=activeExpirationMillis;
+        this.clock=clock;
+    }
+
+    /**
+     * Get a supplier which reads through this cache on behalf of a single reader.
+     *
+     * @param tableName the table which is being read, for statistics purposes. May be null
+     * @param reader the transaction which is reading
+     * @param delegate the supplier to use when a transaction is not in the cache
+     * @return a supplier which reads through this cache. The returned supplier is not thread-safe,
+     * and should only be used by the reader it was created for.
+     */
+    public TxnSupplier supplier(String tableName,TxnView reader,TxnSupplier delegate){
+        String table=tableName==null?UNKNOWN_TABLE:tableName;
+        TableCounters counters=tableCounters.get(table);
+        if(counters==null){
+            counters=new TableCounters();
+            TableCounters old=tableCounters.putIfAbsent(table,counters);
+            if(old!=null) counters=old;
+        }
+        return new ReaderSupplier(reader,delegate,counters);
+    }
+
+    /* ****************************************************************************************************************/
+    /*JMX methods*/
+    @Override
+    public long getHitCount(){
+        long hits=0L;
+        for(TableCounters counters:tableCounters.values()){
+            hits+=counters.hits.sum();
+        }
+        return hits;
+    }
+
+    @Override
+    public long getMissCount(){
+        long misses=0L;
+        for(TableCounters counters:tableCounters.values()){
+            misses+=counters.misses.sum();
+        }
+        return misses;
+    }
+
+    @Override
+    public double getHitRate(){
+        return hitRate(getHitCount(),getMissCount());
+    }
+
+    @Override
+    public Map<String, Double> getTableHitRates(){
+        Map<String,Double> rates=new HashMap<>(tableCounters.size());
+        for(Map.Entry<String,TableCounters> entry:tableCounters.entrySet()){
+            TableCounters counters=entry.getValue();
+            rates.put(entry.getKey(),hitRate(counters.hits.sum(),counters.misses.sum()));
+        }
+        return rates;
+    }
+
+    @Override
+    public long getEvictionCount(){
+        return evictions.sum();
+    }
+
+    @Override
+    public long getCapacity(){
+        return completed.capacity()+active.capacity();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods and classes*/
+    private static double hitRate(long hits,long misses){
+        long requests=hits+misses;
+        return requests==0?0d:((double)hits)/requests;
+    }
+
+    /**
+     * @return the id of the top-level transaction (the child of the root) which {@code txn} belongs to
+     */
+    private static long family(TxnView txn){
+        TxnView t=txn;
+        TxnView parent;
+        while((parent=t.getParentTxnView())!=null && parent.getTxnId()>0)
+            t=parent;
+        return t.getTxnId();
+    }
+
+    private static int hash(long txnId){
+        long h=txnId*0x9E3779B97F4A7C15L;
+        return (int)(h^(h>>>32));
+    }
+
+    private static class TableCounters{
+        private final LongAdder hits=new LongAdder();
+        private final LongAdder misses=new LongAdder();
+    }
+
+    private class ReaderSupplier implements TxnSupplier{
+        private final TxnView reader;
+        private final TxnSupplier delegate;
+        private final TableCounters counters;
+        /*
+         * The largest begin timestamp which may use an active transaction cached by this reader,
+         * or -1 if this reader may not share active transactions at all
+         */
+        private final long activeBound;
+        private final long family;
+
+        ReaderSupplier(TxnView reader,TxnSupplier delegate,TableCounters counters){
+            this.reader=reader;
+            this.delegate=delegate;
+            this.counters=counters;
+            this.activeBound=reader.getIsolationLevel()==Txn.IsolationLevel.SNAPSHOT_ISOLATION
+                    ?reader.getBeginTimestamp():-1L;
+            this.family=family(reader);
+        }
+
+        @Override
+        public TxnView getTransaction(long txnId) throws IOException{
+            return getTransaction(txnId,false);
+        }
+
+        @Override
+        public TxnView getTransaction(long txnId,boolean getDestinationTables) throws IOException{
+            TxnView txn=getTransactionFromCache(txnId);
+            if(txn!=null) return txn;
+
+            txn=delegate.getTransaction(txnId,getDestinationTables);
+            if(txn==null) return null;
+            if(txnId<=0) return txn; //never cache the root transaction
+            if(txn.getEffectiveState().isFinal())
+                completed.put(txnId,txn,NO_FAMILY,Long.MAX_VALUE,Long.MAX_VALUE);
+            else if(activeBound>=0)
+                active.put(txnId,txn,family(txn),activeBound,clock.currentTimeMillis()+activeExpirationMillis);
+            return txn;
+        }
+
+        @Override
+        public boolean transactionCached(long txnId){
+            return lookup(txnId)!=null;
+        }
+
+        @Override
+        public void cache(TxnView toCache){
+            //only completed transactions can be safely shared with other readers
+            if(toCache.getEffectiveState().isFinal() && toCache.getTxnId()>0)
+                completed.put(toCache.getTxnId(),toCache,NO_FAMILY,Long.MAX_VALUE,Long.MAX_VALUE);
+        }
+
+        @Override
+        public TxnView getTransactionFromCache(long txnId){
+            TxnView txn=lookup(txnId);
+            if(txn!=null)
+                counters.hits.increment();
+            else
+                counters.misses.increment();
+            return txn;
+        }
+
+        private TxnView lookup(long txnId){
+            if(txnId<=0) return null; //never cache the root transaction
+            TxnView txn=completed.get(txnId,family,Long.MAX_VALUE,0L);
+            if(txn==null && activeBound>=0)
+                txn=active.get(txnId,family,activeBound,clock.currentTimeMillis());
+            return txn;
+        }
+    }
+
+    /**
+     * A bounded, lock-striped hash table of transactions. Each entry carries a bound, which is the
+     * largest reader timestamp the entry may be given to, the family of readers it may not be given to,
+     * and an expiration time.
+     */
+    private class Table{
+        private final Stripe[] stripes;
+        private final int stripeMask;
+        private final int stripeShift;
+
+        Table(long maxEntries,int numStripes){
+            this.stripes=new Stripe[numStripes];
+            this.stripeMask=numStripes-1;
+            this.stripeShift=Integer.numberOfTrailingZeros(numStripes);
+            long setsPerStripe=Math.max(1L,maxEntries/WAYS/numStripes);
+            //round down, so that we stay within our memory budget
+            int sets=1;
+            while(sets*2L<=setsPerStripe && sets<(1<<28)/WAYS)
+                sets<<=1;
+            for(int i=0;i<numStripes;i++){
+                stripes[i]=new Stripe(sets);
+            }
+        }
+
+        long capacity(){
+            return ((long)stripes.length)*stripes[0].keys.length;
+        }
+
+        TxnView get(long txnId,long readerFamily,long readerBound,long now){
+            int h=hash(txnId);
+            return stripes[h&stripeMask].get(txnId,h>>>stripeShift,readerFamily,readerBound,now);
+        }
+
+        void put(long txnId,TxnView txn,long family,long bound,long expiration){
+            int h=hash(txnId);
+            stripes[h&stripeMask].put(txnId,h>>>stripeShift,txn,family,bound,expiration);
+        }
+    }
+
+    private class Stripe{
+        private final StampedLock lock=new StampedLock();
+        private final int setMask;
+        private final long[] keys; //0 marks an empty slot
+        private final TxnView[] values;
+        private final long[] families;
+        private final long[] bounds;
+        private final long[] expirations;
+        private final byte[] referenced; //CLOCK bits. Updated racily, since they are only a hint
+        private final byte[] hands;
+
+        Stripe(int sets){
+            this.setMask=sets-1;
+            int size=sets*WAYS;
+            this.keys=new long[size];
+            this.values=new TxnView[size];
+            this.families=new long[size];
+            this.bounds=new long[size];
+            this.expirations=new long[size];
+            this.referenced=new byte[size];
+            this.hands=new byte[sets];
+        }
+
+        TxnView get(long txnId,int hash,long readerFamily,long readerBound,long now){
+            int start=(hash&setMask)*WAYS;
+            long stamp=lock.tryOptimisticRead();
+            int slot=find(txnId,start);
+            TxnView value=null;
+            long family=NO_FAMILY;
+            long bound=0L;
+            long expiration=0L;
+            if(slot>=0){
+                value=values[slot];
+                family=families[slot];
+                bound=bounds[slot];
+                expiration=expirations[slot];
+            }
+            if(!lock.validate(stamp)){
+                stamp=lock.readLock();
+                try{
+                    slot=find(txnId,start);
+                    if(slot<0) return null;
+                    value=values[slot];
+                    family=families[slot];
+                    bound=bounds[slot];
+                    expiration=expirations[slot];
+                }finally{
+                    lock.unlockRead(stamp);
+                }
+            }
+            if(slot<0 || value==null || family==readerFamily || readerBound>bound || now>=expiration)
+                return null;
+            referenced[slot]=1;
+            return value;
+        }
+
+        void put(long txnId,int hash,TxnView txn,long family,long bound,long expiration){
+            int setIndex=hash&setMask;
+            int start=setIndex*WAYS;
+            long stamp=lock.writeLock();
+            try{
+                int slot=find(txnId,start);
+                if(slot>=0){
+                    /*
+                     * Seeing the transaction as active again only makes the older observation
+                     * more certain, so keep the larger of the two bounds.
+                     */
+                    values[slot]=txn;
+                    families[slot]=family;
+                    bounds[slot]=Math.max(bound,bounds[slot]);
+                    expirations[slot]=expiration;
+                    return;
+                }
+                slot=victim(setIndex,start);
+                if(keys[slot]!=0)
+                    evictions.increment();
+                keys[slot]=txnId;
+                values[slot]=txn;
+                families[slot]=family;
+                bounds[slot]=bound;
+                expirations[slot]=expiration;
+                referenced[slot]=0;
+            }finally{
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private int find(long txnId,int start){
+            for(int i=start;i<start+WAYS;i++){
+                if(keys[i]==txnId) return i;
+            }
+            return -1;
+        }
+
+        private int victim(int setIndex,int start){
+            for(int i=start;i<start+WAYS;i++){
+                if(keys[i]==0) return i;
+            }
+            //CLOCK: sweep the set, giving recently referenced entries a second chance
+            int hand=hands[setIndex];
+            while(true){
+                int slot=start+hand;
+                hand=(hand+1)&(WAYS-1);
+                if(referenced[slot]==0){
+                    hands[setIndex]=(byte)hand;
+                    return slot;
+                }
+                referenced[slot]=0;
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.splicemachine.si.impl.DDLFilter;
 import com.splicemachine.si.impl.SimpleTxnFilter;
 import com.splicemachine.si.impl.filter.HRowAccumulator;
 import com.splicemachine.si.impl.filter.PackedTxnFilter;
+import com.splicemachine.si.impl.store.SharedTxnCache;
 import com.splicemachine.storage.DataGet;
 import com.splicemachine.storage.DataScan;
 import com.splicemachine.storage.EntryDecoder;
@@ -37,9 +38,15 @@ import java.io.IOException;
  */
 public class SITransactionReadController implements TransactionReadController{
     private final TxnSupplier txnSupplier;
+    private final SharedTxnCache txnCache;
 
     public SITransactionReadController(TxnSupplier txnSupplier){
+        this(txnSupplier,null);
+    }
+
+    public SITransactionReadController(TxnSupplier txnSupplier,SharedTxnCache txnCache){
         this.txnSupplier = txnSupplier;
+        this.txnCache = txnCache;
     }
 
     @Override
@@ -56,7 +63,7 @@ public class SITransactionReadController implements TransactionReadController{
 
     @Override
     public TxnFilter newFilterState(ReadResolver readResolver,TxnView txn) throws IOException{
-        return new SimpleTxnFilter(null,txn,readResolver,txnSupplier);
+        return new SimpleTxnFilter(null,txn,readResolver,txnSupplier,txnCache);
     }
 
     @Override
@@ -48,6 +48,11 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
@@ -273,6 +278,97 @@ public class SimpleTxnFilterTest{
         assertRolledBack(baseStore,rolledBackTxn);
     }
 
+    /*Tests for batch filtering*/
+    @Test
+    public void testBatchFilteringMatchesPerCellFiltering() throws Exception{
+        TxnSupplier baseStore=txnSupplier;
+
+        TxnView committed=getMockCommittedTxn(1l,2l,null);
+        TxnView deleter=getMockCommittedTxn(3l,4l,null);
+        TxnView rolledBack=getMockRolledBackTxn(5l,null);
+        TxnView active=getMockActiveTxn(6l,null);
+        TxnView updater=getMockCommittedTxn(7l,8l,null);
+        baseStore.cache(committed);
+        baseStore.cache(deleter);
+        baseStore.cache(rolledBack);
+        baseStore.cache(active);
+        baseStore.cache(updater);
+
+        List<List<DataCell>> rows=new ArrayList<>();
+        //a row which was deleted after it was written
+        rows.add(Arrays.asList(getTombstoneCell("a",deleter),getDataCell("a",committed)));
+        //a row which was deleted, then re-inserted
+        rows.add(Arrays.asList(getTombstoneCell("b",deleter),getDataCell("b",updater),getDataCell("b",committed)));
+        //rows written by transactions we cannot see
+        rows.add(Arrays.asList(getDataCell("c",rolledBack)));
+        rows.add(Arrays.asList(getDataCell("d",active)));
+        //a row with a visible and an invisible version
+        rows.add(Arrays.asList(getDataCell("e",active),getDataCell("e",committed)));
+        //a row with a commit timestamp for a transaction that the store doesn't know about
+        rows.add(Arrays.asList(getCommitTimestampCell("f",9l,10l),getDataCell("f",9l)));
+
+        TxnView myTxn=new InheritingTxnView(Txn.ROOT_TRANSACTION,11l,11l,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.State.ACTIVE);
+        SimpleTxnFilter cellFilter=new SimpleTxnFilter(null,myTxn,NoOpReadResolver.INSTANCE,baseStore);
+        SimpleTxnFilter batchFilter=new SimpleTxnFilter(null,myTxn,NoOpReadResolver.INSTANCE,baseStore);
+
+        BitSet[] visible=new BitSet[rows.size()];
+        for(int i=0;i<visible.length;i++){
+            visible[i]=new BitSet();
+        }
+        batchFilter.filterRows(rows,rows.size(),visible);
+
+        for(int r=0;r<rows.size();r++){
+            cellFilter.nextRow();
+            List<DataCell> row=rows.get(r);
+            for(int i=0;i<row.size();i++){
+                DataFilter.ReturnCode code=cellFilter.filterCell(row.get(i));
+                Assert.assertEquals("Incorrect visibility for cell "+i+" of row "+r,
+                        code==DataFilter.ReturnCode.INCLUDE,visible[r].get(i));
+            }
+        }
+        Assert.assertTrue("Re-inserted row should be visible!",visible[1].get(1));
+        Assert.assertFalse("Deleted row should not be visible!",visible[0].get(1));
+        Assert.assertTrue("Committed version should be visible!",visible[4].get(1));
+        Assert.assertTrue("Row with commit timestamp should be visible!",visible[5].get(1));
+    }
+
+    @Test
+    public void testBatchFilteringReadResolvesOncePerRow() throws Exception{
+        TxnSupplier baseStore=txnSupplier;
+
+        TxnView committed=getMockCommittedTxn(1l,2l,null);
+        TxnView active=getMockActiveTxn(3l,null);
+        baseStore.cache(committed);
+        baseStore.cache(active);
+
+        final AtomicInteger resolveCount=new AtomicInteger(0);
+        ReadResolver resolver=mock(ReadResolver.class);
+        doAnswer(new Answer<Void>(){
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable{
+                Assert.assertEquals("Should only resolve the committed transaction!",1l,invocationOnMock.getArguments()[1]);
+                resolveCount.incrementAndGet();
+                return null;
+            }
+        }).when(resolver).resolve(any(ByteSlice.class),anyLong());
+
+        List<List<DataCell>> rows=new ArrayList<>();
+        rows.add(Arrays.asList(getDataCell("a",active),getDataCell("a",committed)));
+        rows.add(Arrays.asList(getDataCell("b",committed)));
+        //already resolved, so should not be resolved again
+        rows.add(Arrays.asList(getCommitTimestampCell("c",1l,2l),getDataCell("c",committed)));
+        rows.add(Arrays.asList(getDataCell("d",committed)));
+
+        TxnView myTxn=new InheritingTxnView(Txn.ROOT_TRANSACTION,5l,5l,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.State.ACTIVE);
+        SimpleTxnFilter filter=new SimpleTxnFilter(null,myTxn,resolver,baseStore);
+        BitSet[] visible=new BitSet[]{new BitSet(),new BitSet(),new BitSet(),new BitSet()};
+        filter.filterRows(rows,rows.size(),visible);
+
+        Assert.assertEquals("Incorrect number of read resolutions!",3,resolveCount.get());
+        Assert.assertEquals("Incorrect visibility for row a!",1,visible[0].cardinality());
+        Assert.assertTrue("Incorrect visibility for row a!",visible[0].get(1));
+    }
+
     /* ****************************************************************************************************************/
     /*private helper methods*/
     private ReadResolver getRollBackReadResolver(final Pair<ByteSlice, Long> rolledBackTs){
@@ -383,6 +479,30 @@ public class SimpleTxnFilterTest{
         return userCell;
     }
 
+    private DataCell getDataCell(String key,TxnView txn) throws IOException{
+        return getDataCell(key,txn.getTxnId());
+    }
+
+    private DataCell getDataCell(String key,long txnId) throws IOException{
+        DataPut put=operationFactory.newDataPut(null,Encoding.encode(key));
+        put.addCell(SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.PACKED_COLUMN_BYTES,txnId,Encoding.encode("hello"));
+        return put.cells().iterator().next();
+    }
+
+    private DataCell getTombstoneCell(String key,TxnView txn) throws IOException{
+        DataPut put=operationFactory.newDataPut(null,Encoding.encode(key));
+        put.addCell(SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_TOMBSTONE_COLUMN_BYTES,txn.getTxnId(),SIConstants.EMPTY_BYTE_ARRAY);
+        DataCell cell=put.cells().iterator().next();
+        Assert.assertEquals("Incorrect data type!",CellType.TOMBSTONE,cell.dataType());
+        return cell;
+    }
+
+    private DataCell getCommitTimestampCell(String key,long txnId,long commitTs) throws IOException{
+        DataPut put=operationFactory.newDataPut(null,Encoding.encode(key));
+        put.addCell(SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_COMMIT_TIMESTAMP_COLUMN_BYTES,txnId,Bytes.toBytes(commitTs));
+        return put.cells().iterator().next();
+    }
+
     private TxnView getMockCommittedTxn(long begin,long commit,TxnView parent){
         if(parent==null)
             parent=Txn.ROOT_TRANSACTION;
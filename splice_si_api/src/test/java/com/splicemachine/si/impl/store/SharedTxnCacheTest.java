@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.store;
+
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.txn.ActiveWriteTxn;
+import com.splicemachine.si.impl.txn.CommittedTxn;
+import com.splicemachine.si.impl.txn.InheritingTxnView;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Category(ArchitectureIndependent.class)
+public class SharedTxnCacheTest{
+    private final IncrementingClock clock=new IncrementingClock();
+    private final CountingSupplier store=new CountingSupplier();
+    private final SharedTxnCache cache=new SharedTxnCache(1<<20,4,1000L,clock);
+
+    @Test
+    public void completedTransactionsAreSharedBetweenReaders() throws Exception{
+        store.add(new CommittedTxn(10,12));
+
+        TxnSupplier first=cache.supplier("t1",reader(20),store);
+        Assert.assertEquals(12L,first.getTransaction(10).getCommitTimestamp());
+        Assert.assertEquals(1,store.fetches);
+
+        TxnSupplier second=cache.supplier("t1",reader(30),store);
+        Assert.assertTrue(second.transactionCached(10));
+        Assert.assertEquals(12L,second.getTransaction(10).getCommitTimestamp());
+        Assert.assertEquals("Should have been served from the shared cache",1,store.fetches);
+    }
+
+    @Test
+    public void explicitlyCachedCommitsAreShared() throws Exception{
+        cache.supplier("t1",reader(20),store).cache(new CommittedTxn(10,12));
+        Assert.assertNotNull(cache.supplier("t2",reader(5),store).getTransactionFromCache(10));
+        Assert.assertEquals(0,store.fetches);
+    }
+
+    @Test
+    public void activeTransactionsAreOnlySharedWithOlderReaders() throws Exception{
+        store.add(new ActiveWriteTxn(10,10,Txn.ROOT_TRANSACTION,false,Txn.IsolationLevel.SNAPSHOT_ISOLATION));
+
+        cache.supplier("t1",reader(20),store).getTransaction(10);
+        Assert.assertEquals(1,store.fetches);
+
+        //a reader which started earlier can't see a commit of txn 10 anyway
+        cache.supplier("t1",reader(15),store).getTransaction(10);
+        Assert.assertEquals(1,store.fetches);
+
+        //but txn 10 could have committed before a later reader began
+        TxnSupplier later=cache.supplier("t1",reader(25),store);
+        Assert.assertFalse(later.transactionCached(10));
+        later.getTransaction(10);
+        Assert.assertEquals(2,store.fetches);
+
+        //which now lets readers up to 25 use the cached entry
+        cache.supplier("t1",reader(22),store).getTransaction(10);
+        Assert.assertEquals(2,store.fetches);
+    }
+
+    @Test
+    public void activeTransactionsExpire() throws Exception{
+        store.add(new ActiveWriteTxn(10,10,Txn.ROOT_TRANSACTION,false,Txn.IsolationLevel.SNAPSHOT_ISOLATION));
+        cache.supplier("t1",reader(20),store).getTransaction(10);
+        clock.increment(TimeUnit.MILLISECONDS.toNanos(500));
+        cache.supplier("t1",reader(20),store).getTransaction(10);
+        Assert.assertEquals(1,store.fetches);
+
+        clock.increment(TimeUnit.MILLISECONDS.toNanos(600));
+        cache.supplier("t1",reader(20),store).getTransaction(10);
+        Assert.assertEquals(2,store.fetches);
+    }
+
+    @Test
+    public void readCommittedReadersDoNotShareActiveTransactions() throws Exception{
+        store.add(new ActiveWriteTxn(10,10,Txn.ROOT_TRANSACTION,false,Txn.IsolationLevel.SNAPSHOT_ISOLATION));
+        TxnView rcReader=new ActiveWriteTxn(20,20,Txn.ROOT_TRANSACTION,false,Txn.IsolationLevel.READ_COMMITTED);
+
+        cache.supplier("t1",rcReader,store).getTransaction(10);
+        cache.supplier("t1",reader(15),store).getTransaction(10);
+        Assert.assertEquals(2,store.fetches);
+        cache.supplier("t1",rcReader,store).getTransaction(10);
+        Assert.assertEquals(3,store.fetches);
+    }
+
+    @Test
+    public void parentSeesTheWritesOfItsCommittedChild() throws Exception{
+        TxnView parent=reader(10);
+        store.add(new ActiveWriteTxn(11,11,parent,false,Txn.IsolationLevel.SNAPSHOT_ISOLATION));
+        Assert.assertFalse(parent.canSee(cache.supplier("t1",parent,store).getTransaction(11)));
+
+        //the child commits, but is still active in effect, since its parent is
+        store.add(new InheritingTxnView(parent,11,11,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                false,false,true,true,12,-1,Txn.State.COMMITTED));
+        TxnView child=cache.supplier("t1",parent,store).getTransaction(11);
+        Assert.assertEquals("Parent was given a stale view of its child",2,store.fetches);
+        Assert.assertTrue("Parent can't see its own writes",parent.canSee(child));
+
+        //other transactions which began before the parent still share the entry
+        cache.supplier("t1",reader(9),store).getTransaction(11);
+        Assert.assertEquals(2,store.fetches);
+    }
+
+    @Test
+    public void hitRatesAreTrackedPerTable() throws Exception{
+        store.add(new CommittedTxn(10,12));
+        cache.supplier("t1",reader(20),store).getTransaction(10); //miss
+        cache.supplier("t1",reader(20),store).getTransaction(10); //hit
+        cache.supplier("t2",reader(20),store).getTransaction(10); //hit
+        cache.supplier(null,reader(20),store).getTransaction(10); //hit
+
+        Map<String,Double> rates=cache.getTableHitRates();
+        Assert.assertEquals(0.5d,rates.get("t1"),0.0001d);
+        Assert.assertEquals(1d,rates.get("t2"),0.0001d);
+        Assert.assertEquals(1d,rates.get("unknown"),0.0001d);
+        Assert.assertEquals(3L,cache.getHitCount());
+        Assert.assertEquals(1L,cache.getMissCount());
+    }
+
+    @Test
+    public void cacheIsBoundedByMemory() throws Exception{
+        SharedTxnCache small=new SharedTxnCache(64*SharedTxnCache.ESTIMATED_ENTRY_SIZE,2,1000L,clock);
+        TxnSupplier supplier=small.supplier("t1",reader(Long.MAX_VALUE),store);
+        for(int i=1;i<=1000;i++){
+            supplier.cache(new CommittedTxn(i,i+1));
+        }
+        Assert.assertTrue("Capacity too large: "+small.getCapacity(),small.getCapacity()<=64);
+        Assert.assertTrue(small.getEvictionCount()>=1000-small.getCapacity());
+        int cached=0;
+        for(int i=1;i<=1000;i++){
+            if(supplier.transactionCached(i)) cached++;
+        }
+        Assert.assertTrue(cached>0 && cached<=small.getCapacity());
+    }
+
+    private static TxnView reader(long beginTimestamp){
+        return new ActiveWriteTxn(beginTimestamp,beginTimestamp,Txn.ROOT_TRANSACTION,false,Txn.IsolationLevel.SNAPSHOT_ISOLATION);
+    }
+
+    private static class CountingSupplier implements TxnSupplier{
+        private final Map<Long,TxnView> txns=new HashMap<>();
+        private int fetches;
+
+        void add(TxnView txn){
+            txns.put(txn.getTxnId(),txn);
+        }
+
+        @Override
+        public TxnView getTransaction(long txnId) throws IOException{
+            return getTransaction(txnId,false);
+        }
+
+        @Override
+        public TxnView getTransaction(long txnId,boolean getDestinationTables) throws IOException{
+            fetches++;
+            return txns.get(txnId);
+        }
+
+        @Override
+        public boolean transactionCached(long txnId){
+            return false;
+        }
+
+        @Override
+        public void cache(TxnView toCache){
+        }
+
+        @Override
+        public TxnView getTransactionFromCache(long txnId){
+            return null;
+        }
+    }
+}
@@ -30,5 +30,11 @@ public interface TimestampClientStatistics{
 	long getNumberTimestampRequests();
 	
  	double getAvgTimestampRequestDuration();
+
+	/**
+	 * @return the number of requests actually sent to the server. Concurrent callers share
+	 * requests, so this may be much lower than {@link #getNumberTimestampRequests()}.
+	 */
+	long getNumberServerRequests();
 	
 }
@@ -42,5 +42,14 @@ public interface TimestampOracleStatistics{
      * @return number of timestamp blocks reserved
      */
     long getNumberBlocksReserved();
+
+    /**
+     * Returns the number of times a request for timestamps had to wait
+     * for a block reservation to complete, since the last master server start.
+     * In steady state blocks are reserved ahead of time, so this should stay low.
+     *
+     * @return number of requests which waited for a block reservation
+     */
+    long getNumberReservationWaits();
 	
 }
@@ -26,6 +26,9 @@ public class ClientCallback implements Callback {
     private volatile long _newTimestamp = -1l;
     private Exception _e = null;
     private CountDownLatch _latch = new CountDownLatch(1);
+    // number of callers sharing this request, each of which takes the timestamp at its own
+    // offset from the start of the returned range. Guarded by the owning TimestampClient
+    private int _numCallers = 0;
     		
     public ClientCallback(short callerId) {
     	_callerId = callerId;
@@ -35,6 +38,19 @@ public class ClientCallback implements Callback {
     	return _callerId;
     }
     
+    /**
+     * Add a caller to this request.
+     *
+     * @return the offset of the new caller's timestamp from the start of the range
+     */
+    int addCaller() {
+        return _numCallers++;
+    }
+
+    int getNumCallers() {
+        return _numCallers;
+    }
+
     public Exception getException() {
        return _e;
     }
@@ -84,7 +100,7 @@ public class ClientCallback implements Callback {
     }   
 
     public String toString() {
-    	return "Callback (callerId = " + _callerId +
+    	return "Callback (callerId = " + _callerId + ", callers = " + _numCallers +
     		(_newTimestamp > -1 ? ", ts = " + _newTimestamp : ", ts blank") + ")";
     }
     
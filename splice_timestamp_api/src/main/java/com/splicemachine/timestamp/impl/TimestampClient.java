@@ -53,6 +53,18 @@ import org.apache.log4j.Logger;
  * For the caller, the invocation of {@link #getNextTimestamp()}
  * is synchronous.
  * <p>
+ * Callers are coalesced: as long as fewer than {@code maxInFlightRequests}
+ * requests are outstanding, each caller sends its own request. Beyond that,
+ * callers join a single pending request, which is sent as soon as an outstanding
+ * request is answered (or as soon as it has {@code maxBatchSize} callers). The
+ * server answers each request with a contiguous range of timestamps, and every
+ * caller which joined the request takes its own timestamp from that range. Under
+ * high load this trades one round trip per transaction for one round trip per batch.
+ * <p>
+ * Servers from before range requests were introduced can only hand out one timestamp per
+ * request. Each new connection therefore starts with a probe (see {@link TimestampServer#RANGE_PROBE_ID}),
+ * and if the server doesn't recognize it, every caller sends a request of its own over that connection.
+ * <p>
  * This class should generally not be constructed directly.
  *
  * @author Walt Koetke
@@ -64,6 +76,9 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
 
     private static final short CLIENT_COUNTER_INIT = 100; // actual value doesn't matter
 
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 4;
+
     /**
      * Fixed number of bytes in the message we expect to receive back from the server.
      */
@@ -73,6 +88,13 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         DISCONNECTED, CONNECTING, CONNECTED, SHUTDOWN
     }
 
+    /**
+     * What the server on the current connection is known to accept.
+     */
+    private enum ServerProtocol {
+        UNKNOWN, SINGLE_TIMESTAMPS, TIMESTAMP_RANGES
+    }
+
     /**
      * A map representing all currently active callers to this TimestampClient
      * waiting for their response.
@@ -81,8 +103,10 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
 
     private final AtomicReference<State> state = new AtomicReference<>(State.DISCONNECTED);
 
+    private final Object connectLock = new Object();
     private ClientBootstrap bootstrap;
     private volatile Channel channel;
+    private volatile ServerProtocol serverProtocol = ServerProtocol.UNKNOWN;
     private NioClientSocketChannelFactory factory;
 
     /**
@@ -98,15 +122,42 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
 
     int timeoutMillis;
 
+    private final int maxBatchSize;
+    private final int maxInFlightRequests;
+
+    /*
+     * Guards openRequest and inFlightRequests. The request which is currently accepting new
+     * callers, or null if there is none; it is sent once an in-flight request completes.
+     */
+    private final Object batchLock = new Object();
+    private ClientCallback openRequest = null;
+    private int inFlightRequests = 0;
+
     // Metrics to expose via JMX. See TimestampClientStatistics
     // for solid definitions of each metric.
     private AtomicLong numRequests = new AtomicLong(0);
     private AtomicLong totalRequestDuration = new AtomicLong(0);
+    private AtomicLong numServerRequests = new AtomicLong(0);
     private TimestampHostProvider timestampHostProvider;
 
 
     public TimestampClient(int timeoutMillis,TimestampHostProvider timestampHostProvider) {
+        this(timeoutMillis,timestampHostProvider,DEFAULT_MAX_BATCH_SIZE,DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of callers which may share a single request.
+     *                     A value of 1 disables coalescing entirely.
+     * @param maxInFlightRequests the number of requests which may be outstanding before
+     *                            new callers start joining a shared request.
+     */
+    public TimestampClient(int timeoutMillis,TimestampHostProvider timestampHostProvider,int maxBatchSize,int maxInFlightRequests) {
+        if (maxBatchSize < 1 || maxBatchSize > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + Short.MAX_VALUE + ", not " + maxBatchSize);
+        }
         this.timeoutMillis = timeoutMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.maxInFlightRequests = Math.max(1, maxInFlightRequests);
         this.timestampHostProvider = timestampHostProvider;
         clientCallbacks = new ConcurrentHashMap<>();
 
@@ -168,14 +219,31 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
     }
 
     protected void connectIfNeeded() throws TimestampIOException{
+        connect(true);
+    }
+
+    /**
+     * @param awaitProbe whether to wait for the server to answer the protocol probe. Netty's I/O threads
+     *                   must not wait, since they may be the ones to deliver the answer.
+     */
+    private void connect(boolean awaitProbe) throws TimestampIOException{
 
         // Even though state is an atomic reference, synchronize on whole block
         // including code that attempts connection. Otherwise, two threads might
         // end up trying to connect at the same time.
 
+        long deadline = System.currentTimeMillis() + timeoutMillis;
         boolean shouldContinue = true;
         while(shouldContinue){
             State s = state.get();
+            if(isConnecting(s)){
+                if(!awaitProbe) return;
+                // another thread is connecting, and we have nothing to write to until it's done
+                if(System.currentTimeMillis() > deadline)
+                    throw new TimestampIOException("Timed out waiting to connect to TimestampServer");
+                awaitConnectionAttempt();
+                continue;
+            }
             if(s !=State.DISCONNECTED) return;
             shouldContinue = !state.compareAndSet(s,State.CONNECTING);
         }
@@ -200,12 +268,49 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         );
 
         CountDownLatches.uncheckedAwait(latchConnect);
-        if(channel == null) {
+        Channel c = channel;
+        if(c == null) {
+            // let the next caller try again
+            state.compareAndSet(State.CONNECTING,State.DISCONNECTED);
+            signalConnectionAttempt();
             throw new TimestampIOException("Unable to connect to TimestampServer");
         }
 
         // Can only assume connecting (not connected) until channelConnected method is invoked
         state.set(State.CONNECTING);
+
+        // Find out whether the server accepts requests for ranges of timestamps. Nothing else may be
+        // sent over the connection until it has answered
+        ChannelBuffer probe = ChannelBuffers.buffer(2 * TimestampServer.SINGLE_MSG_RECEIVED_LENGTH);
+        probe.writeShort(TimestampServer.RANGE_PROBE_ID);
+        probe.writeShort(TimestampServer.RANGE_PROBE_VERSION_ID);
+        c.write(probe);
+        signalConnectionAttempt();
+        if(awaitProbe)
+            connect(true);
+    }
+
+    private boolean isConnecting(State s){
+        return (s==State.CONNECTING || s==State.CONNECTED) && (channel==null || serverProtocol==ServerProtocol.UNKNOWN);
+    }
+
+    private void awaitConnectionAttempt() throws TimestampIOException{
+        synchronized(connectLock){
+            if(isConnecting(state.get())){
+                try{
+                    connectLock.wait(timeoutMillis);
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new TimestampIOException("Interrupted waiting to connect to TimestampServer",e);
+                }
+            }
+        }
+    }
+
+    private void signalConnectionAttempt(){
+        synchronized(connectLock){
+            connectLock.notifyAll();
+        }
     }
 
     public long getNextTimestamp() throws TimestampIOException {
@@ -215,36 +320,24 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
 
         connectIfNeeded();
 
-        short clientCallId = (short) clientCallCounter.getAndIncrement();
-        final ClientCallback callback = new ClientCallback(clientCallId);
-        SpliceLogUtils.debug(LOG, "Starting new client call with id %s", clientCallId);
-
-        // Add this caller (id and callback) to the map of current clients.
-        // If an entry was already present for this caller id, that is a bug,
-        // so throw an exception.
-        if (clientCallbacks.putIfAbsent(clientCallId, callback) != null) {
-            doClientErrorThrow(LOG, "Found existing client callback with caller id %s, so unable to handle new call.", null, clientCallId);
+        ClientCallback callback;
+        ClientCallback toSend = null;
+        int offset;
+        synchronized (batchLock) {
+            if (openRequest == null) {
+                short clientCallId = nextCallerId();
+                openRequest = new ClientCallback(clientCallId);
+                SpliceLogUtils.debug(LOG, "Starting new client call with id %s", clientCallId);
+            }
+            callback = openRequest;
+            offset = callback.addCaller();
+            int batchSize = serverProtocol == ServerProtocol.TIMESTAMP_RANGES ? maxBatchSize : 1;
+            if (inFlightRequests < maxInFlightRequests || callback.getNumCallers() >= batchSize) {
+                toSend = sealOpenRequest();
+            }
         }
-
-        try {
-            ChannelBuffer buffer = ChannelBuffers.buffer(2);
-            buffer.writeShort(clientCallId);
-            SpliceLogUtils.trace(LOG, "Writing request message to server for client: %s", callback);
-            ChannelFuture futureWrite = channel.write(buffer);
-            futureWrite.addListener(new ChannelFutureListener() {
-                @Override
-                public void operationComplete(ChannelFuture future) throws Exception {
-                    if (!future.isSuccess()) {
-                        doClientErrorThrow(LOG, "Error writing message from timestamp client to server", future.getCause());
-                    } else {
-                        SpliceLogUtils.trace(LOG, "Request sent. Waiting for response for client: %s", callback);
-                    }
-                }
-            });
-        } catch (Exception e) { // Correct to catch all Exceptions in this case so we can remove client call
-            clientCallbacks.remove(clientCallId);
-            callback.error(e);
-            doClientErrorThrow(LOG, "Exception writing message to timestamp server for client: %s", e, callback);
+        if (toSend != null) {
+            sendRequest(toSend);
         }
 
         // If we get here, request was successfully sent without exception.
@@ -254,6 +347,7 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         try {
             boolean success = callback.await(timeoutMillis);
             if (!success) {
+                abandonRequest(callback);
                 doClientErrorThrow(LOG, "Client timed out after %s ms waiting for new timestamp: %s", null, timeoutMillis, callback);
             }
         } catch (InterruptedException e) {
@@ -263,6 +357,9 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         // If we get here, it should mean the client received the response with the timestamp,
         // which we can fetch now from the callback and send it back to the caller.
 
+        if (callback.getException() != null) {
+            doClientErrorThrow(LOG, "Unable to fetch timestamp for client: %s", callback.getException(), callback);
+        }
         long timestamp = callback.getNewTimestamp();
         if (timestamp < 0) {
             doClientErrorThrow(LOG, "Invalid timestamp found for client: %s", null, callback);
@@ -274,7 +371,129 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         numRequests.incrementAndGet();
         totalRequestDuration.addAndGet(System.currentTimeMillis() - requestStartTime);
 
-        return timestamp;
+        return timestamp + offset;
+    }
+
+    private short nextCallerId() {
+        while (true) {
+            short callerId = (short) clientCallCounter.getAndIncrement();
+            // the probe ids are only ever answered by the probe
+            if (callerId != TimestampServer.RANGE_PROBE_ID && callerId != TimestampServer.RANGE_PROBE_VERSION_ID)
+                return callerId;
+        }
+    }
+
+    /**
+     * Stop accepting callers into the open request, and count it as in flight. Must be
+     * called while holding the batch lock.
+     */
+    private ClientCallback sealOpenRequest() {
+        ClientCallback request = openRequest;
+        openRequest = null;
+        inFlightRequests++;
+        return request;
+    }
+
+    /**
+     * Release the in-flight slot of a completed request.
+     *
+     * @return the open request, if callers have been waiting for a free slot; the caller
+     * is responsible for sending it.
+     */
+    private ClientCallback releaseInFlightRequest() {
+        synchronized (batchLock) {
+            inFlightRequests--;
+            return openRequest == null ? null : sealOpenRequest();
+        }
+    }
+
+    private void sendRequest(final ClientCallback callback) {
+        final short clientCallId = callback.getCallerId();
+
+        // Add this request (id and callback) to the map of current requests.
+        // If an entry was already present for this caller id, that is a bug,
+        // so fail the request.
+        if (clientCallbacks.putIfAbsent(clientCallId, callback) != null) {
+            ClientCallback next = releaseInFlightRequest();
+            callback.error(new TimestampIOException(String.format(
+                    "Found existing client callback with caller id %s, so unable to handle new call.", clientCallId)));
+            if (next != null) sendRequest(next);
+            return;
+        }
+
+        try {
+            Channel c = channel;
+            if (c == null) {
+                throw new TimestampIOException("TimestampClient is not connected to the TimestampServer");
+            }
+            ChannelBuffer buffer;
+            switch (serverProtocol) {
+                case TIMESTAMP_RANGES:
+                    buffer = ChannelBuffers.buffer(TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
+                    buffer.writeShort(clientCallId);
+                    buffer.writeShort(callback.getNumCallers());
+                    break;
+                case SINGLE_TIMESTAMPS:
+                    if (callback.getNumCallers() > 1) {
+                        // the request was filled before we reconnected to a server which can't hand out ranges
+                        throw new TimestampIOException("TimestampServer does not accept requests for more than one timestamp");
+                    }
+                    buffer = ChannelBuffers.buffer(TimestampServer.SINGLE_MSG_RECEIVED_LENGTH);
+                    buffer.writeShort(clientCallId);
+                    break;
+                default:
+                    throw new TimestampIOException("TimestampClient is not connected to the TimestampServer");
+            }
+            SpliceLogUtils.trace(LOG, "Writing request message to server for client: %s", callback);
+            ChannelFuture futureWrite = c.write(buffer);
+            futureWrite.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        failRequest(callback, future.getCause());
+                        doClientErrorThrow(LOG, "Error writing message from timestamp client to server", future.getCause());
+                    } else {
+                        SpliceLogUtils.trace(LOG, "Request sent. Waiting for response for client: %s", callback);
+                    }
+                }
+            });
+            numServerRequests.incrementAndGet();
+        } catch (Exception e) { // Correct to catch all Exceptions in this case so we can remove client call
+            SpliceLogUtils.error(LOG, "Exception writing message to timestamp server for client: %s", e, callback);
+            failRequest(callback, e);
+        }
+    }
+
+    /**
+     * Fail every caller waiting on {@code callback}, if it is still outstanding.
+     */
+    private void failRequest(ClientCallback callback, Throwable t) {
+        if (!clientCallbacks.remove(callback.getCallerId(), callback)) return;
+        ClientCallback next = releaseInFlightRequest();
+        callback.error(t instanceof Exception ? (Exception) t : new TimestampIOException("Timestamp request failed", t));
+        if (next != null) sendRequest(next);
+    }
+
+    /**
+     * Give up on a request which timed out, so that its in-flight slot is not held forever
+     * (or, if it was never sent, so that new callers don't join it). Every other caller sharing
+     * the request is failed along with it, rather than left to wait out its own timeout for an
+     * answer which will never be delivered.
+     */
+    private void abandonRequest(ClientCallback callback) {
+        boolean sent;
+        synchronized (batchLock) {
+            sent = openRequest != callback;
+            if (!sent) {
+                openRequest = null;
+            }
+        }
+        TimestampIOException timedOut = new TimestampIOException("Timed out waiting for the timestamp server");
+        if (sent) {
+            failRequest(callback, timedOut);
+        } else {
+            callback.error(timedOut);
+        }
     }
 
     @Override
@@ -287,20 +506,36 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         ensureReadableBytes(buf, 8);
 
         long timestamp = buf.readLong();
-        assert (timestamp > 0);
         ensureReadableBytes(buf, 0);
 
+        if (clientCallerId == TimestampServer.RANGE_PROBE_ID) {
+            // a negative answer means the server knows about ranges, an older server just hands out a timestamp
+            serverProtocol = timestamp < 0 ? ServerProtocol.TIMESTAMP_RANGES : ServerProtocol.SINGLE_TIMESTAMPS;
+            SpliceLogUtils.info(LOG, "TimestampServer accepts %s", serverProtocol);
+            signalConnectionAttempt();
+            return;
+        } else if (clientCallerId == TimestampServer.RANGE_PROBE_VERSION_ID) {
+            return; // an older server's answer to the second half of the probe
+        }
+        assert (timestamp > 0);
+
         SpliceLogUtils.debug(LOG, "Response from server: clientCallerId = %s, timestamp = %s", clientCallerId, timestamp);
         Callback cb = clientCallbacks.remove(clientCallerId);
         if (cb == null) {
             doClientErrorThrow(LOG, "Client callback with id %s not found, so unable to deliver timestamp %s", null, clientCallerId, timestamp);
         }
+        ClientCallback next = releaseInFlightRequest();
 
-        // This releases the latch the original client thread is waiting for
-        // (to provide the synchronous behavior for that caller) and also
-        // provides the timestamp.
+        // This releases the latch the original client threads are waiting for
+        // (to provide the synchronous behavior for those callers) and also
+        // provides the start of their timestamp range.
         cb.complete(timestamp);
 
+        // Callers which queued up while the server was busy go out in a single request
+        if (next != null) {
+            sendRequest(next);
+        }
+
         super.messageReceived(ctx, e);
     }
 
@@ -320,9 +555,14 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
             State s = state.get();
             if(s==State.SHUTDOWN) return; //ignore shut down errors
             channel=null;
+            serverProtocol=ServerProtocol.UNKNOWN;
             shouldContinue = !state.compareAndSet(s,State.DISCONNECTED);
         }while(shouldContinue);
-        connectIfNeeded();
+        // Nothing outstanding will be answered over the old connection
+        for (Callback cb : clientCallbacks.values()) {
+            failRequest((ClientCallback) cb, new TimestampIOException("TimestampClient was disconnected from the server"));
+        }
+        connect(false);
     }
 
     @Override
@@ -346,6 +586,11 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         return numRequests.get();
     }
 
+    @Override
+    public long getNumberServerRequests() {
+        return numServerRequests.get();
+    }
+
     @Override
     public double getAvgTimestampRequestDuration() {
         double a = (double) totalRequestDuration.get();
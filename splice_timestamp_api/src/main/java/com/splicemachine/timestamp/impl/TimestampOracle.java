@@ -20,8 +20,15 @@ import com.splicemachine.timestamp.api.TimestampIOException;
 import com.splicemachine.timestamp.api.TimestampOracleStatistics;
 import com.splicemachine.utils.SpliceLogUtils;
 import org.apache.log4j.Logger;
+import org.spark_project.guava.util.concurrent.ThreadFactoryBuilder;
 import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
@@ -29,6 +36,18 @@ import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
 
+/**
+ * Hands out timestamps from blocks which have been durably reserved through the
+ * {@link TimestampBlockManager}.
+ * <p>
+ * Reservations are made in the background, one block ahead: once half of the
+ * current block has been handed out, the next block is reserved on a separate
+ * thread. As long as the block manager keeps up, handing out timestamps never waits
+ * on it, and never takes a lock. Callers only block when they run past the end of
+ * the reserved range (for example when the block manager is slower than the rate
+ * at which timestamps are consumed), and then only until the outstanding reservation
+ * completes.
+ */
 public class TimestampOracle implements TimestampOracleStatistics{
 
     private static final Logger LOG = Logger.getLogger(TimestampOracle.class);
@@ -36,9 +55,14 @@ public class TimestampOracle implements TimestampOracleStatistics{
 	// Contains the next timestamp value to be returned to caller use
 	private final AtomicLong _timestampCounter = new AtomicLong(0l);
 	
-	// Maximum timestamp that we can feed before reserving another block
+	// Maximum timestamp that we can feed before reserving another block. Only
+	// written by the reservation thread once initialized
 	private volatile long _maxReservedTimestamp = -1l;
 
+	// The most recent block reservation, which may still be running
+	private final AtomicReference<Future<Void>> _pendingReservation = new AtomicReference<>();
+	private final ExecutorService _reservationExecutor;
+
 	// Singleton instance, used by TimestampServerHandler
 	private static volatile TimestampOracle _instance;
 	
@@ -46,6 +70,7 @@ public class TimestampOracle implements TimestampOracleStatistics{
 	// for solid definitions of each metric.
     private AtomicLong _numBlocksReserved = new AtomicLong(0);
     private AtomicLong _numTimestampsCreated = new AtomicLong(0);
+    private AtomicLong _numReservationWaits = new AtomicLong(0);
 
     private TimestampBlockManager timestampBlockManager;
     private int blockSize;
@@ -64,9 +89,11 @@ public class TimestampOracle implements TimestampOracleStatistics{
 		return to;
 	}
 	
-	private TimestampOracle(TimestampBlockManager timestampBlockManager, int blockSize) throws TimestampIOException {
+	TimestampOracle(TimestampBlockManager timestampBlockManager, int blockSize) throws TimestampIOException {
         this.timestampBlockManager=timestampBlockManager;
         this.blockSize = blockSize;
+        this._reservationExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("TimestampOracle-reserver").setDaemon(true).build());
 		initialize();
 	}
 
@@ -76,10 +103,9 @@ public class TimestampOracle implements TimestampOracleStatistics{
      * @throws TimestampIOException
      */
 	private void initialize() throws TimestampIOException {
-			synchronized(this) {
-                _maxReservedTimestamp = timestampBlockManager.initialize();
-				_timestampCounter.set(_maxReservedTimestamp + 1);
-			}
+            // no other thread can see this oracle until construction has completed
+            _maxReservedTimestamp = timestampBlockManager.initialize();
+            _timestampCounter.set(_maxReservedTimestamp + 1);
 			try {
 				registerJMX();
 			} catch (Exception e) {
@@ -88,25 +114,90 @@ public class TimestampOracle implements TimestampOracleStatistics{
     }
 
 	public long getNextTimestamp() throws TimestampIOException {
-		long nextTS = _timestampCounter.getAndIncrement();
+		return getNextTimestamps(1);
+	}
+
+    /**
+     * Reserve a contiguous range of {@code count} timestamps.
+     *
+     * @param count the number of timestamps to hand out. Must be positive.
+     * @return the first timestamp in the range; the caller owns every timestamp
+     * from this value up to (but not including) {@code first+count}.
+     * @throws TimestampIOException if a new block could not be reserved
+     */
+	public long getNextTimestamps(int count) throws TimestampIOException {
+		assert count>0: "Cannot reserve "+count+" timestamps";
+		long firstTS = _timestampCounter.getAndAdd(count);
+		long lastTS = firstTS+count-1;
 		long maxTS = _maxReservedTimestamp; // avoid the double volatile read
-		if (nextTS > maxTS) {
-			reserveNextBlock(maxTS);
+		if (lastTS > maxTS) {
+			awaitReservationThrough(lastTS);
+		} else if (maxTS - lastTS < blockSize/2) {
+			reserveAhead();
 		}
-		_numTimestampsCreated.incrementAndGet(); // JMX metric
-		return nextTS;
+		_numTimestampsCreated.addAndGet(count); // JMX metric
+		return firstTS;
 	}
 
-    private void reserveNextBlock(long priorMaxReservedTimestamp) throws TimestampIOException {
-        synchronized(this)  {
-            if (_maxReservedTimestamp > priorMaxReservedTimestamp) return; // some other thread got there first
-            long nextMax = _maxReservedTimestamp + blockSize;
-            timestampBlockManager.reserveNextBlock(nextMax);
-            _maxReservedTimestamp = nextMax;
-            _numBlocksReserved.incrementAndGet(); // JMX metric
-            SpliceLogUtils.debug(LOG, "Next timestamp block reserved with max = %s", _maxReservedTimestamp);
+    /**
+     * Make sure a reservation of the next block is running.
+     *
+     * @return the running reservation
+     */
+    private Future<Void> reserveAhead() {
+        while (true) {
+            Future<Void> pending = _pendingReservation.get();
+            if (pending != null && !pending.isDone()) return pending;
+            FutureTask<Void> reservation = new FutureTask<>(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reserveNextBlock();
+                    } catch (TimestampIOException e) {
+                        SpliceLogUtils.error(LOG, "Unable to reserve the next timestamp block", e);
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, null);
+            if (_pendingReservation.compareAndSet(pending, reservation)) {
+                _reservationExecutor.execute(reservation);
+                return reservation;
+            }
         }
-	}
+    }
+
+    /**
+     * Block until every timestamp up to and including {@code timestamp} has been reserved. A range
+     * which is larger than a block may take more than one reservation.
+     */
+    private void awaitReservationThrough(long timestamp) throws TimestampIOException {
+        _numReservationWaits.incrementAndGet(); // JMX metric
+        while (_maxReservedTimestamp < timestamp) {
+            try {
+                reserveAhead().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimestampIOException("Interrupted waiting for the next timestamp block", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException && cause.getCause() instanceof TimestampIOException)
+                    throw (TimestampIOException) cause.getCause();
+                throw new TimestampIOException("Unable to reserve the next timestamp block", cause);
+            }
+        }
+    }
+
+    /*
+     * Only ever called from the (single) reservation thread, so there is no need to guard against
+     * concurrent reservations here.
+     */
+    private void reserveNextBlock() throws TimestampIOException {
+        long nextMax = _maxReservedTimestamp + blockSize;
+        timestampBlockManager.reserveNextBlock(nextMax);
+        _maxReservedTimestamp = nextMax;
+        _numBlocksReserved.incrementAndGet(); // JMX metric
+        SpliceLogUtils.debug(LOG, "Next timestamp block reserved with max = %s", nextMax);
+    }
 
 	private void registerJMX() throws MalformedObjectNameException, NotCompliantMBeanException, InstanceAlreadyExistsException, MBeanRegistrationException {
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
@@ -128,4 +219,9 @@ public class TimestampOracle implements TimestampOracleStatistics{
 	public long getNumberBlocksReserved() {
 		return _numBlocksReserved.get();
 	}
+
+	@Override
+	public long getNumberReservationWaits() {
+		return _numReservationWaits.get();
+	}
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+
+/**
+ * Splits the requests arriving on a connection to the {@link TimestampServer} into frames, according
+ * to the version of the protocol the client speaks.
+ *
+ * Older clients send a bare 2 byte caller id for each timestamp. Clients which can take a range of timestamps
+ * open the connection with the {@link TimestampServer#RANGE_PROBE_ID}, {@link TimestampServer#RANGE_PROBE_VERSION_ID}
+ * pair, which is passed on as {@link #RANGE_HANDSHAKE}; every request after that is a 2 byte caller id followed
+ * by a 2 byte number of timestamps. Requests of either kind are passed on as (caller id, count) frames.
+ *
+ * One decoder is created per connection.
+ */
+class TimestampRequestDecoder extends FrameDecoder {
+
+    static final Object RANGE_HANDSHAKE = new Object();
+
+    private boolean firstFrame = true;
+    private boolean ranges = false;
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (ranges) {
+            if (buffer.readableBytes() < TimestampServer.FIXED_MSG_RECEIVED_LENGTH)
+                return null;
+            return buffer.readBytes(TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
+        }
+
+        if (buffer.readableBytes() < TimestampServer.SINGLE_MSG_RECEIVED_LENGTH)
+            return null;
+        short callerId = buffer.getShort(buffer.readerIndex());
+        /*
+         * The client writes both probe ids at once. If they don't arrive together we treat the connection as
+         * an older one, answering both with timestamps, which the client then takes for an older server; that
+         * is wasteful but consistent, whereas waiting for more bytes could stall an older client for good.
+         */
+        if (firstFrame && callerId == TimestampServer.RANGE_PROBE_ID
+                && buffer.readableBytes() >= 2 * TimestampServer.SINGLE_MSG_RECEIVED_LENGTH
+                && buffer.getShort(buffer.readerIndex() + 2) == TimestampServer.RANGE_PROBE_VERSION_ID) {
+            buffer.skipBytes(2 * TimestampServer.SINGLE_MSG_RECEIVED_LENGTH);
+            firstFrame = false;
+            ranges = true;
+            return RANGE_HANDSHAKE;
+        }
+        firstFrame = false;
+        buffer.skipBytes(TimestampServer.SINGLE_MSG_RECEIVED_LENGTH);
+        ChannelBuffer request = ChannelBuffers.buffer(TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
+        request.writeShort(callerId);
+        request.writeShort(1);
+        return request;
+    }
+}
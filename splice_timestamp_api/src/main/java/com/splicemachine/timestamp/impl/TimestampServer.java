@@ -32,14 +32,32 @@ public class TimestampServer {
     private static final Logger LOG = Logger.getLogger(TimestampServer.class);
 
     /**
-     * Fixed number of bytes in the message we expect to receive from the client.
+     * Fixed number of bytes in a request from a client which asks for ranges of timestamps.
      */
-    static final int FIXED_MSG_RECEIVED_LENGTH = 2; // 2 byte client id
+    static final int FIXED_MSG_RECEIVED_LENGTH = 4; // 2 byte client id + 2 byte number of timestamps
+
+    /**
+     * Fixed number of bytes in a request from an older client, which asks for one timestamp at a time.
+     */
+    static final int SINGLE_MSG_RECEIVED_LENGTH = 2; // 2 byte client id
+
+    /*
+     * A client which can ask for ranges of timestamps opens each connection by sending these two
+     * caller ids. A server which understands range requests answers the first with -RANGE_PROTOCOL_VERSION
+     * in place of a timestamp, and reads 4 byte requests from then on. An older server answers both with
+     * ordinary timestamps, which tells the client to ask for one timestamp per request instead.
+     *
+     * The two ids are half the id space apart, so an older client (whose ids come from a counter)
+     * will not open a connection with the same pair by accident.
+     */
+    static final short RANGE_PROBE_ID = (short) 0xC0DE;
+    static final short RANGE_PROBE_VERSION_ID = (short) 0x40DE;
+    static final long RANGE_PROTOCOL_VERSION = 1L;
 
     /**
      * Fixed number of bytes in the message we expect to send back to the client.
      */
-    static final int FIXED_MSG_SENT_LENGTH = 10; // 2 byte client id + 8 byte timestamp
+    static final int FIXED_MSG_SENT_LENGTH = 10; // 2 byte client id + 8 byte first timestamp of the range
 
     private int port;
     private ChannelFactory factory;
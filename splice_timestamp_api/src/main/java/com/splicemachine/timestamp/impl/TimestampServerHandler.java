@@ -55,15 +55,30 @@ public class TimestampServerHandler extends TimestampBaseHandler {
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
         assert oracle != null;
 
+        if (e.getMessage() == TimestampRequestDecoder.RANGE_HANDSHAKE) {
+            SpliceLogUtils.debug(LOG, "Client accepts ranges of timestamps");
+            ChannelBuffer writeBuf = ChannelBuffers.buffer(TimestampServer.FIXED_MSG_SENT_LENGTH);
+            writeBuf.writeShort(TimestampServer.RANGE_PROBE_ID);
+            writeBuf.writeLong(-TimestampServer.RANGE_PROTOCOL_VERSION);
+            e.getChannel().write(writeBuf);
+            return;
+        }
+
         ChannelBuffer buf = (ChannelBuffer) e.getMessage();
         assert buf != null;
         ensureReadableBytes(buf, TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
 
         final short callerId = buf.readShort();
+        ensureReadableBytes(buf, 2);
+
+        int count = buf.readShort();
         ensureReadableBytes(buf, 0);
+        if (count <= 0) {
+            throw new TimestampIOException("Invalid number of timestamps " + count + " requested by caller id " + callerId);
+        }
 
-        SpliceLogUtils.trace(LOG, "Received timestamp request from client. Caller id = %s", callerId);
-        long nextTimestamp = oracle.getNextTimestamp();
+        SpliceLogUtils.trace(LOG, "Received request for %s timestamps from client. Caller id = %s", count, callerId);
+        long nextTimestamp = oracle.getNextTimestamps(count);
         assert nextTimestamp > 0;
 
 
@@ -74,7 +89,7 @@ public class TimestampServerHandler extends TimestampBaseHandler {
         ChannelBuffer writeBuf = ChannelBuffers.buffer(TimestampServer.FIXED_MSG_SENT_LENGTH);
         writeBuf.writeShort(callerId);
         writeBuf.writeLong(nextTimestamp);
-        SpliceLogUtils.debug(LOG, "Responding to caller %s with timestamp %s", callerId, nextTimestamp);
+        SpliceLogUtils.debug(LOG, "Responding to caller %s with %s timestamps starting at %s", callerId, count, nextTimestamp);
         ChannelFuture futureResponse = e.getChannel().write(writeBuf); // Could also use Channels.write
         futureResponse.addListener(new ChannelFutureListener() {
                                        @Override
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import com.splicemachine.timestamp.api.TimestampBlockManager;
+import com.splicemachine.timestamp.api.TimestampHostProvider;
+import com.splicemachine.timestamp.api.TimestampIOException;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * An in-process {@link TimestampServer} backed by an in-memory block manager, and
+ * a way of connecting clients to it.
+ */
+class InProcessTimestampServer{
+    private final TimestampServer server;
+    private final int port;
+
+    InProcessTimestampServer(int blockSize) throws IOException{
+        try(ServerSocket ss=new ServerSocket(0)){
+            this.port=ss.getLocalPort();
+        }
+        this.server=new TimestampServer(port,new MemoryBlockManager(),blockSize);
+        server.startServer();
+    }
+
+    TimestampClient newClient(int maxBatchSize,int maxInFlightRequests){
+        return new TimestampClient(60000,new TimestampHostProvider(){
+            @Override public String getHost(){ return "localhost"; }
+            @Override public int getPort(){ return port; }
+        },maxBatchSize,maxInFlightRequests);
+    }
+
+    int getPort(){
+        return port;
+    }
+
+    void stop(){
+        server.stopServer();
+    }
+
+    private static class MemoryBlockManager implements TimestampBlockManager{
+        private volatile long maxReserved=0L;
+
+        @Override
+        public void reserveNextBlock(long currentMaxReserved) throws TimestampIOException{
+            maxReserved=currentMaxReserved;
+        }
+
+        @Override
+        public long initialize() throws TimestampIOException{
+            return maxReserved;
+        }
+    }
+}
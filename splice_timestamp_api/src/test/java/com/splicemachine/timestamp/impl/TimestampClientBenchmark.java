@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load benchmark for the timestamp client, comparing one request per timestamp against
+ * coalesced range requests, using an in-process {@link TimestampServer}.
+ *
+ * Usage: {@code TimestampClientBenchmark [threads] [seconds per run]}. For each mode, reports
+ * timestamps per second, the number of round trips to the server, and the median and
+ * 99th percentile latency of {@link TimestampClient#getNextTimestamp()}.
+ */
+public class TimestampClientBenchmark{
+    private static final int MAX_SAMPLES_PER_THREAD=1<<20;
+
+    public static void main(String...args) throws Exception{
+        int numThreads=args.length>0?Integer.parseInt(args[0]):32;
+        int seconds=args.length>1?Integer.parseInt(args[1]):10;
+
+        InProcessTimestampServer server=new InProcessTimestampServer(8192);
+        try{
+            //warm up the client and server code paths before measuring anything
+            run("warmup",server,numThreads,1,TimeUnit.SECONDS.toNanos(2),Integer.MAX_VALUE);
+            run("single",server,numThreads,1,TimeUnit.SECONDS.toNanos(seconds),Integer.MAX_VALUE);
+            run("batched",server,numThreads,TimestampClient.DEFAULT_MAX_BATCH_SIZE,TimeUnit.SECONDS.toNanos(seconds),
+                    TimestampClient.DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+        }finally{
+            server.stop();
+        }
+    }
+
+    private static void run(String label,
+                            InProcessTimestampServer server,
+                            int numThreads,
+                            int maxBatchSize,
+                            final long durationNanos,
+                            int maxInFlight) throws Exception{
+        final TimestampClient client=server.newClient(maxBatchSize,maxInFlight);
+        final long[][] latencies=new long[numThreads][];
+        final int[] counts=new int[numThreads];
+        final CountDownLatch start=new CountDownLatch(1);
+        final CountDownLatch finish=new CountDownLatch(numThreads);
+        for(int t=0;t<numThreads;t++){
+            final int thread=t;
+            latencies[t]=new long[MAX_SAMPLES_PER_THREAD];
+            Thread worker=new Thread(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        start.await();
+                        long[] samples=latencies[thread];
+                        int n=0;
+                        long end=System.nanoTime()+durationNanos;
+                        long now;
+                        do{
+                            long s=System.nanoTime();
+                            client.getNextTimestamp();
+                            now=System.nanoTime();
+                            if(n<samples.length)
+                                samples[n]=now-s;
+                            n++;
+                        }while(now<end);
+                        counts[thread]=n;
+                    }catch(Exception e){
+                        e.printStackTrace();
+                    }finally{
+                        finish.countDown();
+                    }
+                }
+            },"timestamp-bench-"+t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long s=System.nanoTime();
+        start.countDown();
+        finish.await();
+        long elapsed=System.nanoTime()-s;
+        client.shutdown();
+
+        long total=0;
+        int numSamples=0;
+        for(int t=0;t<numThreads;t++){
+            total+=counts[t];
+            numSamples+=Math.min(counts[t],MAX_SAMPLES_PER_THREAD);
+        }
+        long[] all=new long[numSamples];
+        int pos=0;
+        for(int t=0;t<numThreads;t++){
+            int n=Math.min(counts[t],MAX_SAMPLES_PER_THREAD);
+            System.arraycopy(latencies[t],0,all,pos,n);
+            pos+=n;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("%-8s threads=%d timestamps=%d requests=%d timestamps/sec=%.0f p50=%.1fus p99=%.1fus%n",
+                label,numThreads,total,client.getNumberServerRequests(),
+                total/(elapsed/1e9d),
+                percentile(all,0.50)/1e3d,
+                percentile(all,0.99)/1e3d);
+    }
+
+    private static long percentile(long[] sorted,double p){
+        if(sorted.length==0) return 0L;
+        return sorted[Math.min(sorted.length-1,(int)(p*sorted.length))];
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.splicemachine.timestamp.api.TimestampHostProvider;
+import com.splicemachine.timestamp.api.TimestampIOException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TimestampClientTest{
+    private static InProcessTimestampServer server;
+
+    @BeforeClass
+    public static void startServer() throws Exception{
+        server=new InProcessTimestampServer(1000);
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception{
+        server.stop();
+    }
+
+    @Test
+    public void singleCallerGetsIncreasingTimestamps() throws Exception{
+        TimestampClient client=server.newClient(TimestampClient.DEFAULT_MAX_BATCH_SIZE,1);
+        try{
+            long last=client.getNextTimestamp();
+            for(int i=0;i<2500;i++){
+                long next=client.getNextTimestamp();
+                Assert.assertTrue("Timestamps went backwards: "+last+" then "+next,next>last);
+                last=next;
+            }
+            //one caller at a time never has anyone to share with
+            Assert.assertEquals(client.getNumberTimestampRequests(),client.getNumberServerRequests());
+        }finally{
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentCallersShareRequestsWithoutDuplicates() throws Exception{
+        checkConcurrentCallers(server.newClient(TimestampClient.DEFAULT_MAX_BATCH_SIZE,1));
+    }
+
+    @Test
+    public void concurrentCallersWithoutBatching() throws Exception{
+        TimestampClient client=server.newClient(1,Integer.MAX_VALUE);
+        checkConcurrentCallers(client);
+        Assert.assertEquals(client.getNumberTimestampRequests(),client.getNumberServerRequests());
+    }
+
+    @Test
+    public void clientAsksForOneTimestampAtATimeFromAnOlderServer() throws Exception{
+        try(SingleTimestampServer olderServer=new SingleTimestampServer()){
+            TimestampClient client=new TimestampClient(60000,olderServer,TimestampClient.DEFAULT_MAX_BATCH_SIZE,1);
+            checkConcurrentCallers(client);
+            Assert.assertEquals("Callers shared a request",client.getNumberTimestampRequests(),client.getNumberServerRequests());
+        }
+    }
+
+    @Test
+    public void olderClientGetsOneTimestampPerRequest() throws Exception{
+        try(Socket socket=new Socket("localhost",server.getPort())){
+            DataOutputStream out=new DataOutputStream(socket.getOutputStream());
+            DataInputStream in=new DataInputStream(socket.getInputStream());
+            //an older client sends a bare caller id per timestamp, several of them in flight at once
+            for(short callerId=100;callerId<110;callerId++){
+                out.writeShort(callerId);
+            }
+            out.flush();
+            long last=0;
+            for(short callerId=100;callerId<110;callerId++){
+                Assert.assertEquals("Incorrect caller id",callerId,in.readShort());
+                long timestamp=in.readLong();
+                Assert.assertTrue("Timestamp "+timestamp+" does not follow "+last,timestamp>last);
+                last=timestamp;
+            }
+            //and nobody else is given the timestamps it was handed
+            TimestampClient client=server.newClient(TimestampClient.DEFAULT_MAX_BATCH_SIZE,1);
+            try{
+                Assert.assertTrue("Timestamp was handed out twice",client.getNextTimestamp()>last);
+            }finally{
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void callersSharingAnAbandonedRequestFailWithoutWaitingOutTheirTimeout() throws Exception{
+        try(UnresponsiveServer unresponsive=new UnresponsiveServer()){
+            TimestampClient client=new TimestampClient(2000,unresponsive,TimestampClient.DEFAULT_MAX_BATCH_SIZE,1);
+            ExecutorService executor=Executors.newFixedThreadPool(3);
+            try{
+                //takes the only in-flight slot, and is never answered
+                Future<Long> first=executor.submit(nextTimestamp(client));
+                Thread.sleep(400);
+                //these two share the next request, which is sent once the first times out
+                Future<Long> second=executor.submit(nextTimestamp(client));
+                Thread.sleep(600);
+                long start=System.nanoTime();
+                Future<Long> third=executor.submit(nextTimestamp(client));
+                assertTimestampFails(first);
+                assertTimestampFails(second);
+                assertTimestampFails(third);
+                long waited=TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+                Assert.assertTrue("Waited "+waited+" ms instead of failing with the request it shared",waited<1800);
+            }finally{
+                executor.shutdownNow();
+                client.shutdown();
+            }
+        }
+    }
+
+    private static Callable<Long> nextTimestamp(final TimestampClient client){
+        return new Callable<Long>(){
+            @Override
+            public Long call() throws Exception{
+                return client.getNextTimestamp();
+            }
+        };
+    }
+
+    private static void assertTimestampFails(Future<Long> future) throws InterruptedException{
+        try{
+            Assert.fail("Was given timestamp "+future.get());
+        }catch(ExecutionException e){
+            Assert.assertTrue("Unexpected failure "+e.getCause(),e.getCause() instanceof TimestampIOException);
+        }
+    }
+
+    private void checkConcurrentCallers(final TimestampClient client) throws Exception{
+        int numThreads=16;
+        final int perThread=1000;
+        final Set<Long> seen=ConcurrentHashMap.newKeySet();
+        ExecutorService executor=Executors.newFixedThreadPool(numThreads);
+        try{
+            List<Future<Void>> futures=new ArrayList<>(numThreads);
+            for(int t=0;t<numThreads;t++){
+                futures.add(executor.submit(new Callable<Void>(){
+                    @Override
+                    public Void call() throws Exception{
+                        for(int i=0;i<perThread;i++){
+                            long ts=client.getNextTimestamp();
+                            Assert.assertTrue("Duplicate timestamp "+ts,seen.add(ts));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> f:futures){
+                f.get();
+            }
+            Assert.assertEquals(numThreads*perThread,seen.size());
+            Assert.assertEquals(numThreads*perThread,client.getNumberTimestampRequests());
+            Assert.assertTrue(client.getNumberServerRequests()<=client.getNumberTimestampRequests());
+        }finally{
+            executor.shutdownNow();
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Behaves like a server from before range requests: it reads bare 2 byte caller ids,
+     * and answers each with a single timestamp.
+     */
+    private static class SingleTimestampServer implements TimestampHostProvider,AutoCloseable{
+        private final ServerSocket serverSocket;
+        private final AtomicLong nextTimestamp=new AtomicLong(1L);
+        private final Thread acceptor;
+
+        SingleTimestampServer() throws IOException{
+            this.serverSocket=new ServerSocket(0);
+            this.acceptor=new Thread(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        while(true){
+                            final Socket socket=serverSocket.accept();
+                            Thread reader=new Thread(new Runnable(){
+                                @Override
+                                public void run(){
+                                    serve(socket);
+                                }
+                            });
+                            reader.setDaemon(true);
+                            reader.start();
+                        }
+                    }catch(IOException ignored){
+                        //the server has been closed
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        protected void serve(Socket socket){
+            try(Socket s=socket){
+                DataInputStream in=new DataInputStream(s.getInputStream());
+                DataOutputStream out=new DataOutputStream(s.getOutputStream());
+                while(true){
+                    short callerId=in.readShort();
+                    out.writeShort(callerId);
+                    out.writeLong(nextTimestamp.getAndIncrement());
+                    out.flush();
+                }
+            }catch(IOException ignored){
+                //the client went away
+            }
+        }
+
+        @Override public String getHost(){ return "localhost"; }
+        @Override public int getPort(){ return serverSocket.getLocalPort(); }
+
+        @Override
+        public void close() throws IOException{
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Tells the client that it accepts range requests, and then never answers any of them.
+     */
+    private static class UnresponsiveServer extends SingleTimestampServer{
+
+        UnresponsiveServer() throws IOException{
+            super();
+        }
+
+        @Override
+        protected void serve(Socket socket){
+            try(Socket s=socket){
+                DataInputStream in=new DataInputStream(s.getInputStream());
+                DataOutputStream out=new DataOutputStream(s.getOutputStream());
+                in.readShort();
+                in.readShort();
+                out.writeShort(TimestampServer.RANGE_PROBE_ID);
+                out.writeLong(-1L);
+                out.flush();
+                while(in.read()>=0){
+                    //drop the request
+                }
+            }catch(IOException ignored){
+                //the client went away
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import com.splicemachine.timestamp.api.TimestampBlockManager;
+import com.splicemachine.timestamp.api.TimestampIOException;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the latency of {@link TimestampOracle#getNextTimestamp()} when every block
+ * reservation is slow, so that the cost of crossing a block boundary shows up in the tail.
+ *
+ * Usage: {@code TimestampOracleBenchmark [threads] [block size] [reservation millis] [seconds]}.
+ */
+public class TimestampOracleBenchmark{
+    private static final int MAX_SAMPLES_PER_THREAD=1<<22;
+
+    public static void main(String...args) throws Exception{
+        int numThreads=args.length>0?Integer.parseInt(args[0]):8;
+        int blockSize=args.length>1?Integer.parseInt(args[1]):100000;
+        final long reserveMillis=args.length>2?Long.parseLong(args[2]):10L;
+        final long durationNanos=TimeUnit.SECONDS.toNanos(args.length>3?Integer.parseInt(args[3]):10);
+
+        final TimestampOracle oracle=TimestampOracle.getInstance(new SlowBlockManager(reserveMillis),blockSize);
+        final long[][] latencies=new long[numThreads][MAX_SAMPLES_PER_THREAD];
+        final int[] counts=new int[numThreads];
+        final CountDownLatch start=new CountDownLatch(1);
+        final CountDownLatch finish=new CountDownLatch(numThreads);
+        for(int t=0;t<numThreads;t++){
+            final int thread=t;
+            Thread worker=new Thread(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        start.await();
+                        long[] samples=latencies[thread];
+                        int n=0;
+                        long end=System.nanoTime()+durationNanos;
+                        long now;
+                        do{
+                            long s=System.nanoTime();
+                            oracle.getNextTimestamp();
+                            now=System.nanoTime();
+                            if(n<samples.length)
+                                samples[n]=now-s;
+                            n++;
+                            //pace the callers a little, so that a reservation has time to complete in the background
+                            LockSupport.parkNanos(1000L);
+                        }while(now<end);
+                        counts[thread]=n;
+                    }catch(Exception e){
+                        e.printStackTrace();
+                    }finally{
+                        finish.countDown();
+                    }
+                }
+            },"oracle-bench-"+t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long s=System.nanoTime();
+        start.countDown();
+        finish.await();
+        long elapsed=System.nanoTime()-s;
+
+        long total=0;
+        int numSamples=0;
+        for(int t=0;t<numThreads;t++){
+            total+=counts[t];
+            numSamples+=Math.min(counts[t],MAX_SAMPLES_PER_THREAD);
+        }
+        long[] all=new long[numSamples];
+        int pos=0;
+        for(int t=0;t<numThreads;t++){
+            int n=Math.min(counts[t],MAX_SAMPLES_PER_THREAD);
+            System.arraycopy(latencies[t],0,all,pos,n);
+            pos+=n;
+        }
+        Arrays.sort(all);
+        int stalls=0;
+        for(int i=all.length-1;i>=0 && all[i]>=TimeUnit.MILLISECONDS.toNanos(1);i--){
+            stalls++;
+        }
+
+        System.out.printf("threads=%d blockSize=%d reserve=%dms timestamps=%d blocks=%d reservationWaits=%d timestamps/sec=%.0f%n",
+                numThreads,blockSize,reserveMillis,total,oracle.getNumberBlocksReserved(),oracle.getNumberReservationWaits(),
+                total/(elapsed/1e9d));
+        System.out.printf("calls over 1ms=%d p50=%.1fus p99=%.1fus p99.9=%.1fus p99.99=%.1fus max=%.1fus%n",
+                stalls,
+                percentile(all,0.50)/1e3d,
+                percentile(all,0.99)/1e3d,
+                percentile(all,0.999)/1e3d,
+                percentile(all,0.9999)/1e3d,
+                all.length==0?0d:all[all.length-1]/1e3d);
+    }
+
+    private static long percentile(long[] sorted,double p){
+        if(sorted.length==0) return 0L;
+        return sorted[Math.min(sorted.length-1,(int)(p*sorted.length))];
+    }
+
+    /**
+     * Stands in for a block manager which has to make a slow, durable write for every reservation.
+     */
+    private static class SlowBlockManager implements TimestampBlockManager{
+        private final long reserveMillis;
+        private volatile long maxReserved=0L;
+
+        SlowBlockManager(long reserveMillis){
+            this.reserveMillis=reserveMillis;
+        }
+
+        @Override
+        public void reserveNextBlock(long currentMaxReserved) throws TimestampIOException{
+            try{
+                Thread.sleep(reserveMillis);
+            }catch(InterruptedException e){
+                throw new TimestampIOException("Interrupted reserving a block",e);
+            }
+            maxReserved=currentMaxReserved;
+        }
+
+        @Override
+        public long initialize() throws TimestampIOException{
+            return maxReserved;
+        }
+    }
+}
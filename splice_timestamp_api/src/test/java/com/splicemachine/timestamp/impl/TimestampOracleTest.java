@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import com.splicemachine.timestamp.api.TimestampBlockManager;
+import com.splicemachine.timestamp.api.TimestampIOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimestampOracleTest{
+
+    @Test
+    public void reservesTheNextBlockAhead() throws Exception{
+        RecordingBlockManager blockManager=new RecordingBlockManager();
+        TimestampOracle oracle=new TimestampOracle(blockManager,100);
+        //the first request has nothing reserved yet, so it has to wait
+        Assert.assertEquals(1L,oracle.getNextTimestamp());
+        Assert.assertEquals(1L,oracle.getNumberReservationWaits());
+
+        for(int i=2;i<=1000;i++){
+            Assert.assertEquals(i,oracle.getNextTimestamp());
+            //give the background reservation a chance to keep up
+            if(i%25==0)
+                blockManager.awaitReservations((i+124)/100);
+        }
+        Assert.assertEquals("Should not have waited once the oracle was running",1L,oracle.getNumberReservationWaits());
+        Assert.assertTrue(blockManager.maxReserved>=1000L);
+    }
+
+    @Test
+    public void rangesLargerThanABlockReserveEnough() throws Exception{
+        RecordingBlockManager blockManager=new RecordingBlockManager();
+        TimestampOracle oracle=new TimestampOracle(blockManager,10);
+        long first=oracle.getNextTimestamps(55);
+        Assert.assertEquals(1L,first);
+        Assert.assertTrue("Reserved only up to "+blockManager.maxReserved,blockManager.maxReserved>=55L);
+        Assert.assertEquals(56L,oracle.getNextTimestamp());
+    }
+
+    @Test(expected=TimestampIOException.class)
+    public void reservationFailuresAreReportedToWaiters() throws Exception{
+        TimestampOracle oracle=new TimestampOracle(new TimestampBlockManager(){
+            @Override
+            public void reserveNextBlock(long currentMaxReserved) throws TimestampIOException{
+                throw new TimestampIOException("no space left");
+            }
+
+            @Override
+            public long initialize() throws TimestampIOException{
+                return 0L;
+            }
+        },10);
+        oracle.getNextTimestamp();
+    }
+
+    private static class RecordingBlockManager implements TimestampBlockManager{
+        private volatile long maxReserved=0L;
+        private final AtomicInteger reservations=new AtomicInteger();
+        private volatile CountDownLatch latch=new CountDownLatch(0);
+
+        @Override
+        public void reserveNextBlock(long currentMaxReserved) throws TimestampIOException{
+            maxReserved=currentMaxReserved;
+            reservations.incrementAndGet();
+        }
+
+        @Override
+        public long initialize() throws TimestampIOException{
+            return maxReserved;
+        }
+
+        void awaitReservations(int count) throws InterruptedException{
+            long deadline=System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+            while(reservations.get()<count && System.nanoTime()<deadline){
+                Thread.sleep(1);
+            }
+        }
+    }
+}